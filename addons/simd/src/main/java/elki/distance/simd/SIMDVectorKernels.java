@@ -0,0 +1,450 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.distance.simd;
+
+import java.nio.ByteBuffer;
+
+import elki.distance.ScalarVectorKernels;
+import elki.distance.VectorKernels;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+import net.jafama.FastMath;
+
+/**
+ * Vector kernels using the (incubating) Java Vector API, which will be
+ * compiled to SIMD instructions of the CPU by the JIT compiler.
+ * <p>
+ * This class is registered as {@link VectorKernels} implementation, and will be
+ * used automatically if the JVM was started with
+ * {@code --add-modules jdk.incubator.vector}. Otherwise, the
+ * {@link ScalarVectorKernels} are used.
+ * <p>
+ * All computations are done in double precision; float values are widened.
+ * Because the summation order differs, results may differ from the scalar
+ * kernels in the last bits. Pearson correlation uses a two-pass algorithm
+ * instead of the one-pass algorithm of the scalar version.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class SIMDVectorKernels extends ScalarVectorKernels {
+  /**
+   * Double vector species.
+   */
+  private static final VectorSpecies<Double> DS = DoubleVector.SPECIES_PREFERRED;
+
+  /**
+   * Float species with the same number of lanes.
+   */
+  private static final VectorSpecies<Float> FS = VectorSpecies.of(float.class, VectorShape.forBitSize(DS.vectorBitSize() >> 1));
+
+  /**
+   * Constructor. Use {@link VectorKernels#KERNELS} instead.
+   *
+   * @throws UnsupportedOperationException if there is no vector support
+   */
+  public SIMDVectorKernels() {
+    super();
+    if(DS.length() < 2) {
+      throw new UnsupportedOperationException("No SIMD support for doubles.");
+    }
+    // Link all vector operations early, to fail here rather than in use.
+    double[] d = new double[DS.length()];
+    squaredEuclidean(d, ByteBuffer.allocate(d.length << 3), 0, 1, false, d, 0);
+    squaredEuclidean(d, ByteBuffer.allocate(d.length << 2), 0, 1, true, d, 0);
+  }
+
+  /**
+   * Load float values as doubles.
+   *
+   * @param x Float array
+   * @param i Offset
+   * @return Double vector
+   */
+  private static DoubleVector load(float[] x, int i) {
+    return (DoubleVector) FloatVector.fromArray(FS, x, i).convertShape(VectorOperators.F2D, DS, 0);
+  }
+
+  @Override
+  public double squaredEuclidean(double[] x, double[] y) {
+    final int bound = DS.loopBound(x.length);
+    DoubleVector acc = DoubleVector.zero(DS);
+    int d = 0;
+    for(; d < bound; d += DS.length()) {
+      final DoubleVector delta = DoubleVector.fromArray(DS, x, d).sub(DoubleVector.fromArray(DS, y, d));
+      acc = delta.fma(delta, acc);
+    }
+    double agg = acc.reduceLanes(VectorOperators.ADD);
+    for(; d < x.length; d++) {
+      final double delta = x[d] - y[d];
+      agg += delta * delta;
+    }
+    return agg;
+  }
+
+  @Override
+  public double squaredEuclidean(float[] x, float[] y) {
+    final int bound = DS.loopBound(x.length);
+    DoubleVector acc = DoubleVector.zero(DS);
+    int d = 0;
+    for(; d < bound; d += DS.length()) {
+      final DoubleVector delta = load(x, d).sub(load(y, d));
+      acc = delta.fma(delta, acc);
+    }
+    double agg = acc.reduceLanes(VectorOperators.ADD);
+    for(; d < x.length; d++) {
+      final double delta = (double) x[d] - y[d];
+      agg += delta * delta;
+    }
+    return agg;
+  }
+
+  @Override
+  public double manhattan(double[] x, double[] y) {
+    final int bound = DS.loopBound(x.length);
+    DoubleVector acc = DoubleVector.zero(DS);
+    int d = 0;
+    for(; d < bound; d += DS.length()) {
+      acc = acc.add(DoubleVector.fromArray(DS, x, d).sub(DoubleVector.fromArray(DS, y, d)).abs());
+    }
+    double agg = acc.reduceLanes(VectorOperators.ADD);
+    for(; d < x.length; d++) {
+      agg += Math.abs(x[d] - y[d]);
+    }
+    return agg;
+  }
+
+  @Override
+  public double manhattan(float[] x, float[] y) {
+    final int bound = DS.loopBound(x.length);
+    DoubleVector acc = DoubleVector.zero(DS);
+    int d = 0;
+    for(; d < bound; d += DS.length()) {
+      acc = acc.add(load(x, d).sub(load(y, d)).abs());
+    }
+    double agg = acc.reduceLanes(VectorOperators.ADD);
+    for(; d < x.length; d++) {
+      agg += Math.abs((double) x[d] - y[d]);
+    }
+    return agg;
+  }
+
+  @Override
+  public double lpPowerSum(double[] x, double[] y, double p) {
+    final int bound = DS.loopBound(x.length);
+    DoubleVector acc = DoubleVector.zero(DS);
+    int d = 0;
+    for(; d < bound; d += DS.length()) {
+      acc = acc.add(DoubleVector.fromArray(DS, x, d).sub(DoubleVector.fromArray(DS, y, d)).abs().lanewise(VectorOperators.POW, p));
+    }
+    double agg = acc.reduceLanes(VectorOperators.ADD);
+    for(; d < x.length; d++) {
+      agg += FastMath.pow(Math.abs(x[d] - y[d]), p);
+    }
+    return agg;
+  }
+
+  @Override
+  public double lpPowerSum(float[] x, float[] y, double p) {
+    final int bound = DS.loopBound(x.length);
+    DoubleVector acc = DoubleVector.zero(DS);
+    int d = 0;
+    for(; d < bound; d += DS.length()) {
+      acc = acc.add(load(x, d).sub(load(y, d)).abs().lanewise(VectorOperators.POW, p));
+    }
+    double agg = acc.reduceLanes(VectorOperators.ADD);
+    for(; d < x.length; d++) {
+      agg += FastMath.pow(Math.abs((double) x[d] - y[d]), p);
+    }
+    return agg;
+  }
+
+  @Override
+  public double maximum(double[] x, double[] y) {
+    final int bound = DS.loopBound(x.length);
+    DoubleVector acc = DoubleVector.zero(DS);
+    int d = 0;
+    for(; d < bound; d += DS.length()) {
+      acc = acc.max(DoubleVector.fromArray(DS, x, d).sub(DoubleVector.fromArray(DS, y, d)).abs());
+    }
+    double agg = acc.reduceLanes(VectorOperators.MAX);
+    for(; d < x.length; d++) {
+      final double delta = Math.abs(x[d] - y[d]);
+      agg = delta >= agg ? delta : agg;
+    }
+    return agg;
+  }
+
+  @Override
+  public double dot(double[] x, double[] y) {
+    final int bound = DS.loopBound(x.length);
+    DoubleVector acc = DoubleVector.zero(DS);
+    int d = 0;
+    for(; d < bound; d += DS.length()) {
+      acc = DoubleVector.fromArray(DS, x, d).fma(DoubleVector.fromArray(DS, y, d), acc);
+    }
+    double dot = acc.reduceLanes(VectorOperators.ADD);
+    for(; d < x.length; d++) {
+      dot += x[d] * y[d];
+    }
+    return dot;
+  }
+
+  @Override
+  public double cosAngle(double[] x, double[] y) {
+    final int bound = DS.loopBound(x.length);
+    DoubleVector accC = DoubleVector.zero(DS), acc1 = accC, acc2 = accC;
+    int d = 0;
+    for(; d < bound; d += DS.length()) {
+      final DoubleVector xv = DoubleVector.fromArray(DS, x, d), yv = DoubleVector.fromArray(DS, y, d);
+      accC = xv.fma(yv, accC);
+      acc1 = xv.fma(xv, acc1);
+      acc2 = yv.fma(yv, acc2);
+    }
+    double cross = accC.reduceLanes(VectorOperators.ADD), l1 = acc1.reduceLanes(VectorOperators.ADD), l2 = acc2.reduceLanes(VectorOperators.ADD);
+    for(; d < x.length; d++) {
+      final double r1 = x[d], r2 = y[d];
+      cross += r1 * r2;
+      l1 += r1 * r1;
+      l2 += r2 * r2;
+    }
+    return angle(cross, l1, l2);
+  }
+
+  @Override
+  public double maximum(float[] x, float[] y) {
+    final int bound = DS.loopBound(x.length);
+    DoubleVector acc = DoubleVector.zero(DS);
+    int d = 0;
+    for(; d < bound; d += DS.length()) {
+      acc = acc.max(load(x, d).sub(load(y, d)).abs());
+    }
+    double agg = acc.reduceLanes(VectorOperators.MAX);
+    for(; d < x.length; d++) {
+      final double delta = Math.abs((double) x[d] - y[d]);
+      agg = delta >= agg ? delta : agg;
+    }
+    return agg;
+  }
+
+  @Override
+  public double dot(float[] x, float[] y) {
+    final int bound = DS.loopBound(x.length);
+    DoubleVector acc = DoubleVector.zero(DS);
+    int d = 0;
+    for(; d < bound; d += DS.length()) {
+      acc = load(x, d).fma(load(y, d), acc);
+    }
+    double dot = acc.reduceLanes(VectorOperators.ADD);
+    for(; d < x.length; d++) {
+      dot += (double) x[d] * y[d];
+    }
+    return dot;
+  }
+
+  @Override
+  public double cosAngle(float[] x, float[] y) {
+    final int bound = DS.loopBound(x.length);
+    DoubleVector accC = DoubleVector.zero(DS), acc1 = accC, acc2 = accC;
+    int d = 0;
+    for(; d < bound; d += DS.length()) {
+      final DoubleVector xv = load(x, d), yv = load(y, d);
+      accC = xv.fma(yv, accC);
+      acc1 = xv.fma(xv, acc1);
+      acc2 = yv.fma(yv, acc2);
+    }
+    double cross = accC.reduceLanes(VectorOperators.ADD), l1 = acc1.reduceLanes(VectorOperators.ADD), l2 = acc2.reduceLanes(VectorOperators.ADD);
+    for(; d < x.length; d++) {
+      final double r1 = x[d], r2 = y[d];
+      cross += r1 * r2;
+      l1 += r1 * r1;
+      l2 += r2 * r2;
+    }
+    return angle(cross, l1, l2);
+  }
+
+  @Override
+  public double uncenteredCorrelation(double[] x, double[] y) {
+    final int bound = DS.loopBound(x.length);
+    DoubleVector accXX = DoubleVector.zero(DS), accYY = accXX, accXY = accXX;
+    int i = 0;
+    for(; i < bound; i += DS.length()) {
+      final DoubleVector xv = DoubleVector.fromArray(DS, x, i), yv = DoubleVector.fromArray(DS, y, i);
+      accXX = xv.fma(xv, accXX);
+      accYY = yv.fma(yv, accYY);
+      accXY = xv.fma(yv, accXY);
+    }
+    double sumXX = accXX.reduceLanes(VectorOperators.ADD), sumYY = accYY.reduceLanes(VectorOperators.ADD), sumXY = accXY.reduceLanes(VectorOperators.ADD);
+    for(; i < x.length; i++) {
+      final double xv = x[i], yv = y[i];
+      sumXX += xv * xv;
+      sumYY += yv * yv;
+      sumXY += xv * yv;
+    }
+    return correlation(sumXX, sumYY, sumXY);
+  }
+
+  @Override
+  public double uncenteredCorrelation(float[] x, float[] y) {
+    final int bound = DS.loopBound(x.length);
+    DoubleVector accXX = DoubleVector.zero(DS), accYY = accXX, accXY = accXX;
+    int i = 0;
+    for(; i < bound; i += DS.length()) {
+      final DoubleVector xv = load(x, i), yv = load(y, i);
+      accXX = xv.fma(xv, accXX);
+      accYY = yv.fma(yv, accYY);
+      accXY = xv.fma(yv, accXY);
+    }
+    double sumXX = accXX.reduceLanes(VectorOperators.ADD), sumYY = accYY.reduceLanes(VectorOperators.ADD), sumXY = accXY.reduceLanes(VectorOperators.ADD);
+    for(; i < x.length; i++) {
+      final double xv = x[i], yv = y[i];
+      sumXX += xv * xv;
+      sumYY += yv * yv;
+      sumXY += xv * yv;
+    }
+    return correlation(sumXX, sumYY, sumXY);
+  }
+
+  @Override
+  public double pearsonCorrelation(double[] x, double[] y) {
+    final int bound = DS.loopBound(x.length);
+    // First pass: means
+    DoubleVector accX = DoubleVector.zero(DS), accY = accX;
+    int i = 0;
+    for(; i < bound; i += DS.length()) {
+      accX = accX.add(DoubleVector.fromArray(DS, x, i));
+      accY = accY.add(DoubleVector.fromArray(DS, y, i));
+    }
+    double sumX = accX.reduceLanes(VectorOperators.ADD), sumY = accY.reduceLanes(VectorOperators.ADD);
+    for(; i < x.length; i++) {
+      sumX += x[i];
+      sumY += y[i];
+    }
+    final double meanX = sumX / x.length, meanY = sumY / x.length;
+    // Second pass: centered (co-)moments
+    final DoubleVector mX = DoubleVector.broadcast(DS, meanX), mY = DoubleVector.broadcast(DS, meanY);
+    DoubleVector accXX = DoubleVector.zero(DS), accYY = accXX, accXY = accXX;
+    for(i = 0; i < bound; i += DS.length()) {
+      final DoubleVector xv = DoubleVector.fromArray(DS, x, i).sub(mX), yv = DoubleVector.fromArray(DS, y, i).sub(mY);
+      accXX = xv.fma(xv, accXX);
+      accYY = yv.fma(yv, accYY);
+      accXY = xv.fma(yv, accXY);
+    }
+    double sumXX = accXX.reduceLanes(VectorOperators.ADD), sumYY = accYY.reduceLanes(VectorOperators.ADD), sumXY = accXY.reduceLanes(VectorOperators.ADD);
+    for(; i < x.length; i++) {
+      final double xv = x[i] - meanX, yv = y[i] - meanY;
+      sumXX += xv * xv;
+      sumYY += yv * yv;
+      sumXY += xv * yv;
+    }
+    return correlation(sumXX, sumYY, sumXY);
+  }
+
+  @Override
+  public double pearsonCorrelation(float[] x, float[] y) {
+    final int bound = DS.loopBound(x.length);
+    // First pass: means
+    DoubleVector accX = DoubleVector.zero(DS), accY = accX;
+    int i = 0;
+    for(; i < bound; i += DS.length()) {
+      accX = accX.add(load(x, i));
+      accY = accY.add(load(y, i));
+    }
+    double sumX = accX.reduceLanes(VectorOperators.ADD), sumY = accY.reduceLanes(VectorOperators.ADD);
+    for(; i < x.length; i++) {
+      sumX += x[i];
+      sumY += y[i];
+    }
+    final double meanX = sumX / x.length, meanY = sumY / x.length;
+    // Second pass: centered (co-)moments
+    final DoubleVector mX = DoubleVector.broadcast(DS, meanX), mY = DoubleVector.broadcast(DS, meanY);
+    DoubleVector accXX = DoubleVector.zero(DS), accYY = accXX, accXY = accXX;
+    for(i = 0; i < bound; i += DS.length()) {
+      final DoubleVector xv = load(x, i).sub(mX), yv = load(y, i).sub(mY);
+      accXX = xv.fma(xv, accXX);
+      accYY = yv.fma(yv, accYY);
+      accXY = xv.fma(yv, accXY);
+    }
+    double sumXX = accXX.reduceLanes(VectorOperators.ADD), sumYY = accYY.reduceLanes(VectorOperators.ADD), sumXY = accXY.reduceLanes(VectorOperators.ADD);
+    for(; i < x.length; i++) {
+      final double xv = x[i] - meanX, yv = y[i] - meanY;
+      sumXX += xv * xv;
+      sumYY += yv * yv;
+      sumXY += xv * yv;
+    }
+    return correlation(sumXX, sumYY, sumXY);
+  }
+
+  @Override
+  public void squaredEuclidean(double[] q, double[] block, int n, double[] out) {
+    final int dim = q.length, bound = DS.loopBound(dim);
+    if(bound == 0) {
+      super.squaredEuclidean(q, block, n, out);
+      return;
+    }
+    for(int r = 0, off = 0; r < n; r++, off += dim) {
+      DoubleVector acc = DoubleVector.zero(DS);
+      int d = 0;
+      for(; d < bound; d += DS.length()) {
+        final DoubleVector delta = DoubleVector.fromArray(DS, block, off + d).sub(DoubleVector.fromArray(DS, q, d));
+        acc = delta.fma(delta, acc);
+      }
+      double agg = acc.reduceLanes(VectorOperators.ADD);
+      for(; d < dim; d++) {
+        final double delta = block[off + d] - q[d];
+        agg += delta * delta;
+      }
+      out[r] = agg;
+    }
+  }
+
+  @Override
+  public void squaredEuclidean(double[] q, ByteBuffer block, int row, int n, boolean floats, double[] out, int outoff) {
+    final int dim = q.length, bound = DS.loopBound(dim);
+    if(bound == 0) {
+      super.squaredEuclidean(q, block, row, n, floats, out, outoff);
+      return;
+    }
+    final int shift = floats ? 2 : 3;
+    for(int r = 0, off = row * dim << shift; r < n; r++, off += dim << shift) {
+      DoubleVector acc = DoubleVector.zero(DS);
+      int d = 0;
+      for(; d < bound; d += DS.length()) {
+        final int pos = off + (d << shift);
+        final DoubleVector v = floats ? //
+            (DoubleVector) FloatVector.fromByteBuffer(FS, block, pos, block.order()).convertShape(VectorOperators.F2D, DS, 0) : //
+            DoubleVector.fromByteBuffer(DS, block, pos, block.order());
+        final DoubleVector delta = v.sub(DoubleVector.fromArray(DS, q, d));
+        acc = delta.fma(delta, acc);
+      }
+      double agg = acc.reduceLanes(VectorOperators.ADD);
+      for(; d < dim; d++) {
+        final double delta = (floats ? block.getFloat(off + (d << 2)) : block.getDouble(off + (d << 3))) - q[d];
+        agg += delta * delta;
+      }
+      out[outoff + r] = agg;
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.distance.simd;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.distance.ScalarVectorKernels;
+
+/**
+ * Unit test for the vectorized kernels, comparing to the scalar kernels.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class SIMDVectorKernelsTest {
+  /**
+   * Dimensionalities to test, including remainder loops.
+   */
+  private static final int[] DIMS = { 1, 2, 3, 7, 8, 9, 16, 31, 100 };
+
+  @Test
+  public void testPairwise() {
+    ScalarVectorKernels ref = new ScalarVectorKernels();
+    SIMDVectorKernels simd = new SIMDVectorKernels();
+    Random r = new Random(0L);
+    for(int dim : DIMS) {
+      for(int rep = 0; rep < 20; rep++) {
+        double[] x = new double[dim], y = new double[dim];
+        float[] fx = new float[dim], fy = new float[dim];
+        for(int d = 0; d < dim; d++) {
+          x[d] = fx[d] = (float) r.nextGaussian();
+          y[d] = fy[d] = (float) (x[d] * .5 + r.nextGaussian());
+        }
+        assertEquals(ref.squaredEuclidean(x, y), simd.squaredEuclidean(x, y), 1e-12);
+        assertEquals(ref.squaredEuclidean(fx, fy), simd.squaredEuclidean(fx, fy), 1e-12);
+        assertEquals(ref.manhattan(x, y), simd.manhattan(x, y), 1e-12);
+        assertEquals(ref.manhattan(fx, fy), simd.manhattan(fx, fy), 1e-12);
+        assertEquals(ref.lpPowerSum(x, y, 3.), simd.lpPowerSum(x, y, 3.), 1e-10);
+        assertEquals(ref.lpPowerSum(fx, fy, .5), simd.lpPowerSum(fx, fy, .5), 1e-10);
+        assertEquals(ref.maximum(x, y), simd.maximum(x, y), 0.);
+        assertEquals(ref.maximum(fx, fy), simd.maximum(fx, fy), 0.);
+        assertEquals(ref.dot(x, y), simd.dot(x, y), 1e-12);
+        assertEquals(ref.dot(fx, fy), simd.dot(fx, fy), 1e-12);
+        assertEquals(ref.cosAngle(x, y), simd.cosAngle(x, y), 1e-12);
+        assertEquals(ref.cosAngle(fx, fy), simd.cosAngle(fx, fy), 1e-12);
+        assertEquals(ref.uncenteredCorrelation(x, y), simd.uncenteredCorrelation(x, y), 1e-12);
+        assertEquals(ref.uncenteredCorrelation(fx, fy), simd.uncenteredCorrelation(fx, fy), 1e-12);
+        assertEquals(ref.pearsonCorrelation(x, y), simd.pearsonCorrelation(x, y), 1e-12);
+        assertEquals(ref.pearsonCorrelation(fx, fy), simd.pearsonCorrelation(fx, fy), 1e-12);
+      }
+    }
+  }
+
+  @Test
+  public void testBlock() {
+    ScalarVectorKernels ref = new ScalarVectorKernels();
+    SIMDVectorKernels simd = new SIMDVectorKernels();
+    Random r = new Random(0L);
+    final int n = 50;
+    for(int dim : DIMS) {
+      double[] q = new double[dim], block = new double[n * dim];
+      ByteBuffer db = ByteBuffer.allocateDirect(n * dim << 3).order(ByteOrder.nativeOrder());
+      ByteBuffer fb = ByteBuffer.allocateDirect(n * dim << 2).order(ByteOrder.nativeOrder());
+      for(int d = 0; d < dim; d++) {
+        q[d] = r.nextGaussian();
+      }
+      for(int i = 0; i < block.length; i++) {
+        block[i] = (float) r.nextGaussian();
+        db.putDouble(i << 3, block[i]);
+        fb.putFloat(i << 2, (float) block[i]);
+      }
+      double[] exp = new double[n], out = new double[n];
+      ref.squaredEuclidean(q, block, n, exp);
+      simd.squaredEuclidean(q, block, n, out);
+      for(int i = 0; i < n; i++) {
+        assertEquals(exp[i], out[i], 1e-12);
+      }
+      // Rows 3 to n-1, with output offset 2:
+      simd.squaredEuclidean(q, db, 3, n - 3, false, out, 2);
+      for(int i = 3; i < n; i++) {
+        assertEquals(exp[i], out[i - 1], 1e-12);
+      }
+      simd.squaredEuclidean(q, fb, 3, n - 3, true, out, 2);
+      for(int i = 3; i < n; i++) {
+        assertEquals(exp[i], out[i - 1], 1e-12);
+      }
+    }
+  }
+}
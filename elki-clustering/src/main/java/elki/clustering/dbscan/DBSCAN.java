@@ -51,6 +51,7 @@ import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.constraints.CommonConstraints;
 import elki.utilities.optionhandling.parameterization.Parameterization;
 import elki.utilities.optionhandling.parameters.DoubleParameter;
+import elki.utilities.optionhandling.parameters.Flag;
 import elki.utilities.optionhandling.parameters.IntParameter;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -70,6 +71,11 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
  * Erich Schubert, Jörg Sander, Martin Ester, Hans-Peter Kriegel, Xiaowei Xu<br>
  * DBSCAN Revisited, Revisited: Why and How You Should (Still) Use DBSCAN<br>
  * ACM Trans. Database Systems (TODS)
+ * <p>
+ * Optionally, all neighborhoods can be computed at once, if an existing index
+ * supports a join. This needs memory for all neighborhoods, and the neighbors
+ * may be in a different order, which can change the assignment of border
+ * points.
  *
  * @author Arthur Zimek
  * @author Erich Schubert
@@ -110,6 +116,11 @@ public class DBSCAN<O> implements ClusteringAlgorithm<Clustering<Model>> {
    */
   protected int minpts;
 
+  /**
+   * Compute all neighborhoods at once, if an index supports a join.
+   */
+  protected boolean precompute;
+
   /**
    * Constructor with parameters.
    *
@@ -118,10 +129,24 @@ public class DBSCAN<O> implements ClusteringAlgorithm<Clustering<Model>> {
    * @param minpts Minpts parameter
    */
   public DBSCAN(Distance<? super O> distance, double epsilon, int minpts) {
+    this(distance, epsilon, minpts, false);
+  }
+
+  /**
+   * Constructor with parameters.
+   *
+   * @param distance Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts parameter
+   * @param precompute Compute all neighborhoods at once, if an index supports
+   *        a join
+   */
+  public DBSCAN(Distance<? super O> distance, double epsilon, int minpts, boolean precompute) {
     super();
     this.distance = distance;
     this.epsilon = epsilon;
     this.minpts = minpts;
+    this.precompute = precompute;
   }
 
   @Override
@@ -142,7 +167,10 @@ public class DBSCAN<O> implements ClusteringAlgorithm<Clustering<Model>> {
     }
 
     Instance dbscan = new Instance();
-    dbscan.run(relation, new QueryBuilder<>(relation, distance).rangeByDBID(epsilon));
+    // Compute all neighborhoods at once, if requested and supported:
+    QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+    RangeSearcher<DBIDRef> precomputed = precompute ? qb.precomputedRangeByDBID(epsilon) : null;
+    dbscan.run(relation, precomputed != null ? precomputed : qb.rangeByDBID(epsilon));
 
     double averagen = dbscan.ncounter / (double) relation.size();
     LOG.statistics(new DoubleStatistic(DBSCAN.class.getName() + ".average-neighbors", averagen));
@@ -320,6 +348,11 @@ public class DBSCAN<O> implements ClusteringAlgorithm<Clustering<Model>> {
      */
     public static final OptionID MINPTS_ID = new OptionID("dbscan.minpts", "Threshold for minimum number of points in the epsilon-neighborhood of a point. The suggested value is '2 * dim - 1'.");
 
+    /**
+     * Flag to compute all neighborhoods at once, if an index supports a join.
+     */
+    public static final OptionID PRECOMPUTE_ID = new OptionID("dbscan.precompute", "Compute all neighborhoods at once, if an index supports a join. This needs memory for all neighborhoods, and may change the assignment of border points.");
+
     /**
      * Holds the epsilon radius threshold.
      */
@@ -335,6 +368,11 @@ public class DBSCAN<O> implements ClusteringAlgorithm<Clustering<Model>> {
      */
     protected Distance<? super O> distance;
 
+    /**
+     * Compute all neighborhoods at once.
+     */
+    protected boolean precompute;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
@@ -347,11 +385,12 @@ public class DBSCAN<O> implements ClusteringAlgorithm<Clustering<Model>> {
           .grab(config, x -> minpts = x) && minpts <= 2) {
         LOG.warning("DBSCAN with minPts <= 2 is equivalent to single-link clustering at a single height. Consider using larger values of minPts.");
       }
+      new Flag(PRECOMPUTE_ID).grab(config, x -> precompute = x);
     }
 
     @Override
     public DBSCAN<O> make() {
-      return new DBSCAN<>(distance, epsilon, minpts);
+      return new DBSCAN<>(distance, epsilon, minpts, precompute);
     }
   }
 }
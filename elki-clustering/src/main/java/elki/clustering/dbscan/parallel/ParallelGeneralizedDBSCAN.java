@@ -251,7 +251,7 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
       progress = LOG.isVerbose() ? new FiniteProgress("DBSCAN clustering", ids.size(), LOG) : null;
       // Do the majority of the work in parallel:
       // (This will call "instantiate".)
-      ParallelExecutor.run(ids, this);
+      ParallelExecutor.runWorkStealing(ids, this);
       LOG.ensureCompleted(progress);
 
       // Build the final result
@@ -0,0 +1,632 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.dbscan.parallel;
+
+import java.util.Arrays;
+
+import elki.clustering.ClusteringAlgorithm;
+import elki.clustering.dbscan.DBSCAN;
+import elki.data.Cluster;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.model.ClusterModel;
+import elki.data.model.Model;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.ModifiableDBIDs;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.logging.Logging;
+import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelExecutor;
+import elki.result.Metadata;
+import elki.utilities.datastructures.unionfind.ConcurrentUnionFindInteger;
+import elki.utilities.documentation.Reference;
+import elki.utilities.documentation.Title;
+import elki.utilities.exceptions.IncompatibleDataException;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.DoubleParameter;
+import elki.utilities.optionhandling.parameters.IntParameter;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+/**
+ * Exact grid-based DBSCAN for low-dimensional data with Euclidean distance.
+ * <p>
+ * The data is partitioned into a grid of cells with side length
+ * \(\varepsilon/\sqrt{d}\), such that any two points in the same cell are
+ * neighbors. If a cell contains at least minPts points, all of them are core
+ * points; otherwise the neighbors are counted in the few cells that can be
+ * within \(\varepsilon\). Two cells containing core points belong to the same
+ * cluster if any pair of their core points are neighbors; they are then merged
+ * using a concurrent union-find. Border points are assigned to the cluster of
+ * the first core point found within \(\varepsilon\). Core point labeling, cell
+ * merging and border assignment each run in parallel over the grid cells.
+ * <p>
+ * Core points and noise are exactly as in DBSCAN. As with any DBSCAN
+ * implementation, border points reachable from multiple clusters may be
+ * assigned differently, but here the assignment does not depend on the number
+ * of threads. The number of cells to check grows exponentially with the
+ * dimensionality, so this is meant for 2 or 3 dimensions only, such as
+ * geographic coordinates.
+ * <p>
+ * Reference:
+ * <p>
+ * J. Gan, Y. Tao<br>
+ * DBSCAN Revisited: Mis-Claim, Un-Fixability, and Approximation<br>
+ * Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD 2015)
+ * <p>
+ * Y. Wang, Y. Gu, J. Shun<br>
+ * Theoretically-Efficient and Practical Parallel DBSCAN<br>
+ * Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD 2020)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - ConcurrentUnionFindInteger
+ */
+@Title("Exact Grid-based Parallel DBSCAN")
+@Reference(authors = "J. Gan, Y. Tao", //
+    title = "DBSCAN Revisited: Mis-Claim, Un-Fixability, and Approximation", //
+    booktitle = "Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD 2015)", //
+    url = "https://doi.org/10.1145/2723372.2737792", //
+    bibkey = "DBLP:conf/sigmod/GanT15")
+@Reference(authors = "Y. Wang, Y. Gu, J. Shun", //
+    title = "Theoretically-Efficient and Practical Parallel DBSCAN", //
+    booktitle = "Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD 2020)", //
+    url = "https://doi.org/10.1145/3318464.3380582", //
+    bibkey = "DBLP:conf/sigmod/WangGS20")
+public class ParallelGridDBSCAN implements ClusteringAlgorithm<Clustering<Model>> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelGridDBSCAN.class);
+
+  /**
+   * Minimum number of cells per parallel task.
+   */
+  private static final int MIN_GRAIN = 64;
+
+  /**
+   * Relative margin to shrink the cells by, to be robust to rounding.
+   */
+  private static final double MARGIN = 1e-10;
+
+  /**
+   * Holds the epsilon radius threshold.
+   */
+  protected double epsilon;
+
+  /**
+   * Holds the minimum cluster size.
+   */
+  protected int minpts;
+
+  /**
+   * Constructor with parameters.
+   *
+   * @param epsilon Epsilon value
+   * @param minpts Minpts parameter
+   */
+  public ParallelGridDBSCAN(double epsilon, int minpts) {
+    super();
+    this.epsilon = epsilon;
+    this.minpts = minpts;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    // We strictly need a vector field of fixed dimensionality!
+    return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+
+  /**
+   * Performs the DBSCAN algorithm on the given database.
+   *
+   * @param relation Relation to process
+   * @return Clustering result
+   */
+  public Clustering<Model> run(Relation<? extends NumberVector> relation) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    // Degenerate result:
+    if(ids.size() < minpts) {
+      Clustering<Model> result = new Clustering<>();
+      Metadata.of(result).setLongName("DBSCAN Clustering");
+      result.addToplevelCluster(new Cluster<Model>(ids, true, ClusterModel.CLUSTER));
+      return result;
+    }
+    return new Instance(relation, ids).run();
+  }
+
+  /**
+   * Instance, for a single run.
+   *
+   * @author Erich Schubert
+   */
+  private class Instance {
+    /**
+     * Object IDs.
+     */
+    private final ArrayDBIDs ids;
+
+    /**
+     * Dimensionality.
+     */
+    private final int dim;
+
+    /**
+     * Squared epsilon.
+     */
+    private final double sqeps;
+
+    /**
+     * Coordinates, ordered by cell.
+     */
+    private double[] data;
+
+    /**
+     * Object offset of each position (in cell order).
+     */
+    private int[] perm;
+
+    /**
+     * Position of each object (by offset).
+     */
+    private int[] pos;
+
+    /**
+     * First position of each cell, and the end.
+     */
+    private int[] start;
+
+    /**
+     * Cell coordinates, {@code dim} per cell.
+     */
+    private int[] coords;
+
+    /**
+     * Number of cells in each dimension.
+     */
+    private int[] cells;
+
+    /**
+     * Map of cell keys to cell numbers.
+     */
+    private Long2IntOpenHashMap grid;
+
+    /**
+     * Offsets of the cells to check, {@code dim} per neighbor cell.
+     */
+    private int[] stencil;
+
+    /**
+     * Core point flags, by position.
+     */
+    private boolean[] core;
+
+    /**
+     * Cells with core points.
+     */
+    private boolean[] corecell;
+
+    /**
+     * Cell containing a core point within epsilon, for each position.
+     */
+    private int[] assign;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param ids Object ids
+     */
+    Instance(Relation<? extends NumberVector> relation, ArrayDBIDs ids) {
+      this.ids = ids;
+      this.dim = RelationUtil.dimensionality(relation);
+      this.sqeps = epsilon * epsilon;
+      buildGrid(relation);
+      buildStencil();
+    }
+
+    /**
+     * Run the clustering.
+     *
+     * @return Clustering
+     */
+    public Clustering<Model> run() {
+      final int ncells = start.length - 1;
+      // 1. Find core points
+      core = new boolean[perm.length];
+      corecell = new boolean[ncells];
+      ParallelExecutor.runWorkStealing(ncells, MIN_GRAIN, (s, e) -> {
+        int[] buf = new int[stencil.length / dim];
+        for(int c = s; c < e; c++) {
+          labelCores(c, buf);
+        }
+      });
+      // 2. Connect cells with neighboring core points
+      ConcurrentUnionFindInteger uf = new ConcurrentUnionFindInteger(ncells);
+      ParallelExecutor.runWorkStealing(ncells, MIN_GRAIN, (s, e) -> {
+        int[] buf = new int[stencil.length / dim];
+        for(int c = s; c < e; c++) {
+          if(corecell[c]) {
+            connectCells(c, uf, buf);
+          }
+        }
+      });
+      // 3. Assign border points
+      assign = new int[perm.length];
+      ParallelExecutor.runWorkStealing(ncells, MIN_GRAIN, (s, e) -> {
+        int[] buf = new int[stencil.length / dim];
+        for(int c = s; c < e; c++) {
+          assignBorders(c, buf);
+        }
+      });
+      return buildResult(uf);
+    }
+
+    /**
+     * Build the data grid, and store the data ordered by cell.
+     *
+     * @param relation Data relation
+     */
+    private void buildGrid(Relation<? extends NumberVector> relation) {
+      final double[][] minmax = RelationUtil.computeMinMax(relation);
+      final double[] min = minmax[0], max = minmax[1];
+      final double width = epsilon / Math.sqrt(dim) * (1 - MARGIN);
+      cells = new int[dim];
+      long total = 1;
+      for(int d = 0; d < dim; d++) {
+        if(min[d] == Double.NEGATIVE_INFINITY || max[d] == Double.POSITIVE_INFINITY || min[d] != min[d] || max[d] != max[d]) {
+          throw new IncompatibleDataException("Dimension " + d + " contains non-finite values.");
+        }
+        final double c = Math.floor((max[d] - min[d]) / width) + 1;
+        if(c >= Integer.MAX_VALUE || total > Long.MAX_VALUE / (long) c) {
+          throw new IncompatibleDataException("Too many grid cells, epsilon is too small for the data extent.");
+        }
+        total *= cells[d] = (int) c;
+      }
+      // Assign cells in the order of the data
+      final int size = ids.size();
+      grid = new Long2IntOpenHashMap();
+      grid.defaultReturnValue(-1);
+      pos = new int[size];
+      int[] counts = new int[100], cc = new int[dim];
+      coords = new int[100 * dim];
+      int ncells = 0;
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        final NumberVector v = relation.get(it);
+        long key = 0;
+        for(int d = 0; d < dim; d++) {
+          cc[d] = Math.min(cells[d] - 1, (int) ((v.doubleValue(d) - min[d]) / width));
+          key = key * cells[d] + cc[d];
+        }
+        int c = grid.get(key);
+        if(c < 0) {
+          grid.put(key, c = ncells++);
+          if(c == counts.length) {
+            counts = Arrays.copyOf(counts, c + (c >>> 1));
+            coords = Arrays.copyOf(coords, counts.length * dim);
+          }
+          System.arraycopy(cc, 0, coords, c * dim, dim);
+        }
+        counts[c]++;
+        pos[it.getOffset()] = c;
+      }
+      coords = Arrays.copyOf(coords, ncells * dim);
+      // Counting sort by cell:
+      start = new int[ncells + 1];
+      for(int c = 0; c < ncells; c++) {
+        start[c + 1] = start[c] + counts[c];
+      }
+      System.arraycopy(start, 0, counts, 0, ncells);
+      perm = new int[size];
+      data = new double[size * dim];
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        final int p = pos[it.getOffset()] = counts[pos[it.getOffset()]]++;
+        perm[p] = it.getOffset();
+        final NumberVector v = relation.get(it);
+        for(int d = 0, o = p * dim; d < dim; d++, o++) {
+          data[o] = v.doubleValue(d);
+        }
+      }
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(ParallelGridDBSCAN.class.getName() + ".used-cells", ncells));
+      }
+    }
+
+    /**
+     * Build the offsets of all cells that may contain neighbors.
+     */
+    private void buildStencil() {
+      final double width = epsilon / Math.sqrt(dim) * (1 - MARGIN);
+      // Neighbors may be up to epsilon away, i.e., in any cell within:
+      final int r = (int) Math.floor(epsilon / width) + 1;
+      int[] buf = new int[dim * 16], cur = new int[dim];
+      Arrays.fill(cur, -r);
+      int n = 0;
+      while(true) {
+        double sqmin = 0;
+        boolean zero = true;
+        for(int d = 0; d < dim; d++) {
+          final double gap = Math.max(0, Math.abs(cur[d]) - 1) * width;
+          sqmin += gap * gap;
+          zero &= cur[d] == 0;
+        }
+        if(!zero && sqmin <= sqeps) {
+          if(n + dim > buf.length) {
+            buf = Arrays.copyOf(buf, buf.length << 1);
+          }
+          System.arraycopy(cur, 0, buf, n, dim);
+          n += dim;
+        }
+        // Advance to the next offset vector
+        int d = 0;
+        while(d < dim && cur[d] == r) {
+          cur[d++] = -r;
+        }
+        if(d == dim) {
+          break;
+        }
+        cur[d]++;
+      }
+      stencil = Arrays.copyOf(buf, n);
+    }
+
+    /**
+     * Find the occupied neighbor cells of a cell.
+     *
+     * @param c Cell
+     * @param buf Output buffer
+     * @return Number of neighbor cells
+     */
+    private int neighborCells(int c, int[] buf) {
+      int n = 0;
+      outer: for(int i = 0; i < stencil.length; i += dim) {
+        long key = 0;
+        for(int d = 0; d < dim; d++) {
+          final int v = coords[c * dim + d] + stencil[i + d];
+          if(v < 0 || v >= cells[d]) {
+            continue outer;
+          }
+          key = key * cells[d] + v;
+        }
+        final int nc = grid.get(key);
+        if(nc >= 0) {
+          buf[n++] = nc;
+        }
+      }
+      return n;
+    }
+
+    /**
+     * Squared Euclidean distance of two positions.
+     *
+     * @param a First position
+     * @param b Second position
+     * @return Squared distance
+     */
+    private double sqdist(int a, int b) {
+      double agg = 0;
+      for(int d = 0, i = a * dim, j = b * dim; d < dim; d++, i++, j++) {
+        final double v = data[i] - data[j];
+        agg += v * v;
+      }
+      return agg;
+    }
+
+    /**
+     * Label the core points of a cell.
+     *
+     * @param c Cell
+     * @param buf Buffer for neighbor cells
+     */
+    private void labelCores(int c, int[] buf) {
+      final int s = start[c], e = start[c + 1];
+      if(e - s >= minpts) { // All points are core points
+        Arrays.fill(core, s, e, true);
+        corecell[c] = true;
+        return;
+      }
+      final int n = neighborCells(c, buf);
+      for(int p = s; p < e; p++) {
+        int count = e - s; // All points in the cell are neighbors
+        search: for(int i = 0; i < n; i++) {
+          for(int q = start[buf[i]], qe = start[buf[i] + 1]; q < qe; q++) {
+            if(sqdist(p, q) <= sqeps && ++count >= minpts) {
+              break search;
+            }
+          }
+        }
+        if(count >= minpts) {
+          core[p] = corecell[c] = true;
+        }
+      }
+    }
+
+    /**
+     * Connect a core cell to neighboring core cells.
+     *
+     * @param c Cell
+     * @param uf Union-find
+     * @param buf Buffer for neighbor cells
+     */
+    private void connectCells(int c, ConcurrentUnionFindInteger uf, int[] buf) {
+      final int n = neighborCells(c, buf);
+      for(int i = 0; i < n; i++) {
+        final int c2 = buf[i];
+        // Check each pair only once, and only if not yet connected.
+        if(c2 < c || !corecell[c2] || uf.isConnected(c, c2)) {
+          continue;
+        }
+        if(hasCorePair(c, c2)) {
+          uf.union(c, c2);
+        }
+      }
+    }
+
+    /**
+     * Test whether two cells contain core points within epsilon.
+     *
+     * @param c1 First cell
+     * @param c2 Second cell
+     * @return {@code true} if two core points are neighbors
+     */
+    private boolean hasCorePair(int c1, int c2) {
+      for(int p = start[c1], pe = start[c1 + 1]; p < pe; p++) {
+        if(core[p]) {
+          for(int q = start[c2], qe = start[c2 + 1]; q < qe; q++) {
+            if(core[q] && sqdist(p, q) <= sqeps) {
+              return true;
+            }
+          }
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Assign the points of a cell to a cell with a core point within epsilon.
+     *
+     * @param c Cell
+     * @param buf Buffer for neighbor cells
+     */
+    private void assignBorders(int c, int[] buf) {
+      final int s = start[c], e = start[c + 1];
+      if(corecell[c]) { // All points are within epsilon of a core point
+        Arrays.fill(assign, s, e, c);
+        return;
+      }
+      final int n = neighborCells(c, buf);
+      for(int p = s; p < e; p++) {
+        assign[p] = -1; // Noise
+        search: for(int i = 0; i < n; i++) {
+          final int c2 = buf[i];
+          if(!corecell[c2]) {
+            continue;
+          }
+          for(int q = start[c2], qe = start[c2 + 1]; q < qe; q++) {
+            if(core[q] && sqdist(p, q) <= sqeps) {
+              assign[p] = c2;
+              break search;
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Assemble the clustering result.
+     *
+     * @param uf Union-find of cells
+     * @return Clustering
+     */
+    private Clustering<Model> buildResult(ConcurrentUnionFindInteger uf) {
+      final int ncells = start.length - 1;
+      int[] cluster = new int[ncells];
+      int nclusters = 0;
+      for(int c = 0; c < ncells; c++) {
+        // Roots are the smallest cell, and hence come first.
+        cluster[c] = corecell[c] ? (uf.find(c) == c ? nclusters++ : cluster[uf.find(c)]) : -1;
+      }
+      ModifiableDBIDs[] clusters = new ModifiableDBIDs[nclusters];
+      for(int i = 0; i < nclusters; i++) {
+        clusters[i] = DBIDUtil.newArray();
+      }
+      ModifiableDBIDs noise = DBIDUtil.newArray();
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        final int c = assign[pos[it.getOffset()]];
+        (c >= 0 ? clusters[cluster[c]] : noise).add(it);
+      }
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(ParallelGridDBSCAN.class.getName() + ".core-cells", countCoreCells()));
+        LOG.statistics(new LongStatistic(ParallelGridDBSCAN.class.getName() + ".clusters", nclusters));
+      }
+
+      Clustering<Model> result = new Clustering<>();
+      Metadata.of(result).setLongName("DBSCAN Clustering");
+      for(ModifiableDBIDs clu : clusters) {
+        result.addToplevelCluster(new Cluster<Model>(clu, ClusterModel.CLUSTER));
+      }
+      if(noise.size() > 0) {
+        result.addToplevelCluster(new Cluster<Model>(noise, true, ClusterModel.CLUSTER));
+      }
+      return result;
+    }
+
+    /**
+     * Count the cells containing core points.
+     *
+     * @return Number of core cells
+     */
+    private int countCoreCells() {
+      int count = 0;
+      for(boolean b : corecell) {
+        count += b ? 1 : 0;
+      }
+      return count;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   */
+  public static class Par implements Parameterizer {
+    /**
+     * Holds the epsilon radius threshold.
+     */
+    protected double epsilon;
+
+    /**
+     * Holds the minimum cluster size.
+     */
+    protected int minpts;
+
+    @Override
+    public void configure(Parameterization config) {
+      new DoubleParameter(DBSCAN.Par.EPSILON_ID) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
+          .grab(config, x -> epsilon = x);
+      new IntParameter(DBSCAN.Par.MINPTS_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> {
+            minpts = x;
+            if(minpts <= 2) {
+              LOG.warning("DBSCAN with minPts <= 2 is equivalent to single-link clustering at a single height. Consider using larger values of minPts.");
+            }
+          });
+    }
+
+    @Override
+    public ParallelGridDBSCAN make() {
+      return new ParallelGridDBSCAN(epsilon, minpts);
+    }
+  }
+}
@@ -36,7 +36,7 @@ import net.jafama.FastMath;
  * @author Erich Schubert
  * @since 0.7.0
  */
-public class DiagonalGaussianModel implements EMClusterModel<NumberVector, EMModel> {
+public class DiagonalGaussianModel implements MergeableEMClusterModel<NumberVector, EMModel> {
   /**
    * Constant to avoid zero values.
    */
@@ -109,6 +109,17 @@ public class DiagonalGaussianModel implements EMClusterModel<NumberVector, EMMod
     this.wsum = 0.;
   }
 
+  /**
+   * Constructor for partial aggregates.
+   *
+   * @param dim Dimensionality
+   */
+  private DiagonalGaussianModel(int dim) {
+    this.mean = new double[dim];
+    this.nmea = new double[dim];
+    this.variances = new double[dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -142,6 +153,29 @@ public class DiagonalGaussianModel implements EMClusterModel<NumberVector, EMMod
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public DiagonalGaussianModel newPartial() {
+    return new DiagonalGaussianModel(mean.length);
+  }
+
+  @Override
+  public void mergeE(MergeableEMClusterModel<NumberVector, EMModel> partial) {
+    DiagonalGaussianModel other = (DiagonalGaussianModel) partial;
+    final double wei = other.wsum;
+    if(wei < Double.MIN_NORMAL) {
+      return;
+    }
+    final double nwsum = wsum + wei;
+    final double f = wei / nwsum, g = wsum * f;
+    // Combine variances, correcting for the difference of the means
+    for(int i = 0; i < mean.length; i++) {
+      final double delta = other.mean[i] - mean[i];
+      variances[i] += other.variances[i] + delta * delta * g;
+      mean[i] += delta * f;
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = variances.length;
@@ -237,7 +237,7 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
     // initial models
     List<? extends EMClusterModel<O, M>> models = mfactory.buildInitialModels(relation, k);
     WritableDataStore<double[]> probClusterIGivenX = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_SORTED, double[].class);
-    double loglikelihood = assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
+    double loglikelihood = expectationStep(relation, models, probClusterIGivenX);
     DoubleStatistic likestat = new DoubleStatistic(this.getClass().getName() + ".loglikelihood");
     LOG.statistics(likestat.setDouble(loglikelihood));
 
@@ -246,9 +246,9 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
     double bestloglikelihood = loglikelihood; // For detecting instabilities.
     for(++it; it < maxiter || maxiter < 0; it++) {
       final double oldloglikelihood = loglikelihood;
-      recomputeCovarianceMatrices(relation, probClusterIGivenX, models, prior);
+      maximizationStep(relation, probClusterIGivenX, models, prior);
       // reassign probabilities
-      loglikelihood = assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
+      loglikelihood = expectationStep(relation, models, probClusterIGivenX);
 
       LOG.statistics(likestat.setDouble(loglikelihood));
       if(loglikelihood - bestloglikelihood > delta) {
@@ -286,6 +286,31 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
     return result;
   }
 
+  /**
+   * Perform the expectation step: assign the cluster probabilities to all
+   * instances.
+   *
+   * @param relation Vector data
+   * @param models Cluster models
+   * @param probClusterIGivenX Output storage for cluster probabilities
+   * @return the expectation value of the current mixture of distributions
+   */
+  protected double expectationStep(Relation<O> relation, List<? extends EMClusterModel<O, M>> models, WritableDataStore<double[]> probClusterIGivenX) {
+    return assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
+  }
+
+  /**
+   * Perform the maximization step: re-estimate the cluster models.
+   *
+   * @param relation Vector data
+   * @param probClusterIGivenX Object probabilities
+   * @param models Cluster models to update
+   * @param prior MAP prior (use 0 for MLE)
+   */
+  protected void maximizationStep(Relation<O> relation, WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<O, M>> models, double prior) {
+    recomputeCovarianceMatrices(relation, probClusterIGivenX, models, prior);
+  }
+
   /**
    * Recompute the covariance matrixes.
    * 
@@ -330,9 +355,22 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
         wsum[i] += prob;
       }
     }
-    for(int i = 0; i < models.size(); i++) {
+    finalizeEStep(models, wsum, relation.size(), prior);
+  }
+
+  /**
+   * Finalize the E step of all models, with the new cluster weights.
+   *
+   * @param models Cluster models to update
+   * @param wsum Sum of the cluster probabilities
+   * @param size Number of instances
+   * @param prior MAP prior (use 0 for MLE)
+   */
+  protected static void finalizeEStep(List<? extends EMClusterModel<?, ?>> models, double[] wsum, int size, double prior) {
+    final int k = models.size();
+    for(int i = 0; i < k; i++) {
       // MLE / MAP
-      final double weight = prior <= 0. ? wsum[i] / relation.size() : (wsum[i] + prior - 1) / (relation.size() + prior * k - k);
+      final double weight = prior <= 0. ? wsum[i] / size : (wsum[i] + prior - 1) / (size + prior * k - k);
       models.get(i).finalizeEStep(weight, prior);
     }
   }
@@ -355,22 +393,35 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
     double emSum = 0.;
 
     for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      O vec = relation.get(iditer);
       double[] probs = new double[k];
-      for(int i = 0; i < k; i++) {
-        double v = models.get(i).estimateLogDensity(vec);
-        probs[i] = v > MIN_LOGLIKELIHOOD ? v : MIN_LOGLIKELIHOOD;
-      }
-      final double logP = logSumExp(probs);
-      for(int i = 0; i < k; i++) {
-        probs[i] = FastMath.exp(probs[i] - logP);
-      }
+      emSum += computeProbabilities(relation.get(iditer), models, probs);
       probClusterIGivenX.put(iditer, probs);
-      emSum += logP;
     }
     return emSum / relation.size();
   }
 
+  /**
+   * Compute the cluster probabilities of a single instance.
+   *
+   * @param vec Instance
+   * @param models Cluster models
+   * @param probs Output array for the cluster probabilities
+   * @param <O> Object type
+   * @return log likelihood of the instance
+   */
+  protected static <O> double computeProbabilities(O vec, List<? extends EMClusterModel<O, ?>> models, double[] probs) {
+    final int k = models.size();
+    for(int i = 0; i < k; i++) {
+      double v = models.get(i).estimateLogDensity(vec);
+      probs[i] = v > MIN_LOGLIKELIHOOD ? v : MIN_LOGLIKELIHOOD;
+    }
+    final double logP = logSumExp(probs);
+    for(int i = 0; i < k; i++) {
+      probs[i] = FastMath.exp(probs[i] - logP);
+    }
+    return logP;
+  }
+
   /**
    * Compute log(sum(exp(x_i)), with attention to numerical issues.
    * 
@@ -466,7 +517,7 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
     /**
      * Prior to enable MAP estimation (use 0 for MLE)
      */
-    double prior = 0.;
+    protected double prior = 0.;
 
     @Override
     public void configure(Parameterization config) {
@@ -0,0 +1,65 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.em;
+
+import elki.data.model.Model;
+
+/**
+ * EM cluster models that can aggregate parts of the data separately, e.g., in
+ * parallel, and merge the partial aggregates afterwards.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> Input object type
+ * @param <M> Cluster model type
+ */
+public interface MergeableEMClusterModel<O, M extends Model> extends EMClusterModel<O, M> {
+  /**
+   * Create a partial model, to aggregate a part of the data.
+   * <p>
+   * The partial model has empty aggregates, but a copy of the current
+   * parameters needed by {@link #firstPassE} and {@link #updateE}. It is
+   * combined with this model using {@link #mergeFirstPassE} respectively
+   * {@link #mergeE}, and must not be used otherwise.
+   *
+   * @return Partial model
+   */
+  MergeableEMClusterModel<O, M> newPartial();
+
+  /**
+   * Merge the first pass aggregates of a partial model into this model.
+   * <p>
+   * By default, this is not used (c.f. {@link #needsTwoPass()}.
+   *
+   * @param partial Partial model, from {@link #newPartial()}
+   */
+  default void mergeFirstPassE(MergeableEMClusterModel<O, M> partial) {
+    // empty.
+  }
+
+  /**
+   * Merge the aggregates of a partial model into this model.
+   *
+   * @param partial Partial model, from {@link #newPartial()}
+   */
+  void mergeE(MergeableEMClusterModel<O, M> partial);
+}
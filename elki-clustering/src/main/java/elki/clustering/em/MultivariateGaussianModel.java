@@ -36,7 +36,7 @@ import net.jafama.FastMath;
  * @author Erich Schubert
  * @since 0.7.0
  */
-public class MultivariateGaussianModel implements EMClusterModel<NumberVector, EMModel> {
+public class MultivariateGaussianModel implements MergeableEMClusterModel<NumberVector, EMModel> {
   /**
    * Class logger.
    */
@@ -111,6 +111,17 @@ public class MultivariateGaussianModel implements EMClusterModel<NumberVector, E
     this.logNormDet = FastMath.log(weight) - .5 * logNorm - getHalfLogDeterminant(this.chol);
   }
 
+  /**
+   * Constructor for partial aggregates.
+   *
+   * @param dim Dimensionality
+   */
+  private MultivariateGaussianModel(int dim) {
+    this.mean = new double[dim];
+    this.nmea = new double[dim];
+    this.covariance = new double[dim][dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -151,6 +162,37 @@ public class MultivariateGaussianModel implements EMClusterModel<NumberVector, E
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public MultivariateGaussianModel newPartial() {
+    return new MultivariateGaussianModel(mean.length);
+  }
+
+  @Override
+  public void mergeE(MergeableEMClusterModel<NumberVector, EMModel> partial) {
+    MultivariateGaussianModel other = (MultivariateGaussianModel) partial;
+    final double wei = other.wsum;
+    if(wei < Double.MIN_NORMAL) {
+      return;
+    }
+    final int dim = mean.length;
+    final double nwsum = wsum + wei;
+    final double f = wei / nwsum, g = wsum * f;
+    final double[] omean = other.mean;
+    // Combine scatter matrixes, correcting for the difference of the means
+    for(int i = 0; i < dim; i++) {
+      final double delta_i = omean[i] - mean[i];
+      double[] cov_i = covariance[i], ocov_i = other.covariance[i];
+      for(int j = 0; j <= i; j++) {
+        cov_i[j] += ocov_i[j] + delta_i * (omean[j] - mean[j]) * g;
+      }
+      // Other half is NOT updated here, but in finalizeEStep!
+    }
+    for(int i = 0; i < dim; i++) {
+      mean[i] += (omean[i] - mean[i]) * f;
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = covariance.length;
@@ -35,7 +35,7 @@ import net.jafama.FastMath;
  * @author Erich Schubert
  * @since 0.7.0
  */
-public class SphericalGaussianModel implements EMClusterModel<NumberVector, EMModel> {
+public class SphericalGaussianModel implements MergeableEMClusterModel<NumberVector, EMModel> {
   /**
    * Constant to avoid zero values.
    */
@@ -99,6 +99,16 @@ public class SphericalGaussianModel implements EMClusterModel<NumberVector, EMMo
     this.wsum = 0.;
   }
 
+  /**
+   * Constructor for partial aggregates.
+   *
+   * @param dim Dimensionality
+   */
+  private SphericalGaussianModel(int dim) {
+    this.mean = new double[dim];
+    this.nmea = new double[dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -131,6 +141,31 @@ public class SphericalGaussianModel implements EMClusterModel<NumberVector, EMMo
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public SphericalGaussianModel newPartial() {
+    return new SphericalGaussianModel(mean.length);
+  }
+
+  @Override
+  public void mergeE(MergeableEMClusterModel<NumberVector, EMModel> partial) {
+    SphericalGaussianModel other = (SphericalGaussianModel) partial;
+    final double wei = other.wsum;
+    if(wei < Double.MIN_NORMAL) {
+      return;
+    }
+    final double nwsum = wsum + wei;
+    final double f = wei / nwsum, g = wsum * f;
+    // Combine variances, correcting for the difference of the means
+    double sum = 0.;
+    for(int i = 0; i < mean.length; i++) {
+      final double delta = other.mean[i] - mean[i];
+      sum += delta * delta;
+      mean[i] += delta * f;
+    }
+    variance += other.variance + sum * g;
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = mean.length;
@@ -42,7 +42,7 @@ import net.jafama.FastMath;
  * @author Erich Schubert
  * @since 0.7.5
  */
-public class TextbookMultivariateGaussianModel implements EMClusterModel<NumberVector, EMModel> {
+public class TextbookMultivariateGaussianModel implements MergeableEMClusterModel<NumberVector, EMModel> {
   /**
    * Mean vector.
    */
@@ -107,6 +107,17 @@ public class TextbookMultivariateGaussianModel implements EMClusterModel<NumberV
     this.logNormDet = FastMath.log(weight) - .5 * logNorm - MultivariateGaussianModel.getHalfLogDeterminant(this.chol);
   }
 
+  /**
+   * Constructor for partial aggregates.
+   *
+   * @param dim Dimensionality
+   */
+  private TextbookMultivariateGaussianModel(int dim) {
+    this.mean = new double[dim];
+    this.tmp = new double[dim];
+    this.covariance = new double[dim][dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -137,6 +148,25 @@ public class TextbookMultivariateGaussianModel implements EMClusterModel<NumberV
     wsum += wei;
   }
 
+  @Override
+  public TextbookMultivariateGaussianModel newPartial() {
+    return new TextbookMultivariateGaussianModel(mean.length);
+  }
+
+  @Override
+  public void mergeE(MergeableEMClusterModel<NumberVector, EMModel> partial) {
+    TextbookMultivariateGaussianModel other = (TextbookMultivariateGaussianModel) partial;
+    // Naive aggregates are simply added:
+    for(int i = 0; i < mean.length; i++) {
+      mean[i] += other.mean[i];
+      double[] cov_i = covariance[i], ocov_i = other.covariance[i];
+      for(int j = 0; j <= i; j++) {
+        cov_i[j] += ocov_i[j];
+      }
+    }
+    wsum += other.wsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = covariance.length;
@@ -39,7 +39,7 @@ import net.jafama.FastMath;
  * @author Erich Schubert
  * @since 0.7.5
  */
-public class TwoPassMultivariateGaussianModel implements EMClusterModel<NumberVector, EMModel> {
+public class TwoPassMultivariateGaussianModel implements MergeableEMClusterModel<NumberVector, EMModel> {
   /**
    * Mean vector.
    */
@@ -104,6 +104,17 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<NumberVe
     this.logNormDet = FastMath.log(weight) - .5 * logNorm - MultivariateGaussianModel.getHalfLogDeterminant(this.chol);
   }
 
+  /**
+   * Constructor for partial aggregates.
+   *
+   * @param mean Current mean, or partial mean sum
+   */
+  private TwoPassMultivariateGaussianModel(double[] mean) {
+    this.mean = mean;
+    this.tmp = new double[mean.length];
+    this.covariance = new double[mean.length][mean.length];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -144,6 +155,18 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<NumberVe
     }
   }
 
+  /**
+   * Merge the partial mean aggregates of the first pass.
+   */
+  @Override
+  public void mergeFirstPassE(MergeableEMClusterModel<NumberVector, EMModel> partial) {
+    TwoPassMultivariateGaussianModel other = (TwoPassMultivariateGaussianModel) partial;
+    for(int i = 0; i < mean.length; i++) {
+      mean[i] += other.mean[i];
+    }
+    wsum += other.wsum;
+  }
+
   /**
    * Second pass: compute the covariance matrix.
    */
@@ -169,6 +192,29 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<NumberVe
     }
   }
 
+  /**
+   * Partial model, with a copy of the current mean: empty during the first
+   * pass, final during the second pass.
+   */
+  @Override
+  public TwoPassMultivariateGaussianModel newPartial() {
+    return new TwoPassMultivariateGaussianModel(mean.clone());
+  }
+
+  /**
+   * Merge the partial covariance aggregates of the second pass.
+   */
+  @Override
+  public void mergeE(MergeableEMClusterModel<NumberVector, EMModel> partial) {
+    TwoPassMultivariateGaussianModel other = (TwoPassMultivariateGaussianModel) partial;
+    for(int i = 0; i < mean.length; i++) {
+      double[] cov_i = covariance[i], ocov_i = other.covariance[i];
+      for(int j = 0; j <= i; j++) {
+        cov_i[j] += ocov_i[j];
+      }
+    }
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = covariance.length;
@@ -0,0 +1,229 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.em.parallel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import elki.clustering.em.EM;
+import elki.clustering.em.EMClusterModel;
+import elki.clustering.em.EMClusterModelFactory;
+import elki.clustering.em.MergeableEMClusterModel;
+import elki.data.model.MeanModel;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.relation.Relation;
+import elki.parallel.ParallelExecutor;
+
+/**
+ * Parallel EM clustering (Gaussian mixture modeling).
+ * <p>
+ * The data is split into a fixed number of blocks (depending on the number of
+ * threads only), that are processed in parallel. In the expectation step, each
+ * block computes the cluster probabilities and the log likelihood of its
+ * instances. In the maximization step, each block aggregates the weighted sums
+ * and scatter matrixes in partial models (see
+ * {@link MergeableEMClusterModel#newPartial()}), which are then merged in block
+ * order.
+ * The results are therefore reproducible for a fixed number of threads, but
+ * may differ from the sequential algorithm in the last digits due to the
+ * different order of floating point summation.
+ * <p>
+ * Models that do not support partial aggregation are re-estimated
+ * sequentially.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> object type to analyze
+ * @param <M> model type to produce
+ */
+public class ParallelEM<O, M extends MeanModel> extends EM<O, M> {
+  /**
+   * Minimum number of instances per block.
+   */
+  private static final int MIN_BLOCKSIZE = 64;
+
+  /**
+   * Constructor.
+   *
+   * @param k k parameter
+   * @param delta delta parameter
+   * @param mfactory EM cluster model factory
+   * @param miniter Minimum number of iterations
+   * @param maxiter Maximum number of iterations
+   * @param prior MAP prior
+   * @param soft Include soft assignments
+   */
+  public ParallelEM(int k, double delta, EMClusterModelFactory<O, M> mfactory, int miniter, int maxiter, double prior, boolean soft) {
+    super(k, delta, mfactory, miniter, maxiter, prior, soft);
+  }
+
+  @Override
+  protected double expectationStep(Relation<O> relation, List<? extends EMClusterModel<O, M>> models, WritableDataStore<double[]> probClusterIGivenX) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size(), k = models.size();
+    final int nblocks = ParallelExecutor.numBlocks(size, MIN_BLOCKSIZE);
+    final double[] sums = new double[nblocks];
+    final double[][] probs = new double[size][];
+    ParallelExecutor.runBlocks(size, nblocks, (b, start, end) -> {
+      double emSum = 0.;
+      for(DBIDArrayIter iter = ids.iter().seek(start); iter.getOffset() < end; iter.advance()) {
+        final double[] p = probs[iter.getOffset()] = new double[k];
+        emSum += computeProbabilities(relation.get(iter), models, p);
+      }
+      sums[b] = emSum;
+    });
+    // Store sequentially, as the storage may not support concurrent writes:
+    for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      probClusterIGivenX.put(iter, probs[iter.getOffset()]);
+    }
+    double emSum = 0.;
+    for(double s : sums) {
+      emSum += s;
+    }
+    return emSum / size;
+  }
+
+  @Override
+  protected void maximizationStep(Relation<O> relation, WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<O, M>> models, double prior) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size(), k = models.size();
+    final int nblocks = ParallelExecutor.numBlocks(size, MIN_BLOCKSIZE);
+    boolean needsTwoPass = false;
+    for(EMClusterModel<?, ?> m : models) {
+      m.beginEStep();
+      needsTwoPass |= m.needsTwoPass();
+    }
+    List<MergeableEMClusterModel<O, M>> mergeable = asMergeable(models);
+    if(mergeable == null) {
+      super.maximizationStep(relation, probClusterIGivenX, models, prior);
+      return;
+    }
+    List<List<MergeableEMClusterModel<O, M>>> partials = newPartials(mergeable, nblocks);
+    // First pass, only for two-pass models.
+    if(needsTwoPass) {
+      final List<List<MergeableEMClusterModel<O, M>>> first = partials;
+      ParallelExecutor.runBlocks(size, nblocks, (b, start, end) -> {
+        List<MergeableEMClusterModel<O, M>> part = first.get(b);
+        for(DBIDArrayIter iter = ids.iter().seek(start); iter.getOffset() < end; iter.advance()) {
+          double[] clusterProbabilities = probClusterIGivenX.get(iter);
+          O instance = relation.get(iter);
+          for(int i = 0; i < clusterProbabilities.length; i++) {
+            final double prob = clusterProbabilities[i];
+            if(prob > 1e-10) {
+              part.get(i).firstPassE(instance, prob);
+            }
+          }
+        }
+      });
+      for(List<MergeableEMClusterModel<O, M>> part : first) {
+        for(int i = 0; i < k; i++) {
+          mergeable.get(i).mergeFirstPassE(part.get(i));
+        }
+      }
+      for(EMClusterModel<?, ?> m : models) {
+        m.finalizeFirstPassE();
+      }
+      // Fresh partial models, with the new means:
+      partials = newPartials(mergeable, nblocks);
+    }
+    final List<List<MergeableEMClusterModel<O, M>>> second = partials;
+    final double[][] wsums = new double[nblocks][k];
+    ParallelExecutor.runBlocks(size, nblocks, (b, start, end) -> {
+      List<MergeableEMClusterModel<O, M>> part = second.get(b);
+      double[] wsum = wsums[b];
+      for(DBIDArrayIter iter = ids.iter().seek(start); iter.getOffset() < end; iter.advance()) {
+        double[] clusterProbabilities = probClusterIGivenX.get(iter);
+        O instance = relation.get(iter);
+        for(int i = 0; i < clusterProbabilities.length; i++) {
+          final double prob = clusterProbabilities[i];
+          if(prob > 1e-10) {
+            part.get(i).updateE(instance, prob);
+          }
+          wsum[i] += prob;
+        }
+      }
+    });
+    // Merge in block order, for reproducible results:
+    double[] wsum = new double[k];
+    for(int b = 0; b < nblocks; b++) {
+      List<MergeableEMClusterModel<O, M>> part = second.get(b);
+      for(int i = 0; i < k; i++) {
+        mergeable.get(i).mergeE(part.get(i));
+        wsum[i] += wsums[b][i];
+      }
+    }
+    finalizeEStep(models, wsum, size, prior);
+  }
+
+  /**
+   * Get the models as mergeable models.
+   *
+   * @param models Cluster models
+   * @return Mergeable models, or {@code null} if not supported by all models
+   */
+  @SuppressWarnings("unchecked")
+  private static <O, M extends MeanModel> List<MergeableEMClusterModel<O, M>> asMergeable(List<? extends EMClusterModel<O, M>> models) {
+    List<MergeableEMClusterModel<O, M>> mergeable = new ArrayList<>(models.size());
+    for(EMClusterModel<O, M> m : models) {
+      if(!(m instanceof MergeableEMClusterModel)) {
+        return null;
+      }
+      // Safe, the type parameters are the same as of the model
+      mergeable.add((MergeableEMClusterModel<O, M>) m);
+    }
+    return mergeable;
+  }
+
+  /**
+   * Create partial models for each block.
+   *
+   * @param models Cluster models
+   * @param nblocks Number of blocks
+   * @return Partial models
+   */
+  private static <O, M extends MeanModel> List<List<MergeableEMClusterModel<O, M>>> newPartials(List<MergeableEMClusterModel<O, M>> models, int nblocks) {
+    List<List<MergeableEMClusterModel<O, M>>> partials = new ArrayList<>(nblocks);
+    for(int b = 0; b < nblocks; b++) {
+      List<MergeableEMClusterModel<O, M>> part = new ArrayList<>(models.size());
+      for(MergeableEMClusterModel<O, M> m : models) {
+        part.add(m.newPartial());
+      }
+      partials.add(part);
+    }
+    return partials;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<O, M extends MeanModel> extends EM.Par<O, M> {
+    @Override
+    public ParallelEM<O, M> make() {
+      return new ParallelEM<>(k, delta, initializer, miniter, maxiter, prior, false);
+    }
+  }
+}
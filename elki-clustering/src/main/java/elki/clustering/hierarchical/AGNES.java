@@ -123,6 +123,12 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
    */
   protected Linkage linkage = WardLinkage.STATIC;
 
+  /**
+   * Storage of the working matrix, {@code null} to use a {@link MatrixParadigm}
+   * whenever the matrix fits into a single array.
+   */
+  protected MatrixStorage.Factory storage;
+
   /**
    * Constructor.
    *
@@ -130,9 +136,21 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
    * @param linkage Linkage method
    */
   public AGNES(Distance<? super O> distance, Linkage linkage) {
+    this(distance, linkage, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function to use
+   * @param linkage Linkage method
+   * @param storage Storage of the working matrix, may be {@code null}
+   */
+  public AGNES(Distance<? super O> distance, Linkage linkage, MatrixStorage.Factory storage) {
     super();
     this.distance = distance;
     this.linkage = linkage;
+    this.storage = storage;
   }
 
   /**
@@ -148,6 +166,9 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
     final DBIDs ids = relation.getDBIDs();
     final int size = ids.size();
     DistanceQuery<O> dq = new QueryBuilder<>(relation, distance).distanceQuery();
+    if(LargeMatrixParadigm.isNeeded(size, storage)) {
+      return runLarge(ids, dq);
+    }
 
     // Compute the initial (lower triangular) distance matrix.
     MatrixParadigm mat = new MatrixParadigm(ids);
@@ -170,6 +191,29 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
     return builder.complete();
   }
 
+  /**
+   * Run the algorithm with a {@link LargeMatrixParadigm}.
+   *
+   * @param ids Object ids
+   * @param dq Distance query
+   * @return Clustering hierarchy
+   */
+  private PointerHierarchyRepresentationResult runLarge(DBIDs ids, DistanceQuery<O> dq) {
+    final int size = ids.size();
+    LargeMatrixParadigm mat = new LargeMatrixParadigm(ids, storage);
+    initializeDistanceMatrix(mat, dq, linkage);
+    PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistance().isSquared());
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
+    DBIDArrayIter ix = mat.ix;
+    for(int i = 1, end = size; i < size; i++) {
+      end = shrinkActiveSet(ix, builder, end, //
+          findMerge(end, mat, builder));
+      LOG.incrementProcessed(prog);
+    }
+    LOG.ensureCompleted(prog);
+    return builder.complete();
+  }
+
   /**
    * Shrink the active set: if the last x objects are all merged, we can reduce
    * the working size accordingly.
@@ -335,6 +379,146 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
     }
   }
 
+  /**
+   * Initialize a large distance matrix.
+   *
+   * @param mat Matrix
+   * @param dq Distance query
+   * @param linkage Linkage method
+   */
+  protected static void initializeDistanceMatrix(LargeMatrixParadigm mat, DistanceQuery<?> dq, Linkage linkage) {
+    final DBIDArrayIter ix = mat.ix, iy = mat.iy;
+    final MatrixStorage matrix = mat.matrix;
+    final boolean issquare = dq.getDistance().isSquared();
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Distance matrix computation", mat.size, LOG) : null;
+    long pos = 0;
+    for(ix.seek(0); ix.valid(); ix.advance()) {
+      final int x = ix.getOffset();
+      assert (pos == LargeMatrixParadigm.triangleSize(x));
+      for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
+        matrix.set(pos++, linkage.initial(dq.distance(ix, iy), issquare));
+      }
+      LOG.incrementProcessed(prog);
+    }
+    LOG.ensureCompleted(prog);
+  }
+
+  /**
+   * Perform the next merge step in AGNES, on a large matrix.
+   *
+   * @param end Active set size
+   * @param mat Matrix storage
+   * @param builder Pointer representation builder
+   * @return the index that has disappeared, for shrinking the working set
+   */
+  protected int findMerge(int end, LargeMatrixParadigm mat, PointerHierarchyRepresentationBuilder builder) {
+    assert (end > 0);
+    final DBIDArrayIter ix = mat.ix, iy = mat.iy;
+    final MatrixStorage matrix = mat.matrix;
+    double mindist = Double.POSITIVE_INFINITY;
+    int x = -1, y = -1;
+    // Find minimum:
+    long xbase = 0;
+    for(int ox = 0; ox < end; xbase += ox++) {
+      // Skip if object has already joined a cluster:
+      if(builder.isLinked(ix.seek(ox))) {
+        continue;
+      }
+      assert (xbase == LargeMatrixParadigm.triangleSize(ox));
+      for(int oy = 0; oy < ox; oy++) {
+        // Skip if object has already joined a cluster:
+        if(builder.isLinked(iy.seek(oy))) {
+          continue;
+        }
+        final double dist = matrix.get(xbase + oy);
+        if(dist <= mindist) { // Prefer later on ==, to truncate more often.
+          mindist = dist;
+          x = ox;
+          y = oy;
+        }
+      }
+    }
+    assert (x >= 0 && y >= 0);
+    assert (y < x); // We could swap otherwise, but this shouldn't arise.
+    merge(end, mat, builder, mindist, x, y);
+    return x;
+  }
+
+  /**
+   * Execute the cluster merge, on a large matrix.
+   *
+   * @param end Active set size
+   * @param mat Matrix paradigm
+   * @param builder Hierarchy builder
+   * @param mindist Distance that was used for merging
+   * @param x First matrix position
+   * @param y Second matrix position
+   */
+  protected void merge(int end, LargeMatrixParadigm mat, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y) {
+    // Avoid allocating memory, by reusing existing iterators:
+    final DBIDArrayIter ix = mat.ix.seek(x), iy = mat.iy.seek(y);
+    if(LOG.isDebuggingFine()) {
+      LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy) + " " + mindist);
+    }
+    // Perform merge in data structure: x -> y
+    assert (y < x);
+    // Since y < x, prefer keeping y, dropping x.
+    builder.add(ix, linkage.restore(mindist, distance.isSquared()), iy);
+    // Update cluster size for y:
+    final int sizex = builder.getSize(ix), sizey = builder.getSize(iy);
+    builder.setSize(iy, sizex + sizey);
+    updateMatrix(end, mat, builder, mindist, x, y, sizex, sizey);
+  }
+
+  /**
+   * Update the scratch distance matrix, on a large matrix.
+   *
+   * @param end Active set size
+   * @param mat Matrix view
+   * @param builder Hierarchy builder (to get cluster sizes)
+   * @param mindist Distance that was used for merging
+   * @param x First matrix position
+   * @param y Second matrix position
+   * @param sizex Old size of first cluster
+   * @param sizey Old size of second cluster
+   */
+  protected void updateMatrix(int end, LargeMatrixParadigm mat, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+    // Update distance matrix. Note: y < x
+    final long xbase = LargeMatrixParadigm.triangleSize(x);
+    final long ybase = LargeMatrixParadigm.triangleSize(y);
+    final MatrixStorage scratch = mat.matrix;
+    DBIDArrayIter ij = mat.ix;
+
+    // Write to (y, j), with j < y
+    int j = 0;
+    for(; j < y; j++) {
+      if(builder.isLinked(ij.seek(j))) {
+        continue;
+      }
+      final long yb = ybase + j;
+      scratch.set(yb, linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(yb), builder.getSize(ij), mindist));
+    }
+    j++; // Skip y
+    // Write to (j, y), with y < j < x
+    long jbase = LargeMatrixParadigm.triangleSize(j);
+    for(; j < x; jbase += j++) {
+      if(builder.isLinked(ij.seek(j))) {
+        continue;
+      }
+      final long jb = jbase + y;
+      scratch.set(jb, linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(jb), builder.getSize(ij), mindist));
+    }
+    jbase += j++; // Skip x
+    // Write to (j, y), with y < x < j
+    for(; j < end; jbase += j++) {
+      if(builder.isLinked(ij.seek(j))) {
+        continue;
+      }
+      final long jb = jbase + y;
+      scratch.set(jb, linkage.combine(sizex, scratch.get(jbase + x), sizey, scratch.get(jb), builder.getSize(ij), mindist));
+    }
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     return TypeUtil.array(distance.getInputTypeRestriction());
@@ -355,6 +539,11 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
      */
     public static final OptionID LINKAGE_ID = new OptionID("hierarchical.linkage", "Linkage method to use (e.g. Ward, Single-Link)");
 
+    /**
+     * Option ID for the matrix storage.
+     */
+    public static final OptionID MATRIX_ID = new OptionID("hierarchical.matrix", "Storage of the working distance matrix (in-memory blocks, or a memory-mapped file). By default, a single array is used if the matrix fits, in-memory blocks otherwise.");
+
     /**
      * Current linkage in use.
      */
@@ -365,6 +554,11 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
      */
     protected Distance<? super O> distance;
 
+    /**
+     * Storage of the working matrix.
+     */
+    protected MatrixStorage.Factory storage;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<Linkage>(LINKAGE_ID, Linkage.class) //
@@ -374,11 +568,14 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
           ? SquaredEuclideanDistance.class : EuclideanDistance.class;
       new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, defaultD) //
           .grab(config, x -> distance = x);
+      new ObjectParameter<MatrixStorage.Factory>(MATRIX_ID, MatrixStorage.Factory.class) //
+          .setOptional(true) //
+          .grab(config, x -> storage = x);
     }
 
     @Override
     public AGNES<O> make() {
-      return new AGNES<>(distance, linkage);
+      return new AGNES<>(distance, linkage, storage);
     }
   }
 }
@@ -23,13 +23,16 @@ package elki.clustering.hierarchical;
 import elki.Algorithm;
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStore;
 import elki.database.datastore.DataStoreFactory;
 import elki.database.datastore.DataStoreUtil;
 import elki.database.datastore.DoubleDataStore;
 import elki.database.datastore.WritableDBIDDataStore;
 import elki.database.datastore.WritableDoubleDataStore;
 import elki.database.ids.*;
+import elki.database.query.SpanningTreeSearcher;
 import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.BatchKNNSearcher;
 import elki.database.query.knn.KNNSearcher;
 import elki.distance.Distance;
 import elki.distance.minkowski.EuclideanDistance;
@@ -111,6 +114,23 @@ public abstract class AbstractHDBSCAN<O> implements Algorithm {
     return coredists;
   }
 
+  /**
+   * Compute the core distances for all objects, with a batch kNN query.
+   *
+   * @param ids Objects
+   * @param knnQ Batch kNN query
+   * @param minPts Minimum neighborhood size
+   * @return Data store with core distances
+   */
+  protected WritableDoubleDataStore computeCoreDistsBatch(DBIDs ids, BatchKNNSearcher knnQ, int minPts) {
+    final WritableDoubleDataStore coredists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+    final DataStore<KNNList> knns = knnQ.getKNN(ids, minPts);
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      coredists.put(iter, knns.get(iter).getKNNDistance());
+    }
+    return coredists;
+  }
+
   /**
    * Class for processing the HDBSCAN G_mpts graph.
    *
@@ -173,7 +193,7 @@ public abstract class AbstractHDBSCAN<O> implements Algorithm {
    *
    * @author Erich Schubert
    */
-  public static class HeapMSTCollector implements PrimsMinimumSpanningTree.Collector {
+  public static class HeapMSTCollector implements PrimsMinimumSpanningTree.Collector, SpanningTreeSearcher.Collector {
     /**
      * Output heap.
      */
@@ -204,7 +224,7 @@ public abstract class AbstractHDBSCAN<O> implements Algorithm {
 
     @Override
     public void addEdge(double length, int i, int j) {
-      // Note: j is a unique key.
+      // Note: for Prim's algorithm, j is a unique key.
       heap.add(length, (((long) i) << 31) | j);
       if(log != null && prog != null) {
         log.incrementProcessed(prog);
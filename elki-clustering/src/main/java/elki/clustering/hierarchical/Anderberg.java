@@ -95,6 +95,12 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    */
   protected Linkage linkage = WardLinkage.STATIC;
 
+  /**
+   * Storage of the working matrix, {@code null} to use a {@link MatrixParadigm}
+   * whenever the matrix fits into a single array.
+   */
+  protected MatrixStorage.Factory storage;
+
   /**
    * Constructor.
    *
@@ -102,9 +108,21 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    * @param linkage Linkage method
    */
   public Anderberg(Distance<? super O> distance, Linkage linkage) {
+    this(distance, linkage, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function to use
+   * @param linkage Linkage method
+   * @param storage Storage of the working matrix, may be {@code null}
+   */
+  public Anderberg(Distance<? super O> distance, Linkage linkage, MatrixStorage.Factory storage) {
     super();
     this.distance = distance;
     this.linkage = linkage;
+    this.storage = storage;
   }
 
   /**
@@ -119,6 +137,9 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
     }
     DistanceQuery<O> dq = new QueryBuilder<>(relation, distance).distanceQuery();
     final DBIDs ids = relation.getDBIDs();
+    if(LargeMatrixParadigm.isNeeded(ids.size(), storage)) {
+      return runLarge(ids, dq);
+    }
     MatrixParadigm mat = new MatrixParadigm(ids);
     final int size = ids.size();
 
@@ -146,6 +167,32 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
     return builder.complete();
   }
 
+  /**
+   * Run the algorithm with a {@link LargeMatrixParadigm}.
+   *
+   * @param ids Object ids
+   * @param dq Distance query
+   * @return Clustering hierarchy
+   */
+  private PointerHierarchyRepresentationResult runLarge(DBIDs ids, DistanceQuery<O> dq) {
+    final int size = ids.size();
+    LargeMatrixParadigm mat = new LargeMatrixParadigm(ids, storage);
+    AGNES.initializeDistanceMatrix(mat, dq, linkage);
+    double[] bestd = new double[size];
+    int[] besti = new int[size];
+    initializeNNCache(mat.matrix, bestd, besti);
+    PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistance().isSquared());
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
+    DBIDArrayIter ix = mat.ix;
+    for(int i = 1, end = size; i < size; i++) {
+      end = AGNES.shrinkActiveSet(ix, builder, end, //
+          findMerge(end, mat, bestd, besti, builder));
+      LOG.incrementProcessed(prog);
+    }
+    LOG.ensureCompleted(prog);
+    return builder.complete();
+  }
+
   /**
    * Initialize the NN cache.
    *
@@ -350,6 +397,212 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
     besti[j] = bestij;
   }
 
+  /**
+   * Initialize the NN cache, for a large matrix.
+   *
+   * @param scratch Scratch space
+   * @param bestd Best distance
+   * @param besti Best index
+   */
+  protected static void initializeNNCache(MatrixStorage scratch, double[] bestd, int[] besti) {
+    final int size = bestd.length;
+    Arrays.fill(bestd, Double.POSITIVE_INFINITY);
+    Arrays.fill(besti, -1);
+    besti[0] = Integer.MAX_VALUE; // invalid, but not deactivated
+    long p = 0;
+    for(int x = 1; x < size; x++) {
+      double bestdx = Double.POSITIVE_INFINITY;
+      int bestix = -1;
+      for(int y = 0; y < x; y++) {
+        final double v = scratch.get(p++);
+        if(v < bestdx) {
+          bestdx = v;
+          bestix = y;
+        }
+      }
+      assert 0 <= bestix && bestix < x;
+      bestd[x] = bestdx;
+      besti[x] = bestix;
+    }
+    assert p == LargeMatrixParadigm.triangleSize(size);
+  }
+
+  /**
+   * Perform the next merge step, on a large matrix.
+   *
+   * @param size Data set size
+   * @param mat Matrix paradigm
+   * @param bestd Best distance
+   * @param besti Index of best distance
+   * @param builder Hierarchy builder
+   * @return x, for shrinking the working set.
+   */
+  protected int findMerge(int size, LargeMatrixParadigm mat, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder) {
+    double mindist = Double.POSITIVE_INFINITY;
+    int x = -1, y = -1;
+    // Find minimum:
+    for(int cx = 1; cx < size; cx++) {
+      // Skip if object has already joined a cluster:
+      final int cy = besti[cx];
+      if(cy < 0) {
+        continue;
+      }
+      final double dist = bestd[cx];
+      if(dist <= mindist) { // Prefer later on ==, to truncate more often.
+        mindist = dist;
+        x = cx;
+        y = cy;
+      }
+    }
+    assert 0 <= y && y < x;
+    merge(size, mat, bestd, besti, builder, mindist, x, y);
+    return x;
+  }
+
+  /**
+   * Execute the cluster merge, on a large matrix.
+   *
+   * @param size Data set size
+   * @param mat Matrix paradigm
+   * @param bestd Best distance
+   * @param besti Index of best distance
+   * @param builder Hierarchy builder
+   * @param mindist Distance that was used for merging
+   * @param x First matrix position
+   * @param y Second matrix position
+   */
+  protected void merge(int size, LargeMatrixParadigm mat, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y) {
+    // Avoid allocating memory, by reusing existing iterators:
+    final DBIDArrayIter ix = mat.ix.seek(x), iy = mat.iy.seek(y);
+    if(LOG.isDebuggingFine()) {
+      LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy) + " " + mindist);
+    }
+    // Perform merge in data structure: x -> y
+    assert y < x;
+    // Since y < x, prefer keeping y, dropping x.
+    builder.add(ix, linkage.restore(mindist, distance.isSquared()), iy);
+    // Update cluster size for y:
+    final int sizex = builder.getSize(ix), sizey = builder.getSize(iy);
+    builder.setSize(iy, sizex + sizey);
+    besti[x] = -1; // Deactivate removed cluster.
+    updateMatrix(size, mat.matrix, iy, bestd, besti, builder, mindist, x, y, sizex, sizey);
+    if(y > 0) {
+      findBest(mat.matrix, bestd, besti, y);
+    }
+  }
+
+  /**
+   * Update the scratch distance matrix, for a large matrix.
+   *
+   * @param size Data set size
+   * @param scratch Scratch matrix.
+   * @param ij Iterator to reuse
+   * @param bestd Best distance
+   * @param besti Index of best distance
+   * @param builder Hierarchy builder
+   * @param mindist Distance that was used for merging
+   * @param x First matrix position
+   * @param y Second matrix position
+   * @param sizex Old size of first cluster, with {@code x > y}
+   * @param sizey Old size of second cluster, with {@code y > x}
+   */
+  protected void updateMatrix(int size, MatrixStorage scratch, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+    // Update distance matrix. Note: miny < minx
+    final long xbase = LargeMatrixParadigm.triangleSize(x);
+    final long ybase = LargeMatrixParadigm.triangleSize(y);
+
+    // Write to (y, j), with j < y
+    int j = 0;
+    for(; j < y; j++) {
+      if(builder.isLinked(ij.seek(j))) {
+        continue;
+      }
+      final int sizej = builder.getSize(ij);
+      final long yb = ybase + j;
+      final double d = linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(yb), sizej, mindist);
+      scratch.set(yb, d);
+      updateCache(scratch, bestd, besti, x, y, j, d);
+    }
+    j++; // Skip y
+    // Write to (j, y), with y < j < x
+    long jbase = LargeMatrixParadigm.triangleSize(j);
+    for(; j < x; jbase += j++) {
+      if(builder.isLinked(ij.seek(j))) {
+        continue;
+      }
+      final int sizej = builder.getSize(ij);
+      final long jb = jbase + y;
+      final double d = linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(jb), sizej, mindist);
+      scratch.set(jb, d);
+      updateCache(scratch, bestd, besti, x, y, j, d);
+    }
+    jbase += j++; // Skip x
+    // Write to (j, y), with y < x < j
+    for(; j < size; jbase += j++) {
+      if(builder.isLinked(ij.seek(j))) {
+        continue;
+      }
+      final int sizej = builder.getSize(ij);
+      final long jb = jbase + y;
+      final double d = linkage.combine(sizex, scratch.get(jbase + x), sizey, scratch.get(jb), sizej, mindist);
+      scratch.set(jb, d);
+      updateCache(scratch, bestd, besti, x, y, j, d);
+    }
+  }
+
+  /**
+   * Update the cache, for a large matrix.
+   *
+   * @param scratch Scratch matrix
+   * @param bestd Best distance
+   * @param besti Best index
+   * @param x First cluster
+   * @param y Second cluster, {@code y < x}
+   * @param j Updated value d(y, j)
+   * @param d New distance
+   */
+  protected static void updateCache(MatrixStorage scratch, double[] bestd, int[] besti, int x, int y, int j, double d) {
+    assert y < x;
+    // New best
+    if(y < j && d <= bestd[j]) {
+      bestd[j] = d;
+      besti[j] = y;
+      return;
+    }
+    // Needs slow update.
+    if(besti[j] == x || besti[j] == y) {
+      findBest(scratch, bestd, besti, j);
+    }
+  }
+
+  /**
+   * Find the best in a row of the triangular matrix, for a large matrix.
+   *
+   * @param scratch Scratch matrix
+   * @param bestd Best distances cache
+   * @param besti Best indexes cache
+   * @param j Row to update
+   */
+  protected static void findBest(MatrixStorage scratch, double[] bestd, int[] besti, int j) {
+    // The distance has increased, we may no longer be the best merge.
+    double bestdj = Double.POSITIVE_INFINITY;
+    int bestij = -1;
+    long o = LargeMatrixParadigm.triangleSize(j);
+    for(int i = 0; i < j; i++, o++) {
+      if(besti[i] < 0) {
+        continue;
+      }
+      final double dist = scratch.get(o);
+      if(dist <= bestdj) {
+        bestdj = dist;
+        bestij = i;
+      }
+    }
+    assert bestij < j;
+    bestd[j] = bestdj;
+    besti[j] = bestij;
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     return TypeUtil.array(distance.getInputTypeRestriction());
@@ -375,6 +628,11 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
      */
     protected Distance<? super O> distance;
 
+    /**
+     * Storage of the working matrix.
+     */
+    protected MatrixStorage.Factory storage;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<Linkage>(AGNES.Par.LINKAGE_ID, Linkage.class) //
@@ -384,11 +642,14 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
           ? SquaredEuclideanDistance.class : EuclideanDistance.class;
       new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, defaultD) //
           .grab(config, x -> distance = x);
+      new ObjectParameter<MatrixStorage.Factory>(AGNES.Par.MATRIX_ID, MatrixStorage.Factory.class) //
+          .setOptional(true) //
+          .grab(config, x -> storage = x);
     }
 
     @Override
     public Anderberg<O> make() {
-      return new Anderberg<>(distance, linkage);
+      return new Anderberg<>(distance, linkage, storage);
     }
   }
 }
@@ -0,0 +1,220 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.hierarchical;
+
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
+
+/**
+ * Matrix storage in main memory, split into multiple arrays.
+ * <p>
+ * Each block holds 2<sup>27</sup> entries (1 GB in double precision), so the
+ * array size limit of Java does not restrict the matrix size. Positions map
+ * to blocks by bit shifting, and consecutive positions remain consecutive in
+ * memory within each block.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public abstract class BlockMatrixStorage implements MatrixStorage {
+  /**
+   * Block size (as bit shift).
+   */
+  protected static final int BLOCK_SHIFT = 27;
+
+  /**
+   * Bit mask for the position within a block.
+   */
+  protected static final long BLOCK_MASK = (1L << BLOCK_SHIFT) - 1;
+
+  /**
+   * Number of entries.
+   */
+  protected final long size;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of entries
+   */
+  protected BlockMatrixStorage(long size) {
+    this.size = size;
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Number of blocks needed for the given size.
+   *
+   * @param size Number of entries
+   * @return Number of blocks
+   */
+  protected static int numBlocks(long size) {
+    return (int) ((size + BLOCK_MASK) >>> BLOCK_SHIFT);
+  }
+
+  /**
+   * Size of the i'th block.
+   *
+   * @param size Number of entries
+   * @param i Block number
+   * @return Size of the block
+   */
+  protected static int blockSize(long size, int i) {
+    return (int) Math.min(BLOCK_MASK + 1, size - ((long) i << BLOCK_SHIFT));
+  }
+
+  /**
+   * Double precision blocks.
+   *
+   * @author Erich Schubert
+   */
+  private static class DoubleBlocks extends BlockMatrixStorage {
+    /**
+     * Data blocks.
+     */
+    private final double[][] blocks;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of entries
+     */
+    DoubleBlocks(long size) {
+      super(size);
+      blocks = new double[numBlocks(size)][];
+      for(int i = 0; i < blocks.length; i++) {
+        blocks[i] = new double[blockSize(size, i)];
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      return blocks[(int) (pos >>> BLOCK_SHIFT)][(int) (pos & BLOCK_MASK)];
+    }
+
+    @Override
+    public void set(long pos, double value) {
+      blocks[(int) (pos >>> BLOCK_SHIFT)][(int) (pos & BLOCK_MASK)] = value;
+    }
+  }
+
+  /**
+   * Single precision blocks.
+   *
+   * @author Erich Schubert
+   */
+  private static class FloatBlocks extends BlockMatrixStorage {
+    /**
+     * Data blocks.
+     */
+    private final float[][] blocks;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of entries
+     */
+    FloatBlocks(long size) {
+      super(size);
+      blocks = new float[numBlocks(size)][];
+      for(int i = 0; i < blocks.length; i++) {
+        blocks[i] = new float[blockSize(size, i)];
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      return blocks[(int) (pos >>> BLOCK_SHIFT)][(int) (pos & BLOCK_MASK)];
+    }
+
+    @Override
+    public void set(long pos, double value) {
+      blocks[(int) (pos >>> BLOCK_SHIFT)][(int) (pos & BLOCK_MASK)] = (float) value;
+    }
+  }
+
+  /**
+   * Factory for in-memory block storage.
+   *
+   * @author Erich Schubert
+   *
+   * @has - - - BlockMatrixStorage
+   */
+  public static class Factory implements MatrixStorage.Factory {
+    /**
+     * Default factory, using double precision.
+     */
+    public static final Factory DOUBLE = new Factory(false);
+
+    /**
+     * Use single precision.
+     */
+    protected boolean useFloat;
+
+    /**
+     * Constructor.
+     *
+     * @param useFloat Use single precision
+     */
+    public Factory(boolean useFloat) {
+      super();
+      this.useFloat = useFloat;
+    }
+
+    @Override
+    public MatrixStorage make(long size) {
+      return useFloat ? new FloatBlocks(size) : new DoubleBlocks(size);
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     */
+    public static class Par implements Parameterizer {
+      /**
+       * Option to use single precision.
+       */
+      public static final OptionID FLOAT_ID = new OptionID("matrix.float", "Store the matrix in single precision, to halve the memory requirements.");
+
+      /**
+       * Use single precision.
+       */
+      protected boolean useFloat;
+
+      @Override
+      public void configure(Parameterization config) {
+        new Flag(FLOAT_ID).grab(config, x -> useFloat = x);
+      }
+
+      @Override
+      public Factory make() {
+        return useFloat ? new Factory(true) : DOUBLE;
+      }
+    }
+  }
+}
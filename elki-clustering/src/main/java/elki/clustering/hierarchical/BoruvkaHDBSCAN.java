@@ -0,0 +1,170 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.hierarchical;
+
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDBIDDataStore;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDUtil;
+import elki.database.query.QueryBuilder;
+import elki.database.query.SpanningTreeSearcher;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.math.geometry.PrimsMinimumSpanningTree;
+import elki.utilities.datastructures.heap.DoubleLongHeap;
+import elki.utilities.datastructures.heap.DoubleLongMinHeap;
+import elki.utilities.documentation.Description;
+import elki.utilities.documentation.Reference;
+import elki.utilities.documentation.Title;
+
+/**
+ * HDBSCAN clustering, computing the minimum spanning tree with an index.
+ * <p>
+ * Instead of Prim's algorithm, which needs to compute all pairwise distances,
+ * this uses a dual-tree Borůvka algorithm on an index such as the k-d-tree or
+ * the cover tree, if available (c.f. {@link QueryBuilder#spanningTree()}). The
+ * core distances are computed with a batch kNN query first, and are then used
+ * to prune the tree traversal on the mutual reachability distance. If no index
+ * supports computing the spanning tree, we fall back to Prim's algorithm as
+ * used by {@link HDBSCANLinearMemory}; in either case, no distance matrix is
+ * built. The result is in the same pointer representation.
+ * <p>
+ * This implementation does <em>not</em> include the cluster extraction
+ * discussed as Step 4, which is provided in a separate step. For this reason,
+ * we also do <em>not include self-edges</em>.
+ * <p>
+ * Reference:
+ * <p>
+ * R. J. G. B. Campello, D. Moulavi, J. Sander<br>
+ * Density-Based Clustering Based on Hierarchical Density Estimates<br>
+ * Pacific-Asia Conf. Advances in Knowledge Discovery and Data Mining (PAKDD)
+ * <p>
+ * L. McInnes, J. Healy<br>
+ * Accelerated Hierarchical Density Based Clustering<br>
+ * IEEE Int. Conf. Data Mining Workshops (ICDMW)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - PointerDensityHierarchyRepresentationResult
+ * @assoc - - - SpanningTreeSearcher
+ *
+ * @param <O> Object type
+ */
+@Title("HDBSCAN with Dual-Tree Borůvka")
+@Description("HDBSCAN using an index to compute the minimum spanning tree of the mutual reachability distance")
+@Reference(authors = "R. J. G. B. Campello, D. Moulavi, J. Sander", //
+    title = "Density-Based Clustering Based on Hierarchical Density Estimates", //
+    booktitle = "Pacific-Asia Conf. Advances in Knowledge Discovery and Data Mining (PAKDD)", //
+    url = "https://doi.org/10.1007/978-3-642-37456-2_14", //
+    bibkey = "DBLP:conf/pakdd/CampelloMS13")
+@Reference(authors = "L. McInnes, J. Healy", //
+    title = "Accelerated Hierarchical Density Based Clustering", //
+    booktitle = "IEEE Int. Conf. Data Mining Workshops (ICDMW)", //
+    url = "https://doi.org/10.1109/ICDMW.2017.12", //
+    bibkey = "DBLP:conf/icdm/McInnesH17")
+public class BoruvkaHDBSCAN<O> extends AbstractHDBSCAN<O> implements HierarchicalClusteringAlgorithm {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(BoruvkaHDBSCAN.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param minPts Minimum number of points for density
+   */
+  public BoruvkaHDBSCAN(Distance<? super O> distance, int minPts) {
+    super(distance, minPts);
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(distance.getInputTypeRestriction());
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerDensityHierarchyRepresentationResult run(Relation<O> relation) {
+    final QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+    // Obtain the spanning tree first, so the kNN queries can use the same index
+    final SpanningTreeSearcher mstQ = qb.spanningTree();
+    final DistanceQuery<O> distQ = qb.distanceQuery();
+    // We need array addressing later.
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+
+    // 1. Compute the core distances
+    final WritableDoubleDataStore coredists = computeCoreDistsBatch(ids, qb.batchKNNByDBID(minPts), minPts);
+
+    final int numedges = ids.size() - 1;
+    DoubleLongHeap heap = new DoubleLongMinHeap(numedges);
+    // 2. Build spanning tree.
+    FiniteProgress mprog = LOG.isVerbose() ? new FiniteProgress("Computing minimum spanning tree (n-1 edges)", numedges, LOG) : null;
+    HeapMSTCollector collector = new HeapMSTCollector(heap, mprog, LOG);
+    if(mstQ != null) {
+      mstQ.spanningTree(ids, coredists, collector);
+    }
+    else {
+      LOG.verbose("No index supports spanning trees, using Prim's algorithm.");
+      PrimsMinimumSpanningTree.processDense(ids, new HDBSCANAdapter(ids, coredists, distQ), collector);
+    }
+    LOG.ensureCompleted(mprog);
+    // Storage for pointer representation:
+    WritableDBIDDataStore pi = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
+    WritableDoubleDataStore lambda = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC, Double.POSITIVE_INFINITY);
+    convertToPointerRepresentation(ids, heap, pi, lambda);
+
+    return new PointerDensityHierarchyRepresentationResult(ids, pi, lambda, distQ.getDistance().isSquared(), coredists);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> extends AbstractHDBSCAN.Par<O> {
+    @Override
+    public BoruvkaHDBSCAN<O> make() {
+      return new BoruvkaHDBSCAN<>(distance, minPts);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.hierarchical;
+
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DBIDs;
+import elki.database.query.distance.DistanceQuery;
+
+/**
+ * Matrix paradigm for data sets where the triangle of the working matrix does
+ * not fit into a single Java array, or when a different storage is requested.
+ * <p>
+ * The matrix is kept in a {@link MatrixStorage} addressed by long positions,
+ * which can be split into multiple arrays, use single precision, or be a
+ * memory-mapped file. Otherwise, it is laid out as in {@link MatrixParadigm},
+ * which should be preferred whenever possible, as array access is faster.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - MatrixStorage
+ */
+public class LargeMatrixParadigm {
+  /**
+   * Maximum number of objects for which a {@link MatrixParadigm} can be used.
+   */
+  public static final int MAX_ARRAY_SIZE = 0x10000;
+
+  /**
+   * Two iterators to reference to objects.
+   */
+  public final DBIDArrayIter ix, iy;
+
+  /**
+   * Distance matrix (<b>modifiable</b>).
+   */
+  public final MatrixStorage matrix;
+
+  /**
+   * Number of rows/columns.
+   */
+  public final int size;
+
+  /**
+   * Constructor.
+   *
+   * @param ids Database ids.
+   * @param storage Matrix storage factory, {@code null} for in-memory blocks
+   */
+  public LargeMatrixParadigm(DBIDs ids, MatrixStorage.Factory storage) {
+    size = ids.size();
+    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    ix = aids.iter();
+    iy = aids.iter();
+    matrix = (storage != null ? storage : BlockMatrixStorage.Factory.DOUBLE).make(triangleSize(size));
+  }
+
+  /**
+   * Test whether the large matrix paradigm is needed, i.e., if a specific
+   * storage was requested, or the data set is too large for a
+   * {@link MatrixParadigm}.
+   *
+   * @param size Data set size
+   * @param storage Requested storage, may be {@code null}
+   * @return {@code true} if a {@link LargeMatrixParadigm} is needed
+   */
+  public static boolean isNeeded(int size, MatrixStorage.Factory storage) {
+    return storage != null || size > MAX_ARRAY_SIZE;
+  }
+
+  /**
+   * Compute the size of a complete x by x triangle (minus diagonal)
+   *
+   * @param x Offset
+   * @return Size of complete triangle
+   */
+  public static long triangleSize(int x) {
+    return (((long) x) * (x - 1)) >>> 1;
+  }
+
+  /**
+   * Get a value from the (upper triangular) distance matrix.
+   * <p>
+   * Note: in many cases, linear iteration over the matrix will be faster than
+   * repeated calls to this method!
+   *
+   * @param x First object
+   * @param y Second object
+   * @return Distance
+   */
+  public double get(int x, int y) {
+    return x == y ? 0 : x < y ? matrix.get(triangleSize(y) + x) : matrix.get(triangleSize(x) + y);
+  }
+
+  /**
+   * Initialize a distance matrix.
+   *
+   * @param dq Distance query
+   * @return this
+   */
+  public LargeMatrixParadigm initializeWithDistances(DistanceQuery<?> dq) {
+    final DBIDArrayIter ix = this.ix, iy = this.iy;
+    final MatrixStorage matrix = this.matrix;
+    long pos = 0;
+    for(ix.seek(0); ix.valid(); ix.advance()) {
+      final int x = ix.getOffset();
+      assert pos == triangleSize(x);
+      for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
+        matrix.set(pos++, dq.distance(ix, iy));
+      }
+    }
+    return this;
+  }
+}
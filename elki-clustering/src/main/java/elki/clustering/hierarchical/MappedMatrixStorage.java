@@ -0,0 +1,251 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.hierarchical;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.FileParameter;
+import elki.utilities.optionhandling.parameters.Flag;
+
+/**
+ * Matrix storage in a memory-mapped file, for matrixes larger than main
+ * memory.
+ * <p>
+ * The file is mapped in blocks of the same size as {@link BlockMatrixStorage},
+ * and the operating system pages the blocks in and out as needed. Because
+ * rows are stored consecutively, the row scans of the linkage update have a
+ * sequential access pattern.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public abstract class MappedMatrixStorage implements MatrixStorage {
+  /**
+   * Number of entries.
+   */
+  protected final long size;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of entries
+   */
+  protected MappedMatrixStorage(long size) {
+    this.size = size;
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Map the file in blocks.
+   *
+   * @param file File to map
+   * @param size Number of entries
+   * @param bytes Bytes per entry
+   * @return Mapped blocks
+   * @throws IOException on IO errors
+   */
+  protected static MappedByteBuffer[] map(File file, long size, int bytes) throws IOException {
+    MappedByteBuffer[] blocks = new MappedByteBuffer[BlockMatrixStorage.numBlocks(size)];
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        FileChannel channel = raf.getChannel()) {
+      raf.setLength(size * bytes);
+      for(int i = 0; i < blocks.length; i++) {
+        final long start = (long) i << BlockMatrixStorage.BLOCK_SHIFT;
+        blocks[i] = channel.map(MapMode.READ_WRITE, start * bytes, BlockMatrixStorage.blockSize(size, i) * (long) bytes);
+        blocks[i].order(ByteOrder.nativeOrder());
+      }
+    }
+    return blocks;
+  }
+
+  /**
+   * Double precision storage.
+   *
+   * @author Erich Schubert
+   */
+  private static class DoubleMapped extends MappedMatrixStorage {
+    /**
+     * Data blocks.
+     */
+    private final DoubleBuffer[] blocks;
+
+    /**
+     * Constructor.
+     *
+     * @param file File to map
+     * @param size Number of entries
+     * @throws IOException on IO errors
+     */
+    DoubleMapped(File file, long size) throws IOException {
+      super(size);
+      MappedByteBuffer[] mapped = map(file, size, Double.BYTES);
+      blocks = new DoubleBuffer[mapped.length];
+      for(int i = 0; i < mapped.length; i++) {
+        blocks[i] = mapped[i].asDoubleBuffer();
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      return blocks[(int) (pos >>> BlockMatrixStorage.BLOCK_SHIFT)].get((int) (pos & BlockMatrixStorage.BLOCK_MASK));
+    }
+
+    @Override
+    public void set(long pos, double value) {
+      blocks[(int) (pos >>> BlockMatrixStorage.BLOCK_SHIFT)].put((int) (pos & BlockMatrixStorage.BLOCK_MASK), value);
+    }
+  }
+
+  /**
+   * Single precision storage.
+   *
+   * @author Erich Schubert
+   */
+  private static class FloatMapped extends MappedMatrixStorage {
+    /**
+     * Data blocks.
+     */
+    private final FloatBuffer[] blocks;
+
+    /**
+     * Constructor.
+     *
+     * @param file File to map
+     * @param size Number of entries
+     * @throws IOException on IO errors
+     */
+    FloatMapped(File file, long size) throws IOException {
+      super(size);
+      MappedByteBuffer[] mapped = map(file, size, Float.BYTES);
+      blocks = new FloatBuffer[mapped.length];
+      for(int i = 0; i < mapped.length; i++) {
+        blocks[i] = mapped[i].asFloatBuffer();
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      return blocks[(int) (pos >>> BlockMatrixStorage.BLOCK_SHIFT)].get((int) (pos & BlockMatrixStorage.BLOCK_MASK));
+    }
+
+    @Override
+    public void set(long pos, double value) {
+      blocks[(int) (pos >>> BlockMatrixStorage.BLOCK_SHIFT)].put((int) (pos & BlockMatrixStorage.BLOCK_MASK), (float) value);
+    }
+  }
+
+  /**
+   * Factory for memory-mapped storage.
+   *
+   * @author Erich Schubert
+   *
+   * @has - - - MappedMatrixStorage
+   */
+  public static class Factory implements MatrixStorage.Factory {
+    /**
+     * File to use, may be {@code null} for a temporary file.
+     */
+    protected File file;
+
+    /**
+     * Use single precision.
+     */
+    protected boolean useFloat;
+
+    /**
+     * Constructor.
+     *
+     * @param file File to use, {@code null} for a temporary file
+     * @param useFloat Use single precision
+     */
+    public Factory(File file, boolean useFloat) {
+      super();
+      this.file = file;
+      this.useFloat = useFloat;
+    }
+
+    @Override
+    public MatrixStorage make(long size) {
+      try {
+        File f = file;
+        if(f == null) {
+          f = File.createTempFile("elki-matrix", ".bin");
+          f.deleteOnExit();
+        }
+        return useFloat ? new FloatMapped(f, size) : new DoubleMapped(f, size);
+      }
+      catch(IOException e) {
+        throw new AbortException("Could not map the matrix file.", e);
+      }
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     */
+    public static class Par implements Parameterizer {
+      /**
+       * Option for the file to use.
+       */
+      public static final OptionID FILE_ID = new OptionID("matrix.file", "File to store the matrix in. If not given, a temporary file is used.");
+
+      /**
+       * File to use.
+       */
+      protected File file;
+
+      /**
+       * Use single precision.
+       */
+      protected boolean useFloat;
+
+      @Override
+      public void configure(Parameterization config) {
+        new FileParameter(FILE_ID, FileParameter.FileType.OUTPUT_FILE) //
+            .setOptional(true) //
+            .grab(config, x -> file = new File(x));
+        new Flag(BlockMatrixStorage.Factory.Par.FLOAT_ID).grab(config, x -> useFloat = x);
+      }
+
+      @Override
+      public Factory make() {
+        return new Factory(file, useFloat);
+      }
+    }
+  }
+}
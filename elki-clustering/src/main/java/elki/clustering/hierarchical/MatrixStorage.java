@@ -0,0 +1,75 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.hierarchical;
+
+/**
+ * Storage for the (lower) triangular working matrix of the matrix paradigm.
+ * <p>
+ * Positions are {@code long}, such that the triangle of more than 65535
+ * objects can be addressed. Rows are stored consecutively, i.e., the entry
+ * {@code (x, y)} with {@code y < x} is at position
+ * {@code LargeMatrixParadigm.triangleSize(x) + y}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public interface MatrixStorage {
+  /**
+   * Get the value at a position.
+   *
+   * @param pos Position
+   * @return Value
+   */
+  double get(long pos);
+
+  /**
+   * Set the value at a position.
+   *
+   * @param pos Position
+   * @param value New value
+   */
+  void set(long pos, double value);
+
+  /**
+   * Number of entries.
+   *
+   * @return Size
+   */
+  long size();
+
+  /**
+   * Factory interface for matrix storage.
+   *
+   * @author Erich Schubert
+   *
+   * @stereotype factory
+   * @has - - - MatrixStorage
+   */
+  interface Factory {
+    /**
+     * Allocate a new storage.
+     *
+     * @param size Number of entries
+     * @return Storage
+     */
+    MatrixStorage make(long size);
+  }
+}
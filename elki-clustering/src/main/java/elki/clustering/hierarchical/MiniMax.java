@@ -80,14 +80,31 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
    */
   protected Distance<? super O> distance;
 
+  /**
+   * Storage of the working matrix, {@code null} to use a {@link MatrixParadigm}
+   * whenever the matrix fits into a single array.
+   */
+  protected MatrixStorage.Factory storage;
+
   /**
    * Constructor.
    *
    * @param distance Distance function to use.
    */
   public MiniMax(Distance<? super O> distance) {
+    this(distance, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function to use.
+   * @param storage Storage of the working matrix, may be {@code null}
+   */
+  public MiniMax(Distance<? super O> distance, MatrixStorage.Factory storage) {
     super();
     this.distance = distance;
+    this.storage = storage;
   }
 
   @Override
@@ -110,6 +127,21 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
     PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistance().isSquared());
     Int2ObjectOpenHashMap<ModifiableDBIDs> clusters = new Int2ObjectOpenHashMap<>(size);
 
+    if(LargeMatrixParadigm.isNeeded(size, storage)) {
+      LargeMatrixParadigm mat = new LargeMatrixParadigm(ids, storage);
+      Prototypes prots = new Prototypes(mat.matrix.size());
+      initializeMatrices(mat, prots, dq);
+      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("MiniMax clustering", size - 1, LOG) : null;
+      DBIDArrayIter ix = mat.ix;
+      for(int i = 1, end = size; i < size; i++) {
+        end = AGNES.shrinkActiveSet(ix, builder, end, //
+            findMerge(end, mat, prots, builder, clusters, dq));
+        LOG.incrementProcessed(progress);
+      }
+      LOG.ensureCompleted(progress);
+      return (PointerPrototypeHierarchyRepresentationResult) builder.complete();
+    }
+
     // Allocate working space:
     MatrixParadigm mat = new MatrixParadigm(ids);
     ArrayModifiableDBIDs prots = DBIDUtil.newArray(MatrixParadigm.triangleSize(size));
@@ -286,31 +318,211 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
     assert (y < x);
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
     final double[] distances = mat.matrix;
+    DBIDVar prototype = DBIDUtil.newVar(ix.seek(x)); // Default prototype
+    final double minMaxDist = minMaxDistance(ix, iy, clusters, dq, x, y, prototype);
+
+    final int offset = MatrixParadigm.triangleSize(x) + y;
+    distances[offset] = minMaxDist;
+    prots.seek(offset).setDBID(prototype);
+  }
+
+  /**
+   * Initializes the inter-cluster distance matrix of possible merges, for a
+   * large matrix.
+   * 
+   * @param mat Matrix
+   * @param prots Prototype storage
+   * @param dq The distance query
+   */
+  protected static <O> void initializeMatrices(LargeMatrixParadigm mat, Prototypes prots, DistanceQuery<O> dq) {
+    final DBIDArrayIter ix = mat.ix, iy = mat.iy;
+    final MatrixStorage distances = mat.matrix;
+    long pos = 0;
+    for(ix.seek(0); ix.valid(); ix.advance()) {
+      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
+        prots.set(pos, iy);
+        distances.set(pos++, dq.distance(ix, iy));
+      }
+    }
+  }
+
+  /**
+   * Find the best merge, in a large matrix.
+   * 
+   * @param mat Matrix view
+   * @param prots Prototypes
+   * @param builder Result builder
+   * @param clusters Current clusters
+   * @param dq Distance query
+   * @return x, for shrinking the working set.
+   */
+  protected static int findMerge(int end, LargeMatrixParadigm mat, Prototypes prots, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<?> dq) {
+    final DBIDArrayIter ix = mat.ix, iy = mat.iy;
+    final MatrixStorage distances = mat.matrix;
+    double mindist = Double.POSITIVE_INFINITY;
+    int x = -1, y = -1;
+
+    for(int dx = 0; dx < end; dx++) {
+      // Skip if object is already linked
+      if(builder.isLinked(ix.seek(dx))) {
+        continue;
+      }
+      final long xoffset = LargeMatrixParadigm.triangleSize(dx);
+
+      for(int dy = 0; dy < dx; dy++) {
+        // Skip if object is already linked
+        if(builder.isLinked(iy.seek(dy))) {
+          continue;
+        }
+
+        double dist = distances.get(xoffset + dy);
+        if(dist < mindist) {
+          mindist = dist;
+          x = dx;
+          y = dy;
+        }
+      }
+    }
+
+    assert (y < x);
+    merge(end, mat, prots, builder, clusters, dq, x, y);
+    return x;
+  }
+
+  /**
+   * Merges two clusters given by x, y, their points with smallest IDs, and y to
+   * keep, in a large matrix.
+   * 
+   * @param size number of ids in the data set
+   * @param mat distance matrix
+   * @param prots calculated prototypes
+   * @param builder Result builder
+   * @param clusters the clusters
+   * @param dq distance query of the data set
+   * @param x first cluster to merge
+   * @param y second cluster to merge
+   */
+  protected static void merge(int size, LargeMatrixParadigm mat, Prototypes prots, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<?> dq, int x, int y) {
+    assert (y < x);
+    final DBIDArrayIter ix = mat.ix.seek(x), iy = mat.iy.seek(y);
+    final MatrixStorage distances = mat.matrix;
+    final long offset = LargeMatrixParadigm.triangleSize(x) + y;
+
+    if(LOG.isDebuggingFine()) {
+      LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy) + " " + distances.get(offset));
+    }
+
     ModifiableDBIDs cx = clusters.get(x), cy = clusters.get(y);
 
+    // Keep y
+    if(cy == null) {
+      cy = DBIDUtil.newHashSet();
+      cy.add(iy);
+    }
+    if(cx == null) {
+      cy.add(ix);
+    }
+    else {
+      cy.addDBIDs(cx);
+      clusters.remove(x);
+    }
+    clusters.put(y, cy);
+
+    // parent of x is set to y
+    builder.add(ix, distances.get(offset), iy, prots.get(offset));
+
+    updateMatrices(size, mat, prots, builder, clusters, dq, y);
+  }
+
+  /**
+   * Update the entries of the matrices that contain a distance to c, the newly
+   * merged cluster, in a large matrix.
+   * 
+   * @param size number of ids in the data set
+   * @param mat matrix paradigm
+   * @param prots calculated prototypes
+   * @param builder Result builder
+   * @param clusters the clusters
+   * @param dq distance query of the data set
+   * @param c the cluster to update distances to
+   */
+  protected static <O> void updateMatrices(int size, LargeMatrixParadigm mat, Prototypes prots, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<O> dq, int c) {
+    final DBIDArrayIter ix = mat.ix, iy = mat.iy;
+    // c is the new cluster.
+    // Update entries (at (x,y) with x > y) in the matrix where x = c or y = c
+
+    // Update entries at (c,y) with y < c
+    ix.seek(c);
+    for(iy.seek(0); iy.getOffset() < c; iy.advance()) {
+      // Skip entry if already merged
+      if(builder.isLinked(iy)) {
+        continue;
+      }
+      updateEntry(mat, prots, clusters, dq, c, iy.getOffset());
+    }
+
+    // Update entries at (x,c) with x > c
+    iy.seek(c);
+    for(ix.seek(c + 1); ix.getOffset() < size; ix.advance()) {
+      // Skip entry if already merged
+      if(builder.isLinked(ix)) {
+        continue;
+      }
+      updateEntry(mat, prots, clusters, dq, ix.getOffset(), c);
+    }
+  }
+
+  /**
+   * Update entry at x,y for distance matrix distances, in a large matrix.
+   * 
+   * @param mat distance matrix
+   * @param prots calculated prototypes
+   * @param clusters the clusters
+   * @param dq distance query on the data set
+   * @param x index of cluster, {@code x > y}
+   * @param y index of cluster, {@code y < x}
+   */
+  protected static void updateEntry(LargeMatrixParadigm mat, Prototypes prots, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<?> dq, int x, int y) {
+    assert (y < x);
+    final DBIDArrayIter ix = mat.ix, iy = mat.iy;
+    final MatrixStorage distances = mat.matrix;
     DBIDVar prototype = DBIDUtil.newVar(ix.seek(x)); // Default prototype
-    double minMaxDist;
+    final double minMaxDist = minMaxDistance(ix, iy, clusters, dq, x, y, prototype);
+
+    final long offset = LargeMatrixParadigm.triangleSize(x) + y;
+    distances.set(offset, minMaxDist);
+    prots.set(offset, prototype);
+  }
+
+  /**
+   * Compute the minimax distance of two clusters.
+   *
+   * @param ix Iterator to reuse
+   * @param iy Iterator to reuse
+   * @param clusters the clusters
+   * @param dq distance query on the data set
+   * @param x index of cluster, {@code x > y}
+   * @param y index of cluster, {@code y < x}
+   * @param prototype Prototype output variable
+   * @return Minimax distance
+   */
+  private static double minMaxDistance(DBIDArrayIter ix, DBIDArrayIter iy, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<?> dq, int x, int y, DBIDVar prototype) {
+    ModifiableDBIDs cx = clusters.get(x), cy = clusters.get(y);
     // Two "real" clusters:
     if(cx != null && cy != null) {
-      minMaxDist = findPrototype(dq, cx, cy, prototype, Double.POSITIVE_INFINITY);
-      minMaxDist = findPrototype(dq, cy, cx, prototype, minMaxDist);
+      final double minMaxDist = findPrototype(dq, cx, cy, prototype, Double.POSITIVE_INFINITY);
+      return findPrototype(dq, cy, cx, prototype, minMaxDist);
     }
     else if(cx != null) {
       // cy is singleton.
-      minMaxDist = findPrototypeSingleton(dq, cx, iy.seek(y), prototype);
+      return findPrototypeSingleton(dq, cx, iy.seek(y), prototype);
     }
     else if(cy != null) {
       // cx is singleton.
-      minMaxDist = findPrototypeSingleton(dq, cy, ix.seek(x), prototype);
+      return findPrototypeSingleton(dq, cy, ix.seek(x), prototype);
     }
-    else {
-      minMaxDist = dq.distance(ix.seek(x), iy.seek(y));
-      prototype.set(ix);
-    }
-
-    final int offset = MatrixParadigm.triangleSize(x) + y;
-    distances[offset] = minMaxDist;
-    prots.seek(offset).setDBID(prototype);
+    prototype.set(ix.seek(x));
+    return dq.distance(ix, iy.seek(y));
   }
 
   /**
@@ -403,6 +615,59 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
     return maxDist;
   }
 
+  /**
+   * Prototypes of all pairs of clusters.
+   * <p>
+   * The prototypes are stored as integer DBIDs in blocks addressed by long
+   * positions, in the same layout as the {@link BlockMatrixStorage}, so the
+   * number of objects is not limited by the maximum Java array size.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Prototypes {
+    /**
+     * Data blocks.
+     */
+    private final int[][] blocks;
+
+    /**
+     * Variable to return prototypes.
+     */
+    private final DBIDVar var = DBIDUtil.newVar();
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of entries
+     */
+    protected Prototypes(long size) {
+      blocks = new int[BlockMatrixStorage.numBlocks(size)][];
+      for(int i = 0; i < blocks.length; i++) {
+        blocks[i] = new int[BlockMatrixStorage.blockSize(size, i)];
+      }
+    }
+
+    /**
+     * Get the prototype at a position.
+     *
+     * @param pos Position
+     * @return Prototype, only valid until the next call
+     */
+    protected DBIDRef get(long pos) {
+      return var.set(DBIDUtil.importInteger(blocks[(int) (pos >>> BlockMatrixStorage.BLOCK_SHIFT)][(int) (pos & BlockMatrixStorage.BLOCK_MASK)]));
+    }
+
+    /**
+     * Set the prototype at a position.
+     *
+     * @param pos Position
+     * @param prototype Prototype
+     */
+    protected void set(long pos, DBIDRef prototype) {
+      blocks[(int) (pos >>> BlockMatrixStorage.BLOCK_SHIFT)][(int) (pos & BlockMatrixStorage.BLOCK_MASK)] = DBIDUtil.asInteger(prototype);
+    }
+  }
+
   /**
    * Parameterization class.
    *
@@ -419,15 +684,23 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
      */
     protected Distance<? super O> distance;
 
+    /**
+     * Storage of the working matrix.
+     */
+    protected MatrixStorage.Factory storage;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
           .grab(config, x -> distance = x);
+      new ObjectParameter<MatrixStorage.Factory>(AGNES.Par.MATRIX_ID, MatrixStorage.Factory.class) //
+          .setOptional(true) //
+          .grab(config, x -> storage = x);
     }
 
     @Override
     public MiniMax<O> make() {
-      return new MiniMax<>(distance);
+      return new MiniMax<>(distance, storage);
     }
   }
 }
@@ -76,14 +76,31 @@ public class MiniMaxAnderberg<O> implements HierarchicalClusteringAlgorithm {
    */
   protected Distance<? super O> distance;
 
+  /**
+   * Storage of the working matrix, {@code null} to use a {@link MatrixParadigm}
+   * whenever the matrix fits into a single array.
+   */
+  protected MatrixStorage.Factory storage;
+
   /**
    * Constructor.
    *
    * @param distance Distance function to use
    */
   public MiniMaxAnderberg(Distance<? super O> distance) {
+    this(distance, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function to use
+   * @param storage Storage of the working matrix, may be {@code null}
+   */
+  public MiniMaxAnderberg(Distance<? super O> distance, MatrixStorage.Factory storage) {
     super();
     this.distance = distance;
+    this.storage = storage;
   }
 
   /**
@@ -101,6 +118,24 @@ public class MiniMaxAnderberg<O> implements HierarchicalClusteringAlgorithm {
     PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistance().isSquared());
     Int2ObjectOpenHashMap<ModifiableDBIDs> clusters = new Int2ObjectOpenHashMap<>();
 
+    if(LargeMatrixParadigm.isNeeded(size, storage)) {
+      LargeMatrixParadigm mat = new LargeMatrixParadigm(ids, storage);
+      MiniMax.Prototypes prots = new MiniMax.Prototypes(mat.matrix.size());
+      MiniMax.initializeMatrices(mat, prots, dq);
+      double[] bestd = new double[size];
+      int[] besti = new int[size];
+      Anderberg.initializeNNCache(mat.matrix, bestd, besti);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
+      DBIDArrayIter ix = mat.ix;
+      for(int i = 1, end = size; i < size; i++) {
+        end = AGNES.shrinkActiveSet(ix, builder, end, //
+            findMerge(end, mat, prots, builder, clusters, bestd, besti, dq));
+        LOG.incrementProcessed(prog);
+      }
+      LOG.ensureCompleted(prog);
+      return builder.complete();
+    }
+
     // Compute the initial (lower triangular) distance matrix.
     MatrixParadigm mat = new MatrixParadigm(ids);
     ArrayModifiableDBIDs prots = DBIDUtil.newArray(MatrixParadigm.triangleSize(size));
@@ -256,6 +291,137 @@ public class MiniMaxAnderberg<O> implements HierarchicalClusteringAlgorithm {
     }
   }
 
+  /**
+   * Perform the next merge step, in a large matrix.
+   * 
+   * @param size size of the data set
+   * @param mat matrix view
+   * @param prots the prototypes of merges between clusters
+   * @param builder Result builder
+   * @param clusters the current clustering
+   * @param bestd the distances to the nearest neighboring cluster
+   * @param besti the nearest neighboring cluster
+   * @param dq the range query
+   * @return x, for shrinking the active set.
+   */
+  protected int findMerge(int size, LargeMatrixParadigm mat, MiniMax.Prototypes prots, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, double[] bestd, int[] besti, DistanceQuery<O> dq) {
+    double mindist = Double.POSITIVE_INFINITY;
+    int x = -1, y = -1;
+    // Find minimum:
+    for(int cx = 1; cx < size; cx++) {
+      // Skip if object has already joined a cluster:
+      final int cy = besti[cx];
+      if(cy < 0) {
+        continue;
+      }
+      final double dist = bestd[cx];
+      if(dist <= mindist) { // Prefer later on ==, to truncate more often.
+        mindist = dist;
+        x = cx;
+        y = cy;
+      }
+    }
+    assert 0 <= y && y < x;
+    merge(size, mat, prots, builder, clusters, dq, bestd, besti, x, y);
+    return x;
+  }
+
+  /**
+   * Execute the cluster merge, in a large matrix.
+   *
+   * @param size size of data set
+   * @param mat Matrix paradigm
+   * @param prots the prototypes of merges between clusters
+   * @param builder Result builder
+   * @param clusters the current clustering
+   * @param dq the range query
+   * @param bestd the distances to the nearest neighboring cluster
+   * @param besti the nearest neighboring cluster
+   * @param x first cluster to merge, with {@code x > y}
+   * @param y second cluster to merge, with {@code y < x}
+   */
+  protected void merge(int size, LargeMatrixParadigm mat, MiniMax.Prototypes prots, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<O> dq, double[] bestd, int[] besti, int x, int y) {
+    // Avoid allocating memory, by reusing existing iterators:
+    final DBIDArrayIter ix = mat.ix.seek(x), iy = mat.iy.seek(y);
+    final MatrixStorage distances = mat.matrix;
+    final long offset = LargeMatrixParadigm.triangleSize(x) + y;
+    if(LOG.isDebuggingFine()) {
+      LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy) + " " + distances.get(offset));
+    }
+    // Perform merge in data structure: x -> y
+    assert y < x;
+    ModifiableDBIDs cx = clusters.get(x), cy = clusters.get(y);
+    // Keep y
+    if(cy == null) {
+      cy = DBIDUtil.newHashSet();
+      cy.add(iy);
+    }
+    if(cx == null) {
+      cy.add(ix);
+    }
+    else {
+      cy.addDBIDs(cx);
+      clusters.remove(x);
+    }
+    clusters.put(y, cy);
+
+    // parent of x is set to y
+    builder.add(ix, distances.get(offset), iy, prots.get(offset));
+    besti[x] = -1; // Deactivate x in cache:
+    updateMatrices(size, mat, prots, builder, clusters, dq, bestd, besti, x, y);
+    if(y > 0) {
+      Anderberg.findBest(distances, bestd, besti, y);
+    }
+  }
+
+  /**
+   * Update the entries of the matrices that contain a distance to y, the newly
+   * merged cluster, in a large matrix.
+   *
+   * @param size size of data set
+   * @param mat matrix view
+   * @param prots the prototypes of merges between clusters
+   * @param builder Result builder
+   * @param clusters the current clustering
+   * @param dq the range query
+   * @param bestd the distances to the nearest neighboring cluster
+   * @param besti the nearest neighboring cluster
+   * @param x first cluster to merge, with {@code x > y}
+   * @param y second cluster to merge, with {@code y < x}
+   */
+  private void updateMatrices(int size, LargeMatrixParadigm mat, MiniMax.Prototypes prots, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<O> dq, double[] bestd, int[] besti, int x, int y) {
+    final DBIDArrayIter ix = mat.ix, iy = mat.iy;
+    final MatrixStorage distances = mat.matrix;
+    // c is the new cluster.
+    // Update entries (at (a,b) with a > b) in the matrix where a = y or b = y
+
+    // Update entries at (y,b) with b < y
+    int a = y, b = 0;
+    ix.seek(a);
+    final long yoffset = LargeMatrixParadigm.triangleSize(y);
+    for(; b < a; b++) {
+      // Skip entry if already merged
+      if(builder.isLinked(iy.seek(b))) {
+        continue;
+      }
+      MiniMax.updateEntry(mat, prots, clusters, dq, a, b);
+      Anderberg.updateCache(distances, bestd, besti, x, y, b, distances.get(yoffset + b));
+    }
+
+    // Update entries at (a,y) with a > y
+    a = y + 1;
+    b = y;
+    iy.seek(b);
+    for(; a < size; a++) {
+      // Skip entry if already merged
+      if(builder.isLinked(ix.seek(a))) {
+        continue;
+      }
+      MiniMax.updateEntry(mat, prots, clusters, dq, a, b);
+      Anderberg.updateCache(distances, bestd, besti, x, y, a, distances.get(LargeMatrixParadigm.triangleSize(a) + y));
+    }
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     return TypeUtil.array(distance.getInputTypeRestriction());
@@ -276,15 +442,23 @@ public class MiniMaxAnderberg<O> implements HierarchicalClusteringAlgorithm {
      */
     protected Distance<? super O> distance;
 
+    /**
+     * Storage of the working matrix.
+     */
+    protected MatrixStorage.Factory storage;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
           .grab(config, x -> distance = x);
+      new ObjectParameter<MatrixStorage.Factory>(AGNES.Par.MATRIX_ID, MatrixStorage.Factory.class) //
+          .setOptional(true) //
+          .grab(config, x -> storage = x);
     }
 
     @Override
     public MiniMaxAnderberg<O> make() {
-      return new MiniMaxAnderberg<>(distance);
+      return new MiniMaxAnderberg<>(distance, storage);
     }
   }
 }
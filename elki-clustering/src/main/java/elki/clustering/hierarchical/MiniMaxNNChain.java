@@ -81,14 +81,31 @@ public class MiniMaxNNChain<O> implements HierarchicalClusteringAlgorithm {
    */
   protected Distance<? super O> distance;
 
+  /**
+   * Storage of the working matrix, {@code null} to use a {@link MatrixParadigm}
+   * whenever the matrix fits into a single array.
+   */
+  protected MatrixStorage.Factory storage;
+
   /**
    * Constructor.
    *
    * @param distance Distance function
    */
   public MiniMaxNNChain(Distance<? super O> distance) {
+    this(distance, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param storage Storage of the working matrix, may be {@code null}
+   */
+  public MiniMaxNNChain(Distance<? super O> distance, MatrixStorage.Factory storage) {
     super();
     this.distance = distance;
+    this.storage = storage;
   }
 
   @Override
@@ -110,6 +127,14 @@ public class MiniMaxNNChain<O> implements HierarchicalClusteringAlgorithm {
     PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistance().isSquared());
     Int2ObjectOpenHashMap<ModifiableDBIDs> clusters = new Int2ObjectOpenHashMap<>(ids.size());
 
+    if(LargeMatrixParadigm.isNeeded(ids.size(), storage)) {
+      LargeMatrixParadigm mat = new LargeMatrixParadigm(ids, storage);
+      MiniMax.Prototypes prots = new MiniMax.Prototypes(mat.matrix.size());
+      MiniMax.initializeMatrices(mat, prots, dq);
+      nnChainCore(mat, prots, dq, builder, clusters);
+      return (PointerPrototypeHierarchyRepresentationResult) builder.complete();
+    }
+
     MatrixParadigm mat = new MatrixParadigm(ids);
     ArrayModifiableDBIDs prots = DBIDUtil.newArray(MatrixParadigm.triangleSize(ids.size()));
 
@@ -209,6 +234,95 @@ public class MiniMaxNNChain<O> implements HierarchicalClusteringAlgorithm {
     LOG.ensureCompleted(progress);
   }
 
+  /**
+   * Uses NNChain as in "Modern hierarchical, agglomerative clustering
+   * algorithms" by Daniel Müllner, in a large matrix.
+   * 
+   * @param mat distance matrix
+   * @param prots computed prototypes
+   * @param dq distance query of the data set
+   * @param builder Result builder
+   * @param clusters current clusters
+   */
+  private void nnChainCore(LargeMatrixParadigm mat, MiniMax.Prototypes prots, DistanceQuery<O> dq, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters) {
+    final DBIDArrayIter ix = mat.ix;
+    final MatrixStorage distances = mat.matrix;
+    final int size = mat.size;
+    // The maximum chain size = number of ids + 1
+    IntegerArray chain = new IntegerArray(size + 1);
+
+    FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Running MiniMax-NNChain", size - 1, LOG) : null;
+    for(int k = 1, end = size; k < size; k++) {
+      int a = -1, b = -1;
+      if(chain.size() <= 3) {
+        // Accessing two arbitrary not yet merged elements could be optimized to
+        // work in O(1) like in Müllner;
+        // however this usually does not have a huge impact (empirically just
+        // about 1/5000 of total performance)
+        a = NNChain.findUnlinked(0, end, ix, builder);
+        b = NNChain.findUnlinked(a + 1, end, ix, builder);
+        chain.clear();
+        chain.add(a);
+      }
+      else {
+        // Chain is expected to look like (.... a, b, c, b) with b and c merged.
+        int lastIndex = chain.size;
+        int c = chain.get(lastIndex - 2);
+        b = chain.get(lastIndex - 3);
+        a = chain.get(lastIndex - 4);
+        // Ensure we had a loop at the end:
+        assert (chain.get(lastIndex - 1) == c || chain.get(lastIndex - 1) == b);
+        // if c < b, then we merged b -> c, otherwise c -> b
+        b = c < b ? c : b;
+        // Cut the tail:
+        chain.size -= 3;
+      }
+      // For ties, always prefer the second-last element b:
+      double minDist = mat.get(a, b);
+      do {
+        int c = b;
+        final long ta = LargeMatrixParadigm.triangleSize(a);
+        for(int i = 0; i < a; i++) {
+          if(i != b && !builder.isLinked(ix.seek(i))) {
+            double dist = distances.get(ta + i);
+            if(dist < minDist) {
+              minDist = dist;
+              c = i;
+            }
+          }
+        }
+        for(int i = a + 1; i < size; i++) {
+          if(i != b && !builder.isLinked(ix.seek(i))) {
+            double dist = distances.get(LargeMatrixParadigm.triangleSize(i) + a);
+            if(dist < minDist) {
+              minDist = dist;
+              c = i;
+            }
+          }
+        }
+
+        b = a;
+        a = c;
+
+        chain.add(a);
+      }
+      while(chain.size() < 3 || a != chain.get(chain.size - 1 - 2));
+
+      // We always merge the larger into the smaller index:
+      if(a < b) {
+        int tmp = a;
+        a = b;
+        b = tmp;
+      }
+      assert (minDist == mat.get(a, b));
+      assert (b < a);
+      MiniMax.merge(size, mat, prots, builder, clusters, dq, a, b);
+      end = AGNES.shrinkActiveSet(ix, builder, end, a); // Shrink working set
+      LOG.incrementProcessed(progress);
+    }
+    LOG.ensureCompleted(progress);
+  }
+
   /**
    * Parameterization class.
    *
@@ -224,15 +338,23 @@ public class MiniMaxNNChain<O> implements HierarchicalClusteringAlgorithm {
      */
     protected Distance<? super O> distance;
 
+    /**
+     * Storage of the working matrix.
+     */
+    protected MatrixStorage.Factory storage;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
           .grab(config, x -> distance = x);
+      new ObjectParameter<MatrixStorage.Factory>(AGNES.Par.MATRIX_ID, MatrixStorage.Factory.class) //
+          .setOptional(true) //
+          .grab(config, x -> storage = x);
     }
 
     @Override
     public MiniMaxNNChain<O> make() {
-      return new MiniMaxNNChain<>(distance);
+      return new MiniMaxNNChain<>(distance, storage);
     }
   }
 }
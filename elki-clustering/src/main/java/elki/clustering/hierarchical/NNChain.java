@@ -76,6 +76,17 @@ public class NNChain<O> extends AGNES<O> {
     super(distance, linkage);
   }
 
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param linkage Linkage method
+   * @param storage Storage of the working matrix, may be {@code null}
+   */
+  public NNChain(Distance<? super O> distance, Linkage linkage, MatrixStorage.Factory storage) {
+    super(distance, linkage, storage);
+  }
+
   @Override
   public PointerHierarchyRepresentationResult run(Relation<O> relation) {
     if(SingleLinkage.class.isInstance(linkage)) {
@@ -83,6 +94,13 @@ public class NNChain<O> extends AGNES<O> {
     }
     DistanceQuery<O> dq = new QueryBuilder<>(relation, distance).distanceQuery();
     final DBIDs ids = relation.getDBIDs();
+    if(LargeMatrixParadigm.isNeeded(ids.size(), storage)) {
+      LargeMatrixParadigm mat = new LargeMatrixParadigm(ids, storage);
+      initializeDistanceMatrix(mat, dq, linkage);
+      PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistance().isSquared());
+      nnChainCore(mat, builder);
+      return builder.complete();
+    }
     MatrixParadigm mat = new MatrixParadigm(ids);
 
     // Compute the initial (lower triangular) distance matrix.
@@ -181,6 +199,92 @@ public class NNChain<O> extends AGNES<O> {
     LOG.ensureCompleted(progress);
   }
 
+  /**
+   * Uses NNChain as in "Modern hierarchical, agglomerative clustering
+   * algorithms" by Daniel Müllner, on a large matrix.
+   * 
+   * @param mat Matrix view
+   * @param builder Result builder
+   */
+  private void nnChainCore(LargeMatrixParadigm mat, PointerHierarchyRepresentationBuilder builder) {
+    final DBIDArrayIter ix = mat.ix;
+    final MatrixStorage distances = mat.matrix;
+    final int size = mat.size;
+    // The maximum chain size = number of ids + 1
+    IntegerArray chain = new IntegerArray(size + 1);
+
+    FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Running NNChain", size - 1, LOG) : null;
+    for(int k = 1, end = size; k < size; k++) {
+      int a = -1, b = -1;
+      if(chain.size() <= 3) {
+        // Accessing two arbitrary not yet merged elements could be optimized to
+        // work in O(1) like in Müllner;
+        // however this usually does not have a huge impact (empirically just
+        // about 1/5000 of total performance)
+        a = findUnlinked(0, end, ix, builder);
+        b = findUnlinked(a + 1, end, ix, builder);
+        chain.clear();
+        chain.add(a);
+      }
+      else {
+        // Chain is expected to look like (.... a, b, c, b) with b and c merged.
+        int lastIndex = chain.size;
+        int c = chain.get(lastIndex - 2);
+        b = chain.get(lastIndex - 3);
+        a = chain.get(lastIndex - 4);
+        // Ensure we had a loop at the end:
+        assert (chain.get(lastIndex - 1) == c || chain.get(lastIndex - 1) == b);
+        // if c < b, then we merged b -> c, otherwise c -> b
+        b = c < b ? c : b;
+        // Cut the tail:
+        chain.size -= 3;
+      }
+      // For ties, always prefer the second-last element b:
+      double minDist = mat.get(a, b);
+      do {
+        int c = b;
+        final long ta = LargeMatrixParadigm.triangleSize(a);
+        for(int i = 0; i < a; i++) {
+          if(i != b && !builder.isLinked(ix.seek(i))) {
+            double dist = distances.get(ta + i);
+            if(dist < minDist) {
+              minDist = dist;
+              c = i;
+            }
+          }
+        }
+        for(int i = a + 1; i < size; i++) {
+          if(i != b && !builder.isLinked(ix.seek(i))) {
+            double dist = distances.get(LargeMatrixParadigm.triangleSize(i) + a);
+            if(dist < minDist) {
+              minDist = dist;
+              c = i;
+            }
+          }
+        }
+
+        b = a;
+        a = c;
+
+        chain.add(a);
+      }
+      while(chain.size() < 3 || a != chain.get(chain.size - 1 - 2));
+
+      // We always merge the larger into the smaller index:
+      if(a < b) {
+        int tmp = a;
+        a = b;
+        b = tmp;
+      }
+      assert (minDist == mat.get(a, b));
+      assert (b < a);
+      merge(size, mat, builder, minDist, a, b);
+      end = AGNES.shrinkActiveSet(ix, builder, end, a); // Shrink working set
+      LOG.incrementProcessed(progress);
+    }
+    LOG.ensureCompleted(progress);
+  }
+
   /**
    * Find an unlinked object.
    *
@@ -212,7 +316,7 @@ public class NNChain<O> extends AGNES<O> {
   public static class Par<O> extends AGNES.Par<O> {
     @Override
     public NNChain<O> make() {
-      return new NNChain<>(distance, linkage);
+      return new NNChain<>(distance, linkage, storage);
     }
   }
 }
@@ -46,6 +46,7 @@ import elki.database.ids.ModifiableDBIDs;
 import elki.database.relation.Relation;
 import elki.distance.NumberVectorDistance;
 import elki.distance.PrimitiveDistance;
+import elki.distance.VectorKernels;
 import elki.distance.minkowski.EuclideanDistance;
 import elki.distance.minkowski.SquaredEuclideanDistance;
 import elki.logging.Logging;
@@ -339,11 +340,11 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> im
    *
    * @author Erich Schubert
    */
-  protected abstract static class Instance {
+  protected abstract static class Instance implements Cloneable {
     /**
      * Cluster means.
      */
-    double[][] means;
+    protected double[][] means;
 
     /**
      * Store the elements per cluster.
@@ -587,15 +588,34 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> im
       for(ModifiableDBIDs cluster : clusters) {
         cluster.clear();
       }
+      // Euclidean: compare to all means at once using the vector kernels
+      final double[] block = flattenEuclideanMeans();
+      final double[] dists = block != null ? new double[k] : null;
+      final int dim = block != null ? means[0].length : -1;
       for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
         NumberVector fv = relation.get(iditer);
-        double mindist = distance(fv, means[0]);
+        double mindist;
         int minIndex = 0;
-        for(int i = 1; i < k; i++) {
-          double dist = distance(fv, means[i]);
-          if(dist < mindist) {
-            minIndex = i;
-            mindist = dist;
+        if(block != null && fv instanceof DoubleVector && fv.getDimensionality() == dim) {
+          VectorKernels.KERNELS.squaredEuclidean(((DoubleVector) fv).getValues(), block, k, dists);
+          diststat += k;
+          mindist = dists[0];
+          for(int i = 1; i < k; i++) {
+            if(dists[i] < mindist) {
+              minIndex = i;
+              mindist = dists[i];
+            }
+          }
+          mindist = isSquared ? mindist : FastMath.sqrt(mindist);
+        }
+        else {
+          mindist = distance(fv, means[0]);
+          for(int i = 1; i < k; i++) {
+            double dist = distance(fv, means[i]);
+            if(dist < mindist) {
+              minIndex = i;
+              mindist = dist;
+            }
           }
         }
         varsum[minIndex] += isSquared ? mindist : (mindist * mindist);
@@ -607,6 +627,28 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> im
       return changed;
     }
 
+    /**
+     * Copy the means into a single row-major array, for (squared) Euclidean
+     * distance only.
+     *
+     * @return Means, or {@code null} if not applicable
+     */
+    private double[] flattenEuclideanMeans() {
+      final Class<?> dc = df.getClass();
+      if(k == 0 || (dc != SquaredEuclideanDistance.class && dc != EuclideanDistance.class)) {
+        return null;
+      }
+      final int dim = means[0].length;
+      double[] block = new double[k * dim];
+      for(int i = 0; i < k; i++) {
+        if(means[i].length != dim) {
+          return null;
+        }
+        System.arraycopy(means[i], 0, block, i * dim, dim);
+      }
+      return block;
+    }
+
     /**
      * Recompute the separation of cluster means.
      * <p>
@@ -748,6 +790,26 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> im
       return result;
     }
 
+    /**
+     * Make a shallow copy of this instance, for use by a worker thread.
+     * <p>
+     * All data structures are shared, but the copy counts its distance
+     * computations separately. Subclasses that use scratch space must allocate
+     * a separate copy of it.
+     *
+     * @return Shallow copy
+     */
+    protected Instance workerCopy() {
+      try {
+        Instance copy = (Instance) clone();
+        copy.diststat = 0;
+        return copy;
+      }
+      catch(CloneNotSupportedException e) {
+        throw new IllegalStateException(e); // Cannot happen, we are Cloneable.
+      }
+    }
+
     /**
      * Get the class logger.
      *
@@ -21,10 +21,9 @@
 package elki.clustering.kmeans;
 
 import elki.clustering.kmeans.initialization.KMeansInitialization;
-import elki.data.Clustering;
 import elki.data.NumberVector;
 import elki.data.model.KMeansModel;
-import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
 import elki.database.relation.Relation;
 import elki.distance.NumberVectorDistance;
 import elki.logging.Logging;
@@ -76,10 +75,8 @@ public class ElkanKMeans<V extends NumberVector> extends SimplifiedElkanKMeans<V
   }
 
   @Override
-  public Clustering<KMeansModel> run(Relation<V> relation) {
-    Instance instance = new Instance(relation, distance, initialMeans(relation));
-    instance.run(maxiter);
-    return instance.buildResult(varstat, relation);
+  protected Instance makeInstance(Relation<V> relation, double[][] means) {
+    return new Instance(relation, distance, means);
   }
 
   /**
@@ -91,7 +88,7 @@ public class ElkanKMeans<V extends NumberVector> extends SimplifiedElkanKMeans<V
     /**
      * Cluster center distances
      */
-    double[][] cdist = new double[k][k];
+    protected double[][] cdist = new double[k][k];
 
     /**
      * Constructor.
@@ -108,82 +105,75 @@ public class ElkanKMeans<V extends NumberVector> extends SimplifiedElkanKMeans<V
     protected int initialAssignToNearestCluster() {
       assert k == means.length;
       initialSeperation(cdist);
-      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
-        NumberVector fv = relation.get(it);
-        double[] l = lower.get(it);
-        // Check all (other) means:
-        double best = l[0] = sqrtdistance(fv, means[0]);
-        int minIndex = 0;
-        for(int j = 1; j < k; j++) {
-          if(best > cdist[minIndex][j]) {
-            double dist = l[j] = sqrtdistance(fv, means[j]);
-            if(dist < best) {
-              minIndex = j;
-              best = dist;
-            }
+      return initialAssignPoints(cdist);
+    }
+
+    @Override
+    protected int initialAssignPoint(DBIDRef it, NumberVector fv, double[][] cdist) {
+      double[] l = lower.get(it);
+      // Check all (other) means:
+      double best = l[0] = sqrtdistance(fv, means[0]);
+      int minIndex = 0;
+      for(int j = 1; j < k; j++) {
+        if(best > cdist[minIndex][j]) {
+          double dist = l[j] = sqrtdistance(fv, means[j]);
+          if(dist < best) {
+            minIndex = j;
+            best = dist;
           }
         }
-        for(int j = 1; j < k; j++) {
-          if(l[j] == 0. && j != minIndex) {
-            l[j] = 2 * cdist[minIndex][j] - best;
-          }
+      }
+      for(int j = 1; j < k; j++) {
+        if(l[j] == 0. && j != minIndex) {
+          l[j] = 2 * cdist[minIndex][j] - best;
         }
-        // Assign to nearest cluster.
-        clusters.get(minIndex).add(it);
-        assignment.putInt(it, minIndex);
-        upper.putDouble(it, best);
-        plusEquals(sums[minIndex], fv);
       }
-      return relation.size();
+      upper.putDouble(it, best);
+      return minIndex;
     }
 
     @Override
     protected int assignToNearestCluster() {
       assert (k == means.length);
       recomputeSeperation(sep, cdist); // #1
-      int changed = 0;
-      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
-        final int orig = assignment.intValue(it);
-        double u = upper.doubleValue(it);
-        // Upper bound check (#2):
-        if(u <= sep[orig]) {
-          continue;
+      return reassignPoints();
+    }
+
+    @Override
+    protected int reassignPoint(DBIDRef it, int orig) {
+      double u = upper.doubleValue(it);
+      // Upper bound check (#2):
+      if(u <= sep[orig]) {
+        return orig;
+      }
+      boolean recompute_u = true; // Elkan's r(x)
+      NumberVector fv = relation.get(it);
+      double[] l = lower.get(it);
+      // Check all (other) means:
+      int cur = orig;
+      for(int j = 0; j < k; j++) {
+        if(orig == j || u <= l[j] || u <= cdist[cur][j]) {
+          continue; // Condition #3 i-iii not satisfied
         }
-        boolean recompute_u = true; // Elkan's r(x)
-        NumberVector fv = relation.get(it);
-        double[] l = lower.get(it);
-        // Check all (other) means:
-        int cur = orig;
-        for(int j = 0; j < k; j++) {
-          if(orig == j || u <= l[j] || u <= cdist[cur][j]) {
-            continue; // Condition #3 i-iii not satisfied
-          }
-          if(recompute_u) { // Need to update bound? #3a
-            u = sqrtdistance(fv, means[cur]);
-            upper.putDouble(it, u);
-            recompute_u = false; // Once only
-            if(u <= l[j] || u <= cdist[cur][j]) { // #3b
-              continue;
-            }
-          }
-          double dist = sqrtdistance(fv, means[j]);
-          l[j] = dist;
-          if(dist < u) {
-            cur = j;
-            u = dist;
+        if(recompute_u) { // Need to update bound? #3a
+          u = sqrtdistance(fv, means[cur]);
+          upper.putDouble(it, u);
+          recompute_u = false; // Once only
+          if(u <= l[j] || u <= cdist[cur][j]) { // #3b
+            continue;
           }
         }
-        // Object is to be reassigned.
-        if(cur != orig) {
-          upper.putDouble(it, u); // Remember bound.
-          clusters.get(cur).add(it);
-          clusters.get(orig).remove(it);
-          assignment.putInt(it, cur);
-          plusMinusEquals(sums[cur], sums[orig], fv);
-          ++changed;
+        double dist = sqrtdistance(fv, means[j]);
+        l[j] = dist;
+        if(dist < u) {
+          cur = j;
+          u = dist;
         }
       }
-      return changed;
+      if(cur != orig) {
+        upper.putDouble(it, u); // Remember bound.
+      }
+      return cur;
     }
 
     @Override
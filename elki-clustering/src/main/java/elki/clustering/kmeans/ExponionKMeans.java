@@ -21,10 +21,9 @@
 package elki.clustering.kmeans;
 
 import elki.clustering.kmeans.initialization.KMeansInitialization;
-import elki.data.Clustering;
 import elki.data.NumberVector;
 import elki.data.model.KMeansModel;
-import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
 import elki.database.relation.Relation;
 import elki.distance.NumberVectorDistance;
 import elki.logging.Logging;
@@ -76,10 +75,8 @@ public class ExponionKMeans<V extends NumberVector> extends HamerlyKMeans<V> {
   }
 
   @Override
-  public Clustering<KMeansModel> run(Relation<V> relation) {
-    Instance instance = new Instance(relation, distance, initialMeans(relation));
-    instance.run(maxiter);
-    return instance.buildResult(varstat, relation);
+  protected Instance makeInstance(Relation<V> relation, double[][] means) {
+    return new Instance(relation, distance, means);
   }
 
   /**
@@ -91,12 +88,12 @@ public class ExponionKMeans<V extends NumberVector> extends HamerlyKMeans<V> {
     /**
      * Cluster center distances.
      */
-    double[][] cdist;
+    protected double[][] cdist;
 
     /**
      * Sorted neighbors
      */
-    int[][] cnum;
+    protected int[][] cnum;
 
     /**
      * Constructor.
@@ -115,38 +112,36 @@ public class ExponionKMeans<V extends NumberVector> extends HamerlyKMeans<V> {
     protected int initialAssignToNearestCluster() {
       assert k == means.length;
       computeSquaredSeparation(cdist);
-      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
-        NumberVector fv = relation.get(it);
-        // Find closest center, and distance to two closest centers:
-        double best = distance(fv, means[0]), sbest = distance(fv, means[1]);
-        int minIndex = 0;
-        if(sbest < best) {
-          double tmp = best;
-          best = sbest;
-          sbest = tmp;
-          minIndex = 1;
-        }
-        for(int j = 2; j < k; j++) {
-          if(sbest > cdist[minIndex][j]) {
-            double dist = distance(fv, means[j]);
-            if(dist < best) {
-              minIndex = j;
-              sbest = best;
-              best = dist;
-            }
-            else if(dist < sbest) {
-              sbest = dist;
-            }
+      return initialAssignPoints(cdist);
+    }
+
+    @Override
+    protected int initialAssignPoint(DBIDRef it, NumberVector fv, double[][] cdist) {
+      // Find closest center, and distance to two closest centers:
+      double best = distance(fv, means[0]), sbest = distance(fv, means[1]);
+      int minIndex = 0;
+      if(sbest < best) {
+        double tmp = best;
+        best = sbest;
+        sbest = tmp;
+        minIndex = 1;
+      }
+      for(int j = 2; j < k; j++) {
+        if(sbest > cdist[minIndex][j]) {
+          double dist = distance(fv, means[j]);
+          if(dist < best) {
+            minIndex = j;
+            sbest = best;
+            best = dist;
+          }
+          else if(dist < sbest) {
+            sbest = dist;
           }
         }
-        // Assign to nearest cluster.
-        clusters.get(minIndex).add(it);
-        assignment.putInt(it, minIndex);
-        plusEquals(sums[minIndex], fv);
-        upper.putDouble(it, isSquared ? FastMath.sqrt(best) : best);
-        lower.putDouble(it, isSquared ? FastMath.sqrt(sbest) : sbest);
       }
-      return relation.size();
+      upper.putDouble(it, isSquared ? FastMath.sqrt(best) : best);
+      lower.putDouble(it, isSquared ? FastMath.sqrt(sbest) : sbest);
+      return minIndex;
     }
 
     @Override
@@ -154,54 +149,50 @@ public class ExponionKMeans<V extends NumberVector> extends HamerlyKMeans<V> {
       assert (k == means.length);
       recomputeSeperation(sep, cdist);
       nearestMeans(cdist, cnum);
-      int changed = 0;
-      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
-        final int cur = assignment.intValue(it);
-        // Compute the current bound:
-        final double z = lower.doubleValue(it);
-        final double sa = sep[cur];
-        double u = upper.doubleValue(it);
-        if(u <= z || u <= sa) {
-          continue;
-        }
-        // Update the upper bound
-        NumberVector fv = relation.get(it);
-        double curd2 = distance(fv, means[cur]);
-        u = isSquared ? FastMath.sqrt(curd2) : curd2;
-        upper.putDouble(it, u);
-        if(u <= z || u <= sa) {
-          continue;
+      return reassignPoints();
+    }
+
+    @Override
+    protected int reassignPoint(DBIDRef it, int cur) {
+      // Compute the current bound:
+      final double z = lower.doubleValue(it);
+      final double sa = sep[cur];
+      double u = upper.doubleValue(it);
+      if(u <= z || u <= sa) {
+        return cur;
+      }
+      // Update the upper bound
+      NumberVector fv = relation.get(it);
+      double curd2 = distance(fv, means[cur]);
+      u = isSquared ? FastMath.sqrt(curd2) : curd2;
+      upper.putDouble(it, u);
+      if(u <= z || u <= sa) {
+        return cur;
+      }
+      double r = u + 0.5 * sa; // Our cdist are scaled 0.5
+      // Find closest center, and distance to two closest centers
+      double min1 = curd2, min2 = Double.POSITIVE_INFINITY;
+      int minIndex = cur;
+      for(int i = 0; i < k - 1; i++) {
+        int c = cnum[cur][i];
+        if(cdist[cur][c] > r) {
+          break;
         }
-        double r = u + 0.5 * sa; // Our cdist are scaled 0.5
-        // Find closest center, and distance to two closest centers
-        double min1 = curd2, min2 = Double.POSITIVE_INFINITY;
-        int minIndex = cur;
-        for(int i = 0; i < k - 1; i++) {
-          int c = cnum[cur][i];
-          if(cdist[cur][c] > r) {
-            break;
-          }
-          double dist = distance(fv, means[c]);
-          if(dist < min1) {
-            minIndex = c;
-            min2 = min1;
-            min1 = dist;
-          }
-          else if(dist < min2) {
-            min2 = dist;
-          }
+        double dist = distance(fv, means[c]);
+        if(dist < min1) {
+          minIndex = c;
+          min2 = min1;
+          min1 = dist;
         }
-        if(minIndex != cur) {
-          clusters.get(minIndex).add(it);
-          clusters.get(cur).remove(it);
-          assignment.putInt(it, minIndex);
-          plusMinusEquals(sums[minIndex], sums[cur], fv);
-          ++changed;
-          upper.putDouble(it, min1 == curd2 ? u : isSquared ? FastMath.sqrt(min1) : min1);
+        else if(dist < min2) {
+          min2 = dist;
         }
-        lower.putDouble(it, min2 == curd2 ? u : isSquared ? FastMath.sqrt(min2) : min2);
       }
-      return changed;
+      if(minIndex != cur) {
+        upper.putDouble(it, min1 == curd2 ? u : isSquared ? FastMath.sqrt(min1) : min1);
+      }
+      lower.putDouble(it, min2 == curd2 ? u : isSquared ? FastMath.sqrt(min2) : min2);
+      return minIndex;
     }
 
     @Override
@@ -30,6 +30,7 @@ import elki.database.datastore.DataStoreFactory;
 import elki.database.datastore.DataStoreUtil;
 import elki.database.datastore.WritableDoubleDataStore;
 import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
 import elki.database.relation.Relation;
 import elki.distance.NumberVectorDistance;
 import elki.logging.Logging;
@@ -86,11 +87,22 @@ public class HamerlyKMeans<V extends NumberVector> extends AbstractKMeans<V, KMe
 
   @Override
   public Clustering<KMeansModel> run(Relation<V> relation) {
-    Instance instance = new Instance(relation, distance, initialMeans(relation));
+    Instance instance = makeInstance(relation, initialMeans(relation));
     instance.run(maxiter);
     return instance.buildResult(varstat, relation);
   }
 
+  /**
+   * Make the instance for a data set.
+   *
+   * @param relation Data relation
+   * @param means Initial means
+   * @return Instance
+   */
+  protected Instance makeInstance(Relation<V> relation, double[][] means) {
+    return new Instance(relation, distance, means);
+  }
+
   /**
    * Inner instance, storing state for a single data set.
    *
@@ -100,27 +112,27 @@ public class HamerlyKMeans<V extends NumberVector> extends AbstractKMeans<V, KMe
     /**
      * Sum aggregate for the new mean.
      */
-    double[][] sums;
+    protected double[][] sums;
 
     /**
      * Temporary storage for the new means.
      */
-    double[][] newmeans;
+    protected double[][] newmeans;
 
     /**
      * Separation of means / distance moved.
      */
-    double[] sep;
+    protected double[] sep;
 
     /**
      * Upper bounding distance
      */
-    WritableDoubleDataStore upper;
+    protected WritableDoubleDataStore upper;
 
     /**
      * Lower bounding distance
      */
-    WritableDoubleDataStore lower;
+    protected WritableDoubleDataStore lower;
 
     /**
      * Constructor.
@@ -158,69 +170,50 @@ public class HamerlyKMeans<V extends NumberVector> extends AbstractKMeans<V, KMe
       assert k == means.length;
       double[][] cdist = new double[k][k];
       computeSquaredSeparation(cdist);
+      return initialAssignPoints(cdist);
+    }
+
+    /**
+     * Assign all points initially, and add them to the cluster sums.
+     *
+     * @param cdist Center-to-center distances
+     * @return Number of changes (i.e. relation size)
+     */
+    protected int initialAssignPoints(double[][] cdist) {
       for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
         NumberVector fv = relation.get(it);
-        // Find closest center, and distance to two closest centers
-        double min1 = distance(fv, means[0]), min2 = distance(fv, means[1]);
-        int minIndex = 0;
-        if(min2 < min1) {
-          double tmp = min1;
-          min1 = min2;
-          min2 = tmp;
-          minIndex = 1;
-        }
-        for(int i = 2; i < k; i++) {
-          if(min2 > cdist[minIndex][i]) {
-            double dist = distance(fv, means[i]);
-            if(dist < min1) {
-              minIndex = i;
-              min2 = min1;
-              min1 = dist;
-            }
-            else if(dist < min2) {
-              min2 = dist;
-            }
-          }
-        }
+        final int minIndex = initialAssignPoint(it, fv, cdist);
         // Assign to nearest cluster.
         clusters.get(minIndex).add(it);
         assignment.putInt(it, minIndex);
         plusEquals(sums[minIndex], fv);
-        upper.putDouble(it, isSquared ? FastMath.sqrt(min1) : min1);
-        lower.putDouble(it, isSquared ? FastMath.sqrt(min2) : min2);
       }
       return relation.size();
     }
 
-    @Override
-    protected int assignToNearestCluster() {
-      assert (k == means.length);
-      recomputeSeperation(means, sep);
-      int changed = 0;
-      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
-        final int cur = assignment.intValue(it);
-        // Compute the current bound:
-        final double z = lower.doubleValue(it);
-        final double sa = sep[cur];
-        double u = upper.doubleValue(it);
-        if(u <= z || u <= sa) {
-          continue;
-        }
-        // Update the upper bound
-        NumberVector fv = relation.get(it);
-        double curd2 = distance(fv, means[cur]);
-        u = isSquared ? FastMath.sqrt(curd2) : curd2;
-        upper.putDouble(it, u);
-        if(u <= z || u <= sa) {
-          continue;
-        }
-        // Find closest center, and distance to two closest centers
-        double min1 = curd2, min2 = Double.POSITIVE_INFINITY;
-        int minIndex = cur;
-        for(int i = 0; i < k; i++) {
-          if(i == cur) {
-            continue;
-          }
+    /**
+     * Find the initial cluster of a single point, and initialize its bounds.
+     * <p>
+     * This only modifies the bounds of this point, and hence may be called
+     * concurrently for different points.
+     *
+     * @param it Point
+     * @param fv Data vector of the point
+     * @param cdist Center-to-center distances
+     * @return Nearest cluster
+     */
+    protected int initialAssignPoint(DBIDRef it, NumberVector fv, double[][] cdist) {
+      // Find closest center, and distance to two closest centers
+      double min1 = distance(fv, means[0]), min2 = distance(fv, means[1]);
+      int minIndex = 0;
+      if(min2 < min1) {
+        double tmp = min1;
+        min1 = min2;
+        min2 = tmp;
+        minIndex = 1;
+      }
+      for(int i = 2; i < k; i++) {
+        if(min2 > cdist[minIndex][i]) {
           double dist = distance(fv, means[i]);
           if(dist < min1) {
             minIndex = i;
@@ -231,19 +224,90 @@ public class HamerlyKMeans<V extends NumberVector> extends AbstractKMeans<V, KMe
             min2 = dist;
           }
         }
+      }
+      upper.putDouble(it, isSquared ? FastMath.sqrt(min1) : min1);
+      lower.putDouble(it, isSquared ? FastMath.sqrt(min2) : min2);
+      return minIndex;
+    }
+
+    @Override
+    protected int assignToNearestCluster() {
+      assert (k == means.length);
+      recomputeSeperation(means, sep);
+      return reassignPoints();
+    }
+
+    /**
+     * Reassign all points, and update the cluster sums.
+     *
+     * @return Number of reassigned points
+     */
+    protected int reassignPoints() {
+      int changed = 0;
+      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+        final int cur = assignment.intValue(it);
+        final int minIndex = reassignPoint(it, cur);
         if(minIndex != cur) {
           clusters.get(minIndex).add(it);
           clusters.get(cur).remove(it);
           assignment.putInt(it, minIndex);
-          plusMinusEquals(sums[minIndex], sums[cur], fv);
+          plusMinusEquals(sums[minIndex], sums[cur], relation.get(it));
           ++changed;
-          upper.putDouble(it, min1 == curd2 ? u : isSquared ? FastMath.sqrt(min1) : min1);
         }
-        lower.putDouble(it, min2 == curd2 ? u : isSquared ? FastMath.sqrt(min2) : min2);
       }
       return changed;
     }
 
+    /**
+     * Find the nearest cluster of a single point, and update its bounds.
+     * <p>
+     * This only modifies the bounds of this point, and hence may be called
+     * concurrently for different points.
+     *
+     * @param it Point
+     * @param cur Current cluster of the point
+     * @return New cluster of the point
+     */
+    protected int reassignPoint(DBIDRef it, int cur) {
+      // Compute the current bound:
+      final double z = lower.doubleValue(it);
+      final double sa = sep[cur];
+      double u = upper.doubleValue(it);
+      if(u <= z || u <= sa) {
+        return cur;
+      }
+      // Update the upper bound
+      NumberVector fv = relation.get(it);
+      double curd2 = distance(fv, means[cur]);
+      u = isSquared ? FastMath.sqrt(curd2) : curd2;
+      upper.putDouble(it, u);
+      if(u <= z || u <= sa) {
+        return cur;
+      }
+      // Find closest center, and distance to two closest centers
+      double min1 = curd2, min2 = Double.POSITIVE_INFINITY;
+      int minIndex = cur;
+      for(int i = 0; i < k; i++) {
+        if(i == cur) {
+          continue;
+        }
+        double dist = distance(fv, means[i]);
+        if(dist < min1) {
+          minIndex = i;
+          min2 = min1;
+          min1 = dist;
+        }
+        else if(dist < min2) {
+          min2 = dist;
+        }
+      }
+      if(minIndex != cur) {
+        upper.putDouble(it, min1 == curd2 ? u : isSquared ? FastMath.sqrt(min1) : min1);
+      }
+      lower.putDouble(it, min2 == curd2 ? u : isSquared ? FastMath.sqrt(min2) : min2);
+      return minIndex;
+    }
+
     /**
      * Recompute the separation of cluster means.
      * <p>
@@ -0,0 +1,271 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import elki.clustering.kmeans.initialization.KMeansInitialization;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.model.KMeansModel;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.relation.Relation;
+import elki.distance.NumberVectorDistance;
+import elki.logging.Logging;
+import elki.utilities.documentation.Reference;
+import elki.utilities.documentation.Title;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Mini-batch k-means, which updates the means from small random samples of
+ * the data only, using a per-center learning rate that decreases with the
+ * number of points assigned to the center so far.
+ * <p>
+ * Each iteration processes one batch, hence the maximum number of iterations
+ * is the number of batches to process. The iterations stop early if no point
+ * of a batch changes its previous assignment. A final pass over the data set
+ * is used to produce the cluster assignment. Only the batch needs to be kept
+ * in memory in addition to the means, see {@link StreamingMiniBatchKMeans} for
+ * a variant that processes a data stream without a database.
+ * <p>
+ * Reference:
+ * <p>
+ * D. Sculley<br>
+ * Web-scale k-means clustering<br>
+ * Proc. 19th Int. Conf. on World Wide Web (WWW 2010)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @navassoc - - - KMeansModel
+ *
+ * @param <V> vector type to use
+ */
+@Title("Mini-Batch k-Means")
+@Reference(authors = "D. Sculley", //
+    title = "Web-scale k-means clustering", //
+    booktitle = "Proc. 19th Int. Conf. on World Wide Web (WWW 2010)", //
+    url = "https://doi.org/10.1145/1772690.1772862", //
+    bibkey = "DBLP:conf/www/Sculley10")
+public class MiniBatchKMeans<V extends NumberVector> extends AbstractKMeans<V, KMeansModel> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(MiniBatchKMeans.class);
+
+  /**
+   * Batch size.
+   */
+  protected int batchsize;
+
+  /**
+   * Random generator for sampling batches.
+   */
+  protected RandomFactory random;
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k parameter
+   * @param maxiter Maximum number of batches
+   * @param initializer Initialization method
+   * @param batchsize Batch size
+   * @param random Random generator for sampling batches
+   */
+  public MiniBatchKMeans(NumberVectorDistance<? super V> distance, int k, int maxiter, KMeansInitialization initializer, int batchsize, RandomFactory random) {
+    super(distance, k, maxiter, initializer);
+    this.batchsize = batchsize;
+    this.random = random;
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Relation<V> relation) {
+    Instance instance = new Instance(relation, distance, initialMeans(relation), batchsize, random.getSingleThreadedRandom());
+    instance.run(maxiter);
+    instance.assignToNearestCluster();
+    return instance.buildResult();
+  }
+
+  /**
+   * Gradient step towards a vector: {@code mean += eta * (vec - mean)}.
+   *
+   * @param mean Mean to update
+   * @param vec Vector
+   * @param eta Learning rate
+   */
+  protected static void gradientStep(double[] mean, NumberVector vec, double eta) {
+    final double keep = 1. - eta;
+    for(int d = 0; d < mean.length; d++) {
+      mean[d] = keep * mean[d] + eta * vec.doubleValue(d);
+    }
+  }
+
+  /**
+   * Inner instance, storing state for a single data set.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends AbstractKMeans.Instance {
+    /**
+     * Random generator.
+     */
+    protected Random rnd;
+
+    /**
+     * Iterator for random access to the data.
+     */
+    protected DBIDArrayIter iter;
+
+    /**
+     * Sampled offsets of the current batch.
+     */
+    protected int[] sample;
+
+    /**
+     * Nearest center of each sample in the current batch.
+     */
+    protected int[] nearest;
+
+    /**
+     * Number of points processed per center, for the learning rate.
+     */
+    protected long[] counts;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Relation
+     * @param df Distance function
+     * @param means Initial means
+     * @param batchsize Batch size
+     * @param rnd Random generator
+     */
+    public Instance(Relation<? extends NumberVector> relation, NumberVectorDistance<?> df, double[][] means, int batchsize, Random rnd) {
+      super(relation, df, means);
+      ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+      this.iter = ids.iter();
+      this.rnd = rnd;
+      this.sample = new int[batchsize];
+      this.nearest = new int[batchsize];
+      this.counts = new long[k];
+    }
+
+    @Override
+    protected int iterate(int iteration) {
+      final int size = relation.size();
+      Arrays.fill(varsum, 0.);
+      int changed = 0;
+      // Assign the batch to the current centers first:
+      for(int i = 0; i < sample.length; i++) {
+        final int off = rnd.nextInt(size);
+        NumberVector fv = relation.get(iter.seek(off));
+        double mindist = distance(fv, means[0]);
+        int minIndex = 0;
+        for(int j = 1; j < k; j++) {
+          double dist = distance(fv, means[j]);
+          if(dist < mindist) {
+            minIndex = j;
+            mindist = dist;
+          }
+        }
+        varsum[minIndex] += isSquared ? mindist : (mindist * mindist);
+        if(assignment.putInt(iter, minIndex) != minIndex) {
+          ++changed;
+        }
+        sample[i] = off;
+        nearest[i] = minIndex;
+      }
+      // Then perform the gradient steps with per-center learning rates:
+      for(int i = 0; i < sample.length; i++) {
+        final int c = nearest[i];
+        gradientStep(means[c], relation.get(iter.seek(sample[i])), 1. / ++counts[c]);
+      }
+      return changed;
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V extends NumberVector> extends AbstractKMeans.Par<V> {
+    /**
+     * Parameter for the batch size.
+     */
+    public static final OptionID BATCHSIZE_ID = new OptionID("kmeans.minibatch.size", "Number of samples in each mini-batch.");
+
+    /**
+     * Random generator for sampling batches.
+     */
+    public static final OptionID RANDOM_ID = new OptionID("kmeans.minibatch.random", "Random generator for sampling mini-batches.");
+
+    /**
+     * Batch size.
+     */
+    protected int batchsize;
+
+    /**
+     * Random generator for sampling batches.
+     */
+    protected RandomFactory random;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      new IntParameter(BATCHSIZE_ID, 1000) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> batchsize = x);
+      new RandomParameter(RANDOM_ID).grab(config, x -> random = x);
+    }
+
+    @Override
+    protected void getParameterMaxIter(Parameterization config) {
+      new IntParameter(MAXITER_ID, 100)//
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> maxiter = x);
+    }
+
+    @Override
+    public MiniBatchKMeans<V> make() {
+      return new MiniBatchKMeans<>(distance, k, maxiter, initializer, batchsize, random);
+    }
+  }
+}
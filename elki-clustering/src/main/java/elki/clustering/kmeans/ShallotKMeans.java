@@ -21,13 +21,12 @@
 package elki.clustering.kmeans;
 
 import elki.clustering.kmeans.initialization.KMeansInitialization;
-import elki.data.Clustering;
 import elki.data.NumberVector;
 import elki.data.model.KMeansModel;
 import elki.database.datastore.DataStoreFactory;
 import elki.database.datastore.DataStoreUtil;
 import elki.database.datastore.WritableIntegerDataStore;
-import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
 import elki.database.relation.Relation;
 import elki.distance.NumberVectorDistance;
 import elki.logging.Logging;
@@ -75,10 +74,8 @@ public class ShallotKMeans<V extends NumberVector> extends ExponionKMeans<V> {
   }
 
   @Override
-  public Clustering<KMeansModel> run(Relation<V> relation) {
-    Instance instance = new Instance(relation, distance, initialMeans(relation));
-    instance.run(maxiter);
-    return instance.buildResult(varstat, relation);
+  protected Instance makeInstance(Relation<V> relation, double[][] means) {
+    return new Instance(relation, distance, means);
   }
 
   /**
@@ -90,7 +87,7 @@ public class ShallotKMeans<V extends NumberVector> extends ExponionKMeans<V> {
     /**
      * Second nearest cluster.
      */
-    WritableIntegerDataStore second;
+    protected WritableIntegerDataStore second;
 
     /**
      * Constructor.
@@ -105,131 +102,110 @@ public class ShallotKMeans<V extends NumberVector> extends ExponionKMeans<V> {
     }
 
     @Override
-    protected int initialAssignToNearestCluster() {
-      assert k == means.length;
-      computeSquaredSeparation(cdist);
-      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
-        NumberVector fv = relation.get(it);
-        // Find closest center, and distance to two closest centers:
-        double best = distance(fv, means[0]), bes2 = distance(fv, means[1]);
-        int minIdx = 0, minId2 = 1;
-        if(bes2 < best) {
-          double tmp = best;
-          best = bes2;
-          bes2 = tmp;
-          minIdx = 1;
-          minId2 = 0;
-        }
-        for(int j = 2; j < k; j++) {
-          if(bes2 > cdist[minIdx][j]) {
-            double dist = distance(fv, means[j]);
-            if(dist < best) {
-              minId2 = minIdx;
-              minIdx = j;
-              bes2 = best;
-              best = dist;
-            }
-            else if(dist < bes2) {
-              minId2 = j;
-              bes2 = dist;
-            }
+    protected int initialAssignPoint(DBIDRef it, NumberVector fv, double[][] cdist) {
+      // Find closest center, and distance to two closest centers:
+      double best = distance(fv, means[0]), bes2 = distance(fv, means[1]);
+      int minIdx = 0, minId2 = 1;
+      if(bes2 < best) {
+        double tmp = best;
+        best = bes2;
+        bes2 = tmp;
+        minIdx = 1;
+        minId2 = 0;
+      }
+      for(int j = 2; j < k; j++) {
+        if(bes2 > cdist[minIdx][j]) {
+          double dist = distance(fv, means[j]);
+          if(dist < best) {
+            minId2 = minIdx;
+            minIdx = j;
+            bes2 = best;
+            best = dist;
+          }
+          else if(dist < bes2) {
+            minId2 = j;
+            bes2 = dist;
           }
         }
-        // Assign to nearest cluster.
-        clusters.get(minIdx).add(it);
-        assignment.putInt(it, minIdx);
-        // Overall like Exponion, but also store second closest
-        second.putInt(it, minId2);
-        plusEquals(sums[minIdx], fv);
-        upper.putDouble(it, isSquared ? FastMath.sqrt(best) : best);
-        lower.putDouble(it, isSquared ? FastMath.sqrt(bes2) : bes2);
       }
-      return relation.size();
+      // Overall like Exponion, but also store second closest
+      second.putInt(it, minId2);
+      upper.putDouble(it, isSquared ? FastMath.sqrt(best) : best);
+      lower.putDouble(it, isSquared ? FastMath.sqrt(bes2) : bes2);
+      return minIdx;
     }
 
     @Override
-    protected int assignToNearestCluster() {
-      assert (k == means.length);
-      recomputeSeperation(sep, cdist);
-      nearestMeans(cdist, cnum);
-      int changed = 0;
-      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
-        final int cur = assignment.intValue(it);
-        // Compute the current bound:
-        final double z = lower.doubleValue(it);
-        final double sa = sep[cur];
-        double u = upper.doubleValue(it);
-        if(u <= z || u <= sa) {
-          continue;
-        }
-        // Update the upper bound
-        NumberVector fv = relation.get(it);
-        double curd2 = distance(fv, means[cur]);
-        upper.putDouble(it, u = isSquared ? FastMath.sqrt(curd2) : curd2);
-        if(u <= z || u <= sa) {
-          continue;
-        }
-        double r = u + 0.5 * sa; // Our cdist are scaled 0.5!
-        if(cdist[cur][cnum[cur][0]] > r) {
-          continue;
+    protected int reassignPoint(DBIDRef it, int cur) {
+      // Compute the current bound:
+      final double z = lower.doubleValue(it);
+      final double sa = sep[cur];
+      double u = upper.doubleValue(it);
+      if(u <= z || u <= sa) {
+        return cur;
+      }
+      // Update the upper bound
+      NumberVector fv = relation.get(it);
+      double curd2 = distance(fv, means[cur]);
+      upper.putDouble(it, u = isSquared ? FastMath.sqrt(curd2) : curd2);
+      if(u <= z || u <= sa) {
+        return cur;
+      }
+      double r = u + 0.5 * sa; // Our cdist are scaled 0.5!
+      if(cdist[cur][cnum[cur][0]] > r) {
+        return cur;
+      }
+      // Shallot modification #1: try old second-nearest first:
+      int secn = second.intValue(it);
+      // Exact distance to previous second nearest
+      double secd2 = distance(fv, means[secn]);
+      int ref = cur; // closest center "z" in Borgelts paper
+      if(secd2 < curd2) {
+        // Previous second closest is closer, swap:
+        final double tmp = secd2;
+        secd2 = curd2;
+        curd2 = tmp;
+        ref = secn;
+        secn = cur;
+        // Update u
+        u = isSquared ? FastMath.sqrt(curd2) : curd2;
+      }
+      // Second Shallot improvement: r
+      double l = Math.min(u + sa, 2 * u + cdist[cur][cnum[cur][0]]);
+      r = 0.5 * (u + l); // Our cdist are scaled by 0.5!
+      // Find closest center, and distance to two closest centers
+      double min1 = curd2, min2 = secd2;
+      int minIdx = ref, minId2 = secn;
+      for(int i = 0; i < k - 1; i++) {
+        int c = cnum[ref][i];
+        if(c == secn) {
+          continue; // Handled above
         }
-        // Shallot modification #1: try old second-nearest first:
-        int secn = second.intValue(it);
-        // Exact distance to previous second nearest
-        double secd2 = distance(fv, means[secn]);
-        int ref = cur; // closest center "z" in Borgelts paper
-        if(secd2 < curd2) {
-          // Previous second closest is closer, swap:
-          final double tmp = secd2;
-          secd2 = curd2;
-          curd2 = tmp;
-          ref = secn;
-          secn = cur;
-          // Update u
-          u = isSquared ? FastMath.sqrt(curd2) : curd2;
+        if(cdist[ref][c] > r) {
+          break;
         }
-        // Second Shallot improvement: r
-        double l = Math.min(u + sa, 2 * u + cdist[cur][cnum[cur][0]]);
-        r = 0.5 * (u + l); // Our cdist are scaled by 0.5!
-        // Find closest center, and distance to two closest centers
-        double min1 = curd2, min2 = secd2;
-        int minIdx = ref, minId2 = secn;
-        for(int i = 0; i < k - 1; i++) {
-          int c = cnum[ref][i];
-          if(c == secn) {
-            continue; // Handled above
-          }
-          if(cdist[ref][c] > r) {
-            break;
-          }
-          double dist = distance(fv, means[c]);
-          if(dist < min1) {
-            minId2 = minIdx;
-            minIdx = c;
-            min2 = min1;
-            min1 = dist;
-            // Second Shallot improvement: r shrinking
-            if(min1 < l) {
-              r = 0.5 * (u + (l = min1));
-            }
-          }
-          else if(dist < min2) {
-            minId2 = c;
-            min2 = dist;
+        double dist = distance(fv, means[c]);
+        if(dist < min1) {
+          minId2 = minIdx;
+          minIdx = c;
+          min2 = min1;
+          min1 = dist;
+          // Second Shallot improvement: r shrinking
+          if(min1 < l) {
+            r = 0.5 * (u + (l = min1));
           }
         }
-        if(minIdx != cur) {
-          clusters.get(minIdx).add(it);
-          clusters.get(cur).remove(it);
-          assignment.putInt(it, minIdx);
-          second.putInt(it, minId2);
-          plusMinusEquals(sums[minIdx], sums[cur], fv);
-          ++changed;
-          upper.putDouble(it, min1 == curd2 ? u : isSquared ? FastMath.sqrt(min1) : min1);
+        else if(dist < min2) {
+          minId2 = c;
+          min2 = dist;
         }
-        lower.putDouble(it, min2 == curd2 ? u : isSquared ? FastMath.sqrt(min2) : min2);
       }
-      return changed;
+      if(minIdx != cur) {
+        second.putInt(it, minId2);
+        upper.putDouble(it, min1 == curd2 ? u : isSquared ? FastMath.sqrt(min1) : min1);
+      }
+      lower.putDouble(it, min2 == curd2 ? u : isSquared ? FastMath.sqrt(min2) : min2);
+      return minIdx;
     }
 
     @Override
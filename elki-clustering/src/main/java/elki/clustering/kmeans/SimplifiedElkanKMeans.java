@@ -29,6 +29,7 @@ import elki.database.datastore.DataStoreUtil;
 import elki.database.datastore.WritableDataStore;
 import elki.database.datastore.WritableDoubleDataStore;
 import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
 import elki.database.relation.Relation;
 import elki.distance.NumberVectorDistance;
 import elki.logging.Logging;
@@ -87,11 +88,22 @@ public class SimplifiedElkanKMeans<V extends NumberVector> extends AbstractKMean
 
   @Override
   public Clustering<KMeansModel> run(Relation<V> relation) {
-    Instance instance = new Instance(relation, distance, initialMeans(relation));
+    Instance instance = makeInstance(relation, initialMeans(relation));
     instance.run(maxiter);
     return instance.buildResult(varstat, relation);
   }
 
+  /**
+   * Make the instance for a data set.
+   *
+   * @param relation Data relation
+   * @param means Initial means
+   * @return Instance
+   */
+  protected Instance makeInstance(Relation<V> relation, double[][] means) {
+    return new Instance(relation, distance, means);
+  }
+
   /**
    * Inner instance, storing state for a single data set.
    *
@@ -101,27 +113,27 @@ public class SimplifiedElkanKMeans<V extends NumberVector> extends AbstractKMean
     /**
      * Upper bounds
      */
-    WritableDoubleDataStore upper;
+    protected WritableDoubleDataStore upper;
 
     /**
      * Lower bounds
      */
-    WritableDataStore<double[]> lower;
+    protected WritableDataStore<double[]> lower;
 
     /**
      * Sums of clusters.
      */
-    double[][] sums;
+    protected double[][] sums;
 
     /**
      * Scratch space for new means.
      */
-    double[][] newmeans;
+    protected double[][] newmeans;
 
     /**
      * Cluster separation
      */
-    double[] sep = new double[k];
+    protected double[] sep = new double[k];
 
     /**
      * Constructor.
@@ -163,76 +175,128 @@ public class SimplifiedElkanKMeans<V extends NumberVector> extends AbstractKMean
       assert k == means.length;
       double[][] cdist = new double[k][k];
       initialSeperation(cdist);
+      return initialAssignPoints(cdist);
+    }
+
+    /**
+     * Assign all points initially, and add them to the cluster sums.
+     *
+     * @param cdist Center-to-center distances
+     * @return Number of changes (i.e. relation size)
+     */
+    protected int initialAssignPoints(double[][] cdist) {
       for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
         NumberVector fv = relation.get(it);
-        double[] l = lower.get(it);
-        // Check all (other) means:
-        double best = l[0] = sqrtdistance(fv, means[0]);
-        int minIndex = 0;
-        for(int j = 1; j < k; j++) {
-          if(best > cdist[minIndex][j]) {
-            double dist = l[j] = sqrtdistance(fv, means[j]);
-            if(dist < best) {
-              minIndex = j;
-              best = dist;
-            }
-          }
-        }
-        for(int j = 1; j < k; j++) {
-          if(l[j] == 0. && j != minIndex) {
-            l[j] = 2 * sep[j] - best;
-          }
-        }
+        final int minIndex = initialAssignPoint(it, fv, cdist);
         // Assign to nearest cluster.
         clusters.get(minIndex).add(it);
         assignment.putInt(it, minIndex);
-        upper.putDouble(it, best);
         plusEquals(sums[minIndex], fv);
       }
       return relation.size();
     }
 
+    /**
+     * Find the initial cluster of a single point, and initialize its bounds.
+     * <p>
+     * This only modifies the bounds of this point, and hence may be called
+     * concurrently for different points.
+     *
+     * @param it Point
+     * @param fv Data vector of the point
+     * @param cdist Center-to-center distances
+     * @return Nearest cluster
+     */
+    protected int initialAssignPoint(DBIDRef it, NumberVector fv, double[][] cdist) {
+      double[] l = lower.get(it);
+      // Check all (other) means:
+      double best = l[0] = sqrtdistance(fv, means[0]);
+      int minIndex = 0;
+      for(int j = 1; j < k; j++) {
+        if(best > cdist[minIndex][j]) {
+          double dist = l[j] = sqrtdistance(fv, means[j]);
+          if(dist < best) {
+            minIndex = j;
+            best = dist;
+          }
+        }
+      }
+      for(int j = 1; j < k; j++) {
+        if(l[j] == 0. && j != minIndex) {
+          l[j] = 2 * sep[j] - best;
+        }
+      }
+      upper.putDouble(it, best);
+      return minIndex;
+    }
+
     @Override
     protected int assignToNearestCluster() {
+      return reassignPoints();
+    }
+
+    /**
+     * Reassign all points, and update the cluster sums.
+     *
+     * @return Number of reassigned points
+     */
+    protected int reassignPoints() {
       int changed = 0;
       for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
         final int orig = assignment.intValue(it);
-        double u = upper.doubleValue(it);
-        boolean recompute_u = true; // Elkan's r(x)
-        NumberVector fv = relation.get(it);
-        double[] l = lower.get(it);
-        // Check all (other) means:
-        int cur = orig;
-        for(int j = 0; j < k; j++) {
-          if(orig == j || u <= l[j]) {
-            continue; // Condition #3 i-iii not satisfied
-          }
-          if(recompute_u) { // Need to update bound? #3a
-            upper.putDouble(it, u = sqrtdistance(fv, means[cur]));
-            recompute_u = false; // Once only
-            if(u <= l[j]) { // #3b
-              continue;
-            }
-          }
-          double dist = l[j] = sqrtdistance(fv, means[j]);
-          if(dist < u) {
-            cur = j;
-            u = dist;
-          }
-        }
+        final int cur = reassignPoint(it, orig);
         // Object is to be reassigned.
         if(cur != orig) {
-          upper.putDouble(it, u); // Remember bound.
           clusters.get(cur).add(it);
           clusters.get(orig).remove(it);
           assignment.putInt(it, cur);
-          plusMinusEquals(sums[cur], sums[orig], fv);
+          plusMinusEquals(sums[cur], sums[orig], relation.get(it));
           ++changed;
         }
       }
       return changed;
     }
 
+    /**
+     * Find the nearest cluster of a single point, and update its bounds.
+     * <p>
+     * This only modifies the bounds of this point, and hence may be called
+     * concurrently for different points.
+     *
+     * @param it Point
+     * @param orig Current cluster of the point
+     * @return New cluster of the point
+     */
+    protected int reassignPoint(DBIDRef it, int orig) {
+      double u = upper.doubleValue(it);
+      boolean recompute_u = true; // Elkan's r(x)
+      NumberVector fv = relation.get(it);
+      double[] l = lower.get(it);
+      // Check all (other) means:
+      int cur = orig;
+      for(int j = 0; j < k; j++) {
+        if(orig == j || u <= l[j]) {
+          continue; // Condition #3 i-iii not satisfied
+        }
+        if(recompute_u) { // Need to update bound? #3a
+          upper.putDouble(it, u = sqrtdistance(fv, means[cur]));
+          recompute_u = false; // Once only
+          if(u <= l[j]) { // #3b
+            continue;
+          }
+        }
+        double dist = l[j] = sqrtdistance(fv, means[j]);
+        if(dist < u) {
+          cur = j;
+          u = dist;
+        }
+      }
+      if(cur != orig) {
+        upper.putDouble(it, u); // Remember bound.
+      }
+      return cur;
+    }
+
     /**
      * Update the bounds for k-means.
      *
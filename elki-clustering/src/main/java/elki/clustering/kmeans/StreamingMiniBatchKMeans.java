@@ -0,0 +1,338 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans;
+
+import elki.clustering.kmeans.initialization.KMeansInitialization;
+import elki.clustering.kmeans.initialization.RandomlyChosen;
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.type.SimpleTypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDRange;
+import elki.database.ids.DBIDUtil;
+import elki.database.relation.MaterializedRelation;
+import elki.datasource.bundle.BundleMeta;
+import elki.datasource.bundle.BundleStreamSource;
+import elki.distance.NumberVectorDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.logging.Logging;
+import elki.logging.progress.IndefiniteProgress;
+import elki.logging.statistics.LongStatistic;
+import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Streaming variant of mini-batch k-means, which reads the data directly from
+ * a {@link BundleStreamSource} such as a
+ * {@link elki.datasource.parser.StreamingParser} without building a database.
+ * <p>
+ * The stream is cut into consecutive batches, so memory usage is bounded by
+ * the batch size. The first batch is used to choose the initial means. Because
+ * there is no random access to the data, the stream should be in random order,
+ * and only the final means are returned - no cluster assignment is produced.
+ * <p>
+ * This is a library API for use from Java code: it is not an
+ * {@link elki.Algorithm}, as it does not use a database, and hence it is not
+ * available in the user interfaces. Use {@link MiniBatchKMeans} there.
+ * <p>
+ * Reference:
+ * <p>
+ * D. Sculley<br>
+ * Web-scale k-means clustering<br>
+ * Proc. 19th Int. Conf. on World Wide Web (WWW 2010)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - BundleStreamSource
+ *
+ * @param <V> vector type to use
+ */
+@Reference(authors = "D. Sculley", //
+    title = "Web-scale k-means clustering", //
+    booktitle = "Proc. 19th Int. Conf. on World Wide Web (WWW 2010)", //
+    url = "https://doi.org/10.1145/1772690.1772862", //
+    bibkey = "DBLP:conf/www/Sculley10")
+public class StreamingMiniBatchKMeans<V extends NumberVector> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(StreamingMiniBatchKMeans.class);
+
+  /**
+   * Distance function.
+   */
+  protected NumberVectorDistance<? super V> distance;
+
+  /**
+   * Number of clusters.
+   */
+  protected int k;
+
+  /**
+   * Batch size.
+   */
+  protected int batchsize;
+
+  /**
+   * Initialization method, applied to the first batch.
+   */
+  protected KMeansInitialization initializer;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param k Number of clusters
+   * @param batchsize Batch size
+   * @param initializer Initialization method, applied to the first batch
+   */
+  public StreamingMiniBatchKMeans(NumberVectorDistance<? super V> distance, int k, int batchsize, KMeansInitialization initializer) {
+    super();
+    this.distance = distance;
+    this.k = k;
+    this.batchsize = batchsize;
+    this.initializer = initializer;
+  }
+
+  /**
+   * Run mini-batch k-means on a data stream.
+   * <p>
+   * For a {@link elki.datasource.parser.StreamingParser}, call
+   * {@code initStream} first.
+   *
+   * @param source Data stream
+   * @return Final cluster means
+   */
+  public double[][] run(BundleStreamSource source) {
+    if(batchsize < k) {
+      throw new AbortException("The batch size must be at least k, as the first batch is used for initialization.");
+    }
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("Mini-batches processed") : null;
+    Batch batch = new Batch();
+    NumberVector[] buf = new NumberVector[batchsize];
+    int col = -1, fill = 0;
+    loop: while(true) {
+      BundleStreamSource.Event ev = source.nextEvent();
+      switch(ev){
+      case END_OF_STREAM:
+        break loop;
+      case META_CHANGED:
+        col = findVectorColumn(source.getMeta());
+        batch.type = source.getMeta().get(col);
+        break;
+      case NEXT_OBJECT:
+        if(col < 0) {
+          throw new AbortException("No vector column available.");
+        }
+        buf[fill++] = (NumberVector) source.data(col);
+        if(fill == batchsize) {
+          batch.process(buf, fill);
+          fill = 0;
+          LOG.incrementProcessed(prog);
+        }
+        break;
+      }
+    }
+    if(fill > 0) {
+      batch.process(buf, fill);
+      LOG.incrementProcessed(prog);
+    }
+    LOG.setCompleted(prog);
+    if(batch.means == null) {
+      throw new AbortException("The data stream did not contain any data.");
+    }
+    LOG.statistics(new LongStatistic(getClass().getName() + ".distance-computations", batch.diststat));
+    return batch.means;
+  }
+
+  /**
+   * Find the numerical vector column.
+   *
+   * @param meta Stream metadata
+   * @return Column number
+   */
+  private static int findVectorColumn(BundleMeta meta) {
+    int col = -1;
+    for(int i = 0; i < meta.size(); i++) {
+      if(TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(meta.get(i))) {
+        if(col >= 0) {
+          throw new AbortException("More than one vector column.");
+        }
+        col = i;
+      }
+    }
+    if(col < 0) {
+      throw new AbortException("No vector column available.");
+    }
+    return col;
+  }
+
+  /**
+   * State of the mini-batch updates.
+   *
+   * @author Erich Schubert
+   */
+  private class Batch {
+    /**
+     * Current means.
+     */
+    double[][] means;
+
+    /**
+     * Means, wrapped as vectors.
+     */
+    DoubleVector[] wrapped;
+
+    /**
+     * Number of points processed per center, for the learning rate.
+     */
+    long[] counts = new long[k];
+
+    /**
+     * Nearest center of each element in the current batch.
+     */
+    int[] nearest = new int[batchsize];
+
+    /**
+     * Vector type of the stream.
+     */
+    SimpleTypeInformation<?> type;
+
+    /**
+     * Distance computations.
+     */
+    long diststat;
+
+    /**
+     * Process one batch of the stream.
+     *
+     * @param buf Data buffer
+     * @param size Number of valid entries
+     */
+    void process(NumberVector[] buf, int size) {
+      if(means == null) {
+        initialize(buf, size);
+      }
+      // Assign the batch to the current centers first:
+      for(int i = 0; i < size; i++) {
+        final NumberVector fv = buf[i];
+        double mindist = distance.distance(fv, wrapped[0]);
+        int minIndex = 0;
+        for(int j = 1; j < k; j++) {
+          double dist = distance.distance(fv, wrapped[j]);
+          if(dist < mindist) {
+            minIndex = j;
+            mindist = dist;
+          }
+        }
+        nearest[i] = minIndex;
+      }
+      diststat += size * (long) k;
+      // Then perform the gradient steps with per-center learning rates:
+      for(int i = 0; i < size; i++) {
+        final int c = nearest[i];
+        MiniBatchKMeans.gradientStep(means[c], buf[i], 1. / ++counts[c]);
+      }
+    }
+
+    /**
+     * Choose the initial means from the first batch.
+     *
+     * @param buf Data buffer
+     * @param size Number of valid entries
+     */
+    @SuppressWarnings("unchecked")
+    private void initialize(NumberVector[] buf, int size) {
+      if(size < k) {
+        throw new AbortException("The data stream contains fewer than k objects.");
+      }
+      DBIDRange ids = DBIDUtil.generateStaticDBIDRange(size);
+      WritableDataStore<NumberVector> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP, NumberVector.class);
+      int i = 0;
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        store.put(it, buf[i++]);
+      }
+      MaterializedRelation<NumberVector> rel = new MaterializedRelation<>("Initial batch", (SimpleTypeInformation<NumberVector>) type, ids, store);
+      means = initializer.chooseInitialMeans(rel, k, distance);
+      wrapped = new DoubleVector[k];
+      for(int j = 0; j < k; j++) {
+        wrapped[j] = DoubleVector.wrap(means[j]);
+      }
+      DBIDUtil.deallocateDBIDRange(ids);
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V extends NumberVector> implements Parameterizer {
+    /**
+     * Distance function.
+     */
+    protected NumberVectorDistance<? super V> distance;
+
+    /**
+     * Number of clusters.
+     */
+    protected int k;
+
+    /**
+     * Batch size.
+     */
+    protected int batchsize;
+
+    /**
+     * Initialization method.
+     */
+    protected KMeansInitialization initializer;
+
+    @Override
+    public void configure(Parameterization config) {
+      new IntParameter(KMeans.K_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> k = x);
+      new ObjectParameter<KMeansInitialization>(KMeans.INIT_ID, KMeansInitialization.class, RandomlyChosen.class) //
+          .grab(config, x -> initializer = x);
+      new ObjectParameter<NumberVectorDistance<? super V>>(KMeans.DISTANCE_FUNCTION_ID, NumberVectorDistance.class, SquaredEuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new IntParameter(MiniBatchKMeans.Par.BATCHSIZE_ID, 1000) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> batchsize = x);
+    }
+
+    @Override
+    public StreamingMiniBatchKMeans<V> make() {
+      return new StreamingMiniBatchKMeans<>(distance, k, batchsize, initializer);
+    }
+  }
+}
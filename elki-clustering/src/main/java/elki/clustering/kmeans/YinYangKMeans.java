@@ -28,6 +28,7 @@ import elki.data.NumberVector;
 import elki.data.model.KMeansModel;
 import elki.database.datastore.*;
 import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
 import elki.database.relation.Relation;
 import elki.distance.NumberVectorDistance;
 import elki.logging.Logging;
@@ -78,7 +79,7 @@ public class YinYangKMeans<V extends NumberVector> extends AbstractKMeans<V, KMe
   /**
    * Number of cluster center groups t
    */
-  private int t;
+  protected int t;
 
   /**
    * Constructor.
@@ -95,11 +96,22 @@ public class YinYangKMeans<V extends NumberVector> extends AbstractKMeans<V, KMe
 
   @Override
   public Clustering<KMeansModel> run(Relation<V> rel) {
-    Instance instance = new Instance(rel, getDistance(), initialMeans(rel), t);
+    Instance instance = makeInstance(rel, initialMeans(rel));
     instance.run(maxiter);
     return instance.buildResult();
   }
 
+  /**
+   * Make the instance for a data set.
+   *
+   * @param rel Data relation
+   * @param means Initial means
+   * @return Instance
+   */
+  protected Instance makeInstance(Relation<V> rel, double[][] means) {
+    return new Instance(rel, getDistance(), means, t);
+  }
+
   /**
    * Instance for a particular data set.
    * 
@@ -125,7 +137,7 @@ public class YinYangKMeans<V extends NumberVector> extends AbstractKMeans<V, KMe
     /**
      * Current cluster sum.
      */
-    double[][] sums;
+    protected double[][] sums;
 
     /**
      * Group label of each mean
@@ -135,12 +147,17 @@ public class YinYangKMeans<V extends NumberVector> extends AbstractKMeans<V, KMe
     /**
      * Upper bound
      */
-    WritableDoubleDataStore upper;
+    protected WritableDoubleDataStore upper;
 
     /**
      * Lower bounds
      */
-    WritableDataStore<double[]> lower;
+    protected WritableDataStore<double[]> lower;
+
+    /**
+     * Scratch space for the previous lower bounds.
+     */
+    double[] prevlb;
 
     /**
      * Constructor.
@@ -162,10 +179,11 @@ public class YinYangKMeans<V extends NumberVector> extends AbstractKMeans<V, KMe
       this.cdrift = new double[k];
       this.sums = new double[k][dim]; // center sums to calculate mean
       this.gdrift = new double[t];
+      this.prevlb = new double[t];
     }
 
     @Override
-    protected void run(int maxiter) {
+    public void run(int maxiter) {
       this.groups = groupKMeans(gdrift.length /* = t */);
       super.run(maxiter);
     }
@@ -322,85 +340,101 @@ public class YinYangKMeans<V extends NumberVector> extends AbstractKMeans<V, KMe
      */
     @Override
     protected int assignToNearestCluster() {
-      final int t = gdrift.length;
       int changed = 0;
-      double[] prevlb = new double[t];
-
       for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
-        NumberVector cur = relation.get(it);
-        int prev = assignment.intValue(it);
-        double[] lbs = lower.get(it);
-        System.arraycopy(lbs, 0, prevlb, 0, lbs.length);
-
-        // Update the upper bound
-        final double drift = cdrift[prev];
-        if(drift > 0) {
-          upper.increment(it, drift);
+        final int prev = assignment.intValue(it);
+        final int best = reassignPoint(it, prev);
+        if(prev != best) {
+          clusters.get(prev).remove(it);
+          clusters.get(best).add(it);
+          plusMinusEquals(sums[best], sums[prev], relation.get(it));
+          assignment.put(it, best);
+          ++changed;
         }
+      }
+      return changed;
+    }
 
-        double minlb = Double.POSITIVE_INFINITY;
-        // Update lower bounds with the maximum distance moved within each group
-        for(int g = 0; g < t; g++) {
-          double lb = lbs[g] -= gdrift[g];
-          minlb = lb < minlb ? lb : minlb;
-        }
+    /**
+     * Find the nearest cluster of a single point, and update its bounds.
+     * <p>
+     * This only modifies the bounds of this point (and scratch space of this
+     * instance), and hence may be called concurrently for different points on
+     * different worker copies.
+     *
+     * @param it Point
+     * @param prev Current cluster of the point
+     * @return New cluster of the point
+     */
+    protected int reassignPoint(DBIDRef it, int prev) {
+      final int t = gdrift.length;
+      NumberVector cur = relation.get(it);
+      double[] lbs = lower.get(it);
+      System.arraycopy(lbs, 0, prevlb, 0, lbs.length);
+
+      // Update the upper bound
+      final double drift = cdrift[prev];
+      if(drift > 0) {
+        upper.increment(it, drift);
+      }
 
-        // Global filter
-        double ub = upper.doubleValue(it);
-        if(minlb >= ub) {
-          continue;
-        }
+      double minlb = Double.POSITIVE_INFINITY;
+      // Update lower bounds with the maximum distance moved within each group
+      for(int g = 0; g < t; g++) {
+        double lb = lbs[g] -= gdrift[g];
+        minlb = lb < minlb ? lb : minlb;
+      }
 
-        // tighten ub(x) and check again
-        upper.put(it, ub = sqrtdistance(cur, means[prev]));
-        // Global filter with ub tight
-        if(minlb >= ub) {
+      // Global filter
+      double ub = upper.doubleValue(it);
+      if(minlb >= ub) {
+        return prev;
+      }
+
+      // tighten ub(x) and check again
+      upper.put(it, ub = sqrtdistance(cur, means[prev]));
+      // Global filter with ub tight
+      if(minlb >= ub) {
+        return prev;
+      }
+
+      int best = prev;
+      // distance to second closest:
+      for(int g = 0; g < t; ++g) {
+        double lb = lbs[g];
+        // Group filter
+        if(lb >= ub) {
           continue;
         }
-
-        int best = prev;
-        // distance to second closest:
-        for(int g = 0; g < t; ++g) {
-          double lb = lbs[g];
-          // Group filter
-          if(lb >= ub) {
+        double plb = prevlb[g];
+        double sc = Double.POSITIVE_INFINITY;
+        for(int i : groups[g]) {
+          if(i == prev) { // Already computed above
             continue;
           }
-          double plb = prevlb[g];
-          double sc = Double.POSITIVE_INFINITY;
-          for(int i : groups[g]) {
-            if(i == prev) { // Already computed above
-              continue;
-            }
-            // Local filter.
-            if(sc < plb - cdrift[i]) {
-              continue;
+          // Local filter.
+          if(sc < plb - cdrift[i]) {
+            continue;
+          }
+          double di = sqrtdistance(cur, means[i]);
+          if(di < sc) { // at least second closest
+            if(di < ub) { // closest
+              lb = sc = ub; // previous closest is now second
+              ub = di;
+              best = i;
             }
-            double di = sqrtdistance(cur, means[i]);
-            if(di < sc) { // at least second closest
-              if(di < ub) { // closest
-                lb = sc = ub; // previous closest is now second
-                ub = di;
-                best = i;
-              }
-              else {
-                sc = di;
-              }
+            else {
+              sc = di;
             }
           }
-          lbs[g] = sc;
         }
+        lbs[g] = sc;
+      }
 
-        if(prev != best) {
-          upper.put(it, ub);
-          clusters.get(assignment.intValue(it)).remove(it);
-          clusters.get(best).add(it);
-          plusMinusEquals(sums[best], sums[prev], cur);
-          assignment.put(it, best);
-          ++changed;
-        }
+      if(prev != best) {
+        upper.put(it, ub);
       }
-      return changed;
+      return best;
     }
 
     /**
@@ -408,63 +442,84 @@ public class YinYangKMeans<V extends NumberVector> extends AbstractKMeans<V, KMe
      * 
      * @return number of changes (i.e. relation size)
      */
-    private int initialAssignToNearestCluster() {
+    protected int initialAssignToNearestCluster() {
       assert k == means.length;
       for(DBIDIter id = relation.iterDBIDs(); id.valid(); id.advance()) {
         NumberVector point = relation.get(id);
-        double[] lower = this.lower.get(id);
-        double min = Double.POSITIVE_INFINITY;
-        int globalindex = 0;
+        final int globalindex = initialAssignPoint(id, point);
+        clusters.get(globalindex).add(id);
+        assignment.put(id, globalindex);
+        plusEquals(sums[globalindex], point);
+      }
+      return relation.size();
+    }
 
-        for(int g = 0; g < groups.length; g++) {
-          final int[] group = groups[g];
-          if(group.length == 0) {
-            continue;
+    /**
+     * Find the initial cluster of a single point, and initialize its bounds.
+     * <p>
+     * This only modifies the bounds of this point, and hence may be called
+     * concurrently for different points.
+     *
+     * @param id Point
+     * @param point Data vector of the point
+     * @return Nearest cluster
+     */
+    protected int initialAssignPoint(DBIDRef id, NumberVector point) {
+      double[] lower = this.lower.get(id);
+      double min = Double.POSITIVE_INFINITY;
+      int globalindex = 0;
+
+      for(int g = 0; g < groups.length; g++) {
+        final int[] group = groups[g];
+        if(group.length == 0) {
+          continue;
+        }
+        // First center in group
+        double min1 = distance(point, means[group[0]]);
+        double min2 = Double.POSITIVE_INFINITY;
+        int best = group[0];
+        // remaining centers in group
+        for(int c = 1; c < group.length; c++) {
+          int center = group[c];
+          double dist = distance(point, means[center]);
+          if(dist < min1) {
+            min2 = min1;
+            best = center;
+            min1 = dist;
           }
-          // First center in group
-          double min1 = distance(point, means[group[0]]);
-          double min2 = Double.POSITIVE_INFINITY;
-          int best = group[0];
-          // remaining centers in group
-          for(int c = 1; c < group.length; c++) {
-            int center = group[c];
-            double dist = distance(point, means[center]);
-            if(dist < min1) {
-              min2 = min1;
-              best = center;
-              min1 = dist;
-            }
-            else if(dist < min2) {
-              min2 = dist;
-            }
+          else if(dist < min2) {
+            min2 = dist;
           }
-          // For the triangle inequality, we need Euclidean not squared
-          min1 = isSquared ? FastMath.sqrt(min1) : min1;
-          min2 = min2 < Double.POSITIVE_INFINITY ? (isSquared ? FastMath.sqrt(min2) : min2) : min1;
+        }
+        // For the triangle inequality, we need Euclidean not squared
+        min1 = isSquared ? FastMath.sqrt(min1) : min1;
+        min2 = min2 < Double.POSITIVE_INFINITY ? (isSquared ? FastMath.sqrt(min2) : min2) : min1;
 
-          if(min1 < min) {
-            if(globalindex != -1) {
-              lower[glabel[globalindex]] = min;
-            }
-            min = min1;
-            globalindex = best;
-            lower[g] = min2;
-          }
-          else {
-            lower[g] = min1;
+        if(min1 < min) {
+          if(globalindex != -1) {
+            lower[glabel[globalindex]] = min;
           }
+          min = min1;
+          globalindex = best;
+          lower[g] = min2;
+        }
+        else {
+          lower[g] = min1;
         }
-        clusters.get(globalindex).add(id);
-        assignment.put(id, globalindex);
-        upper.put(id, min);
-        plusEquals(sums[globalindex], point);
       }
+      upper.put(id, min);
+      return globalindex;
+    }
 
-      return relation.size();
+    @Override
+    protected Instance workerCopy() {
+      Instance copy = (Instance) super.workerCopy();
+      copy.prevlb = new double[prevlb.length];
+      return copy;
     }
 
     @Override
-    Logging getLogger() {
+    protected Logging getLogger() {
       return LOG;
     }
   }
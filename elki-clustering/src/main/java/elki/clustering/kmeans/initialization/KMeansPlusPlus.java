@@ -35,12 +35,15 @@ import elki.database.relation.Relation;
 import elki.distance.NumberVectorDistance;
 import elki.logging.Logging;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.documentation.Reference;
 import elki.utilities.random.RandomFactory;
 
 /**
  * K-Means++ initialization for k-means.
  * <p>
+ * The weight updates after choosing each center are computed in parallel.
+ * <p>
  * Reference:
  * <p>
  * D. Arthur, S. Vassilvitskii<br>
@@ -96,11 +99,21 @@ public class KMeansPlusPlus<O> extends AbstractKMeansInitialization implements K
    * @param <T> Object type handled
    */
   protected abstract static class Instance<T> {
+    /**
+     * Minimum number of objects per parallel block.
+     */
+    private static final int MIN_BLOCKSIZE = 256;
+
     /**
      * Object IDs
      */
     protected DBIDs ids;
 
+    /**
+     * Object IDs, as array for parallel processing
+     */
+    protected ArrayDBIDs aids;
+
     /**
      * Weights
      */
@@ -124,12 +137,21 @@ public class KMeansPlusPlus<O> extends AbstractKMeansInitialization implements K
      */
     public Instance(DBIDs ids, RandomFactory rnd) {
       this.ids = ids;
+      this.aids = DBIDUtil.ensureArray(ids);
       this.random = rnd.getSingleThreadedRandom();
       this.weights = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, 0.);
+      if(!(ids instanceof DBIDRange)) {
+        // Hash-based storage: add all keys now, before writing concurrently.
+        for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+          weights.putDouble(it, 0.);
+        }
+      }
     }
 
     /**
      * Compute the distance of two objects.
+     * <p>
+     * This is called concurrently from multiple threads.
      *
      * @param a First object
      * @param b Second object
@@ -144,14 +166,7 @@ public class KMeansPlusPlus<O> extends AbstractKMeansInitialization implements K
      * @return Weight sum
      */
     protected double initialWeights(T first) {
-      double weightsum = 0.;
-      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
-        // Distance will usually already be squared
-        double weight = distance(first, it);
-        weights.putDouble(it, weight);
-        weightsum += weight;
-      }
-      return weightsum;
+      return updateWeights(first, true);
     }
 
     /**
@@ -161,19 +176,45 @@ public class KMeansPlusPlus<O> extends AbstractKMeansInitialization implements K
      * @return Weight sum
      */
     protected double updateWeights(T latest) {
-      double weightsum = 0.;
-      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
-        double weight = weights.doubleValue(it);
-        if(weight <= 0.) {
-          continue; // Duplicate, or already chosen.
-        }
-        // Distances are assumed to be squared already
-        double newweight = distance(latest, it);
-        if(newweight < weight) {
-          weights.putDouble(it, newweight);
-          weight = newweight;
+      return updateWeights(latest, false);
+    }
+
+    /**
+     * Update the weights in parallel blocks, and sum them.
+     * <p>
+     * Each block computes a partial sum, and the partial sums are added in
+     * block order for reproducible rounding.
+     *
+     * @param latest Added ID
+     * @param initial Initialize all weights, rather than updating
+     * @return Weight sum
+     */
+    private double updateWeights(T latest, boolean initial) {
+      final int nblocks = ParallelExecutor.numBlocks(aids.size(), MIN_BLOCKSIZE);
+      final double[] sums = new double[nblocks];
+      final long[] counts = new long[nblocks];
+      ParallelExecutor.runBlocks(aids.size(), nblocks, (b, start, end) -> {
+        double sum = 0.;
+        long count = 0;
+        for(DBIDArrayIter it = aids.iter().seek(start); it.getOffset() < end; it.advance()) {
+          double weight = weights.doubleValue(it);
+          if(initial || weight > 0.) { // Skip duplicates, or already chosen.
+            ++count;
+            // Distances are assumed to be squared already
+            final double newweight = distance(latest, it);
+            if(initial || newweight < weight) {
+              weights.putDouble(it, weight = newweight);
+            }
+          }
+          sum += weight;
         }
-        weightsum += weight;
+        sums[b] = sum;
+        counts[b] = count;
+      });
+      double weightsum = 0.;
+      for(int b = 0; b < nblocks; b++) {
+        weightsum += sums[b];
+        diststat += counts[b];
       }
       return weightsum;
     }
@@ -235,7 +276,6 @@ public class KMeansPlusPlus<O> extends AbstractKMeansInitialization implements K
 
     @Override
     protected double distance(NumberVector a, DBIDRef b) {
-      ++diststat;
       return distance.distance(a, relation.get(b));
     }
 
@@ -308,7 +348,6 @@ public class KMeansPlusPlus<O> extends AbstractKMeansInitialization implements K
 
     @Override
     protected double distance(DBIDRef a, DBIDRef b) {
-      ++diststat;
       return distQ.distance(a, b);
     }
 
@@ -0,0 +1,428 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.initialization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.relation.Relation;
+import elki.distance.NumberVectorDistance;
+import elki.logging.Logging;
+import elki.logging.statistics.LongStatistic;
+import elki.math.linearalgebra.VMath;
+import elki.parallel.ParallelExecutor;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.DoubleParameter;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Scalable k-means++ initialization, also known as k-means||.
+ * <p>
+ * Rather than choosing one center per pass over the data as in
+ * {@link KMeansPlusPlus}, this oversamples: in each round, every object is
+ * chosen independently with a probability proportional to its squared
+ * distance to the current candidates, such that about \(\ell\) candidates are
+ * added per round. After a few rounds, the candidates are weighted by the
+ * number of objects closest to them, and reclustered into k centers with a
+ * weighted k-means++ initialization and a few iterations of weighted Lloyd
+ * k-means. The distance updates after each round are computed in parallel.
+ * <p>
+ * Reference:
+ * <p>
+ * B. Bahmani, B. Moseley, A. Vattani, R. Kumar, S. Vassilvitskii<br>
+ * Scalable K-Means++<br>
+ * Proc. VLDB Endowment 5(7)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+@Reference(authors = "B. Bahmani, B. Moseley, A. Vattani, R. Kumar, S. Vassilvitskii", //
+    title = "Scalable K-Means++", //
+    booktitle = "Proc. VLDB Endowment 5(7)", //
+    url = "https://doi.org/10.14778/2180912.2180915", //
+    bibkey = "DBLP:journals/pvldb/BahmaniMVKV12")
+public class ScalableKMeansPlusPlus extends AbstractKMeansInitialization {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ScalableKMeansPlusPlus.class);
+
+  /**
+   * Maximum number of Lloyd iterations when reclustering the candidates.
+   */
+  private static final int RECLUSTER_MAXITER = 10;
+
+  /**
+   * Oversampling factor, relative to k.
+   */
+  protected double oversampling;
+
+  /**
+   * Number of sampling rounds.
+   */
+  protected int rounds;
+
+  /**
+   * Constructor.
+   *
+   * @param rnd Random generator.
+   * @param oversampling Oversampling factor, relative to k
+   * @param rounds Number of sampling rounds
+   */
+  public ScalableKMeansPlusPlus(RandomFactory rnd, double oversampling, int rounds) {
+    super(rnd);
+    this.oversampling = oversampling;
+    this.rounds = rounds;
+  }
+
+  @Override
+  public double[][] chooseInitialMeans(Relation<? extends NumberVector> relation, int k, NumberVectorDistance<?> distance) {
+    if(relation.size() < k) {
+      throw new IllegalArgumentException("Cannot choose k=" + k + " means from N=" + relation.size() + " < k objects.");
+    }
+    return new Instance(relation, distance, rnd).run(k, oversampling * k, rounds);
+  }
+
+  /**
+   * Instance for a single data set.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends KMeansPlusPlus.NumberVectorInstance {
+    /**
+     * Minimum number of objects per parallel block.
+     */
+    private static final int MIN_BLOCKSIZE = 256;
+
+    /**
+     * Index of the nearest candidate.
+     */
+    protected WritableIntegerDataStore nearest;
+
+    /**
+     * Candidate centers.
+     */
+    protected List<NumberVector> candidates = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation to process
+     * @param distance Distance function
+     * @param rnd Random generator
+     */
+    public Instance(Relation<? extends NumberVector> relation, NumberVectorDistance<?> distance, RandomFactory rnd) {
+      super(relation, distance, rnd);
+      nearest = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, 0);
+      if(!(ids instanceof DBIDRange)) {
+        // Hash-based storage: add all keys now, before writing concurrently.
+        for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+          nearest.putInt(it, 0);
+        }
+      }
+    }
+
+    /**
+     * Run k-means|| initialization.
+     *
+     * @param k Number of means
+     * @param l Expected number of candidates per round
+     * @param rounds Number of rounds
+     * @return Initial means
+     */
+    public double[][] run(int k, double l, int rounds) {
+      // Choose the first candidate, which is nearest to all objects.
+      DBIDRef first = DBIDUtil.randomSample(ids, random);
+      candidates.add(relation.get(first));
+      double psi = initialWeights(candidates.get(0));
+      for(int r = 0; r < rounds && psi >= Double.MIN_NORMAL; r++) {
+        final int start = candidates.size();
+        final double scale = l / psi;
+        // Sample sequentially, for reproducibility with a fixed seed.
+        for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+          final double weight = weights.doubleValue(it);
+          if(weight > 0. && random.nextDouble() < weight * scale) {
+            weights.putDouble(it, 0.);
+            nearest.putInt(it, candidates.size());
+            candidates.add(relation.get(it));
+          }
+        }
+        if(candidates.size() > start) {
+          psi = updateCandidates(start, candidates.size());
+        }
+      }
+      if(candidates.size() < k) {
+        fillCandidates(k);
+      }
+      // Weight each candidate by the number of objects closest to it.
+      double[] cweight = new double[candidates.size()];
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        cweight[nearest.intValue(it)] += 1.;
+      }
+      weights.destroy();
+      nearest.destroy();
+      LOG.statistics(new LongStatistic(ScalableKMeansPlusPlus.class.getName() + ".candidates", candidates.size()));
+      double[][] means = candidates.size() > k ? recluster(k, cweight) : unboxVectors(candidates);
+      LOG.statistics(new LongStatistic(ScalableKMeansPlusPlus.class.getName() + ".distance-computations", diststat));
+      return means;
+    }
+
+    /**
+     * Fill up the candidates with random objects, if too few were sampled.
+     *
+     * @param k Number of candidates needed
+     */
+    protected void fillCandidates(int k) {
+      DBIDs sample = DBIDUtil.randomSample(ids, k, random);
+      for(DBIDIter it = sample.iter(); it.valid() && candidates.size() < k; it.advance()) {
+        if(weights.doubleValue(it) > 0.) {
+          weights.putDouble(it, 0.);
+          nearest.putInt(it, candidates.size());
+          candidates.add(relation.get(it));
+        }
+      }
+      if(candidates.size() < k) {
+        LOG.warning("Could not choose enough distinct means - too few unique data points?");
+        for(DBIDIter it = sample.iter(); it.valid() && candidates.size() < k; it.advance()) {
+          candidates.add(relation.get(it));
+        }
+      }
+    }
+
+    /**
+     * Recluster the weighted candidates into k means, using weighted k-means++
+     * and weighted Lloyd iterations.
+     *
+     * @param k Number of means
+     * @param cweight Candidate weights
+     * @return Means
+     */
+    protected double[][] recluster(int k, double[] cweight) {
+      final int m = candidates.size();
+      double[][] means = new double[k][];
+      double[] cdist = new double[m];
+      int[] assignment = new int[m];
+      // Weighted k-means++ seeding:
+      means[0] = candidates.get(chooseWeighted(cweight, null, VMath.sum(cweight))).toArray();
+      for(int i = 0; i < m; i++) {
+        cdist[i] = distance(means[0], candidates.get(i));
+      }
+      for(int j = 1; j < k; j++) {
+        double sum = 0.;
+        for(int i = 0; i < m; i++) {
+          sum += cweight[i] * cdist[i];
+        }
+        final int c = sum >= Double.MIN_NORMAL ? chooseWeighted(cweight, cdist, sum) : j;
+        means[j] = candidates.get(c).toArray();
+        for(int i = 0; i < m; i++) {
+          final double d = distance(means[j], candidates.get(i));
+          if(d < cdist[i]) {
+            cdist[i] = d;
+            assignment[i] = j;
+          }
+        }
+      }
+      // Weighted Lloyd iterations:
+      final int dim = means[0].length;
+      double[][] sums = new double[k][dim];
+      double[] sizes = new double[k];
+      for(int iter = 0; iter < RECLUSTER_MAXITER; iter++) {
+        for(int j = 0; j < k; j++) {
+          Arrays.fill(sums[j], 0.);
+        }
+        Arrays.fill(sizes, 0.);
+        for(int i = 0; i < m; i++) {
+          final NumberVector vec = candidates.get(i);
+          final double w = cweight[i];
+          final double[] sum = sums[assignment[i]];
+          for(int d = 0; d < dim; d++) {
+            sum[d] += w * vec.doubleValue(d);
+          }
+          sizes[assignment[i]] += w;
+        }
+        for(int j = 0; j < k; j++) {
+          if(sizes[j] > 0.) {
+            VMath.overwriteTimes(means[j], sums[j], 1. / sizes[j]);
+          }
+        }
+        boolean changed = false;
+        for(int i = 0; i < m; i++) {
+          final NumberVector vec = candidates.get(i);
+          int best = assignment[i];
+          double bestd = distance(means[best], vec);
+          for(int j = 0; j < k; j++) {
+            if(j != best) {
+              final double d = distance(means[j], vec);
+              if(d < bestd) {
+                bestd = d;
+                best = j;
+              }
+            }
+          }
+          if(best != assignment[i]) {
+            assignment[i] = best;
+            changed = true;
+          }
+        }
+        if(!changed) {
+          break;
+        }
+      }
+      return means;
+    }
+
+    /**
+     * Choose a candidate with probability proportional to its weight (times
+     * the distance, if given).
+     *
+     * @param cweight Candidate weights
+     * @param cdist Candidate distances, may be {@code null}
+     * @param sum Sum of weights
+     * @return Chosen index
+     */
+    private int chooseWeighted(double[] cweight, double[] cdist, double sum) {
+      double r = nextDouble(sum);
+      int i = 0;
+      for(; i < cweight.length - 1; i++) {
+        if((r -= cdist != null ? cweight[i] * cdist[i] : cweight[i]) <= 0) {
+          break;
+        }
+      }
+      return i;
+    }
+
+    /**
+     * Compute the distance of a mean and a candidate.
+     *
+     * @param mean Mean
+     * @param vec Candidate
+     * @return Distance
+     */
+    private double distance(double[] mean, NumberVector vec) {
+      ++diststat;
+      return distance.distance(DoubleVector.wrap(mean), vec);
+    }
+
+    /**
+     * Update the weights with a batch of new candidates, in parallel blocks.
+     * <p>
+     * Each block computes a partial sum of the weights, and the partial sums
+     * are added in block order for reproducible rounding.
+     *
+     * @param cstart First new candidate
+     * @param cend End of new candidates (exclusive)
+     * @return Weight sum
+     */
+    protected double updateCandidates(int cstart, int cend) {
+      final int nblocks = ParallelExecutor.numBlocks(aids.size(), MIN_BLOCKSIZE);
+      final double[] sums = new double[nblocks];
+      final long[] counts = new long[nblocks];
+      ParallelExecutor.runBlocks(aids.size(), nblocks, (b, start, end) -> {
+        double sum = 0.;
+        long count = 0;
+        for(DBIDArrayIter it = aids.iter().seek(start); it.getOffset() < end; it.advance()) {
+          double weight = weights.doubleValue(it);
+          if(weight <= 0.) {
+            continue; // Duplicate, or already chosen.
+          }
+          int best = -1;
+          for(int j = cstart; j < cend; j++) {
+            // Distances are assumed to be squared already
+            final double d = distance(candidates.get(j), it);
+            if(d < weight) {
+              weight = d;
+              best = j;
+            }
+          }
+          count += cend - cstart;
+          if(best >= 0) {
+            weights.putDouble(it, weight);
+            nearest.putInt(it, best);
+          }
+          sum += weight;
+        }
+        sums[b] = sum;
+        counts[b] = count;
+      });
+      double weightsum = 0.;
+      for(int b = 0; b < nblocks; b++) {
+        weightsum += sums[b];
+        diststat += counts[b];
+      }
+      return weightsum;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par extends AbstractKMeansInitialization.Par {
+    /**
+     * Oversampling factor \(\ell/k\), i.e., the expected number of candidates
+     * chosen per round, relative to k.
+     */
+    public static final OptionID OVERSAMPLING_ID = new OptionID("kmeans.scalable.oversampling", "Oversampling factor: expected number of candidates per round, relative to k.");
+
+    /**
+     * Number of sampling rounds.
+     */
+    public static final OptionID ROUNDS_ID = new OptionID("kmeans.scalable.rounds", "Number of sampling rounds.");
+
+    /**
+     * Oversampling factor, relative to k.
+     */
+    protected double oversampling;
+
+    /**
+     * Number of sampling rounds.
+     */
+    protected int rounds;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      new DoubleParameter(OVERSAMPLING_ID, 2.) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
+          .grab(config, x -> oversampling = x);
+      new IntParameter(ROUNDS_ID, 5) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> rounds = x);
+    }
+
+    @Override
+    public ScalableKMeansPlusPlus make() {
+      return new ScalableKMeansPlusPlus(rnd, oversampling, rounds);
+    }
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import static elki.clustering.kmeans.AbstractKMeans.plusEquals;
+import static elki.clustering.kmeans.AbstractKMeans.plusMinusEquals;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import elki.data.NumberVector;
+import elki.database.datastore.IntegerDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.ModifiableDBIDs;
+import elki.database.relation.Relation;
+import elki.parallel.Executor;
+import elki.parallel.processor.Processor;
+
+/**
+ * Processor for one pass over the data of a bound-based k-means variant.
+ * <p>
+ * Every thread uses its own worker (usually a shallow copy of the k-means
+ * instance), such that distance computations can be counted without
+ * synchronization. The per-point work must only modify data of this point;
+ * the cluster sums and members are then updated sequentially, in the order of
+ * the relation, using {@link #addAssigned} and {@link #moveReassigned}. Because
+ * the floating point sums are computed in the same order as in the sequential
+ * algorithms, the results are bit-identical to the sequential implementation,
+ * independent of the number of threads.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - Instance
+ *
+ * @param <W> Worker type
+ */
+public class KMeansPassProcessor<W> implements Processor {
+  /**
+   * Worker factory.
+   */
+  private Supplier<? extends W> factory;
+
+  /**
+   * Per-point function.
+   */
+  private BiConsumer<? super W, DBIDRef> kernel;
+
+  /**
+   * Distance computations performed by a worker.
+   */
+  private ToLongFunction<? super W> counter;
+
+  /**
+   * Total number of distance computations.
+   */
+  private long diststat = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param factory Worker factory, called once per thread and block
+   * @param kernel Function to process a single point
+   * @param counter Function to obtain the distance computations of a worker
+   */
+  public KMeansPassProcessor(Supplier<? extends W> factory, BiConsumer<? super W, DBIDRef> kernel, ToLongFunction<? super W> counter) {
+    super();
+    this.factory = factory;
+    this.kernel = kernel;
+    this.counter = counter;
+  }
+
+  /**
+   * Get the number of distance computations of all workers.
+   *
+   * @return Number of distance computations
+   */
+  public long getDistanceComputations() {
+    return diststat;
+  }
+
+  @Override
+  public Instance<W> instantiate(Executor executor) {
+    return new Instance<>(factory.get(), kernel);
+  }
+
+  @Override
+  public void cleanup(Processor.Instance inst) {
+    @SuppressWarnings("unchecked")
+    Instance<W> instance = (Instance<W>) inst;
+    final long count = counter.applyAsLong(instance.worker);
+    synchronized(this) {
+      diststat += count;
+    }
+  }
+
+  /**
+   * Add all points to the clusters of their (initial) assignment, and to the
+   * cluster sums, in the order of the relation.
+   *
+   * @param relation Data relation
+   * @param assignment Cluster assignment
+   * @param clusters Cluster members
+   * @param sums Cluster sums
+   */
+  public static void addAssigned(Relation<? extends NumberVector> relation, IntegerDataStore assignment, List<ModifiableDBIDs> clusters, double[][] sums) {
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      final int c = assignment.intValue(it);
+      clusters.get(c).add(it);
+      plusEquals(sums[c], relation.get(it));
+    }
+  }
+
+  /**
+   * Move all reassigned points to their new cluster, and update the cluster
+   * sums, in the order of the relation.
+   *
+   * @param relation Data relation
+   * @param next New cluster assignment
+   * @param assignment Previous cluster assignment, will be updated
+   * @param clusters Cluster members
+   * @param sums Cluster sums
+   * @return Number of reassigned points
+   */
+  public static int moveReassigned(Relation<? extends NumberVector> relation, IntegerDataStore next, WritableIntegerDataStore assignment, List<ModifiableDBIDs> clusters, double[][] sums) {
+    int changed = 0;
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      final int orig = assignment.intValue(it), cur = next.intValue(it);
+      if(cur != orig) {
+        clusters.get(cur).add(it);
+        clusters.get(orig).remove(it);
+        assignment.putInt(it, cur);
+        plusMinusEquals(sums[cur], sums[orig], relation.get(it));
+        ++changed;
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Instance to process a part of the data set.
+   *
+   * @author Erich Schubert
+   *
+   * @param <W> Worker type
+   */
+  public static class Instance<W> implements Processor.Instance {
+    /**
+     * Worker of this instance.
+     */
+    private W worker;
+
+    /**
+     * Per-point function.
+     */
+    private BiConsumer<? super W, DBIDRef> kernel;
+
+    /**
+     * Constructor.
+     *
+     * @param worker Worker
+     * @param kernel Per-point function
+     */
+    public Instance(W worker, BiConsumer<? super W, DBIDRef> kernel) {
+      super();
+      this.worker = worker;
+      this.kernel = kernel;
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      kernel.accept(worker, id);
+    }
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToIntBiFunction;
+import java.util.function.ToLongFunction;
+
+import elki.data.NumberVector;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.relation.Relation;
+import elki.parallel.ParallelExecutor;
+
+/**
+ * Driver for the parallel bound-based k-means variants.
+ * <p>
+ * The instances of the parallel variants extend the instances of different
+ * sequential algorithms, and hence delegate the parallel processing to this
+ * class: it runs per-point functions with {@link ParallelExecutor}, each
+ * thread on its own worker, and keeps the new cluster assignment until the
+ * cluster sums are updated with {@link KMeansPassProcessor}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - KMeansPassProcessor
+ *
+ * @param <W> Worker type
+ */
+public class ParallelKMeansDriver<W> {
+  /**
+   * Object ids, for parallel processing.
+   */
+  private ArrayDBIDs ids;
+
+  /**
+   * New cluster assignment.
+   */
+  private WritableIntegerDataStore next;
+
+  /**
+   * Whether the data stores are hash-based.
+   */
+  private boolean hashed;
+
+  /**
+   * Worker factory.
+   */
+  private Supplier<? extends W> workers;
+
+  /**
+   * Distance computations performed by a worker.
+   */
+  private ToLongFunction<? super W> counter;
+
+  /**
+   * Constructor.
+   *
+   * @param ids Object ids
+   * @param assignment Cluster assignment
+   * @param workers Worker factory, usually making shallow copies of the
+   *        instance
+   * @param counter Function to obtain the distance computations of a worker
+   */
+  public ParallelKMeansDriver(DBIDs ids, WritableIntegerDataStore assignment, Supplier<? extends W> workers, ToLongFunction<? super W> counter) {
+    this.ids = DBIDUtil.ensureArray(ids);
+    this.next = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    this.hashed = !(ids instanceof DBIDRange);
+    this.workers = workers;
+    this.counter = counter;
+    prefill(assignment, -1);
+    prefill(next, -1);
+  }
+
+  /**
+   * Add all keys to a hash-based data store, as it must not be resized while
+   * written concurrently.
+   *
+   * @param store Data store
+   * @param value Initial value
+   */
+  public void prefill(WritableIntegerDataStore store, int value) {
+    if(hashed) {
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        store.putInt(it, value);
+      }
+    }
+  }
+
+  /**
+   * Add all keys to a hash-based data store, as it must not be resized while
+   * written concurrently.
+   *
+   * @param store Data store
+   * @param value Initial value
+   */
+  public void prefill(WritableDoubleDataStore store, double value) {
+    if(hashed) {
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        store.putDouble(it, value);
+      }
+    }
+  }
+
+  /**
+   * Run a function on all points in parallel.
+   *
+   * @param kernel Function to process a single point
+   * @return Number of distance computations
+   */
+  public long run(BiConsumer<? super W, DBIDRef> kernel) {
+    KMeansPassProcessor<W> pass = new KMeansPassProcessor<>(workers, kernel, counter);
+    ParallelExecutor.run(ids, pass);
+    return pass.getDistanceComputations();
+  }
+
+  /**
+   * Assign all points in parallel.
+   *
+   * @param kernel Function to find the cluster of a single point
+   * @param assignment Cluster assignment output
+   * @return Number of distance computations
+   */
+  public long assign(ToIntBiFunction<? super W, DBIDRef> kernel, WritableIntegerDataStore assignment) {
+    return run((w, it) -> assignment.putInt(it, kernel.applyAsInt(w, it)));
+  }
+
+  /**
+   * Find the new clusters of all points in parallel. Use
+   * {@link #moveReassigned} afterwards to apply the changes.
+   *
+   * @param kernel Function to find the new cluster of a single point
+   * @return Number of distance computations
+   */
+  public long reassign(ToIntBiFunction<? super W, DBIDRef> kernel) {
+    return run((w, it) -> next.putInt(it, kernel.applyAsInt(w, it)));
+  }
+
+  /**
+   * Move all reassigned points to their new cluster, in the order of the
+   * relation.
+   *
+   * @param relation Data relation
+   * @param assignment Previous cluster assignment, will be updated
+   * @param clusters Cluster members
+   * @param sums Cluster sums
+   * @return Number of reassigned points
+   */
+  public int moveReassigned(Relation<? extends NumberVector> relation, WritableIntegerDataStore assignment, List<ModifiableDBIDs> clusters, double[][] sums) {
+    return KMeansPassProcessor.moveReassigned(relation, next, assignment, clusters, sums);
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import elki.clustering.kmeans.ShallotKMeans;
+import elki.clustering.kmeans.initialization.KMeansInitialization;
+import elki.data.NumberVector;
+import elki.database.relation.Relation;
+import elki.distance.NumberVectorDistance;
+import elki.logging.Logging;
+
+/**
+ * Parallel version of the Shallot k-means algorithm.
+ * <p>
+ * The bounds and nearest centers are computed in parallel, while the cluster
+ * sums are updated in the order of the data set; the result is identical to
+ * {@link ShallotKMeans}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - ParallelKMeansDriver
+ *
+ * @param <V> vector datatype
+ */
+public class ParallelShallotKMeans<V extends NumberVector> extends ShallotKMeans<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelShallotKMeans.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   */
+  public ParallelShallotKMeans(NumberVectorDistance<? super V> distance, int k, int maxiter, KMeansInitialization initializer, boolean varstat) {
+    super(distance, k, maxiter, initializer, varstat);
+  }
+
+  @Override
+  protected Instance makeInstance(Relation<V> relation, double[][] means) {
+    return new Instance(relation, distance, means);
+  }
+
+  /**
+   * Inner instance, storing state for a single data set.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends ShallotKMeans.Instance {
+    /**
+     * Driver for parallel processing.
+     */
+    protected ParallelKMeansDriver<Instance> driver;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Relation
+     * @param df Distance function
+     * @param means Initial means
+     */
+    public Instance(Relation<? extends NumberVector> relation, NumberVectorDistance<?> df, double[][] means) {
+      super(relation, df, means);
+      driver = new ParallelKMeansDriver<>(relation.getDBIDs(), assignment, () -> (Instance) workerCopy(), w -> w.diststat);
+      driver.prefill(upper, Double.POSITIVE_INFINITY);
+      driver.prefill(lower, 0.);
+      driver.prefill(second, -1);
+    }
+
+    @Override
+    protected int initialAssignPoints(double[][] cdist) {
+      diststat += driver.assign((w, it) -> w.initialAssignPoint(it, relation.get(it), cdist), assignment);
+      KMeansPassProcessor.addAssigned(relation, assignment, clusters, sums);
+      return relation.size();
+    }
+
+    @Override
+    protected int reassignPoints() {
+      diststat += driver.reassign((w, it) -> w.reassignPoint(it, assignment.intValue(it)));
+      return driver.moveReassigned(relation, assignment, clusters, sums);
+    }
+
+    @Override
+    protected void updateBounds(double[] move, double delta) {
+      final double d = -delta;
+      driver.run((w, it) -> {
+        upper.increment(it, move[assignment.intValue(it)]);
+        lower.increment(it, d);
+      });
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V extends NumberVector> extends ShallotKMeans.Par<V> {
+    @Override
+    public ParallelShallotKMeans<V> make() {
+      return new ParallelShallotKMeans<>(distance, k, maxiter, initializer, varstat);
+    }
+  }
+}
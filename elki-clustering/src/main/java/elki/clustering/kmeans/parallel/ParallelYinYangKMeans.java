@@ -0,0 +1,128 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import elki.clustering.kmeans.YinYangKMeans;
+import elki.clustering.kmeans.initialization.KMeansInitialization;
+import elki.data.NumberVector;
+import elki.database.relation.Relation;
+import elki.distance.NumberVectorDistance;
+import elki.logging.Logging;
+
+/**
+ * Parallel version of Yin-Yang k-Means.
+ * <p>
+ * The bounds and nearest centers are computed in parallel, while the cluster
+ * sums are updated in the order of the data set; the result is identical to
+ * {@link YinYangKMeans}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - ParallelKMeansDriver
+ *
+ * @param <V> Vector type
+ */
+public class ParallelYinYangKMeans<V extends NumberVector> extends YinYangKMeans<V> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelYinYangKMeans.class);
+
+  /**
+   * Constructor.
+   *
+   * @param k Number of clusters
+   * @param maxiter Maximum number of iterations
+   * @param initializer Initialization method
+   * @param t Number of cluster center groups for pruning
+   */
+  public ParallelYinYangKMeans(int k, int maxiter, KMeansInitialization initializer, int t) {
+    super(k, maxiter, initializer, t);
+  }
+
+  @Override
+  protected Instance makeInstance(Relation<V> rel, double[][] means) {
+    return new Instance(rel, getDistance(), means, t);
+  }
+
+  /**
+   * Instance for a particular data set.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends YinYangKMeans.Instance {
+    /**
+     * Driver for parallel processing.
+     */
+    protected ParallelKMeansDriver<Instance> driver;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param df Distance function
+     * @param means Initial means
+     * @param t Number of groups to use
+     */
+    public Instance(Relation<? extends NumberVector> relation, NumberVectorDistance<?> df, double[][] means, int t) {
+      super(relation, df, means, t);
+      driver = new ParallelKMeansDriver<>(relation.getDBIDs(), assignment, () -> (Instance) workerCopy(), w -> w.diststat);
+      driver.prefill(upper, Double.POSITIVE_INFINITY);
+    }
+
+    @Override
+    protected int initialAssignToNearestCluster() {
+      assert k == means.length;
+      diststat += driver.assign((w, it) -> w.initialAssignPoint(it, relation.get(it)), assignment);
+      KMeansPassProcessor.addAssigned(relation, assignment, clusters, sums);
+      return relation.size();
+    }
+
+    @Override
+    protected int assignToNearestCluster() {
+      diststat += driver.reassign((w, it) -> w.reassignPoint(it, assignment.intValue(it)));
+      return driver.moveReassigned(relation, assignment, clusters, sums);
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V extends NumberVector> extends YinYangKMeans.Par<V> {
+    @Override
+    public ParallelYinYangKMeans<V> make() {
+      return new ParallelYinYangKMeans<>(k, maxiter, initializer, t);
+    }
+  }
+}
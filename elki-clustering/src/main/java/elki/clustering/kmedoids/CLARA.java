@@ -20,6 +20,8 @@
  */
 package elki.clustering.kmedoids;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 import elki.clustering.ClusteringAlgorithmUtil;
@@ -38,6 +40,7 @@ import elki.distance.Distance;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
 import elki.logging.statistics.DoubleStatistic;
+import elki.parallel.ParallelExecutor;
 import elki.result.Metadata;
 import elki.utilities.documentation.Reference;
 import elki.utilities.optionhandling.OptionID;
@@ -134,47 +137,153 @@ public class CLARA<V> extends PAM<V> {
 
   @Override
   public Clustering<MedoidModel> run(Relation<V> relation) {
+    return runCLARA(relation, distance, k, initializer, numsamples, sampling, keepmed, random, LOG, getClass().getName(), //
+        (distQ, rids, assignment, medoids) -> new /* PAM */Instance(distQ, rids, assignment).run(medoids, maxiter));
+  }
+
+  /**
+   * Run CLARA, using the given k-medoids method on each sample.
+   * <p>
+   * If the previous medoids are not kept, the samples are independent, and are
+   * optimized concurrently. The samples and initial medoids are still chosen
+   * sequentially, and the best sample is chosen in sample order, so the result
+   * is the same as with sequential processing.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param k Number of clusters
+   * @param initializer Initialization function
+   * @param numsamples Number of samples
+   * @param sampling Sampling rate (absolute or relative)
+   * @param keepmed Keep the previous medoids in the next sample
+   * @param random Random generator
+   * @param log Logger
+   * @param key Key for statistics logging
+   * @param optimizer k-medoids method to optimize each sample
+   * @param <V> Data type
+   * @return Clustering result
+   */
+  static <V> Clustering<MedoidModel> runCLARA(Relation<V> relation, Distance<? super V> distance, int k, KMedoidsInitialization<V> initializer, int numsamples, double sampling, boolean keepmed, RandomFactory random, Logging log, String key, SampleOptimizer optimizer) {
     DBIDs ids = relation.getDBIDs();
     DistanceQuery<V> distQ = new QueryBuilder<>(relation, distance).distanceQuery();
     int samplesize = Math.min(ids.size(), (int) (sampling <= 1 ? sampling * ids.size() : sampling));
     if(samplesize < 3 * k) {
-      LOG.warning("The sampling size is set to a very small value, it should be much larger than k.");
+      log.warning("The sampling size is set to a very small value, it should be much larger than k.");
     }
-
-    CachedDistanceQuery<V> cachedQ = new CachedDistanceQuery<V>(distQ, (samplesize * (samplesize - 1)) >> 1);
+    final int cachesize = (samplesize * (samplesize - 1)) >> 1;
 
     double best = Double.POSITIVE_INFINITY;
     ArrayModifiableDBIDs bestmedoids = null;
     WritableIntegerDataStore bestclusters = null;
 
     Random rnd = random.getSingleThreadedRandom();
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Processing random samples", numsamples, LOG) : null;
-    for(int j = 0; j < numsamples; j++) {
-      DBIDs rids = randomSample(ids, samplesize, rnd, keepmed ? bestmedoids : null);
-      cachedQ.clear(); // TODO: an actual matrix would be better.
-
-      // Choose initial medoids
-      ArrayModifiableDBIDs medoids = DBIDUtil.newArray(initializer.chooseInitialMedoids(k, rids, cachedQ));
-      // Setup cluster assignment store
-      WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
-      double score = new /* PAM */Instance(cachedQ, rids, assignment).run(medoids, maxiter) //
-          + assignRemainingToNearestCluster(medoids, ids, rids, assignment, distQ);
-      if(LOG.isStatistics()) {
-        LOG.statistics(new DoubleStatistic(getClass().getName() + ".sample-" + j + ".cost", score));
+    FiniteProgress prog = log.isVerbose() ? new FiniteProgress("Processing random samples", numsamples, log) : null;
+    if(keepmed || numsamples <= 1) {
+      // Samples depend on the previous best medoids, process sequentially.
+      CachedDistanceQuery<V> cachedQ = new CachedDistanceQuery<V>(distQ, cachesize);
+      for(int j = 0; j < numsamples; j++) {
+        DBIDs rids = randomSample(ids, samplesize, rnd, keepmed ? bestmedoids : null);
+        cachedQ.clear(); // TODO: an actual matrix would be better.
+
+        // Choose initial medoids
+        ArrayModifiableDBIDs medoids = DBIDUtil.newArray(initializer.chooseInitialMedoids(k, rids, cachedQ));
+        // Setup cluster assignment store
+        WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+        double score = optimizer.optimize(cachedQ, rids, assignment, medoids) //
+            + assignRemainingToNearestCluster(medoids, ids, rids, assignment, distQ);
+        if(log.isStatistics()) {
+          log.statistics(new DoubleStatistic(key + ".sample-" + j + ".cost", score));
+        }
+        if(score < best) {
+          best = score;
+          bestmedoids = medoids;
+          bestclusters = assignment;
+        }
+        if(cachedQ.hasUncachedQueries()) {
+          log.warning("Some distance queries were not cached; maybe the initialization is not optimized for k-medoids.");
+        }
+        log.incrementProcessed(prog);
       }
-      if(score < best) {
-        best = score;
-        bestmedoids = medoids;
-        bestclusters = assignment;
+    }
+    else {
+      // Independent samples: choose samples and initial medoids sequentially,
+      // as the initialization may consume random numbers.
+      List<DBIDs> samples = new ArrayList<>(numsamples);
+      List<ArrayModifiableDBIDs> medoids = new ArrayList<>(numsamples);
+      CachedDistanceQuery<V> initQ = new CachedDistanceQuery<V>(distQ, cachesize);
+      for(int j = 0; j < numsamples; j++) {
+        DBIDs rids = randomSample(ids, samplesize, rnd, null);
+        initQ.clear();
+        samples.add(rids);
+        medoids.add(DBIDUtil.newArray(initializer.chooseInitialMedoids(k, rids, initQ)));
       }
-      if(cachedQ.hasUncachedQueries()) {
-        LOG.warning("Some distance queries were not cached; maybe the initialization is not optimized for k-medoids.");
+      initQ.clear();
+      // Optimize the samples concurrently, in contiguous blocks of samples.
+      // Each block uses one cache, and keeps the assignment of its best sample.
+      final int nblocks = ParallelExecutor.numBlocks(numsamples, 1);
+      double[] scores = new double[numsamples];
+      boolean[] uncached = new boolean[numsamples];
+      int[] bestj = new int[nblocks];
+      WritableIntegerDataStore[] bestassign = new WritableIntegerDataStore[nblocks];
+      ParallelExecutor.runBlocks(numsamples, nblocks, (b, start, end) -> {
+        CachedDistanceQuery<V> cachedQ = null;
+        WritableIntegerDataStore assignment = null, bassign = null;
+        double bbest = Double.POSITIVE_INFINITY;
+        int bj = -1;
+        for(int j = start; j < end; j++) {
+          if(cachedQ == null) {
+            cachedQ = new CachedDistanceQuery<V>(distQ, cachesize);
+          }
+          if(assignment == null) {
+            assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+          }
+          scores[j] = optimizer.optimize(cachedQ, samples.get(j), assignment, medoids.get(j)) //
+              + assignRemainingToNearestCluster(medoids.get(j), ids, samples.get(j), assignment, distQ);
+          uncached[j] = cachedQ.hasUncachedQueries();
+          cachedQ.clear();
+          if(scores[j] < bbest) {
+            bbest = scores[j];
+            bj = j;
+            // Swap, to reuse the previous best assignment store.
+            WritableIntegerDataStore tmp = bassign;
+            bassign = assignment;
+            assignment = tmp;
+          }
+        }
+        bestj[b] = bj;
+        bestassign[b] = bassign;
+        if(assignment != null) {
+          assignment.destroy();
+        }
+      });
+      uncached[0] |= initQ.hasUncachedQueries();
+      for(int j = 0; j < numsamples; j++) {
+        if(log.isStatistics()) {
+          log.statistics(new DoubleStatistic(key + ".sample-" + j + ".cost", scores[j]));
+        }
+        if(uncached[j]) {
+          log.warning("Some distance queries were not cached; maybe the initialization is not optimized for k-medoids.");
+        }
+        log.incrementProcessed(prog);
+      }
+      // Blocks are in sample order, so this chooses the same as sequentially.
+      for(int b = 0; b < nblocks; b++) {
+        if(bestj[b] >= 0 && scores[bestj[b]] < best) {
+          if(bestclusters != null) {
+            bestclusters.destroy();
+          }
+          best = scores[bestj[b]];
+          bestmedoids = medoids.get(bestj[b]);
+          bestclusters = bestassign[b];
+        }
+        else if(bestassign[b] != null) {
+          bestassign[b].destroy();
+        }
       }
-      LOG.incrementProcessed(prog);
     }
-    LOG.ensureCompleted(prog);
-    if(LOG.isStatistics()) {
-      LOG.statistics(new DoubleStatistic(getClass().getName() + ".final-cost", best));
+    log.ensureCompleted(prog);
+    if(log.isStatistics()) {
+      log.statistics(new DoubleStatistic(key + ".final-cost", best));
     }
     if(bestmedoids == null) {
       throw new IllegalStateException("numsamples must be larger than 0.");
@@ -192,6 +301,25 @@ public class CLARA<V> extends PAM<V> {
     return result;
   }
 
+  /**
+   * k-medoids optimization of a single sample.
+   *
+   * @author Erich Schubert
+   */
+  @FunctionalInterface
+  interface SampleOptimizer {
+    /**
+     * Optimize the medoids of one sample.
+     *
+     * @param distQ Distance query (cached, not thread-safe)
+     * @param rids Sample
+     * @param assignment Cluster assignment output
+     * @param medoids Initial medoids, will be modified
+     * @return Cost of the sample
+     */
+    double optimize(DistanceQuery<?> distQ, DBIDs rids, WritableIntegerDataStore assignment, ArrayModifiableDBIDs medoids);
+  }
+
   /**
    * Draw a random sample of the desired size.
    * 
@@ -20,28 +20,12 @@
  */
 package elki.clustering.kmedoids;
 
-import java.util.Random;
-
-import elki.clustering.ClusteringAlgorithmUtil;
 import elki.clustering.kmedoids.initialization.KMedoidsInitialization;
-import elki.data.Cluster;
 import elki.data.Clustering;
 import elki.data.model.MedoidModel;
-import elki.database.datastore.DataStoreFactory;
-import elki.database.datastore.DataStoreUtil;
-import elki.database.datastore.WritableIntegerDataStore;
-import elki.database.ids.ArrayModifiableDBIDs;
-import elki.database.ids.DBIDArrayIter;
-import elki.database.ids.DBIDUtil;
-import elki.database.ids.DBIDs;
-import elki.database.query.QueryBuilder;
-import elki.database.query.distance.DistanceQuery;
 import elki.database.relation.Relation;
 import elki.distance.Distance;
 import elki.logging.Logging;
-import elki.logging.progress.FiniteProgress;
-import elki.logging.statistics.DoubleStatistic;
-import elki.result.Metadata;
 import elki.utilities.documentation.Reference;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -127,62 +111,8 @@ public class FastCLARA<V> extends FastPAM<V> {
 
   @Override
   public Clustering<MedoidModel> run(Relation<V> relation) {
-    DBIDs ids = relation.getDBIDs();
-    DistanceQuery<V> distQ = new QueryBuilder<>(relation, distance).distanceQuery();
-    int samplesize = Math.min(ids.size(), (int) (sampling <= 1 ? sampling * ids.size() : sampling));
-    if(samplesize < 3 * k) {
-      LOG.warning("The sampling size is set to a very small value, it should be much larger than k.");
-    }
-
-    CLARA.CachedDistanceQuery<V> cachedQ = new CLARA.CachedDistanceQuery<V>(distQ, (samplesize * (samplesize - 1)) >> 1);
-
-    double best = Double.POSITIVE_INFINITY;
-    ArrayModifiableDBIDs bestmedoids = null;
-    WritableIntegerDataStore bestclusters = null;
-
-    Random rnd = random.getSingleThreadedRandom();
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Processing random samples", numsamples, LOG) : null;
-    for(int j = 0; j < numsamples; j++) {
-      DBIDs rids = CLARA.randomSample(ids, samplesize, rnd, keepmed ? bestmedoids : null);
-      cachedQ.clear(); // TODO: an actual matrix would be better.
-
-      // Choose initial medoids
-      ArrayModifiableDBIDs medoids = DBIDUtil.newArray(initializer.chooseInitialMedoids(k, rids, cachedQ));
-      // Setup cluster assignment store
-      WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
-      double score = new /* PAM */Instance(cachedQ, rids, assignment, fasttol).run(medoids, maxiter) //
-          + CLARA.assignRemainingToNearestCluster(medoids, ids, rids, assignment, distQ);
-      if(LOG.isStatistics()) {
-        LOG.statistics(new DoubleStatistic(getClass().getName() + ".sample-" + j + ".cost", score));
-      }
-      if(score < best) {
-        best = score;
-        bestmedoids = medoids;
-        bestclusters = assignment;
-      }
-      if(cachedQ.hasUncachedQueries()) {
-        LOG.warning("Some distance queries were not cached; maybe the initialization is not optimized for k-medoids.");
-      }
-      LOG.incrementProcessed(prog);
-    }
-    LOG.ensureCompleted(prog);
-    if(LOG.isStatistics()) {
-      LOG.statistics(new DoubleStatistic(getClass().getName() + ".final-cost", best));
-    }
-    if(bestmedoids == null) {
-      throw new IllegalStateException("numsamples must be larger than 0.");
-    }
-
-    ArrayModifiableDBIDs[] clusters = ClusteringAlgorithmUtil.partitionsFromIntegerLabels(ids, bestclusters, k);
-
-    // Wrap result
-    Clustering<MedoidModel> result = new Clustering<>();
-    Metadata.of(result).setLongName("CLARA Clustering");
-    for(DBIDArrayIter it = bestmedoids.iter(); it.valid(); it.advance()) {
-      MedoidModel model = new MedoidModel(DBIDUtil.deref(it));
-      result.addToplevelCluster(new Cluster<>(clusters[it.getOffset()], model));
-    }
-    return result;
+    return CLARA.runCLARA(relation, distance, k, initializer, numsamples, sampling, keepmed, random, LOG, getClass().getName(), //
+        (distQ, rids, assignment, medoids) -> new /* PAM */Instance(distQ, rids, assignment, fasttol).run(medoids, maxiter));
   }
 
   /**
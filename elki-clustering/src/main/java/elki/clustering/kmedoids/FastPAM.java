@@ -235,8 +235,23 @@ public class FastPAM<V> extends FastPAM1<V> {
     protected void findBestSwaps(DBIDArrayIter m, ArrayModifiableDBIDs bestids, double[] best, double[] cost, double[] pcost) {
       updatePriorCost(pcost);
       Arrays.fill(best, Double.POSITIVE_INFINITY);
+      findBestSwaps(ids, m, bestids, best, cost, pcost);
+    }
+
+    /**
+     * Find the best swaps among a subset of the non-medoids, improving on the
+     * given best costs.
+     *
+     * @param candidates Candidate objects
+     * @param m Medoids
+     * @param bestids Storage for best non-medois
+     * @param best Storage for best cost
+     * @param cost Scratch space for cost
+     * @param pcost Prior cost, from {@link #updatePriorCost}
+     */
+    protected void findBestSwaps(DBIDs candidates, DBIDArrayIter m, ArrayModifiableDBIDs bestids, double[] best, double[] cost, double[] pcost) {
       // Iterate over all non-medoids:
-      for(DBIDIter h = ids.iter(); h.valid(); h.advance()) {
+      for(DBIDIter h = candidates.iter(); h.valid(); h.advance()) {
         // Compare object to its own medoid.
         if(DBIDUtil.equal(m.seek(assignment.intValue(h) & 0x7FFF), h)) {
           continue; // This is a medoid.
@@ -243,12 +243,25 @@ public class FastPAM1<V> extends PAM<V> {
      * @return Loss change accumulator that applies to all
      */
     protected double computeReassignmentCost(DBIDRef xj, double[] loss) {
+      return computeReassignmentCost(xj, ids, loss);
+    }
+
+    /**
+     * Compute the reassignment cost of a subset of the objects, for all
+     * medoids in one pass.
+     *
+     * @param xj Current object to swap with any medoid.
+     * @param objs Objects to reassign
+     * @param loss Loss change aggregation array, must have size k
+     * @return Loss change accumulator that applies to all
+     */
+    protected double computeReassignmentCost(DBIDRef xj, DBIDs objs, double[] loss) {
       final WritableDoubleDataStore nearest = this.nearest;
       final WritableDoubleDataStore second = this.second;
       final WritableIntegerDataStore assignment = this.assignment;
       double acc = 0.;
       // Compute costs of reassigning other objects o:
-      for(DBIDIter xo = ids.iter(); xo.valid(); xo.advance()) {
+      for(DBIDIter xo = objs.iter(); xo.valid(); xo.advance()) {
         final double dn = nearest.doubleValue(xo), ds = second.doubleValue(xo);
         final double dxo = distQ.distance(xj, xo);
         // Case (i): new medoid is closest:
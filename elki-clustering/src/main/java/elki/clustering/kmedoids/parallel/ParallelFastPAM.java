@@ -0,0 +1,158 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmedoids.parallel;
+
+import java.util.Arrays;
+
+import elki.clustering.kmedoids.FastPAM;
+import elki.clustering.kmedoids.initialization.KMedoidsInitialization;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.query.distance.DistanceQuery;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.parallel.ParallelExecutor;
+
+/**
+ * Parallel version of {@link FastPAM}.
+ * <p>
+ * The candidate non-medoids are split into one block per thread. Each block
+ * computes the loss changes of its candidates and keeps the best candidate for
+ * each medoid; these are then reduced in block order. Because the first
+ * candidate with the smallest loss wins, the same swaps are found as with
+ * {@link FastPAM}, independent of the number of threads.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <V> vector datatype
+ */
+public class ParallelFastPAM<V> extends FastPAM<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelFastPAM.class);
+
+  /**
+   * Minimum number of candidates per block.
+   */
+  private static final int MIN_BLOCKSIZE = 64;
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Function to generate the initial means
+   * @param fasttol Tolerance for fast swapping
+   */
+  public ParallelFastPAM(Distance<? super V> distance, int k, int maxiter, KMedoidsInitialization<V> initializer, double fasttol) {
+    super(distance, k, maxiter, initializer, fasttol);
+  }
+
+  @Override
+  protected void run(DistanceQuery<V> distQ, DBIDs ids, ArrayModifiableDBIDs medoids, WritableIntegerDataStore assignment) {
+    new Instance(distQ, ids, assignment, fasttol).run(medoids, maxiter);
+  }
+
+  /**
+   * Instance for a single dataset.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends FastPAM.Instance {
+    /**
+     * Ids to process, as array.
+     */
+    protected ArrayDBIDs aids;
+
+    /**
+     * Constructor.
+     *
+     * @param distQ Distance query
+     * @param ids IDs to process
+     * @param assignment Cluster assignment
+     * @param fasttol Tolerance for fast swapping
+     */
+    public Instance(DistanceQuery<?> distQ, DBIDs ids, WritableIntegerDataStore assignment, double fasttol) {
+      super(distQ, ids, assignment, fasttol);
+      this.aids = DBIDUtil.ensureArray(ids);
+    }
+
+    @Override
+    protected double run(ArrayModifiableDBIDs medoids, int maxiter) {
+      return super.run(medoids, maxiter); // Make accessible in this package
+    }
+
+    @Override
+    protected void findBestSwaps(DBIDArrayIter m, ArrayModifiableDBIDs bestids, double[] best, double[] cost, double[] pcost) {
+      final int size = aids.size(), k = best.length;
+      final int nblocks = ParallelExecutor.numBlocks(size, MIN_BLOCKSIZE);
+      if(nblocks <= 1) {
+        super.findBestSwaps(m, bestids, best, cost, pcost);
+        return;
+      }
+      updatePriorCost(pcost);
+      // Copy of the medoids, so that each thread can use its own iterator.
+      ArrayModifiableDBIDs meds = DBIDUtil.newArray(k);
+      for(m.seek(0); m.valid(); m.advance()) {
+        meds.add(m);
+      }
+      final double[][] bbest = new double[nblocks][k];
+      final ArrayModifiableDBIDs[] bids = new ArrayModifiableDBIDs[nblocks];
+      ParallelExecutor.runBlocks(size, nblocks, (b, start, end) -> {
+        Arrays.fill(bbest[b], Double.POSITIVE_INFINITY);
+        bids[b] = DBIDUtil.newArray(k);
+        findBestSwaps(aids.slice(start, end), meds.iter(), bids[b], bbest[b], new double[k], pcost);
+      });
+      // Reduce in block order, so that the first best candidate wins:
+      Arrays.fill(best, Double.POSITIVE_INFINITY);
+      DBIDVar var = DBIDUtil.newVar();
+      for(int b = 0; b < nblocks; b++) {
+        final double[] lbest = bbest[b];
+        for(int i = 0; i < k; i++) {
+          if(lbest[i] < best[i]) {
+            best[i] = lbest[i];
+            bestids.set(i, bids[b].assignVar(i, var));
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V> extends FastPAM.Par<V> {
+    @Override
+    public ParallelFastPAM<V> make() {
+      return new ParallelFastPAM<>(distance, k, maxiter, initializer, fasttol);
+    }
+  }
+}
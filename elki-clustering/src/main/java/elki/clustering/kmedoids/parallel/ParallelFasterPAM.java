@@ -0,0 +1,167 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmedoids.parallel;
+
+import java.util.Arrays;
+
+import elki.clustering.kmedoids.FasterPAM;
+import elki.clustering.kmedoids.initialization.KMedoidsInitialization;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.query.distance.DistanceQuery;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.parallel.ParallelExecutor;
+
+/**
+ * Parallel version of {@link FasterPAM}.
+ * <p>
+ * FasterPAM performs a swap as soon as an improvement is found, so the
+ * candidates need to be processed in order. Instead, the evaluation of each
+ * candidate is parallelized: the data points are split into one block per
+ * thread, each computing partial loss changes, which are then summed in block
+ * order. The result is reproducible for a fixed number of threads, but can
+ * differ from {@link FasterPAM} due to the different order of floating point
+ * summation.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> object datatype
+ */
+public class ParallelFasterPAM<O> extends FasterPAM<O> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelFasterPAM.class);
+
+  /**
+   * Minimum number of points per block.
+   */
+  private static final int MIN_BLOCKSIZE = 1024;
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Function to generate the initial means
+   */
+  public ParallelFasterPAM(Distance<? super O> distance, int k, int maxiter, KMedoidsInitialization<O> initializer) {
+    super(distance, k, maxiter, initializer);
+  }
+
+  @Override
+  protected void run(DistanceQuery<O> distQ, DBIDs ids, ArrayModifiableDBIDs medoids, WritableIntegerDataStore assignment) {
+    new Instance(distQ, ids, assignment).run(medoids, maxiter);
+  }
+
+  /**
+   * Instance for a single dataset.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends FasterPAM.Instance {
+    /**
+     * Ids to process, as array.
+     */
+    protected ArrayDBIDs aids;
+
+    /**
+     * Number of blocks.
+     */
+    protected int nblocks;
+
+    /**
+     * Partial loss changes of each block.
+     */
+    protected double[][] losses;
+
+    /**
+     * Partial shared loss changes of each block.
+     */
+    protected double[] accs;
+
+    /**
+     * Constructor.
+     *
+     * @param distQ Distance query
+     * @param ids IDs to process
+     * @param assignment Cluster assignment
+     */
+    public Instance(DistanceQuery<?> distQ, DBIDs ids, WritableIntegerDataStore assignment) {
+      super(distQ, ids, assignment);
+      this.aids = DBIDUtil.ensureArray(ids);
+      this.nblocks = ParallelExecutor.numBlocks(aids.size(), MIN_BLOCKSIZE);
+      this.accs = new double[nblocks];
+    }
+
+    @Override
+    protected double run(ArrayModifiableDBIDs medoids, int maxiter) {
+      return super.run(medoids, maxiter); // Make accessible in this package
+    }
+
+    @Override
+    protected double computeReassignmentCost(DBIDRef xj, double[] loss) {
+      if(nblocks <= 1) {
+        return super.computeReassignmentCost(xj, loss);
+      }
+      if(losses == null || losses[0].length != loss.length) {
+        losses = new double[nblocks][loss.length];
+      }
+      final double[][] losses = this.losses;
+      final double[] accs = this.accs;
+      ParallelExecutor.runBlocks(aids.size(), nblocks, (b, start, end) -> {
+        final double[] l = losses[b];
+        Arrays.fill(l, 0.);
+        accs[b] = computeReassignmentCost(xj, aids.slice(start, end), l);
+      });
+      // Sum the partial results in block order:
+      double acc = 0.;
+      for(int b = 0; b < nblocks; b++) {
+        acc += accs[b];
+        final double[] l = losses[b];
+        for(int i = 0; i < loss.length; i++) {
+          loss[i] += l[i];
+        }
+      }
+      return acc;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<O> extends FasterPAM.Par<O> {
+    @Override
+    public ParallelFasterPAM<O> make() {
+      return new ParallelFasterPAM<>(distance, k, maxiter, initializer);
+    }
+  }
+}
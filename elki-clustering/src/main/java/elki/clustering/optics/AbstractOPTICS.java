@@ -131,6 +131,11 @@ public abstract class AbstractOPTICS<O> implements OPTICSTypeAlgorithm {
      */
     public static final OptionID MINPTS_ID = new OptionID("optics.minpts", "Threshold for minimum number of points in the epsilon-neighborhood of a point.");
 
+    /**
+     * Flag to compute all neighborhoods at once, if an index supports a join.
+     */
+    public static final OptionID PRECOMPUTE_ID = new OptionID("optics.precompute", "Compute all neighborhoods at once, if an index supports a join. This needs memory for all neighborhoods, and may change the order of ties.");
+
     /**
      * Epsilon radius.
      */
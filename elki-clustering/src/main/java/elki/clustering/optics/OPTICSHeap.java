@@ -38,6 +38,8 @@ import elki.result.Metadata;
 import elki.utilities.datastructures.heap.UpdatableHeap;
 import elki.utilities.documentation.Reference;
 import elki.utilities.documentation.Title;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
 
 /**
  * The OPTICS algorithm for density-based hierarchical clustering.
@@ -53,6 +55,10 @@ import elki.utilities.documentation.Title;
  * Mihael Ankerst, Markus M. Breunig, Hans-Peter Kriegel, Jörg Sander<br>
  * OPTICS: Ordering Points to Identify the Clustering Structure<br>
  * Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD '99)
+ * <p>
+ * Optionally, all neighborhoods can be computed at once, if an existing index
+ * supports a join. This needs memory for all neighborhoods, and the neighbors
+ * may be in a different order, which can change the order of ties.
  *
  * @author Elke Achtert
  * @author Erich Schubert
@@ -75,6 +81,11 @@ public class OPTICSHeap<O> extends AbstractOPTICS<O> {
    */
   private static final Logging LOG = Logging.getLogger(OPTICSHeap.class);
 
+  /**
+   * Compute all neighborhoods at once, if an index supports a join.
+   */
+  protected boolean precompute;
+
   /**
    * Constructor.
    *
@@ -83,7 +94,21 @@ public class OPTICSHeap<O> extends AbstractOPTICS<O> {
    * @param minpts Minpts value
    */
   public OPTICSHeap(Distance<? super O> distance, double epsilon, int minpts) {
+    this(distance, epsilon, minpts, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts value
+   * @param precompute Compute all neighborhoods at once, if an index supports
+   *        a join
+   */
+  public OPTICSHeap(Distance<? super O> distance, double epsilon, int minpts, boolean precompute) {
     super(distance, epsilon, minpts);
+    this.precompute = precompute;
   }
 
   @Override
@@ -138,7 +163,10 @@ public class OPTICSHeap<O> extends AbstractOPTICS<O> {
       clusterOrder = new ClusterOrder(ids);
       Metadata.of(clusterOrder).setLongName("OPTICS Clusterorder");
       progress = LOG.isVerbose() ? new FiniteProgress("OPTICS", ids.size(), LOG) : null;
-      rangeQuery = new QueryBuilder<>(relation, distance).rangeByDBID(epsilon);
+      // Compute all neighborhoods at once, if requested and supported:
+      QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+      RangeSearcher<DBIDRef> precomputed = precompute ? qb.precomputedRangeByDBID(epsilon) : null;
+      rangeQuery = precomputed != null ? precomputed : qb.rangeByDBID(epsilon);
       heap = new UpdatableHeap<>();
     }
 
@@ -197,9 +225,20 @@ public class OPTICSHeap<O> extends AbstractOPTICS<O> {
    * @author Erich Schubert
    */
   public static class Par<O> extends AbstractOPTICS.Par<O> {
+    /**
+     * Compute all neighborhoods at once.
+     */
+    protected boolean precompute;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      new Flag(PRECOMPUTE_ID).grab(config, x -> precompute = x);
+    }
+
     @Override
     public OPTICSHeap<O> make() {
-      return new OPTICSHeap<>(distance, epsilon, minpts);
+      return new OPTICSHeap<>(distance, epsilon, minpts, precompute);
     }
   }
 }
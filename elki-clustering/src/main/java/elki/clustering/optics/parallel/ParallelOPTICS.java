@@ -0,0 +1,418 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.optics.parallel;
+
+import java.util.Arrays;
+
+import elki.clustering.optics.AbstractOPTICS;
+import elki.clustering.optics.ClusterOrder;
+import elki.clustering.optics.OPTICSHeap;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.math.MathUtil;
+import elki.parallel.Executor;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+import elki.result.Metadata;
+import elki.utilities.documentation.Title;
+
+/**
+ * OPTICS with precomputed neighborhoods, computed in parallel.
+ * <p>
+ * Instead of running one range query after another while expanding the cluster
+ * order, all epsilon-neighborhoods are computed in parallel first. Only the
+ * neighborhoods of core points are kept, in compact primitive arrays of object
+ * offsets and reachability distances. The cluster order is then built
+ * sequentially using a primitive updatable heap.
+ * <p>
+ * Objects are numbered in DBID order, and heap ties are broken by this offset,
+ * so the resulting cluster order is identical to that of {@link OPTICSHeap}.
+ * The precomputed neighborhoods of all core points must fit into main memory,
+ * so epsilon should not be chosen too large.
+ * <p>
+ * Reference:
+ * <p>
+ * Mihael Ankerst, Markus M. Breunig, Hans-Peter Kriegel, Jörg Sander<br>
+ * OPTICS: Ordering Points to Identify the Clustering Structure<br>
+ * Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD '99)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @navassoc - produces - ClusterOrder
+ * @has - - - Neighborhoods
+ * @has - - - ReachabilityHeap
+ *
+ * @param <O> the type of objects handled by the algorithm
+ */
+@Title("OPTICS: Density-Based Hierarchical Clustering (with parallel precomputed neighborhoods)")
+public class ParallelOPTICS<O> extends AbstractOPTICS<O> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelOPTICS.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts value
+   */
+  public ParallelOPTICS(Distance<? super O> distance, double epsilon, int minpts) {
+    super(distance, epsilon, minpts);
+  }
+
+  @Override
+  public ClusterOrder run(Relation<O> relation) {
+    final DBIDs ids = relation.getDBIDs();
+    // Number the objects in DBID order, the tie breaker of OPTICSHeap.
+    final ArrayModifiableDBIDs sorted = DBIDUtil.newArray(ids);
+    sorted.sort();
+    final WritableIntegerDataStore offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT);
+    for(DBIDArrayIter it = sorted.iter(); it.valid(); it.advance()) {
+      offsets.putInt(it, it.getOffset());
+    }
+
+    // 1. Compute all neighborhoods in parallel
+    Neighborhoods neighborhoods = new Neighborhoods(relation, offsets, sorted.size());
+    FiniteProgress nprog = LOG.isVerbose() ? new FiniteProgress("Computing neighborhoods", ids.size(), LOG) : null;
+    ParallelExecutor.runWorkStealing(ids, ParallelExecutor.DEFAULT_MIN_GRAIN, nprog, LOG, neighborhoods);
+    LOG.ensureCompleted(nprog);
+
+    // 2. Build the cluster order
+    ClusterOrder clusterOrder = new ClusterOrder(ids);
+    Metadata.of(clusterOrder).setLongName("OPTICS Clusterorder");
+    FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("OPTICS", ids.size(), LOG) : null;
+    final int[][] neighbors = neighborhoods.neighbors;
+    final double[][] reachabilities = neighborhoods.reachabilities;
+    final boolean[] processed = new boolean[sorted.size()];
+    ReachabilityHeap heap = new ReachabilityHeap(sorted.size());
+    DBIDVar cur = DBIDUtil.newVar(), pre = DBIDUtil.newVar();
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      final int start = offsets.intValue(it);
+      if(processed[start]) {
+        continue;
+      }
+      assert heap.isEmpty();
+      heap.offer(start, Double.POSITIVE_INFINITY, -1);
+      while(!heap.isEmpty()) {
+        final int current = heap.peek();
+        final double reachability = heap.peekReachability();
+        final int predecessor = heap.peekPredecessor();
+        heap.poll();
+        processed[current] = true;
+        clusterOrder.add(sorted.assignVar(current, cur), reachability, predecessor < 0 ? null : sorted.assignVar(predecessor, pre));
+        final int[] nn = neighbors[current];
+        if(nn != null) {
+          final double[] nr = reachabilities[current];
+          for(int i = 0; i < nn.length; i++) {
+            if(!processed[nn[i]]) {
+              heap.offer(nn[i], nr[i], current);
+            }
+          }
+          neighbors[current] = null; // Free memory
+          reachabilities[current] = null;
+        }
+        LOG.incrementProcessed(progress);
+      }
+    }
+    LOG.ensureCompleted(progress);
+    offsets.destroy();
+    return clusterOrder;
+  }
+
+  /**
+   * Processor to compute the neighborhoods of core points, and store them in
+   * primitive arrays.
+   *
+   * @author Erich Schubert
+   */
+  private class Neighborhoods implements Processor {
+    /**
+     * Query builder, for per-thread range queries.
+     */
+    private final QueryBuilder<O> qb;
+
+    /**
+     * Shared precomputed range searcher, may be {@code null}.
+     */
+    private final RangeSearcher<DBIDRef> shared;
+
+    /**
+     * Object offsets.
+     */
+    private final WritableIntegerDataStore offsets;
+
+    /**
+     * Neighbor offsets of core points, {@code null} for non-core points.
+     */
+    final int[][] neighbors;
+
+    /**
+     * Reachability distances of the neighbors of core points.
+     */
+    final double[][] reachabilities;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param offsets Object offsets
+     * @param size Number of objects
+     */
+    Neighborhoods(Relation<O> relation, WritableIntegerDataStore offsets, int size) {
+      this.qb = new QueryBuilder<>(relation, distance);
+      // Compute all neighborhoods at once, if an index supports a join:
+      this.shared = qb.precomputedRangeByDBID(epsilon);
+      this.offsets = offsets;
+      this.neighbors = new int[size][];
+      this.reachabilities = new double[size][];
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      final RangeSearcher<DBIDRef> rangeQuery;
+      // Range searchers are usually not thread safe.
+      synchronized(qb) {
+        rangeQuery = shared != null ? shared : qb.rangeByDBID(epsilon);
+      }
+      final ModifiableDoubleDBIDList list = DBIDUtil.newDistanceDBIDList();
+      return id -> {
+        rangeQuery.getRange(id, epsilon, list.clear());
+        final int size = list.size();
+        if(size < minpts) {
+          return;
+        }
+        final double coreDistance = list.sort().doubleValue(minpts - 1);
+        final int[] nn = new int[size];
+        final double[] nr = new double[size];
+        int i = 0;
+        for(DoubleDBIDListIter neighbor = list.iter(); neighbor.valid(); neighbor.advance(), i++) {
+          nn[i] = offsets.intValue(neighbor);
+          nr[i] = MathUtil.max(neighbor.doubleValue(), coreDistance);
+        }
+        final int offset = offsets.intValue(id);
+        neighbors[offset] = nn;
+        reachabilities[offset] = nr;
+      };
+    }
+
+    @Override
+    public void cleanup(Instance inst) {
+      // Nothing to do.
+    }
+  }
+
+  /**
+   * Updatable min-heap of object offsets, ordered by reachability and then
+   * offset, with primitive storage. Each object can be in the heap at most
+   * once; its position is tracked for decrease-key operations.
+   *
+   * @author Erich Schubert
+   */
+  private static class ReachabilityHeap {
+    /**
+     * Heap of object offsets.
+     */
+    private final int[] heap;
+
+    /**
+     * Position in the heap of each object, -1 if not contained.
+     */
+    private final int[] pos;
+
+    /**
+     * Current reachability of each object.
+     */
+    private final double[] reach;
+
+    /**
+     * Current predecessor of each object.
+     */
+    private final int[] pred;
+
+    /**
+     * Current heap size.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param n Number of objects
+     */
+    ReachabilityHeap(int n) {
+      heap = new int[n];
+      pos = new int[n];
+      reach = new double[n];
+      pred = new int[n];
+      Arrays.fill(pos, -1);
+    }
+
+    /**
+     * Test whether the heap is empty.
+     *
+     * @return {@code true} if empty
+     */
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    /**
+     * Get the top object offset.
+     *
+     * @return Object offset
+     */
+    int peek() {
+      return heap[0];
+    }
+
+    /**
+     * Get the reachability of the top object.
+     *
+     * @return Reachability
+     */
+    double peekReachability() {
+      return reach[heap[0]];
+    }
+
+    /**
+     * Get the predecessor of the top object.
+     *
+     * @return Predecessor offset, -1 for none
+     */
+    int peekPredecessor() {
+      return pred[heap[0]];
+    }
+
+    /**
+     * Offer an object; if it is already contained, it is only updated if the
+     * new reachability is smaller.
+     *
+     * @param o Object offset
+     * @param r Reachability
+     * @param p Predecessor offset
+     */
+    void offer(int o, double r, int p) {
+      int i = pos[o];
+      if(i < 0) {
+        i = size++;
+      }
+      else if(r >= reach[o]) {
+        return;
+      }
+      reach[o] = r;
+      pred[o] = p;
+      upHeap(i, o);
+    }
+
+    /**
+     * Remove the top object.
+     */
+    void poll() {
+      pos[heap[0]] = -1;
+      if(--size > 0) {
+        downHeap(heap[size]);
+      }
+    }
+
+    /**
+     * Heap order: by reachability, then by offset.
+     *
+     * @param a First object
+     * @param b Second object
+     * @return {@code true} if a comes before b
+     */
+    private boolean less(int a, int b) {
+      return reach[a] < reach[b] || (reach[a] == reach[b] && a < b);
+    }
+
+    /**
+     * Move an object up from position i.
+     *
+     * @param i Start position
+     * @param o Object offset
+     */
+    private void upHeap(int i, int o) {
+      while(i > 0) {
+        final int parent = (i - 1) >>> 1, po = heap[parent];
+        if(!less(o, po)) {
+          break;
+        }
+        heap[i] = po;
+        pos[po] = i;
+        i = parent;
+      }
+      heap[i] = o;
+      pos[o] = i;
+    }
+
+    /**
+     * Place an object at the top, and move it down.
+     *
+     * @param o Object offset
+     */
+    private void downHeap(int o) {
+      int i = 0;
+      final int half = size >>> 1;
+      while(i < half) {
+        int c = (i << 1) + 1, co = heap[c];
+        final int r = c + 1;
+        if(r < size && less(heap[r], co)) {
+          co = heap[c = r];
+        }
+        if(!less(co, o)) {
+          break;
+        }
+        heap[i] = co;
+        pos[co] = i;
+        i = c;
+      }
+      heap[i] = o;
+      pos[o] = i;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> extends AbstractOPTICS.Par<O> {
+    @Override
+    public ParallelOPTICS<O> make() {
+      return new ParallelOPTICS<>(distance, epsilon, minpts);
+    }
+  }
+}
@@ -56,6 +56,21 @@ public class DBSCANTest extends AbstractClusterAlgorithmTest {
     assertClusterSizes(result, new int[] { 29, 50, 101, 150 });
   }
 
+  /**
+   * Run DBSCAN with precomputation requested, but no index supporting it.
+   */
+  @Test
+  public void testDBSCANPrecompute() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Clustering<Model> result = new ELKIBuilder<DBSCAN<DoubleVector>>(DBSCAN.class) //
+        .with(DBSCAN.Par.EPSILON_ID, 0.04) //
+        .with(DBSCAN.Par.MINPTS_ID, 20) //
+        .with(DBSCAN.Par.PRECOMPUTE_ID) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.996413);
+    assertClusterSizes(result, new int[] { 29, 50, 101, 150 });
+  }
+
   /**
    * Run DBSCAN with fixed parameters and compare the result to a golden
    * standard.
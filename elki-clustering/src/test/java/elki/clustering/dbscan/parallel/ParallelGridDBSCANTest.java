@@ -0,0 +1,85 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.dbscan.parallel;
+
+import org.junit.Test;
+
+import elki.clustering.AbstractClusterAlgorithmTest;
+import elki.clustering.dbscan.DBSCAN;
+import elki.data.Clustering;
+import elki.data.model.Model;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for the exact grid-based parallel DBSCAN.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ParallelGridDBSCANTest extends AbstractClusterAlgorithmTest {
+  /**
+   * Run DBSCAN with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testGridDBSCANResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Clustering<Model> result = new ELKIBuilder<>(ParallelGridDBSCAN.class) //
+        .with(DBSCAN.Par.EPSILON_ID, 0.04) //
+        .with(DBSCAN.Par.MINPTS_ID, 20) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.996413);
+    assertClusterSizes(result, new int[] { 29, 50, 101, 150 });
+  }
+
+  /**
+   * Run DBSCAN with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testDBSCANOnSingleLinkDataset() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<Model> result = new ELKIBuilder<>(ParallelGridDBSCAN.class) //
+        .with(DBSCAN.Par.EPSILON_ID, 11.5) //
+        .with(DBSCAN.Par.MINPTS_ID, 120) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.954382);
+    assertClusterSizes(result, new int[] { 11, 200, 203, 224 });
+  }
+
+  /**
+   * Two points just within epsilon, but in grid cells two apart.
+   */
+  @Test
+  public void testNeighborTwoCellsApart() {
+    // Cell width is epsilon * (1 - 1e-10), the pair is in cells 2 and 4
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(new double[][] { { 0 }, { 2.99999999965 }, { 3.99999999964 } }), null);
+    db.initialize();
+    Clustering<Model> result = new ELKIBuilder<>(ParallelGridDBSCAN.class) //
+        .with(DBSCAN.Par.EPSILON_ID, 1.) //
+        .with(DBSCAN.Par.MINPTS_ID, 2) //
+        .build().autorun(db);
+    assertClusterSizes(result, new int[] { 1, 2 });
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.em.parallel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import elki.clustering.AbstractClusterAlgorithmTest;
+import elki.clustering.em.*;
+import elki.clustering.kmeans.KMeans;
+import elki.data.Cluster;
+import elki.data.Clustering;
+import elki.data.DoubleVector;
+import elki.data.model.EMModel;
+import elki.database.Database;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for parallel EM clustering.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ParallelEMTest extends AbstractClusterAlgorithmTest {
+  @Test
+  public void testMultivariateMLE() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(EM.Par.K_ID, 6) //
+        .with(EM.Par.INIT_ID, MultivariateGaussianModelFactory.class) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.967410486);
+    assertClusterSizes(result, new int[] { 3, 5, 91, 98, 200, 313 });
+  }
+
+  @Test
+  public void testMultivariateMAP() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(EM.Par.K_ID, 5) //
+        .with(EM.Par.INIT_ID, MultivariateGaussianModelFactory.class) //
+        .with(EM.Par.PRIOR_ID, 10) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.958843);
+    assertClusterSizes(result, new int[] { 3, 95, 97, 202, 313 });
+  }
+
+  @Test
+  public void testDiagonalMLE() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 3) //
+        .with(EM.Par.K_ID, 5) //
+        .with(EM.Par.INIT_ID, DiagonalGaussianModelFactory.class) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.9681384);
+    assertClusterSizes(result, new int[] { 7, 91, 99, 200, 313 });
+  }
+
+  @Test
+  public void testSphericalMLE() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 1) //
+        .with(EM.Par.K_ID, 4) //
+        .with(EM.Par.INIT_ID, SphericalGaussianModelFactory.class) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.811247176);
+    assertClusterSizes(result, new int[] { 8, 95, 198, 409 });
+  }
+
+  @Test
+  public void testTextbookMLE() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(EM.Par.K_ID, 6) //
+        .with(EM.Par.INIT_ID, TextbookMultivariateGaussianModelFactory.class) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.967410486);
+    assertClusterSizes(result, new int[] { 3, 5, 91, 98, 200, 313 });
+  }
+
+  @Test
+  public void testTwoPassMLE() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(EM.Par.K_ID, 6) //
+        .with(EM.Par.INIT_ID, TwoPassMultivariateGaussianModelFactory.class) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.967410486);
+    assertClusterSizes(result, new int[] { 3, 5, 91, 98, 200, 313 });
+  }
+
+  @Test
+  public void testReproducible() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<EMModel> expect = new ELKIBuilder<EM<DoubleVector, EMModel>>(EM.class) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(EM.Par.K_ID, 6) //
+        .with(EM.Par.INIT_ID, MultivariateGaussianModelFactory.class) //
+        .build().autorun(db);
+    Clustering<EMModel> first = new ELKIBuilder<ParallelEM<DoubleVector, EMModel>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(EM.Par.K_ID, 6) //
+        .with(EM.Par.INIT_ID, MultivariateGaussianModelFactory.class) //
+        .build().autorun(db);
+    Clustering<EMModel> second = new ELKIBuilder<ParallelEM<DoubleVector, EMModel>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(EM.Par.K_ID, 6) //
+        .with(EM.Par.INIT_ID, MultivariateGaussianModelFactory.class) //
+        .build().autorun(db);
+    List<Cluster<EMModel>> e = expect.getAllClusters(), a = first.getAllClusters(), b = second.getAllClusters();
+    assertEquals("Number of clusters differs.", e.size(), a.size());
+    for(int i = 0; i < e.size(); i++) {
+      EMModel ma = a.get(i).getModel(), mb = b.get(i).getModel();
+      // Identical for the same number of threads:
+      assertEquals("Cluster size differs.", a.get(i).size(), b.get(i).size());
+      assertArrayEquals("Mean differs.", ma.getMean(), mb.getMean(), 0.);
+      for(int d = 0; d < ma.getMean().length; d++) {
+        assertArrayEquals("Covariance differs.", ma.getCovarianceMatrix()[d], mb.getCovarianceMatrix()[d], 0.);
+      }
+      // Only rounding differences to the sequential algorithm:
+      assertEquals("Cluster size differs.", e.get(i).size(), a.get(i).size());
+      assertArrayEquals("Mean differs.", e.get(i).getModel().getMean(), ma.getMean(), 1e-6);
+    }
+  }
+}
@@ -182,4 +182,21 @@ public class AnderbergTest extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, clustering, 0.9277466);
     assertClusterSizes(clustering, new int[] { 196, 200, 242 });
   }
+
+  /**
+   * Run agglomerative hierarchical clustering with a single precision matrix.
+   */
+  @Test
+  public void testWardFloat() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> clustering = new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Par.MINCLUSTERS_ID, 3) //
+        .with(Algorithm.Utils.ALGORITHM_ID, Anderberg.class) //
+        .with(AGNES.Par.LINKAGE_ID, WardLinkage.class) //
+        .with(AGNES.Par.MATRIX_ID, BlockMatrixStorage.Factory.class) //
+        .with(BlockMatrixStorage.Factory.Par.FLOAT_ID) //
+        .build().autorun(db);
+    assertFMeasure(db, clustering, 0.93866265);
+    assertClusterSizes(clustering, new int[] { 200, 211, 227 });
+  }
 }
@@ -67,4 +67,19 @@ public class MiniMaxTest extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, clustering, 0.914592130);
     assertClusterSizes(clustering, new int[] { 59, 112, 159 });
   }
+
+  /**
+   * Run MiniMax clustering with a matrix stored in blocks.
+   */
+  @Test
+  public void testMiniMaxBlocks() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> clustering = new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Par.MINCLUSTERS_ID, 3) //
+        .with(Algorithm.Utils.ALGORITHM_ID, MiniMax.class) //
+        .with(AGNES.Par.MATRIX_ID, BlockMatrixStorage.Factory.class) //
+        .build().autorun(db);
+    assertFMeasure(db, clustering, 0.938662648);
+    assertClusterSizes(clustering, new int[] { 200, 211, 227 });
+  }
 }
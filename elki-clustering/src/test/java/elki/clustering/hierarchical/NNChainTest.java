@@ -183,4 +183,20 @@ public class NNChainTest extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, clustering, 0.9381678);
     assertClusterSizes(clustering, new int[] { 200, 217, 221 });
   }
+
+  /**
+   * Run agglomerative hierarchical clustering with a memory-mapped matrix.
+   */
+  @Test
+  public void testWardMapped() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> clustering = new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Par.MINCLUSTERS_ID, 3) //
+        .with(Algorithm.Utils.ALGORITHM_ID, NNChain.class) //
+        .with(AGNES.Par.LINKAGE_ID, WardLinkage.class) //
+        .with(AGNES.Par.MATRIX_ID, MappedMatrixStorage.Factory.class) //
+        .build().autorun(db);
+    assertFMeasure(db, clustering, 0.93866265);
+    assertClusterSizes(clustering, new int[] { 200, 211, 227 });
+  }
 }
@@ -0,0 +1,101 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.clustering.AbstractClusterAlgorithmTest;
+import elki.clustering.kmeans.initialization.KMeansPlusPlus;
+import elki.data.Cluster;
+import elki.data.Clustering;
+import elki.data.DoubleVector;
+import elki.data.model.KMeansModel;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.ModifiableDBIDs;
+import elki.database.relation.Relation;
+import elki.datasource.bundle.MultipleObjectsBundle;
+import elki.datasource.bundle.StreamFromBundle;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for streaming mini-batch k-means.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class StreamingMiniBatchKMeansTest extends AbstractClusterAlgorithmTest {
+  @Test
+  public void testStreamingMiniBatchKMeans() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    // Stream the data in random order:
+    List<DoubleVector> data = new ArrayList<>(rel.size());
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      data.add(rel.get(it));
+    }
+    Collections.shuffle(data, new Random(0L));
+    MultipleObjectsBundle bundle = MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), data);
+
+    double[][] means = new ELKIBuilder<StreamingMiniBatchKMeans<DoubleVector>>(StreamingMiniBatchKMeans.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.INIT_ID, KMeansPlusPlus.class) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(MiniBatchKMeans.Par.BATCHSIZE_ID, 100) //
+        .build().run(new StreamFromBundle(bundle));
+    assertEquals("Number of means", 5, means.length);
+
+    // Assign the database to the means found:
+    List<ModifiableDBIDs> clusters = new ArrayList<>();
+    for(int i = 0; i < means.length; i++) {
+      clusters.add(DBIDUtil.newArray());
+    }
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      DoubleVector fv = rel.get(it);
+      int best = 0;
+      double bestd = Double.POSITIVE_INFINITY;
+      for(int i = 0; i < means.length; i++) {
+        double d = SquaredEuclideanDistance.STATIC.distance(fv, DoubleVector.wrap(means[i]));
+        if(d < bestd) {
+          best = i;
+          bestd = d;
+        }
+      }
+      clusters.get(best).add(it);
+    }
+    Clustering<KMeansModel> result = new Clustering<>();
+    for(int i = 0; i < means.length; i++) {
+      result.addToplevelCluster(new Cluster<>(clusters.get(i), new KMeansModel(means[i], Double.NaN)));
+    }
+    assertFMeasure(db, result, 0.998005);
+    assertClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import elki.clustering.AbstractClusterAlgorithmTest;
+import elki.clustering.kmeans.*;
+import elki.data.Cluster;
+import elki.data.Clustering;
+import elki.data.DoubleVector;
+import elki.data.model.KMeansModel;
+import elki.database.Database;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for the parallel bound-based k-means variants.
+ * <p>
+ * Every variant must find the usual clustering, and the exact same result as
+ * its sequential counterpart.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ParallelBoundedKMeansTest extends AbstractClusterAlgorithmTest {
+  @Test
+  public void testParallelElkanKMeans() {
+    assertParallel(ElkanKMeans.class, ParallelElkanKMeans.class, true);
+  }
+
+  @Test
+  public void testParallelHamerlyKMeans() {
+    assertParallel(HamerlyKMeans.class, ParallelHamerlyKMeans.class, true);
+  }
+
+  @Test
+  public void testParallelExponionKMeans() {
+    assertParallel(ExponionKMeans.class, ParallelExponionKMeans.class, true);
+  }
+
+  @Test
+  public void testParallelShallotKMeans() {
+    assertParallel(ShallotKMeans.class, ParallelShallotKMeans.class, true);
+  }
+
+  @Test
+  public void testParallelYinYangKMeans() {
+    assertParallel(YinYangKMeans.class, ParallelYinYangKMeans.class, false);
+  }
+
+  /**
+   * Test a parallel variant against the expected result, and against its
+   * sequential counterpart.
+   *
+   * @param sequential Sequential algorithm
+   * @param parallel Parallel algorithm
+   * @param varstat Whether the algorithms support the variance statistic
+   */
+  private void assertParallel(Class<?> sequential, Class<?> parallel, boolean varstat) {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<?> result = build(parallel, 5, 7, varstat).autorun(db);
+    assertFMeasure(db, result, 0.998005);
+    assertClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+
+    Clustering<KMeansModel> expect = build(sequential, 20, 1, varstat).autorun(db);
+    Clustering<KMeansModel> actual = build(parallel, 20, 1, varstat).autorun(db);
+    List<Cluster<KMeansModel>> e = expect.getAllClusters(), r = actual.getAllClusters();
+    assertEquals("Number of clusters differs.", e.size(), r.size());
+    for(int i = 0; i < e.size(); i++) {
+      assertEquals("Cluster size differs.", e.get(i).size(), r.get(i).size());
+      assertArrayEquals("Mean differs.", e.get(i).getModel().getMean(), r.get(i).getModel().getMean(), 0.);
+      assertEquals("Variance differs.", e.get(i).getModel().getVarianceContribution(), r.get(i).getModel().getVarianceContribution(), 0.);
+    }
+  }
+
+  /**
+   * Build a k-means algorithm.
+   *
+   * @param cls Algorithm class
+   * @param k Number of clusters
+   * @param seed Random seed
+   * @param varstat Compute the variance statistic
+   * @return Algorithm
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static KMeans<DoubleVector, KMeansModel> build(Class<?> cls, int k, int seed, boolean varstat) {
+    ELKIBuilder<KMeans<DoubleVector, KMeansModel>> builder = new ELKIBuilder<KMeans<DoubleVector, KMeansModel>>((Class) cls) //
+        .with(KMeans.K_ID, k) //
+        .with(KMeans.SEED_ID, seed);
+    return (varstat ? builder.with(KMeans.VARSTAT_ID) : builder).build();
+  }
+}
@@ -49,4 +49,18 @@ public class FastCLARATest extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, result, 0.998005);
     assertClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
   }
+
+  @Test
+  public void testCLARAIndependent() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<MedoidModel> result = new ELKIBuilder<FastCLARA<DoubleVector>>(FastCLARA.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(CLARA.Par.RANDOM_ID, 0) //
+        .with(CLARA.Par.NUMSAMPLES_ID, 4) //
+        .with(CLARA.Par.SAMPLESIZE_ID, 20) //
+        .with(CLARA.Par.NOKEEPMED_ID) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 1.);
+    assertClusterSizes(result, new int[] { 200, 200, 200, 200, 200 });
+  }
 }
@@ -0,0 +1,77 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmedoids.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import elki.clustering.AbstractClusterAlgorithmTest;
+import elki.clustering.kmeans.KMeans;
+import elki.clustering.kmedoids.FastPAM;
+import elki.data.Cluster;
+import elki.data.Clustering;
+import elki.data.DoubleVector;
+import elki.data.model.MedoidModel;
+import elki.database.Database;
+import elki.database.ids.DBIDUtil;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for parallel FastPAM.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ParallelFastPAMTest extends AbstractClusterAlgorithmTest {
+  @Test
+  public void testParallelFastPAM() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<MedoidModel> result = new ELKIBuilder<ParallelFastPAM<DoubleVector>>(ParallelFastPAM.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.SEED_ID, 0) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.998005);
+    assertClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  @Test
+  public void testParallelFastPAMIdentical() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<MedoidModel> expect = new ELKIBuilder<FastPAM<DoubleVector>>(FastPAM.class) //
+        .with(KMeans.K_ID, 20) //
+        .with(KMeans.SEED_ID, 1) //
+        .build().autorun(db);
+    Clustering<MedoidModel> result = new ELKIBuilder<ParallelFastPAM<DoubleVector>>(ParallelFastPAM.class) //
+        .with(KMeans.K_ID, 20) //
+        .with(KMeans.SEED_ID, 1) //
+        .build().autorun(db);
+    List<Cluster<MedoidModel>> e = expect.getAllClusters(), r = result.getAllClusters();
+    assertEquals("Number of clusters differs.", e.size(), r.size());
+    for(int i = 0; i < e.size(); i++) {
+      assertEquals("Cluster size differs.", e.get(i).size(), r.get(i).size());
+      assertTrue("Medoid differs.", DBIDUtil.equal(e.get(i).getModel().getMedoid(), r.get(i).getModel().getMedoid()));
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmedoids.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.clustering.AbstractClusterAlgorithmTest;
+import elki.clustering.kmeans.KMeans;
+import elki.clustering.kmedoids.FasterPAM;
+import elki.data.Cluster;
+import elki.data.Clustering;
+import elki.data.DoubleVector;
+import elki.data.model.MedoidModel;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.ids.DBIDUtil;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for parallel FasterPAM.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ParallelFasterPAMTest extends AbstractClusterAlgorithmTest {
+  @Test
+  public void testParallelFasterPAM() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<MedoidModel> result = new ELKIBuilder<ParallelFasterPAM<DoubleVector>>(ParallelFasterPAM.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.SEED_ID, 0) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.998005);
+    assertClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  @Test
+  public void testParallelFasterPAMBlocks() {
+    // Large enough to be split into blocks:
+    Random r = new Random(0L);
+    double[][] data = new double[5000][];
+    for(int i = 0; i < data.length; i++) {
+      final int c = i % 5;
+      data[i] = new double[] { c * 10 + r.nextGaussian(), (c & 1) * 10 + r.nextGaussian() };
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Clustering<MedoidModel> expect = new ELKIBuilder<FasterPAM<DoubleVector>>(FasterPAM.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.SEED_ID, 0) //
+        .build().autorun(db);
+    Clustering<MedoidModel> result = new ELKIBuilder<ParallelFasterPAM<DoubleVector>>(ParallelFasterPAM.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.SEED_ID, 0) //
+        .build().autorun(db);
+    assertClusterSizes(result, new int[] { 1000, 1000, 1000, 1000, 1000 });
+    List<Cluster<MedoidModel>> e = expect.getAllClusters(), a = result.getAllClusters();
+    assertEquals("Number of clusters differs.", e.size(), a.size());
+    for(int i = 0; i < e.size(); i++) {
+      assertEquals("Cluster size differs.", e.get(i).size(), a.get(i).size());
+      assertTrue("Medoid differs.", DBIDUtil.equal(e.get(i).getModel().getMedoid(), a.get(i).getModel().getMedoid()));
+    }
+  }
+}
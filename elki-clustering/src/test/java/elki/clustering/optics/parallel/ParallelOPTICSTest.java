@@ -0,0 +1,80 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.optics.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import elki.clustering.AbstractClusterAlgorithmTest;
+import elki.clustering.optics.ClusterOrder;
+import elki.clustering.optics.OPTICSHeap;
+import elki.clustering.optics.OPTICSXi;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DBIDVar;
+import elki.database.relation.Relation;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for OPTICS with parallel precomputed neighborhoods.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ParallelOPTICSTest extends AbstractClusterAlgorithmTest {
+  @Test
+  public void testOPTICS() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> clustering = new ELKIBuilder<>(OPTICSXi.class) //
+        .with(ParallelOPTICS.Par.MINPTS_ID, 20) //
+        .with(ParallelOPTICS.Par.EPSILON_ID, 0.15) //
+        .with(OPTICSXi.Par.XI_ID, 0.05) //
+        .with(OPTICSXi.Par.XIALG_ID, ParallelOPTICS.class) //
+        .build().autorun(db);
+    assertFMeasure(db, clustering, 0.893865);
+    assertClusterSizes(clustering, new int[] { 8, 35, 72, 115, 209, 271 });
+  }
+
+  @Test
+  public void testSameClusterOrder() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Relation<NumberVector> relation = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    ClusterOrder expect = new OPTICSHeap<NumberVector>(EuclideanDistance.STATIC, 0.1, 10).run(relation);
+    ClusterOrder order = new ParallelOPTICS<NumberVector>(EuclideanDistance.STATIC, 0.1, 10).run(relation);
+    assertEquals("Cluster order size", expect.size(), order.size());
+    DBIDVar p1 = DBIDUtil.newVar(), p2 = DBIDUtil.newVar();
+    for(DBIDArrayIter it1 = expect.iter(), it2 = order.iter(); it1.valid(); it1.advance(), it2.advance()) {
+      assertTrue("Cluster order differs at " + it1.getOffset(), DBIDUtil.equal(it1, it2));
+      assertEquals("Reachability differs", expect.getReachability(it1), order.getReachability(it2), 0.);
+      expect.getPredecessor(it1, p1);
+      order.getPredecessor(it2, p2);
+      assertEquals("Predecessor set", p1.isSet(), p2.isSet());
+      assertTrue("Predecessor differs", !p1.isSet() || DBIDUtil.equal(p1, p2));
+    }
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query;
+
+import elki.database.datastore.DoubleDataStore;
+import elki.database.ids.ArrayDBIDs;
+
+/**
+ * Searcher for the minimum spanning tree of all indexed objects.
+ * Implementations can avoid computing all pairwise distances, for example by a
+ * dual-tree Borůvka algorithm.
+ * <p>
+ * If core distances are given, the spanning tree is computed with respect to
+ * the mutual reachability distance \(\max\{core(p),core(q),d(p,q)\}\) used by
+ * HDBSCAN*.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @opt nodefillcolor LemonChiffon
+ * @has - - - Collector
+ */
+public interface SpanningTreeSearcher {
+  /**
+   * Compute the minimum spanning tree.
+   *
+   * @param ids All indexed objects; edges are reported by their offsets
+   * @param coredists Core distances, may be {@code null}
+   * @param collector Edge collector
+   */
+  void spanningTree(ArrayDBIDs ids, DoubleDataStore coredists, Collector collector);
+
+  /**
+   * Collector for the edges of the spanning tree.
+   *
+   * @author Erich Schubert
+   */
+  @FunctionalInterface
+  interface Collector {
+    /**
+     * Add a single edge to the spanning tree.
+     *
+     * @param length Edge length
+     * @param i Offset of the first object
+     * @param j Offset of the second object
+     */
+    void addEdge(double length, int i, int j);
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query.knn;
+
+import elki.database.datastore.DataStore;
+import elki.database.ids.DBIDs;
+import elki.database.ids.KNNList;
+
+/**
+ * Batch kNN searcher, computing the k nearest neighbors of many objects at
+ * once. Implementations can share work across queries, for example by
+ * processing spatially close queries together, instead of traversing the
+ * index from the root for every object.
+ * 
+ * @author Erich Schubert
+ * @since 0.8.0
+ * 
+ * @opt nodefillcolor LemonChiffon
+ * @navhas - create - KNNList
+ */
+public interface BatchKNNSearcher {
+  /**
+   * Get the k nearest neighbors for each of the given objects.
+   * <p>
+   * As with {@link KNNSearcher}, the query object itself is usually part of
+   * its own result.
+   * 
+   * @param ids query objects
+   * @param k Number of neighbors requested
+   * @return neighbors of each object
+   */
+  DataStore<KNNList> getKNN(DBIDs ids, int k);
+}
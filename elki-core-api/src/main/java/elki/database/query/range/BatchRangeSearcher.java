@@ -0,0 +1,51 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query.range;
+
+import elki.database.datastore.DataStore;
+import elki.database.ids.DBIDs;
+import elki.database.ids.DoubleDBIDList;
+
+/**
+ * Batch range searcher, computing the neighbors within a radius of many
+ * objects at once. Implementations can share work across queries, for example
+ * by a dual-tree join of the index with itself, instead of traversing the
+ * index from the root for every object.
+ * 
+ * @author Erich Schubert
+ * @since 0.8.0
+ * 
+ * @opt nodefillcolor LemonChiffon
+ * @navhas - create - DoubleDBIDList
+ */
+public interface BatchRangeSearcher {
+  /**
+   * Get the neighbors within the given radius for each of the given objects.
+   * <p>
+   * As with {@link RangeSearcher}, the query object itself is part of its own
+   * result, and the results are not necessarily sorted.
+   * 
+   * @param ids query objects
+   * @param range Query range
+   * @return neighbors of each object
+   */
+  DataStore<DoubleDBIDList> getRange(DBIDs ids, double range);
+}
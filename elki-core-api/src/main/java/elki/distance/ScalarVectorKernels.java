@@ -0,0 +1,335 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.distance;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import elki.logging.Logging;
+import elki.utilities.ELKIServiceRegistry;
+
+import net.jafama.FastMath;
+
+/**
+ * Default implementation of the vector kernels, using plain loops.
+ * <p>
+ * The results are identical to those of the distance functions operating on
+ * {@link elki.data.NumberVector}s.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ScalarVectorKernels implements VectorKernels {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ScalarVectorKernels.class);
+
+  /**
+   * Constructor. Use {@link VectorKernels#KERNELS} instead.
+   */
+  public ScalarVectorKernels() {
+    super();
+  }
+
+  /**
+   * Load the first usable registered implementation, or the scalar default.
+   *
+   * @return Kernels to use
+   */
+  static VectorKernels load() {
+    List<Class<?>> impls;
+    try {
+      impls = ELKIServiceRegistry.findAllImplementations(VectorKernels.class);
+    }
+    catch(LinkageError e) {
+      // E.g., an implementation compiled for a newer Java version.
+      LOG.verbose("Vector kernels cannot be looked up: " + e.toString());
+      return new ScalarVectorKernels();
+    }
+    for(Class<?> c : impls) {
+      if(c == ScalarVectorKernels.class) {
+        continue;
+      }
+      try {
+        return (VectorKernels) c.getDeclaredConstructor().newInstance();
+      }
+      catch(Exception | LinkageError e) {
+        // E.g., the module providing the implementation is not enabled.
+        LOG.verbose("Vector kernels " + c.getName() + " are not available: " + e.toString());
+      }
+    }
+    return new ScalarVectorKernels();
+  }
+
+  @Override
+  public double squaredEuclidean(double[] x, double[] y) {
+    double agg = 0.;
+    for(int d = 0; d < x.length; d++) {
+      final double delta = x[d] - y[d];
+      agg += delta * delta;
+    }
+    return agg;
+  }
+
+  @Override
+  public double squaredEuclidean(float[] x, float[] y) {
+    double agg = 0.;
+    for(int d = 0; d < x.length; d++) {
+      final double delta = (double) x[d] - y[d];
+      agg += delta * delta;
+    }
+    return agg;
+  }
+
+  @Override
+  public double manhattan(double[] x, double[] y) {
+    double agg = 0.;
+    for(int d = 0; d < x.length; d++) {
+      agg += Math.abs(x[d] - y[d]);
+    }
+    return agg;
+  }
+
+  @Override
+  public double manhattan(float[] x, float[] y) {
+    double agg = 0.;
+    for(int d = 0; d < x.length; d++) {
+      agg += Math.abs((double) x[d] - y[d]);
+    }
+    return agg;
+  }
+
+  @Override
+  public double lpPowerSum(double[] x, double[] y, double p) {
+    double agg = 0.;
+    for(int d = 0; d < x.length; d++) {
+      final double xd = x[d], yd = y[d];
+      agg += FastMath.pow(xd >= yd ? xd - yd : yd - xd, p);
+    }
+    return agg;
+  }
+
+  @Override
+  public double lpPowerSum(float[] x, float[] y, double p) {
+    double agg = 0.;
+    for(int d = 0; d < x.length; d++) {
+      final double xd = x[d], yd = y[d];
+      agg += FastMath.pow(xd >= yd ? xd - yd : yd - xd, p);
+    }
+    return agg;
+  }
+
+  @Override
+  public double maximum(double[] x, double[] y) {
+    double agg = 0.;
+    for(int d = 0; d < x.length; d++) {
+      final double xd = x[d], yd = y[d];
+      final double delta = xd >= yd ? xd - yd : yd - xd;
+      agg = delta >= agg ? delta : agg;
+    }
+    return agg;
+  }
+
+  @Override
+  public double maximum(float[] x, float[] y) {
+    double agg = 0.;
+    for(int d = 0; d < x.length; d++) {
+      final double xd = x[d], yd = y[d];
+      final double delta = xd >= yd ? xd - yd : yd - xd;
+      agg = delta >= agg ? delta : agg;
+    }
+    return agg;
+  }
+
+  @Override
+  public double dot(double[] x, double[] y) {
+    double dot = 0.;
+    for(int d = 0; d < x.length; d++) {
+      dot += x[d] * y[d];
+    }
+    return dot;
+  }
+
+  @Override
+  public double dot(float[] x, float[] y) {
+    double dot = 0.;
+    for(int d = 0; d < x.length; d++) {
+      dot += (double) x[d] * y[d];
+    }
+    return dot;
+  }
+
+  @Override
+  public double cosAngle(double[] x, double[] y) {
+    double cross = 0., l1 = 0., l2 = 0.;
+    for(int d = 0; d < x.length; d++) {
+      final double r1 = x[d], r2 = y[d];
+      cross += r1 * r2;
+      l1 += r1 * r1;
+      l2 += r2 * r2;
+    }
+    return angle(cross, l1, l2);
+  }
+
+  @Override
+  public double cosAngle(float[] x, float[] y) {
+    double cross = 0., l1 = 0., l2 = 0.;
+    for(int d = 0; d < x.length; d++) {
+      final double r1 = x[d], r2 = y[d];
+      cross += r1 * r2;
+      l1 += r1 * r1;
+      l2 += r2 * r2;
+    }
+    return angle(cross, l1, l2);
+  }
+
+  /**
+   * Compute the cosine of the angle from the dot product and the squared
+   * lengths, as in {@link elki.data.VectorUtil#angleDense}.
+   *
+   * @param cross Dot product
+   * @param l1 Squared length of the first vector
+   * @param l2 Squared length of the second vector
+   * @return Cosine of the angle
+   */
+  protected static double angle(double cross, double l1, double l2) {
+    final double a = (cross == 0.) ? 0. : //
+        (l1 == 0. || l2 == 0.) ? 1. : //
+            FastMath.sqrt((cross / l1) * (cross / l2));
+    return (a < 1.) ? a : 1.;
+  }
+
+  @Override
+  public double uncenteredCorrelation(double[] x, double[] y) {
+    double sumXX = 0., sumYY = 0., sumXY = 0.;
+    for(int i = 0; i < x.length; i++) {
+      final double xv = x[i], yv = y[i];
+      sumXX += xv * xv;
+      sumYY += yv * yv;
+      sumXY += xv * yv;
+    }
+    return correlation(sumXX, sumYY, sumXY);
+  }
+
+  @Override
+  public double uncenteredCorrelation(float[] x, float[] y) {
+    double sumXX = 0., sumYY = 0., sumXY = 0.;
+    for(int i = 0; i < x.length; i++) {
+      final double xv = x[i], yv = y[i];
+      sumXX += xv * xv;
+      sumYY += yv * yv;
+      sumXY += xv * yv;
+    }
+    return correlation(sumXX, sumYY, sumXY);
+  }
+
+  @Override
+  public double pearsonCorrelation(double[] x, double[] y) {
+    // Numerically stabilized version, avoiding sum-of-squares.
+    double sumXX = 0., sumYY = 0., sumXY = 0.;
+    double sumX = x[0], sumY = y[0];
+    for(int i = 1; i < x.length;) {
+      final double xv = x[i], yv = y[i];
+      // Delta to previous mean
+      final double deltaX = xv * i - sumX, deltaY = yv * i - sumY;
+      final double oldi = i; // Convert to double!
+      final double f = 1. / (++i * oldi);
+      sumXX += f * deltaX * deltaX;
+      sumYY += f * deltaY * deltaY;
+      sumXY += f * deltaX * deltaY;
+      sumX += xv;
+      sumY += yv;
+    }
+    return correlation(sumXX, sumYY, sumXY);
+  }
+
+  @Override
+  public double pearsonCorrelation(float[] x, float[] y) {
+    // Numerically stabilized version, avoiding sum-of-squares.
+    double sumXX = 0., sumYY = 0., sumXY = 0.;
+    double sumX = x[0], sumY = y[0];
+    for(int i = 1; i < x.length;) {
+      final double xv = x[i], yv = y[i];
+      // Delta to previous mean
+      final double deltaX = xv * i - sumX, deltaY = yv * i - sumY;
+      final double oldi = i; // Convert to double!
+      final double f = 1. / (++i * oldi);
+      sumXX += f * deltaX * deltaX;
+      sumYY += f * deltaY * deltaY;
+      sumXY += f * deltaX * deltaY;
+      sumX += xv;
+      sumY += yv;
+    }
+    return correlation(sumXX, sumYY, sumXY);
+  }
+
+  /**
+   * Compute the correlation coefficient from the (co-)moments.
+   *
+   * @param sumXX Sum of squares of x
+   * @param sumYY Sum of squares of y
+   * @param sumXY Sum of products
+   * @return Correlation coefficient
+   */
+  protected static double correlation(double sumXX, double sumYY, double sumXY) {
+    // One or both series were constant:
+    return !(sumXX > 0. && sumYY > 0.) ? sumXX == sumYY ? 1. : 0. : //
+        sumXY / FastMath.sqrt(sumXX * sumYY);
+  }
+
+  @Override
+  public void squaredEuclidean(double[] q, double[] block, int n, double[] out) {
+    final int dim = q.length;
+    for(int r = 0, off = 0; r < n; r++, off += dim) {
+      double agg = 0.;
+      for(int d = 0; d < dim; d++) {
+        final double delta = block[off + d] - q[d];
+        agg += delta * delta;
+      }
+      out[r] = agg;
+    }
+  }
+
+  @Override
+  public void squaredEuclidean(double[] q, ByteBuffer block, int row, int n, boolean floats, double[] out, int outoff) {
+    final int dim = q.length;
+    if(floats) {
+      for(int r = 0, off = row * dim << 2; r < n; r++) {
+        double agg = 0.;
+        for(int d = 0; d < dim; d++, off += 4) {
+          final double delta = block.getFloat(off) - q[d];
+          agg += delta * delta;
+        }
+        out[outoff + r] = agg;
+      }
+      return;
+    }
+    for(int r = 0, off = row * dim << 3; r < n; r++) {
+      double agg = 0.;
+      for(int d = 0; d < dim; d++, off += 8) {
+        final double delta = block.getDouble(off) - q[d];
+        agg += delta * delta;
+      }
+      out[outoff + r] = agg;
+    }
+  }
+}
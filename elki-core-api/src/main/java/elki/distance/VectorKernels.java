@@ -0,0 +1,223 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.distance;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Low-level kernels for distance computations on primitive arrays, used by
+ * the distance functions for array-backed vectors, by linear scans, and by
+ * k-means.
+ * <p>
+ * The default implementation {@link ScalarVectorKernels} uses plain loops.
+ * Optional modules can register faster implementations (e.g., using SIMD
+ * instructions) as service; the first registered implementation that can be
+ * instantiated is used, see {@link #KERNELS}.
+ * <p>
+ * All pairwise kernels expect both arrays to have the same length, which must
+ * be checked by the caller. Block kernels compare one query vector to
+ * consecutive rows of a row-major block, with the dimensionality given by the
+ * length of the query vector.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public interface VectorKernels {
+  /**
+   * Kernels to use.
+   */
+  static final VectorKernels KERNELS = ScalarVectorKernels.load();
+
+  /**
+   * Squared Euclidean distance.
+   *
+   * @param x First vector
+   * @param y Second vector
+   * @return Squared Euclidean distance
+   */
+  double squaredEuclidean(double[] x, double[] y);
+
+  /**
+   * Squared Euclidean distance, computed in double precision.
+   *
+   * @param x First vector
+   * @param y Second vector
+   * @return Squared Euclidean distance
+   */
+  double squaredEuclidean(float[] x, float[] y);
+
+  /**
+   * Manhattan distance.
+   *
+   * @param x First vector
+   * @param y Second vector
+   * @return Manhattan distance
+   */
+  double manhattan(double[] x, double[] y);
+
+  /**
+   * Manhattan distance, computed in double precision.
+   *
+   * @param x First vector
+   * @param y Second vector
+   * @return Manhattan distance
+   */
+  double manhattan(float[] x, float[] y);
+
+  /**
+   * Sum of the p-th powers of the absolute differences, i.e., the
+   * L<sub>p</sub> distance before taking the p-th root.
+   *
+   * @param x First vector
+   * @param y Second vector
+   * @param p Exponent
+   * @return Sum of powers
+   */
+  double lpPowerSum(double[] x, double[] y, double p);
+
+  /**
+   * Sum of the p-th powers of the absolute differences, computed in double
+   * precision.
+   *
+   * @param x First vector
+   * @param y Second vector
+   * @param p Exponent
+   * @return Sum of powers
+   */
+  double lpPowerSum(float[] x, float[] y, double p);
+
+  /**
+   * Maximum distance.
+   *
+   * @param x First vector
+   * @param y Second vector
+   * @return Maximum distance
+   */
+  double maximum(double[] x, double[] y);
+
+  /**
+   * Maximum distance, computed in double precision.
+   *
+   * @param x First vector
+   * @param y Second vector
+   * @return Maximum distance
+   */
+  double maximum(float[] x, float[] y);
+
+  /**
+   * Dot product.
+   *
+   * @param x First vector
+   * @param y Second vector
+   * @return Dot product
+   */
+  double dot(double[] x, double[] y);
+
+  /**
+   * Dot product, computed in double precision.
+   *
+   * @param x First vector
+   * @param y Second vector
+   * @return Dot product
+   */
+  double dot(float[] x, float[] y);
+
+  /**
+   * Absolute value of the cosine of the angle between two vectors, as in
+   * {@link elki.data.VectorUtil#cosAngle}.
+   *
+   * @param x First vector
+   * @param y Second vector
+   * @return Cosine of the angle, in [0;1]
+   */
+  double cosAngle(double[] x, double[] y);
+
+  /**
+   * Absolute value of the cosine of the angle between two vectors, computed in
+   * double precision.
+   *
+   * @param x First vector
+   * @param y Second vector
+   * @return Cosine of the angle, in [0;1]
+   */
+  double cosAngle(float[] x, float[] y);
+
+  /**
+   * Uncentered correlation coefficient (cosine similarity).
+   *
+   * @param x First vector
+   * @param y Second vector
+   * @return Uncentered correlation
+   */
+  double uncenteredCorrelation(double[] x, double[] y);
+
+  /**
+   * Uncentered correlation coefficient, computed in double precision.
+   *
+   * @param x First vector
+   * @param y Second vector
+   * @return Uncentered correlation
+   */
+  double uncenteredCorrelation(float[] x, float[] y);
+
+  /**
+   * Pearson product-moment correlation coefficient.
+   *
+   * @param x First vector, must not be empty
+   * @param y Second vector
+   * @return Pearson correlation
+   */
+  double pearsonCorrelation(double[] x, double[] y);
+
+  /**
+   * Pearson product-moment correlation coefficient, computed in double
+   * precision.
+   *
+   * @param x First vector, must not be empty
+   * @param y Second vector
+   * @return Pearson correlation
+   */
+  double pearsonCorrelation(float[] x, float[] y);
+
+  /**
+   * Squared Euclidean distances of a query to the rows of a block.
+   *
+   * @param q Query vector
+   * @param block Row-major block of vectors
+   * @param n Number of rows
+   * @param out Output distances, at least n values
+   */
+  void squaredEuclidean(double[] q, double[] block, int n, double[] out);
+
+  /**
+   * Squared Euclidean distances of a query to the rows of a block stored in a
+   * byte buffer, in the byte order of the buffer.
+   *
+   * @param q Query vector
+   * @param block Buffer storing rows of vectors
+   * @param row First row
+   * @param n Number of rows
+   * @param floats Buffer contains single precision values
+   * @param out Output distances
+   * @param outoff Offset in the output array
+   */
+  void squaredEuclidean(double[] q, ByteBuffer block, int row, int n, boolean floats, double[] out, int outoff);
+}
@@ -22,6 +22,7 @@ package elki.index;
 
 import elki.database.ids.DBIDRef;
 import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.BatchKNNSearcher;
 import elki.database.query.knn.WrappedKNNDBIDByLookup;
 import elki.database.query.knn.KNNSearcher;
 
@@ -33,6 +34,7 @@ import elki.database.query.knn.KNNSearcher;
  * 
  * @opt nodefillcolor LemonChiffon
  * @navhas - provides - KNNSearcher
+ * @navhas - provides - BatchKNNSearcher
  * 
  * @param <O> Object type
  */
@@ -62,4 +64,20 @@ public interface KNNIndex<O> extends Index {
   default KNNSearcher<DBIDRef> kNNByDBID(DistanceQuery<O> distanceQuery, int maxk, int flags) {
     return WrappedKNNDBIDByLookup.wrap(distanceQuery.getRelation(), kNNByObject(distanceQuery, maxk, flags));
   }
+
+  /**
+   * Get a batch KNN query object for the given distance query and k.
+   * <p>
+   * This function MAY return null, when the index has no specialized batch
+   * search; the {@code QueryBuilder} will then fall back to
+   * running single queries in parallel.
+   * 
+   * @param distanceQuery Distance query
+   * @param maxk Maximum value of k
+   * @param flags Hints for the optimizer
+   * @return Batch KNN query object or {@code null}
+   */
+  default BatchKNNSearcher batchKNNByDBID(DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    return null;
+  }
 }
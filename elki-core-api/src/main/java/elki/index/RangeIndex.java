@@ -22,6 +22,7 @@ package elki.index;
 
 import elki.database.ids.DBIDRef;
 import elki.database.query.distance.DistanceQuery;
+import elki.database.query.range.BatchRangeSearcher;
 import elki.database.query.range.WrappedRangeDBIDByLookup;
 import elki.database.query.range.RangeSearcher;
 
@@ -33,6 +34,7 @@ import elki.database.query.range.RangeSearcher;
  * 
  * @opt nodefillcolor LemonChiffon
  * @navhas - provides - RangeSearcher
+ * @navhas - provides - BatchRangeSearcher
  *
  * @param <O> Database Object type
  */
@@ -62,4 +64,20 @@ public interface RangeIndex<O> extends Index {
   default RangeSearcher<DBIDRef> rangeByDBID(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
     return WrappedRangeDBIDByLookup.wrap(distanceQuery.getRelation(), rangeByObject(distanceQuery, maxrange, flags));
   }
+
+  /**
+   * Get a batch range query object for the given distance query.
+   * <p>
+   * This function MAY return null, when the index has no specialized batch
+   * search; the {@code QueryBuilder} will then fall back to running single
+   * queries in parallel.
+   *
+   * @param distanceQuery Distance query
+   * @param maxrange Maximum range
+   * @param flags Hints for the optimizer
+   * @return Batch range query object or {@code null}
+   */
+  default BatchRangeSearcher batchRangeByDBID(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    return null;
+  }
 }
@@ -0,0 +1,49 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index;
+
+import elki.database.query.SpanningTreeSearcher;
+import elki.database.query.distance.DistanceQuery;
+
+/**
+ * Index with support for computing minimum spanning trees.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @opt nodefillcolor LemonChiffon
+ * @navhas - provides - SpanningTreeSearcher
+ *
+ * @param <O> Object type
+ */
+public interface SpanningTreeIndex<O> extends Index {
+  /**
+   * Get a minimum spanning tree searcher for the given distance query.
+   * <p>
+   * This function MAY return null, when the given distance is not supported,
+   * or the index is currently not suitable!
+   *
+   * @param distanceQuery Distance query
+   * @param flags Hints for the optimizer
+   * @return Spanning tree searcher or {@code null}
+   */
+  SpanningTreeSearcher spanningTree(DistanceQuery<O> distanceQuery, int flags);
+}
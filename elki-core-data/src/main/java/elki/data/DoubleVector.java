@@ -98,6 +98,18 @@ public class DoubleVector implements NumberVector {
     return (long) values[dimension];
   }
 
+  /**
+   * Access the values of the vector (without copying).
+   * <p>
+   * Note: the array must not be modified, as the data may e.g. have been added
+   * to an index, which relies on them being immutable!
+   *
+   * @return Values
+   */
+  public double[] getValues() {
+    return values;
+  }
+
   @Override
   public double[] toArray() {
     return values.clone();
@@ -107,6 +107,31 @@ public class FloatVector implements NumberVector {
     return (long) values[dimension];
   }
 
+  /**
+   * Access the values of the vector (without copying).
+   * <p>
+   * Note: the array must not be modified, as the data may e.g. have been added
+   * to an index, which relies on them being immutable!
+   *
+   * @return Values
+   */
+  public float[] getValues() {
+    return values;
+  }
+
+  /**
+   * Wrap a float array as vector (without copying).
+   * <p>
+   * Note: modifying the array afterwards can lead to problems if the data has
+   * e.g. been added to an index, which relies on them being immutable!
+   *
+   * @param vals Values
+   * @return Wrapped vector
+   */
+  public static FloatVector wrap(float[] vals) {
+    return new FloatVector(vals, true);
+  }
+
   @Override
   public double[] toArray() {
     double[] data = new double[values.length];
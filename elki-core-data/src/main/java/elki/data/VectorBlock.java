@@ -0,0 +1,644 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import elki.distance.VectorKernels;
+import elki.utilities.datastructures.arraylike.ArrayAdapter;
+import elki.utilities.datastructures.arraylike.NumberArrayAdapter;
+import elki.utilities.io.ByteArrayUtil;
+import elki.utilities.io.ByteBufferSerializer;
+
+/**
+ * Contiguous, row-major storage of many vectors of the same dimensionality,
+ * stored outside of the Java heap (either in direct buffers, or in a
+ * memory-mapped file).
+ * <p>
+ * Compared to storing one {@link DoubleVector} per object, this avoids the
+ * per-object header and array overhead, pointer chasing during distance
+ * computations, and puts much less pressure on the garbage collector.
+ * Vectors are accessed via lightweight {@link Row} views, which do not copy
+ * the data.
+ * <p>
+ * Because Java buffers are limited to 2 GB each, the data is split into
+ * segments, each containing a whole number of rows.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - Row
+ */
+public abstract class VectorBlock {
+  /**
+   * Maximum size of a single segment in bytes.
+   */
+  private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+  /**
+   * Number of rows.
+   */
+  protected final int size;
+
+  /**
+   * Dimensionality.
+   */
+  protected final int dim;
+
+  /**
+   * Number of rows per segment.
+   */
+  protected final int rowsPerSegment;
+
+  /**
+   * Data segments.
+   */
+  protected final ByteBuffer[] segments;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of rows
+   * @param dim Dimensionality
+   * @param rowsPerSegment Rows per segment
+   * @param segments Byte buffers
+   */
+  protected VectorBlock(int size, int dim, int rowsPerSegment, ByteBuffer[] segments) {
+    this.size = size;
+    this.dim = dim;
+    this.rowsPerSegment = rowsPerSegment;
+    this.segments = segments;
+  }
+
+  /**
+   * Allocate a new block in direct (off-heap) memory.
+   *
+   * @param size Number of rows
+   * @param dim Dimensionality
+   * @param useFloat Use single precision storage
+   * @return New block
+   */
+  public static VectorBlock allocate(int size, int dim, boolean useFloat) {
+    final int rowbytes = dim * (useFloat ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE);
+    final int rps = rowsPerSegment(rowbytes);
+    ByteBuffer[] segments = new ByteBuffer[(size + rps - 1) / rps];
+    for(int i = 0, start = 0; i < segments.length; i++, start += rps) {
+      segments[i] = ByteBuffer.allocateDirect(Math.min(rps, size - start) * rowbytes).order(ByteOrder.nativeOrder());
+    }
+    return useFloat ? new FloatBlock(size, dim, rps, segments) : new DoubleBlock(size, dim, rps, segments);
+  }
+
+  /**
+   * Create a new block backed by a memory-mapped file. The file will be
+   * overwritten.
+   *
+   * @param file File to map
+   * @param size Number of rows
+   * @param dim Dimensionality
+   * @param useFloat Use single precision storage
+   * @return New block
+   * @throws IOException on IO errors
+   */
+  public static VectorBlock map(File file, int size, int dim, boolean useFloat) throws IOException {
+    final int rowbytes = dim * (useFloat ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE);
+    final int rps = rowsPerSegment(rowbytes);
+    ByteBuffer[] segments = new ByteBuffer[(size + rps - 1) / rps];
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        FileChannel channel = raf.getChannel()) {
+      raf.setLength(size * (long) rowbytes);
+      for(int i = 0, start = 0; i < segments.length; i++, start += rps) {
+        final long pos = start * (long) rowbytes;
+        segments[i] = channel.map(MapMode.READ_WRITE, pos, Math.min(rps, size - start) * (long) rowbytes).order(ByteOrder.nativeOrder());
+      }
+    }
+    return useFloat ? new FloatBlock(size, dim, rps, segments) : new DoubleBlock(size, dim, rps, segments);
+  }
+
+  /**
+   * Compute the number of rows per segment.
+   *
+   * @param rowbytes Bytes per row
+   * @return Number of rows per segment
+   */
+  private static int rowsPerSegment(int rowbytes) {
+    return (int) Math.max(1, MAX_SEGMENT_BYTES / Math.max(1, rowbytes));
+  }
+
+  /**
+   * Get the number of rows.
+   *
+   * @return Number of rows
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get the dimensionality of the vectors.
+   *
+   * @return Dimensionality
+   */
+  public int getDimensionality() {
+    return dim;
+  }
+
+  /**
+   * Get a view of a single row.
+   *
+   * @param row Row number
+   * @return Row view
+   */
+  public Row get(int row) {
+    return new Row(this, row);
+  }
+
+  /**
+   * Get a single value.
+   *
+   * @param row Row number
+   * @param d Dimension
+   * @return Value
+   */
+  public abstract double doubleValue(int row, int d);
+
+  /**
+   * Get a single value.
+   *
+   * @param row Row number
+   * @param d Dimension
+   * @return Value
+   */
+  public abstract float floatValue(int row, int d);
+
+  /**
+   * Store a vector.
+   *
+   * @param row Row number
+   * @param vec Vector, must have the same dimensionality
+   */
+  public abstract void set(int row, NumberVector vec);
+
+  /**
+   * Check if the block uses single precision storage.
+   *
+   * @return {@code true} when storing floats
+   */
+  public abstract boolean isFloat();
+
+  /**
+   * Squared Euclidean distance of a row to a query vector of the same
+   * dimensionality.
+   *
+   * @param row Row number
+   * @param q Query vector
+   * @return Squared Euclidean distance
+   */
+  public abstract double squaredEuclidean(int row, NumberVector q);
+
+  /**
+   * Squared Euclidean distance of a row to a query vector of the same
+   * dimensionality.
+   *
+   * @param row Row number
+   * @param q Query vector
+   * @return Squared Euclidean distance
+   */
+  public abstract double squaredEuclidean(int row, double[] q);
+
+  /**
+   * Squared Euclidean distance of two rows of this block.
+   *
+   * @param r1 First row
+   * @param r2 Second row
+   * @return Squared Euclidean distance
+   */
+  public abstract double squaredEuclidean(int r1, int r2);
+
+  /**
+   * Squared Euclidean distances of a query vector to consecutive rows, using
+   * the {@link VectorKernels}.
+   *
+   * @param q Query vector, of the same dimensionality
+   * @param start First row
+   * @param n Number of rows
+   * @param out Output distances, at least n values
+   */
+  public void squaredEuclidean(double[] q, int start, int n, double[] out) {
+    for(int i = 0; i < n;) {
+      final int row = start + i, srow = row % rowsPerSegment;
+      final int len = Math.min(n - i, rowsPerSegment - srow);
+      VectorKernels.KERNELS.squaredEuclidean(q, segments[row / rowsPerSegment], srow, len, isFloat(), out, i);
+      i += len;
+    }
+  }
+
+  /**
+   * Block storing double precision values.
+   *
+   * @author Erich Schubert
+   */
+  private static class DoubleBlock extends VectorBlock {
+    /**
+     * Data segments.
+     */
+    private final DoubleBuffer[] data;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of rows
+     * @param dim Dimensionality
+     * @param rowsPerSegment Rows per segment
+     * @param segments Byte buffers
+     */
+    DoubleBlock(int size, int dim, int rowsPerSegment, ByteBuffer[] segments) {
+      super(size, dim, rowsPerSegment, segments);
+      this.data = new DoubleBuffer[segments.length];
+      for(int i = 0; i < segments.length; i++) {
+        data[i] = segments[i].asDoubleBuffer();
+      }
+    }
+
+    @Override
+    public double doubleValue(int row, int d) {
+      return data[row / rowsPerSegment].get((row % rowsPerSegment) * dim + d);
+    }
+
+    @Override
+    public float floatValue(int row, int d) {
+      return (float) doubleValue(row, d);
+    }
+
+    @Override
+    public void set(int row, NumberVector vec) {
+      assert vec.getDimensionality() == dim : "Dimensionality mismatch.";
+      final DoubleBuffer seg = data[row / rowsPerSegment];
+      final int off = (row % rowsPerSegment) * dim;
+      for(int d = 0; d < dim; d++) {
+        seg.put(off + d, vec.doubleValue(d));
+      }
+    }
+
+    @Override
+    public boolean isFloat() {
+      return false;
+    }
+
+    @Override
+    public double squaredEuclidean(int row, NumberVector q) {
+      final DoubleBuffer seg = data[row / rowsPerSegment];
+      final int off = (row % rowsPerSegment) * dim;
+      double agg = 0.;
+      for(int d = 0; d < dim; d++) {
+        final double delta = seg.get(off + d) - q.doubleValue(d);
+        agg += delta * delta;
+      }
+      return agg;
+    }
+
+    @Override
+    public double squaredEuclidean(int row, double[] q) {
+      final DoubleBuffer seg = data[row / rowsPerSegment];
+      final int off = (row % rowsPerSegment) * dim;
+      double agg = 0.;
+      for(int d = 0; d < dim; d++) {
+        final double delta = seg.get(off + d) - q[d];
+        agg += delta * delta;
+      }
+      return agg;
+    }
+
+    @Override
+    public double squaredEuclidean(int r1, int r2) {
+      final DoubleBuffer s1 = data[r1 / rowsPerSegment];
+      final DoubleBuffer s2 = data[r2 / rowsPerSegment];
+      final int o1 = (r1 % rowsPerSegment) * dim;
+      final int o2 = (r2 % rowsPerSegment) * dim;
+      double agg = 0.;
+      for(int d = 0; d < dim; d++) {
+        final double delta = s1.get(o1 + d) - s2.get(o2 + d);
+        agg += delta * delta;
+      }
+      return agg;
+    }
+  }
+
+  /**
+   * Block storing single precision values.
+   *
+   * @author Erich Schubert
+   */
+  private static class FloatBlock extends VectorBlock {
+    /**
+     * Data segments.
+     */
+    private final FloatBuffer[] data;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of rows
+     * @param dim Dimensionality
+     * @param rowsPerSegment Rows per segment
+     * @param segments Byte buffers
+     */
+    FloatBlock(int size, int dim, int rowsPerSegment, ByteBuffer[] segments) {
+      super(size, dim, rowsPerSegment, segments);
+      this.data = new FloatBuffer[segments.length];
+      for(int i = 0; i < segments.length; i++) {
+        data[i] = segments[i].asFloatBuffer();
+      }
+    }
+
+    @Override
+    public double doubleValue(int row, int d) {
+      return floatValue(row, d);
+    }
+
+    @Override
+    public float floatValue(int row, int d) {
+      return data[row / rowsPerSegment].get((row % rowsPerSegment) * dim + d);
+    }
+
+    @Override
+    public void set(int row, NumberVector vec) {
+      assert vec.getDimensionality() == dim : "Dimensionality mismatch.";
+      final FloatBuffer seg = data[row / rowsPerSegment];
+      final int off = (row % rowsPerSegment) * dim;
+      for(int d = 0; d < dim; d++) {
+        seg.put(off + d, vec.floatValue(d));
+      }
+    }
+
+    @Override
+    public boolean isFloat() {
+      return true;
+    }
+
+    @Override
+    public double squaredEuclidean(int row, NumberVector q) {
+      final FloatBuffer seg = data[row / rowsPerSegment];
+      final int off = (row % rowsPerSegment) * dim;
+      double agg = 0.;
+      for(int d = 0; d < dim; d++) {
+        final double delta = seg.get(off + d) - q.doubleValue(d);
+        agg += delta * delta;
+      }
+      return agg;
+    }
+
+    @Override
+    public double squaredEuclidean(int row, double[] q) {
+      final FloatBuffer seg = data[row / rowsPerSegment];
+      final int off = (row % rowsPerSegment) * dim;
+      double agg = 0.;
+      for(int d = 0; d < dim; d++) {
+        final double delta = seg.get(off + d) - q[d];
+        agg += delta * delta;
+      }
+      return agg;
+    }
+
+    @Override
+    public double squaredEuclidean(int r1, int r2) {
+      final FloatBuffer s1 = data[r1 / rowsPerSegment];
+      final FloatBuffer s2 = data[r2 / rowsPerSegment];
+      final int o1 = (r1 % rowsPerSegment) * dim;
+      final int o2 = (r2 % rowsPerSegment) * dim;
+      double agg = 0.;
+      for(int d = 0; d < dim; d++) {
+        final double delta = (double) s1.get(o1 + d) - s2.get(o2 + d);
+        agg += delta * delta;
+      }
+      return agg;
+    }
+  }
+
+  /**
+   * Flyweight view of a single row of a vector block.
+   * <p>
+   * Note: the data is not copied, hence modifications of the block will be
+   * visible in the view.
+   *
+   * @author Erich Schubert
+   */
+  public static final class Row implements NumberVector {
+    /**
+     * Block containing the data.
+     */
+    private final VectorBlock block;
+
+    /**
+     * Row number.
+     */
+    private final int row;
+
+    /**
+     * Constructor.
+     *
+     * @param block Block
+     * @param row Row number
+     */
+    private Row(VectorBlock block, int row) {
+      this.block = block;
+      this.row = row;
+    }
+
+    /**
+     * Get the block this row is stored in.
+     *
+     * @return Block
+     */
+    public VectorBlock getBlock() {
+      return block;
+    }
+
+    /**
+     * Get the row number within the block.
+     *
+     * @return Row number
+     */
+    public int getRow() {
+      return row;
+    }
+
+    /**
+     * Squared Euclidean distance to another vector of the same
+     * dimensionality, reading the block directly.
+     *
+     * @param other Other vector
+     * @return Squared Euclidean distance
+     */
+    public double squaredEuclidean(NumberVector other) {
+      return other instanceof Row && ((Row) other).block == block ? //
+          block.squaredEuclidean(row, ((Row) other).row) : block.squaredEuclidean(row, other);
+    }
+
+    @Override
+    public int getDimensionality() {
+      return block.dim;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      return block.doubleValue(row, dimension);
+    }
+
+    @Override
+    public float floatValue(int dimension) {
+      return block.floatValue(row, dimension);
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) block.doubleValue(row, dimension);
+    }
+
+    @Override
+    public double[] toArray() {
+      double[] data = new double[block.dim];
+      for(int d = 0; d < data.length; d++) {
+        data[d] = block.doubleValue(row, d);
+      }
+      return data;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder featureLine = new StringBuilder(block.dim * 8);
+      for(int d = 0; d < block.dim; d++) {
+        featureLine.append(d > 0 ? ATTRIBUTE_SEPARATOR : "").append(block.isFloat() ? block.floatValue(row, d) : block.doubleValue(row, d));
+      }
+      return featureLine.toString();
+    }
+  }
+
+  /**
+   * Vector factory for relations stored in vector blocks.
+   * <p>
+   * New vectors (e.g., cluster means) are created using the factory of the
+   * original data type, the restriction class is {@link NumberVector} because
+   * the relation returns {@link Row} views.
+   *
+   * @author Erich Schubert
+   */
+  public static class Factory implements NumberVector.Factory<NumberVector> {
+    /**
+     * Factory for new vectors.
+     */
+    private final NumberVector.Factory<?> inner;
+
+    /**
+     * Serializer.
+     */
+    private final ByteBufferSerializer<NumberVector> serializer;
+
+    /**
+     * Constructor.
+     *
+     * @param inner Factory of the original vector type
+     */
+    public Factory(NumberVector.Factory<?> inner) {
+      this.inner = inner;
+      this.serializer = new Serializer<>(inner);
+    }
+
+    @Override
+    public <A> NumberVector newFeatureVector(A array, ArrayAdapter<? extends Number, A> adapter) {
+      return inner.newFeatureVector(array, adapter);
+    }
+
+    @Override
+    public <A> NumberVector newNumberVector(A array, NumberArrayAdapter<?, ? super A> adapter) {
+      return inner.newNumberVector(array, adapter);
+    }
+
+    @Override
+    public ByteBufferSerializer<NumberVector> getDefaultSerializer() {
+      return serializer;
+    }
+
+    @Override
+    public Class<? super NumberVector> getRestrictionClass() {
+      return NumberVector.class;
+    }
+  }
+
+  /**
+   * Serializer converting rows into the original vector type.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Original vector type
+   */
+  private static class Serializer<V extends NumberVector> implements ByteBufferSerializer<NumberVector> {
+    /**
+     * Original factory.
+     */
+    private final NumberVector.Factory<V> factory;
+
+    /**
+     * Original serializer.
+     */
+    private final ByteBufferSerializer<V> inner;
+
+    /**
+     * Constructor.
+     *
+     * @param factory Original factory
+     */
+    Serializer(NumberVector.Factory<V> factory) {
+      this.factory = factory;
+      this.inner = factory.getDefaultSerializer();
+    }
+
+    @Override
+    public NumberVector fromByteBuffer(ByteBuffer buffer) throws IOException {
+      return inner.fromByteBuffer(buffer);
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, NumberVector obj) throws IOException {
+      inner.toByteBuffer(buffer, convert(obj));
+    }
+
+    @Override
+    public int getByteSize(NumberVector object) throws IOException {
+      return inner.getByteSize(convert(object));
+    }
+
+    /**
+     * Convert to the original type, if necessary.
+     *
+     * @param obj Object
+     * @return Object of the original type
+     */
+    @SuppressWarnings("unchecked")
+    private V convert(NumberVector obj) {
+      return factory.getRestrictionClass().isInstance(obj) ? (V) obj : factory.newNumberVector(obj);
+    }
+  }
+}
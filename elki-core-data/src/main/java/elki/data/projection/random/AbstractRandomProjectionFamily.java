@@ -57,9 +57,6 @@ public abstract class AbstractRandomProjectionFamily implements RandomProjection
    * output dimensionality, the column dimensionality is the input
    * dimensionality.
    *
-   * It is <b>not thread safe</b> because it uses an internal buffer to store a
-   * local copy of the vector.
-   *
    * @author Erich Schubert
    */
   public static class MatrixProjection implements Projection {
@@ -68,11 +65,6 @@ public abstract class AbstractRandomProjectionFamily implements RandomProjection
      */
     double[][] matrix;
 
-    /**
-     * Shared buffer to use during projections.
-     */
-    private double[] buf;
-
     /**
      * Constructor.
      *
@@ -81,7 +73,6 @@ public abstract class AbstractRandomProjectionFamily implements RandomProjection
     public MatrixProjection(double[][] matrix) {
       super();
       this.matrix = matrix;
-      this.buf = new double[matrix.length];
     }
 
     @Override
@@ -94,24 +85,15 @@ public abstract class AbstractRandomProjectionFamily implements RandomProjection
       if(in instanceof SparseNumberVector) {
         return projectSparse((SparseNumberVector) in, ret);
       }
-      final int dim = Math.min(buf.length, in.getDimensionality());
       assert (ret.length >= matrix.length) : "Output buffer too small!";
-      // Copy vector into local buffer
+      final int dim = matrix.length > 0 ? Math.min(matrix[0].length, in.getDimensionality()) : 0;
+      Arrays.fill(ret, 0);
+      // Read each input value only once, without a shared buffer:
       for(int i = 0; i < dim; i++) {
-        buf[i] = in.doubleValue(i);
-      }
-      // Iterate over output dimensions:
-      for(int o = 0; o < matrix.length; o++) {
-        final double[] row = matrix[o];
-        double v = 0.;
-        for(int i = 0; i < dim; i++) {
-          v += row[i] * buf[i]; // Rows and input are aligned.
+        final double v = in.doubleValue(i);
+        for(int o = 0; o < matrix.length; o++) {
+          ret[o] += matrix[o][i] * v;
         }
-        ret[o] = v;
-      }
-      // Fill excess dimensions.
-      for(int d = matrix.length; d < ret.length; d++) {
-        ret[d] = 0;
       }
       return ret;
     }
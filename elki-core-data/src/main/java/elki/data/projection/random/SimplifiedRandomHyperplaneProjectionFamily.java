@@ -20,6 +20,7 @@
  */
 package elki.data.projection.random;
 
+import java.util.Arrays;
 import java.util.Random;
 
 import elki.data.NumberVector;
@@ -120,6 +121,7 @@ public class SimplifiedRandomHyperplaneProjectionFamily implements RandomProject
 
     @Override
     public double[] project(NumberVector vec, double[] ret) {
+      Arrays.fill(ret, 0);
       if(!(vec instanceof SparseNumberVector)) {
         return projectDense(vec, ret);
       }
@@ -76,7 +76,7 @@ public class ArcCosineUnitlengthDistance implements SpatialPrimitiveDistance<Num
    */
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
-    final double v = VectorUtil.dot(v1, v2);
+    final double v = CosineUnitlengthDistance.dot(v1, v2);
     return v < 1 ? (v > -1 ? Math.acos(v) : 1) : 0;
   }
 
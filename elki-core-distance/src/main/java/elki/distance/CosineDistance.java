@@ -20,6 +20,8 @@
  */
 package elki.distance;
 
+import elki.data.DoubleVector;
+import elki.data.FloatVector;
 import elki.data.NumberVector;
 import elki.data.VectorUtil;
 import elki.data.spatial.SpatialComparable;
@@ -75,10 +77,31 @@ public class CosineDistance implements SpatialPrimitiveDistance<NumberVector>, N
    */
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
-    double d = VectorUtil.cosAngle(v1, v2);
+    double d = cosAngle(v1, v2);
     return (d <= 1) ? 1 - d : 0;
   }
 
+  /**
+   * Compute the cosine of the angle, as {@link VectorUtil#cosAngle}, but using
+   * the {@link VectorKernels} for array-backed vectors of the same
+   * dimensionality.
+   *
+   * @param v1 first feature vector
+   * @param v2 second feature vector
+   * @return cosine of the angle
+   */
+  public static double cosAngle(NumberVector v1, NumberVector v2) {
+    if(v1.getDimensionality() == v2.getDimensionality()) {
+      if(v1 instanceof DoubleVector && v2 instanceof DoubleVector) {
+        return VectorKernels.KERNELS.cosAngle(((DoubleVector) v1).getValues(), ((DoubleVector) v2).getValues());
+      }
+      if(v1 instanceof FloatVector && v2 instanceof FloatVector) {
+        return VectorKernels.KERNELS.cosAngle(((FloatVector) v1).getValues(), ((FloatVector) v2).getValues());
+      }
+    }
+    return VectorUtil.cosAngle(v1, v2);
+  }
+
   @Override
   public double minDist(SpatialComparable mbr1, SpatialComparable mbr2) {
     double d = VectorUtil.minCosAngle(mbr1, mbr2);
@@ -20,6 +20,8 @@
  */
 package elki.distance;
 
+import elki.data.DoubleVector;
+import elki.data.FloatVector;
 import elki.data.NumberVector;
 import elki.data.VectorUtil;
 import elki.data.spatial.SpatialComparable;
@@ -77,10 +79,31 @@ public class CosineUnitlengthDistance implements SpatialPrimitiveDistance<Number
    */
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
-    double d = VectorUtil.dot(v1, v2);
+    double d = dot(v1, v2);
     return (d <= 1) ? 1 - d : 0;
   }
 
+  /**
+   * Compute the dot product, as {@link VectorUtil#dot}, but using the
+   * {@link VectorKernels} for array-backed vectors of the same
+   * dimensionality.
+   *
+   * @param v1 first feature vector
+   * @param v2 second feature vector
+   * @return dot product
+   */
+  public static double dot(NumberVector v1, NumberVector v2) {
+    if(v1.getDimensionality() == v2.getDimensionality()) {
+      if(v1 instanceof DoubleVector && v2 instanceof DoubleVector) {
+        return VectorKernels.KERNELS.dot(((DoubleVector) v1).getValues(), ((DoubleVector) v2).getValues());
+      }
+      if(v1 instanceof FloatVector && v2 instanceof FloatVector) {
+        return VectorKernels.KERNELS.dot(((FloatVector) v1).getValues(), ((FloatVector) v2).getValues());
+      }
+    }
+    return VectorUtil.dot(v1, v2);
+  }
+
   @Override
   public double minDist(SpatialComparable mbr1, SpatialComparable mbr2) {
     double d = VectorUtil.minDot(mbr1, mbr2);
@@ -22,7 +22,6 @@ package elki.distance.correlation;
 
 import elki.data.NumberVector;
 import elki.distance.AbstractNumberVectorDistance;
-import elki.math.PearsonCorrelation;
 import elki.utilities.optionhandling.Parameterizer;
 
 /**
@@ -70,7 +69,7 @@ public class AbsolutePearsonCorrelationDistance extends AbstractNumberVectorDist
    */
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
-    return 1 - Math.abs(PearsonCorrelation.coefficient(v1, v2));
+    return 1 - Math.abs(PearsonCorrelationDistance.pearsonCorrelation(v1, v2));
   }
 
   @Override
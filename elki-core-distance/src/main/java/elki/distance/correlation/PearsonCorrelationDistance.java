@@ -20,8 +20,11 @@
  */
 package elki.distance.correlation;
 
+import elki.data.DoubleVector;
+import elki.data.FloatVector;
 import elki.data.NumberVector;
 import elki.distance.AbstractNumberVectorDistance;
+import elki.distance.VectorKernels;
 import elki.math.PearsonCorrelation;
 import elki.utilities.optionhandling.Parameterizer;
 
@@ -71,7 +74,28 @@ public class PearsonCorrelationDistance extends AbstractNumberVectorDistance {
    */
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
-    return 1 - PearsonCorrelation.coefficient(v1, v2);
+    return 1 - pearsonCorrelation(v1, v2);
+  }
+
+  /**
+   * Compute the Pearson correlation coefficient, using the vector kernels for
+   * array-backed vectors.
+   *
+   * @param x first vector
+   * @param y second vector
+   * @return Pearson correlation coefficient
+   */
+  public static double pearsonCorrelation(NumberVector x, NumberVector y) {
+    final int xdim = x.getDimensionality();
+    if(xdim > 0 && xdim == y.getDimensionality()) {
+      if(x instanceof DoubleVector && y instanceof DoubleVector) {
+        return VectorKernels.KERNELS.pearsonCorrelation(((DoubleVector) x).getValues(), ((DoubleVector) y).getValues());
+      }
+      if(x instanceof FloatVector && y instanceof FloatVector) {
+        return VectorKernels.KERNELS.pearsonCorrelation(((FloatVector) x).getValues(), ((FloatVector) y).getValues());
+      }
+    }
+    return PearsonCorrelation.coefficient(x, y);
   }
 
   @Override
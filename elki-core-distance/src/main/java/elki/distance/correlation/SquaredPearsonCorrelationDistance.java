@@ -22,7 +22,6 @@ package elki.distance.correlation;
 
 import elki.data.NumberVector;
 import elki.distance.AbstractNumberVectorDistance;
-import elki.math.PearsonCorrelation;
 import elki.utilities.optionhandling.Parameterizer;
 
 /**
@@ -58,7 +57,7 @@ public class SquaredPearsonCorrelationDistance extends AbstractNumberVectorDista
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
-    final double pcc = PearsonCorrelation.coefficient(v1, v2);
+    final double pcc = PearsonCorrelationDistance.pearsonCorrelation(v1, v2);
     return 1 - pcc * pcc;
   }
 
@@ -20,8 +20,11 @@
  */
 package elki.distance.correlation;
 
+import elki.data.DoubleVector;
+import elki.data.FloatVector;
 import elki.data.NumberVector;
 import elki.distance.AbstractNumberVectorDistance;
+import elki.distance.VectorKernels;
 import elki.utilities.optionhandling.Parameterizer;
 import net.jafama.FastMath;
 
@@ -62,6 +65,12 @@ public class UncenteredCorrelationDistance extends AbstractNumberVectorDistance
     if(xdim != ydim) {
       throw new IllegalArgumentException("Invalid arguments: number vectors differ in dimensionality.");
     }
+    if(x instanceof DoubleVector && y instanceof DoubleVector) {
+      return VectorKernels.KERNELS.uncenteredCorrelation(((DoubleVector) x).getValues(), ((DoubleVector) y).getValues());
+    }
+    if(x instanceof FloatVector && y instanceof FloatVector) {
+      return VectorKernels.KERNELS.uncenteredCorrelation(((FloatVector) x).getValues(), ((FloatVector) y).getValues());
+    }
     double sumXX = 0., sumYY = 0., sumXY = 0.;
     for(int i = 0; i < xdim; i++) {
       final double xv = x.doubleValue(i), yv = y.doubleValue(i);
@@ -84,22 +93,10 @@ public class UncenteredCorrelationDistance extends AbstractNumberVectorDistance
    * @return the uncentered correlation coefficient for x and y
    */
   public static double uncenteredCorrelation(double[] x, double[] y) {
-    final int xdim = x.length, ydim = y.length;
-    if(xdim != ydim) {
+    if(x.length != y.length) {
       throw new IllegalArgumentException("Invalid arguments: number vectors differ in dimensionality.");
     }
-    double sumXX = 0., sumYY = 0., sumXY = 0.;
-    for(int i = 0; i < xdim; i++) {
-      final double xv = x[i], yv = y[i];
-      sumXX += xv * xv;
-      sumYY += yv * yv;
-      sumXY += xv * yv;
-    }
-    // One or both series were constant:
-    if(!(sumXX > 0. && sumYY > 0.)) {
-      return (sumXX == sumYY) ? 1. : 0.;
-    }
-    return sumXY / FastMath.sqrt(sumXX * sumYY);
+    return VectorKernels.KERNELS.uncenteredCorrelation(x, y);
   }
 
   /**
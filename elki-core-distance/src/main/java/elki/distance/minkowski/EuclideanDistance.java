@@ -20,8 +20,12 @@
  */
 package elki.distance.minkowski;
 
+import elki.data.DoubleVector;
+import elki.data.FloatVector;
 import elki.data.NumberVector;
+import elki.data.VectorBlock;
 import elki.data.spatial.SpatialComparable;
+import elki.distance.VectorKernels;
 import elki.utilities.Alias;
 import elki.utilities.Priority;
 import elki.utilities.optionhandling.Parameterizer;
@@ -112,6 +116,19 @@ public class EuclideanDistance extends LPIntegerNormDistance {
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+    if(dim1 == dim2) {
+      // Fast paths: use the vector kernels on the underlying arrays.
+      if(v1 instanceof DoubleVector && v2 instanceof DoubleVector) {
+        return FastMath.sqrt(VectorKernels.KERNELS.squaredEuclidean(((DoubleVector) v1).getValues(), ((DoubleVector) v2).getValues()));
+      }
+      if(v1 instanceof FloatVector && v2 instanceof FloatVector) {
+        return FastMath.sqrt(VectorKernels.KERNELS.squaredEuclidean(((FloatVector) v1).getValues(), ((FloatVector) v2).getValues()));
+      }
+      if(v1 instanceof VectorBlock.Row || v2 instanceof VectorBlock.Row) {
+        // Read the contiguous vector block directly.
+        return FastMath.sqrt(v1 instanceof VectorBlock.Row ? ((VectorBlock.Row) v1).squaredEuclidean(v2) : ((VectorBlock.Row) v2).squaredEuclidean(v1));
+      }
+    }
     final int mindim = dim1 < dim2 ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
     if(dim1 > mindim) {
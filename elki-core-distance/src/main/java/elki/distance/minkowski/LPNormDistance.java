@@ -20,12 +20,15 @@
  */
 package elki.distance.minkowski;
 
+import elki.data.DoubleVector;
+import elki.data.FloatVector;
 import elki.data.NumberVector;
 import elki.data.spatial.SpatialComparable;
 import elki.data.type.SimpleTypeInformation;
 import elki.distance.Norm;
 import elki.distance.NumberVectorDistance;
 import elki.distance.SpatialPrimitiveDistance;
+import elki.distance.VectorKernels;
 import elki.utilities.Alias;
 import elki.utilities.Priority;
 import elki.utilities.optionhandling.Parameterizer;
@@ -174,6 +177,14 @@ public class LPNormDistance implements SpatialPrimitiveDistance<NumberVector>, N
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+    if(dim1 == dim2) {
+      if(v1 instanceof DoubleVector && v2 instanceof DoubleVector) {
+        return FastMath.pow(VectorKernels.KERNELS.lpPowerSum(((DoubleVector) v1).getValues(), ((DoubleVector) v2).getValues(), p), invp);
+      }
+      if(v1 instanceof FloatVector && v2 instanceof FloatVector) {
+        return FastMath.pow(VectorKernels.KERNELS.lpPowerSum(((FloatVector) v1).getValues(), ((FloatVector) v2).getValues(), p), invp);
+      }
+    }
     final int mindim = dim1 < dim2 ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
     if(dim1 > mindim) {
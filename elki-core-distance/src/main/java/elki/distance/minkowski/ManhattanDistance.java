@@ -20,8 +20,11 @@
  */
 package elki.distance.minkowski;
 
+import elki.data.DoubleVector;
+import elki.data.FloatVector;
 import elki.data.NumberVector;
 import elki.data.spatial.SpatialComparable;
+import elki.distance.VectorKernels;
 import elki.utilities.Alias;
 import elki.utilities.optionhandling.Parameterizer;
 
@@ -111,6 +114,14 @@ public class ManhattanDistance extends LPIntegerNormDistance {
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+    if(dim1 == dim2) {
+      if(v1 instanceof DoubleVector && v2 instanceof DoubleVector) {
+        return VectorKernels.KERNELS.manhattan(((DoubleVector) v1).getValues(), ((DoubleVector) v2).getValues());
+      }
+      if(v1 instanceof FloatVector && v2 instanceof FloatVector) {
+        return VectorKernels.KERNELS.manhattan(((FloatVector) v1).getValues(), ((FloatVector) v2).getValues());
+      }
+    }
     final int mindim = dim1 < dim2 ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
     if(dim1 > mindim) {
@@ -20,8 +20,11 @@
  */
 package elki.distance.minkowski;
 
+import elki.data.DoubleVector;
+import elki.data.FloatVector;
 import elki.data.NumberVector;
 import elki.data.SparseNumberVector;
+import elki.data.VectorBlock;
 import elki.data.spatial.SpatialComparable;
 import elki.data.type.SimpleTypeInformation;
 import elki.distance.*;
@@ -132,6 +135,19 @@ public class SquaredEuclideanDistance extends AbstractNumberVectorDistance imple
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+    if(dim1 == dim2) {
+      // Fast paths: use the vector kernels on the underlying arrays.
+      if(v1 instanceof DoubleVector && v2 instanceof DoubleVector) {
+        return VectorKernels.KERNELS.squaredEuclidean(((DoubleVector) v1).getValues(), ((DoubleVector) v2).getValues());
+      }
+      if(v1 instanceof FloatVector && v2 instanceof FloatVector) {
+        return VectorKernels.KERNELS.squaredEuclidean(((FloatVector) v1).getValues(), ((FloatVector) v2).getValues());
+      }
+      if(v1 instanceof VectorBlock.Row || v2 instanceof VectorBlock.Row) {
+        // Read the contiguous vector block directly.
+        return v1 instanceof VectorBlock.Row ? ((VectorBlock.Row) v1).squaredEuclidean(v2) : ((VectorBlock.Row) v2).squaredEuclidean(v1);
+      }
+    }
     final int mindim = dim1 < dim2 ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
     if(dim1 > mindim) {
@@ -148,6 +164,9 @@ public class SquaredEuclideanDistance extends AbstractNumberVectorDistance imple
    */
   public double distance(double[] v1, double[] v2) {
     final int dim1 = v1.length, dim2 = v2.length;
+    if(dim1 == dim2) {
+      return VectorKernels.KERNELS.squaredEuclidean(v1, v2);
+    }
     final int mindim = dim1 < dim2 ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
     if(dim1 > mindim) {
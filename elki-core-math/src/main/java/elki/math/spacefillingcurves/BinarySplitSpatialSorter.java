@@ -22,6 +22,7 @@ package elki.math.spacefillingcurves;
 
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
 
 import elki.data.spatial.SpatialComparable;
 import elki.utilities.datastructures.QuickSelect;
@@ -58,6 +59,12 @@ public class BinarySplitSpatialSorter implements SpatialSorter {
    */
   public static final BinarySplitSpatialSorter STATIC = new BinarySplitSpatialSorter();
 
+  /**
+   * Minimum partition size to sort in a separate task, when running in a
+   * fork-join pool.
+   */
+  private static final int PARALLEL_MIN = 4096;
+
   /**
    * Constructor, use {@link #STATIC} instead!
    */
@@ -88,14 +95,23 @@ public class BinarySplitSpatialSorter implements SpatialSorter {
     // Make invariant
     comp.setDimension(dims != null ? dims[depth] : depth);
     QuickSelect.quickSelect(objs, comp, start, end, mid);
-    // Recurse
+    // Recurse, sorting large halves in parallel when in a fork-join pool
     final int nextdim = (depth + 1) % numdim;
+    ForkJoinTask<?> task = null;
     if(start < mid - 1) {
-      binarySplitSort(objs, start, mid, nextdim, numdim, dims, comp);
+      if(mid - start >= PARALLEL_MIN && ForkJoinTask.inForkJoinPool()) {
+        task = ForkJoinTask.adapt(() -> binarySplitSort(objs, start, mid, nextdim, numdim, dims, new Sorter(0))).fork();
+      }
+      else {
+        binarySplitSort(objs, start, mid, nextdim, numdim, dims, comp);
+      }
     }
     if(mid + 2 < end) {
       binarySplitSort(objs, mid + 1, end, nextdim, numdim, dims, comp);
     }
+    if(task != null) {
+      task.join();
+    }
   }
 
   /**
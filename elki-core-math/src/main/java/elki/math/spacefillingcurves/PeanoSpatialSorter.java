@@ -23,6 +23,7 @@ package elki.math.spacefillingcurves;
 import static elki.math.spacefillingcurves.ZCurveSpatialSorter.pivotizeList1D;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
 
 import elki.data.spatial.SpatialComparable;
 import elki.utilities.datastructures.BitsUtil;
@@ -81,6 +82,12 @@ public class PeanoSpatialSorter implements SpatialSorter {
    */
   public static final PeanoSpatialSorter STATIC = new PeanoSpatialSorter();
 
+  /**
+   * Minimum partition size to sort in a separate task, when running in a
+   * fork-join pool.
+   */
+  private static final int PARALLEL_MIN = 4096;
+
   /**
    * Constructor, use {@link #STATIC} instead.
    */
@@ -138,17 +145,33 @@ public class PeanoSpatialSorter implements SpatialSorter {
       ssplit = (fsplit < end - 1) ? pivotizeList1D(objs, fsplit, end, edim, tfirst, true) : fsplit;
     }
     int nextdim = (depth + 1) % numdim;
+    final boolean fork = end - start >= PARALLEL_MIN && ForkJoinTask.inForkJoinPool();
+    ForkJoinTask<?> task1 = null, task2 = null;
     // Do we need to update the min/max values?
     if(start < fsplit - 1) {
       mms[2 * edim] = !inv ? min : tsecond;
       mms[2 * edim + 1] = !inv ? tfirst : max;
-      peanoSort(objs, start, fsplit, mms, dims, nextdim, bits, desc);
+      if(fork && fsplit - start >= PARALLEL_MIN) {
+        final double[] mms2 = mms.clone();
+        final long[] bits2 = bits.clone();
+        task1 = ForkJoinTask.adapt(() -> peanoSort(objs, start, fsplit, mms2, dims, nextdim, bits2, desc)).fork();
+      }
+      else {
+        peanoSort(objs, start, fsplit, mms, dims, nextdim, bits, desc);
+      }
     }
     if(fsplit < ssplit - 1) {
       BitsUtil.flipI(bits, edim); // set (all but dim: we also flip "desc")
       mms[2 * edim] = tfirst;
       mms[2 * edim + 1] = tsecond;
-      peanoSort(objs, fsplit, ssplit, mms, dims, nextdim, bits, !desc);
+      if(fork && ssplit - fsplit >= PARALLEL_MIN) {
+        final double[] mms2 = mms.clone();
+        final long[] bits2 = bits.clone();
+        task2 = ForkJoinTask.adapt(() -> peanoSort(objs, fsplit, ssplit, mms2, dims, nextdim, bits2, !desc)).fork();
+      }
+      else {
+        peanoSort(objs, fsplit, ssplit, mms, dims, nextdim, bits, !desc);
+      }
       BitsUtil.flipI(bits, edim);
     }
     if(ssplit < end - 1) {
@@ -156,6 +179,12 @@ public class PeanoSpatialSorter implements SpatialSorter {
       mms[2 * edim + 1] = !inv ? max : tfirst;
       peanoSort(objs, ssplit, end, mms, dims, nextdim, bits, desc);
     }
+    if(task1 != null) {
+      task1.join();
+    }
+    if(task2 != null) {
+      task2.join();
+    }
     // Restore ranges
     mms[2 * edim] = min;
     mms[2 * edim + 1] = max;
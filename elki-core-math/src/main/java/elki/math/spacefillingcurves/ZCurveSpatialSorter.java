@@ -21,6 +21,7 @@
 package elki.math.spacefillingcurves;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
 
 import elki.data.spatial.SpatialComparable;
 import elki.utilities.optionhandling.Parameterizer;
@@ -43,6 +44,12 @@ public class ZCurveSpatialSorter implements SpatialSorter {
    */
   private static final double STOPVAL = 1E-10;
 
+  /**
+   * Minimum partition size to sort in a separate task, when running in a
+   * fork-join pool.
+   */
+  private static final int PARALLEL_MIN = 4096;
+
   /**
    * Constructor, use {@link #STATIC} instead.
    */
@@ -88,16 +95,26 @@ public class ZCurveSpatialSorter implements SpatialSorter {
     int split = pivotizeList1D(objs, start, end, edim, spos, false);
     assert (start <= split && split <= end);
     int nextdim = (depth + 1) % numdim;
+    ForkJoinTask<?> task = null;
     if(start < split - 1) {
       mms[2 * edim] = min;
       mms[2 * edim + 1] = spos;
-      zSort(objs, start, split, mms, dims, nextdim);
+      if(split - start >= PARALLEL_MIN && ForkJoinTask.inForkJoinPool()) {
+        final double[] mms2 = mms.clone();
+        task = ForkJoinTask.adapt(() -> zSort(objs, start, split, mms2, dims, nextdim)).fork();
+      }
+      else {
+        zSort(objs, start, split, mms, dims, nextdim);
+      }
     }
     if(split < end - 1) {
       mms[2 * edim] = spos;
       mms[2 * edim + 1] = max;
       zSort(objs, split, end, mms, dims, nextdim);
     }
+    if(task != null) {
+      task.join();
+    }
     // Restore ranges
     mms[2 * edim] = min;
     mms[2 * edim + 1] = max;
@@ -46,6 +46,11 @@ public class ParallelCore {
    */
   private volatile ThreadPoolExecutor executor;
 
+  /**
+   * Work-stealing pool, created on demand.
+   */
+  private volatile ForkJoinPool forkjoin;
+
   /**
    * Number of connected submitters.
    */
@@ -93,6 +98,26 @@ public class ParallelCore {
     return executor.submit(task);
   }
 
+  /**
+   * Get the work-stealing pool, which uses the same parallelism.
+   * <p>
+   * The pool threads are daemon threads, and terminate when idle; so this pool
+   * does not need {@link #connect()} and {@link #disconnect()}.
+   * 
+   * @return Fork-join pool
+   */
+  public ForkJoinPool getForkJoinPool() {
+    ForkJoinPool pool = forkjoin;
+    if(pool == null) {
+      synchronized(this) {
+        if((pool = forkjoin) == null) {
+          forkjoin = pool = new ForkJoinPool(processors);
+        }
+      }
+    }
+    return pool;
+  }
+
   /**
    * Connect to the executor.
    */
@@ -25,28 +25,50 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
 import elki.database.ids.ArrayDBIDs;
 import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
 import elki.parallel.processor.Processor;
 import elki.parallel.variables.SharedVariable;
 import elki.parallel.variables.SharedVariable.Instance;
 
 /**
  * Class to run processors in parallel, on all available cores.
- *
- * TODO: add progress
+ * <p>
+ * Two strategies are available: {@link #run} splits the data into a fixed
+ * number of blocks up front, which works well when all objects have similar
+ * cost. {@link #runWorkStealing} uses a fork-join pool, and splits the data
+ * recursively only while other threads may be idle; threads that finish early
+ * steal the remaining work of slower threads. This is preferable when the cost
+ * per object is skewed, e.g., for range queries in dense and sparse regions.
  *
  * @author Erich Schubert
  * @since 0.7.0
  *
  * @has - - - BlockArrayRunner
+ * @has - - - WorkStealingTask
+ * @has - - - RangeWorkStealingTask
  * @assoc - - - ParallelCore
  */
 public final class ParallelExecutor {
+  /**
+   * Default minimum number of objects processed in one chunk by
+   * {@link #runWorkStealing}.
+   */
+  public static final int DEFAULT_MIN_GRAIN = 16;
+
+  /**
+   * Number of surplus queued tasks at which we stop splitting.
+   */
+  private static final int SURPLUS_TASKS = 2;
+
   /**
    * Private constructor. Static methods only.
    */
@@ -95,6 +117,128 @@ public final class ParallelExecutor {
     }
   }
 
+  /**
+   * Run a task on all available CPUs, using work stealing and adaptive chunk
+   * sizes.
+   *
+   * @param ids IDs to process
+   * @param procs Processors to run
+   */
+  public static void runWorkStealing(DBIDs ids, Processor... procs) {
+    runWorkStealing(ids, DEFAULT_MIN_GRAIN, null, null, procs);
+  }
+
+  /**
+   * Run a task on all available CPUs, using work stealing and adaptive chunk
+   * sizes.
+   *
+   * @param ids IDs to process
+   * @param mingrain Minimum number of objects per chunk
+   * @param prog Progress to increment after each chunk (may be {@code null})
+   * @param log Logger to report progress to
+   * @param procs Processors to run
+   */
+  public static void runWorkStealing(DBIDs ids, int mingrain, FiniteProgress prog, Logging log, Processor... procs) {
+    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    if(aids.size() == 0) {
+      return;
+    }
+    ParallelCore.getCore().getForkJoinPool().invoke(new WorkStealingTask(aids, 0, aids.size(), Math.max(1, mingrain), prog, log, procs));
+  }
+
+  /**
+   * Process a range of offsets on all available CPUs, using work stealing and
+   * adaptive chunk sizes (c.f. {@link #runWorkStealing(DBIDs, Processor...)}),
+   * and wait for all chunks to finish.
+   *
+   * @param size Data size
+   * @param mingrain Minimum number of offsets per chunk
+   * @param task Range task
+   */
+  public static void runWorkStealing(int size, int mingrain, RangeTask task) {
+    if(size == 0) {
+      return;
+    }
+    ParallelCore.getCore().getForkJoinPool().invoke(new RangeWorkStealingTask(0, size, Math.max(1, mingrain), task));
+  }
+
+  /**
+   * Choose the number of blocks for {@link #runBlocks}: one per thread, but
+   * not less than the minimum block size (except for a single block).
+   * <p>
+   * The result only depends on the data size and the parallelism, so that
+   * merging per-block results in block order is reproducible.
+   *
+   * @param size Data size
+   * @param minblocksize Minimum block size
+   * @return Number of blocks, at least 1
+   */
+  public static int numBlocks(int size, int minblocksize) {
+    return Math.max(1, Math.min(ParallelCore.getCore().getParallelism(), size / Math.max(1, minblocksize)));
+  }
+
+  /**
+   * Process a range of offsets in a fixed number of contiguous blocks, using
+   * the fork-join pool, and wait for all blocks to finish.
+   * <p>
+   * Block {@code b} covers the offsets {@code [size*b/nblocks,
+   * size*(b+1)/nblocks)}. A single block is processed in the calling thread.
+   *
+   * @param size Data size
+   * @param nblocks Number of blocks, e.g., from {@link #numBlocks}
+   * @param task Block task
+   */
+  public static void runBlocks(int size, int nblocks, BlockTask task) {
+    if(nblocks <= 1) {
+      task.process(0, 0, size);
+      return;
+    }
+    ParallelCore.getCore().getForkJoinPool().invoke(ForkJoinTask.adapt(() -> {
+      List<ForkJoinTask<?>> tasks = new ArrayList<>(nblocks - 1);
+      for(int b = 1; b < nblocks; b++) {
+        final int block = b, start = (int) ((size * (long) b) / nblocks), end = (int) ((size * (long) (b + 1)) / nblocks);
+        tasks.add(ForkJoinTask.adapt(() -> task.process(block, start, end)).fork());
+      }
+      task.process(0, 0, (int) (size / (long) nblocks));
+      for(ForkJoinTask<?> t : tasks) {
+        t.join();
+      }
+    }));
+  }
+
+  /**
+   * Task processing one block of {@link #runBlocks}.
+   *
+   * @author Erich Schubert
+   */
+  @FunctionalInterface
+  public interface BlockTask {
+    /**
+     * Process one block.
+     *
+     * @param block Block number
+     * @param start Start offset (inclusive)
+     * @param end End offset (exclusive)
+     */
+    void process(int block, int start, int end);
+  }
+
+  /**
+   * Task processing a range of {@link #runWorkStealing(int, int, RangeTask)}.
+   *
+   * @author Erich Schubert
+   */
+  @FunctionalInterface
+  public interface RangeTask {
+    /**
+     * Process one range.
+     *
+     * @param start Start offset (inclusive)
+     * @param end End offset (exclusive)
+     */
+    void process(int start, int end);
+  }
+
   /**
    * Run for an array part, without step size.
    *
@@ -172,4 +316,169 @@ public final class ParallelExecutor {
       return inst;
     }
   }
+
+  /**
+   * Fork-join task for an array part.
+   * <p>
+   * As long as there are few queued tasks (i.e., other threads may run out of
+   * work), the upper half of the range is split off and forked, down to the
+   * minimum grain. The remainder is then processed as one block. Large chunks
+   * hence remain large when all threads are busy, and idle threads steal the
+   * forked halves.
+   *
+   * @author Erich Schubert
+   *
+   * @assoc - - - BlockArrayRunner
+   */
+  protected static class WorkStealingTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Array IDs to process
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Start and end position
+     */
+    private int start, end;
+
+    /**
+     * Minimum chunk size.
+     */
+    private int mingrain;
+
+    /**
+     * Progress, may be {@code null}.
+     */
+    private FiniteProgress prog;
+
+    /**
+     * Logger for progress.
+     */
+    private Logging log;
+
+    /**
+     * The processor masters that own the instances.
+     */
+    private Processor[] procs;
+
+    /**
+     * Next forked sibling, to join.
+     */
+    private WorkStealingTask next;
+
+    /**
+     * Constructor.
+     *
+     * @param ids IDs to process
+     * @param start Starting position
+     * @param end End position
+     * @param mingrain Minimum chunk size
+     * @param prog Progress, may be {@code null}
+     * @param log Logger for progress
+     * @param procs Processors to run
+     */
+    protected WorkStealingTask(ArrayDBIDs ids, int start, int end, int mingrain, FiniteProgress prog, Logging log, Processor[] procs) {
+      super();
+      this.ids = ids;
+      this.start = start;
+      this.end = end;
+      this.mingrain = mingrain;
+      this.prog = prog;
+      this.log = log;
+      this.procs = procs;
+    }
+
+    @Override
+    protected void compute() {
+      WorkStealingTask forked = null;
+      int e = end;
+      while(e - start >= mingrain << 1 && getSurplusQueuedTaskCount() <= SURPLUS_TASKS) {
+        final int mid = (start + e) >>> 1;
+        WorkStealingTask right = new WorkStealingTask(ids, mid, e, mingrain, prog, log, procs);
+        right.next = forked;
+        (forked = right).fork();
+        e = mid;
+      }
+      new BlockArrayRunner(ids, start, e, procs).call();
+      if(prog != null) {
+        prog.incrementProcessed(e - start, log);
+      }
+      for(; forked != null; forked = forked.next) {
+        forked.join();
+      }
+    }
+  }
+
+  /**
+   * Fork-join task for a range of offsets, splitting like
+   * {@link WorkStealingTask}.
+   *
+   * @author Erich Schubert
+   *
+   * @assoc - - - RangeTask
+   */
+  protected static class RangeWorkStealingTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Start and end position
+     */
+    private int start, end;
+
+    /**
+     * Minimum chunk size.
+     */
+    private int mingrain;
+
+    /**
+     * Task to run.
+     */
+    private RangeTask task;
+
+    /**
+     * Next forked sibling, to join.
+     */
+    private RangeWorkStealingTask next;
+
+    /**
+     * Constructor.
+     *
+     * @param start Starting position
+     * @param end End position
+     * @param mingrain Minimum chunk size
+     * @param task Task to run
+     */
+    protected RangeWorkStealingTask(int start, int end, int mingrain, RangeTask task) {
+      super();
+      this.start = start;
+      this.end = end;
+      this.mingrain = mingrain;
+      this.task = task;
+    }
+
+    @Override
+    protected void compute() {
+      RangeWorkStealingTask forked = null;
+      int e = end;
+      while(e - start >= mingrain << 1 && getSurplusQueuedTaskCount() <= SURPLUS_TASKS) {
+        final int mid = (start + e) >>> 1;
+        RangeWorkStealingTask right = new RangeWorkStealingTask(mid, e, mingrain, task);
+        right.next = forked;
+        (forked = right).fork();
+        e = mid;
+      }
+      task.process(start, e);
+      for(; forked != null; forked = forked.next) {
+        forked.join();
+      }
+    }
+  }
 }
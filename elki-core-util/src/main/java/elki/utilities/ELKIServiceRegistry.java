@@ -206,6 +206,11 @@ public class ELKIServiceRegistry {
     catch(ClassNotFoundException e) {
       return null;
     }
+    catch(LinkageError e) {
+      // E.g., compiled for a newer Java version than we are running on.
+      LOG.verbose("Class " + value + " cannot be loaded: " + e.toString());
+      return null;
+    }
   }
 
   /**
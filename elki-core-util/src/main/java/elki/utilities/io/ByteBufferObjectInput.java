@@ -0,0 +1,201 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.utilities.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read {@link Externalizable} data directly from a {@link ByteBuffer}, without
+ * copying the data into a temporary array first. This is the counterpart to
+ * {@link ByteBufferObjectOutput}.
+ * <p>
+ * Primitive values are read directly from the buffer. Strings are stored as
+ * an unsigned short length followed by UTF-8 bytes, and objects fall back to
+ * Java serialization, prefixed with their length. Reading past the end of the
+ * buffer throws an {@link EOFException}, as required by {@link DataInput}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ByteBufferObjectInput implements ObjectInput {
+  /**
+   * The buffer to read from.
+   */
+  private final ByteBuffer buffer;
+
+  /**
+   * Constructor.
+   *
+   * @param buffer Buffer to read from, starting at the current position
+   */
+  public ByteBufferObjectInput(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  /**
+   * Ensure that enough bytes remain in the buffer.
+   *
+   * @param n Number of bytes to read
+   * @return Buffer
+   * @throws EOFException if not enough bytes remain
+   */
+  private ByteBuffer require(int n) throws EOFException {
+    if(buffer.remaining() < n) {
+      throw new EOFException();
+    }
+    return buffer;
+  }
+
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    readFully(b, 0, b.length);
+  }
+
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    require(len).get(b, off, len);
+  }
+
+  @Override
+  public int skipBytes(int n) {
+    final int skip = Math.max(0, Math.min(n, buffer.remaining()));
+    buffer.position(buffer.position() + skip);
+    return skip;
+  }
+
+  @Override
+  public boolean readBoolean() throws IOException {
+    return require(1).get() != 0;
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    return require(1).get();
+  }
+
+  @Override
+  public int readUnsignedByte() throws IOException {
+    return require(1).get() & 0xFF;
+  }
+
+  @Override
+  public short readShort() throws IOException {
+    return require(2).getShort();
+  }
+
+  @Override
+  public int readUnsignedShort() throws IOException {
+    return require(2).getShort() & 0xFFFF;
+  }
+
+  @Override
+  public char readChar() throws IOException {
+    return require(2).getChar();
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    return require(4).getInt();
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    return require(8).getLong();
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    return require(4).getFloat();
+  }
+
+  @Override
+  public double readDouble() throws IOException {
+    return require(8).getDouble();
+  }
+
+  @Override
+  public String readLine() {
+    if(!buffer.hasRemaining()) {
+      return null;
+    }
+    StringBuilder buf = new StringBuilder();
+    while(buffer.hasRemaining()) {
+      final char c = (char) (buffer.get() & 0xFF);
+      if(c == '\n') {
+        break;
+      }
+      if(c != '\r') {
+        buf.append(c);
+      }
+    }
+    return buf.toString();
+  }
+
+  @Override
+  public String readUTF() throws IOException {
+    byte[] bytes = new byte[readUnsignedShort()];
+    readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public Object readObject() throws ClassNotFoundException, IOException {
+    byte[] bytes = new byte[readInt()];
+    readFully(bytes);
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return ois.readObject();
+    }
+  }
+
+  @Override
+  public int read() {
+    return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+  }
+
+  @Override
+  public int read(byte[] b) {
+    return read(b, 0, b.length);
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    final int maxread = Math.min(len, buffer.remaining());
+    buffer.get(b, off, maxread);
+    return maxread == 0 && len > 0 ? -1 : maxread;
+  }
+
+  @Override
+  public long skip(long n) {
+    return skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+  }
+
+  @Override
+  public int available() {
+    return buffer.remaining();
+  }
+
+  @Override
+  public void close() {
+    // Nothing to do.
+  }
+}
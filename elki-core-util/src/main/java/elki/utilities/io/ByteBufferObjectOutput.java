@@ -0,0 +1,151 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.utilities.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Write {@link Externalizable} data directly into a {@link ByteBuffer}, without
+ * an intermediate byte array. See {@link ByteBufferObjectInput} for the
+ * encoding used.
+ * <p>
+ * Writing beyond the limit of the buffer causes a
+ * {@link java.nio.BufferOverflowException}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ByteBufferObjectOutput implements ObjectOutput {
+  /**
+   * The buffer to write to.
+   */
+  private final ByteBuffer buffer;
+
+  /**
+   * Constructor.
+   *
+   * @param buffer Buffer to write to, starting at the current position
+   */
+  public ByteBufferObjectOutput(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  @Override
+  public void write(int b) {
+    buffer.put((byte) b);
+  }
+
+  @Override
+  public void write(byte[] b) {
+    buffer.put(b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    buffer.put(b, off, len);
+  }
+
+  @Override
+  public void writeBoolean(boolean v) {
+    buffer.put((byte) (v ? 1 : 0));
+  }
+
+  @Override
+  public void writeByte(int v) {
+    buffer.put((byte) v);
+  }
+
+  @Override
+  public void writeShort(int v) {
+    buffer.putShort((short) v);
+  }
+
+  @Override
+  public void writeChar(int v) {
+    buffer.putChar((char) v);
+  }
+
+  @Override
+  public void writeInt(int v) {
+    buffer.putInt(v);
+  }
+
+  @Override
+  public void writeLong(long v) {
+    buffer.putLong(v);
+  }
+
+  @Override
+  public void writeFloat(float v) {
+    buffer.putFloat(v);
+  }
+
+  @Override
+  public void writeDouble(double v) {
+    buffer.putDouble(v);
+  }
+
+  @Override
+  public void writeBytes(String s) {
+    for(int i = 0; i < s.length(); i++) {
+      buffer.put((byte) s.charAt(i));
+    }
+  }
+
+  @Override
+  public void writeChars(String s) {
+    for(int i = 0; i < s.length(); i++) {
+      buffer.putChar(s.charAt(i));
+    }
+  }
+
+  @Override
+  public void writeUTF(String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    if(bytes.length > 0xFFFF) {
+      throw new UTFDataFormatException("String too long: " + bytes.length + " bytes");
+    }
+    buffer.putShort((short) bytes.length);
+    buffer.put(bytes);
+  }
+
+  @Override
+  public void writeObject(Object obj) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+      oos.writeObject(obj);
+    }
+    buffer.putInt(baos.size());
+    buffer.put(baos.toByteArray());
+  }
+
+  @Override
+  public void flush() {
+    // Nothing to do.
+  }
+
+  @Override
+  public void close() {
+    // Nothing to do.
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.utilities.datastructures.unionfind;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Lock-free union-find for a fixed number of primitive integers, for
+ * concurrent use by multiple threads.
+ * <p>
+ * Components are always linked such that the smaller index becomes the root,
+ * using compare-and-set; {@link #find} uses path-halving. Because of this
+ * linking rule, the root of each component is its smallest element, so the
+ * final result does not depend on the order of the concurrent unions.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ConcurrentUnionFindInteger {
+  /**
+   * Parent element
+   */
+  private final AtomicIntegerArray parent;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of elements
+   */
+  public ConcurrentUnionFindInteger(int size) {
+    parent = new AtomicIntegerArray(size);
+    for(int i = 0; i < size; i++) {
+      parent.lazySet(i, i);
+    }
+  }
+
+  /**
+   * Find the root of an element.
+   *
+   * @param cur Current entry
+   * @return Root entry
+   */
+  public int find(int cur) {
+    while(true) {
+      final int p = parent.get(cur);
+      if(p == cur) {
+        return cur;
+      }
+      final int gp = parent.get(p);
+      if(gp != p) {
+        parent.compareAndSet(cur, p, gp); // Path halving, may fail.
+      }
+      cur = gp;
+    }
+  }
+
+  /**
+   * Join the components of two elements.
+   *
+   * @param first First element
+   * @param second Second element
+   * @return Root of the joined component
+   */
+  public int union(int first, int second) {
+    while(true) {
+      first = find(first);
+      second = find(second);
+      if(first == second) {
+        return first;
+      }
+      // Link the larger root to the smaller root.
+      if(first < second ? parent.compareAndSet(second, second, first) : parent.compareAndSet(first, first, second)) {
+        return first < second ? first : second;
+      }
+    }
+  }
+
+  /**
+   * Test if two components are connected.
+   * <p>
+   * Under concurrent modification, a {@code false} result may already be
+   * outdated, but a {@code true} result remains valid.
+   *
+   * @param first First element
+   * @param second Second element
+   * @return {@code true} if they are in the same component.
+   */
+  public boolean isConnected(int first, int second) {
+    while(true) {
+      first = find(first);
+      second = find(second);
+      if(first == second) {
+        return true;
+      }
+      // Only a root can be linked; if first is still a root, we are done.
+      if(parent.get(first) == first) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Number of elements.
+   *
+   * @return Size
+   */
+  public int size() {
+    return parent.length();
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.utilities.datastructures.unionfind;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+/**
+ * Unit test for the concurrent union find.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ConcurrentUnionFindIntegerTest {
+  @Test
+  public void testBruteForce() {
+    final Random r = new Random(0L);
+    final int size = 100;
+    ConcurrentUnionFindInteger uf = new ConcurrentUnionFindInteger(size);
+    int[] c = new int[size];
+    for(int i = 0; i < size; i++) {
+      c[i] = i;
+    }
+    int numc = size;
+    while(numc > 1) {
+      // Two randoms, with o1 < o2
+      int o2 = r.nextInt(size - 1) + 1, o1 = r.nextInt(o2);
+      final int c1 = c[o1], c2 = c[o2];
+      assertEquals(c1 == c2, uf.isConnected(o1, o2));
+      uf.union(o1, o2); // always
+      if(c1 != c2) {
+        for(int j = 0; j < size; j++) {
+          if(c[j] == c1) {
+            c[j] = c2;
+          }
+        }
+        --numc;
+      }
+    }
+    // The root is always the smallest element.
+    for(int i = 0; i < size; i++) {
+      assertEquals(0, uf.find(i));
+    }
+  }
+
+  @Test
+  public void testConcurrent() {
+    final int size = 100000;
+    ConcurrentUnionFindInteger uf = new ConcurrentUnionFindInteger(size);
+    // Join all elements of the same residue modulo 7, in parallel:
+    IntStream.range(7, size).parallel().forEach(i -> uf.union(i, i - 7));
+    for(int i = 0; i < size; i++) {
+      assertEquals(i % 7, uf.find(i));
+    }
+  }
+}
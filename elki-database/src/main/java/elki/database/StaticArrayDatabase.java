@@ -20,19 +20,29 @@
  */
 package elki.database;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
+import elki.data.NumberVector;
+import elki.data.SparseNumberVector;
+import elki.data.VectorBlock;
 import elki.data.type.SimpleTypeInformation;
+import elki.data.type.VectorFieldTypeInformation;
 import elki.database.datastore.DataStoreFactory;
 import elki.database.datastore.DataStoreUtil;
 import elki.database.datastore.WritableDataStore;
 import elki.database.ids.ArrayStaticDBIDs;
 import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDRange;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
 import elki.database.relation.DBIDView;
 import elki.database.relation.MaterializedRelation;
 import elki.database.relation.Relation;
+import elki.database.relation.VectorBlockRelation;
 import elki.datasource.DatabaseConnection;
 import elki.datasource.FileBasedDatabaseConnection;
 import elki.datasource.bundle.MultipleObjectsBundle;
@@ -42,7 +52,11 @@ import elki.logging.Logging;
 import elki.logging.statistics.Duration;
 import elki.result.Metadata;
 import elki.utilities.documentation.Description;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.EnumParameter;
+import elki.utilities.optionhandling.parameters.FileParameter;
 import elki.utilities.optionhandling.parameters.ObjectListParameter;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -58,6 +72,7 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
  * @opt nodefillcolor LemonChiffon
  * @composed - - - ArrayStaticDBIDs
  * @assoc - - - DatabaseConnection
+ * @assoc - - - VectorBlockRelation
  */
 @Description("Database using an in-memory hashtable and at least providing linear scans.")
 public class StaticArrayDatabase extends AbstractDatabase {
@@ -81,6 +96,36 @@ public class StaticArrayDatabase extends AbstractDatabase {
    */
   protected DatabaseConnection databaseConnection;
 
+  /**
+   * Storage layout for numerical vector relations.
+   *
+   * @author Erich Schubert
+   */
+  public enum VectorStorage {
+    /**
+     * Store one vector object per record (default).
+     */
+    OBJECTS,
+    /**
+     * Store all vectors in a contiguous block of doubles.
+     */
+    DOUBLE_BLOCK,
+    /**
+     * Store all vectors in a contiguous block of floats.
+     */
+    FLOAT_BLOCK,
+  }
+
+  /**
+   * Storage layout for numerical vector relations.
+   */
+  protected VectorStorage storage;
+
+  /**
+   * File to memory-map vector blocks to, may be {@code null}.
+   */
+  protected File blockfile;
+
   /**
    * Constructor.
    *
@@ -88,10 +133,24 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @param indexFactories Indexes to add
    */
   public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<? extends IndexFactory<?>> indexFactories) {
+    this(databaseConnection, indexFactories, VectorStorage.OBJECTS, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param storage Storage layout for numerical vectors
+   * @param blockfile File to memory-map vector blocks to, may be {@code null}
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<? extends IndexFactory<?>> indexFactories, VectorStorage storage, File blockfile) {
     super();
     this.databaseConnection = databaseConnection;
     this.ids = null;
     this.idrep = null;
+    this.storage = storage;
+    this.blockfile = blockfile;
 
     // Add indexes.
     if(indexFactories != null) {
@@ -105,7 +164,7 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @param databaseConnection Database connection to get the initial data from.
    */
   public StaticArrayDatabase(DatabaseConnection databaseConnection) {
-    this(databaseConnection, null);
+    this(databaseConnection, null, VectorStorage.OBJECTS, null);
   }
 
   /**
@@ -150,17 +209,22 @@ public class StaticArrayDatabase extends AbstractDatabase {
       SimpleTypeInformation<?> meta = bundle.meta(i);
       @SuppressWarnings("unchecked")
       SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
-      WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
-      for(it.seek(0); it.valid(); it.advance()) {
-        store.put(it, bundle.data(it.getOffset(), i));
+      Relation<?> relation = useVectorBlock(meta) ? //
+          makeVectorBlockRelation(bundle, i, (VectorFieldTypeInformation<?>) meta, blockfile == null ? null : //
+              numrel > 1 ? new File(blockfile.getPath() + "." + i) : blockfile) : null;
+      if(relation == null) {
+        WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
+        for(it.seek(0); it.valid(); it.advance()) {
+          store.put(it, bundle.data(it.getOffset(), i));
+        }
+        relation = new MaterializedRelation<>(null, ometa, ids, store);
       }
-      Relation<?> relation = new MaterializedRelation<>(null, ometa, ids, store);
       relations.add(relation);
       Metadata.hierarchyOf(this).addChild(relation);
 
       // Try to add indexes where appropriate
       for(IndexFactory<?> factory : indexFactories) {
-        if(factory.getInputTypeRestriction().isAssignableFromType(ometa)) {
+        if(factory.getInputTypeRestriction().isAssignableFromType(relation.getDataTypeInformation())) {
           @SuppressWarnings("unchecked")
           final IndexFactory<Object> ofact = (IndexFactory<Object>) factory;
           @SuppressWarnings("unchecked")
@@ -180,6 +244,58 @@ public class StaticArrayDatabase extends AbstractDatabase {
     eventManager.fireObjectsInserted(ids);
   }
 
+  /**
+   * Test whether a relation should be stored in a vector block.
+   *
+   * @param meta Type information
+   * @return {@code true} if a vector block should be used
+   */
+  private boolean useVectorBlock(SimpleTypeInformation<?> meta) {
+    return storage != VectorStorage.OBJECTS && ids instanceof DBIDRange //
+        && meta instanceof VectorFieldTypeInformation //
+        && NumberVector.class.isAssignableFrom(meta.getRestrictionClass()) //
+        && !SparseNumberVector.class.isAssignableFrom(meta.getRestrictionClass()) //
+        && ((VectorFieldTypeInformation<?>) meta).getDimensionality() > 0;
+  }
+
+  /**
+   * Build a relation backed by a contiguous vector block.
+   * <p>
+   * To not keep all vectors twice in memory, they are removed from the bundle
+   * while copying (unless the column cannot be modified), so the bundle must
+   * not be used for this column afterwards.
+   *
+   * @param bundle Data bundle
+   * @param col Column in the bundle
+   * @param meta Type information
+   * @param file File to memory-map, may be {@code null}
+   * @return Relation
+   */
+  private Relation<?> makeVectorBlockRelation(MultipleObjectsBundle bundle, int col, VectorFieldTypeInformation<?> meta, File file) {
+    final int dim = meta.getDimensionality();
+    final boolean useFloat = storage == VectorStorage.FLOAT_BLOCK;
+    VectorBlock block;
+    try {
+      block = file != null ? VectorBlock.map(file, ids.size(), dim, useFloat) : VectorBlock.allocate(ids.size(), dim, useFloat);
+    }
+    catch(IOException e) {
+      throw new AbortException("Could not map vector block file " + file, e);
+    }
+    @SuppressWarnings("unchecked")
+    final List<Object> column = (List<Object>) bundle.getColumn(col);
+    final boolean release = column instanceof ArrayList;
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final int off = it.getOffset();
+      block.set(off, (NumberVector) column.get(off));
+      if(release) {
+        column.set(off, null); // Allow garbage collection early
+      }
+    }
+    @SuppressWarnings("unchecked")
+    final VectorFieldTypeInformation<? extends NumberVector> vmeta = (VectorFieldTypeInformation<? extends NumberVector>) meta;
+    return new VectorBlockRelation(null, (DBIDRange) ids, block, vmeta);
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -191,11 +307,31 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @author Erich Schubert
    */
   public static class Par extends AbstractDatabase.Par {
+    /**
+     * Storage layout for numerical vectors.
+     */
+    public static final OptionID VECTOR_STORAGE_ID = new OptionID("db.vectors", "Storage layout for numerical vector relations. Block storage keeps all vectors in one contiguous off-heap block.");
+
+    /**
+     * File to memory-map vector blocks to.
+     */
+    public static final OptionID BLOCK_FILE_ID = new OptionID("db.vectors.file", "File to memory-map vector blocks to, instead of allocating them off-heap.");
+
     /**
      * Holds the database connection to get the initial data from.
      */
     protected DatabaseConnection databaseConnection = null;
 
+    /**
+     * Storage layout for numerical vectors.
+     */
+    protected VectorStorage storage = VectorStorage.OBJECTS;
+
+    /**
+     * File to memory-map vector blocks to.
+     */
+    protected File blockfile = null;
+
     /**
      * Indexes to add.
      */
@@ -211,11 +347,18 @@ public class StaticArrayDatabase extends AbstractDatabase {
       new ObjectListParameter<IndexFactory<?>>(INDEX_ID, IndexFactory.class) //
           .setOptional(true) //
           .grab(config, x -> indexFactories = x);
+      new EnumParameter<VectorStorage>(VECTOR_STORAGE_ID, VectorStorage.class, VectorStorage.OBJECTS) //
+          .grab(config, x -> storage = x);
+      if(storage != VectorStorage.OBJECTS) {
+        new FileParameter(BLOCK_FILE_ID, FileParameter.FileType.OUTPUT_FILE) //
+            .setOptional(true) //
+            .grab(config, x -> blockfile = new File(x));
+      }
     }
 
     @Override
     public StaticArrayDatabase make() {
-      return new StaticArrayDatabase(databaseConnection, indexFactories);
+      return new StaticArrayDatabase(databaseConnection, indexFactories, storage, blockfile);
     }
   }
 }
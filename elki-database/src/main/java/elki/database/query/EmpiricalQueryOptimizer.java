@@ -29,10 +29,13 @@ import elki.data.type.TypeUtil;
 import elki.database.ids.DBIDRange;
 import elki.database.ids.DBIDRef;
 import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.BatchKNNSearcher;
 import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.BatchRangeSearcher;
 import elki.database.query.range.RangeSearcher;
 import elki.database.relation.Relation;
 import elki.distance.Distance;
+import elki.distance.SpatialPrimitiveDistance;
 import elki.distance.minkowski.LPNormDistance;
 import elki.distance.minkowski.SquaredEuclideanDistance;
 import elki.index.*;
@@ -72,6 +75,11 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
    */
   private final Constructor<? extends Index> coverIndex;
 
+  /**
+   * VP-tree index class.
+   */
+  private final Constructor<? extends Index> vpIndex;
+
   /**
    * k-d-tree index class.
    */
@@ -121,6 +129,19 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
     }
     this.coverIndex = coverIndex;
     //
+    Constructor<? extends Index> vpIndex = null;
+    try {
+      Class<?> cls = this.getClass().getClassLoader().loadClass("elki.index.tree.metrical.vptree.VPTree");
+      vpIndex = (Constructor<? extends Index>) cls.getConstructor(Relation.class, Distance.class);
+    }
+    catch(ClassNotFoundException e) {
+      LOG.verbose("VPTree is not available, and cannot be automatically used for optimization.");
+    }
+    catch(NoSuchMethodException | SecurityException e) {
+      LOG.exception(e);
+    }
+    this.vpIndex = vpIndex;
+    //
     Constructor<? extends Index> kdIndex = null;
     try {
       Class<?> cls = this.getClass().getClassLoader().loadClass("elki.index.tree.spatial.kd.SmallMemoryKDTree");
@@ -153,7 +174,7 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
   @Override
   @SuppressWarnings("unchecked")
   public <O> KNNSearcher<O> kNNByObject(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int maxk, int flags) {
-    KNNIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
+    KNNIndex<O> idx = makeMetricIndex(relation, distanceQuery.getDistance());
     if(idx == null) { // Try k-d-tree for squared Euclidean mostly
       idx = makeKDTree(relation, distanceQuery.getDistance());
     }
@@ -195,7 +216,7 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
   @Override
   @SuppressWarnings("unchecked")
   public <O> KNNSearcher<DBIDRef> kNNByDBID(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int maxk, int flags) {
-    KNNIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
+    KNNIndex<O> idx = makeMetricIndex(relation, distanceQuery.getDistance());
     if(idx == null) { // Try k-d-tree for squared Euclidean mostly
       idx = makeKDTree(relation, distanceQuery.getDistance());
     }
@@ -237,9 +258,44 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
     return null;
   }
 
+  @Override
+  public <O> KNNIndex<O> kNNIndex(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    if((flags & QueryBuilder.FLAG_PRECOMPUTE) != 0) {
+      return null; // Use kNNByDBID to obtain a preprocessor instead.
+    }
+    KNNIndex<O> idx = makeMetricIndex(relation, distanceQuery.getDistance());
+    if(idx == null) { // Try k-d-tree for squared Euclidean mostly
+      idx = makeKDTree(relation, distanceQuery.getDistance());
+    }
+    if(idx != null && (flags & QueryBuilder.FLAG_NO_CACHE) == 0) {
+      Metadata.hierarchyOf(relation).addWeakChild(idx);
+    }
+    return idx;
+  }
+
+  @Override
+  public <O> BatchKNNSearcher batchKNNByDBID(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    if((flags & QueryBuilder.FLAG_PRECOMPUTE) != 0) {
+      return null; // Precomputed kNN will be served by single lookups.
+    }
+    // The VP-tree does not support batch queries, use a cover tree instead:
+    KNNIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
+    if(idx == null) { // Try k-d-tree for squared Euclidean mostly
+      idx = makeKDTree(relation, distanceQuery.getDistance());
+    }
+    if(idx == null) {
+      return null;
+    }
+    BatchKNNSearcher q = idx.batchKNNByDBID(distanceQuery, maxk, flags);
+    if(q != null && (flags & QueryBuilder.FLAG_NO_CACHE) == 0) {
+      Metadata.hierarchyOf(relation).addWeakChild(idx);
+    }
+    return q;
+  }
+
   @Override
   public <O> RangeSearcher<O> rangeByObject(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, double maxrange, int flags) {
-    RangeIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
+    RangeIndex<O> idx = makeMetricIndex(relation, distanceQuery.getDistance());
     if(idx == null) { // Try k-d-tree for squared Euclidean mostly
       idx = makeKDTree(relation, distanceQuery.getDistance());
     }
@@ -254,7 +310,7 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
 
   @Override
   public <O> RangeSearcher<DBIDRef> rangeByDBID(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, double maxrange, int flags) {
-    RangeIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
+    RangeIndex<O> idx = makeMetricIndex(relation, distanceQuery.getDistance());
     if(idx == null) { // Try k-d-tree for squared Euclidean mostly
       idx = makeKDTree(relation, distanceQuery.getDistance());
     }
@@ -270,9 +326,29 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
     return idx.rangeByDBID(distanceQuery, maxrange, flags);
   }
 
+  @Override
+  public <O> BatchRangeSearcher batchRangeByDBID(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    if((flags & QueryBuilder.FLAG_PRECOMPUTE) != 0) {
+      return null; // Precomputed ranges will be served by single lookups.
+    }
+    // The VP-tree does not support batch queries, use a cover tree instead:
+    RangeIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
+    if(idx == null) { // Try k-d-tree for squared Euclidean mostly
+      idx = makeKDTree(relation, distanceQuery.getDistance());
+    }
+    if(idx == null) {
+      return null;
+    }
+    BatchRangeSearcher q = idx.batchRangeByDBID(distanceQuery, maxrange, flags);
+    if(q != null && (flags & QueryBuilder.FLAG_NO_CACHE) == 0) {
+      Metadata.hierarchyOf(relation).addWeakChild(idx);
+    }
+    return q;
+  }
+
   @Override
   public <O> PrioritySearcher<O> priorityByObject(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, double maxrange, int flags) {
-    DistancePriorityIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
+    DistancePriorityIndex<O> idx = makeMetricIndex(relation, distanceQuery.getDistance());
     if(idx == null) { // Try k-d-tree for squared Euclidean mostly
       idx = makeKDTree(relation, distanceQuery.getDistance());
     }
@@ -287,7 +363,7 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
 
   @Override
   public <O> PrioritySearcher<DBIDRef> priorityByDBID(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, double maxrange, int flags) {
-    DistancePriorityIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
+    DistancePriorityIndex<O> idx = makeMetricIndex(relation, distanceQuery.getDistance());
     if(idx == null) { // Try k-d-tree for squared Euclidean mostly
       idx = makeKDTree(relation, distanceQuery.getDistance());
     }
@@ -303,6 +379,35 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
     return idx.priorityByDBID(distanceQuery, maxrange, flags);
   }
 
+  @Override
+  public <O> SpanningTreeSearcher spanningTree(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int flags) {
+    // The VP-tree does not support this, use a cover tree instead:
+    DistancePriorityIndex<O> idx = supportsSpanningTree(coverIndex) ? makeCoverTree(relation, distanceQuery.getDistance()) : null;
+    if(idx == null && supportsSpanningTree(kdIndex)) { // Try k-d-tree for squared Euclidean mostly
+      idx = makeKDTree(relation, distanceQuery.getDistance());
+    }
+    if(idx == null) {
+      return null;
+    }
+    @SuppressWarnings("unchecked")
+    SpanningTreeSearcher q = ((SpanningTreeIndex<O>) idx).spanningTree(distanceQuery, flags);
+    if(q != null && (flags & QueryBuilder.FLAG_NO_CACHE) == 0) {
+      Metadata.hierarchyOf(relation).addWeakChild(idx);
+    }
+    return q;
+  }
+
+  /**
+   * Check if an index class supports spanning tree queries, before building
+   * an index of this class.
+   *
+   * @param cons Index constructor
+   * @return {@code true} if the index class supports spanning trees
+   */
+  private static boolean supportsSpanningTree(Constructor<? extends Index> cons) {
+    return cons != null && SpanningTreeIndex.class.isAssignableFrom(cons.getDeclaringClass());
+  }
+
   private <O> DistancePriorityIndex<O> makeMatrixIndex(Relation<? extends O> relation, Distance<? super O> distance) {
     // TODO: make sure there is not matrix already!
     if(matrixIndex == null || relation.size() > 65536) {
@@ -333,6 +438,31 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
     }
   }
 
+  private <O> DistancePriorityIndex<O> makeMetricIndex(Relation<? extends O> relation, Distance<? super O> distance) {
+    // Prefer the VP-tree for metrics that are not vector-space distances:
+    DistancePriorityIndex<O> idx = distance instanceof SpatialPrimitiveDistance ? null : makeVPTree(relation, distance);
+    return idx != null ? idx : makeCoverTree(relation, distance);
+  }
+
+  private <O> DistancePriorityIndex<O> makeVPTree(Relation<? extends O> relation, Distance<? super O> distance) {
+    // TODO: make sure there is no such VP-tree already!
+    if(vpIndex == null || !distance.isMetric()) {
+      return null;
+    }
+    try {
+      @SuppressWarnings("unchecked")
+      DistancePriorityIndex<O> idx = (DistancePriorityIndex<O>) vpIndex.newInstance(relation, distance);
+      LOG.verbose("Optimizer: automatically adding a VP-tree index.");
+      idx.initialize();
+      return idx;
+    }
+    catch(InstantiationException | IllegalAccessException
+        | IllegalArgumentException | InvocationTargetException e) {
+      LOG.exception("Automatic VP-tree creation failed.", e);
+    }
+    return null;
+  }
+
   private <O> DistancePriorityIndex<O> makeCoverTree(Relation<? extends O> relation, Distance<? super O> distance) {
     // TODO: make sure there is no such cover tree already!
     if(coverIndex == null || !distance.isMetric()) {
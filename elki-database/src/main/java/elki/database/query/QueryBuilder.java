@@ -21,9 +21,17 @@
 package elki.database.query;
 
 import java.util.Objects;
+import java.util.function.Supplier;
 
 import elki.data.NumberVector;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.DBIDIter;
 import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DoubleDBIDList;
+import elki.database.ids.KNNList;
 import elki.database.query.distance.DistanceQuery;
 import elki.database.query.distance.LinearScanEuclideanPrioritySearcher;
 import elki.database.query.distance.LinearScanPrioritySearcher;
@@ -36,9 +44,11 @@ import elki.database.query.rknn.RKNNSearcher;
 import elki.database.query.similarity.PrimitiveSimilarityQuery;
 import elki.database.query.similarity.SimilarityQuery;
 import elki.database.relation.Relation;
+import elki.database.relation.VectorBlockRelation;
 import elki.distance.DBIDDistance;
 import elki.distance.Distance;
 import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
 import elki.index.*;
 import elki.logging.Logging;
 import elki.result.Metadata;
@@ -366,6 +376,9 @@ public class QueryBuilder<O> {
     // Slight optimizations of linear scans for primitive functions
     if(distanceQuery instanceof PrimitiveDistanceQuery) {
       final PrimitiveDistanceQuery<O> pdq = (PrimitiveDistanceQuery<O>) distanceQuery;
+      if(relation instanceof VectorBlockRelation && isEuclidean(pdq.getDistance())) {
+        return (KNNSearcher<O>) new LinearScanVectorBlockKNNByObject((VectorBlockRelation) relation, SquaredEuclideanDistance.STATIC.equals(pdq.getDistance()));
+      }
       if(EuclideanDistance.STATIC.equals(pdq.getDistance())) {
         final PrimitiveDistanceQuery<NumberVector> ndq = (PrimitiveDistanceQuery<NumberVector>) pdq;
         return (KNNSearcher<O>) new LinearScanEuclideanKNNByObject<>(ndq);
@@ -417,6 +430,10 @@ public class QueryBuilder<O> {
     // Slight optimizations of linear scans for primitive functions
     if(distanceQuery instanceof PrimitiveDistanceQuery) {
       final PrimitiveDistanceQuery<O> pdq = (PrimitiveDistanceQuery<O>) distanceQuery;
+      if(relation instanceof VectorBlockRelation && isEuclidean(pdq.getDistance())) {
+        final VectorBlockRelation vrel = (VectorBlockRelation) relation;
+        return WrappedKNNDBIDByLookup.wrap(vrel, new LinearScanVectorBlockKNNByObject(vrel, SquaredEuclideanDistance.STATIC.equals(pdq.getDistance())));
+      }
       if(EuclideanDistance.STATIC.equals(pdq.getDistance())) {
         final PrimitiveDistanceQuery<NumberVector> ndq = (PrimitiveDistanceQuery<NumberVector>) pdq;
         return WrappedKNNDBIDByLookup.wrap(ndq.getRelation(), new LinearScanEuclideanKNNByObject<>(ndq));
@@ -426,6 +443,105 @@ public class QueryBuilder<O> {
     return new LinearScanKNNByDBID<>(distanceQuery);
   }
 
+  /**
+   * Build a supplier of k-nearest-neighbors queries, e.g., to obtain one
+   * searcher per thread.
+   * <p>
+   * If the optimizer builds an index, this index is built only once and shared
+   * by all searchers, also when caching is disabled with {@link #noCache()}.
+   *
+   * @param maxk Maximum k that will be used later.
+   * @return supplier of knn queries
+   */
+  public Supplier<KNNSearcher<DBIDRef>> kNNByDBIDSupplier(int maxk) {
+    if((flags & FLAG_PRECOMPUTE) == 0) {
+      final int f = flags;
+      final DistanceQuery<O> distanceQuery = distanceQuery();
+      for(It<KNNIndex<O>> it = Metadata.hierarchyOf(relation).iterChildrenReverse().filter(KNNIndex.class); it.valid(); it.advance()) {
+        final KNNIndex<O> idx = it.get();
+        if(idx.kNNByDBID(distanceQuery, maxk, f) != null) {
+          return () -> idx.kNNByDBID(distanceQuery, maxk, f);
+        }
+      }
+      if((flags & FLAGS_NO_OPTIMIZER) == 0) {
+        final KNNIndex<O> idx = OPTIMIZER.kNNIndex(relation, distanceQuery, maxk, f);
+        if(idx != null && idx.kNNByDBID(distanceQuery, maxk, f) != null) {
+          return () -> idx.kNNByDBID(distanceQuery, maxk, f);
+        }
+      }
+    }
+    return () -> kNNByDBID(maxk);
+  }
+
+  /**
+   * Build a batch k-nearest-neighbors query; if possible also give a maximum
+   * k.
+   *
+   * @return batch knn query
+   */
+  public BatchKNNSearcher batchKNNByDBID() {
+    return batchKNNByDBID(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Build a batch k-nearest-neighbors query.
+   * <p>
+   * If no index provides a specialized batch search, single kNN queries will
+   * be run in parallel instead, unless {@link #optimizedOnly()} was requested.
+   *
+   * @param maxk Maximum k that will be used later.
+   * @return batch knn query
+   */
+  public BatchKNNSearcher batchKNNByDBID(int maxk) {
+    int mask = flags & (FLAG_PRECOMPUTE | FLAG_OPTIMIZED_ONLY);
+    flags ^= mask; // Mask
+    DistanceQuery<O> distanceQuery = distanceQuery();
+    flags ^= mask; // Restore
+    for(It<KNNIndex<O>> it = Metadata.hierarchyOf(relation).iterChildrenReverse().filter(KNNIndex.class); it.valid(); it.advance()) {
+      BatchKNNSearcher q = it.get().batchKNNByDBID(distanceQuery, maxk, flags);
+      logUsing(it.get(), "batch kNN", q != null);
+      if(q != null) {
+        return q;
+      }
+    }
+    // Use optimizer
+    if((flags & FLAGS_NO_OPTIMIZER) == 0) {
+      BatchKNNSearcher q = OPTIMIZER.batchKNNByDBID(relation, distanceQuery, maxk, flags);
+      if(q != null) {
+        return q;
+      }
+    }
+    if((flags & FLAG_OPTIMIZED_ONLY) != 0) {
+      return null;
+    }
+    // Fall back to single queries, sharing one index:
+    final Supplier<KNNSearcher<DBIDRef>> searchers = kNNByDBIDSupplier(maxk);
+    final KNNSearcher<DBIDRef> first = searchers.get();
+    if(first == null) {
+      return null;
+    }
+    if((flags & FLAG_NO_CACHE) != 0) {
+      // Do not build the same index again for every thread.
+      return (ids, k) -> {
+        WritableDataStore<KNNList> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, KNNList.class);
+        for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+          store.put(iter, first.getKNN(iter, k));
+        }
+        return store;
+      };
+    }
+    return new ParallelBatchKNNSearcher(new Supplier<KNNSearcher<DBIDRef>>() {
+      private KNNSearcher<DBIDRef> next = first;
+
+      @Override
+      public KNNSearcher<DBIDRef> get() {
+        KNNSearcher<DBIDRef> q = next != null ? next : searchers.get();
+        next = null;
+        return q;
+      }
+    });
+  }
+
   /**
    * Build a range query; if possible also give a maximum query radius.
    *
@@ -534,6 +650,93 @@ public class QueryBuilder<O> {
     return new LinearScanDistanceRangeByDBID<>(distanceQuery);
   }
 
+  /**
+   * Build a batch range query; if possible also give a maximum query radius.
+   *
+   * @return batch range query
+   */
+  public BatchRangeSearcher batchRangeByDBID() {
+    return batchRangeByDBID(Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Build a batch range query with maximum radius.
+   * <p>
+   * If no index provides a specialized batch search, single range queries will
+   * be run in parallel instead, unless {@link #optimizedOnly()} was requested.
+   *
+   * @param maxrange Maximum radius that will be used.
+   * @return batch range query
+   */
+  public BatchRangeSearcher batchRangeByDBID(double maxrange) {
+    int mask = flags & (FLAG_PRECOMPUTE | FLAG_OPTIMIZED_ONLY);
+    flags ^= mask; // Mask
+    DistanceQuery<O> distanceQuery = distanceQuery();
+    flags ^= mask; // Restore
+    for(It<RangeIndex<O>> it = Metadata.hierarchyOf(relation).iterChildrenReverse().filter(RangeIndex.class); it.valid(); it.advance()) {
+      BatchRangeSearcher q = it.get().batchRangeByDBID(distanceQuery, maxrange, flags);
+      logUsing(it.get(), "batch range", q != null);
+      if(q != null) {
+        return q;
+      }
+    }
+    // Use optimizer
+    if((flags & FLAGS_NO_OPTIMIZER) == 0) {
+      BatchRangeSearcher q = OPTIMIZER.batchRangeByDBID(relation, distanceQuery, maxrange, flags);
+      if(q != null) {
+        return q;
+      }
+    }
+    if((flags & FLAG_OPTIMIZED_ONLY) != 0) {
+      return null;
+    }
+    // Fall back to single queries:
+    final RangeSearcher<DBIDRef> first = rangeByDBID(maxrange);
+    if(first == null) {
+      return null;
+    }
+    if((flags & FLAG_NO_CACHE) != 0) {
+      // Do not build the same index again for every thread.
+      return (ids, range) -> {
+        WritableDataStore<DoubleDBIDList> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, DoubleDBIDList.class);
+        for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+          store.put(iter, first.getRange(iter, range, DBIDUtil.newDistanceDBIDList()));
+        }
+        return store;
+      };
+    }
+    return new ParallelBatchRangeSearcher(new Supplier<RangeSearcher<DBIDRef>>() {
+      private RangeSearcher<DBIDRef> next = first;
+
+      @Override
+      public RangeSearcher<DBIDRef> get() {
+        RangeSearcher<DBIDRef> q = next != null ? next : rangeByDBID(maxrange);
+        next = null;
+        return q;
+      }
+    });
+  }
+
+  /**
+   * Precompute the neighborhoods of all objects with a join, if an existing
+   * index supports this, and serve them as range queries.
+   * <p>
+   * This needs memory linear in the total number of neighbors, i.e., up to
+   * quadratic in the data size for large radii, and the neighbors may be in a
+   * different order than with {@link #rangeByDBID}. Hence, algorithms should
+   * only use this when requested by the user.
+   *
+   * @param maxrange Maximum radius that will be used.
+   * @return precomputed range query, or {@code null}
+   */
+  public RangeSearcher<DBIDRef> precomputedRangeByDBID(double maxrange) {
+    final int orig = flags;
+    flags |= FLAG_CHEAP_ONLY | FLAG_OPTIMIZED_ONLY; // Do not build an index
+    BatchRangeSearcher batch = batchRangeByDBID(maxrange);
+    flags = orig; // Restore
+    return batch != null ? PrecomputedRangeSearcher.precompute(batch, relation.getDBIDs(), maxrange) : null;
+  }
+
   /**
    * Build a similarity range query; if possible also specify the least
    * selective
@@ -818,6 +1021,45 @@ public class QueryBuilder<O> {
     return new LinearScanPrioritySearcher.ByDBID<>(distanceQuery);
   }
 
+  /**
+   * Build a minimum spanning tree searcher.
+   * <p>
+   * There is no linear scan fallback; if no index supports computing the
+   * spanning tree, {@code null} is returned, and the caller should use, e.g.,
+   * Prim's algorithm instead.
+   *
+   * @return spanning tree searcher, or {@code null}
+   */
+  public SpanningTreeSearcher spanningTree() {
+    int precompute = flags & FLAG_PRECOMPUTE;
+    flags ^= precompute; // Mask
+    DistanceQuery<O> distanceQuery = distanceQuery();
+    flags ^= precompute; // Restore
+    for(It<SpanningTreeIndex<O>> it = Metadata.hierarchyOf(relation).iterChildrenReverse().filter(SpanningTreeIndex.class); it.valid(); it.advance()) {
+      SpanningTreeSearcher q = it.get().spanningTree(distanceQuery, flags);
+      logUsing(it.get(), "spanning tree", q != null);
+      if(q != null) {
+        return q;
+      }
+    }
+    // Use optimizer
+    if((flags & FLAGS_NO_OPTIMIZER) == 0) {
+      return OPTIMIZER.spanningTree(relation, distanceQuery, flags);
+    }
+    return null;
+  }
+
+  /**
+   * Test for (squared) Euclidean distance, which has a fast path on
+   * {@link VectorBlockRelation}.
+   *
+   * @param dist Distance function
+   * @return {@code true} if Euclidean or squared Euclidean
+   */
+  private static boolean isEuclidean(Distance<?> dist) {
+    return EuclideanDistance.STATIC.equals(dist) || SquaredEuclideanDistance.STATIC.equals(dist);
+  }
+
   /**
    * Log if we use a particular index.
    *
@@ -22,13 +22,16 @@ package elki.database.query;
 
 import elki.database.ids.DBIDRef;
 import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.BatchKNNSearcher;
 import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.BatchRangeSearcher;
 import elki.database.query.range.RangeSearcher;
 import elki.database.query.rknn.RKNNSearcher;
 import elki.database.query.similarity.SimilarityQuery;
 import elki.database.relation.Relation;
 import elki.distance.Distance;
 import elki.similarity.Similarity;
+import elki.index.KNNIndex;
 
 /**
  * Interface to automatically add indexes to a database when no suitable indexes
@@ -92,6 +95,51 @@ public interface QueryOptimizer {
     return null;
   }
 
+  /**
+   * Build an index to answer kNN queries for this relation.
+   * <p>
+   * This allows building the index only once, and then obtaining multiple
+   * searchers from it, e.g., one per thread.
+   *
+   * @param <O> Object type
+   * @param relation Data relation
+   * @param distanceQuery distance query
+   * @param maxk Maximum k
+   * @param flags Optimizer flags
+   * @return index, if possible
+   */
+  default <O> KNNIndex<O> kNNIndex(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    return null;
+  }
+
+  /**
+   * Optimize a batch kNN query for this relation.
+   *
+   * @param <O> Object type
+   * @param relation Data relation
+   * @param distanceQuery distance query
+   * @param maxk Maximum k
+   * @param flags Optimizer flags
+   * @return optimized query, if possible
+   */
+  default <O> BatchKNNSearcher batchKNNByDBID(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    return null;
+  }
+
+  /**
+   * Optimize a batch range query for this relation.
+   *
+   * @param <O> Object type
+   * @param relation Data relation
+   * @param distanceQuery distance query
+   * @param maxrange Maximum range
+   * @param flags Optimizer flags
+   * @return optimized query, if possible
+   */
+  default <O> BatchRangeSearcher batchRangeByDBID(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    return null;
+  }
+
   /**
    * Optimize a range query for this relation.
    *
@@ -203,4 +251,17 @@ public interface QueryOptimizer {
   default <O> PrioritySearcher<DBIDRef> priorityByDBID(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, double maxrange, int flags) {
     return null;
   };
+
+  /**
+   * Optimize a minimum spanning tree search for this relation.
+   *
+   * @param <O> Object type
+   * @param relation Data relation
+   * @param distanceQuery distance query
+   * @param flags Optimizer flags
+   * @return optimized query, if possible
+   */
+  default <O> SpanningTreeSearcher spanningTree(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int flags) {
+    return null;
+  }
 }
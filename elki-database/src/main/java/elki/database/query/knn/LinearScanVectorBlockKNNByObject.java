@@ -0,0 +1,96 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query.knn;
+
+import elki.data.NumberVector;
+import elki.data.VectorBlock;
+import elki.database.ids.*;
+import elki.database.query.LinearScanQuery;
+import elki.database.relation.VectorBlockRelation;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+
+/**
+ * Linear scan for (squared) Euclidean distance on a {@link VectorBlockRelation}.
+ * <p>
+ * This reads the contiguous vector block directly in storage order, and only
+ * copies the query vector once. Distances are computed in chunks of rows with
+ * the (possibly vectorized) {@link elki.distance.VectorKernels}. As with
+ * {@link LinearScanEuclideanKNNByObject}, the square root is only computed for
+ * the results.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @assoc - - - VectorBlockRelation
+ * @assoc - - - EuclideanDistance
+ * @assoc - - - SquaredEuclideanDistance
+ */
+public class LinearScanVectorBlockKNNByObject implements KNNSearcher<NumberVector>, LinearScanQuery {
+  /**
+   * Number of rows processed at once.
+   */
+  private static final int CHUNK = 256;
+
+  /**
+   * Relation to query.
+   */
+  private final VectorBlockRelation relation;
+
+  /**
+   * Flag to return squared distances.
+   */
+  private final boolean squared;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to query
+   * @param squared Return squared Euclidean distances
+   */
+  public LinearScanVectorBlockKNNByObject(VectorBlockRelation relation, boolean squared) {
+    super();
+    this.relation = relation;
+    this.squared = squared;
+  }
+
+  @Override
+  public KNNList getKNN(NumberVector obj, int k) {
+    final VectorBlock block = relation.getBlock();
+    final double[] q = obj.toArray();
+    assert q.length == block.getDimensionality() : "Dimensionality mismatch.";
+    final KNNHeap heap = DBIDUtil.newHeap(k);
+    final int size = relation.size();
+    final double[] dists = new double[Math.min(CHUNK, size)];
+    final DBIDArrayIter iter = relation.iterDBIDs();
+    double max = Double.POSITIVE_INFINITY;
+    for(int start = 0; start < size; start += CHUNK) {
+      final int n = Math.min(CHUNK, size - start);
+      block.squaredEuclidean(q, start, n, dists);
+      for(int i = 0; i < n; i++) {
+        if(dists[i] <= max) {
+          max = heap.insert(dists[i], iter.seek(start + i));
+        }
+      }
+    }
+    return squared ? heap.toKNNList() : heap.toKNNListSqrt();
+  }
+}
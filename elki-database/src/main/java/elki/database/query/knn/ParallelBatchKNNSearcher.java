@@ -0,0 +1,124 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query.knn;
+
+import java.util.function.Supplier;
+
+import elki.database.datastore.DataStore;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.DBIDRange;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDs;
+import elki.database.ids.KNNList;
+import elki.parallel.Executor;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+
+/**
+ * Default batch kNN searcher, which runs single kNN queries in parallel.
+ * <p>
+ * Every worker thread obtains its own searcher from the supplier, as kNN
+ * searchers usually are not thread safe.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - KNNSearcher
+ */
+public class ParallelBatchKNNSearcher implements BatchKNNSearcher {
+  /**
+   * Supplier for per-thread kNN searchers.
+   */
+  private final Supplier<? extends KNNSearcher<DBIDRef>> searchers;
+
+  /**
+   * Constructor.
+   *
+   * @param searchers Supplier for per-thread kNN searchers
+   */
+  public ParallelBatchKNNSearcher(Supplier<? extends KNNSearcher<DBIDRef>> searchers) {
+    super();
+    this.searchers = searchers;
+  }
+
+  @Override
+  public DataStore<KNNList> getKNN(DBIDs ids, int k) {
+    WritableDataStore<KNNList> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, KNNList.class);
+    ParallelExecutor.run(ids, new KNNWriter(k, store, !(ids instanceof DBIDRange)));
+    return store;
+  }
+
+  /**
+   * Processor to compute the kNN and store them.
+   *
+   * @author Erich Schubert
+   */
+  private class KNNWriter implements Processor {
+    /**
+     * Number of neighbors.
+     */
+    private final int k;
+
+    /**
+     * Output storage.
+     */
+    private final WritableDataStore<KNNList> store;
+
+    /**
+     * Hash-based storage needs synchronized writes.
+     */
+    private final boolean synchronize;
+
+    /**
+     * Constructor.
+     *
+     * @param k Number of neighbors
+     * @param store Output storage
+     * @param synchronize Synchronize writes
+     */
+    KNNWriter(int k, WritableDataStore<KNNList> store, boolean synchronize) {
+      this.k = k;
+      this.store = store;
+      this.synchronize = synchronize;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      final KNNSearcher<DBIDRef> knnq;
+      synchronized(searchers) {
+        knnq = searchers.get();
+      }
+      return synchronize ? id -> {
+        KNNList knn = knnq.getKNN(id, k);
+        synchronized(store) {
+          store.put(id, knn);
+        }
+      } : id -> store.put(id, knnq.getKNN(id, k));
+    }
+
+    @Override
+    public void cleanup(Instance inst) {
+      // Nothing to do.
+    }
+  }
+}
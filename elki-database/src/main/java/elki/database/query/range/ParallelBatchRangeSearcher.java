@@ -0,0 +1,125 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query.range;
+
+import java.util.function.Supplier;
+
+import elki.database.datastore.DataStore;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.DBIDRange;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DBIDs;
+import elki.database.ids.DoubleDBIDList;
+import elki.parallel.Executor;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+
+/**
+ * Default batch range searcher, which runs single range queries in parallel.
+ * <p>
+ * Every worker thread obtains its own searcher from the supplier, as range
+ * searchers usually are not thread safe.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - RangeSearcher
+ */
+public class ParallelBatchRangeSearcher implements BatchRangeSearcher {
+  /**
+   * Supplier for per-thread range searchers.
+   */
+  private final Supplier<? extends RangeSearcher<DBIDRef>> searchers;
+
+  /**
+   * Constructor.
+   *
+   * @param searchers Supplier for per-thread range searchers
+   */
+  public ParallelBatchRangeSearcher(Supplier<? extends RangeSearcher<DBIDRef>> searchers) {
+    super();
+    this.searchers = searchers;
+  }
+
+  @Override
+  public DataStore<DoubleDBIDList> getRange(DBIDs ids, double range) {
+    WritableDataStore<DoubleDBIDList> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, DoubleDBIDList.class);
+    ParallelExecutor.run(ids, new RangeWriter(range, store, !(ids instanceof DBIDRange)));
+    return store;
+  }
+
+  /**
+   * Processor to compute the neighbors and store them.
+   *
+   * @author Erich Schubert
+   */
+  private class RangeWriter implements Processor {
+    /**
+     * Query radius.
+     */
+    private final double range;
+
+    /**
+     * Output storage.
+     */
+    private final WritableDataStore<DoubleDBIDList> store;
+
+    /**
+     * Hash-based storage needs synchronized writes.
+     */
+    private final boolean synchronize;
+
+    /**
+     * Constructor.
+     *
+     * @param range Query radius
+     * @param store Output storage
+     * @param synchronize Synchronize writes
+     */
+    RangeWriter(double range, WritableDataStore<DoubleDBIDList> store, boolean synchronize) {
+      this.range = range;
+      this.store = store;
+      this.synchronize = synchronize;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      final RangeSearcher<DBIDRef> rangeq;
+      synchronized(searchers) {
+        rangeq = searchers.get();
+      }
+      return synchronize ? id -> {
+        DoubleDBIDList neighbors = rangeq.getRange(id, range, DBIDUtil.newDistanceDBIDList());
+        synchronized(store) {
+          store.put(id, neighbors);
+        }
+      } : id -> store.put(id, rangeq.getRange(id, range, DBIDUtil.newDistanceDBIDList()));
+    }
+
+    @Override
+    public void cleanup(Instance inst) {
+      // Nothing to do.
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query.range;
+
+import elki.database.datastore.DataStore;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDs;
+import elki.database.ids.DoubleDBIDList;
+import elki.database.ids.DoubleDBIDListIter;
+import elki.database.ids.ModifiableDoubleDBIDList;
+
+/**
+ * Range searcher serving the neighborhoods computed in advance by a
+ * {@link BatchRangeSearcher}. Queries must not exceed the precomputed radius.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - BatchRangeSearcher
+ */
+public class PrecomputedRangeSearcher implements RangeSearcher<DBIDRef> {
+  /**
+   * Precomputed neighborhoods.
+   */
+  private final DataStore<? extends DoubleDBIDList> neighbors;
+
+  /**
+   * Radius of the precomputed neighborhoods.
+   */
+  private final double maxrange;
+
+  /**
+   * Constructor.
+   *
+   * @param neighbors Precomputed neighborhoods
+   * @param maxrange Radius of the precomputed neighborhoods
+   */
+  public PrecomputedRangeSearcher(DataStore<? extends DoubleDBIDList> neighbors, double maxrange) {
+    super();
+    this.neighbors = neighbors;
+    this.maxrange = maxrange;
+  }
+
+  /**
+   * Precompute the neighborhoods of all objects with a batch searcher.
+   *
+   * @param batch Batch range searcher
+   * @param ids Objects to query
+   * @param range Query radius
+   * @return Range searcher
+   */
+  public static PrecomputedRangeSearcher precompute(BatchRangeSearcher batch, DBIDs ids, double range) {
+    return new PrecomputedRangeSearcher(batch.getRange(ids, range), range);
+  }
+
+  @Override
+  public ModifiableDoubleDBIDList getRange(DBIDRef query, double range, ModifiableDoubleDBIDList result) {
+    if(range > maxrange) {
+      throw new IllegalArgumentException("Query radius " + range + " exceeds the precomputed radius " + maxrange);
+    }
+    for(DoubleDBIDListIter it = neighbors.get(query).iter(); it.valid(); it.advance()) {
+      if(it.doubleValue() <= range) {
+        result.add(it.doubleValue(), it);
+      }
+    }
+    return result;
+  }
+}
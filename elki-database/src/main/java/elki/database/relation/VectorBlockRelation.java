@@ -0,0 +1,135 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.relation;
+
+import elki.data.NumberVector;
+import elki.data.VectorBlock;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.ids.*;
+
+/**
+ * Relation storing all vectors in a single contiguous {@link VectorBlock},
+ * either off-heap or memory-mapped, instead of one object per vector.
+ * <p>
+ * The relation hands out lightweight {@link VectorBlock.Row} views. Distance
+ * functions and linear scan queries can detect this relation and access the
+ * block directly.
+ * <p>
+ * This relation is static; it does not support modifications.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @composed - - - VectorBlock
+ */
+public class VectorBlockRelation implements Relation<NumberVector> {
+  /**
+   * The type information.
+   */
+  private final VectorFieldTypeInformation<NumberVector> type;
+
+  /**
+   * The vector data.
+   */
+  private final VectorBlock block;
+
+  /**
+   * The DBIDs this is defined for.
+   */
+  private final DBIDRange ids;
+
+  /**
+   * The relation name.
+   */
+  private String name;
+
+  /**
+   * Constructor.
+   *
+   * @param name Relation name
+   * @param ids DBIDs, must be a range
+   * @param block Vector data, in the order of the ids
+   * @param type Type information of the original data
+   */
+  public VectorBlockRelation(String name, DBIDRange ids, VectorBlock block, VectorFieldTypeInformation<? extends NumberVector> type) {
+    super();
+    assert ids.size() == block.size();
+    this.name = name;
+    this.ids = ids;
+    this.block = block;
+    final int dim = block.getDimensionality();
+    String[] labels = new String[dim];
+    boolean haslabels = false;
+    for(int d = 0; d < dim; d++) {
+      haslabels |= (labels[d] = type.getLabel(d)) != null;
+    }
+    this.type = new VectorFieldTypeInformation<>(new VectorBlock.Factory((NumberVector.Factory<?>) type.getFactory()), dim, haslabels ? labels : null);
+  }
+
+  @Override
+  public VectorBlock.Row get(DBIDRef id) {
+    return block.get(ids.getOffset(id));
+  }
+
+  /**
+   * Get the row number of an object in the vector block.
+   *
+   * @param id Object
+   * @return Row number
+   */
+  public int getRow(DBIDRef id) {
+    return ids.getOffset(id);
+  }
+
+  /**
+   * Get the underlying vector block.
+   *
+   * @return Block
+   */
+  public VectorBlock getBlock() {
+    return block;
+  }
+
+  @Override
+  public VectorFieldTypeInformation<NumberVector> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public DBIDRange getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDArrayIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public String getLongName() {
+    return name != null ? name : type.toString();
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.relation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.StaticArrayDatabase.VectorStorage;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DoubleDBIDListIter;
+import elki.database.ids.KNNList;
+import elki.database.query.QueryBuilder;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.knn.LinearScanVectorBlockKNNByObject;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.distance.minkowski.EuclideanDistance;
+
+/**
+ * Unit test for vector block storage.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class VectorBlockRelationTest {
+  @Test
+  public void testDoubleBlock() {
+    testStorage(VectorStorage.DOUBLE_BLOCK, 0.);
+  }
+
+  @Test
+  public void testFloatBlock() {
+    testStorage(VectorStorage.FLOAT_BLOCK, 1e-6);
+  }
+
+  private void testStorage(VectorStorage storage, double delta) {
+    Random rnd = new Random(0L);
+    double[][] data = new double[500][];
+    for(int i = 0; i < data.length; i++) {
+      data[i] = new double[] { rnd.nextDouble(), rnd.nextDouble(), rnd.nextDouble() };
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null, storage, null);
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertTrue("Not stored in a vector block.", rel instanceof VectorBlockRelation);
+    assertEquals("Dimensionality", 3, RelationUtil.dimensionality(rel));
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+      NumberVector v = rel.get(it);
+      for(int d = 0; d < 3; d++) {
+        assertEquals("Value mismatch", data[i][d], v.doubleValue(d), delta);
+      }
+    }
+    // Compare the block scan to a regular scan over copies of the data.
+    KNNSearcher<NumberVector> knnq = new QueryBuilder<>(rel, EuclideanDistance.STATIC).linearOnly().kNNByObject(10);
+    assertTrue("Block scan not used.", knnq instanceof LinearScanVectorBlockKNNByObject);
+    DBIDIter qit = rel.iterDBIDs();
+    for(int q = 0; q < 20; q++, qit.advance()) {
+      KNNList knn = knnq.getKNN(rel.get(qit), 10);
+      double[] dists = new double[data.length];
+      for(int j = 0; j < data.length; j++) {
+        dists[j] = EuclideanDistance.STATIC.distance(DoubleVector.wrap(data[q]), DoubleVector.wrap(data[j]));
+      }
+      Arrays.sort(dists);
+      int j = 0;
+      for(DoubleDBIDListIter it = knn.iter(); it.valid(); it.advance(), j++) {
+        assertEquals("kNN distance mismatch", dists[j], it.doubleValue(), 1e-6);
+      }
+    }
+  }
+}
@@ -21,8 +21,12 @@
 package elki.index.lsh;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import elki.data.type.TypeInformation;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableIntegerDataStore;
 import elki.database.ids.*;
 import elki.database.query.QueryBuilder;
 import elki.database.query.distance.DistanceQuery;
@@ -38,6 +42,9 @@ import elki.index.lsh.hashfunctions.LocalitySensitiveHashFunction;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.Executor;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -45,8 +52,6 @@ import elki.utilities.optionhandling.parameterization.Parameterization;
 import elki.utilities.optionhandling.parameters.IntParameter;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
-
 /**
  * Locality Sensitive Hashing.
  *
@@ -79,6 +84,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
    */
   int numberOfBuckets;
 
+  /**
+   * Number of buckets to probe in each table.
+   */
+  int probes;
+
   /**
    * Constructor.
    *
@@ -87,15 +97,28 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
    * @param numberOfBuckets Number of buckets to use.
    */
   public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets) {
+    this(family, l, numberOfBuckets, 1);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param family Projection family
+   * @param l Number of hash tables to use
+   * @param numberOfBuckets Number of buckets to use.
+   * @param probes Number of buckets to probe in each table
+   */
+  public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets, int probes) {
     super();
     this.family = family;
     this.l = l;
     this.numberOfBuckets = numberOfBuckets;
+    this.probes = probes;
   }
 
   @Override
   public Instance instantiate(Relation<V> relation) {
-    return new Instance(relation, family.generateHashFunctions(relation, l), numberOfBuckets);
+    return new Instance(relation, family.generateHashFunctions(relation, l), numberOfBuckets, probes);
   }
 
   @Override
@@ -105,6 +128,10 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
 
   /**
    * Instance of a LSH index for a single relation.
+   * <p>
+   * Each hash table is stored in a compact (CSR) layout: the sorted bucket
+   * keys, the start of each bucket, and the offsets of the objects in all
+   * buckets in a single array.
    *
    * @author Erich Schubert
    *
@@ -117,78 +144,123 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
     ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions;
 
     /**
-     * The actual table
+     * Indexed objects.
      */
-    ArrayList<Int2ObjectOpenHashMap<DBIDs>> hashtables;
+    ArrayDBIDs ids;
+
+    /**
+     * Sorted bucket keys of each table.
+     */
+    int[][] keys;
+
+    /**
+     * Start of each bucket (plus end marker) in {@link #members}.
+     */
+    int[][] starts;
+
+    /**
+     * Offsets of the objects in {@link #ids}, grouped by bucket.
+     */
+    int[][] members;
 
     /**
      * Number of buckets to use.
      */
     private int numberOfBuckets;
 
+    /**
+     * Number of buckets to probe in each table.
+     */
+    private int probes;
+
     /**
      * Constructor.
      *
      * @param relation Relation to index.
      * @param hashfunctions Hash functions.
+     * @param numberOfBuckets Number of buckets to use.
+     * @param probes Number of buckets to probe in each table
      */
-    public Instance(Relation<V> relation, ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions, int numberOfBuckets) {
+    public Instance(Relation<V> relation, ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions, int numberOfBuckets, int probes) {
       super(relation);
       this.hashfunctions = hashfunctions;
       this.numberOfBuckets = numberOfBuckets;
+      this.probes = probes;
     }
 
     @Override
     public void initialize() {
       final int numhash = hashfunctions.size();
-      hashtables = new ArrayList<>(numhash);
-      for(int i = 0; i < numhash; i++) {
-        hashtables.add(new Int2ObjectOpenHashMap<DBIDs>(numberOfBuckets));
+      ids = DBIDUtil.ensureArray(relation.getDBIDs());
+      final int size = ids.size();
+      // Compute the buckets of all objects in parallel:
+      final int[][] buckets = new int[numhash][size];
+      WritableIntegerDataStore offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+      for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        offsets.putInt(iter, iter.getOffset());
       }
+      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH index", size, LOG) : null;
+      ParallelExecutor.runWorkStealing(ids, ParallelExecutor.DEFAULT_MIN_GRAIN, progress, LOG, new Processor() {
+        @Override
+        public Processor.Instance instantiate(Executor executor) {
+          // TODO: We assume all hash functions have the same dimensionality.
+          final double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
+          return new Processor.Instance() {
+            @Override
+            public void map(DBIDRef id) {
+              final int off = offsets.intValue(id);
+              V obj = relation.get(id);
+              for(int i = 0; i < numhash; i++) {
+                // Get the initial (unbounded) hash code, reduce to table size
+                buckets[i][off] = hashfunctions.get(i).hashObject(obj, buf) % numberOfBuckets;
+              }
+            }
+          };
+        }
 
-      // TODO: We assume all hash functions have the same dimensionality.
-      double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
-      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH index", relation.size(), LOG) : null;
-      int expect = Math.max(2, (int) Math.ceil(relation.size() / (double) numberOfBuckets));
-      for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
-        V obj = relation.get(iter);
-        for(int i = 0; i < numhash; i++) {
-          final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
-          final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-          // Get the initial (unbounded) hash code:
-          int hash = hashfunc.hashObject(obj, buf);
-          // Reduce to hash table size
-          int bucket = hash % numberOfBuckets;
-          DBIDs cur = table.get(bucket);
-          if(cur == null) {
-            table.put(bucket, DBIDUtil.deref(iter));
-          }
-          else if(cur.size() > 1) {
-            ((ModifiableDBIDs) cur).add(iter);
-          }
-          else {
-            ModifiableDBIDs newbuck = DBIDUtil.newArray(expect);
-            newbuck.addDBIDs(cur);
-            newbuck.add(iter);
-            table.put(bucket, newbuck);
-          }
+        @Override
+        public void cleanup(Processor.Instance inst) {
+          // Nothing to do.
         }
-        LOG.incrementProcessed(progress);
-      }
+      });
       LOG.ensureCompleted(progress);
-      if(LOG.isStatistics()) {
-        int min = Integer.MAX_VALUE, max = 0;
-        for(int i = 0; i < numhash; i++) {
-          final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
-          for(DBIDs set : table.values()) {
-            final int size = set.size();
-            min = size < min ? size : min;
-            max = size > max ? size : max;
+      offsets.destroy();
+      // Build the compact tables:
+      keys = new int[numhash][];
+      starts = new int[numhash][];
+      members = new int[numhash][size];
+      long[] pairs = new long[size];
+      int min = Integer.MAX_VALUE, max = 0;
+      for(int i = 0; i < numhash; i++) {
+        final int[] b = buckets[i];
+        for(int j = 0; j < size; j++) {
+          pairs[j] = ((long) b[j] << 32) | j;
+        }
+        Arrays.sort(pairs);
+        int[] k = new int[size], st = new int[size + 1], mem = members[i];
+        int nb = 0;
+        for(int j = 0; j < size; j++) {
+          final int key = (int) (pairs[j] >> 32);
+          if(nb == 0 || k[nb - 1] != key) {
+            st[nb] = j;
+            k[nb++] = key;
           }
+          mem[j] = (int) pairs[j];
         }
+        st[nb] = size;
+        keys[i] = Arrays.copyOf(k, nb);
+        starts[i] = Arrays.copyOf(st, nb + 1);
+        buckets[i] = null;
+        for(int j = 0; j < nb; j++) {
+          final int bsize = st[j + 1] - st[j];
+          min = bsize < min ? bsize : min;
+          max = bsize > max ? bsize : max;
+        }
+      }
+      if(LOG.isStatistics()) {
         LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.min", min));
         LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.max", max));
-        LOG.statistics(new LongStatistic(this.getClass().getName() + ".hashtables", hashtables.size()));
+        LOG.statistics(new LongStatistic(this.getClass().getName() + ".hashtables", numhash));
       }
     }
 
@@ -207,33 +279,38 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
     @Override
     public RangeSearcher<V> rangeByObject(DistanceQuery<V> distanceQuery, double maxradius, int flags) {
       return (flags & QueryBuilder.FLAG_EXACT_ONLY) == 0 && // approximate
-          !family.isCompatible(distanceQuery.getDistance()) ? // compatible
+          family.isCompatible(distanceQuery.getDistance()) ? // compatible
               new LSHRangeQuery(distanceQuery) : null;
     }
 
     /**
-     * Get the candidates: points which have at least one hash bucket in common.
+     * Get the candidates: points which have at least one hash bucket in common
+     * with the query, or one of the additionally probed buckets.
      * 
      * @param obj Query object
      * @return Candidates
      */
     protected DBIDs getCandidates(V obj) {
       ModifiableDBIDs candidates = null;
-      final int numhash = hashtables.size();
+      final int numhash = keys.length;
       double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
+      int[] hashes = new int[probes];
+      DBIDArrayIter iter = ids.iter();
       for(int i = 0; i < numhash; i++) {
-        final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
-        final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-        // Get the initial (unbounded) hash code:
-        int hash = hashfunc.hashObject(obj, buf);
-        // Reduce to hash table size
-        int bucket = hash % numberOfBuckets;
-        DBIDs cur = table.get(bucket);
-        if(cur != null) {
+        final int[] k = keys[i], st = starts[i], mem = members[i];
+        final int nprobes = hashfunctions.get(i).hashProbes(obj, buf, hashes);
+        for(int p = 0; p < nprobes; p++) {
+          // Reduce to hash table size
+          final int b = Arrays.binarySearch(k, hashes[p] % numberOfBuckets);
+          if(b < 0) {
+            continue;
+          }
           if(candidates == null) {
-            candidates = DBIDUtil.newHashSet(cur.size() * numhash);
+            candidates = DBIDUtil.newHashSet((st[b + 1] - st[b]) * numhash * probes);
+          }
+          for(int j = st[b], e = st[b + 1]; j < e; j++) {
+            candidates.add(iter.seek(mem[j]));
           }
-          candidates.addDBIDs(cur);
         }
       }
       return (candidates == null) ? DBIDUtil.EMPTYDBIDS : candidates;
@@ -316,10 +393,15 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
     public static final OptionID L_ID = new OptionID("lsh.tables", "Number of hash tables to use.");
 
     /**
-     * Number of hash tables to use for LSH.
+     * Number of buckets to use for LSH.
      */
     public static final OptionID BUCKETS_ID = new OptionID("lsh.buckets", "Number of hash buckets to use.");
 
+    /**
+     * Number of buckets to probe in each table.
+     */
+    public static final OptionID PROBES_ID = new OptionID("lsh.probes", "Number of buckets to probe in each hash table (multi-probe LSH).");
+
     /**
      * LSH hash function family to use.
      */
@@ -335,6 +417,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
      */
     int numberOfBuckets;
 
+    /**
+     * Number of buckets to probe in each table.
+     */
+    int probes;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<LocalitySensitiveHashFunctionFamily<? super V>>(FAMILY_ID, LocalitySensitiveHashFunctionFamily.class) //
@@ -346,11 +433,14 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
           .setDefaultValue(7919) // Primes work best, apparently.
           .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
           .grab(config, x -> numberOfBuckets = x);
+      new IntParameter(PROBES_ID, 1) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> probes = x);
     }
 
     @Override
     public InMemoryLSHIndex<V> make() {
-      return new InMemoryLSHIndex<>(family, l, numberOfBuckets);
+      return new InMemoryLSHIndex<>(family, l, numberOfBuckets, probes);
     }
   }
 }
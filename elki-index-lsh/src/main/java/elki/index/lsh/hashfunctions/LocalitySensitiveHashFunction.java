@@ -46,6 +46,22 @@ public interface LocalitySensitiveHashFunction<V> {
    */
   int hashObject(V obj, double[] buf);
 
+  /**
+   * Compute the hash values of the buckets to probe for a query (multi-probe
+   * LSH), starting with the hash value of the object itself.
+   * <p>
+   * The default implementation only probes the bucket of the object.
+   *
+   * @param obj Query object
+   * @param buf Buffer, sized according to the number of projections.
+   * @param hashes Output array, its length is the maximum number of probes.
+   * @return Number of hash values produced
+   */
+  default int hashProbes(V obj, double[] buf, int[] hashes) {
+    hashes[0] = hashObject(obj, buf);
+    return 1;
+  }
+
   /**
    * Get the number of projections performed.
    *
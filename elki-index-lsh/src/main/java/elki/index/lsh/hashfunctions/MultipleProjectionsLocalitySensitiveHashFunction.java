@@ -20,10 +20,13 @@
  */
 package elki.index.lsh.hashfunctions;
 
+import java.util.Arrays;
 import java.util.Random;
 
 import elki.data.NumberVector;
 import elki.data.projection.random.RandomProjectionFamily;
+import elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import elki.utilities.datastructures.heap.DoubleObjectMinHeap;
 import elki.utilities.documentation.Reference;
 
 /**
@@ -35,6 +38,13 @@ import elki.utilities.documentation.Reference;
  * M. Datar, N. Immorlica, P. Indyk, V. S. Mirrokni<br>
  * Locality-sensitive hashing scheme based on p-stable distributions<br>
  * Proc. 20th Annual Symposium on Computational Geometry<br>
+ * <p>
+ * Query-directed multi-probe:
+ * <p>
+ * Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li<br>
+ * Multi-Probe LSH: Efficient Indexing for High-Dimensional Similarity
+ * Search<br>
+ * Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB 2007)
  *
  * @author Erich Schubert
  * @since 0.6.0
@@ -44,6 +54,11 @@ import elki.utilities.documentation.Reference;
     booktitle = "Proc. 20th Annual Symposium on Computational Geometry", //
     url = "https://doi.org/10.1145/997817.997857", //
     bibkey = "DBLP:conf/compgeom/DatarIIM04")
+@Reference(authors = "Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li", //
+    title = "Multi-Probe LSH: Efficient Indexing for High-Dimensional Similarity Search", //
+    booktitle = "Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB 2007)", //
+    url = "http://www.vldb.org/conf/2007/papers/research/p950-lv.pdf", //
+    bibkey = "DBLP:conf/vldb/LvJWCL07")
 public class MultipleProjectionsLocalitySensitiveHashFunction implements LocalitySensitiveHashFunction<NumberVector> {
   /**
    * Projection matrix.
@@ -118,6 +133,72 @@ public class MultipleProjectionsLocalitySensitiveHashFunction implements Localit
     return fastModPrime(t1sum);
   }
 
+  /**
+   * Query-directed multi-probe: perturb the bins of the individual projections
+   * by -1 or +1, in ascending order of the squared distance of the projected
+   * query to the bin boundaries that are crossed.
+   */
+  @Override
+  public int hashProbes(NumberVector vec, double[] buf, int[] hashes) {
+    projection.project(vec, buf);
+    final int num = shift.length, num2 = num << 1;
+    // Squared distances to the lower (2i) and upper (2i+1) bin boundary:
+    double[] score = new double[num2];
+    int[] pert = new int[num2];
+    long t1sum = 0L;
+    for(int i = 0; i < num; i++) {
+      final double f = (buf[i] + shift[i]) * iwidth;
+      final int ai = (int) Math.floor(f);
+      t1sum += (randoms1[i] & MASK32) * ai; // unsigned math!
+      final double x = f - ai;
+      score[i << 1] = x * x;
+      score[(i << 1) + 1] = (1 - x) * (1 - x);
+      pert[i << 1] = i << 1;
+      pert[(i << 1) + 1] = (i << 1) + 1;
+    }
+    hashes[0] = fastModPrime(t1sum);
+    if(hashes.length == 1) {
+      return 1;
+    }
+    DoubleIntegerArrayQuickSort.sort(score, pert, num2);
+    // Perturbation sets, as ascending positions in the sorted array, are
+    // enumerated in order of their score using the shift and expand
+    // operations of Lv et al.
+    DoubleObjectMinHeap<int[]> heap = new DoubleObjectMinHeap<>();
+    heap.add(score[0], new int[] { 0 });
+    int cnt = 1;
+    while(cnt < hashes.length && !heap.isEmpty()) {
+      final double s = heap.peekKey();
+      final int[] set = heap.peekValue();
+      heap.poll();
+      final int last = set[set.length - 1];
+      if(last + 1 < num2) {
+        // Shift: replace the last element with the next.
+        int[] shifted = set.clone();
+        shifted[set.length - 1] = last + 1;
+        heap.add(s - score[last] + score[last + 1], shifted);
+        // Expand: add the next element.
+        int[] expanded = Arrays.copyOf(set, set.length + 1);
+        expanded[set.length] = last + 1;
+        heap.add(s + score[last + 1], expanded);
+      }
+      // Apply the perturbation, unless it uses a projection twice:
+      long t = t1sum;
+      boolean valid = true;
+      for(int j = 0; j < set.length && valid; j++) {
+        final int p = pert[set[j]], i = p >>> 1;
+        for(int j2 = 0; j2 < j; j2++) {
+          valid &= (pert[set[j2]] >>> 1) != i;
+        }
+        t += (p & 1) == 0 ? -(randoms1[i] & MASK32) : (randoms1[i] & MASK32);
+      }
+      if(valid) {
+        hashes[cnt++] = fastModPrime(t);
+      }
+    }
+    return cnt;
+  }
+
   /**
    * Fast modulo operation for the largest unsigned integer prime.
    *
@@ -0,0 +1,132 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.lsh;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.relation.MaterializedRelation;
+import elki.database.relation.Relation;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.index.AbstractIndexStructureTest;
+import elki.index.lsh.hashfamilies.EuclideanHashFunctionFamily;
+import elki.index.lsh.hashfunctions.MultipleProjectionsLocalitySensitiveHashFunction;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the {@link InMemoryLSHIndex}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class InMemoryLSHIndexTest extends AbstractIndexStructureTest {
+  @Test
+  public void testMultiProbe() {
+    InMemoryLSHIndex<?> factory = new ELKIBuilder<>(InMemoryLSHIndex.class) //
+        .with(InMemoryLSHIndex.Par.FAMILY_ID, EuclideanHashFunctionFamily.class) //
+        .with(EuclideanHashFunctionFamily.Par.WIDTH_ID, 0.3) //
+        .with(EuclideanHashFunctionFamily.Par.NUMPROJ_ID, 3) //
+        .with(EuclideanHashFunctionFamily.Par.RANDOM_ID, 0L) //
+        .with(InMemoryLSHIndex.Par.L_ID, 3) //
+        .with(InMemoryLSHIndex.Par.PROBES_ID, 27).build();
+    assertExactEuclidean(factory, InMemoryLSHIndex.Instance.LSHKNNQuery.class, InMemoryLSHIndex.Instance.LSHRangeQuery.class);
+  }
+
+  @Test
+  public void testProbeSequence() {
+    EuclideanHashFunctionFamily family = new ELKIBuilder<>(EuclideanHashFunctionFamily.class) //
+        .with(EuclideanHashFunctionFamily.Par.WIDTH_ID, 0.3) //
+        .with(EuclideanHashFunctionFamily.Par.NUMPROJ_ID, 3) //
+        .with(EuclideanHashFunctionFamily.Par.RANDOM_ID, 0L).build();
+    Relation<NumberVector> rel = new MaterializedRelation<>(null, VectorFieldTypeInformation.typeRequest(NumberVector.class, 3, 3), DBIDUtil.EMPTYDBIDS);
+    MultipleProjectionsLocalitySensitiveHashFunction hf = (MultipleProjectionsLocalitySensitiveHashFunction) family.generateHashFunctions(rel, 1).get(0);
+    // With 3 projections, there are 3^3 perturbation vectors in {-1,0,+1}.
+    final int probes = 27;
+    double[] buf = new double[hf.getNumberOfProjections()];
+    int[] hashes = new int[probes], fewer = new int[10];
+    Random rnd = new Random(0L);
+    for(int q = 0; q < 100; q++) {
+      NumberVector vec = DoubleVector.wrap(new double[] { rnd.nextDouble(), rnd.nextDouble(), rnd.nextDouble() });
+      assertEquals("Not all perturbations were enumerated.", probes, hf.hashProbes(vec, buf, hashes));
+      assertEquals("First probe is not the bucket of the query.", hf.hashObject(vec), hashes[0]);
+      // Fewer probes must yield the best probes, in the same order:
+      assertEquals("Wrong number of probes.", fewer.length, hf.hashProbes(vec, buf, fewer));
+      for(int i = 0; i < fewer.length; i++) {
+        assertEquals("Probes are not in a consistent order.", hashes[i], fewer[i]);
+      }
+      int[] sorted = hashes.clone();
+      Arrays.sort(sorted);
+      for(int i = 1; i < probes; i++) {
+        assertNotEquals("Bucket probed twice.", sorted[i - 1], sorted[i]);
+      }
+    }
+  }
+
+  @Test
+  public void testMultiProbeRecall() {
+    Relation<NumberVector> rel = AbstractSimpleAlgorithmTest.makeSimpleDatabase(AbstractSimpleAlgorithmTest.UNITTEST + "hierarchical-3d2d1d.csv", 600).getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = new QueryBuilder<>(rel, EuclideanDistance.STATIC).distanceQuery();
+    KNNSearcher<DBIDRef> exact = new QueryBuilder<>(dq).linearOnly().kNNByDBID(10);
+    int single = recall(rel, dq, exact, 1), multi = recall(rel, dq, exact, 10);
+    assertTrue("Multi-probe recall " + multi + " below single-probe recall " + single, multi >= single);
+  }
+
+  /**
+   * Count the true 10 nearest neighbors found by a LSH index.
+   *
+   * @param rel Data relation
+   * @param dq Distance query
+   * @param exact Exact kNN searcher
+   * @param probes Number of probes
+   * @return Number of true neighbors found
+   */
+  private static int recall(Relation<NumberVector> rel, DistanceQuery<NumberVector> dq, KNNSearcher<DBIDRef> exact, int probes) {
+    InMemoryLSHIndex<NumberVector>.Instance idx = new ELKIBuilder<InMemoryLSHIndex<NumberVector>>(InMemoryLSHIndex.class) //
+        .with(InMemoryLSHIndex.Par.FAMILY_ID, EuclideanHashFunctionFamily.class) //
+        .with(EuclideanHashFunctionFamily.Par.WIDTH_ID, 0.1) //
+        .with(EuclideanHashFunctionFamily.Par.NUMPROJ_ID, 3) //
+        .with(EuclideanHashFunctionFamily.Par.RANDOM_ID, 0L) //
+        .with(InMemoryLSHIndex.Par.L_ID, 2) //
+        .with(InMemoryLSHIndex.Par.PROBES_ID, probes).build().instantiate(rel);
+    idx.initialize();
+    KNNSearcher<NumberVector> lsh = idx.kNNByObject(dq, 10, 0);
+    int found = 0;
+    for(DBIDIter iter = rel.iterDBIDs(); iter.valid(); iter.advance()) {
+      found += DBIDUtil.intersectionSize(lsh.getKNN(rel.get(iter), 10), exact.getKNN(iter, 10));
+    }
+    return found;
+  }
+}
@@ -20,11 +20,17 @@
  */
 package elki.index.preprocessed.knn;
 
+import java.util.ArrayDeque;
+import java.util.function.Supplier;
+
 import javax.swing.event.EventListenerList;
 
+import elki.database.datastore.DataStore;
+import elki.database.datastore.WritableDataStore;
 import elki.database.ids.*;
 import elki.database.query.QueryBuilder;
 import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.BatchKNNSearcher;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.query.knn.PreprocessorKNNQuery;
 import elki.database.relation.Relation;
@@ -35,6 +41,10 @@ import elki.logging.progress.FiniteProgress;
 import elki.logging.progress.StepProgress;
 import elki.logging.statistics.Duration;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.Executor;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
 import elki.utilities.documentation.Description;
 import elki.utilities.documentation.Title;
 
@@ -43,6 +53,11 @@ import elki.utilities.documentation.Title;
  * distances) to each database object.
  * <p>
  * Automatically added by the query optimizer if memory permits.
+ * <p>
+ * On multi-core systems, the initial materialization is performed in parallel.
+ * Every worker thread uses its own kNN searcher, as searchers are usually not
+ * thread safe. If the query optimizer needs to build an index, it is built
+ * only once and shared by all searchers.
  *
  * @author Erich Schubert
  * @since 0.2
@@ -61,11 +76,26 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
    */
   private static final Logging LOG = Logging.getLogger(MaterializeKNNPreprocessor.class);
 
+  /**
+   * Minimum number of objects to use multiple threads.
+   */
+  private static final int PARALLEL_THRESHOLD = 1000;
+
   /**
    * KNNSearcher instance to use.
    */
   protected final KNNSearcher<DBIDRef> knnQuery;
 
+  /**
+   * Supplier of further kNN searchers, for worker threads.
+   */
+  private final Supplier<KNNSearcher<DBIDRef>> searchers;
+
+  /**
+   * Flag to disable optimization.
+   */
+  private final boolean noopt;
+
   /**
    * Holds the listener.
    */
@@ -80,7 +110,9 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
    */
   public MaterializeKNNPreprocessor(Relation<O> relation, Distance<? super O> distance, int k) {
     super(relation, distance, k);
-    this.knnQuery = new QueryBuilder<>(distanceQuery).noCache().kNNByDBID(k);
+    this.noopt = false;
+    this.searchers = newKNNSearchers();
+    this.knnQuery = searchers.get();
     assert !(knnQuery instanceof PreprocessorKNNQuery) : knnQuery.toString();
   }
 
@@ -94,11 +126,23 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
    */
   public MaterializeKNNPreprocessor(Relation<O> relation, DistanceQuery<O> distanceQuery, int k, boolean noopt) {
     super(relation, distanceQuery, k);
-    QueryBuilder<O> qb = new QueryBuilder<>(distanceQuery).noCache();
-    this.knnQuery = (noopt ? qb.cheapOnly() : qb).kNNByDBID(k);
+    this.noopt = noopt;
+    this.searchers = newKNNSearchers();
+    this.knnQuery = searchers.get();
     assert !(knnQuery instanceof PreprocessorKNNQuery) : knnQuery.toString();
   }
 
+  /**
+   * Build the supplier of kNN searchers, used by the constructor and by worker
+   * threads. Any index needed is built once, not once per searcher.
+   *
+   * @return kNN searcher supplier
+   */
+  private Supplier<KNNSearcher<DBIDRef>> newKNNSearchers() {
+    QueryBuilder<O> qb = new QueryBuilder<>(distanceQuery).noCache();
+    return (noopt ? qb.cheapOnly() : qb).kNNByDBIDSupplier(k);
+  }
+
   /**
    * The actual preprocessing step.
    */
@@ -114,21 +158,35 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
     }
     Duration duration = log.isStatistics() ? log.newDuration(this.getClass().getName() + ".precomputation-time").begin() : null;
     FiniteProgress progress = getLogger().isVerbose() ? new FiniteProgress("Materializing k nearest neighbors (k=" + k + ")", ids.size(), getLogger()) : null;
-    // Try bulk
+    // Use a join of an existing index, if available:
+    BatchKNNSearcher batch = new QueryBuilder<>(distanceQuery).noCache().cheapOnly().optimizedOnly().batchKNNByDBID(k);
     final boolean ismetric = getDistanceQuery().getDistance().isMetric();
-    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-      if(ismetric && storage.get(iter) != null) {
+    if(batch != null) {
+      DataStore<KNNList> knns = batch.getKNN(ids, k);
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        storage.put(iter, knns.get(iter));
         log.incrementProcessed(progress);
-        continue; // Previously computed (duplicate point?)
       }
-      KNNList knn = knnQuery.getKNN(iter, k);
-      storage.put(iter, knn);
-      if(ismetric) {
-        for(DoubleDBIDListIter it = knn.iter(); it.valid() && it.doubleValue() == 0.; it.advance()) {
-          storage.put(it, knn); // Reuse
+    }
+    else if(ids.size() >= PARALLEL_THRESHOLD && ParallelCore.getCore().getParallelism() > 1) {
+      ParallelExecutor.runWorkStealing(ids, ParallelExecutor.DEFAULT_MIN_GRAIN, progress, log, //
+          new MaterializeProcessor(storage, k, knnQuery, searchers, ismetric, !(relation.getDBIDs() instanceof DBIDRange)));
+    }
+    else {
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        if(ismetric && storage.get(iter) != null) {
+          log.incrementProcessed(progress);
+          continue; // Previously computed (duplicate point?)
+        }
+        KNNList knn = knnQuery.getKNN(iter, k);
+        storage.put(iter, knn);
+        if(ismetric) {
+          for(DoubleDBIDListIter it = knn.iter(); it.valid() && it.doubleValue() == 0.; it.advance()) {
+            storage.put(it, knn); // Reuse
+          }
         }
+        log.incrementProcessed(progress);
       }
-      log.incrementProcessed(progress);
     }
     log.ensureCompleted(progress);
     if(duration != null) {
@@ -136,6 +194,148 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
     }
   }
 
+  /**
+   * Processor to materialize the kNN in parallel.
+   * <p>
+   * The executor instantiates processors for every block of work; searchers
+   * are pooled and reused, so that each thread effectively owns one searcher.
+   *
+   * @author Erich Schubert
+   */
+  private static class MaterializeProcessor implements Processor {
+    /**
+     * Storage for the kNN.
+     */
+    private final WritableDataStore<KNNList> storage;
+
+    /**
+     * Number of neighbors.
+     */
+    private final int k;
+
+    /**
+     * Idle searchers.
+     */
+    private final ArrayDeque<KNNSearcher<DBIDRef>> idle = new ArrayDeque<>();
+
+    /**
+     * Supplier for additional searchers.
+     */
+    private final Supplier<KNNSearcher<DBIDRef>> searchers;
+
+    /**
+     * Reuse the kNN of duplicates.
+     */
+    private final boolean ismetric;
+
+    /**
+     * Synchronize writes, for storage that is not thread safe.
+     */
+    private final boolean sync;
+
+    /**
+     * Constructor.
+     *
+     * @param storage Storage for the kNN
+     * @param k Number of neighbors
+     * @param knnq First kNN searcher
+     * @param searchers Supplier for additional searchers
+     * @param ismetric Reuse the kNN of duplicates
+     * @param sync Synchronize writes
+     */
+    MaterializeProcessor(WritableDataStore<KNNList> storage, int k, KNNSearcher<DBIDRef> knnq, Supplier<KNNSearcher<DBIDRef>> searchers, boolean ismetric, boolean sync) {
+      this.storage = storage;
+      this.k = k;
+      this.searchers = searchers;
+      this.ismetric = ismetric;
+      this.sync = sync;
+      idle.add(knnq);
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      synchronized(idle) {
+        KNNSearcher<DBIDRef> q = idle.poll();
+        return new Instance(q != null ? q : searchers.get());
+      }
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      synchronized(idle) {
+        idle.push(((Instance) inst).knnq);
+      }
+    }
+
+    /**
+     * Worker instance.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance implements Processor.Instance {
+      /**
+       * kNN searcher owned by this worker.
+       */
+      KNNSearcher<DBIDRef> knnq;
+
+      /**
+       * Constructor.
+       *
+       * @param knnq kNN searcher
+       */
+      Instance(KNNSearcher<DBIDRef> knnq) {
+        this.knnq = knnq;
+      }
+
+      @Override
+      public void map(DBIDRef id) {
+        // A concurrent write may be missed here, then we only do extra work.
+        if(ismetric && get(id) != null) {
+          return; // Previously computed (duplicate point?)
+        }
+        KNNList knn = knnq.getKNN(id, k);
+        if(!sync) {
+          put(id, knn);
+        }
+        else {
+          synchronized(storage) {
+            put(id, knn);
+          }
+        }
+      }
+
+      /**
+       * Get the previous kNN, if any.
+       *
+       * @param id Object
+       * @return kNN or {@code null}
+       */
+      private KNNList get(DBIDRef id) {
+        if(!sync) {
+          return storage.get(id);
+        }
+        synchronized(storage) {
+          return storage.get(id);
+        }
+      }
+
+      /**
+       * Store the kNN, and reuse them for duplicates.
+       *
+       * @param id Object
+       * @param knn kNN
+       */
+      private void put(DBIDRef id, KNNList knn) {
+        storage.put(id, knn);
+        if(ismetric) {
+          for(DoubleDBIDListIter it = knn.iter(); it.valid() && it.doubleValue() == 0.; it.advance()) {
+            storage.put(it, knn); // Reuse
+          }
+        }
+      }
+    }
+  }
+
   @Override
   public final void insert(DBIDRef id) {
     objectsInserted(DBIDUtil.deref(id));
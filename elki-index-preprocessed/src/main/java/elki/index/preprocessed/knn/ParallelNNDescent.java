@@ -0,0 +1,799 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.preprocessed.knn;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.logging.progress.IndefiniteProgress;
+import elki.logging.statistics.DoubleStatistic;
+import elki.logging.statistics.LongStatistic;
+import elki.parallel.Executor;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.DoubleParameter;
+import elki.utilities.optionhandling.parameters.Flag;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Parallel NN-descent, with the neighbor heaps, flags, and candidate samples
+ * stored in flat primitive arrays indexed by the object offset.
+ * <p>
+ * Each iteration first samples new and old candidates (forward and reverse
+ * neighbors) into bounded lists by reservoir sampling, then performs the local
+ * join of every object's candidates in parallel. Updates of the neighbor heaps
+ * are protected by striped locks. The resulting kNN lists contain the query
+ * object itself, as in {@link NNDescent}, but the exact result depends on the
+ * thread schedule.
+ * <p>
+ * Reference:
+ * <p>
+ * W. Dong and C. Moses and K. Li<br>
+ * Efficient k-nearest neighbor graph construction for generic similarity
+ * measures<br>
+ * Proc. 20th Int. Conf. on World Wide Web (WWW'11)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "W. Dong, C. Moses, K. Li", //
+    title = "Efficient k-nearest neighbor graph construction for generic similarity measures", //
+    booktitle = "Proc. 20th Int. Conf. on World Wide Web (WWW'11)", //
+    url = "https://doi.org/10.1145/1963405.1963487", //
+    bibkey = "DBLP:conf/www/DongCL11")
+public class ParallelNNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
+  /**
+   * Logger
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelNNDescent.class);
+
+  /**
+   * Number of lock stripes, must be a power of two.
+   */
+  private static final int LOCKS = 1 << 10;
+
+  /**
+   * Phase: random initialization.
+   */
+  private static final int PHASE_INIT = 0;
+
+  /**
+   * Phase: sample candidates.
+   */
+  private static final int PHASE_SAMPLE = 1;
+
+  /**
+   * Phase: local join.
+   */
+  private static final int PHASE_JOIN = 2;
+
+  /**
+   * Log prefix.
+   */
+  private String prefix = getClass().getCanonicalName();
+
+  /**
+   * Random generator
+   */
+  private final RandomFactory rnd;
+
+  /**
+   * Early termination parameter
+   */
+  private double delta;
+
+  /**
+   * Sample rate
+   */
+  private double rho;
+
+  /**
+   * Maximum number of iterations
+   */
+  private int iterations;
+
+  /**
+   * Do not use initial neighbors
+   */
+  private boolean noInitialNeighbors;
+
+  /**
+   * Offsets of the objects.
+   */
+  private WritableIntegerDataStore offsets;
+
+  /**
+   * Iterator helper.
+   */
+  private ArrayDBIDs ids;
+
+  /**
+   * Number of objects, heap size (k-1) and sample size.
+   */
+  private int size, kk, items;
+
+  /**
+   * Neighbor heaps (max-heaps of size kk, by offset).
+   */
+  private int[] nbr;
+
+  /**
+   * Neighbor distances.
+   */
+  private double[] dist;
+
+  /**
+   * Flags for new neighbors.
+   */
+  private boolean[] isnew;
+
+  /**
+   * Sampled new forward neighbors (items per object).
+   */
+  private int[] fwdNew;
+
+  /**
+   * Old forward neighbors (kk per object).
+   */
+  private int[] fwdOld;
+
+  /**
+   * Sampled new and old reverse neighbors (items per object).
+   */
+  private int[] revNew, revOld;
+
+  /**
+   * Number of candidates in each list.
+   */
+  private int[] fwdNewCnt, fwdOldCnt, revNewCnt, revOldCnt;
+
+  /**
+   * Number of reverse neighbors seen, for reservoir sampling.
+   */
+  private int[] revNewSeen, revOldSeen;
+
+  /**
+   * Lock stripes.
+   */
+  private Object[] locks;
+
+  /**
+   * Number of distance computations.
+   */
+  private LongAdder distcalc = new LongAdder();
+
+  /**
+   * Number of heap updates.
+   */
+  private LongAdder updates = new LongAdder();
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param distance distance function
+   * @param k k
+   * @param rnd Random generator
+   * @param delta Delta threshold
+   * @param rho Rho threshold
+   * @param noInitialNeighbors Do not use initial neighbors
+   * @param iterations Maximum number of iterations
+   */
+  public ParallelNNDescent(Relation<O> relation, Distance<? super O> distance, int k, RandomFactory rnd, double delta, double rho, boolean noInitialNeighbors, int iterations) {
+    super(relation, distance, k);
+    this.rnd = rnd;
+    this.delta = delta;
+    this.rho = rho;
+    this.noInitialNeighbors = noInitialNeighbors;
+    this.iterations = iterations;
+  }
+
+  @Override
+  protected void preprocess() {
+    final long starttime = System.currentTimeMillis();
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    size = ids.size();
+    // to add query point itself in the end, internally (k-1) is used
+    kk = Math.min(k - 1, Math.max(size - 1, 0));
+    items = (int) Math.ceil(rho * kk);
+    if((long) size * Math.max(kk, items) > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Data set too large for flat neighbor arrays: " + size + " * " + Math.max(kk, items));
+    }
+    offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      offsets.putInt(it, it.getOffset());
+    }
+    nbr = new int[size * kk];
+    Arrays.fill(nbr, -1);
+    dist = new double[size * kk];
+    Arrays.fill(dist, Double.POSITIVE_INFINITY);
+    isnew = new boolean[size * kk];
+    fwdNew = new int[size * items];
+    fwdOld = new int[size * kk];
+    revNew = new int[size * items];
+    revOld = new int[size * items];
+    fwdNewCnt = new int[size];
+    fwdOldCnt = new int[size];
+    revNewCnt = new int[size];
+    revOldCnt = new int[size];
+    revNewSeen = new int[size];
+    revOldSeen = new int[size];
+    locks = new Object[LOCKS];
+    for(int i = 0; i < LOCKS; i++) {
+      locks[i] = new Object();
+    }
+
+    if(kk > 0) {
+      IndefiniteProgress progress = LOG.isVerbose() ? new IndefiniteProgress("KNNGraph iteration", LOG) : null;
+      ParallelExecutor.runWorkStealing(ids, new PhaseProcessor(PHASE_INIT));
+      int iter = 0;
+      for(; iter < iterations; iter++) {
+        if(iter > 0 || !noInitialNeighbors) {
+          Arrays.fill(revNewCnt, 0);
+          Arrays.fill(revOldCnt, 0);
+          Arrays.fill(revNewSeen, 0);
+          Arrays.fill(revOldSeen, 0);
+          ParallelExecutor.runWorkStealing(ids, new PhaseProcessor(PHASE_SAMPLE));
+        }
+        updates.reset();
+        ParallelExecutor.runWorkStealing(ids, new PhaseProcessor(PHASE_JOIN));
+        final long upd = updates.sum();
+        if(LOG.isStatistics()) {
+          LOG.statistics(new DoubleStatistic(prefix + ".scan-rate", distcalc.sum() * .5 / (size * (size - 1L))));
+          LOG.statistics(new DoubleStatistic(prefix + ".update-rate", upd / (double) (kk * (long) size)));
+        }
+        LOG.incrementProcessed(progress);
+        if(upd <= delta * kk * size) {
+          LOG.verbose("KNNGraph terminated because the update rate got smaller than delta.");
+          break;
+        }
+      }
+      if(LOG.isVerbose() && iter == iterations) {
+        LOG.verbose("KNNGraph terminated because the maximum number of iterations was reached.");
+      }
+      LOG.setCompleted(progress);
+    }
+    // Release memory early:
+    fwdNew = fwdOld = revNew = revOld = null;
+    fwdNewCnt = fwdOldCnt = revNewCnt = revOldCnt = revNewSeen = revOldSeen = null;
+    isnew = null;
+    // convert to kNN lists
+    storage = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_DB, KNNList.class);
+    DBIDArrayIter it2 = ids.iter();
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      heap.insert(0, it); // Add query point
+      for(int i = it.getOffset() * kk, e = i + kk; i < e; i++) {
+        if(nbr[i] >= 0) {
+          heap.insert(dist[i], it2.seek(nbr[i]));
+        }
+      }
+      storage.put(it, heap.toKNNList());
+    }
+    nbr = null;
+    dist = null;
+    offsets.destroy();
+    offsets = null;
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(prefix + ".distance-computations", distcalc.sum()));
+      LOG.statistics(new LongStatistic(prefix + ".construction-time.ms", System.currentTimeMillis() - starttime));
+    }
+  }
+
+  /**
+   * Get the lock for an object.
+   *
+   * @param a Object offset
+   * @return Lock
+   */
+  private Object lock(int a) {
+    return locks[a & (LOCKS - 1)];
+  }
+
+  /**
+   * Insert a neighbor into a heap. The caller must hold the lock.
+   *
+   * @param a Object offset
+   * @param b Neighbor offset
+   * @param d Distance
+   * @return {@code true} if the neighbor was added.
+   */
+  private boolean insert(int a, int b, double d) {
+    final int base = a * kk;
+    if(d >= dist[base]) {
+      return false;
+    }
+    for(int i = base, e = base + kk; i < e; i++) {
+      if(nbr[i] == b) {
+        return false;
+      }
+    }
+    // Replace the top of the heap, and sift down:
+    int i = 0;
+    while(true) {
+      final int l = (i << 1) + 1, r = l + 1;
+      if(l >= kk) {
+        break;
+      }
+      final int c = r < kk && dist[base + r] > dist[base + l] ? r : l;
+      if(dist[base + c] <= d) {
+        break;
+      }
+      dist[base + i] = dist[base + c];
+      nbr[base + i] = nbr[base + c];
+      isnew[base + i] = isnew[base + c];
+      i = c;
+    }
+    dist[base + i] = d;
+    nbr[base + i] = b;
+    isnew[base + i] = true;
+    return true;
+  }
+
+  /**
+   * Add a candidate by reservoir sampling. The caller must hold the lock.
+   *
+   * @param cand Candidate array
+   * @param cnt Candidate counts
+   * @param seen Number of candidates seen
+   * @param t Target object
+   * @param v Candidate
+   * @param r Random generator
+   */
+  private void addCandidate(int[] cand, int[] cnt, int[] seen, int t, int v, Random r) {
+    final int base = t * items, c = cnt[t];
+    for(int i = base, e = base + c; i < e; i++) {
+      if(cand[i] == v) {
+        return;
+      }
+    }
+    final int s = seen[t]++;
+    if(c < items) {
+      cand[base + c] = v;
+      cnt[t] = c + 1;
+    }
+    else {
+      final int p = r.nextInt(s + 1);
+      if(p < items) {
+        cand[base + p] = v;
+      }
+    }
+  }
+
+  /**
+   * Processor for one phase of the algorithm.
+   *
+   * @author Erich Schubert
+   */
+  private class PhaseProcessor implements Processor {
+    /**
+     * Phase to run.
+     */
+    private final int phase;
+
+    /**
+     * Seed generator for the workers.
+     */
+    private final Random seeds = rnd.getSingleThreadedRandom();
+
+    /**
+     * Constructor.
+     *
+     * @param phase Phase to run
+     */
+    PhaseProcessor(int phase) {
+      this.phase = phase;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      long seed;
+      synchronized(seeds) {
+        seed = seeds.nextLong();
+      }
+      return new Worker(phase, new Random(seed));
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      ParallelNNDescent<?>.Worker w = (ParallelNNDescent<?>.Worker) inst;
+      distcalc.add(w.distcalc);
+      updates.add(w.updates);
+    }
+  }
+
+  /**
+   * Worker instance.
+   *
+   * @author Erich Schubert
+   */
+  private class Worker implements Processor.Instance {
+    /**
+     * Phase to run.
+     */
+    private final int phase;
+
+    /**
+     * Random generator.
+     */
+    private final Random r;
+
+    /**
+     * Iterators for distance computations.
+     */
+    private final DBIDArrayIter ia = ids.iter(), ib = ids.iter();
+
+    /**
+     * Heap positions of sampled neighbors.
+     */
+    private final int[] pos = new int[items];
+
+    /**
+     * Buffers for the merged new and old candidates.
+     */
+    private final int[] newbuf = new int[items << 1], oldbuf = new int[kk + items];
+
+    /**
+     * Distance computations and updates.
+     */
+    long distcalc, updates;
+
+    /**
+     * Constructor.
+     *
+     * @param phase Phase to run
+     * @param r Random generator
+     */
+    Worker(int phase, Random r) {
+      this.phase = phase;
+      this.r = r;
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      final int v = offsets.intValue(id);
+      switch(phase){
+      case PHASE_INIT:
+        initialize(v);
+        break;
+      case PHASE_SAMPLE:
+        sample(v);
+        break;
+      case PHASE_JOIN:
+        join(v);
+        break;
+      default:
+        throw new IllegalStateException();
+      }
+    }
+
+    /**
+     * Compute a distance.
+     *
+     * @param a First offset
+     * @param b Second offset
+     * @return Distance
+     */
+    private double distance(int a, int b) {
+      ++distcalc;
+      return distanceQuery.distance(ia.seek(a), ib.seek(b));
+    }
+
+    /**
+     * Random initialization of an object.
+     *
+     * @param v Object offset
+     */
+    private void initialize(int v) {
+      if(noInitialNeighbors) {
+        // Only use random candidates in the first iteration:
+        fwdNewCnt[v] = randomSample(fwdNew, v);
+        revNewCnt[v] = randomSample(revNew, v);
+        return;
+      }
+      for(int i = 0; i < items; i++) {
+        int j = r.nextInt(size - 1);
+        j = j < v ? j : j + 1; // Except v
+        final double d = distance(v, j);
+        synchronized(lock(v)) {
+          insert(v, j, d);
+        }
+      }
+    }
+
+    /**
+     * Draw a random sample of other objects, without duplicates.
+     *
+     * @param cand Candidate array
+     * @param v Object offset
+     * @return Number of candidates
+     */
+    private int randomSample(int[] cand, int v) {
+      final int base = v * items, n = Math.min(items, size - 1);
+      int c = 0;
+      outer: while(c < n) {
+        int j = r.nextInt(size - 1);
+        j = j < v ? j : j + 1; // Except v
+        for(int i = base, e = base + c; i < e; i++) {
+          if(cand[i] == j) {
+            continue outer;
+          }
+        }
+        cand[base + c++] = j;
+      }
+      return c;
+    }
+
+    /**
+     * Sample the new forward neighbors of an object, mark them as old, and
+     * add the object to the reverse candidates of its neighbors.
+     *
+     * @param v Object offset
+     */
+    private void sample(int v) {
+      final int hbase = v * kk, nbase = v * items;
+      int nc = 0, seen = 0, oc = 0;
+      // Reservoir sample of the heap positions of new neighbors:
+      for(int i = hbase, e = hbase + kk; i < e; i++) {
+        if(nbr[i] < 0) {
+          continue;
+        }
+        if(!isnew[i]) {
+          fwdOld[hbase + oc++] = nbr[i];
+          continue;
+        }
+        if(nc < items) {
+          pos[nc++] = i;
+        }
+        else {
+          final int p = r.nextInt(seen + 1);
+          if(p < items) {
+            pos[p] = i;
+          }
+        }
+        ++seen;
+      }
+      for(int i = 0; i < nc; i++) {
+        isnew[pos[i]] = false;
+        fwdNew[nbase + i] = nbr[pos[i]];
+      }
+      fwdNewCnt[v] = nc;
+      fwdOldCnt[v] = oc;
+      // Reverse neighbors:
+      for(int i = nbase, e = nbase + nc; i < e; i++) {
+        final int j = fwdNew[i];
+        synchronized(lock(j)) {
+          addCandidate(revNew, revNewCnt, revNewSeen, j, v, r);
+        }
+      }
+      for(int i = hbase, e = hbase + oc; i < e; i++) {
+        final int j = fwdOld[i];
+        synchronized(lock(j)) {
+          addCandidate(revOld, revOldCnt, revOldSeen, j, v, r);
+        }
+      }
+    }
+
+    /**
+     * Local join of the candidates of an object.
+     *
+     * @param v Object offset
+     */
+    private void join(int v) {
+      final int nc = merge(fwdNew, v * items, fwdNewCnt[v], revNew, v * items, revNewCnt[v], newbuf);
+      final int oc = merge(fwdOld, v * kk, fwdOldCnt[v], revOld, v * items, revOldCnt[v], oldbuf);
+      for(int i = 0; i < nc; i++) {
+        final int a = newbuf[i];
+        // new x new
+        for(int j = i + 1; j < nc; j++) {
+          pair(a, newbuf[j]);
+        }
+        // new x old
+        for(int j = 0; j < oc; j++) {
+          final int b = oldbuf[j];
+          if(a != b) {
+            pair(a, b);
+          }
+        }
+      }
+    }
+
+    /**
+     * Merge forward and reverse candidates, removing duplicates.
+     *
+     * @param fwd Forward candidates
+     * @param fbase Forward offset
+     * @param fc Forward count
+     * @param rev Reverse candidates
+     * @param rbase Reverse offset
+     * @param rc Reverse count
+     * @param buf Output buffer
+     * @return Number of candidates
+     */
+    private int merge(int[] fwd, int fbase, int fc, int[] rev, int rbase, int rc, int[] buf) {
+      System.arraycopy(fwd, fbase, buf, 0, fc);
+      int c = fc;
+      outer: for(int i = rbase, e = rbase + rc; i < e; i++) {
+        final int j = rev[i];
+        for(int l = 0; l < fc; l++) {
+          if(buf[l] == j) {
+            continue outer;
+          }
+        }
+        buf[c++] = j;
+      }
+      return c;
+    }
+
+    /**
+     * Try to improve the neighbors of two objects.
+     *
+     * @param a First object
+     * @param b Second object
+     */
+    private void pair(int a, int b) {
+      final double d = distance(a, b);
+      // The bounds are only read under the lock, as they may change.
+      synchronized(lock(a)) {
+        updates += insert(a, b, d) ? 1 : 0;
+      }
+      synchronized(lock(b)) {
+        updates += insert(b, a, d) ? 1 : 0;
+      }
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Index factory.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> extends AbstractMaterializeKNNPreprocessor.Factory<O> {
+    /**
+     * Random generator
+     */
+    private final RandomFactory rnd;
+
+    /**
+     * Early termination parameter
+     */
+    private final double delta;
+
+    /**
+     * Sample rate
+     */
+    private final double rho;
+
+    /**
+     * Do not use initial neighbors
+     */
+    private final boolean noInitialNeighbors;
+
+    /**
+     * Maximum number of iterations
+     */
+    private final int iterations;
+
+    /**
+     * Constructor.
+     *
+     * @param k K
+     * @param distance distance function
+     * @param rnd Random generator
+     * @param delta Delta threshold
+     * @param rho Rho threshold
+     * @param noInitialNeighbors Do not use initial neighbors
+     * @param iterations Maximum number of iterations
+     */
+    public Factory(int k, Distance<? super O> distance, RandomFactory rnd, double delta, double rho, boolean noInitialNeighbors, int iterations) {
+      super(k, distance);
+      this.rnd = rnd;
+      this.delta = delta;
+      this.rho = rho;
+      this.noInitialNeighbors = noInitialNeighbors;
+      this.iterations = iterations;
+    }
+
+    @Override
+    public ParallelNNDescent<O> instantiate(Relation<O> relation) {
+      return new ParallelNNDescent<>(relation, distance, k, rnd, delta, rho, noInitialNeighbors, iterations);
+    }
+
+    /**
+     * Parameterization class, using the options of {@link NNDescent}.
+     *
+     * @author Erich Schubert
+     *
+     * @hidden
+     *
+     * @param <O> Object type
+     */
+    public static class Par<O> extends AbstractMaterializeKNNPreprocessor.Factory.Par<O> {
+      /**
+       * Random generator
+       */
+      private RandomFactory rnd;
+
+      /**
+       * Early termination parameter
+       */
+      private double delta;
+
+      /**
+       * Sample rate
+       */
+      private double rho;
+
+      /**
+       * No initial neighbors
+       */
+      private boolean noInitialNeighbors;
+
+      /**
+       * Maximum number of iterations
+       */
+      private int iterations;
+
+      @Override
+      public void configure(Parameterization config) {
+        super.configure(config);
+        new RandomParameter(NNDescent.Factory.Par.SEED_ID).grab(config, x -> rnd = x);
+        new DoubleParameter(NNDescent.Factory.Par.DELTA_ID, 0.001) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
+            .grab(config, x -> delta = x);
+        new DoubleParameter(NNDescent.Factory.Par.RHO_ID, 1) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_DOUBLE) //
+            .grab(config, x -> rho = x);
+        new Flag(NNDescent.Factory.Par.INITIAL_ID).grab(config, x -> noInitialNeighbors = x);
+        new IntParameter(NNDescent.Factory.Par.ITER_ID, 100) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> iterations = x);
+      }
+
+      @Override
+      public ParallelNNDescent.Factory<O> make() {
+        return new ParallelNNDescent.Factory<>(k, distance, rnd, delta, rho, noInitialNeighbors, iterations);
+      }
+    }
+  }
+}
@@ -32,7 +32,9 @@ import elki.data.DoubleVector;
 import elki.data.NumberVector;
 import elki.data.VectorUtil;
 import elki.data.type.TypeUtil;
+import elki.database.Database;
 import elki.database.HashmapDatabase;
+import elki.database.StaticArrayDatabase;
 import elki.database.UpdatableDatabase;
 import elki.database.ids.*;
 import elki.database.query.QueryBuilder;
@@ -121,6 +123,22 @@ public class MaterializedKNNPreprocessorTest {
     testKNNQueries(relation, lin_knn_query, preproc_knn_query, k);
   }
 
+  @Test
+  public void testParallelMaterialization() {
+    for(Class<?> dbc : new Class<?>[] { StaticArrayDatabase.class, HashmapDatabase.class }) {
+      Database db = new ELKIBuilder<>(dbc.asSubclass(Database.class)) //
+          .with(FileBasedDatabaseConnection.Par.INPUT_ID, getClass().getClassLoader().getResource("elki/testdata/unittests/different-densities-2d-no-noise.ascii")) //
+          .build();
+      db.initialize();
+      Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+      DistanceQuery<DoubleVector> distanceQuery = new QueryBuilder<>(relation, EuclideanDistance.STATIC).distanceQuery();
+      assertEquals("Data set size doesn't match parameters.", 1000, relation.size());
+      MaterializeKNNPreprocessor<DoubleVector> preproc = new MaterializeKNNPreprocessor<>(relation, distanceQuery, k, false);
+      preproc.initialize();
+      testKNNQueries(relation, new LinearScanKNNByDBID<>(distanceQuery), preproc.kNNByDBID(distanceQuery, k, 0), k, 0);
+    }
+  }
+
   public static void testKNNQueries(Relation<DoubleVector> rep, KNNSearcher<DBIDRef> lin_knn_query, KNNSearcher<DBIDRef> preproc_knn_query, int k) {
     assertNotEquals("Preprocessor knn query class incorrect.", lin_knn_query.getClass(), preproc_knn_query.getClass());
     for(DBIDIter iter = rep.iterDBIDs(); iter.valid(); iter.advance()) {
@@ -28,6 +28,7 @@ import elki.database.ids.*;
 import elki.database.query.PrioritySearcher;
 import elki.database.query.distance.DistanceQuery;
 import elki.database.query.distance.SpatialDistanceQuery;
+import elki.database.query.knn.BatchKNNSearcher;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.query.range.RangeSearcher;
 import elki.database.relation.Relation;
@@ -153,6 +154,13 @@ public class FlatRStarTreeIndex<O extends NumberVector> extends FlatRStarTree im
         RStarTreeUtil.getKNNQuery(this, (SpatialDistanceQuery<O>) distanceQuery, maxk, flags) : null;
   }
 
+  @Override
+  public BatchKNNSearcher batchKNNByDBID(DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    // Can we support this distance function - spatial distances only!
+    return distanceQuery.getRelation() == relation && distanceQuery instanceof SpatialDistanceQuery ? //
+        RStarTreeUtil.getBatchKNNQuery(this, (SpatialDistanceQuery<O>) distanceQuery, maxk, flags) : null;
+  }
+
   @Override
   public RangeSearcher<O> rangeByObject(DistanceQuery<O> distanceQuery, double maxradius, int flags) {
     // Can we support this distance function - spatial distances only!
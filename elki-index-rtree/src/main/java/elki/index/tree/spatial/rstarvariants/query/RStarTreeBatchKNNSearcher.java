@@ -0,0 +1,244 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.tree.spatial.rstarvariants.query;
+
+import java.util.Arrays;
+
+import elki.data.ModifiableHyperBoundingBox;
+import elki.data.spatial.SpatialComparable;
+import elki.database.datastore.DataStore;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.*;
+import elki.database.query.knn.BatchKNNSearcher;
+import elki.database.relation.Relation;
+import elki.distance.SpatialPrimitiveDistance;
+import elki.index.tree.spatial.SpatialDirectoryEntry;
+import elki.index.tree.spatial.SpatialPointLeafEntry;
+import elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
+import elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
+import elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+
+/**
+ * Batch kNN query for a spatial index.
+ * <p>
+ * The queries are grouped by the leaf they are stored in. For each group, the
+ * tree is traversed only once, by the minimum distance to the bounding box of
+ * the group, and the largest kNN distance of the group is used for pruning.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @assoc - - - AbstractRStarTree
+ * @assoc - - - SpatialPrimitiveDistance
+ */
+public class RStarTreeBatchKNNSearcher<O extends SpatialComparable> implements BatchKNNSearcher {
+  /**
+   * The index to use
+   */
+  protected final AbstractRStarTree<?, ?, ?> tree;
+
+  /**
+   * Spatial primitive distance function.
+   */
+  protected final SpatialPrimitiveDistance<? super O> distance;
+
+  /**
+   * Relation we query.
+   */
+  protected Relation<? extends O> relation;
+
+  /**
+   * Queries of the current group.
+   */
+  private SpatialPointLeafEntry[] group = new SpatialPointLeafEntry[16];
+
+  /**
+   * kNN heaps of the current group.
+   */
+  private KNNHeap[] heaps = new KNNHeap[16];
+
+  /**
+   * kNN distances of the current group.
+   */
+  private double[] kdists = new double[16];
+
+  /**
+   * Size of the current group.
+   */
+  private int size;
+
+  /**
+   * Bounding box of the current group.
+   */
+  private ModifiableHyperBoundingBox mbr;
+
+  /**
+   * Largest kNN distance in the current group.
+   */
+  private double bound;
+
+  /**
+   * Constructor.
+   * 
+   * @param tree Index to use
+   * @param relation Data relation to query
+   * @param distance Distance function
+   */
+  public RStarTreeBatchKNNSearcher(AbstractRStarTree<?, ?, ?> tree, Relation<? extends O> relation, SpatialPrimitiveDistance<? super O> distance) {
+    super();
+    this.relation = relation;
+    this.tree = tree;
+    this.distance = distance;
+  }
+
+  @Override
+  public DataStore<KNNList> getKNN(DBIDs ids, int k) {
+    if(k < 1) {
+      throw new IllegalArgumentException("At least one neighbor has to be requested!");
+    }
+    WritableDataStore<KNNList> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, KNNList.class);
+    DBIDs lookup = ids instanceof DBIDRange || ids instanceof SetDBIDs ? ids : DBIDUtil.newHashSet(ids);
+    int found = processNode(tree.getRootID(), lookup, k, store);
+    if(found < ids.size()) { // Objects not in the tree, or duplicates
+      RStarTreeKNNSearcher<O> knnq = new RStarTreeKNNSearcher<>(tree, relation, distance);
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        if(store.get(it) == null) {
+          store.put(it, knnq.getKNN(relation.get(it), k));
+        }
+      }
+    }
+    return store;
+  }
+
+  /**
+   * Process the queries stored in the leaves below a node.
+   *
+   * @param nodeID Node id
+   * @param lookup Query objects
+   * @param k Number of neighbors
+   * @param store Output storage
+   * @return Number of queries processed
+   */
+  private int processNode(int nodeID, DBIDs lookup, int k, WritableDataStore<KNNList> store) {
+    AbstractRStarTreeNode<?, ?> node = tree.getNode(nodeID);
+    if(!node.isLeaf()) {
+      int found = 0;
+      for(int i = 0; i < node.getNumEntries(); i++) {
+        found += processNode(((SpatialDirectoryEntry) node.getEntry(i)).getPageID(), lookup, k, store);
+      }
+      return found;
+    }
+    size = 0;
+    for(int i = 0; i < node.getNumEntries(); i++) {
+      SpatialPointLeafEntry entry = (SpatialPointLeafEntry) node.getEntry(i);
+      if(!lookup.contains(entry.getDBID())) {
+        continue;
+      }
+      if(size == group.length) {
+        group = Arrays.copyOf(group, size << 1);
+        heaps = Arrays.copyOf(heaps, size << 1);
+        kdists = Arrays.copyOf(kdists, size << 1);
+      }
+      if(size == 0) {
+        mbr = new ModifiableHyperBoundingBox(entry);
+      }
+      else {
+        mbr.extend(entry);
+      }
+      group[size] = entry;
+      heaps[size] = DBIDUtil.newHeap(k);
+      kdists[size] = Double.POSITIVE_INFINITY;
+      ++size;
+      tree.statistics.countKNNQuery();
+    }
+    if(size == 0) {
+      return 0;
+    }
+    searchGroup(k);
+    for(int i = 0; i < size; i++) {
+      store.put(group[i].getDBID(), heaps[i].toKNNList());
+      group[i] = null;
+      heaps[i] = null;
+    }
+    return size;
+  }
+
+  /**
+   * Find the nearest neighbors of the current group.
+   *
+   * @param k Number of neighbors
+   */
+  private void searchGroup(int k) {
+    bound = Double.POSITIVE_INFINITY;
+    final DoubleIntegerMinHeap pq = new DoubleIntegerMinHeap(Math.min(k << 1, 21));
+    expandNode(pq, tree.getRootID());
+    while(!pq.isEmpty()) {
+      if(pq.peekKey() > bound) {
+        break;
+      }
+      int nodeID = pq.peekValue();
+      pq.poll(); // Remove from heap.
+      expandNode(pq, nodeID);
+    }
+  }
+
+  /**
+   * Expand a node for the current group.
+   *
+   * @param pq Priority queue
+   * @param nodeID Node to expand
+   */
+  private void expandNode(DoubleIntegerMinHeap pq, int nodeID) {
+    AbstractRStarTreeNode<?, ?> node = tree.getNode(nodeID);
+    // data node
+    if(node.isLeaf()) {
+      for(int i = 0; i < node.getNumEntries(); i++) {
+        SpatialPointLeafEntry entry = (SpatialPointLeafEntry) node.getEntry(i);
+        if(distance.minDist(mbr, entry) > bound) {
+          continue;
+        }
+        double newbound = 0.;
+        for(int j = 0; j < size; j++) {
+          double kdist = kdists[j];
+          final double dist = distance.minDist(group[j], entry);
+          tree.statistics.countDistanceCalculation();
+          if(dist <= kdist) {
+            kdist = kdists[j] = heaps[j].insert(dist, entry.getDBID());
+          }
+          newbound = kdist > newbound ? kdist : newbound;
+        }
+        bound = newbound;
+      }
+    }
+    // directory node
+    else {
+      for(int i = 0; i < node.getNumEntries(); i++) {
+        SpatialDirectoryEntry entry = (SpatialDirectoryEntry) node.getEntry(i);
+        double dist = distance.minDist(mbr, entry);
+        if(dist <= bound) {
+          pq.add(dist, entry.getPageID());
+        }
+      }
+    }
+  }
+}
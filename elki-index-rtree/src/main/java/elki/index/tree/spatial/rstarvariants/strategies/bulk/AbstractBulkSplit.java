@@ -22,6 +22,11 @@ package elki.index.tree.spatial.rstarvariants.strategies.bulk;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+import elki.data.spatial.SpatialSingleMeanComparator;
+import elki.parallel.ParallelCore;
+
 /**
  * Encapsulates the required parameters for a bulk split of a spatial index.
  * 
@@ -29,6 +34,11 @@ import java.util.List;
  * @since 0.4.0
  */
 public abstract class AbstractBulkSplit implements BulkSplit {
+  /**
+   * Minimum partition size to process in a separate task.
+   */
+  protected static final int PARALLEL_MIN = 4096;
+
   /**
    * Constructor
    */
@@ -85,4 +95,82 @@ public abstract class AbstractBulkSplit implements BulkSplit {
     }
     return partitions;
   }
-}
\ No newline at end of file
+
+  /**
+   * Run a partitioning step, in the fork-join pool if the data set is large.
+   *
+   * @param size Data set size
+   * @param step Partitioning step
+   */
+  protected static void invoke(int size, Runnable step) {
+    if(size >= PARALLEL_MIN && !ForkJoinTask.inForkJoinPool()) {
+      ParallelCore.getCore().getForkJoinPool().invoke(ForkJoinTask.adapt(step));
+    }
+    else {
+      step.run();
+    }
+  }
+
+  /**
+   * Partition consecutive slices, appending the results in order. Large slices
+   * are processed in separate tasks, which does not change the result.
+   *
+   * @param bounds Slice boundaries
+   * @param c Comparator for the slices processed in the current thread
+   * @param ret Output list
+   * @param partitioner Partitioning of a single slice
+   * @param <T> Object type
+   */
+  protected static <T> void partitionSlices(int[] bounds, SpatialSingleMeanComparator c, List<List<T>> ret, SlicePartitioner<T> partitioner) {
+    final int s = bounds.length - 1;
+    List<ForkJoinTask<List<List<T>>>> tasks = null;
+    if(ForkJoinTask.inForkJoinPool()) {
+      for(int i = 0; i < s; i++) {
+        final int start = bounds[i], end = bounds[i + 1];
+        if(end - start < PARALLEL_MIN) {
+          continue;
+        }
+        if(tasks == null) {
+          tasks = new ArrayList<>(s);
+          for(int j = 0; j < s; j++) {
+            tasks.add(null);
+          }
+        }
+        tasks.set(i, ForkJoinTask.adapt(() -> {
+          List<List<T>> out = new ArrayList<>();
+          partitioner.partition(start, end, new SpatialSingleMeanComparator(0), out);
+          return out;
+        }).fork());
+      }
+    }
+    for(int i = 0; i < s; i++) {
+      ForkJoinTask<List<List<T>>> task = tasks != null ? tasks.get(i) : null;
+      if(task == null) {
+        partitioner.partition(bounds[i], bounds[i + 1], c, ret);
+      }
+      else {
+        ret.addAll(task.join());
+      }
+    }
+  }
+
+  /**
+   * Recursive partitioning of a slice of the data.
+   *
+   * @author Erich Schubert
+   *
+   * @param <T> Object type
+   */
+  @FunctionalInterface
+  protected interface SlicePartitioner<T> {
+    /**
+     * Partition a slice.
+     *
+     * @param start Slice start
+     * @param end Slice end (exclusive)
+     * @param c Comparator to use
+     * @param ret Output list
+     */
+    void partition(int start, int end, SpatialSingleMeanComparator c, List<List<T>> ret);
+  }
+}
@@ -57,7 +57,7 @@ public class AdaptiveSortTileRecursiveBulkSplit extends AbstractBulkSplit {
     final int dims = spatialObjects.get(0).getDimensionality();
     final int p = (int) FastMath.ceil(spatialObjects.size() / (double) maxEntries);
     List<List<T>> ret = new ArrayList<>(p);
-    strPartition(spatialObjects, 0, spatialObjects.size(), 0, dims, maxEntries, new SpatialSingleMeanComparator(0), ret);
+    invoke(spatialObjects.size(), () -> strPartition(spatialObjects, 0, spatialObjects.size(), 0, dims, maxEntries, new SpatialSingleMeanComparator(0), ret));
     return ret;
   }
 
@@ -117,9 +117,10 @@ public class AdaptiveSortTileRecursiveBulkSplit extends AbstractBulkSplit {
     }
 
     final double len = end - start; // double intentional!
+    final int[] bounds = new int[s + 1];
     for (int i = 0; i < s; i++) {
       // We don't completely sort, but only ensure the quantile is invariant.
-      int s2 = start + (int) ((i * len) / s);
+      int s2 = bounds[i] = start + (int) ((i * len) / s);
       int e2 = start + (int) (((i + 1) * len) / s);
       // LoggingUtil.warning("STR " + dim + " s2:" + s2 + " e2:" + e2);
       if (e2 < end) {
@@ -128,11 +129,13 @@ public class AdaptiveSortTileRecursiveBulkSplit extends AbstractBulkSplit {
       }
       if (depth + 1 == dims) {
         ret.add(objs.subList(s2, e2));
-      } else {
-        // Descend
-        strPartition(objs, s2, e2, depth + 1, dims, maxEntries, c, ret);
       }
     }
+    bounds[s] = end;
+    if (depth + 1 < dims) {
+      // Descend, the slices are independent:
+      partitionSlices(bounds, c, ret, (s2, e2, c2, ret2) -> strPartition(objs, s2, e2, depth + 1, dims, maxEntries, c2, ret2));
+    }
   }
 
   /**
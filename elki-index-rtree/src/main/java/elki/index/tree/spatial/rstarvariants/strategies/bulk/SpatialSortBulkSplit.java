@@ -68,7 +68,7 @@ public class SpatialSortBulkSplit extends AbstractBulkSplit {
 
   @Override
   public <T extends SpatialComparable> List<List<T>> partition(List<T> spatialObjects, int minEntries, int maxEntries) {
-    sorter.sort(spatialObjects);
+    invoke(spatialObjects.size(), () -> sorter.sort(spatialObjects));
     return super.trivialPartition(spatialObjects, minEntries, maxEntries);
   }
 
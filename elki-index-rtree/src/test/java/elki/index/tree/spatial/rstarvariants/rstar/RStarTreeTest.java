@@ -33,6 +33,7 @@ import elki.database.query.range.WrappedRangeDBIDByLookup;
 import elki.index.AbstractIndexStructureTest;
 import elki.index.tree.spatial.rstarvariants.AbstractRStarTreeFactory;
 import elki.index.tree.spatial.rstarvariants.query.EuclideanRStarTreeDistancePrioritySearcher;
+import elki.index.tree.spatial.rstarvariants.query.RStarTreeBatchKNNSearcher;
 import elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNSearcher;
 import elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeSearcher;
 import elki.index.tree.spatial.rstarvariants.strategies.insert.ApproximativeLeastOverlapInsertionStrategy;
@@ -61,6 +62,7 @@ public class RStarTreeTest extends AbstractIndexStructureTest {
     assertPrioritySearchEuclidean(factory, EuclideanRStarTreeDistancePrioritySearcher.class);
     assertExactCosine(factory, RStarTreeKNNSearcher.class, RStarTreeRangeSearcher.class);
     assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
+    assertBatchKNNEuclidean(factory, RStarTreeBatchKNNSearcher.class);
   }
 
   /**
@@ -79,6 +81,7 @@ public class RStarTreeTest extends AbstractIndexStructureTest {
     assertPrioritySearchEuclidean(factory, EuclideanRStarTreeDistancePrioritySearcher.class);
     assertExactCosine(factory, RStarTreeKNNSearcher.class, RStarTreeRangeSearcher.class);
     assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
+    assertBatchKNNEuclidean(factory, RStarTreeBatchKNNSearcher.class);
   }
 
   /**
@@ -22,6 +22,7 @@ package elki.index.tree.spatial.rstarvariants.strategies.bulk;
 
 import org.junit.Test;
 
+import elki.data.DoubleVector;
 import elki.data.NumberVector;
 import elki.database.query.knn.WrappedKNNDBIDByLookup;
 import elki.database.query.range.WrappedRangeDBIDByLookup;
@@ -31,6 +32,7 @@ import elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNSearcher;
 import elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeSearcher;
 import elki.index.tree.spatial.rstarvariants.rstar.RStarTree;
 import elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import elki.index.tree.spatial.rstarvariants.rstar.RStarTreeIndex;
 import elki.persistent.AbstractPageFileFactory;
 import elki.utilities.ELKIBuilder;
 
@@ -52,4 +54,14 @@ public class MaxExtensionSortTileRecursiveBulkSplitTest extends AbstractIndexStr
     assertExactCosine(factory, RStarTreeKNNSearcher.class, RStarTreeRangeSearcher.class);
     assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
   }
+
+  @Test
+  public void testParallelBuild() {
+    RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+        .with(AbstractPageFileFactory.Par.PAGE_SIZE_ID, 4096) //
+        .with(RStarTreeFactory.Par.BULK_SPLIT_ID, MaxExtensionSortTileRecursiveBulkSplit.class) //
+        .build();
+    SortTileRecursiveBulkSplitTest.assertParallelPartition(MaxExtensionSortTileRecursiveBulkSplit.STATIC);
+    AbstractIndexStructureTest.<RStarTreeIndex<DoubleVector>> assertParallelBuild(factory, null);
+  }
 }
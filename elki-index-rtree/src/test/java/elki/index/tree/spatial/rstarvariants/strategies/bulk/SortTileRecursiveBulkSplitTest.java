@@ -20,8 +20,17 @@
  */
 package elki.index.tree.spatial.rstarvariants.strategies.bulk;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.Test;
 
+import elki.data.DoubleVector;
 import elki.data.NumberVector;
 import elki.database.query.knn.WrappedKNNDBIDByLookup;
 import elki.database.query.range.WrappedRangeDBIDByLookup;
@@ -31,6 +40,7 @@ import elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNSearcher;
 import elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeSearcher;
 import elki.index.tree.spatial.rstarvariants.rstar.RStarTree;
 import elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import elki.index.tree.spatial.rstarvariants.rstar.RStarTreeIndex;
 import elki.persistent.AbstractPageFileFactory;
 import elki.utilities.ELKIBuilder;
 
@@ -51,4 +61,56 @@ public class SortTileRecursiveBulkSplitTest extends AbstractIndexStructureTest {
     assertExactCosine(factory, RStarTreeKNNSearcher.class, RStarTreeRangeSearcher.class);
     assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
   }
+
+  @Test
+  public void testParallelBuild() {
+    RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+        .with(AbstractPageFileFactory.Par.PAGE_SIZE_ID, 4096) //
+        .with(RStarTreeFactory.Par.BULK_SPLIT_ID, SortTileRecursiveBulkSplit.class) //
+        .build();
+    assertParallelPartition(SortTileRecursiveBulkSplit.STATIC);
+    AbstractIndexStructureTest.<RStarTreeIndex<DoubleVector>> assertParallelBuild(factory, null);
+  }
+
+  /**
+   * Partition a random data set above the parallel threshold, once with a
+   * single worker and once with four workers, and compare the partitions.
+   *
+   * @param split Bulk split strategy
+   */
+  static void assertParallelPartition(BulkSplit split) {
+    Random random = new Random(0L);
+    List<DoubleVector> data = new ArrayList<>(50000);
+    for(int i = 0; i < 50000; i++) {
+      data.add(DoubleVector.wrap(new double[] { random.nextDouble(), random.nextDouble(), random.nextDouble() }));
+    }
+    List<List<DoubleVector>> seq = partition(split, new ArrayList<>(data), 1);
+    List<List<DoubleVector>> par = partition(split, new ArrayList<>(data), 4);
+    assertEquals("Number of partitions differs.", seq.size(), par.size());
+    for(int i = 0; i < seq.size(); i++) {
+      List<DoubleVector> a = seq.get(i), b = par.get(i);
+      assertEquals("Size of partition " + i + " differs.", a.size(), b.size());
+      for(int j = 0; j < a.size(); j++) {
+        assertSame("Partition " + i + " differs.", a.get(j), b.get(j));
+      }
+    }
+  }
+
+  /**
+   * Partition the data in a fork-join pool of the given size.
+   *
+   * @param split Bulk split strategy
+   * @param data Data to partition
+   * @param workers Number of workers
+   * @return Partitions
+   */
+  private static List<List<DoubleVector>> partition(BulkSplit split, List<DoubleVector> data, int workers) {
+    ForkJoinPool pool = new ForkJoinPool(workers);
+    try {
+      return pool.submit(() -> split.partition(data, 50, 100)).join();
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
 }
@@ -22,6 +22,7 @@ package elki.index.tree.spatial.rstarvariants.strategies.bulk;
 
 import org.junit.Test;
 
+import elki.data.DoubleVector;
 import elki.data.NumberVector;
 import elki.database.query.knn.WrappedKNNDBIDByLookup;
 import elki.database.query.range.WrappedRangeDBIDByLookup;
@@ -31,9 +32,11 @@ import elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNSearcher;
 import elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeSearcher;
 import elki.index.tree.spatial.rstarvariants.rstar.RStarTree;
 import elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import elki.index.tree.spatial.rstarvariants.rstar.RStarTreeIndex;
 import elki.math.spacefillingcurves.BinarySplitSpatialSorter;
 import elki.math.spacefillingcurves.HilbertSpatialSorter;
 import elki.math.spacefillingcurves.PeanoSpatialSorter;
+import elki.math.spacefillingcurves.SpatialSorter;
 import elki.math.spacefillingcurves.ZCurveSpatialSorter;
 import elki.persistent.AbstractPageFileFactory;
 import elki.utilities.ELKIBuilder;
@@ -111,4 +114,21 @@ public class SpatialSortBulkSplitTest extends AbstractIndexStructureTest {
     assertExactCosine(factory, RStarTreeKNNSearcher.class, RStarTreeRangeSearcher.class);
     assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
   }
+
+  /**
+   * Test that sorting in parallel does not change the bulk split.
+   */
+  @Test
+  public void testParallelBuild() {
+    for(SpatialSorter sorter : new SpatialSorter[] { ZCurveSpatialSorter.STATIC, //
+        PeanoSpatialSorter.STATIC, BinarySplitSpatialSorter.STATIC }) {
+      SortTileRecursiveBulkSplitTest.assertParallelPartition(new SpatialSortBulkSplit(sorter));
+    }
+    RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+        .with(AbstractPageFileFactory.Par.PAGE_SIZE_ID, 4096) //
+        .with(RStarTreeFactory.Par.BULK_SPLIT_ID, SpatialSortBulkSplit.class) //
+        .with(SpatialSortBulkSplit.Par.SORTER_ID, ZCurveSpatialSorter.class) //
+        .build();
+    AbstractIndexStructureTest.<RStarTreeIndex<DoubleVector>> assertParallelBuild(factory, null);
+  }
 }
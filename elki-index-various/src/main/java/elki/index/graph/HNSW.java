@@ -0,0 +1,1031 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.graph;
+
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import elki.data.type.TypeInformation;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.query.PrioritySearcher;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.index.DistancePriorityIndex;
+import elki.index.IndexFactory;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.logging.statistics.LongStatistic;
+import elki.parallel.Executor;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+import elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import elki.utilities.datastructures.heap.DoubleIntegerMaxHeap;
+import elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import net.jafama.FastMath;
+
+/**
+ * Hierarchical Navigable Small World (HNSW) graph for approximate nearest
+ * neighbor search.
+ * <p>
+ * Every object is assigned a random level with exponentially decaying
+ * probability, and is linked to up to \(M\) neighbors on each level up to its
+ * own (\(2M\) on the bottom level), chosen with the neighbor selection
+ * heuristic of the original publication. Queries descend greedily from the
+ * top level, then perform a best-first search on the bottom level keeping the
+ * \(ef\) best candidates.
+ * <p>
+ * Reference:
+ * <p>
+ * Y. A. Malkov, D. A. Yashunin<br>
+ * Efficient and robust approximate nearest neighbor search using Hierarchical
+ * Navigable Small World graphs<br>
+ * IEEE Trans. Pattern Analysis and Machine Intelligence 42(4)
+ * <p>
+ * The graph is built in parallel. Levels are drawn from the random generator
+ * in advance, but the resulting graph depends on the order in which the
+ * threads insert the objects, and hence is not deterministic.
+ * <p>
+ * The priority search returns the results of a search with the given
+ * \(ef\) in increasing order. When these are exhausted, and the cutoff
+ * permits, the search is repeated with twice the \(ef\). This is only
+ * approximately ordered, and provides no lower bounds.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - HNSWPrioritySearcher
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "Y. A. Malkov, D. A. Yashunin", //
+    title = "Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs", //
+    booktitle = "IEEE Trans. Pattern Analysis and Machine Intelligence 42(4)", //
+    url = "https://doi.org/10.1109/TPAMI.2018.2889473", //
+    bibkey = "DBLP:journals/pami/MalkovY20")
+public class HNSW<O> implements DistancePriorityIndex<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(HNSW.class);
+
+  /**
+   * The relation indexed.
+   */
+  protected final Relation<O> relation;
+
+  /**
+   * Distance function.
+   */
+  protected final Distance<? super O> distance;
+
+  /**
+   * Distance query.
+   */
+  protected final DistanceQuery<O> distanceQuery;
+
+  /**
+   * Maximum number of neighbors on the upper levels.
+   */
+  protected final int m;
+
+  /**
+   * Maximum number of neighbors on the bottom level.
+   */
+  protected final int m0;
+
+  /**
+   * Size of the candidate list during construction.
+   */
+  protected final int efConstruction;
+
+  /**
+   * Size of the candidate list during search.
+   */
+  protected final int ef;
+
+  /**
+   * Random generator for the levels.
+   */
+  protected final RandomFactory random;
+
+  /**
+   * Indexed objects.
+   */
+  private ArrayDBIDs ids;
+
+  /**
+   * Offset of each object in {@link #ids}.
+   */
+  private WritableIntegerDataStore offsets;
+
+  /**
+   * Adjacency lists, indexed by offset and level. The first entry of each
+   * list is the number of neighbors.
+   */
+  private int[][][] links;
+
+  /**
+   * Entry point (offset).
+   */
+  private volatile int entry = -1;
+
+  /**
+   * Top level of the graph.
+   */
+  private volatile int maxLevel = -1;
+
+  /**
+   * Lock for the entry point.
+   */
+  private final Object entryLock = new Object();
+
+  /**
+   * Flag to synchronize access to the adjacency lists, while building.
+   */
+  private volatile boolean building = false;
+
+  /**
+   * Number of distance computations.
+   */
+  private final LongAdder distComputations = new LongAdder();
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param m Maximum number of neighbors
+   * @param efConstruction Size of the candidate list during construction
+   * @param ef Size of the candidate list during search
+   * @param random Random generator
+   */
+  public HNSW(Relation<O> relation, Distance<? super O> distance, int m, int efConstruction, int ef, RandomFactory random) {
+    super();
+    this.relation = relation;
+    this.distance = distance;
+    this.distanceQuery = distance.instantiate(relation);
+    this.m = m;
+    this.m0 = m << 1;
+    this.efConstruction = efConstruction;
+    this.ef = ef;
+    this.random = random;
+  }
+
+  @Override
+  public void initialize() {
+    if(links != null) {
+      throw new IllegalStateException("Index already initialized.");
+    }
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT, -1);
+    links = new int[size][][];
+    // Draw the levels in advance, for reproducibility:
+    Random rnd = random.getSingleThreadedRandom();
+    final double mult = 1. / FastMath.log(m);
+    int top = 0;
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final int off = it.getOffset();
+      offsets.putInt(it, off);
+      final int level = (int) (-FastMath.log(1. - rnd.nextDouble()) * mult);
+      int[][] l = links[off] = new int[level + 1][];
+      l[0] = new int[m0 + 1];
+      for(int i = 1; i <= level; i++) {
+        l[i] = new int[m + 1];
+      }
+      top = level > top ? level : top;
+    }
+    if(size == 0) {
+      return;
+    }
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building HNSW graph", size, LOG) : null;
+    entry = 0;
+    maxLevel = links[0].length - 1;
+    LOG.incrementProcessed(prog);
+    building = true;
+    ParallelExecutor.runWorkStealing(ids.slice(1, size), ParallelExecutor.DEFAULT_MIN_GRAIN, prog, LOG, new InsertProcessor());
+    building = false;
+    LOG.ensureCompleted(prog);
+    if(LOG.isStatistics()) {
+      long edges = 0;
+      for(int[][] l : links) {
+        for(int[] n : l) {
+          edges += n[0];
+        }
+      }
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".levels", maxLevel + 1));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".edges", edges));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".construction-distance-computations", distComputations.sum()));
+    }
+  }
+
+  @Override
+  public void logStatistics() {
+    LOG.statistics(new LongStatistic(this.getClass().getName() + ".distance-computations", distComputations.sum()));
+  }
+
+  /**
+   * Check if the index can be used for a query.
+   *
+   * @param distanceQuery Distance query
+   * @param flags Optimizer flags
+   * @return {@code true} if usable
+   */
+  private boolean accepts(DistanceQuery<O> distanceQuery, int flags) {
+    return (flags & (QueryBuilder.FLAG_EXACT_ONLY | QueryBuilder.FLAG_PRECOMPUTE)) == 0 && // approximate
+        distanceQuery.getRelation() == relation && this.distance.equals(distanceQuery.getDistance());
+  }
+
+  @Override
+  public KNNSearcher<O> kNNByObject(DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    return accepts(distanceQuery, flags) ? new HNSWPriorityObjectSearcher() : null;
+  }
+
+  @Override
+  public KNNSearcher<DBIDRef> kNNByDBID(DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    return accepts(distanceQuery, flags) ? new HNSWPriorityDBIDSearcher() : null;
+  }
+
+  @Override
+  public RangeSearcher<O> rangeByObject(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    return accepts(distanceQuery, flags) ? new HNSWPriorityObjectSearcher() : null;
+  }
+
+  @Override
+  public RangeSearcher<DBIDRef> rangeByDBID(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    return accepts(distanceQuery, flags) ? new HNSWPriorityDBIDSearcher() : null;
+  }
+
+  @Override
+  public PrioritySearcher<O> priorityByObject(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    return accepts(distanceQuery, flags) ? new HNSWPriorityObjectSearcher() : null;
+  }
+
+  @Override
+  public PrioritySearcher<DBIDRef> priorityByDBID(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    return accepts(distanceQuery, flags) ? new HNSWPriorityDBIDSearcher() : null;
+  }
+
+  /**
+   * Base class for searching the graph, with scratch memory.
+   *
+   * @author Erich Schubert
+   */
+  private abstract class GraphSearcher {
+    /**
+     * Iterator to access objects by offset.
+     */
+    protected final DBIDArrayIter iter = ids.iter();
+
+    /**
+     * Visited objects.
+     */
+    protected final IntOpenHashSet visited = new IntOpenHashSet();
+
+    /**
+     * Candidates to expand.
+     */
+    protected final DoubleIntegerMinHeap candidates = new DoubleIntegerMinHeap();
+
+    /**
+     * Best results found.
+     */
+    protected final DoubleIntegerMaxHeap results = new DoubleIntegerMaxHeap();
+
+    /**
+     * Buffer for adjacency lists.
+     */
+    protected final int[] buf = new int[m0];
+
+    /**
+     * Distance to the entry point found by {@link #greedy}.
+     */
+    protected double epdist;
+
+    /**
+     * Distance computations, not yet counted.
+     */
+    protected long distcalc = 0;
+
+    /**
+     * Compute the distance to the query object.
+     *
+     * @param it Object
+     * @return Distance
+     */
+    protected abstract double queryDistance(DBIDRef it);
+
+    /**
+     * Compute the distance to the query object.
+     *
+     * @param off Object offset
+     * @return Distance
+     */
+    protected double queryDistance(int off) {
+      ++distcalc;
+      return queryDistance(iter.seek(off));
+    }
+
+    /**
+     * Copy an adjacency list into the buffer.
+     *
+     * @param off Object offset
+     * @param level Level
+     * @return Number of neighbors
+     */
+    protected int neighbors(int off, int level) {
+      final int[] l = links[off][level];
+      if(!building) {
+        System.arraycopy(l, 1, buf, 0, l[0]);
+        return l[0];
+      }
+      synchronized(l) {
+        System.arraycopy(l, 1, buf, 0, l[0]);
+        return l[0];
+      }
+    }
+
+    /**
+     * Greedy search for the nearest neighbor, on the upper levels.
+     *
+     * @param ep Entry point
+     * @param epd Distance to the entry point
+     * @param from Start level
+     * @param to Stop before reaching this level
+     * @return Closest object found, distance in {@link #epdist}
+     */
+    protected int greedy(int ep, double epd, int from, int to) {
+      for(int level = from; level > to; level--) {
+        boolean changed = true;
+        while(changed) {
+          changed = false;
+          for(int i = 0, cnt = neighbors(ep, level); i < cnt; i++) {
+            final int c = buf[i];
+            final double d = queryDistance(c);
+            if(d < epd) {
+              epd = d;
+              ep = c;
+              changed = true;
+            }
+          }
+        }
+      }
+      epdist = epd;
+      return ep;
+    }
+
+    /**
+     * Best-first search on one level. The candidates, results, and visited
+     * objects must have been initialized with the entry points.
+     *
+     * @param ef Number of results to keep
+     * @param level Level
+     */
+    protected void searchLevel(int ef, int level) {
+      while(!candidates.isEmpty()) {
+        if(candidates.peekKey() > results.peekKey() && results.size() >= ef) {
+          break;
+        }
+        final int c = candidates.peekValue();
+        candidates.poll();
+        for(int i = 0, cnt = neighbors(c, level); i < cnt; i++) {
+          final int e = buf[i];
+          if(!visited.add(e)) {
+            continue;
+          }
+          final double d = queryDistance(e);
+          if(results.size() < ef || d < results.peekKey()) {
+            candidates.add(d, e);
+            results.add(d, e, ef);
+          }
+        }
+      }
+    }
+
+    /**
+     * Search for the nearest neighbors of the query.
+     *
+     * @param ef Number of results to keep
+     */
+    protected void search(int ef) {
+      visited.clear();
+      candidates.clear();
+      results.clear();
+      int ep = entry;
+      if(ep < 0) {
+        return;
+      }
+      ep = greedy(ep, queryDistance(ep), maxLevel, 0);
+      visited.add(ep);
+      candidates.add(epdist, ep);
+      results.add(epdist, ep);
+      searchLevel(ef, 0);
+      distComputations.add(distcalc);
+      distcalc = 0;
+    }
+  }
+
+  /**
+   * Processor to insert objects into the graph in parallel.
+   *
+   * @author Erich Schubert
+   */
+  private class InsertProcessor implements Processor {
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Inserter();
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      // Nothing to do.
+    }
+  }
+
+  /**
+   * Insertion of objects, each worker thread uses its own instance.
+   *
+   * @author Erich Schubert
+   */
+  private class Inserter extends GraphSearcher implements Processor.Instance {
+    /**
+     * Query object.
+     */
+    private final DBIDArrayIter query = ids.iter();
+
+    /**
+     * Second iterator for distances between objects.
+     */
+    private final DBIDArrayIter iter2 = ids.iter();
+
+    /**
+     * Candidate buffers.
+     */
+    private double[] cdist = new double[efConstruction + m0 + 1];
+
+    /**
+     * Candidate buffers.
+     */
+    private int[] cand = new int[efConstruction + m0 + 1];
+
+    /**
+     * Selected neighbors.
+     */
+    private int[] sel = new int[m0];
+
+    /**
+     * Buffers for shrinking adjacency lists.
+     */
+    private double[] sdist = new double[m0 + 1];
+
+    /**
+     * Buffers for shrinking adjacency lists.
+     */
+    private int[] scand = new int[m0 + 1], ssel = new int[m0];
+
+    @Override
+    protected double queryDistance(DBIDRef it) {
+      return distanceQuery.distance(query, it);
+    }
+
+    /**
+     * Compute the distance between two objects.
+     *
+     * @param a First offset
+     * @param b Second offset
+     * @return Distance
+     */
+    private double distance(int a, int b) {
+      ++distcalc;
+      return distanceQuery.distance(iter.seek(a), iter2.seek(b));
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      final int q = offsets.intValue(id);
+      final int level = links[q].length - 1;
+      query.seek(q);
+      int ep, top;
+      synchronized(entryLock) {
+        ep = entry;
+        top = maxLevel;
+        // Hold the lock while inserting a new top level object (rare).
+        if(level > top) {
+          insert(q, level, ep, top);
+          entry = q;
+          maxLevel = level;
+          return;
+        }
+      }
+      insert(q, level, ep, top);
+    }
+
+    /**
+     * Insert an object into the graph.
+     *
+     * @param q Object offset
+     * @param level Level of the object
+     * @param ep Entry point
+     * @param top Top level
+     */
+    private void insert(int q, int level, int ep, int top) {
+      ep = greedy(ep, queryDistance(ep), top, level);
+      visited.clear();
+      candidates.clear();
+      results.clear();
+      visited.add(ep);
+      candidates.add(epdist, ep);
+      results.add(epdist, ep);
+      for(int l = Math.min(top, level); l >= 0; l--) {
+        searchLevel(efConstruction, l);
+        // Extract the results in ascending order:
+        int n = results.size();
+        for(int i = n - 1; i >= 0; i--) {
+          cdist[i] = results.peekKey();
+          cand[i] = results.peekValue();
+          results.poll();
+        }
+        final int cnt = selectNeighbors(cdist, cand, n, m, sel);
+        final int maxconn = l == 0 ? m0 : m;
+        // Merge with links added concurrently by other threads (rare), as
+        // these may be the only links to the other objects.
+        for(int i = 0; i < cnt; i++) {
+          addLink(q, sel[i], l, maxconn);
+        }
+        for(int i = 0; i < cnt; i++) {
+          addLink(sel[i], q, l, maxconn);
+        }
+        // Use the results as entry points for the next level:
+        visited.clear();
+        candidates.clear();
+        for(int i = 0; i < n; i++) {
+          visited.add(cand[i]);
+          candidates.add(cdist[i], cand[i]);
+          results.add(cdist[i], cand[i]);
+        }
+      }
+      distComputations.add(distcalc);
+      distcalc = 0;
+    }
+
+    /**
+     * Neighbor selection heuristic: keep a candidate only if it is closer to
+     * the query than to all neighbors selected so far.
+     *
+     * @param cdist Candidate distances, ascending
+     * @param cand Candidates
+     * @param n Number of candidates
+     * @param max Maximum number of neighbors
+     * @param sel Output array of selected neighbors
+     * @return Number of neighbors selected
+     */
+    private int selectNeighbors(double[] cdist, int[] cand, int n, int max, int[] sel) {
+      int cnt = 0;
+      for(int i = 0; i < n && cnt < max; i++) {
+        final int e = cand[i];
+        boolean good = true;
+        for(int j = 0; j < cnt; j++) {
+          if(distance(e, sel[j]) < cdist[i]) {
+            good = false;
+            break;
+          }
+        }
+        if(good) {
+          sel[cnt++] = e;
+        }
+      }
+      return cnt;
+    }
+
+    /**
+     * Add a link, shrinking the adjacency list if necessary.
+     *
+     * @param s Object to modify
+     * @param q New neighbor
+     * @param level Level
+     * @param maxconn Maximum number of neighbors
+     */
+    private void addLink(int s, int q, int level, int maxconn) {
+      final int[] l = links[s][level];
+      synchronized(l) {
+        final int cnt = l[0];
+        for(int i = 1; i <= cnt; i++) {
+          if(l[i] == q) {
+            return; // Already linked
+          }
+        }
+        if(cnt < maxconn) {
+          l[cnt + 1] = q;
+          l[0] = cnt + 1;
+          return;
+        }
+        // Shrink using the heuristic, on the existing neighbors and q:
+        for(int i = 0; i < cnt; i++) {
+          scand[i] = l[i + 1];
+          sdist[i] = distance(s, scand[i]);
+        }
+        scand[cnt] = q;
+        sdist[cnt] = distance(s, q);
+        DoubleIntegerArrayQuickSort.sort(sdist, scand, cnt + 1);
+        final int n = selectNeighbors(sdist, scand, cnt + 1, maxconn, ssel);
+        System.arraycopy(ssel, 0, l, 1, n);
+        l[0] = n;
+      }
+    }
+  }
+
+  /**
+   * Priority search, returning the results of a search with \(ef\)
+   * candidates, and repeating the search with a larger \(ef\) if necessary.
+   *
+   * @author Erich Schubert
+   *
+   * @param <Q> query type
+   */
+  public abstract class HNSWPrioritySearcher<Q> extends GraphSearcher implements PrioritySearcher<Q> {
+    /**
+     * Stopping distance threshold.
+     */
+    private double threshold = Double.POSITIVE_INFINITY;
+
+    /**
+     * Current size of the candidate list.
+     */
+    private int curef;
+
+    /**
+     * Result distances, ascending.
+     */
+    private double[] rdist = new double[0];
+
+    /**
+     * Result offsets.
+     */
+    private int[] res = new int[0];
+
+    /**
+     * Number of results, and current position.
+     */
+    private int len, pos;
+
+    /**
+     * Objects already returned, when repeating the search.
+     */
+    private IntOpenHashSet returned = new IntOpenHashSet();
+
+    /**
+     * Run the search and extract the results in ascending order.
+     *
+     * @param ef Number of results to keep
+     */
+    protected void run(int ef) {
+      search(ef);
+      len = results.size();
+      if(rdist.length < len) {
+        rdist = new double[len];
+        res = new int[len];
+      }
+      for(int i = len - 1; i >= 0; i--) {
+        rdist[i] = results.peekKey();
+        res[i] = results.peekValue();
+        results.poll();
+      }
+    }
+
+    /**
+     * Start the search.
+     *
+     * @return this
+     */
+    protected PrioritySearcher<Q> doSearch() {
+      threshold = Double.POSITIVE_INFINITY;
+      returned.clear();
+      run(curef = ef);
+      pos = -1;
+      return advance();
+    }
+
+    /**
+     * kNN search, using at least \(k\) candidates.
+     *
+     * @param k Number of neighbors
+     * @return kNN
+     */
+    protected KNNList doKNN(int k) {
+      run(Math.max(ef, k));
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      for(int i = 0; i < len; i++) {
+        heap.insert(rdist[i], iter.seek(res[i]));
+      }
+      len = pos = 0;
+      return heap.toKNNList();
+    }
+
+    @Override
+    public PrioritySearcher<Q> decreaseCutoff(double threshold) {
+      assert threshold <= this.threshold;
+      this.threshold = threshold;
+      return this;
+    }
+
+    @Override
+    public boolean valid() {
+      return pos < len;
+    }
+
+    @Override
+    public PrioritySearcher<Q> advance() {
+      while(true) {
+        if(++pos < len) {
+          if(rdist[pos] > threshold) {
+            len = pos = 0; // Done.
+            return this;
+          }
+          if(returned.add(res[pos])) {
+            iter.seek(res[pos]);
+            return this;
+          }
+          continue; // Returned by a previous search.
+        }
+        // Repeat with a larger candidate list, if the search was limited:
+        if(len < curef || curef >= ids.size()) {
+          return this;
+        }
+        curef = (int) Math.min(curef * 2L, ids.size());
+        run(curef);
+        pos = -1;
+      }
+    }
+
+    @Override
+    public double computeExactDistance() {
+      return rdist[pos];
+    }
+
+    @Override
+    public double getApproximateDistance() {
+      return rdist[pos];
+    }
+
+    @Override
+    public double getApproximateAccuracy() {
+      return 0.;
+    }
+
+    @Override
+    public double getLowerBound() {
+      return rdist[pos];
+    }
+
+    @Override
+    public double getUpperBound() {
+      return rdist[pos];
+    }
+
+    @Override
+    public double allLowerBound() {
+      return 0.; // No guarantees.
+    }
+
+    @Override
+    public int internalGetIndex() {
+      return iter.internalGetIndex();
+    }
+  }
+
+  /**
+   * Priority search by object.
+   *
+   * @author Erich Schubert
+   */
+  public class HNSWPriorityObjectSearcher extends HNSWPrioritySearcher<O> {
+    /**
+     * Query object.
+     */
+    private O query;
+
+    @Override
+    public PrioritySearcher<O> search(O query) {
+      this.query = query;
+      return doSearch();
+    }
+
+    @Override
+    public KNNList getKNN(O query, int k) {
+      this.query = query;
+      return doKNN(k);
+    }
+
+    @Override
+    protected double queryDistance(DBIDRef it) {
+      return distanceQuery.distance(query, it);
+    }
+  }
+
+  /**
+   * Priority search by DBID.
+   *
+   * @author Erich Schubert
+   */
+  public class HNSWPriorityDBIDSearcher extends HNSWPrioritySearcher<DBIDRef> {
+    /**
+     * Query object.
+     */
+    private DBIDRef query;
+
+    @Override
+    public PrioritySearcher<DBIDRef> search(DBIDRef query) {
+      this.query = query;
+      return doSearch();
+    }
+
+    @Override
+    public KNNList getKNN(DBIDRef query, int k) {
+      this.query = query;
+      return doKNN(k);
+    }
+
+    @Override
+    protected double queryDistance(DBIDRef it) {
+      return distanceQuery.distance(query, it);
+    }
+  }
+
+  /**
+   * Index factory.
+   *
+   * @author Erich Schubert
+   *
+   * @has - - - HNSW
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> implements IndexFactory<O> {
+    /**
+     * Distance function.
+     */
+    protected Distance<? super O> distance;
+
+    /**
+     * Maximum number of neighbors.
+     */
+    protected int m;
+
+    /**
+     * Size of the candidate list during construction.
+     */
+    protected int efConstruction;
+
+    /**
+     * Size of the candidate list during search.
+     */
+    protected int ef;
+
+    /**
+     * Random generator.
+     */
+    protected RandomFactory random;
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance function
+     * @param m Maximum number of neighbors
+     * @param efConstruction Size of the candidate list during construction
+     * @param ef Size of the candidate list during search
+     * @param random Random generator
+     */
+    public Factory(Distance<? super O> distance, int m, int efConstruction, int ef, RandomFactory random) {
+      super();
+      this.distance = distance;
+      this.m = m;
+      this.efConstruction = efConstruction;
+      this.ef = ef;
+      this.random = random;
+    }
+
+    @Override
+    public HNSW<O> instantiate(Relation<O> relation) {
+      return new HNSW<>(relation, distance, m, efConstruction, ef, random);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return distance.getInputTypeRestriction();
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     */
+    public static class Par<O> implements Parameterizer {
+      /**
+       * Distance function to use.
+       */
+      public static final OptionID DISTANCE_FUNCTION_ID = new OptionID("hnsw.distance", "Distance function to determine the distance between objects.");
+
+      /**
+       * Maximum number of neighbors.
+       */
+      public static final OptionID M_ID = new OptionID("hnsw.m", "Maximum number of neighbors of each object on the upper levels (twice this on the bottom level).");
+
+      /**
+       * Size of the candidate list during construction.
+       */
+      public static final OptionID EF_CONSTRUCTION_ID = new OptionID("hnsw.efconstruction", "Size of the candidate list during construction.");
+
+      /**
+       * Size of the candidate list during search.
+       */
+      public static final OptionID EF_ID = new OptionID("hnsw.ef", "Size of the candidate list during search, larger values increase recall.");
+
+      /**
+       * Random generator.
+       */
+      public static final OptionID SEED_ID = new OptionID("hnsw.seed", "Random generator seed for the levels.");
+
+      /**
+       * Distance function.
+       */
+      protected Distance<? super O> distance;
+
+      /**
+       * Maximum number of neighbors.
+       */
+      protected int m;
+
+      /**
+       * Size of the candidate list during construction.
+       */
+      protected int efConstruction;
+
+      /**
+       * Size of the candidate list during search.
+       */
+      protected int ef;
+
+      /**
+       * Random generator.
+       */
+      protected RandomFactory random;
+
+      @Override
+      public void configure(Parameterization config) {
+        new ObjectParameter<Distance<? super O>>(DISTANCE_FUNCTION_ID, Distance.class) //
+            .grab(config, x -> distance = x);
+        new IntParameter(M_ID, 16) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
+            .grab(config, x -> m = x);
+        new IntParameter(EF_CONSTRUCTION_ID, 200) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> efConstruction = x);
+        new IntParameter(EF_ID, 50) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> ef = x);
+        new RandomParameter(SEED_ID).grab(config, x -> random = x);
+      }
+
+      @Override
+      public Factory<O> make() {
+        return new Factory<>(distance, m, efConstruction, ef, random);
+      }
+    }
+  }
+}
@@ -0,0 +1,812 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.invertedlist;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import elki.clustering.kmeans.KMeans;
+import elki.clustering.kmeans.parallel.ParallelLloydKMeans;
+import elki.data.Cluster;
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.model.MeanModel;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.relation.MaterializedRelation;
+import elki.database.relation.ProxyView;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.index.AbstractRefiningIndex;
+import elki.index.IndexFactory;
+import elki.index.KNNIndex;
+import elki.logging.Logging;
+import elki.logging.statistics.LongStatistic;
+import elki.parallel.Executor;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+import elki.utilities.ClassGenericsUtil;
+import elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.constraints.LessEqualConstraint;
+import elki.utilities.optionhandling.parameterization.ChainedParameterization;
+import elki.utilities.optionhandling.parameterization.ListParameterization;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameterization.TrackParameters;
+import elki.utilities.optionhandling.parameterization.TrackedParameter;
+import elki.utilities.optionhandling.parameters.ClassParameter;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Inverted file index with product quantization (IVF-PQ).
+ * <p>
+ * A coarse k-means quantizer partitions the data into inverted lists. The
+ * residual of each vector to its coarse center is split into subspaces, and
+ * each subspace is encoded as one byte, the index of the nearest center of a
+ * per-subspace k-means codebook. Both quantizers are trained on a sample.
+ * <p>
+ * For a query, the nearest inverted lists are scanned using a precomputed
+ * table of the squared distances of the query residual to all codebook
+ * entries (asymmetric distance computation). Optionally, the best candidates
+ * are refined using the exact distance. The result is approximate, so this
+ * index is not used when exact results are required.
+ * <p>
+ * Reference:
+ * <p>
+ * H. Jégou, M. Douze, C. Schmid<br>
+ * Product Quantization for Nearest Neighbor Search<br>
+ * IEEE Trans. Pattern Analysis and Machine Intelligence 33(1)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - IVFPQKNNQuery
+ *
+ * @param <V> Vector type
+ */
+@Reference(authors = "H. Jégou, M. Douze, C. Schmid", //
+    title = "Product Quantization for Nearest Neighbor Search", //
+    booktitle = "IEEE Trans. Pattern Analysis and Machine Intelligence 33(1)", //
+    url = "https://doi.org/10.1109/TPAMI.2010.57", //
+    bibkey = "DBLP:journals/pami/JegouDS11")
+public class IVFPQ<V extends NumberVector> extends AbstractRefiningIndex<V> implements KNNIndex<V> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(IVFPQ.class);
+
+  /**
+   * Number of coarse clusters (inverted lists).
+   */
+  private int nlist;
+
+  /**
+   * Number of subspaces, i.e., bytes per code.
+   */
+  private int m;
+
+  /**
+   * Size of each subspace codebook.
+   */
+  private int ksub;
+
+  /**
+   * Number of lists to scan.
+   */
+  private int nprobe;
+
+  /**
+   * Refinement factor, 0 to disable refinement.
+   */
+  private int refine;
+
+  /**
+   * Sample size for training.
+   */
+  private int samplesize;
+
+  /**
+   * Factory for the k-means algorithm used for training, given the number of
+   * clusters.
+   */
+  private IntFunction<KMeans<NumberVector, ? extends MeanModel>> kmeans;
+
+  /**
+   * Random generator for sampling.
+   */
+  private RandomFactory rnd;
+
+  /**
+   * Dimensionality.
+   */
+  private int dim;
+
+  /**
+   * Coarse centers.
+   */
+  private double[][] coarse;
+
+  /**
+   * Subspace boundaries (m + 1 entries).
+   */
+  private int[] sub;
+
+  /**
+   * Subspace codebooks, each stored as a flat array of ksub centers.
+   */
+  private double[][] codebooks;
+
+  /**
+   * Object ids in each inverted list.
+   */
+  private ArrayModifiableDBIDs[] lists;
+
+  /**
+   * Codes of each inverted list, m bytes per object.
+   */
+  private byte[][] codes;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param nlist Number of coarse clusters
+   * @param m Number of subspaces
+   * @param ksub Codebook size per subspace
+   * @param nprobe Number of lists to scan
+   * @param refine Refinement factor, 0 to disable
+   * @param samplesize Sample size for training
+   * @param kmeans k-means algorithm for training, given the number of clusters
+   * @param rnd Random generator for sampling
+   */
+  public IVFPQ(Relation<V> relation, int nlist, int m, int ksub, int nprobe, int refine, int samplesize, IntFunction<KMeans<NumberVector, ? extends MeanModel>> kmeans, RandomFactory rnd) {
+    super(relation);
+    this.nlist = nlist;
+    this.m = m;
+    this.ksub = ksub;
+    this.nprobe = nprobe;
+    this.refine = refine;
+    this.samplesize = samplesize;
+    this.kmeans = kmeans;
+    this.rnd = rnd;
+  }
+
+  @Override
+  public void initialize() {
+    final long starttime = System.currentTimeMillis();
+    final DBIDs ids = relation.getDBIDs();
+    dim = RelationUtil.dimensionality(relation);
+    m = Math.max(1, Math.min(m, dim));
+    sub = new int[m + 1];
+    for(int j = 0; j <= m; j++) {
+      sub[j] = (int) ((j * (long) dim) / m);
+    }
+    if(ids.isEmpty()) {
+      coarse = new double[0][];
+      codebooks = new double[m][0];
+      lists = new ArrayModifiableDBIDs[0];
+      codes = new byte[0][];
+      return;
+    }
+    final DBIDs sample = ids.size() > samplesize ? DBIDUtil.randomSample(ids, samplesize, rnd) : ids;
+    // Train the coarse quantizer:
+    coarse = train(new ProxyView<>(sample, relation), Math.min(nlist, sample.size()));
+    trainCodebooks(sample);
+
+    // Assign all objects to their inverted list:
+    WritableIntegerDataStore assign = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    ParallelExecutor.run(ids, new EncodeProcessor(assign, null));
+    final int[] counts = new int[coarse.length];
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      ++counts[assign.intValue(it)];
+    }
+    lists = new ArrayModifiableDBIDs[coarse.length];
+    codes = new byte[coarse.length][];
+    for(int c = 0; c < coarse.length; c++) {
+      lists[c] = DBIDUtil.newArray(counts[c]);
+      codes[c] = new byte[counts[c] * m];
+    }
+    WritableIntegerDataStore pos = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      final ArrayModifiableDBIDs list = lists[assign.intValue(it)];
+      pos.putInt(it, list.size());
+      list.add(it);
+    }
+    // Encode the residuals:
+    ParallelExecutor.run(ids, new EncodeProcessor(assign, pos));
+    assign.destroy();
+    pos.destroy();
+    if(LOG.isStatistics()) {
+      final String prefix = this.getClass().getName();
+      LOG.statistics(new LongStatistic(prefix + ".lists", coarse.length));
+      LOG.statistics(new LongStatistic(prefix + ".code-bytes", ids.size() * (long) m));
+      LOG.statistics(new LongStatistic(prefix + ".construction-time.ms", System.currentTimeMillis() - starttime));
+    }
+  }
+
+  /**
+   * Train the subspace codebooks on the residuals of a sample.
+   *
+   * @param sample Sample
+   */
+  private void trainCodebooks(DBIDs sample) {
+    final int n = sample.size();
+    // Compute the residuals of the sample:
+    double[][] resid = new double[n][];
+    int i = 0;
+    for(DBIDIter it = sample.iter(); it.valid(); it.advance(), i++) {
+      final NumberVector v = relation.get(it);
+      resid[i] = residual(v, coarse[nearestCoarse(v)], new double[dim]);
+    }
+    // One range of ids is reused for all subspaces:
+    DBIDRange range = DBIDUtil.generateStaticDBIDRange(n);
+    WritableDataStore<DoubleVector> store = DataStoreUtil.makeStorage(range, DataStoreFactory.HINT_TEMP, DoubleVector.class);
+    codebooks = new double[m][];
+    for(int j = 0; j < m; j++) {
+      final int s = sub[j], dsub = sub[j + 1] - s;
+      DBIDArrayIter it = range.iter();
+      for(i = 0; i < n; i++, it.advance()) {
+        double[] v = new double[dsub];
+        System.arraycopy(resid[i], s, v, 0, dsub);
+        store.put(it, DoubleVector.wrap(v));
+      }
+      double[][] centers = train(new MaterializedRelation<>("PQ residuals", new VectorFieldTypeInformation<>(DoubleVector.FACTORY, dsub), range, store), Math.min(ksub, n));
+      double[] book = new double[centers.length * dsub];
+      for(int c = 0; c < centers.length; c++) {
+        System.arraycopy(centers[c], 0, book, c * dsub, dsub);
+      }
+      codebooks[j] = book;
+    }
+    store.destroy();
+    DBIDUtil.deallocateDBIDRange(range);
+  }
+
+  /**
+   * Run k-means, and return the cluster centers.
+   *
+   * @param rel Data relation
+   * @param k Number of clusters
+   * @return Cluster centers
+   */
+  @SuppressWarnings("unchecked")
+  private double[][] train(Relation<? extends NumberVector> rel, int k) {
+    List<? extends Cluster<? extends MeanModel>> clusters = kmeans.apply(k).run((Relation<NumberVector>) rel).getAllClusters();
+    double[][] centers = new double[clusters.size()][];
+    int i = 0;
+    for(Cluster<? extends MeanModel> c : clusters) {
+      centers[i++] = c.getModel().getMean();
+    }
+    return centers;
+  }
+
+  /**
+   * Find the nearest coarse center.
+   *
+   * @param v Vector
+   * @return Index of the nearest center
+   */
+  private int nearestCoarse(NumberVector v) {
+    int best = 0;
+    double bestd = Double.POSITIVE_INFINITY;
+    for(int c = 0; c < coarse.length; c++) {
+      final double[] cc = coarse[c];
+      double s = 0;
+      for(int d = 0; d < dim && s < bestd; d++) {
+        final double delta = v.doubleValue(d) - cc[d];
+        s += delta * delta;
+      }
+      if(s < bestd) {
+        bestd = s;
+        best = c;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Compute the residual of a vector to a center.
+   *
+   * @param v Vector
+   * @param c Center
+   * @param out Output array
+   * @return {@code out}
+   */
+  private double[] residual(NumberVector v, double[] c, double[] out) {
+    for(int d = 0; d < dim; d++) {
+      out[d] = v.doubleValue(d) - c[d];
+    }
+    return out;
+  }
+
+  /**
+   * Encode a residual vector.
+   *
+   * @param r Residual vector
+   * @param out Output code array
+   * @param off Offset in the output array
+   */
+  private void encode(double[] r, byte[] out, int off) {
+    for(int j = 0; j < m; j++) {
+      final int s = sub[j], dsub = sub[j + 1] - s;
+      final double[] book = codebooks[j];
+      int best = 0;
+      double bestd = Double.POSITIVE_INFINITY;
+      for(int c = 0, b = 0; b < book.length; c++) {
+        double t = 0;
+        for(int d = s, e = s + dsub; d < e; d++, b++) {
+          final double delta = r[d] - book[b];
+          t += delta * delta;
+        }
+        if(t < bestd) {
+          bestd = t;
+          best = c;
+        }
+      }
+      out[off + j] = (byte) best;
+    }
+  }
+
+  /**
+   * Processor to assign objects to inverted lists, and to encode them.
+   *
+   * @author Erich Schubert
+   */
+  private class EncodeProcessor implements Processor {
+    /**
+     * Inverted list assignment.
+     */
+    private WritableIntegerDataStore assign;
+
+    /**
+     * Positions within the lists, {@code null} for the assignment phase.
+     */
+    private WritableIntegerDataStore pos;
+
+    /**
+     * Whether storage writes need to be synchronized.
+     */
+    private boolean sync;
+
+    /**
+     * Constructor.
+     *
+     * @param assign Inverted list assignment
+     * @param pos Positions within the lists, {@code null} to assign
+     */
+    EncodeProcessor(WritableIntegerDataStore assign, WritableIntegerDataStore pos) {
+      this.assign = assign;
+      this.pos = pos;
+      this.sync = !(relation.getDBIDs() instanceof DBIDRange);
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance() {
+        /**
+         * Residual buffer.
+         */
+        private final double[] r = new double[dim];
+
+        @Override
+        public void map(DBIDRef id) {
+          final NumberVector v = relation.get(id);
+          if(pos == null) {
+            final int c = nearestCoarse(v);
+            if(sync) {
+              synchronized(assign) {
+                assign.putInt(id, c);
+              }
+            }
+            else {
+              assign.putInt(id, c);
+            }
+            return;
+          }
+          final int c = assign.intValue(id);
+          encode(residual(v, coarse[c], r), codes[c], pos.intValue(id) * m);
+        }
+      };
+    }
+
+    @Override
+    public void cleanup(Instance inst) {
+      // Nothing to do.
+    }
+  }
+
+  @Override
+  public Logging getLogger() {
+    return LOG;
+  }
+
+  @Override
+  public KNNSearcher<V> kNNByObject(DistanceQuery<V> distanceQuery, int maxk, int flags) {
+    if((flags & QueryBuilder.FLAG_EXACT_ONLY) != 0 || distanceQuery.getRelation() != relation) {
+      return null; // approximate, or a different relation
+    }
+    Distance<? super V> df = distanceQuery.getDistance();
+    return df instanceof EuclideanDistance ? new IVFPQKNNQuery(distanceQuery, false) : //
+        df instanceof SquaredEuclideanDistance ? new IVFPQKNNQuery(distanceQuery, true) : null;
+  }
+
+  /**
+   * kNN query using asymmetric distance computation.
+   *
+   * @author Erich Schubert
+   */
+  public class IVFPQKNNQuery extends AbstractRefiningIndex<V>.AbstractRefiningQuery implements KNNSearcher<V> {
+    /**
+     * Use squared Euclidean distances.
+     */
+    private boolean squared;
+
+    /**
+     * Distances to the coarse centers.
+     */
+    private double[] cdist = new double[coarse.length];
+
+    /**
+     * Indexes of the coarse centers.
+     */
+    private int[] cidx = new int[coarse.length];
+
+    /**
+     * Distance lookup table.
+     */
+    private double[] table = new double[m * ksub];
+
+    /**
+     * Query residual buffer.
+     */
+    private double[] r = new double[dim];
+
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     * @param squared Use squared Euclidean distances
+     */
+    public IVFPQKNNQuery(DistanceQuery<V> distanceQuery, boolean squared) {
+      super(distanceQuery);
+      this.squared = squared;
+    }
+
+    @Override
+    public KNNList getKNN(V obj, int k) {
+      final int nc = coarse.length;
+      for(int c = 0; c < nc; c++) {
+        final double[] cc = coarse[c];
+        double s = 0;
+        for(int d = 0; d < dim; d++) {
+          final double delta = obj.doubleValue(d) - cc[d];
+          s += delta * delta;
+        }
+        cdist[c] = s;
+        cidx[c] = c;
+      }
+      DoubleIntegerArrayQuickSort.sort(cdist, cidx, nc);
+      KNNHeap cand = DBIDUtil.newHeap(refine > 0 ? k * refine : k);
+      double tau = Double.POSITIVE_INFINITY;
+      for(int p = 0, probe = Math.min(nprobe, nc); p < probe; p++) {
+        final int c = cidx[p];
+        if(lists[c].isEmpty()) {
+          ++probe; // Do not count empty lists.
+          probe = Math.min(probe, nc);
+          continue;
+        }
+        fillTable(residual(obj, coarse[c], r));
+        final byte[] code = codes[c];
+        int off = 0;
+        for(DBIDArrayIter it = lists[c].iter(); it.valid(); it.advance()) {
+          double s = 0;
+          for(int j = 0, b = 0; j < m; j++, b += ksub) {
+            s += table[b + (code[off++] & 0xFF)];
+          }
+          if(s <= tau) {
+            tau = cand.insert(s, it);
+          }
+        }
+      }
+      KNNHeap result = DBIDUtil.newHeap(k);
+      if(refine > 0) {
+        for(DoubleDBIDIter it = cand.unorderedIterator(); it.valid(); it.advance()) {
+          result.insert(refine(it, obj), it);
+        }
+        return result.toKNNList();
+      }
+      if(squared) {
+        return cand.toKNNList();
+      }
+      for(DoubleDBIDIter it = cand.unorderedIterator(); it.valid(); it.advance()) {
+        result.insert(Math.sqrt(it.doubleValue()), it);
+      }
+      return result.toKNNList();
+    }
+
+    /**
+     * Fill the table of squared distances to the codebook entries.
+     *
+     * @param r Query residual
+     */
+    private void fillTable(double[] r) {
+      for(int j = 0; j < m; j++) {
+        final int s = sub[j], dsub = sub[j + 1] - s;
+        final double[] book = codebooks[j];
+        for(int c = 0, b = 0, t = j * ksub; b < book.length; c++, t++) {
+          double v = 0;
+          for(int d = s, e = s + dsub; d < e; d++, b++) {
+            final double delta = r[d] - book[b];
+            v += delta * delta;
+          }
+          table[t] = v;
+        }
+      }
+    }
+  }
+
+  /**
+   * Index factory.
+   *
+   * @author Erich Schubert
+   *
+   * @stereotype factory
+   * @has - - - IVFPQ
+   *
+   * @param <V> Vector type
+   */
+  public static class Factory<V extends NumberVector> implements IndexFactory<V> {
+    /**
+     * Number of coarse clusters.
+     */
+    int nlist;
+
+    /**
+     * Number of subspaces.
+     */
+    int m;
+
+    /**
+     * Codebook size per subspace.
+     */
+    int ksub;
+
+    /**
+     * Number of lists to scan.
+     */
+    int nprobe;
+
+    /**
+     * Refinement factor.
+     */
+    int refine;
+
+    /**
+     * Training sample size.
+     */
+    int samplesize;
+
+    /**
+     * k-means algorithm for training, given the number of clusters.
+     */
+    IntFunction<KMeans<NumberVector, ? extends MeanModel>> kmeans;
+
+    /**
+     * Random generator for sampling.
+     */
+    RandomFactory rnd;
+
+    /**
+     * Constructor.
+     *
+     * @param nlist Number of coarse clusters
+     * @param m Number of subspaces
+     * @param ksub Codebook size per subspace
+     * @param nprobe Number of lists to scan
+     * @param refine Refinement factor, 0 to disable
+     * @param samplesize Sample size for training
+     * @param kmeans k-means algorithm for training, given the number of
+     *        clusters
+     * @param rnd Random generator for sampling
+     */
+    public Factory(int nlist, int m, int ksub, int nprobe, int refine, int samplesize, IntFunction<KMeans<NumberVector, ? extends MeanModel>> kmeans, RandomFactory rnd) {
+      super();
+      this.nlist = nlist;
+      this.m = m;
+      this.ksub = ksub;
+      this.nprobe = nprobe;
+      this.refine = refine;
+      this.samplesize = samplesize;
+      this.kmeans = kmeans;
+      this.rnd = rnd;
+    }
+
+    @Override
+    public IVFPQ<V> instantiate(Relation<V> relation) {
+      return new IVFPQ<>(relation, nlist, m, ksub, nprobe, refine, samplesize, kmeans, rnd);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return TypeUtil.NUMBER_VECTOR_FIELD;
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     */
+    public static class Par<V extends NumberVector> implements Parameterizer {
+      /**
+       * Number of coarse clusters (inverted lists).
+       */
+      public static final OptionID NLIST_ID = new OptionID("ivfpq.nlist", "Number of coarse clusters (inverted lists).");
+
+      /**
+       * Number of subspaces.
+       */
+      public static final OptionID M_ID = new OptionID("ivfpq.m", "Number of subspaces, i.e., bytes per encoded vector.");
+
+      /**
+       * Codebook size.
+       */
+      public static final OptionID KSUB_ID = new OptionID("ivfpq.ksub", "Number of codebook entries per subspace (at most 256).");
+
+      /**
+       * Number of lists to scan.
+       */
+      public static final OptionID NPROBE_ID = new OptionID("ivfpq.nprobe", "Number of inverted lists to scan for each query.");
+
+      /**
+       * Refinement factor.
+       */
+      public static final OptionID REFINE_ID = new OptionID("ivfpq.refine", "Refine the best k times this many candidates with exact distances; 0 disables refinement.");
+
+      /**
+       * Training sample size.
+       */
+      public static final OptionID SAMPLE_ID = new OptionID("ivfpq.samplesize", "Sample size used for training the quantizers.");
+
+      /**
+       * k-means algorithm.
+       */
+      public static final OptionID KMEANS_ID = new OptionID("ivfpq.kmeans", "k-means variant used for training the quantizers.");
+
+      /**
+       * Random generator seed.
+       */
+      public static final OptionID SEED_ID = new OptionID("ivfpq.seed", "Random generator seed for sampling.");
+
+      /**
+       * Number of coarse clusters.
+       */
+      int nlist;
+
+      /**
+       * Number of subspaces.
+       */
+      int m;
+
+      /**
+       * Codebook size per subspace.
+       */
+      int ksub;
+
+      /**
+       * Number of lists to scan.
+       */
+      int nprobe;
+
+      /**
+       * Refinement factor.
+       */
+      int refine;
+
+      /**
+       * Training sample size.
+       */
+      int samplesize;
+
+      /**
+       * k-means algorithm for training, given the number of clusters.
+       */
+      IntFunction<KMeans<NumberVector, ? extends MeanModel>> kmeans;
+
+      /**
+       * Random generator for sampling.
+       */
+      RandomFactory rnd;
+
+      @Override
+      public void configure(Parameterization config) {
+        new IntParameter(NLIST_ID, 256) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> nlist = x);
+        new IntParameter(M_ID, 8) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> m = x);
+        new IntParameter(KSUB_ID, 256) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
+            .addConstraint(new LessEqualConstraint(256)) //
+            .grab(config, x -> ksub = x);
+        new IntParameter(NPROBE_ID, 8) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> nprobe = x);
+        new IntParameter(REFINE_ID, 4) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT) //
+            .grab(config, x -> refine = x);
+        new IntParameter(SAMPLE_ID, 50000) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> samplesize = x);
+        ClassParameter<KMeans<NumberVector, ? extends MeanModel>> kmeansP = new ClassParameter<>(KMEANS_ID, KMeans.class, ParallelLloydKMeans.class);
+        if(config.grab(kmeansP)) {
+          // Validate the k-means parameters, and record them to create a new
+          // instance for each number of clusters.
+          TrackParameters track = new TrackParameters(config);
+          ChainedParameterization combinedConfig = new ChainedParameterization(new ListParameterization() //
+              .addParameter(KMeans.K_ID, ksub) //
+              .addParameter(KMeans.DISTANCE_FUNCTION_ID, SquaredEuclideanDistance.STATIC), track);
+          combinedConfig.errorsTo(config);
+          if(kmeansP.instantiateClass(combinedConfig) != null) {
+            final Class<?> cls = kmeansP.getValue();
+            final Map<OptionID, Object> params = new LinkedHashMap<>();
+            for(TrackedParameter p : track.getAllParameters()) {
+              if(p.getParameter().isDefined()) {
+                params.put(p.getParameter().getOptionID(), p.getParameter().getValue());
+              }
+            }
+            kmeans = k -> {
+              ListParameterization kconfig = new ListParameterization() //
+                  .addParameter(KMeans.K_ID, k) //
+                  .addParameter(KMeans.DISTANCE_FUNCTION_ID, SquaredEuclideanDistance.STATIC);
+              params.forEach(kconfig::addParameter);
+              return ClassGenericsUtil.parameterizeOrAbort(cls, kconfig);
+            };
+          }
+        }
+        new RandomParameter(SEED_ID).grab(config, x -> rnd = x);
+      }
+
+      @Override
+      public Factory<V> make() {
+        return new Factory<>(nlist, m, ksub, nprobe, refine, samplesize, kmeans, rnd);
+      }
+    }
+  }
+}
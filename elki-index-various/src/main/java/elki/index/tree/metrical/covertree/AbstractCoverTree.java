@@ -21,11 +21,14 @@
 package elki.index.tree.metrical.covertree;
 
 import elki.data.type.TypeInformation;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
 import elki.database.ids.*;
 import elki.database.query.distance.DistanceQuery;
 import elki.database.relation.Relation;
 import elki.distance.Distance;
-import elki.index.Index;
+import elki.index.DynamicIndex;
 import elki.index.IndexFactory;
 import elki.logging.Logging;
 import elki.logging.LoggingUtil;
@@ -42,13 +45,18 @@ import net.jafama.FastMath;
 
 /**
  * Abstract base class for cover tree variants.
+ * <p>
+ * Dynamic updates insert objects into the existing tree, and only mark deleted
+ * objects, as they may still be used as routing objects. Because this degrades
+ * the tree, it is rebuilt once the number of updates exceeds the size it was
+ * built with, for amortized O(log n) rebuilding cost per update.
  * 
  * @author Erich Schubert
  * @since 0.7.0
  *
  * @param <O> Object type
  */
-public abstract class AbstractCoverTree<O> implements Index {
+public abstract class AbstractCoverTree<O> implements DynamicIndex {
   /**
    * The representation we are bound to.
    */
@@ -91,6 +99,21 @@ public abstract class AbstractCoverTree<O> implements Index {
    */
   protected int truncate = 10;
 
+  /**
+   * Objects deleted, but still stored in the tree.
+   */
+  protected WritableDataStore<O> deleted = null;
+
+  /**
+   * Number of insertions and deletions since the tree was built.
+   */
+  protected int modifications = 0;
+
+  /**
+   * Number of objects the tree was built with.
+   */
+  protected int buildsize = 0;
+
   /**
    * Constructor.
    *
@@ -154,6 +177,13 @@ public abstract class AbstractCoverTree<O> implements Index {
    */
   protected double distance(DBIDRef a, DBIDRef b) {
     ++distComputations;
+    if(deleted != null) {
+      final O oa = deleted.get(a), ob = deleted.get(b);
+      if(oa != null || ob != null) {
+        return oa == null ? distanceQuery.distance(a, ob) : //
+            ob == null ? distanceQuery.distance(oa, b) : distanceQuery.distance(oa, ob);
+      }
+    }
     return distanceQuery.distance(a, b);
   }
 
@@ -166,7 +196,85 @@ public abstract class AbstractCoverTree<O> implements Index {
    */
   protected double distance(O a, DBIDRef b) {
     ++distComputations;
-    return distanceQuery.distance(a, b);
+    final O ob = deleted != null ? deleted.get(b) : null;
+    return ob != null ? distanceQuery.distance(a, ob) : distanceQuery.distance(a, b);
+  }
+
+  /**
+   * Test whether an object was deleted, but is still stored in the tree.
+   *
+   * @param id Object
+   * @return {@code true} if deleted
+   */
+  protected boolean isDeleted(DBIDRef id) {
+    return deleted != null && deleted.get(id) != null;
+  }
+
+  /**
+   * Reset the update bookkeeping when the tree is built.
+   *
+   * @param size Number of objects in the tree
+   */
+  protected void resetUpdates(int size) {
+    deleted = null;
+    modifications = 0;
+    buildsize = size;
+  }
+
+  /**
+   * Rebuild the tree from the current objects of the relation.
+   */
+  protected abstract void rebuild();
+
+  /**
+   * Insert a single object into the existing tree.
+   *
+   * @param id Object to insert
+   */
+  protected abstract void insertObject(DBIDRef id);
+
+  @Override
+  public void insert(DBIDRef id) {
+    if(isDeleted(id) || ++modifications > Math.max(buildsize, truncate)) {
+      rebuild(); // Reinserted object, or too many updates
+      return;
+    }
+    insertObject(id);
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    if(modifications + ids.size() > Math.max(buildsize, truncate)) {
+      rebuild();
+      return;
+    }
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      insert(it);
+    }
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    if(isDeleted(id)) {
+      return false;
+    }
+    if(++modifications > Math.max(buildsize, truncate)) {
+      rebuild();
+      return true;
+    }
+    if(deleted == null) {
+      deleted = DataStoreUtil.makeStorage(DBIDUtil.newHashSet(), DataStoreFactory.HINT_TEMP, Object.class);
+    }
+    // Keep the object, it may be a routing object:
+    deleted.put(id, relation.get(id));
+    return true;
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      delete(it);
+    }
   }
 
   /**
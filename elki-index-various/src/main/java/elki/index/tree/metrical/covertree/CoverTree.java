@@ -21,24 +21,38 @@
 package elki.index.tree.metrical.covertree;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import elki.database.datastore.DataStore;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.DoubleDataStore;
+import elki.database.datastore.WritableDataStore;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
 import elki.database.ids.*;
 import elki.database.query.PrioritySearcher;
 import elki.database.query.QueryBuilder;
+import elki.database.query.SpanningTreeSearcher;
 import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.BatchKNNSearcher;
 import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.BatchRangeSearcher;
 import elki.database.query.range.RangeSearcher;
 import elki.database.relation.Relation;
 import elki.distance.Distance;
 import elki.index.DistancePriorityIndex;
+import elki.index.SpanningTreeIndex;
 import elki.logging.Logging;
 import elki.logging.statistics.DoubleStatistic;
 import elki.logging.statistics.LongStatistic;
 import elki.math.MathUtil;
 import elki.utilities.Priority;
+import elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
 import elki.utilities.datastructures.heap.DoubleObjectMinHeap;
+import elki.utilities.datastructures.unionfind.WeightedQuickUnionInteger;
 import elki.utilities.documentation.Reference;
 
 /**
@@ -71,6 +85,9 @@ import elki.utilities.documentation.Reference;
  *
  * @has - - - CoverTreeRangeSearcher
  * @has - - - CoverTreeKNNSearcher
+ * @has - - - CoverTreeBatchKNNSearcher
+ * @has - - - CoverTreeBatchRangeSearcher
+ * @has - - - CoverTreeSpanningTreeSearcher
  */
 @Reference(authors = "A. Beygelzimer, S. Kakade, J. Langford", //
     title = "Cover trees for nearest neighbor", //
@@ -78,7 +95,7 @@ import elki.utilities.documentation.Reference;
     url = "https://doi.org/10.1145/1143844.1143857", //
     bibkey = "DBLP:conf/icml/BeygelzimerKL06")
 @Priority(Priority.RECOMMENDED)
-public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriorityIndex<O> {
+public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriorityIndex<O>, SpanningTreeIndex<O> {
   /**
    * Class logger.
    */
@@ -89,6 +106,11 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
    */
   private Node root = null;
 
+  /**
+   * Number of nodes, for numbering the nodes.
+   */
+  private int numnodes = 0;
+
   /**
    * Constructor.
    *
@@ -138,6 +160,11 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
      */
     List<Node> children;
 
+    /**
+     * Node number, used by joins.
+     */
+    int id;
+
     /**
      * Constructor.
      *
@@ -177,7 +204,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
   @Override
   public void initialize() {
     bulkLoad(relation.getDBIDs());
-    if(LOG.isVerbose()) {
+    if(root != null && LOG.isVerbose()) {
       int[] counts = new int[5];
       checkCoverTree(root, counts, 0);
       LOG.statistics(new LongStatistic(this.getClass().getName() + ".nodes", counts[0]));
@@ -194,6 +221,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
    * @param ids IDs to load
    */
   public void bulkLoad(DBIDs ids) {
+    resetUpdates(ids.size());
     if(ids.isEmpty()) {
       return;
     }
@@ -227,7 +255,9 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
     // Leaf node, because points coincide, we are too deep, or have too few
     // elements remaining:
     if(max <= 0 || scale <= scaleBottom || elems.size() < truncate) {
-      return new Node(cur, max, parentDist, elems);
+      Node leaf = new Node(cur, max, parentDist, elems);
+      leaf.id = numnodes++;
+      return leaf;
     }
     // Find neighbors in the cover of the current object:
     ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList();
@@ -239,6 +269,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
     }
     // We will have at least one other child, so build the parent:
     Node node = new Node(cur, max, parentDist);
+    node.id = numnodes++;
     // Routing element now is a singleton:
     final boolean curSingleton = elems.isEmpty();
     if(!curSingleton) {
@@ -264,12 +295,81 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
     assert candidates.isEmpty();
     // Routing object is not yet handled:
     if(curSingleton && !node.children.isEmpty()) {
-      node.singletons.add(parentDist, cur); // Add as regular singleton.
+      node.singletons.add(0., cur); // Add as regular singleton.
     }
     // TODO: improve recycling of lists?
     return node;
   }
 
+  @Override
+  protected void rebuild() {
+    root = null;
+    numnodes = 0;
+    bulkLoad(relation.getDBIDs());
+  }
+
+  @Override
+  protected void insertObject(DBIDRef id) {
+    if(root == null) {
+      root = new Node(id, 0., 0., DBIDUtil.newDistanceDBIDList(0));
+      root.id = numnodes++;
+      return;
+    }
+    root = insert(root, id, distance(root.singletons.iter(), id));
+  }
+
+  /**
+   * Insert an object into a subtree.
+   * <p>
+   * The object is added to the closest child covering it, or as a singleton
+   * if no child covers it. Leaves that became too large are rebuilt whenever
+   * their size doubled.
+   *
+   * @param node Subtree root
+   * @param id Object to insert
+   * @param d Distance to the routing object
+   * @return New subtree root
+   */
+  private Node insert(Node node, DBIDRef id, double d) {
+    node.maxDist = d > node.maxDist ? d : node.maxDist;
+    if(node.children.isEmpty()) { // Leaf node
+      node.singletons.add(d, id);
+      final int size = node.singletons.size();
+      if(size < truncate << 1 || (size & (size - 1)) != 0 || node.maxDist <= 0) {
+        return node;
+      }
+      DoubleDBIDListIter it = node.singletons.iter();
+      ModifiableDoubleDBIDList elems = DBIDUtil.newDistanceDBIDList(size - 1);
+      for(it.advance(); it.valid(); it.advance()) {
+        elems.add(it.doubleValue(), it);
+      }
+      return bulkConstruct(node.singletons.iter(), Integer.MAX_VALUE, node.parentDist, elems);
+    }
+    final DBIDVar tmp = DBIDUtil.newVar();
+    final DoubleDBIDListIter routing = node.singletons.iter();
+    int best = -1;
+    double bestd = Double.POSITIVE_INFINITY;
+    for(int i = 0; i < node.children.size(); i++) {
+      final Node c = node.children.get(i);
+      // Cannot be covered by this child (triangle inequality):
+      if(Math.abs(d - c.parentDist) > c.maxDist) {
+        continue;
+      }
+      final double cd = DBIDUtil.equal(c.singletons.assignVar(0, tmp), routing) ? d : distance(tmp, id);
+      if(cd <= c.maxDist && cd < bestd) {
+        best = i;
+        bestd = cd;
+      }
+    }
+    if(best >= 0) {
+      node.children.set(best, insert(node.children.get(best), id, bestd));
+    }
+    else {
+      node.singletons.add(d, id);
+    }
+    return node;
+  }
+
   /**
    * Collect some statistics on the tree.
    *
@@ -319,6 +419,27 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
             new CoverTreePriorityDBIDSearcher() : null;
   }
 
+  @Override
+  public BatchKNNSearcher batchKNNByDBID(DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    return (flags & QueryBuilder.FLAG_PRECOMPUTE) == 0 && //
+        distanceQuery.getRelation() == relation && this.distance.equals(distanceQuery.getDistance()) ? //
+            new CoverTreeBatchKNNSearcher() : null;
+  }
+
+  @Override
+  public BatchRangeSearcher batchRangeByDBID(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    return (flags & QueryBuilder.FLAG_PRECOMPUTE) == 0 && //
+        distanceQuery.getRelation() == relation && this.distance.equals(distanceQuery.getDistance()) ? //
+            new CoverTreeBatchRangeSearcher() : null;
+  }
+
+  @Override
+  public SpanningTreeSearcher spanningTree(DistanceQuery<O> distanceQuery, int flags) {
+    return root != null && deleted == null && //
+        distanceQuery.getRelation() == relation && this.distance.equals(distanceQuery.getDistance()) ? //
+            new CoverTreeSpanningTreeSearcher() : null;
+  }
+
   @Override
   public PrioritySearcher<O> priorityByObject(DistanceQuery<O> distanceQuery, double maxradius, int flags) {
     return (flags & QueryBuilder.FLAG_PRECOMPUTE) == 0 && //
@@ -370,6 +491,9 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
      * @return result
      */
     protected ModifiableDoubleDBIDList doSearch(double range, ModifiableDoubleDBIDList result) {
+      if(root == null) {
+        return result;
+      }
       open.clear();
       open.add(root);
       while(!open.isEmpty()) {
@@ -390,7 +514,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
         }
         else { // Leaf node
           // Consider routing object, too:
-          if(d <= range) {
+          if(d <= range && !isDeleted(tmp)) {
             result.add(d, tmp); // First element is a candidate now
           }
         }
@@ -398,7 +522,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
         final DoubleDBIDListIter it = cur.singletons.iter().advance();
         // For remaining singletons, compute the distances:
         while(it.valid()) {
-          if(Math.abs(d - it.doubleValue()) <= range) {
+          if(Math.abs(d - it.doubleValue()) <= range && !isDeleted(it)) {
             final double d2 = queryDistance(it);
             if(d2 <= range) {
               result.add(d2, it);
@@ -481,6 +605,9 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
      */
     protected KNNList doSearch(int k) {
       KNNHeap knnList = DBIDUtil.newHeap(k);
+      if(root == null) {
+        return knnList.toKNNList();
+      }
       double d_k = Double.POSITIVE_INFINITY;
       pq.clear();
       pq.add(queryDistance(root.singletons.iter()) - root.maxDist, root);
@@ -514,14 +641,14 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
         }
         else { // Leaf node
           // Consider routing object, too:
-          if(d <= d_k) {
+          if(d <= d_k && !isDeleted(it)) {
             d_k = knnList.insert(d, it); // First element is a candidate now
           }
         }
         it.advance(); // Skip routing object.
         // For remaining singletons, compute the distances:
         while(it.valid()) {
-          if(Math.abs(d - it.doubleValue()) <= d_k) {
+          if(Math.abs(d - it.doubleValue()) <= d_k && !isDeleted(it)) {
             final double d2 = queryDistance(it);
             if(d2 <= d_k) {
               d_k = knnList.insert(d2, it);
@@ -588,6 +715,971 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
     }
   }
 
+  /**
+   * Batch kNN query class.
+   * <p>
+   * The objects stored in the same node are processed together as a group
+   * around the routing object. Distances from the routing object to nodes
+   * and candidates are shared by the group, and the triangle inequality is
+   * used to avoid most distance computations for the individual queries.
+   * If all objects of the tree are queried, a {@link DualTreeJoin} is used
+   * instead.
+   *
+   * @author Erich Schubert
+   */
+  public class CoverTreeBatchKNNSearcher implements BatchKNNSearcher {
+    /**
+     * Priority queue of candidates.
+     */
+    private DoubleObjectMinHeap<Node> pq = new DoubleObjectMinHeap<>();
+
+    /**
+     * Temporary storage.
+     */
+    private DBIDVar tmp = DBIDUtil.newVar();
+
+    /**
+     * Routing object of the current group.
+     */
+    private DBIDVar center = DBIDUtil.newVar();
+
+    /**
+     * Queries of the current group.
+     */
+    private ArrayModifiableDBIDs group = DBIDUtil.newArray();
+
+    /**
+     * Distances of the queries to the routing object.
+     */
+    private double[] qdists = new double[16];
+
+    /**
+     * kNN heaps of the current group.
+     */
+    private KNNHeap[] heaps = new KNNHeap[16];
+
+    /**
+     * kNN distances of the current group.
+     */
+    private double[] kdists = new double[16];
+
+    /**
+     * Maximum distance of a query from the routing object.
+     */
+    private double radius;
+
+    /**
+     * Largest kNN distance in the current group.
+     */
+    private double bound;
+
+    @Override
+    public DataStore<KNNList> getKNN(DBIDs ids, int k) {
+      WritableDataStore<KNNList> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, KNNList.class);
+      DBIDs lookup = ids instanceof DBIDRange || ids instanceof SetDBIDs ? ids : DBIDUtil.newHashSet(ids);
+      if(isSelfJoin(ids, lookup)) {
+        new DualTreeJoin().knnJoin(k, store);
+        return store;
+      }
+      int found = root != null ? processNode(root, lookup, k, store) : 0;
+      if(found < ids.size()) { // Objects not in the tree, or duplicates
+        CoverTreeKNNDBIDSearcher knnq = new CoverTreeKNNDBIDSearcher();
+        for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+          if(store.get(it) == null) {
+            store.put(it, knnq.getKNN(it, k));
+          }
+        }
+      }
+      return store;
+    }
+
+    /**
+     * Process the objects of a node as one group, then recurse into the
+     * children.
+     *
+     * @param node Current node
+     * @param lookup Query objects
+     * @param k Number of neighbors
+     * @param store Output storage
+     * @return Number of queries processed
+     */
+    private int processNode(Node node, DBIDs lookup, int k, WritableDataStore<KNNList> store) {
+      // In inner nodes, the routing object is also stored in a child.
+      DoubleDBIDListIter it = node.singletons.iter();
+      node.singletons.assignVar(0, center);
+      if(!node.children.isEmpty()) {
+        it.advance();
+      }
+      group.clear();
+      radius = 0.;
+      for(; it.valid(); it.advance()) {
+        if(lookup.contains(it)) {
+          final int i = group.size();
+          if(i == heaps.length) {
+            qdists = Arrays.copyOf(qdists, i << 1);
+            kdists = Arrays.copyOf(kdists, i << 1);
+            heaps = Arrays.copyOf(heaps, i << 1);
+          }
+          // The routing object may occur again as a singleton.
+          final double qd = DBIDUtil.equal(it, center) ? 0. : it.doubleValue();
+          group.add(it);
+          qdists[i] = qd;
+          kdists[i] = Double.POSITIVE_INFINITY;
+          heaps[i] = DBIDUtil.newHeap(k);
+          radius = qd > radius ? qd : radius;
+        }
+      }
+      int found = group.size();
+      if(found > 0) {
+        searchGroup();
+        DBIDArrayIter qi = group.iter();
+        for(int i = 0; qi.valid(); qi.advance(), i++) {
+          store.put(qi, heaps[i].toKNNList());
+          heaps[i] = null;
+        }
+      }
+      for(Node child : node.children) {
+        found += processNode(child, lookup, k, store);
+      }
+      return found;
+    }
+
+    /**
+     * Find the nearest neighbors of the current group.
+     */
+    private void searchGroup() {
+      bound = Double.POSITIVE_INFINITY;
+      pq.clear();
+      pq.add(distance(center, root.singletons.iter()) - root.maxDist, root);
+      while(!pq.isEmpty()) {
+        final Node cur = pq.peekValue();
+        final double prio = pq.peekKey(); // Minimum distance to cover
+        pq.poll(); // Remove
+
+        if(prio - radius > bound) {
+          continue;
+        }
+        final double d = prio + cur.maxDist; // Restore distance to center.
+
+        final DoubleDBIDListIter it = cur.singletons.iter();
+        if(!cur.children.isEmpty()) { // Inner node:
+          for(Node c : cur.children) {
+            if(Math.abs(d - c.parentDist) - c.maxDist - radius <= bound) {
+              // Reuse distance if the previous routing object is the same:
+              double newprio = (DBIDUtil.equal(c.singletons.assignVar(0, tmp), it) //
+                  ? d : distance(center, tmp)) //
+                  - c.maxDist; // Minimum distance
+              if(newprio - radius <= bound) {
+                pq.add(newprio, c);
+              }
+            }
+          }
+        }
+        else if(!isDeleted(it)) { // Leaf node: consider routing object, too
+          candidate(it, d);
+        }
+        cur.singletons.assignVar(0, tmp);
+        it.advance(); // Skip routing object.
+        // For remaining singletons, compute the distances:
+        for(; it.valid(); it.advance()) {
+          // The routing object may occur again as a singleton.
+          final double sd = DBIDUtil.equal(it, tmp) ? 0. : it.doubleValue();
+          if(Math.abs(d - sd) - radius <= bound && !isDeleted(it)) {
+            candidate(it, distance(center, it));
+          }
+        }
+      }
+    }
+
+    /**
+     * Consider a candidate for all queries in the current group.
+     *
+     * @param cand Candidate
+     * @param cdist Distance of the candidate to the group routing object
+     */
+    private void candidate(DBIDRef cand, double cdist) {
+      double newbound = 0.;
+      DBIDArrayIter qi = group.iter();
+      for(int i = 0; qi.valid(); qi.advance(), i++) {
+        double kdist = kdists[i];
+        if(Math.abs(cdist - qdists[i]) <= kdist) {
+          final double dist = qdists[i] == 0. && DBIDUtil.equal(qi, center) ? cdist : distance(qi, cand);
+          if(dist <= kdist) {
+            kdist = kdists[i] = heaps[i].insert(dist, cand);
+          }
+        }
+        newbound = kdist > newbound ? kdist : newbound;
+      }
+      bound = newbound;
+    }
+  }
+
+  /**
+   * Batch range query class.
+   * <p>
+   * If all objects of the tree are queried, a {@link DualTreeJoin} is used,
+   * otherwise the objects are queried one at a time.
+   *
+   * @author Erich Schubert
+   */
+  public class CoverTreeBatchRangeSearcher implements BatchRangeSearcher {
+    @Override
+    public DataStore<DoubleDBIDList> getRange(DBIDs ids, double range) {
+      WritableDataStore<DoubleDBIDList> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, DoubleDBIDList.class);
+      DBIDs lookup = ids instanceof DBIDRange || ids instanceof SetDBIDs ? ids : DBIDUtil.newHashSet(ids);
+      if(isSelfJoin(ids, lookup)) {
+        new DualTreeJoin().rangeJoin(range, store);
+        return store;
+      }
+      CoverTreeRangeDBIDSearcher rangeq = new CoverTreeRangeDBIDSearcher();
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        store.put(it, rangeq.getRange(it, range, DBIDUtil.newDistanceDBIDList()));
+      }
+      return store;
+    }
+  }
+
+  /**
+   * Minimum spanning tree searcher for the cover tree, using a
+   * {@link DualTreeBoruvka}.
+   *
+   * @author Erich Schubert
+   */
+  public class CoverTreeSpanningTreeSearcher implements SpanningTreeSearcher {
+    @Override
+    public void spanningTree(ArrayDBIDs ids, DoubleDataStore coredists, Collector collector) {
+      DBIDs lookup = ids instanceof DBIDRange ? ids : DBIDUtil.newHashSet(ids);
+      if(!isSelfJoin(ids, lookup)) {
+        throw new IllegalArgumentException("The spanning tree can only be computed for all objects of an unmodified tree.");
+      }
+      new DualTreeBoruvka().run(ids, coredists, collector);
+    }
+  }
+
+  /**
+   * Test whether the queries are exactly the objects in the tree, so that a
+   * {@link DualTreeJoin} can be used.
+   *
+   * @param ids Query objects
+   * @param lookup Query objects, for fast lookups
+   * @return {@code true} if a self-join can be used
+   */
+  private boolean isSelfJoin(DBIDs ids, DBIDs lookup) {
+    if(root == null || deleted != null || ids.size() != relation.size()) {
+      return false;
+    }
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      if(!lookup.contains(it)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Dual-tree self-join of the cover tree, which computes the k nearest
+   * neighbors or the range neighbors of all objects in the tree at once.
+   * <p>
+   * Query and reference tree are descended simultaneously, always expanding
+   * the node with the larger cover radius, and singletons are treated as nodes
+   * with radius 0. Pairs are pruned with the triangle inequality, using the
+   * distance of the routing objects, the distances to the parent routing
+   * objects, and the cover radii. For kNN joins, the pruning bound of a query
+   * node is the largest kNN distance of its descendants.
+   * <p>
+   * Reference:
+   * <p>
+   * P. Ram, D. Lee, W. B. March, A. G. Gray<br>
+   * Linear-time Algorithms for Pairwise Statistical Problems<br>
+   * Advances in Neural Information Processing Systems 22 (NIPS 2009)
+   *
+   * @author Erich Schubert
+   */
+  @Reference(authors = "P. Ram, D. Lee, W. B. March, A. G. Gray", //
+      title = "Linear-time Algorithms for Pairwise Statistical Problems", //
+      booktitle = "Advances in Neural Information Processing Systems 22 (NIPS 2009)", //
+      url = "http://papers.nips.cc/paper/3879-linear-time-algorithms-for-pairwise-statistical-problems", //
+      bibkey = "DBLP:conf/nips/RamLMG09")
+  private class DualTreeJoin {
+    /**
+     * kNN heaps; {@code null} for range joins.
+     */
+    private WritableDataStore<KNNHeap> heaps;
+
+    /**
+     * Current kNN distances.
+     */
+    private WritableDoubleDataStore kdists;
+
+    /**
+     * Pruning bounds of the query nodes, by node id.
+     */
+    double[] bounds;
+
+    /**
+     * Range join results.
+     */
+    private WritableDataStore<ModifiableDoubleDBIDList> lists;
+
+    /**
+     * Radius of a range join.
+     */
+    private double range;
+
+    /**
+     * Temporary storage.
+     */
+    DBIDVar tmpa = DBIDUtil.newVar(), tmpb = DBIDUtil.newVar();
+
+    /**
+     * Compute the k nearest neighbors of all objects.
+     *
+     * @param k Number of neighbors
+     * @param store Output storage
+     */
+    void knnJoin(int k, WritableDataStore<KNNList> store) {
+      final DBIDs ids = relation.getDBIDs();
+      heaps = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, KNNHeap.class);
+      kdists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, Double.POSITIVE_INFINITY);
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        heaps.put(it, DBIDUtil.newHeap(k));
+      }
+      bounds = new double[numnodes];
+      Arrays.fill(bounds, Double.POSITIVE_INFINITY);
+      join(root, null, root, 0.);
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        store.put(it, heaps.get(it).toKNNList());
+      }
+      heaps.destroy();
+      kdists.destroy();
+    }
+
+    /**
+     * Compute the range neighbors of all objects.
+     *
+     * @param range Query radius
+     * @param store Output storage
+     */
+    void rangeJoin(double range, WritableDataStore<DoubleDBIDList> store) {
+      final DBIDs ids = relation.getDBIDs();
+      this.range = range;
+      lists = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, ModifiableDoubleDBIDList.class);
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        lists.put(it, DBIDUtil.newDistanceDBIDList());
+      }
+      join(root, null, root, 0.);
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        store.put(it, lists.get(it));
+      }
+      lists.destroy();
+    }
+
+    /**
+     * Join a query node or object with a reference node.
+     *
+     * @param qn Query node, or {@code null}
+     * @param qp Query object, if {@code qn} is {@code null}
+     * @param r Reference node
+     * @param d Distance of the routing objects
+     */
+    private void join(Node qn, DBIDRef qp, Node r, double d) {
+      final double qrad = qn != null ? qn.maxDist : 0.;
+      if(d - qrad - r.maxDist > bound(qn, qp)) {
+        return;
+      }
+      if(qn != null && qrad > r.maxDist) {
+        descendQuery(qn, r, d);
+      }
+      else {
+        descendReference(qn, qp, r, d);
+      }
+    }
+
+    /**
+     * Join the entries of the query node with a reference node.
+     *
+     * @param qn Query node
+     * @param r Reference node
+     * @param d Distance of the routing objects
+     */
+    private void descendQuery(Node qn, Node r, double d) {
+      final double rrad = r.maxDist;
+      for(Node c : qn.children) {
+        if(Math.abs(d - c.parentDist) - c.maxDist - rrad <= bound(c, null)) {
+          join(c, null, r, sameRouting(qn, c) ? d : distance(c.singletons.assignVar(0, tmpa), r.singletons.assignVar(0, tmpb)));
+        }
+      }
+      for(DoubleDBIDListIter it = singletons(qn); it.valid(); it.advance()) {
+        if(Math.abs(d - it.doubleValue()) - rrad <= bound(null, it)) {
+          join(null, it, r, distance(it, r.singletons.assignVar(0, tmpb)));
+        }
+      }
+      updateBound(qn);
+    }
+
+    /**
+     * Join a query node or object with the entries of the reference node,
+     * closest first.
+     *
+     * @param qn Query node, or {@code null}
+     * @param qp Query object, if {@code qn} is {@code null}
+     * @param r Reference node
+     * @param d Distance of the routing objects
+     */
+    private void descendReference(Node qn, DBIDRef qp, Node r, double d) {
+      final double qrad = qn != null ? qn.maxDist : 0., b = bound(qn, qp);
+      final int nc = r.children.size(), size = nc + r.singletons.size();
+      double[] lbs = new double[size], dists = new double[size];
+      int[] order = new int[size], entries = new int[size];
+      int n = 0;
+      for(int i = 0; i < nc; i++) {
+        final Node c = r.children.get(i);
+        if(Math.abs(d - c.parentDist) - c.maxDist - qrad <= b) {
+          final double cd = sameRouting(r, c) ? d : queryDistance(qn, qp, c.singletons.assignVar(0, tmpb));
+          if(cd - c.maxDist - qrad <= b) {
+            lbs[n] = cd - c.maxDist - qrad;
+            dists[n] = cd;
+            order[n] = n;
+            entries[n++] = i;
+          }
+        }
+      }
+      final DoubleDBIDListIter it = singletons(r);
+      for(; it.valid(); it.advance()) {
+        if(Math.abs(d - it.doubleValue()) - qrad <= b) {
+          final double sd = queryDistance(qn, qp, it);
+          if(sd - qrad <= b) {
+            lbs[n] = sd - qrad;
+            dists[n] = sd;
+            order[n] = n;
+            entries[n++] = nc + it.getOffset();
+          }
+        }
+      }
+      DoubleIntegerArrayQuickSort.sort(lbs, order, n);
+      for(int j = 0; j < n && lbs[j] <= bound(qn, qp); j++) {
+        final int e = entries[order[j]];
+        if(e < nc) {
+          join(qn, qp, r.children.get(e), dists[order[j]]);
+        }
+        else if(qn != null) {
+          joinObject(qn, it.seek(e - nc), dists[order[j]]);
+        }
+        else {
+          candidate(qp, it.seek(e - nc), dists[order[j]]);
+        }
+      }
+    }
+
+    /**
+     * Join a query node with a reference object.
+     *
+     * @param qn Query node
+     * @param rp Reference object
+     * @param d Distance of the routing object to the reference object
+     */
+    private void joinObject(Node qn, DBIDRef rp, double d) {
+      if(d - qn.maxDist > bound(qn, null)) {
+        return;
+      }
+      for(Node c : qn.children) {
+        if(Math.abs(d - c.parentDist) - c.maxDist <= bound(c, null)) {
+          joinObject(c, rp, sameRouting(qn, c) ? d : distance(c.singletons.assignVar(0, tmpa), rp));
+        }
+      }
+      for(DoubleDBIDListIter it = singletons(qn); it.valid(); it.advance()) {
+        if(Math.abs(d - it.doubleValue()) <= bound(null, it)) {
+          candidate(it, rp, distance(it, rp));
+        }
+      }
+      updateBound(qn);
+    }
+
+    /**
+     * Consider a reference object as neighbor of a query object.
+     *
+     * @param qp Query object
+     * @param rp Reference object
+     * @param d Distance
+     */
+    void candidate(DBIDRef qp, DBIDRef rp, double d) {
+      if(heaps == null) {
+        if(d <= range) {
+          lists.get(qp).add(d, rp);
+        }
+      }
+      else if(d <= kdists.doubleValue(qp)) {
+        kdists.putDouble(qp, heaps.get(qp).insert(d, rp));
+      }
+    }
+
+    /**
+     * Pruning bound of a query node or object.
+     *
+     * @param qn Query node, or {@code null}
+     * @param qp Query object, if {@code qn} is {@code null}
+     * @return Largest distance of a neighbor still of interest
+     */
+    double bound(Node qn, DBIDRef qp) {
+      return heaps == null ? range : qn != null ? bounds[qn.id] : kdists.doubleValue(qp);
+    }
+
+    /**
+     * Update the pruning bound of a query node from its entries.
+     *
+     * @param qn Query node
+     */
+    void updateBound(Node qn) {
+      if(heaps == null) {
+        return;
+      }
+      double b = 0.;
+      for(Node c : qn.children) {
+        b = bounds[c.id] > b ? bounds[c.id] : b;
+      }
+      for(DoubleDBIDListIter it = singletons(qn); it.valid(); it.advance()) {
+        final double kdist = kdists.doubleValue(it);
+        b = kdist > b ? kdist : b;
+      }
+      bounds[qn.id] = b;
+    }
+
+    /**
+     * Iterate over the singletons of a node. In inner nodes, the routing
+     * object is also stored in a child, and is skipped.
+     *
+     * @param node Node
+     * @return Iterator
+     */
+    DoubleDBIDListIter singletons(Node node) {
+      final DoubleDBIDListIter it = node.singletons.iter();
+      return node.children.isEmpty() ? it : it.advance();
+    }
+
+    /**
+     * Test whether a child uses the same routing object as its parent.
+     *
+     * @param parent Parent node
+     * @param child Child node
+     * @return {@code true} if the routing object is the same
+     */
+    boolean sameRouting(Node parent, Node child) {
+      return child.parentDist == 0. && DBIDUtil.equal(parent.singletons.assignVar(0, tmpa), child.singletons.assignVar(0, tmpb));
+    }
+
+    /**
+     * Distance of the query to an object.
+     *
+     * @param qn Query node, or {@code null}
+     * @param qp Query object, if {@code qn} is {@code null}
+     * @param o Object
+     * @return Distance of the query routing object or query object
+     */
+    double queryDistance(Node qn, DBIDRef qp, DBIDRef o) {
+      return distance(qn != null ? qn.singletons.assignVar(0, tmpa) : qp, o);
+    }
+  }
+
+  /**
+   * Dual-tree Borůvka algorithm for the minimum spanning tree of all objects in
+   * the tree, optionally for the mutual reachability distance of HDBSCAN*.
+   * <p>
+   * In every round, the tree is joined with itself as in {@link DualTreeJoin}
+   * to find the shortest edge leaving each component, and these edges are then
+   * added to the spanning tree, at least halving the number of components.
+   * Pairs are pruned when all their objects are in the same component, or by
+   * the triangle inequality and the minimum core distances. The pruning bound
+   * of a query node is the largest shortest edge found for the components of
+   * its descendants.
+   * <p>
+   * Reference:
+   * <p>
+   * W. B. March, P. Ram, A. G. Gray<br>
+   * Fast Euclidean minimum spanning tree: algorithm, analysis, and
+   * applications<br>
+   * Proc. 16th ACM SIGKDD Int. Conf. Knowledge Discovery and Data Mining
+   * <p>
+   * L. McInnes, J. Healy<br>
+   * Accelerated Hierarchical Density Based Clustering<br>
+   * IEEE Int. Conf. Data Mining Workshops (ICDMW 2017)
+   *
+   * @author Erich Schubert
+   */
+  @Reference(authors = "W. B. March, P. Ram, A. G. Gray", //
+      title = "Fast Euclidean minimum spanning tree: algorithm, analysis, and applications", //
+      booktitle = "Proc. 16th ACM SIGKDD Int. Conf. Knowledge Discovery and Data Mining", //
+      url = "https://doi.org/10.1145/1835804.1835882", //
+      bibkey = "DBLP:conf/kdd/MarchRG10")
+  @Reference(authors = "L. McInnes, J. Healy", //
+      title = "Accelerated Hierarchical Density Based Clustering", //
+      booktitle = "IEEE Int. Conf. Data Mining Workshops (ICDMW 2017)", //
+      url = "https://doi.org/10.1109/ICDMW.2017.12", //
+      bibkey = "DBLP:conf/icdm/McInnesH17")
+  private class DualTreeBoruvka extends DualTreeJoin {
+    /**
+     * Offsets of the objects.
+     */
+    private WritableIntegerDataStore offsets;
+
+    /**
+     * Core distances, by offset.
+     */
+    private double[] core;
+
+    /**
+     * Component of each object in the current round, by offset.
+     */
+    private int[] comp;
+
+    /**
+     * Minimum core distance of the nodes, by node id.
+     */
+    private double[] mincores;
+
+    /**
+     * Component of all descendants of a node, or -1 if they are in different
+     * components, by node id.
+     */
+    private int[] nodecomps;
+
+    /**
+     * Length of the shortest edge leaving each component, by offset of the
+     * component root.
+     */
+    private double[] best;
+
+    /**
+     * Offsets of the shortest edge leaving each component.
+     */
+    private int[] besti, bestj;
+
+    /**
+     * Compute the minimum spanning tree.
+     *
+     * @param ids All objects in the tree, to report the edges by offset
+     * @param coredists Core distances, may be {@code null}
+     * @param collector Edge collector
+     */
+    void run(ArrayDBIDs ids, DoubleDataStore coredists, SpanningTreeSearcher.Collector collector) {
+      final int size = ids.size();
+      if(size < 2) {
+        return;
+      }
+      offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT);
+      core = new double[size];
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        offsets.putInt(it, it.getOffset());
+        core[it.getOffset()] = coredists != null ? coredists.doubleValue(it) : 0.;
+      }
+      mincores = new double[numnodes];
+      initCores(root);
+      comp = new int[size];
+      nodecomps = new int[numnodes];
+      bounds = new double[numnodes];
+      best = new double[size];
+      besti = new int[size];
+      bestj = new int[size];
+      WeightedQuickUnionInteger uf = new WeightedQuickUnionInteger();
+      for(int i = 0; i < size; i++) {
+        uf.nextIndex(1);
+      }
+      for(int components = size; components > 1;) {
+        for(int i = 0; i < size; i++) {
+          comp[i] = uf.find(i);
+        }
+        Arrays.fill(best, Double.POSITIVE_INFINITY);
+        Arrays.fill(bounds, Double.POSITIVE_INFINITY);
+        initComponents(root);
+        join(root, null, root, 0.);
+        int added = 0;
+        for(int c = 0; c < size; c++) {
+          if(best[c] < Double.POSITIVE_INFINITY && !uf.isConnected(besti[c], bestj[c])) {
+            uf.union(besti[c], bestj[c]);
+            collector.addEdge(best[c], besti[c], bestj[c]);
+            ++added;
+          }
+        }
+        if(added == 0) {
+          // Only infinite distances remain, connect as Prim's algorithm would.
+          for(int i = 1; i < size; i++) {
+            if(!uf.isConnected(0, i)) {
+              uf.union(0, i);
+              collector.addEdge(Double.POSITIVE_INFINITY, 0, i);
+            }
+          }
+          break;
+        }
+        components -= added;
+      }
+      offsets.destroy();
+    }
+
+    /**
+     * Compute the minimum core distances of a subtree.
+     *
+     * @param node Node
+     * @return Minimum core distance
+     */
+    private double initCores(Node node) {
+      double min = Double.POSITIVE_INFINITY;
+      for(Node c : node.children) {
+        final double m = initCores(c);
+        min = m < min ? m : min;
+      }
+      for(DoubleDBIDListIter it = singletons(node); it.valid(); it.advance()) {
+        final double m = core[offsets.intValue(it)];
+        min = m < min ? m : min;
+      }
+      return mincores[node.id] = min;
+    }
+
+    /**
+     * Compute the components of a subtree for the current round.
+     *
+     * @param node Node
+     * @return Component of all descendants, or -1
+     */
+    private int initComponents(Node node) {
+      int nc = -2; // Not yet set
+      for(Node c : node.children) {
+        final int cc = initComponents(c);
+        nc = nc == -2 || nc == cc ? cc : -1;
+      }
+      for(DoubleDBIDListIter it = singletons(node); it.valid(); it.advance()) {
+        final int cc = comp[offsets.intValue(it)];
+        nc = nc == -2 || nc == cc ? cc : -1;
+      }
+      return nodecomps[node.id] = nc;
+    }
+
+    /**
+     * Test whether all objects of the query and reference are in the same
+     * component.
+     *
+     * @param qn Query node, or {@code null}
+     * @param qp Query object, if {@code qn} is {@code null}
+     * @param rn Reference node, or {@code null}
+     * @param rp Reference object, if {@code rn} is {@code null}
+     * @return {@code true} if no edge can leave a component
+     */
+    private boolean sameComponent(Node qn, DBIDRef qp, Node rn, DBIDRef rp) {
+      final int qc = qn != null ? nodecomps[qn.id] : comp[offsets.intValue(qp)];
+      return qc >= 0 && qc == (rn != null ? nodecomps[rn.id] : comp[offsets.intValue(rp)]);
+    }
+
+    /**
+     * Lower bound of the edges between a query and a reference, using the
+     * minimum core distances.
+     *
+     * @param lb Lower bound of the distance
+     * @param qn Query node, or {@code null}
+     * @param qp Query object, if {@code qn} is {@code null}
+     * @param rn Reference node, or {@code null}
+     * @param rp Reference object, if {@code rn} is {@code null}
+     * @return Lower bound
+     */
+    private double lowerBound(double lb, Node qn, DBIDRef qp, Node rn, DBIDRef rp) {
+      final double qc = qn != null ? mincores[qn.id] : core[offsets.intValue(qp)];
+      final double rc = rn != null ? mincores[rn.id] : core[offsets.intValue(rp)];
+      return lb > qc ? (lb > rc ? lb : rc) : (qc > rc ? qc : rc);
+    }
+
+    /**
+     * Test whether a query and a reference can be pruned.
+     *
+     * @param lb Lower bound of the distance
+     * @param qn Query node, or {@code null}
+     * @param qp Query object, if {@code qn} is {@code null}
+     * @param rn Reference node, or {@code null}
+     * @param rp Reference object, if {@code rn} is {@code null}
+     * @return {@code true} if no shorter edge can be found
+     */
+    private boolean prune(double lb, Node qn, DBIDRef qp, Node rn, DBIDRef rp) {
+      return sameComponent(qn, qp, rn, rp) || lowerBound(lb, qn, qp, rn, rp) > bound(qn, qp);
+    }
+
+    /**
+     * Join a query node or object with a reference node.
+     *
+     * @param qn Query node, or {@code null}
+     * @param qp Query object, if {@code qn} is {@code null}
+     * @param r Reference node
+     * @param d Distance of the routing objects
+     */
+    private void join(Node qn, DBIDRef qp, Node r, double d) {
+      final double qrad = qn != null ? qn.maxDist : 0.;
+      if(prune(d - qrad - r.maxDist, qn, qp, r, null)) {
+        return;
+      }
+      if(qn != null && qrad > r.maxDist) {
+        descendQuery(qn, r, d);
+      }
+      else {
+        descendReference(qn, qp, r, d);
+      }
+    }
+
+    /**
+     * Join the entries of the query node with a reference node.
+     *
+     * @param qn Query node
+     * @param r Reference node
+     * @param d Distance of the routing objects
+     */
+    private void descendQuery(Node qn, Node r, double d) {
+      final double rrad = r.maxDist;
+      for(Node c : qn.children) {
+        if(!prune(Math.abs(d - c.parentDist) - c.maxDist - rrad, c, null, r, null)) {
+          join(c, null, r, sameRouting(qn, c) ? d : distance(c.singletons.assignVar(0, tmpa), r.singletons.assignVar(0, tmpb)));
+        }
+      }
+      for(DoubleDBIDListIter it = singletons(qn); it.valid(); it.advance()) {
+        if(!prune(Math.abs(d - it.doubleValue()) - rrad, null, it, r, null)) {
+          join(null, it, r, distance(it, r.singletons.assignVar(0, tmpb)));
+        }
+      }
+      updateBound(qn);
+    }
+
+    /**
+     * Join a query node or object with the entries of the reference node,
+     * closest first.
+     *
+     * @param qn Query node, or {@code null}
+     * @param qp Query object, if {@code qn} is {@code null}
+     * @param r Reference node
+     * @param d Distance of the routing objects
+     */
+    private void descendReference(Node qn, DBIDRef qp, Node r, double d) {
+      final double qrad = qn != null ? qn.maxDist : 0.;
+      final int nc = r.children.size(), size = nc + r.singletons.size();
+      double[] lbs = new double[size], dists = new double[size];
+      int[] order = new int[size], entries = new int[size];
+      int n = 0;
+      for(int i = 0; i < nc; i++) {
+        final Node c = r.children.get(i);
+        if(!prune(Math.abs(d - c.parentDist) - c.maxDist - qrad, qn, qp, c, null)) {
+          final double cd = sameRouting(r, c) ? d : queryDistance(qn, qp, c.singletons.assignVar(0, tmpb));
+          final double lb = lowerBound(cd - c.maxDist - qrad, qn, qp, c, null);
+          if(lb <= bound(qn, qp)) {
+            lbs[n] = lb;
+            dists[n] = cd;
+            order[n] = n;
+            entries[n++] = i;
+          }
+        }
+      }
+      final DoubleDBIDListIter it = singletons(r);
+      for(; it.valid(); it.advance()) {
+        if(!prune(Math.abs(d - it.doubleValue()) - qrad, qn, qp, null, it)) {
+          final double sd = queryDistance(qn, qp, it);
+          final double lb = lowerBound(sd - qrad, qn, qp, null, it);
+          if(lb <= bound(qn, qp)) {
+            lbs[n] = lb;
+            dists[n] = sd;
+            order[n] = n;
+            entries[n++] = nc + it.getOffset();
+          }
+        }
+      }
+      DoubleIntegerArrayQuickSort.sort(lbs, order, n);
+      for(int j = 0; j < n && lbs[j] <= bound(qn, qp); j++) {
+        final int e = entries[order[j]];
+        if(e < nc) {
+          join(qn, qp, r.children.get(e), dists[order[j]]);
+        }
+        else if(qn != null) {
+          joinObject(qn, it.seek(e - nc), dists[order[j]]);
+        }
+        else {
+          candidate(qp, it.seek(e - nc), dists[order[j]]);
+        }
+      }
+    }
+
+    /**
+     * Join a query node with a reference object.
+     *
+     * @param qn Query node
+     * @param rp Reference object
+     * @param d Distance of the routing object to the reference object
+     */
+    private void joinObject(Node qn, DBIDRef rp, double d) {
+      if(prune(d - qn.maxDist, qn, null, null, rp)) {
+        return;
+      }
+      for(Node c : qn.children) {
+        if(!prune(Math.abs(d - c.parentDist) - c.maxDist, c, null, null, rp)) {
+          joinObject(c, rp, sameRouting(qn, c) ? d : distance(c.singletons.assignVar(0, tmpa), rp));
+        }
+      }
+      for(DoubleDBIDListIter it = singletons(qn); it.valid(); it.advance()) {
+        if(!prune(Math.abs(d - it.doubleValue()), null, it, null, rp)) {
+          candidate(it, rp, distance(it, rp));
+        }
+      }
+      updateBound(qn);
+    }
+
+    /**
+     * Consider an edge as shortest edge of the components of both objects.
+     *
+     * @param qp Query object
+     * @param rp Reference object
+     * @param d Distance
+     */
+    @Override
+    void candidate(DBIDRef qp, DBIDRef rp, double d) {
+      final int qoff = offsets.intValue(qp), roff = offsets.intValue(rp);
+      final int qc = comp[qoff], rc = comp[roff];
+      if(qc == rc) {
+        return;
+      }
+      final double qcore = core[qoff], rcore = core[roff];
+      final double m = d > qcore ? (d > rcore ? d : rcore) : (qcore > rcore ? qcore : rcore);
+      if(m < best[qc]) {
+        best[qc] = m;
+        besti[qc] = qoff;
+        bestj[qc] = roff;
+      }
+      if(m < best[rc]) {
+        best[rc] = m;
+        besti[rc] = roff;
+        bestj[rc] = qoff;
+      }
+    }
+
+    /**
+     * Pruning bound of a query node or object.
+     *
+     * @param qn Query node, or {@code null}
+     * @param qp Query object, if {@code qn} is {@code null}
+     * @return Length of edges still of interest
+     */
+    @Override
+    double bound(Node qn, DBIDRef qp) {
+      return qn != null ? bounds[qn.id] : best[comp[offsets.intValue(qp)]];
+    }
+
+    /**
+     * Update the pruning bound of a query node from its entries.
+     *
+     * @param qn Query node
+     */
+    @Override
+    void updateBound(Node qn) {
+      double b = 0.;
+      for(Node c : qn.children) {
+        b = bounds[c.id] > b ? bounds[c.id] : b;
+      }
+      for(DoubleDBIDListIter it = singletons(qn); it.valid(); it.advance()) {
+        final double o = best[comp[offsets.intValue(it)]];
+        b = o > b ? o : b;
+      }
+      bounds[qn.id] = b;
+    }
+  }
+
   /**
    * Priority query class.
    *
@@ -648,9 +1740,13 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
      */
     protected PrioritySearcher<Q> doSearch() {
       this.threshold = Double.POSITIVE_INFINITY;
+      candidates = DoubleDBIDListIter.EMPTY;
       pq.clear();
-      pq.add(queryDistance(root.singletons.iter()) - root.maxDist, root);
       lb = 0.;
+      if(root == null) {
+        return this;
+      }
+      pq.add(queryDistance(root.singletons.iter()) - root.maxDist, root);
       return advance(); // Find first
     }
 
@@ -684,7 +1780,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
       do {
         while(candidates.valid()) {
           // Pruning with lower bound:
-          if(Math.abs(routingDist - candidates.doubleValue()) <= threshold) {
+          if(Math.abs(routingDist - candidates.doubleValue()) <= threshold && !isDeleted(candidates)) {
             return this;
           }
           candidates.advance(); // Skip
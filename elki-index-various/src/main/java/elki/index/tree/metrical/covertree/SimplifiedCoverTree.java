@@ -140,7 +140,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
   @Override
   public void initialize() {
     bulkLoad(relation.getDBIDs());
-    if(LOG.isVerbose()) {
+    if(root != null && LOG.isVerbose()) {
       int[] counts = new int[5];
       checkCoverTree(root, counts, 0);
       LOG.statistics(new LongStatistic(this.getClass().getName() + ".nodes", counts[0]));
@@ -157,6 +157,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
    * @param ids IDs to load
    */
   public void bulkLoad(DBIDs ids) {
+    resetUpdates(ids.size());
     if(ids.isEmpty()) {
       return;
     }
@@ -232,6 +233,70 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
     return node;
   }
 
+  @Override
+  protected void rebuild() {
+    root = null;
+    bulkLoad(relation.getDBIDs());
+  }
+
+  @Override
+  protected void insertObject(DBIDRef id) {
+    if(root == null) {
+      root = new Node(id, 0., DBIDUtil.newDistanceDBIDList(0));
+      return;
+    }
+    root = insert(root, id, distance(root.singletons.iter(), id));
+  }
+
+  /**
+   * Insert an object into a subtree.
+   * <p>
+   * The object is added to the closest child covering it, or as a singleton
+   * if no child covers it. Leaves that became too large are rebuilt whenever
+   * their size doubled.
+   *
+   * @param node Subtree root
+   * @param id Object to insert
+   * @param d Distance to the routing object
+   * @return New subtree root
+   */
+  private Node insert(Node node, DBIDRef id, double d) {
+    node.maxDist = d > node.maxDist ? d : node.maxDist;
+    if(node.children.isEmpty()) { // Leaf node
+      node.singletons.add(id);
+      final int size = node.singletons.size();
+      if(size < truncate << 1 || (size & (size - 1)) != 0 || node.maxDist <= 0) {
+        return node;
+      }
+      DBIDArrayIter it = node.singletons.iter();
+      DBID cur = DBIDUtil.deref(it);
+      ModifiableDoubleDBIDList elems = DBIDUtil.newDistanceDBIDList(size - 1);
+      for(it.advance(); it.valid(); it.advance()) {
+        elems.add(distance(cur, it), it);
+      }
+      return bulkConstruct(cur, Integer.MAX_VALUE, elems);
+    }
+    final DBIDVar tmp = DBIDUtil.newVar();
+    final DBIDArrayIter routing = node.singletons.iter();
+    int best = -1;
+    double bestd = Double.POSITIVE_INFINITY;
+    for(int i = 0; i < node.children.size(); i++) {
+      final Node c = node.children.get(i);
+      final double cd = DBIDUtil.equal(c.singletons.assignVar(0, tmp), routing) ? d : distance(tmp, id);
+      if(cd <= c.maxDist && cd < bestd) {
+        best = i;
+        bestd = cd;
+      }
+    }
+    if(best >= 0) {
+      node.children.set(best, insert(node.children.get(best), id, bestd));
+    }
+    else {
+      node.singletons.add(id);
+    }
+    return node;
+  }
+
   /**
    * Collect some statistics on the tree.
    *
@@ -332,6 +397,9 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
      * @return result
      */
     protected ModifiableDoubleDBIDList doSearch(double range, ModifiableDoubleDBIDList result) {
+      if(root == null) {
+        return result;
+      }
       open.clear();
       open.add(root);
       while(!open.isEmpty()) {
@@ -348,13 +416,16 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
         }
         else { // Leaf node
           // Consider routing object, too:
-          if(d <= range) {
+          if(d <= range && !isDeleted(tmp)) {
             result.add(d, tmp); // First element is a candidate now
           }
         }
         // For remaining singletons, compute the distances:
         for(int i = 1, l = cur.singletons.size(); i < l; i++) {
-          final double d2 = queryDistance(cur.singletons.assignVar(i, tmp));
+          if(isDeleted(cur.singletons.assignVar(i, tmp))) {
+            continue;
+          }
+          final double d2 = queryDistance(tmp);
           if(d2 <= range) {
             result.add(d2, tmp);
           }
@@ -434,6 +505,9 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
      */
     protected KNNList doSearch(int k) {
       KNNHeap knnList = DBIDUtil.newHeap(k);
+      if(root == null) {
+        return knnList.toKNNList();
+      }
       double d_k = Double.POSITIVE_INFINITY;
       pq.clear();
       pq.add(queryDistance(root.singletons.iter()) - root.maxDist, root);
@@ -463,18 +537,20 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
         }
         else { // Leaf node
           // Consider routing object, too:
-          if(d <= d_k) {
+          if(d <= d_k && !isDeleted(it)) {
             d_k = knnList.insert(d, it); // First element is a candidate now
           }
         }
         it.advance(); // Skip routing object.
         // For remaining singletons, compute the distances:
-        while(it.valid()) {
+        for(; it.valid(); it.advance()) {
+          if(isDeleted(it)) {
+            continue;
+          }
           final double d2 = queryDistance(it);
           if(d2 <= d_k) {
             d_k = knnList.insert(d2, it);
           }
-          it.advance();
         }
       }
       return knnList.toKNNList();
@@ -600,9 +676,13 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
      */
     protected PrioritySearcher<Q> doSearch() {
       this.threshold = Double.POSITIVE_INFINITY;
+      candidates = EmptyDBIDs.EMPTY_ITERATOR;
       pq.clear();
-      pq.add(queryDistance(root.singletons.iter()) - root.maxDist, root);
       lb = 0;
+      if(root == null) {
+        return this;
+      }
+      pq.add(queryDistance(root.singletons.iter()) - root.maxDist, root);
       return advance(); // Find first
     }
 
@@ -634,8 +714,11 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
       // manage them and their bounds in the heap. If we do this locally, we get
       // upper and lower bounds easily.
       do {
-        if(candidates.valid()) {
-          return this;
+        while(candidates.valid()) {
+          if(!isDeleted(candidates)) {
+            return this;
+          }
+          candidates.advance(); // Skip deleted objects
         }
       }
       while(advanceQueue()); // Try next node
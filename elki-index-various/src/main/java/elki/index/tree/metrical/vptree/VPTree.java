@@ -0,0 +1,1027 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.tree.metrical.vptree;
+
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import elki.data.type.TypeInformation;
+import elki.database.ids.*;
+import elki.database.query.PrioritySearcher;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.index.DistancePriorityIndex;
+import elki.index.IndexFactory;
+import elki.logging.Logging;
+import elki.logging.LoggingUtil;
+import elki.logging.statistics.Counter;
+import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelCore;
+import elki.utilities.Alias;
+import elki.utilities.datastructures.heap.DoubleLongMinHeap;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * In-memory vantage-point tree (VP-tree) for arbitrary metric distances.
+ * <p>
+ * The tree is stored in a single {@link ModifiableDoubleDBIDList}, similar to
+ * {@link elki.index.tree.spatial.kd.SmallMemoryKDTree}: a node covering the
+ * interval [start, end) stores its vantage point at position start, the
+ * objects within the median distance in [start+1, mid) and the remaining
+ * objects in [mid, end), with mid = (start + 1 + end) / 2. The double value of
+ * each entry is the distance to the vantage point of the last split, which
+ * allows pruning leaf entries with the triangle inequality. The distance
+ * bounds of each child interval with respect to the parent vantage point are
+ * stored in two additional arrays at the first position of the child.
+ * <p>
+ * As vantage point, we use the object farthest from the parent vantage point,
+ * which requires no additional distance computations. This makes the tree
+ * layout deterministic, so the bulk load can build subtrees in parallel.
+ * <p>
+ * Reference:
+ * <p>
+ * P. N. Yianilos<br>
+ * Data structures and algorithms for nearest neighbor search in general metric
+ * spaces<br>
+ * Proc. 4th Annual ACM/SIGACT-SIAM Symposium on Discrete Algorithms (SODA'93)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - VPTreeKNNSearcher
+ * @has - - - VPTreeRangeSearcher
+ * @has - - - VPTreePrioritySearcher
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "P. N. Yianilos", //
+    title = "Data structures and algorithms for nearest neighbor search in general metric spaces", //
+    booktitle = "Proc. 4th Annual ACM/SIGACT-SIAM Symposium on Discrete Algorithms (SODA'93)", //
+    url = "http://dl.acm.org/citation.cfm?id=313559.313789", //
+    bibkey = "DBLP:conf/soda/Yianilos93")
+public class VPTree<O> implements DistancePriorityIndex<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(VPTree.class);
+
+  /**
+   * Minimum subtree size to build in a separate task.
+   */
+  private static final int PARALLEL_MIN = 4096;
+
+  /**
+   * The representation we are bound to.
+   */
+  protected final Relation<O> relation;
+
+  /**
+   * Distance function.
+   */
+  protected final Distance<? super O> distance;
+
+  /**
+   * Distance query on the data relation.
+   */
+  protected final DistanceQuery<O> distanceQuery;
+
+  /**
+   * Maximum size of leaf nodes.
+   */
+  protected final int leafsize;
+
+  /**
+   * The tree, as a serialized array.
+   */
+  protected ModifiableDoubleDBIDList sorted = null;
+
+  /**
+   * Lower and upper distance bounds of each subtree with respect to the
+   * parent vantage point, stored at the first position of the subtree.
+   */
+  protected double[] lo, hi;
+
+  /**
+   * Counter for distance computations.
+   */
+  protected final Counter distcalc;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param distance Distance function
+   * @param leafsize Maximum size of leaf nodes
+   */
+  public VPTree(Relation<O> relation, Distance<? super O> distance, int leafsize) {
+    super();
+    this.relation = relation;
+    this.distance = distance;
+    this.distanceQuery = distance.instantiate(relation);
+    this.leafsize = leafsize;
+    assert leafsize >= 1;
+    this.distcalc = LOG.isStatistics() ? LOG.newCounter(this.getClass().getName() + ".distancecalcs") : null;
+  }
+
+  /**
+   * Constructor with default leaf size.
+   *
+   * @param relation Relation to index
+   * @param distance Distance function
+   */
+  // Note: used from {@link EmpiricalQueryOptimizer} via reflection!
+  public VPTree(Relation<O> relation, Distance<? super O> distance) {
+    this(relation, distance, 8);
+  }
+
+  @Override
+  public void initialize() {
+    final long starttime = System.currentTimeMillis();
+    final int size = relation.size();
+    sorted = DBIDUtil.newDistanceDBIDList(size);
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      sorted.add(0., it);
+    }
+    lo = new double[size];
+    hi = new double[size];
+    if(size <= leafsize) {
+      return; // Root is a leaf, no bounds.
+    }
+    // Use the object farthest from the first as root vantage point:
+    DoubleDBIDListMIter it = sorted.iter(), ref = sorted.iter();
+    for(it.advance(); it.valid(); it.advance()) {
+      it.setDouble(distanceQuery.distance(ref, it));
+    }
+    BuildTask root = new BuildTask(0, size);
+    if(size >= PARALLEL_MIN) {
+      ParallelCore.getCore().getForkJoinPool().invoke(root);
+    }
+    else {
+      root.compute();
+    }
+    if(LOG.isStatistics()) {
+      final String prefix = this.getClass().getName();
+      LOG.statistics(new LongStatistic(prefix + ".construction.distancecalcs", root.dists + size - 1));
+      LOG.statistics(new LongStatistic(prefix + ".construction-time.ms", System.currentTimeMillis() - starttime));
+    }
+  }
+
+  /**
+   * Task to build a subtree, which may fork additional tasks.
+   *
+   * @author Erich Schubert
+   */
+  private class BuildTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Interval of the subtree.
+     */
+    private final int start, end;
+
+    /**
+     * Distance computations of this task.
+     */
+    long dists;
+
+    /**
+     * Constructor.
+     *
+     * @param start Interval start
+     * @param end Interval end (exclusive)
+     */
+    BuildTask(int start, int end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      dists = buildTree(start, end, sorted.iter(), sorted.iter());
+    }
+  }
+
+  /**
+   * Recursively build a subtree. The double values of the interval must
+   * contain the distances to the parent vantage point.
+   *
+   * @param start Interval start
+   * @param end Interval end (exclusive)
+   * @param it Iterator
+   * @param vp Iterator for the vantage point
+   * @return Number of distance computations
+   */
+  private long buildTree(int start, int end, DoubleDBIDListMIter it, DoubleDBIDListMIter vp) {
+    assert end - start > leafsize;
+    // Choose the object farthest from the parent vantage point:
+    int best = start;
+    double bestd = Double.NEGATIVE_INFINITY;
+    for(it.seek(start); it.getOffset() < end; it.advance()) {
+      if(it.doubleValue() > bestd) {
+        bestd = it.doubleValue();
+        best = it.getOffset();
+      }
+    }
+    sorted.swap(start, best);
+    vp.seek(start);
+    for(it.seek(start + 1); it.getOffset() < end; it.advance()) {
+      it.setDouble(distanceQuery.distance(vp, it));
+    }
+    long dists = end - start - 1;
+    // Split at the median distance:
+    final int mid = (start + 1 + end) >>> 1;
+    QuickSelectDBIDs.quickSelect(sorted, start + 1, end, mid);
+    computeBounds(start + 1, mid, it);
+    computeBounds(mid, end, it);
+    // Build the subtrees, forking the first if large enough:
+    BuildTask task = null;
+    if(mid - start - 1 > leafsize) {
+      if(mid - start - 1 >= PARALLEL_MIN && ForkJoinTask.inForkJoinPool()) {
+        (task = new BuildTask(start + 1, mid)).fork();
+      }
+      else {
+        dists += buildTree(start + 1, mid, it, vp);
+      }
+    }
+    if(end - mid > leafsize) {
+      dists += buildTree(mid, end, it, vp);
+    }
+    if(task != null) {
+      task.join();
+      dists += task.dists;
+    }
+    return dists;
+  }
+
+  /**
+   * Store the distance bounds of a subtree.
+   *
+   * @param start Interval start
+   * @param end Interval end (exclusive)
+   * @param it Iterator
+   */
+  private void computeBounds(int start, int end, DoubleDBIDListIter it) {
+    if(start >= end) {
+      return;
+    }
+    double min = Double.POSITIVE_INFINITY, max = 0.;
+    for(it.seek(start); it.getOffset() < end; it.advance()) {
+      final double d = it.doubleValue();
+      min = d < min ? d : min;
+      max = d > max ? d : max;
+    }
+    lo[start] = min;
+    hi[start] = max;
+  }
+
+  /**
+   * Pack a subtree interval into a long.
+   *
+   * @param start Interval start
+   * @param end Interval end
+   * @return Packed value
+   */
+  private static long pack(int start, int end) {
+    return (((long) start) << 32) | end;
+  }
+
+  /**
+   * Count a distance computation.
+   */
+  protected void countDistanceComputation() {
+    if(distcalc != null) {
+      distcalc.increment();
+    }
+  }
+
+  @Override
+  public void logStatistics() {
+    if(distcalc != null) {
+      LOG.statistics(distcalc);
+    }
+  }
+
+  /**
+   * Test whether a query is supported.
+   *
+   * @param distanceQuery Distance query
+   * @param flags Optimizer flags
+   * @return {@code true} if supported
+   */
+  private boolean isSupported(DistanceQuery<O> distanceQuery, int flags) {
+    return (flags & QueryBuilder.FLAG_PRECOMPUTE) == 0 && //
+        distanceQuery.getRelation() == relation && this.distance.equals(distanceQuery.getDistance());
+  }
+
+  @Override
+  public KNNSearcher<O> kNNByObject(DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    return isSupported(distanceQuery, flags) ? new VPTreeKNNObjectSearcher() : null;
+  }
+
+  @Override
+  public KNNSearcher<DBIDRef> kNNByDBID(DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    return isSupported(distanceQuery, flags) ? new VPTreeKNNDBIDSearcher() : null;
+  }
+
+  @Override
+  public RangeSearcher<O> rangeByObject(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    return isSupported(distanceQuery, flags) ? new VPTreeRangeObjectSearcher() : null;
+  }
+
+  @Override
+  public RangeSearcher<DBIDRef> rangeByDBID(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    return isSupported(distanceQuery, flags) ? new VPTreeRangeDBIDSearcher() : null;
+  }
+
+  @Override
+  public PrioritySearcher<O> priorityByObject(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    return isSupported(distanceQuery, flags) ? new VPTreePriorityObjectSearcher() : null;
+  }
+
+  @Override
+  public PrioritySearcher<DBIDRef> priorityByDBID(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    return isSupported(distanceQuery, flags) ? new VPTreePriorityDBIDSearcher() : null;
+  }
+
+  /**
+   * kNN query for the VP-tree, using best-first search.
+   *
+   * @author Erich Schubert
+   */
+  public abstract class VPTreeKNNSearcher {
+    /**
+     * Priority queue of subtrees.
+     */
+    private DoubleLongMinHeap pq = new DoubleLongMinHeap();
+
+    /**
+     * Iterator.
+     */
+    private DoubleDBIDListIter it = sorted.iter();
+
+    /**
+     * Compute distance to query object.
+     *
+     * @param p Candidate
+     * @return Distance
+     */
+    protected abstract double queryDistance(DBIDRef p);
+
+    /**
+     * Perform the search.
+     *
+     * @param k Number of neighbors
+     * @return kNN list
+     */
+    protected KNNList doSearch(int k) {
+      final KNNHeap knns = DBIDUtil.newHeap(k);
+      final int size = sorted.size();
+      if(size <= leafsize) {
+        scanLeaf(0, size, 0., Double.POSITIVE_INFINITY, knns);
+        return knns.toKNNList();
+      }
+      double tau = Double.POSITIVE_INFINITY;
+      pq.clear();
+      pq.add(0., pack(0, size));
+      while(!pq.isEmpty()) {
+        final double lb = pq.peekKey();
+        if(lb > tau) {
+          break; // All remaining subtrees are farther.
+        }
+        final long node = pq.peekValue();
+        pq.poll();
+        final int start = (int) (node >>> 32), end = (int) node;
+        final double dq = queryDistance(it.seek(start));
+        if(dq <= tau) {
+          tau = knns.insert(dq, it);
+        }
+        final int mid = (start + 1 + end) >>> 1;
+        tau = expand(start + 1, mid, lb, dq, tau, knns);
+        tau = expand(mid, end, lb, dq, tau, knns);
+      }
+      return knns.toKNNList();
+    }
+
+    /**
+     * Queue a subtree, or scan a leaf.
+     *
+     * @param start Interval start
+     * @param end Interval end (exclusive)
+     * @param lb Lower bound of the parent
+     * @param dq Distance to the parent vantage point
+     * @param tau Current kNN distance
+     * @param knns kNN heap
+     * @return New kNN distance
+     */
+    private double expand(int start, int end, double lb, double dq, double tau, KNNHeap knns) {
+      if(start >= end) {
+        return tau;
+      }
+      final double clb = Math.max(lb, Math.max(dq - hi[start], lo[start] - dq));
+      if(clb > tau) {
+        return tau;
+      }
+      if(end - start > leafsize) {
+        pq.add(clb, pack(start, end));
+        return tau;
+      }
+      return scanLeaf(start, end, dq, tau, knns);
+    }
+
+    /**
+     * Scan a leaf node.
+     *
+     * @param start Interval start
+     * @param end Interval end (exclusive)
+     * @param dq Distance to the parent vantage point
+     * @param tau Current kNN distance
+     * @param knns kNN heap
+     * @return New kNN distance
+     */
+    private double scanLeaf(int start, int end, double dq, double tau, KNNHeap knns) {
+      for(it.seek(start); it.getOffset() < end; it.advance()) {
+        if(Math.abs(dq - it.doubleValue()) > tau) {
+          continue; // Triangle inequality
+        }
+        final double d = queryDistance(it);
+        if(d <= tau) {
+          tau = knns.insert(d, it);
+        }
+      }
+      return tau;
+    }
+  }
+
+  /**
+   * kNN query for the VP-tree.
+   *
+   * @author Erich Schubert
+   */
+  public class VPTreeKNNObjectSearcher extends VPTreeKNNSearcher implements KNNSearcher<O> {
+    /**
+     * Query object.
+     */
+    private O query;
+
+    @Override
+    public KNNList getKNN(O query, int k) {
+      this.query = query;
+      return doSearch(k);
+    }
+
+    @Override
+    protected double queryDistance(DBIDRef p) {
+      countDistanceComputation();
+      return distanceQuery.distance(query, p);
+    }
+  }
+
+  /**
+   * kNN query for the VP-tree.
+   *
+   * @author Erich Schubert
+   */
+  public class VPTreeKNNDBIDSearcher extends VPTreeKNNSearcher implements KNNSearcher<DBIDRef> {
+    /**
+     * Query reference.
+     */
+    private DBIDRef query;
+
+    @Override
+    public KNNList getKNN(DBIDRef query, int k) {
+      this.query = query;
+      return doSearch(k);
+    }
+
+    @Override
+    protected double queryDistance(DBIDRef p) {
+      countDistanceComputation();
+      return distanceQuery.distance(query, p);
+    }
+  }
+
+  /**
+   * Range query for the VP-tree.
+   *
+   * @author Erich Schubert
+   */
+  public abstract class VPTreeRangeSearcher {
+    /**
+     * Iterator.
+     */
+    private DoubleDBIDListIter it = sorted.iter();
+
+    /**
+     * Compute distance to query object.
+     *
+     * @param p Candidate
+     * @return Distance
+     */
+    protected abstract double queryDistance(DBIDRef p);
+
+    /**
+     * Perform the search.
+     *
+     * @param range Query radius
+     * @param result Output list
+     * @return result
+     */
+    protected ModifiableDoubleDBIDList doSearch(double range, ModifiableDoubleDBIDList result) {
+      final int size = sorted.size();
+      if(size <= leafsize) {
+        scanLeaf(0, size, 0., range, result);
+      }
+      else if(size > 0) {
+        search(0, size, range, result);
+      }
+      return result;
+    }
+
+    /**
+     * Search a subtree.
+     *
+     * @param start Interval start
+     * @param end Interval end (exclusive)
+     * @param range Query radius
+     * @param result Output list
+     */
+    private void search(int start, int end, double range, ModifiableDoubleDBIDList result) {
+      final double dq = queryDistance(it.seek(start));
+      if(dq <= range) {
+        result.add(dq, it);
+      }
+      final int mid = (start + 1 + end) >>> 1;
+      expand(start + 1, mid, dq, range, result);
+      expand(mid, end, dq, range, result);
+    }
+
+    /**
+     * Search a subtree, or scan a leaf.
+     *
+     * @param start Interval start
+     * @param end Interval end (exclusive)
+     * @param dq Distance to the parent vantage point
+     * @param range Query radius
+     * @param result Output list
+     */
+    private void expand(int start, int end, double dq, double range, ModifiableDoubleDBIDList result) {
+      if(start >= end || dq - hi[start] > range || lo[start] - dq > range) {
+        return;
+      }
+      if(end - start > leafsize) {
+        search(start, end, range, result);
+      }
+      else {
+        scanLeaf(start, end, dq, range, result);
+      }
+    }
+
+    /**
+     * Scan a leaf node.
+     *
+     * @param start Interval start
+     * @param end Interval end (exclusive)
+     * @param dq Distance to the parent vantage point
+     * @param range Query radius
+     * @param result Output list
+     */
+    private void scanLeaf(int start, int end, double dq, double range, ModifiableDoubleDBIDList result) {
+      for(it.seek(start); it.getOffset() < end; it.advance()) {
+        if(Math.abs(dq - it.doubleValue()) > range) {
+          continue; // Triangle inequality
+        }
+        final double d = queryDistance(it);
+        if(d <= range) {
+          result.add(d, it);
+        }
+      }
+    }
+  }
+
+  /**
+   * Range query for the VP-tree.
+   *
+   * @author Erich Schubert
+   */
+  public class VPTreeRangeObjectSearcher extends VPTreeRangeSearcher implements RangeSearcher<O> {
+    /**
+     * Query object.
+     */
+    private O query;
+
+    @Override
+    public ModifiableDoubleDBIDList getRange(O query, double range, ModifiableDoubleDBIDList result) {
+      this.query = query;
+      return doSearch(range, result);
+    }
+
+    @Override
+    protected double queryDistance(DBIDRef p) {
+      countDistanceComputation();
+      return distanceQuery.distance(query, p);
+    }
+  }
+
+  /**
+   * Range query for the VP-tree.
+   *
+   * @author Erich Schubert
+   */
+  public class VPTreeRangeDBIDSearcher extends VPTreeRangeSearcher implements RangeSearcher<DBIDRef> {
+    /**
+     * Query reference.
+     */
+    private DBIDRef query;
+
+    @Override
+    public ModifiableDoubleDBIDList getRange(DBIDRef query, double range, ModifiableDoubleDBIDList result) {
+      this.query = query;
+      return doSearch(range, result);
+    }
+
+    @Override
+    protected double queryDistance(DBIDRef p) {
+      countDistanceComputation();
+      return distanceQuery.distance(query, p);
+    }
+  }
+
+  /**
+   * Priority search for the VP-tree.
+   * <p>
+   * Expanding a subtree yields its vantage point (with exact distance) and the
+   * entries of its leaf children, with bounds from the triangle inequality.
+   *
+   * @author Erich Schubert
+   *
+   * @param <Q> query type
+   */
+  public abstract class VPTreePrioritySearcher<Q> implements PrioritySearcher<Q> {
+    /**
+     * Stopping distance threshold.
+     */
+    private double threshold = Double.POSITIVE_INFINITY;
+
+    /**
+     * Priority queue of subtrees.
+     */
+    private DoubleLongMinHeap pq = new DoubleLongMinHeap();
+
+    /**
+     * Iterator.
+     */
+    private DoubleDBIDListIter it = sorted.iter();
+
+    /**
+     * Positions of the current candidates.
+     */
+    private int[] candidates = new int[(leafsize << 1) + 1];
+
+    /**
+     * Number of candidates, and current candidate.
+     */
+    private int csize, cpos;
+
+    /**
+     * Position of the current vantage point, or -1 for a leaf root.
+     */
+    private int vpos;
+
+    /**
+     * Distance to the current vantage point.
+     */
+    private double dq;
+
+    /**
+     * Lower bound of the current subtree.
+     */
+    private double lb;
+
+    /**
+     * Compute distance to query object.
+     *
+     * @param p Candidate
+     * @return Distance
+     */
+    protected abstract double queryDistance(DBIDRef p);
+
+    /**
+     * Start the search.
+     *
+     * @return this
+     */
+    protected PrioritySearcher<Q> doSearch() {
+      threshold = Double.POSITIVE_INFINITY;
+      pq.clear();
+      csize = cpos = 0;
+      lb = dq = 0.;
+      vpos = -1;
+      final int size = sorted.size();
+      if(size <= leafsize) {
+        for(int i = 0; i < size; i++) {
+          candidates[csize++] = i;
+        }
+        return this;
+      }
+      pq.add(0., pack(0, size));
+      while(csize == 0 && advanceQueue()) {
+        // Expand until we have candidates.
+      }
+      return this;
+    }
+
+    @Override
+    public PrioritySearcher<Q> decreaseCutoff(double threshold) {
+      assert threshold <= this.threshold : "Thresholds must only decrease.";
+      this.threshold = threshold;
+      return this;
+    }
+
+    @Override
+    public boolean valid() {
+      return cpos < csize;
+    }
+
+    @Override
+    public PrioritySearcher<Q> advance() {
+      if(++cpos < csize) {
+        return this;
+      }
+      csize = cpos = 0;
+      while(csize == 0 && advanceQueue()) {
+        // Expand until we have candidates.
+      }
+      return this;
+    }
+
+    /**
+     * Expand the next subtree of the priority queue.
+     *
+     * @return {@code false} if the queue is exhausted.
+     */
+    private boolean advanceQueue() {
+      if(pq.isEmpty()) {
+        return false;
+      }
+      final double key = pq.peekKey();
+      if(key > threshold) {
+        pq.clear();
+        return false;
+      }
+      final long node = pq.peekValue();
+      pq.poll();
+      lb = key > lb ? key : lb;
+      final int start = (int) (node >>> 32), end = (int) node;
+      vpos = start;
+      dq = queryDistance(it.seek(start));
+      if(dq <= threshold) {
+        candidates[csize++] = start;
+      }
+      final int mid = (start + 1 + end) >>> 1;
+      expand(start + 1, mid);
+      expand(mid, end);
+      return true;
+    }
+
+    /**
+     * Queue a subtree, or add the entries of a leaf as candidates.
+     *
+     * @param start Interval start
+     * @param end Interval end (exclusive)
+     */
+    private void expand(int start, int end) {
+      if(start >= end) {
+        return;
+      }
+      final double clb = Math.max(lb, Math.max(dq - hi[start], lo[start] - dq));
+      if(clb > threshold) {
+        return;
+      }
+      if(end - start > leafsize) {
+        pq.add(clb, pack(start, end));
+        return;
+      }
+      for(it.seek(start); it.getOffset() < end; it.advance()) {
+        if(Math.abs(dq - it.doubleValue()) <= threshold) {
+          candidates[csize++] = it.getOffset();
+        }
+      }
+    }
+
+    /**
+     * Test whether the current candidate is the vantage point.
+     *
+     * @return {@code true} if the distance is known exactly
+     */
+    private boolean isVantagePoint() {
+      return candidates[cpos] == vpos;
+    }
+
+    @Override
+    public double computeExactDistance() {
+      return isVantagePoint() ? dq : queryDistance(it.seek(candidates[cpos]));
+    }
+
+    @Override
+    public double getApproximateDistance() {
+      return vpos < 0 ? Double.NaN : dq;
+    }
+
+    @Override
+    public double getApproximateAccuracy() {
+      return vpos < 0 ? Double.NaN : isVantagePoint() ? 0. : it.seek(candidates[cpos]).doubleValue();
+    }
+
+    @Override
+    public double getLowerBound() {
+      return vpos < 0 ? Double.NaN : isVantagePoint() ? dq : //
+          Math.max(lb, Math.abs(dq - it.seek(candidates[cpos]).doubleValue()));
+    }
+
+    @Override
+    public double getUpperBound() {
+      return vpos < 0 ? Double.NaN : isVantagePoint() ? dq : dq + it.seek(candidates[cpos]).doubleValue();
+    }
+
+    @Override
+    public double allLowerBound() {
+      return lb;
+    }
+
+    @Override
+    public int internalGetIndex() {
+      return it.seek(candidates[cpos]).internalGetIndex();
+    }
+  }
+
+  /**
+   * Priority search for the VP-tree.
+   *
+   * @author Erich Schubert
+   */
+  public class VPTreePriorityObjectSearcher extends VPTreePrioritySearcher<O> {
+    /**
+     * Query object.
+     */
+    private O query;
+
+    @Override
+    public PrioritySearcher<O> search(O query) {
+      this.query = query;
+      return doSearch();
+    }
+
+    @Override
+    protected double queryDistance(DBIDRef p) {
+      countDistanceComputation();
+      return distanceQuery.distance(query, p);
+    }
+  }
+
+  /**
+   * Priority search for the VP-tree.
+   *
+   * @author Erich Schubert
+   */
+  public class VPTreePriorityDBIDSearcher extends VPTreePrioritySearcher<DBIDRef> {
+    /**
+     * Query reference.
+     */
+    private DBIDRef query;
+
+    @Override
+    public PrioritySearcher<DBIDRef> search(DBIDRef query) {
+      this.query = query;
+      return doSearch();
+    }
+
+    @Override
+    protected double queryDistance(DBIDRef p) {
+      countDistanceComputation();
+      return distanceQuery.distance(query, p);
+    }
+  }
+
+  /**
+   * Index factory for the VP-tree.
+   *
+   * @author Erich Schubert
+   *
+   * @stereotype factory
+   * @has - - - VPTree
+   *
+   * @param <O> Object type
+   */
+  @Alias({ "vptree", "vp" })
+  public static class Factory<O> implements IndexFactory<O> {
+    /**
+     * Distance function.
+     */
+    protected Distance<? super O> distance;
+
+    /**
+     * Maximum size of leaf nodes.
+     */
+    protected int leafsize;
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance function
+     * @param leafsize Maximum size of leaf nodes
+     */
+    public Factory(Distance<? super O> distance, int leafsize) {
+      super();
+      this.distance = distance;
+      this.leafsize = leafsize;
+    }
+
+    @Override
+    public VPTree<O> instantiate(Relation<O> relation) {
+      return new VPTree<>(relation, distance, leafsize);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return distance.getInputTypeRestriction();
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     */
+    public static class Par<O> implements Parameterizer {
+      /**
+       * Parameter for the distance function.
+       */
+      public static final OptionID DISTANCE_FUNCTION_ID = new OptionID("vptree.distancefunction", "Distance function to determine the distance between objects.");
+
+      /**
+       * Parameter for the maximum leaf size.
+       */
+      public static final OptionID LEAFSIZE_ID = new OptionID("vptree.leafsize", "Maximum leaf size of the VP-tree. Nodes will be split until their size is at most this threshold.");
+
+      /**
+       * Distance function.
+       */
+      protected Distance<? super O> distance;
+
+      /**
+       * Maximum size of leaf nodes.
+       */
+      protected int leafsize;
+
+      @Override
+      public void configure(Parameterization config) {
+        new ObjectParameter<Distance<? super O>>(DISTANCE_FUNCTION_ID, Distance.class) //
+            .grab(config, x -> {
+              distance = x;
+              if(!distance.isMetric()) {
+                LoggingUtil.warning("VPTree requires a metric to be exact.");
+              }
+            });
+        new IntParameter(LEAFSIZE_ID, 8) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> leafsize = x);
+      }
+
+      @Override
+      public Factory<O> make() {
+        return new Factory<>(distance, leafsize);
+      }
+    }
+  }
+}
@@ -0,0 +1,566 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.tree.spatial.kd;
+
+import elki.data.NumberVector;
+import elki.data.VectorBlock;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.ids.*;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.distance.Distance;
+import elki.distance.NumberVectorDistance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.LPNormDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.distance.minkowski.WeightedLPNormDistance;
+import elki.index.IndexFactory;
+import elki.index.KNNIndex;
+import elki.index.RangeIndex;
+import elki.logging.Logging;
+import elki.logging.statistics.Counter;
+import elki.utilities.Alias;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+
+import net.jafama.FastMath;
+
+/**
+ * In-memory k-d-tree that stores a single precision copy of the data in tree
+ * order, in a contiguous {@link VectorBlock}.
+ * <p>
+ * The tree is laid out as in {@link SmallMemoryKDTree}, but the vectors are
+ * stored with the tree instead of being looked up in the relation. This needs
+ * 4 bytes per value (plus the DBIDs), and the leaves are scanned sequentially.
+ * For (squared) Euclidean distance, the leaves are processed with the block
+ * kernels of {@link elki.distance.VectorKernels}.
+ * <p>
+ * This index is only used for {@link elki.data.FloatVector} data, where the
+ * results are exact. It is not added to double precision relations, as the
+ * distances on the rounded values would not be exact.
+ * <p>
+ * Reference:
+ * <p>
+ * J. L. Bentley<br>
+ * Multidimensional binary search trees used for associative searching<br>
+ * Communications of the ACM 18(9)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - FloatKDTreeKNNSearcher
+ * @has - - - FloatKDTreeRangeSearcher
+ *
+ * @param <O> Vector type
+ */
+@Reference(authors = "J. L. Bentley", //
+    title = "Multidimensional binary search trees used for associative searching", //
+    booktitle = "Communications of the ACM 18(9)", //
+    url = "https://doi.org/10.1145/361002.361007", //
+    bibkey = "DBLP:journals/cacm/Bentley75")
+public class FloatKDTree<O extends NumberVector> implements KNNIndex<O>, RangeIndex<O> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(FloatKDTree.class);
+
+  /**
+   * The representation we are bound to.
+   */
+  protected final Relation<O> relation;
+
+  /**
+   * Object ids, in tree order.
+   */
+  protected ArrayDBIDs sorted = null;
+
+  /**
+   * Vector data, in tree order.
+   */
+  protected VectorBlock data = null;
+
+  /**
+   * The number of dimensions.
+   */
+  protected int dims = -1;
+
+  /**
+   * Maximum size of leaf nodes.
+   */
+  protected int leafsize;
+
+  /**
+   * Counter for distance computations.
+   */
+  protected final Counter distcalc;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param leafsize Maximum size of leaf nodes
+   */
+  public FloatKDTree(Relation<O> relation, int leafsize) {
+    this.relation = relation;
+    this.leafsize = leafsize;
+    assert (leafsize >= 1);
+    this.distcalc = LOG.isStatistics() ? LOG.newCounter(this.getClass().getName() + ".distancecalcs") : null;
+  }
+
+  @Override
+  public void initialize() {
+    final int size = relation.size();
+    dims = RelationUtil.dimensionality(relation);
+    ModifiableDoubleDBIDList tree = DBIDUtil.newDistanceDBIDList(size);
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      tree.add(Double.NaN, it);
+    }
+    if(size > 0) {
+      buildTree(tree, 0, size, 0, tree.iter());
+    }
+    sorted = DBIDUtil.newArray(tree);
+    // Copy the vectors in tree order:
+    data = VectorBlock.allocate(size, dims, true);
+    int i = 0;
+    for(DBIDIter it = sorted.iter(); it.valid(); it.advance(), i++) {
+      data.set(i, relation.get(it));
+    }
+  }
+
+  /**
+   * Recursively build the tree by partial sorting. O(n log n) complexity.
+   *
+   * @param tree Tree under construction
+   * @param left Interval minimum
+   * @param right Interval maximum
+   * @param axis Current splitting axis
+   * @param iter Iterator
+   */
+  private void buildTree(ModifiableDoubleDBIDList tree, int left, int right, int axis, DoubleDBIDListMIter iter) {
+    if(right - left <= leafsize) {
+      return;
+    }
+    for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+      iter.setDouble(relation.get(iter).doubleValue(axis));
+    }
+    final int middle = (left + right) >>> 1;
+    QuickSelectDBIDs.quickSelect(tree, left, right, middle);
+    final int next = next(axis);
+    if(left < middle) {
+      buildTree(tree, left, middle, next, iter);
+    }
+    if(middle + 1 < right) {
+      buildTree(tree, middle + 1, right, next, iter);
+    }
+  }
+
+  /**
+   * Next axis.
+   *
+   * @param axis Current axis
+   * @return Next axis
+   */
+  private int next(int axis) {
+    return ++axis == dims ? 0 : axis;
+  }
+
+  @Override
+  public void logStatistics() {
+    if(distcalc != null) {
+      LOG.statistics(distcalc);
+    }
+  }
+
+  /**
+   * Count distance computations.
+   *
+   * @param n Number of distance computations
+   */
+  protected void countDistanceComputations(int n) {
+    if(distcalc != null) {
+      distcalc.increment(n);
+    }
+  }
+
+  @Override
+  public KNNSearcher<O> kNNByObject(DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    Distance<? super O> df = distanceQuery.getDistance();
+    if((df instanceof LPNormDistance && !(df instanceof WeightedLPNormDistance)) || df instanceof SquaredEuclideanDistance) {
+      return new FloatKDTreeKNNSearcher((NumberVectorDistance<?>) df);
+    }
+    return null;
+  }
+
+  @Override
+  public RangeSearcher<O> rangeByObject(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    Distance<? super O> df = distanceQuery.getDistance();
+    if((df instanceof LPNormDistance && !(df instanceof WeightedLPNormDistance)) || df instanceof SquaredEuclideanDistance) {
+      return new FloatKDTreeRangeSearcher((NumberVectorDistance<?>) df);
+    }
+    return null;
+  }
+
+  /**
+   * Common state of the searchers.
+   *
+   * @author Erich Schubert
+   */
+  private abstract class AbstractSearcher {
+    /**
+     * Distance to use.
+     */
+    protected final NumberVectorDistance<?> distance;
+
+    /**
+     * Use squared Euclidean distances, and the block kernels.
+     */
+    protected final boolean squared;
+
+    /**
+     * Take the square root of the squared distances.
+     */
+    protected final boolean sqrt;
+
+    /**
+     * Iterator for the result DBIDs.
+     */
+    protected DBIDArrayIter iter;
+
+    /**
+     * Query vector.
+     */
+    protected O query;
+
+    /**
+     * Query values.
+     */
+    protected double[] q;
+
+    /**
+     * Buffer for leaf distances.
+     */
+    protected double[] buf;
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance to use
+     */
+    protected AbstractSearcher(NumberVectorDistance<?> distance) {
+      this.distance = distance;
+      this.sqrt = distance.getClass() == EuclideanDistance.class;
+      this.squared = sqrt || distance.getClass() == SquaredEuclideanDistance.class;
+    }
+
+    /**
+     * Prepare a query.
+     *
+     * @param obj Query object
+     */
+    protected void init(O obj) {
+      assert obj.getDimensionality() == dims : "Dimensionality mismatch.";
+      query = obj;
+      q = obj.toArray();
+      iter = sorted.iter();
+      if(buf == null) {
+        buf = new double[leafsize];
+      }
+    }
+
+    /**
+     * Compute the distances to a range of rows.
+     *
+     * @param start First row
+     * @param n Number of rows
+     */
+    protected void leafDistances(int start, int n) {
+      if(squared) {
+        data.squaredEuclidean(q, start, n, buf);
+      }
+      else {
+        for(int i = 0; i < n; i++) {
+          buf[i] = distance.distance(query, data.get(start + i));
+        }
+      }
+      countDistanceComputations(n);
+    }
+
+    /**
+     * Distance to a single row.
+     *
+     * @param row Row
+     * @return Distance (squared, for Euclidean)
+     */
+    protected double distance(int row) {
+      countDistanceComputations(1);
+      return squared ? data.squaredEuclidean(row, q) : distance.distance(query, data.get(row));
+    }
+
+    /**
+     * Lower bound for the distance to the other side of a split.
+     *
+     * @param delta Difference to the splitting value
+     * @return Lower bound
+     */
+    protected double mindist(double delta) {
+      return squared ? delta * delta : Math.abs(delta);
+    }
+  }
+
+  /**
+   * kNN query for the k-d-tree.
+   *
+   * @author Erich Schubert
+   */
+  public class FloatKDTreeKNNSearcher extends AbstractSearcher implements KNNSearcher<O> {
+    /**
+     * Constructor.
+     *
+     * @param distance Distance to use
+     */
+    public FloatKDTreeKNNSearcher(NumberVectorDistance<?> distance) {
+      super(distance);
+    }
+
+    @Override
+    public KNNList getKNN(O obj, int k) {
+      init(obj);
+      final KNNHeap knns = DBIDUtil.newHeap(k);
+      if(data.size() > 0) {
+        kdKNNSearch(0, data.size(), 0, knns, Double.POSITIVE_INFINITY);
+      }
+      return sqrt ? knns.toKNNListSqrt() : knns.toKNNList();
+    }
+
+    /**
+     * Perform a kNN search on the k-d-tree.
+     *
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     * @param axis Current splitting axis
+     * @param knns kNN heap
+     * @param maxdist Current upper bound of kNN distance.
+     * @return New upper bound of kNN distance.
+     */
+    private double kdKNNSearch(int left, int right, int axis, KNNHeap knns, double maxdist) {
+      if(right - left <= leafsize) {
+        leafDistances(left, right - left);
+        for(int i = 0, n = right - left; i < n; i++) {
+          if(buf[i] <= maxdist) {
+            maxdist = knns.insert(buf[i], iter.seek(left + i));
+          }
+        }
+        return maxdist;
+      }
+      final int middle = (left + right) >>> 1;
+      final double delta = data.doubleValue(middle, axis) - q[axis];
+      final double mindist = mindist(delta);
+      final int next = next(axis);
+      // Descend into the side of the query first:
+      if(delta >= 0) {
+        if(left < middle) {
+          maxdist = kdKNNSearch(left, middle, next, knns, maxdist);
+        }
+      }
+      else if(middle + 1 < right) {
+        maxdist = kdKNNSearch(middle + 1, right, next, knns, maxdist);
+      }
+      if(mindist > maxdist) {
+        return maxdist;
+      }
+      // Splitting element:
+      final double dist = distance(middle);
+      if(dist <= maxdist) {
+        maxdist = knns.insert(dist, iter.seek(middle));
+      }
+      // Other side, if not pruned:
+      if(mindist <= maxdist) {
+        if(delta >= 0) {
+          if(middle + 1 < right) {
+            maxdist = kdKNNSearch(middle + 1, right, next, knns, maxdist);
+          }
+        }
+        else if(left < middle) {
+          maxdist = kdKNNSearch(left, middle, next, knns, maxdist);
+        }
+      }
+      return maxdist;
+    }
+  }
+
+  /**
+   * Range query for the k-d-tree.
+   *
+   * @author Erich Schubert
+   */
+  public class FloatKDTreeRangeSearcher extends AbstractSearcher implements RangeSearcher<O> {
+    /**
+     * Query radius.
+     */
+    private double range;
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance to use
+     */
+    public FloatKDTreeRangeSearcher(NumberVectorDistance<?> distance) {
+      super(distance);
+    }
+
+    @Override
+    public ModifiableDoubleDBIDList getRange(O obj, double range, ModifiableDoubleDBIDList result) {
+      init(obj);
+      this.range = range;
+      if(data.size() > 0) {
+        // Squared radius, rounded up, for pruning only:
+        kdRangeSearch(0, data.size(), 0, result, sqrt ? Math.nextUp(range * range) : range);
+      }
+      return result;
+    }
+
+    /**
+     * Add a candidate to the result, if within the query radius.
+     *
+     * @param dist Distance (squared, for Euclidean)
+     * @param row Row
+     * @param res Result list
+     */
+    private void candidate(double dist, int row, ModifiableDoubleDBIDList res) {
+      dist = sqrt ? FastMath.sqrt(dist) : dist;
+      if(dist <= range) {
+        res.add(dist, iter.seek(row));
+      }
+    }
+
+    /**
+     * Perform a range search on the k-d-tree.
+     *
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     * @param axis Current splitting axis
+     * @param res Result list
+     * @param radius Query radius (squared, for Euclidean)
+     */
+    private void kdRangeSearch(int left, int right, int axis, ModifiableDoubleDBIDList res, double radius) {
+      if(right - left <= leafsize) {
+        leafDistances(left, right - left);
+        for(int i = 0, n = right - left; i < n; i++) {
+          if(buf[i] <= radius) {
+            candidate(buf[i], left + i, res);
+          }
+        }
+        return;
+      }
+      final int middle = (left + right) >>> 1;
+      final double delta = data.doubleValue(middle, axis) - q[axis];
+      final boolean close = mindist(delta) <= radius;
+      final int next = next(axis);
+      if(close) {
+        final double dist = distance(middle);
+        if(dist <= radius) {
+          candidate(dist, middle, res);
+        }
+      }
+      if(left < middle && (delta >= 0 || close)) {
+        kdRangeSearch(left, middle, next, res, radius);
+      }
+      if(middle + 1 < right && (delta <= 0 || close)) {
+        kdRangeSearch(middle + 1, right, next, res, radius);
+      }
+    }
+  }
+
+  /**
+   * Factory class
+   *
+   * @author Erich Schubert
+   *
+   * @stereotype factory
+   * @has - - - FloatKDTree
+   *
+   * @param <O> Vector type
+   */
+  @Alias({ "floatkd" })
+  public static class Factory<O extends NumberVector> implements IndexFactory<O> {
+    /**
+     * Maximum size of leaf nodes.
+     */
+    int leafsize;
+
+    /**
+     * Constructor.
+     *
+     * @param leafsize Maximum size of leaf nodes.
+     */
+    public Factory(int leafsize) {
+      super();
+      this.leafsize = leafsize;
+    }
+
+    @Override
+    public FloatKDTree<O> instantiate(Relation<O> relation) {
+      return new FloatKDTree<>(relation, leafsize);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return TypeUtil.FLOAT_VECTOR_FIELD;
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     */
+    public static class Par<O extends NumberVector> implements Parameterizer {
+      /**
+       * Option for setting the maximum leaf size.
+       */
+      public static final OptionID LEAFSIZE_P = MinimalisticMemoryKDTree.Factory.Par.LEAFSIZE_P;
+
+      /**
+       * Maximum size of leaf nodes.
+       */
+      int leafsize;
+
+      @Override
+      public void configure(Parameterization config) {
+        new IntParameter(LEAFSIZE_P, 16) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> leafsize = x);
+      }
+
+      @Override
+      public Factory<O> make() {
+        return new Factory<>(leafsize);
+      }
+    }
+  }
+}
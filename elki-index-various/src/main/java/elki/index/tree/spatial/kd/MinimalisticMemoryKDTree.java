@@ -20,11 +20,17 @@
  */
 package elki.index.tree.spatial.kd;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
 import elki.data.NumberVector;
-import elki.data.VectorUtil;
 import elki.data.VectorUtil.SortDBIDsBySingleDimension;
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
 import elki.database.ids.*;
 import elki.database.query.PrioritySearcher;
 import elki.database.query.distance.DistanceQuery;
@@ -38,9 +44,11 @@ import elki.distance.minkowski.LPNormDistance;
 import elki.distance.minkowski.SparseLPNormDistance;
 import elki.distance.minkowski.SquaredEuclideanDistance;
 import elki.index.DistancePriorityIndex;
+import elki.index.DynamicIndex;
 import elki.index.IndexFactory;
 import elki.logging.Logging;
 import elki.logging.statistics.Counter;
+import elki.parallel.ParallelCore;
 import elki.utilities.Alias;
 import elki.utilities.datastructures.heap.ComparableMinHeap;
 import elki.utilities.documentation.Reference;
@@ -51,10 +59,13 @@ import elki.utilities.optionhandling.parameterization.Parameterization;
 import elki.utilities.optionhandling.parameters.IntParameter;
 
 /**
- * Simple implementation of a static in-memory K-D-tree. Does not support
- * dynamic updates or anything, but also is very simple and memory efficient:
- * all it uses is one {@link ArrayModifiableDBIDs} to sort the data in a
- * serialized tree.
+ * Simple implementation of an in-memory K-D-tree. It is very simple and memory
+ * efficient: all it uses is one {@link ArrayModifiableDBIDs} to sort the data
+ * in a serialized tree.
+ * <p>
+ * Dynamic updates use the logarithmic method of Bentley and Saxe, as in
+ * {@link SmallMemoryKDTree}. Deleted objects are kept until their subtree is
+ * rebuilt, because their values are still used as splits.
  * <p>
  * Reference:
  * <p>
@@ -82,12 +93,17 @@ import elki.utilities.optionhandling.parameters.IntParameter;
     booktitle = "Communications of the ACM 18(9)", //
     url = "https://doi.org/10.1145/361002.361007", //
     bibkey = "DBLP:journals/cacm/Bentley75")
-public class MinimalisticMemoryKDTree<O extends NumberVector> implements DistancePriorityIndex<O> {
+public class MinimalisticMemoryKDTree<O extends NumberVector> implements DistancePriorityIndex<O>, DynamicIndex {
   /**
    * Class logger
    */
   private static final Logging LOG = Logging.getLogger(MinimalisticMemoryKDTree.class);
 
+  /**
+   * Minimum subtree size to build in a separate task.
+   */
+  private static final int PARALLEL_MIN = 4096;
+
   /**
    * The representation we are bound to.
    */
@@ -98,6 +114,27 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
    */
   protected ArrayModifiableDBIDs sorted = null;
 
+  /**
+   * Begin offsets of the subtrees in {@link #sorted}, followed by the end of
+   * the last subtree.
+   */
+  protected int[] subtrees = new int[4];
+
+  /**
+   * Number of subtrees.
+   */
+  protected int numtrees = 0;
+
+  /**
+   * Objects deleted, but still stored in the tree.
+   */
+  protected WritableDataStore<O> deleted = null;
+
+  /**
+   * Number of deleted objects still stored in the tree.
+   */
+  protected int numdeleted = 0;
+
   /**
    * The number of dimensions.
    */
@@ -143,14 +180,174 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
   public void initialize() {
     sorted = DBIDUtil.newArray(relation.getDBIDs());
     dims = RelationUtil.dimensionality(relation);
-    final VectorUtil.SortDBIDsBySingleDimension comp;
-    if(objaccess != null) {
-      comp = new CountSortAccesses(objaccess, relation);
+    numtrees = 0;
+    deleted = null;
+    numdeleted = 0;
+    addTree(0);
+  }
+
+  @Override
+  public void insert(DBIDRef id) {
+    if(isDeleted(id)) {
+      // Reinserted object, the vector may have changed:
+      undelete(id);
+      rebuildSubtrees(DBIDUtil.deref(id), sorted.size());
+      return;
+    }
+    final int left = sorted.size();
+    sorted.add(id);
+    addTree(left);
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    HashSetModifiableDBIDs reinserted = null;
+    final int left = sorted.size();
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      if(isDeleted(it)) {
+        undelete(it);
+        reinserted = reinserted != null ? reinserted : DBIDUtil.newHashSet();
+        reinserted.add(it);
+        continue;
+      }
+      sorted.add(it);
+    }
+    if(reinserted != null) {
+      // Reinserted objects, the vectors may have changed:
+      rebuildSubtrees(reinserted, left);
+      return;
+    }
+    addTree(left);
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    if(isDeleted(id)) {
+      return false;
+    }
+    if(deleted == null) {
+      deleted = DataStoreUtil.makeStorage(DBIDUtil.newHashSet(), DataStoreFactory.HINT_TEMP, NumberVector.class);
+    }
+    // Keep the object, it may be a split of the tree:
+    deleted.put(id, relation.get(id));
+    // Rebuild when half of the objects have been deleted:
+    if(++numdeleted > sorted.size() >>> 1) {
+      initialize();
+    }
+    return true;
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      delete(it);
+    }
+  }
+
+  /**
+   * Add the objects from the given offset to the end as a new subtree. The
+   * last subtrees are merged with it as long as they are not larger, and the
+   * merged subtree is rebuilt without the deleted objects.
+   *
+   * @param left Begin of the new subtree
+   */
+  private void addTree(int left) {
+    if(left == sorted.size()) {
+      return;
+    }
+    if(dims < 0) {
+      dims = relation.get(sorted.iter().seek(left)).getDimensionality();
+    }
+    if(subtrees.length < numtrees + 2) {
+      subtrees = Arrays.copyOf(subtrees, subtrees.length << 1);
+    }
+    subtrees[numtrees++] = left;
+    while(numtrees > 1 && left - subtrees[numtrees - 2] <= sorted.size() - left) {
+      left = subtrees[--numtrees - 1];
+    }
+    if(deleted != null) {
+      DBIDArrayIter it = sorted.iter();
+      for(int i = sorted.size() - 1; i >= left; i--) {
+        if(deleted.get(it.seek(i)) != null) {
+          deleted.delete(it);
+          --numdeleted;
+          sorted.swap(i, sorted.size() - 1);
+          sorted.remove(sorted.size() - 1);
+        }
+      }
+      deleted = numdeleted > 0 ? deleted : null;
+    }
+    final int right = subtrees[numtrees] = sorted.size();
+    if(left == right) {
+      --numtrees;
+      return;
+    }
+    BuildTask root = new BuildTask(left, right, 0);
+    // Use the current fork-join pool, if we already run in one:
+    if(right - left >= PARALLEL_MIN && !ForkJoinTask.inForkJoinPool()) {
+      ParallelCore.getCore().getForkJoinPool().invoke(root);
     }
     else {
-      comp = new VectorUtil.SortDBIDsBySingleDimension(relation);
+      root.compute();
+    }
+    if(objaccess != null) {
+      objaccess.increment(root.accesses);
+    }
+  }
+
+  /**
+   * Rebuild the subtrees from the first subtree that stores any of the given
+   * objects, together with the objects appended from the given offset.
+   *
+   * @param ids Objects to rebuild
+   * @param left Begin of the appended objects
+   */
+  private void rebuildSubtrees(DBIDs ids, int left) {
+    DBIDArrayIter it = sorted.iter();
+    for(int t = 0; t < numtrees; t++) {
+      for(it.seek(subtrees[t]); it.getOffset() < subtrees[t + 1]; it.advance()) {
+        if(ids.contains(it)) {
+          left = subtrees[t];
+          numtrees = t;
+          addTree(left);
+          return;
+        }
+      }
     }
-    buildTree(0, sorted.size(), 0, comp);
+    addTree(left);
+  }
+
+  /**
+   * Clear the deletion mark of an object still stored in the tree.
+   *
+   * @param id Object
+   */
+  private void undelete(DBIDRef id) {
+    deleted.delete(id);
+    if(--numdeleted == 0) {
+      deleted = null;
+    }
+  }
+
+  /**
+   * Test whether an object was deleted, but is still stored in the tree.
+   *
+   * @param id Object
+   * @return {@code true} if deleted
+   */
+  private boolean isDeleted(DBIDRef id) {
+    return deleted != null && deleted.get(id) != null;
+  }
+
+  /**
+   * Get an object stored in the tree, which may have been deleted.
+   *
+   * @param id Object
+   * @return Object
+   */
+  private O get(DBIDRef id) {
+    final O obj = deleted != null ? deleted.get(id) : null;
+    return obj != null ? obj : relation.get(id);
   }
 
   /**
@@ -158,30 +355,77 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
    *
    * @author Erich Schubert
    */
-  private static class CountSortAccesses extends VectorUtil.SortDBIDsBySingleDimension {
+  private static class CountSortAccesses extends SortDBIDsBySingleDimension {
     /**
-     * Counter for comparisons.
+     * Number of object accesses.
      */
-    final Counter objaccess;
+    long count;
 
     /**
      * Constructor.
      *
-     * @param objaccess Object access counter.
      * @param data Data relation
      */
-    public CountSortAccesses(Counter objaccess, Relation<? extends NumberVector> data) {
+    public CountSortAccesses(Relation<? extends NumberVector> data) {
       super(data);
-      this.objaccess = objaccess;
     }
 
     @Override
     public int compare(DBIDRef id1, DBIDRef id2) {
-      objaccess.increment(2);
+      count += 2;
       return super.compare(id1, id2);
     }
   }
 
+  /**
+   * Task to build a subtree, which may fork additional tasks.
+   *
+   * @author Erich Schubert
+   */
+  private class BuildTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Interval of the subtree.
+     */
+    private final int left, right;
+
+    /**
+     * Splitting axis.
+     */
+    private final int axis;
+
+    /**
+     * Object accesses of this task, if counted.
+     */
+    long accesses;
+
+    /**
+     * Constructor.
+     *
+     * @param left Interval minimum
+     * @param right Interval maximum
+     * @param axis Splitting axis
+     */
+    BuildTask(int left, int right, int axis) {
+      this.left = left;
+      this.right = right;
+      this.axis = axis;
+    }
+
+    @Override
+    protected void compute() {
+      // Each task needs its own comparator.
+      final SortDBIDsBySingleDimension comp = objaccess != null ? //
+          new CountSortAccesses(relation) : new SortDBIDsBySingleDimension(relation);
+      buildTree(left, right, axis, comp);
+      accesses = comp instanceof CountSortAccesses ? ((CountSortAccesses) comp).count : 0;
+    }
+  }
+
   /**
    * Recursively build the tree by partial sorting. O(n log n) complexity.
    * Apparently there exists a variant in only O(n log log n)? Please
@@ -198,13 +442,26 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
     QuickSelectDBIDs.quickSelect(sorted, comp, left, right, middle);
 
     final int next = next(axis);
+    // Build the subtrees, forking the first if large enough:
+    BuildTask task = null;
     if(left + leafsize < middle) {
-      buildTree(left, middle, next, comp);
+      if(middle - left >= PARALLEL_MIN && ForkJoinTask.inForkJoinPool()) {
+        (task = new BuildTask(left, middle, next)).fork();
+      }
+      else {
+        buildTree(left, middle, next, comp);
+      }
     }
     ++middle;
     if(middle + leafsize < right) {
       buildTree(middle, right, next, comp);
     }
+    if(task != null) {
+      task.join();
+      if(comp instanceof CountSortAccesses) {
+        ((CountSortAccesses) comp).count += task.accesses;
+      }
+    }
   }
 
   /**
@@ -302,7 +559,11 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
     @Override
     public KNNList getKNN(O obj, int k) {
       final KNNHeap knns = DBIDUtil.newHeap(k);
-      kdKNNSearch(0, sorted.size(), 0, obj, knns, sorted.iter(), Double.POSITIVE_INFINITY);
+      final DBIDArrayIter iter = sorted.iter();
+      double maxdist = Double.POSITIVE_INFINITY;
+      for(int t = 0; t < numtrees; t++) {
+        maxdist = kdKNNSearch(subtrees[t], subtrees[t + 1], 0, obj, knns, iter, maxdist);
+      }
       return knns.toKNNList();
     }
 
@@ -321,6 +582,9 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
     private double kdKNNSearch(int left, int right, int axis, O query, KNNHeap knns, DBIDArrayIter iter, double maxdist) {
       if(right - left <= leafsize) {
         for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+          if(isDeleted(iter)) {
+            continue;
+          }
           double dist = distance.distance(query, relation.get(iter));
           countObjectAccess();
           countDistanceComputation();
@@ -333,8 +597,9 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
       }
       // Look at current node:
       final int middle = (left + right) >>> 1;
-      O split = relation.get(iter.seek(middle));
+      O split = get(iter.seek(middle));
       countObjectAccess();
+      final boolean live = !isDeleted(iter);
 
       // Distance to axis:
       final double delta = split.doubleValue(axis) - query.doubleValue(axis);
@@ -345,7 +610,7 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
 
       // Exact match chance (delta == 0)!
       // process first, then descend both sides.
-      if(onleft && onright) {
+      if(onleft && onright && live) {
         double dist = distance.distance(query, split);
         countDistanceComputation();
         if(dist <= maxdist) {
@@ -353,6 +618,8 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
           knns.insert(dist, iter /* .seek(middle) */);
           maxdist = knns.getKNNDistance();
         }
+      }
+      if(onleft && onright) {
         if(left < middle) {
           maxdist = kdKNNSearch(left, middle, next, query, knns, iter, maxdist);
         }
@@ -367,7 +634,7 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
             maxdist = kdKNNSearch(left, middle, next, query, knns, iter, maxdist);
           }
           // Look at splitting element (unless already above):
-          if(mindist <= maxdist) {
+          if(mindist <= maxdist && live) {
             double dist = distance.distance(query, split);
             countDistanceComputation();
             if(dist <= maxdist) {
@@ -384,7 +651,7 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
             maxdist = kdKNNSearch(middle + 1, right, next, query, knns, iter, maxdist);
           }
           // Look at splitting element (unless already above):
-          if(mindist <= maxdist) {
+          if(mindist <= maxdist && live) {
             double dist = distance.distance(query, split);
             countDistanceComputation();
             if(dist <= maxdist) {
@@ -424,7 +691,10 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
 
     @Override
     public ModifiableDoubleDBIDList getRange(O obj, double range, ModifiableDoubleDBIDList result) {
-      kdRangeSearch(0, sorted.size(), 0, obj, result, sorted.iter(), range);
+      final DBIDArrayIter iter = sorted.iter();
+      for(int t = 0; t < numtrees; t++) {
+        kdRangeSearch(subtrees[t], subtrees[t + 1], 0, obj, result, iter, range);
+      }
       return result;
     }
 
@@ -442,6 +712,9 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
     private void kdRangeSearch(int left, int right, int axis, O query, ModifiableDoubleDBIDList res, DBIDArrayIter iter, double radius) {
       if(right - left <= leafsize) {
         for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+          if(isDeleted(iter)) {
+            continue;
+          }
           double dist = distance.distance(query, relation.get(iter));
           countObjectAccess();
           countDistanceComputation();
@@ -453,8 +726,9 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
       }
       // Look at current node:
       final int middle = (left + right) >>> 1;
-      O split = relation.get(iter.seek(middle));
+      O split = get(iter.seek(middle));
       countObjectAccess();
+      final boolean live = !isDeleted(iter);
 
       // Distance to axis:
       final double delta = split.doubleValue(axis) - query.doubleValue(axis);
@@ -467,7 +741,7 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
       final int next = next(axis);
 
       // Current object:
-      if(close) {
+      if(close && live) {
         double dist = distance.distance(query, split);
         countDistanceComputation();
         if(dist <= radius) {
@@ -588,39 +862,53 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
       this.threshold = Double.POSITIVE_INFINITY;
       this.pos = Integer.MIN_VALUE;
       this.heap.clear();
-      this.heap.add(new PrioritySearchBranch(0, 0, sorted.size(), 0));
+      this.cur = null;
+      for(int t = 0; t < numtrees; t++) {
+        this.heap.add(new PrioritySearchBranch(0, subtrees[t], subtrees[t + 1], 0));
+      }
       return advance();
     }
 
     @Override
     public PrioritySearcher<O> advance() {
+      do {
+        step();
+      }
+      while(pos >= 0 && isDeleted(iter.seek(pos)));
+      return this;
+    }
+
+    /**
+     * Advance to the next object, including deleted objects.
+     */
+    private void step() {
       // Iteration within current leaf:
       if(cur != null && cur.right - cur.left <= leafsize) {
         assert pos >= cur.left;
         if(++pos < cur.right) {
-          return this;
+          return;
         }
         assert pos == cur.right;
       }
       if(heap.isEmpty()) {
         cur = null;
         pos = Integer.MIN_VALUE;
-        return this;
+        return;
       }
       // Get next
       cur = heap.poll();
       if(cur.mindist > threshold) {
         cur = null;
         pos = Integer.MIN_VALUE;
-        return this;
+        return;
       }
       // Leaf:
       if(cur.right - cur.left <= leafsize) {
         pos = cur.left;
-        return this;
+        return;
       }
       pos = (cur.left + cur.right) >>> 1; // middle element
-      O split = relation.get(iter.seek(pos));
+      O split = get(iter.seek(pos));
       countObjectAccess();
 
       // Distance to axis:
@@ -637,7 +925,6 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
       if(pos + 1 < cur.right && rdist <= threshold) {
         heap.add(new PrioritySearchBranch(rdist, pos + 1, cur.right, next));
       }
-      return this;
     }
 
     @Override
@@ -20,13 +20,26 @@
  */
 package elki.index.tree.spatial.kd;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
 import elki.data.NumberVector;
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStore;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.DoubleDataStore;
+import elki.database.datastore.WritableDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
 import elki.database.ids.*;
 import elki.database.query.PrioritySearcher;
+import elki.database.query.SpanningTreeSearcher;
 import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.BatchKNNSearcher;
 import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.BatchRangeSearcher;
 import elki.database.query.range.RangeSearcher;
 import elki.database.relation.Relation;
 import elki.database.relation.RelationUtil;
@@ -35,12 +48,17 @@ import elki.distance.PrimitiveDistance;
 import elki.distance.minkowski.LPNormDistance;
 import elki.distance.minkowski.SparseLPNormDistance;
 import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.distance.minkowski.WeightedLPNormDistance;
 import elki.index.DistancePriorityIndex;
+import elki.index.DynamicIndex;
 import elki.index.IndexFactory;
+import elki.index.SpanningTreeIndex;
 import elki.logging.Logging;
 import elki.logging.statistics.Counter;
+import elki.parallel.ParallelCore;
 import elki.utilities.Alias;
 import elki.utilities.datastructures.heap.ComparableMinHeap;
+import elki.utilities.datastructures.unionfind.WeightedQuickUnionInteger;
 import elki.utilities.documentation.Reference;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.Parameterizer;
@@ -49,10 +67,15 @@ import elki.utilities.optionhandling.parameterization.Parameterization;
 import elki.utilities.optionhandling.parameters.IntParameter;
 
 /**
- * Simple implementation of a static in-memory K-D-tree. Does not support
- * dynamic updates or anything, but also is very simple and memory efficient:
- * all it uses is one {@link ModifiableDoubleDBIDList} to sort the data in a
- * serialized tree and store the current attribute value.
+ * Simple implementation of an in-memory K-D-tree. It is very simple and memory
+ * efficient: all it uses is one {@link ModifiableDoubleDBIDList} to sort the
+ * data in a serialized tree and store the current attribute value.
+ * <p>
+ * Dynamic updates use the logarithmic method of Bentley and Saxe: inserted
+ * objects are appended as additional subtrees, and subtrees of similar size are
+ * merged and rebuilt, for amortized O(log² n) insertion cost. Deleted objects
+ * are only marked, and removed when their subtree is rebuilt, or when the tree
+ * is rebuilt because half of its objects have been deleted.
  * <p>
  * It needs about 3 times as much memory as {@link MinimalisticMemoryKDTree} but
  * it is also considerably faster because it does not need to lookup this value
@@ -70,7 +93,10 @@ import elki.utilities.optionhandling.parameters.IntParameter;
  * @since 0.7.0
  *
  * @has - - - KDTreeKNNSearcher
+ * @has - - - KDTreeBatchKNNSearcher
  * @has - - - KDTreeRangeSearcher
+ * @has - - - KDTreeBatchRangeSearcher
+ * @has - - - KDTreeSpanningTreeSearcher
  *
  * @param <O> Vector type
  */
@@ -79,7 +105,7 @@ import elki.utilities.optionhandling.parameters.IntParameter;
     booktitle = "Communications of the ACM 18(9)", //
     url = "https://doi.org/10.1145/361002.361007", //
     bibkey = "DBLP:journals/cacm/Bentley75")
-public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriorityIndex<O> {
+public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriorityIndex<O>, DynamicIndex, SpanningTreeIndex<O> {
   /**
    * Class logger
    */
@@ -95,6 +121,22 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
    */
   protected ModifiableDoubleDBIDList sorted = null;
 
+  /**
+   * Begin offsets of the subtrees in {@link #sorted}, followed by the end of
+   * the last subtree.
+   */
+  protected int[] subtrees = new int[4];
+
+  /**
+   * Number of subtrees.
+   */
+  protected int numtrees = 0;
+
+  /**
+   * Objects deleted, but still stored in the tree.
+   */
+  protected HashSetModifiableDBIDs deleted = null;
+
   /**
    * The number of dimensions.
    */
@@ -105,6 +147,21 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
    */
   protected int leafsize;
 
+  /**
+   * Maximum number of queries processed together by batch queries.
+   */
+  private static final int GROUP_SIZE = 32;
+
+  /**
+   * Minimum subtree size to build in a separate task.
+   */
+  private static final int PARALLEL_MIN = 4096;
+
+  /**
+   * Minimum size of the leaves of dual-tree joins.
+   */
+  private static final int JOIN_LEAFSIZE = 32;
+
   /**
    * Counter for comparisons.
    */
@@ -143,7 +200,190 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
     for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
       sorted.add(Double.NaN, it);
     }
-    buildTree(0, sorted.size(), 0, sorted.iter());
+    numtrees = 0;
+    deleted = null;
+    addTree(0);
+  }
+
+  @Override
+  public void insert(DBIDRef id) {
+    if(deleted != null && deleted.remove(id)) {
+      // Reinserted object, the vector may have changed:
+      deleted = deleted.isEmpty() ? null : deleted;
+      rebuildSubtrees(DBIDUtil.deref(id), sorted.size());
+      return;
+    }
+    final int left = sorted.size();
+    sorted.add(Double.NaN, id);
+    addTree(left);
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    HashSetModifiableDBIDs reinserted = null;
+    final int left = sorted.size();
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      if(deleted != null && deleted.remove(it)) {
+        reinserted = reinserted != null ? reinserted : DBIDUtil.newHashSet();
+        reinserted.add(it);
+        continue;
+      }
+      sorted.add(Double.NaN, it);
+    }
+    if(reinserted != null) {
+      // Reinserted objects, the vectors may have changed:
+      deleted = deleted.isEmpty() ? null : deleted;
+      rebuildSubtrees(reinserted, left);
+      return;
+    }
+    addTree(left);
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    if(deleted == null) {
+      deleted = DBIDUtil.newHashSet();
+    }
+    if(!deleted.add(id)) {
+      return false;
+    }
+    // Rebuild when half of the objects have been deleted:
+    if(deleted.size() > sorted.size() >>> 1) {
+      initialize();
+    }
+    return true;
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      delete(it);
+    }
+  }
+
+  /**
+   * Add the objects from the given offset to the end as a new subtree. The
+   * last subtrees are merged with it as long as they are not larger, and the
+   * merged subtree is rebuilt without the deleted objects.
+   *
+   * @param left Begin of the new subtree
+   */
+  private void addTree(int left) {
+    if(left == sorted.size()) {
+      return;
+    }
+    if(dims < 0) {
+      dims = relation.get(sorted.iter().seek(left)).getDimensionality();
+    }
+    if(subtrees.length < numtrees + 2) {
+      subtrees = Arrays.copyOf(subtrees, subtrees.length << 1);
+    }
+    subtrees[numtrees++] = left;
+    while(numtrees > 1 && left - subtrees[numtrees - 2] <= sorted.size() - left) {
+      left = subtrees[--numtrees - 1];
+    }
+    if(deleted != null) {
+      DoubleDBIDListIter it = sorted.iter();
+      for(int i = sorted.size() - 1; i >= left; i--) {
+        if(deleted.remove(it.seek(i))) {
+          sorted.removeSwap(i);
+        }
+      }
+      deleted = deleted.isEmpty() ? null : deleted;
+    }
+    final int right = subtrees[numtrees] = sorted.size();
+    if(left == right) {
+      --numtrees;
+      return;
+    }
+    BuildTask root = new BuildTask(left, right, 0);
+    // Use the current fork-join pool, if we already run in one:
+    if(right - left >= PARALLEL_MIN && !ForkJoinTask.inForkJoinPool()) {
+      ParallelCore.getCore().getForkJoinPool().invoke(root);
+    }
+    else {
+      root.compute();
+    }
+    if(objaccess != null) {
+      objaccess.increment(root.accesses);
+    }
+  }
+
+  /**
+   * Rebuild the subtrees from the first subtree that stores any of the given
+   * objects, together with the objects appended from the given offset.
+   *
+   * @param ids Objects to rebuild
+   * @param left Begin of the appended objects
+   */
+  private void rebuildSubtrees(DBIDs ids, int left) {
+    DoubleDBIDListIter it = sorted.iter();
+    for(int t = 0; t < numtrees; t++) {
+      for(it.seek(subtrees[t]); it.getOffset() < subtrees[t + 1]; it.advance()) {
+        if(ids.contains(it)) {
+          left = subtrees[t];
+          numtrees = t;
+          addTree(left);
+          return;
+        }
+      }
+    }
+    addTree(left);
+  }
+
+  /**
+   * Test whether an object was deleted, but is still stored in the tree.
+   *
+   * @param id Object
+   * @return {@code true} if deleted
+   */
+  private boolean isDeleted(DBIDRef id) {
+    return deleted != null && deleted.contains(id);
+  }
+
+  /**
+   * Task to build a subtree, which may fork additional tasks.
+   *
+   * @author Erich Schubert
+   */
+  private class BuildTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Interval of the subtree.
+     */
+    private final int left, right;
+
+    /**
+     * Splitting axis.
+     */
+    private final int axis;
+
+    /**
+     * Object accesses of this task.
+     */
+    long accesses;
+
+    /**
+     * Constructor.
+     *
+     * @param left Interval minimum
+     * @param right Interval maximum
+     * @param axis Splitting axis
+     */
+    BuildTask(int left, int right, int axis) {
+      this.left = left;
+      this.right = right;
+      this.axis = axis;
+    }
+
+    @Override
+    protected void compute() {
+      accesses = buildTree(left, right, axis, sorted.iter());
+    }
   }
 
   /**
@@ -155,27 +395,40 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
    * @param right Interval maximum
    * @param axis Current splitting axis
    * @param iter Iterator
+   * @return Number of object accesses
    */
-  private void buildTree(int left, int right, int axis, DoubleDBIDListMIter iter) {
+  private long buildTree(int left, int right, int axis, DoubleDBIDListMIter iter) {
     assert (left < right);
     for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
       iter.setDouble(relation.get(iter).doubleValue(axis));
-      countObjectAccess();
     }
+    long accesses = right - left;
     if(right - left <= leafsize) {
-      return;
+      return accesses;
     }
 
     int middle = (left + right) >>> 1;
     QuickSelectDBIDs.quickSelect(sorted, left, right, middle);
     final int next = next(axis);
+    // Build the subtrees, forking the first if large enough:
+    BuildTask task = null;
     if(left < middle) {
-      buildTree(left, middle, next, iter);
+      if(middle - left >= PARALLEL_MIN && ForkJoinTask.inForkJoinPool()) {
+        (task = new BuildTask(left, middle, next)).fork();
+      }
+      else {
+        accesses += buildTree(left, middle, next, iter);
+      }
     }
     ++middle;
     if(middle < right) {
-      buildTree(middle, right, next, iter);
+      accesses += buildTree(middle, right, next, iter);
     }
+    if(task != null) {
+      task.join();
+      accesses += task.accesses;
+    }
+    return accesses;
   }
 
   /**
@@ -227,6 +480,40 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
     return null;
   }
 
+  @Override
+  public BatchKNNSearcher batchKNNByDBID(DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    Distance<? super O> df = distanceQuery.getDistance();
+    // TODO: if we know this works for other distance functions, add them, too!
+    if(distanceQuery.getRelation() == relation && (df instanceof LPNormDistance //
+        || df instanceof SquaredEuclideanDistance || df instanceof SparseLPNormDistance)) {
+      return new KDTreeBatchKNNSearcher((PrimitiveDistance<? super O>) df);
+    }
+    return null;
+  }
+
+  @Override
+  public BatchRangeSearcher batchRangeByDBID(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    Distance<? super O> df = distanceQuery.getDistance();
+    // TODO: if we know this works for other distance functions, add them, too!
+    if(distanceQuery.getRelation() == relation && (df instanceof LPNormDistance //
+        || df instanceof SquaredEuclideanDistance || df instanceof SparseLPNormDistance)) {
+      return new KDTreeBatchRangeSearcher((PrimitiveDistance<? super O>) df);
+    }
+    return null;
+  }
+
+  @Override
+  public SpanningTreeSearcher spanningTree(DistanceQuery<O> distanceQuery, int flags) {
+    Distance<? super O> df = distanceQuery.getDistance();
+    // The join requires a single subtree without deleted objects.
+    if(distanceQuery.getRelation() == relation && numtrees == 1 && deleted == null //
+        && !(df instanceof WeightedLPNormDistance) && (df instanceof LPNormDistance //
+            || df instanceof SquaredEuclideanDistance || df instanceof SparseLPNormDistance)) {
+      return new KDTreeSpanningTreeSearcher((PrimitiveDistance<? super O>) df);
+    }
+    return null;
+  }
+
   @Override
   public RangeSearcher<O> rangeByObject(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
     Distance<? super O> df = distanceQuery.getDistance();
@@ -273,7 +560,11 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
     @Override
     public KNNList getKNN(O obj, int k) {
       final KNNHeap knns = DBIDUtil.newHeap(k);
-      kdKNNSearch(0, sorted.size(), 0, obj, knns, sorted.iter(), Double.POSITIVE_INFINITY);
+      final DoubleDBIDListIter iter = sorted.iter();
+      double maxdist = Double.POSITIVE_INFINITY;
+      for(int t = 0; t < numtrees; t++) {
+        maxdist = kdKNNSearch(subtrees[t], subtrees[t + 1], 0, obj, knns, iter, maxdist);
+      }
       return knns.toKNNList();
     }
 
@@ -292,6 +583,9 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
     private double kdKNNSearch(int left, int right, int axis, O query, KNNHeap knns, DoubleDBIDListIter iter, double maxdist) {
       if(right - left <= leafsize) {
         for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+          if(isDeleted(iter)) {
+            continue;
+          }
           double dist = distance.distance(query, relation.get(iter));
           countObjectAccess();
           countDistanceComputation();
@@ -307,7 +601,7 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
 
       // Distance to axis:
       final double delta = iter.seek(middle).doubleValue() - query.doubleValue(axis);
-      assert (iter.doubleValue() == relation.get(iter).doubleValue(axis)) : "Tree inconsistent " + left + " < " + middle + " < " + right + ": " + iter.doubleValue() + " != " + relation.get(iter).doubleValue(axis) + " " + relation.get(iter);
+      assert (isDeleted(iter) || iter.doubleValue() == relation.get(iter).doubleValue(axis)) : "Tree inconsistent " + left + " < " + middle + " < " + right + ": " + iter.doubleValue() + " != " + relation.get(iter).doubleValue(axis) + " " + relation.get(iter);
       final boolean onleft = (delta >= 0);
       final boolean onright = (delta <= 0);
 
@@ -317,14 +611,16 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
       // Exact match chance (delta == 0)!
       // process first, then descend both sides.
       if(onleft && onright) {
-        O split = relation.get(iter.seek(middle));
-        countObjectAccess();
-        double dist = distance.distance(query, split);
-        countDistanceComputation();
-        if(dist <= maxdist) {
-          assert (iter.getOffset() == middle);
-          knns.insert(dist, iter /* .seek(middle) */);
-          maxdist = knns.getKNNDistance();
+        if(!isDeleted(iter.seek(middle))) {
+          O split = relation.get(iter);
+          countObjectAccess();
+          double dist = distance.distance(query, split);
+          countDistanceComputation();
+          if(dist <= maxdist) {
+            assert (iter.getOffset() == middle);
+            knns.insert(dist, iter /* .seek(middle) */);
+            maxdist = knns.getKNNDistance();
+          }
         }
         if(left < middle) {
           maxdist = kdKNNSearch(left, middle, next, query, knns, iter, maxdist);
@@ -340,8 +636,8 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
             maxdist = kdKNNSearch(left, middle, next, query, knns, iter, maxdist);
           }
           // Look at splitting element (unless already above):
-          if(mindist <= maxdist) {
-            O split = relation.get(iter.seek(middle));
+          if(mindist <= maxdist && !isDeleted(iter.seek(middle))) {
+            O split = relation.get(iter);
             countObjectAccess();
             double dist = distance.distance(query, split);
             countDistanceComputation();
@@ -359,8 +655,8 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
             maxdist = kdKNNSearch(middle + 1, right, next, query, knns, iter, maxdist);
           }
           // Look at splitting element (unless already above):
-          if(mindist <= maxdist) {
-            O split = relation.get(iter.seek(middle));
+          if(mindist <= maxdist && !isDeleted(iter.seek(middle))) {
+            O split = relation.get(iter);
             countObjectAccess();
             double dist = distance.distance(query, split);
             countDistanceComputation();
@@ -379,95 +675,1390 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
   }
 
   /**
-   * Range query for the k-d-tree.
+   * Batch kNN query for the k-d-tree.
+   * <p>
+   * If all objects of the tree are queried, a {@link DualTreeJoin} is used.
+   * Otherwise, the queries are processed in groups of spatially close objects,
+   * as given by small subtrees. For each group, the tree is traversed only
+   * once, pruning by the bounding box of the group and the largest kNN distance
+   * of the group.
    *
    * @author Erich Schubert
    */
-  public class KDTreeRangeSearcher implements RangeSearcher<O> {
+  public class KDTreeBatchKNNSearcher implements BatchKNNSearcher {
     /**
      * Distance to use.
      */
     private PrimitiveDistance<? super O> distance;
 
+    /**
+     * Iterator for the queries.
+     */
+    private DoubleDBIDListIter qiter = sorted.iter();
+
+    /**
+     * Offsets of the current query group.
+     */
+    private int[] group = new int[GROUP_SIZE];
+
+    /**
+     * Query objects of the current group.
+     */
+    @SuppressWarnings("unchecked")
+    private O[] queries = (O[]) new NumberVector[GROUP_SIZE];
+
+    /**
+     * kNN heaps of the current group.
+     */
+    private KNNHeap[] heaps = new KNNHeap[GROUP_SIZE];
+
+    /**
+     * kNN distances of the current group.
+     */
+    private double[] kdists = new double[GROUP_SIZE];
+
+    /**
+     * Bounding box of the current group.
+     */
+    private double[] min, max;
+
+    /**
+     * Size of the current group.
+     */
+    private int size;
+
+    /**
+     * Largest kNN distance in the current group.
+     */
+    private double bound;
+
     /**
      * Constructor.
      *
      * @param distance Distance to use
      */
-    public KDTreeRangeSearcher(PrimitiveDistance<? super O> distance) {
+    public KDTreeBatchKNNSearcher(PrimitiveDistance<? super O> distance) {
       super();
       this.distance = distance;
+      this.min = new double[dims];
+      this.max = new double[dims];
     }
 
     @Override
-    public ModifiableDoubleDBIDList getRange(O obj, double range, ModifiableDoubleDBIDList result) {
-      kdRangeSearch(0, sorted.size(), 0, obj, result, sorted.iter(), range);
-      return result;
+    public DataStore<KNNList> getKNN(DBIDs ids, int k) {
+      WritableDataStore<KNNList> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, KNNList.class);
+      DBIDs lookup = ids instanceof DBIDRange || ids instanceof SetDBIDs ? ids : DBIDUtil.newHashSet(ids);
+      if(isSelfJoin(ids, lookup, distance)) {
+        new DualTreeJoin(distance).knnJoin(k, store);
+        return store;
+      }
+      int found = 0;
+      for(int t = 0; t < numtrees; t++) {
+        found += formGroups(subtrees[t], subtrees[t + 1], lookup, k, store);
+      }
+      if(found < ids.size()) { // Objects not in the tree, or duplicates
+        KDTreeKNNSearcher knnq = new KDTreeKNNSearcher(distance);
+        for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+          if(store.get(it) == null) {
+            store.put(it, knnq.getKNN(relation.get(it), k));
+          }
+        }
+      }
+      return store;
     }
 
     /**
-     * Perform a range search on the k-d-tree.
+     * Split the tree into small groups of queries.
+     *
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     * @param lookup Query objects
+     * @param k Number of neighbors
+     * @param store Output storage
+     * @return Number of queries processed
+     */
+    private int formGroups(int left, int right, DBIDs lookup, int k, WritableDataStore<KNNList> store) {
+      if(right - left <= GROUP_SIZE) {
+        return processGroup(left, right, lookup, k, store);
+      }
+      final int middle = (left + right) >>> 1;
+      return formGroups(left, middle, lookup, k, store) //
+          + processGroup(middle, middle + 1, lookup, k, store) //
+          + formGroups(middle + 1, right, lookup, k, store);
+    }
+
+    /**
+     * Process one group of queries.
+     *
+     * @param left Group begin
+     * @param right Group end (exclusive)
+     * @param lookup Query objects
+     * @param k Number of neighbors
+     * @param store Output storage
+     * @return Number of queries processed
+     */
+    private int processGroup(int left, int right, DBIDs lookup, int k, WritableDataStore<KNNList> store) {
+      size = 0;
+      for(qiter.seek(left); qiter.getOffset() < right; qiter.advance()) {
+        if(!lookup.contains(qiter)) {
+          continue;
+        }
+        O q = relation.get(qiter);
+        countObjectAccess();
+        if(size == 0) {
+          for(int d = 0; d < dims; d++) {
+            min[d] = max[d] = q.doubleValue(d);
+          }
+        }
+        else {
+          for(int d = 0; d < dims; d++) {
+            final double v = q.doubleValue(d);
+            min[d] = v < min[d] ? v : min[d];
+            max[d] = v > max[d] ? v : max[d];
+          }
+        }
+        group[size] = qiter.getOffset();
+        queries[size] = q;
+        heaps[size] = DBIDUtil.newHeap(k);
+        kdists[size] = Double.POSITIVE_INFINITY;
+        ++size;
+      }
+      if(size == 0) {
+        return 0;
+      }
+      bound = Double.POSITIVE_INFINITY;
+      final DoubleDBIDListIter iter = sorted.iter();
+      for(int t = 0; t < numtrees; t++) {
+        kdBatchSearch(subtrees[t], subtrees[t + 1], 0, iter);
+      }
+      for(int i = 0; i < size; i++) {
+        store.put(qiter.seek(group[i]), heaps[i].toKNNList());
+        queries[i] = null;
+        heaps[i] = null;
+      }
+      return size;
+    }
+
+    /**
+     * Perform a kNN search for the current group on the k-d-tree.
      *
      * @param left Subtree begin
      * @param right Subtree end (exclusive)
      * @param axis Current splitting axis
-     * @param query Query object
-     * @param res kNN heap
      * @param iter Iterator variable (reduces memory footprint!)
-     * @param radius Query radius
      */
-    private void kdRangeSearch(int left, int right, int axis, O query, ModifiableDoubleDBIDList res, DoubleDBIDListIter iter, double radius) {
+    private void kdBatchSearch(int left, int right, int axis, DoubleDBIDListIter iter) {
       if(right - left <= leafsize) {
         for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
-          double dist = distance.distance(query, relation.get(iter));
-          countObjectAccess();
-          countDistanceComputation();
-          if(dist <= radius) {
-            res.add(dist, iter);
-          }
+          candidate(iter);
         }
         return;
       }
       // Look at current node:
       final int middle = (left + right) >>> 1;
-
-      // Distance to axis:
-      final double delta = iter.seek(middle).doubleValue() - query.doubleValue(axis);
-      final boolean onleft = (delta >= 0), onright = (delta <= 0);
-      final double mindist = distance instanceof SquaredEuclideanDistance ? delta * delta : Math.abs(delta);
-      final boolean close = (mindist <= radius);
-
-      // Next axis:
+      final double split = iter.seek(middle).doubleValue();
+      // Distances of the bounding box to both halves, and the split plane:
+      final double ldelta = min[axis] - split, rdelta = split - max[axis];
+      final double lmin = ldelta > 0 ? mindist(ldelta) : 0.;
+      final double rmin = rdelta > 0 ? mindist(rdelta) : 0.;
+      final double smin = lmin > rmin ? lmin : rmin;
       final int next = next(axis);
-
-      // Current object:
-      if(close) {
-        O split = relation.get(iter.seek(middle));
-        countObjectAccess();
-        double dist = distance.distance(query, split);
-        countDistanceComputation();
-        if(dist <= radius) {
-          assert (iter.getOffset() == middle);
-          res.add(dist, iter /* .seek(middle) */);
+      // Descend into the closer half first:
+      if(ldelta <= rdelta) {
+        if(left < middle && lmin <= bound) {
+          kdBatchSearch(left, middle, next, iter);
+        }
+        if(smin <= bound) {
+          candidate(iter.seek(middle));
+        }
+        if(middle + 1 < right && rmin <= bound) {
+          kdBatchSearch(middle + 1, right, next, iter);
         }
       }
-      if(left < middle && (onleft || close)) {
-        kdRangeSearch(left, middle, next, query, res, iter, radius);
+      else {
+        if(middle + 1 < right && rmin <= bound) {
+          kdBatchSearch(middle + 1, right, next, iter);
+        }
+        if(smin <= bound) {
+          candidate(iter.seek(middle));
+        }
+        if(left < middle && lmin <= bound) {
+          kdBatchSearch(left, middle, next, iter);
+        }
       }
-      if(middle + 1 < right && (onright || close)) {
-        kdRangeSearch(middle + 1, right, next, query, res, iter, radius);
+    }
+
+    /**
+     * Minimum distance for a difference in a single coordinate.
+     *
+     * @param delta Coordinate difference
+     * @return Minimum distance
+     */
+    private double mindist(double delta) {
+      return distance instanceof SquaredEuclideanDistance ? delta * delta : delta;
+    }
+
+    /**
+     * Consider a candidate for all queries in the current group.
+     *
+     * @param iter Candidate
+     */
+    private void candidate(DoubleDBIDListIter iter) {
+      if(isDeleted(iter)) {
+        return;
       }
+      O obj = relation.get(iter);
+      countObjectAccess();
+      double newbound = 0.;
+      for(int i = 0; i < size; i++) {
+        double kdist = kdists[i];
+        final double dist = distance.distance(queries[i], obj);
+        countDistanceComputation();
+        if(dist <= kdist) {
+          kdist = kdists[i] = heaps[i].insert(dist, iter);
+        }
+        newbound = kdist > newbound ? kdist : newbound;
+      }
+      bound = newbound;
     }
   }
 
   /**
-   * Search position for priority search.
+   * Batch range query for the k-d-tree.
+   * <p>
+   * If all objects of the tree are queried, a {@link DualTreeJoin} is used,
+   * otherwise the objects are queried one at a time.
    *
    * @author Erich Schubert
    */
-  private static class PrioritySearchBranch implements Comparable<PrioritySearchBranch> {
+  public class KDTreeBatchRangeSearcher implements BatchRangeSearcher {
     /**
-     * Minimum distance
+     * Distance to use.
+     */
+    private PrimitiveDistance<? super O> distance;
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance to use
+     */
+    public KDTreeBatchRangeSearcher(PrimitiveDistance<? super O> distance) {
+      super();
+      this.distance = distance;
+    }
+
+    @Override
+    public DataStore<DoubleDBIDList> getRange(DBIDs ids, double range) {
+      WritableDataStore<DoubleDBIDList> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, DoubleDBIDList.class);
+      DBIDs lookup = ids instanceof DBIDRange || ids instanceof SetDBIDs ? ids : DBIDUtil.newHashSet(ids);
+      if(isSelfJoin(ids, lookup, distance)) {
+        new DualTreeJoin(distance).rangeJoin(range, store);
+        return store;
+      }
+      KDTreeRangeSearcher rangeq = new KDTreeRangeSearcher(distance);
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        store.put(it, rangeq.getRange(relation.get(it), range, DBIDUtil.newDistanceDBIDList()));
+      }
+      return store;
+    }
+  }
+
+  /**
+   * Minimum spanning tree searcher for the k-d-tree, using a
+   * {@link DualTreeBoruvka}.
+   *
+   * @author Erich Schubert
+   */
+  public class KDTreeSpanningTreeSearcher implements SpanningTreeSearcher {
+    /**
+     * Distance to use.
+     */
+    private PrimitiveDistance<? super O> distance;
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance to use
+     */
+    public KDTreeSpanningTreeSearcher(PrimitiveDistance<? super O> distance) {
+      super();
+      this.distance = distance;
+    }
+
+    @Override
+    public void spanningTree(ArrayDBIDs ids, DoubleDataStore coredists, Collector collector) {
+      DBIDs lookup = ids instanceof DBIDRange ? ids : DBIDUtil.newHashSet(ids);
+      if(!isSelfJoin(ids, lookup, distance)) {
+        throw new IllegalArgumentException("The spanning tree can only be computed for all objects of an unmodified tree.");
+      }
+      new DualTreeBoruvka(distance).run(ids, coredists, collector);
+    }
+  }
+
+  /**
+   * Test whether the queries are exactly the objects in the tree, so that a
+   * {@link DualTreeJoin} can be used.
+   *
+   * @param ids Query objects
+   * @param lookup Query objects, for fast lookups
+   * @param distance Distance to use
+   * @return {@code true} if a self-join can be used
+   */
+  private boolean isSelfJoin(DBIDs ids, DBIDs lookup, Distance<?> distance) {
+    // The cell distances would need to be weighted.
+    if(numtrees != 1 || deleted != null || ids.size() != sorted.size() || distance instanceof WeightedLPNormDistance) {
+      return false;
+    }
+    for(DBIDIter it = sorted.iter(); it.valid(); it.advance()) {
+      if(!lookup.contains(it)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Dual-tree self-join of the k-d-tree, which computes the k nearest
+   * neighbors or the range neighbors of all objects in the tree at once.
+   * <p>
+   * The tree is traversed as query and as reference tree simultaneously, and
+   * pairs of nodes are pruned by the minimum distance of their bounding boxes.
+   * As the leaves of the k-d-tree are small, subtrees of up to
+   * {@link #JOIN_LEAFSIZE} objects are used as leaves of the join. For kNN
+   * joins, the pruning bound of a query node is the largest kNN distance of its
+   * objects. Different query subtrees are independent, and large subtrees are
+   * processed in parallel.
+   * <p>
+   * Reference:
+   * <p>
+   * A. G. Gray, A. W. Moore<br>
+   * 'N-Body' Problems in Statistical Learning<br>
+   * Advances in Neural Information Processing Systems 13 (NIPS 2000)
+   *
+   * @author Erich Schubert
+   */
+  @Reference(authors = "A. G. Gray, A. W. Moore", //
+      title = "'N-Body' Problems in Statistical Learning", //
+      booktitle = "Advances in Neural Information Processing Systems 13 (NIPS 2000)", //
+      url = "http://papers.nips.cc/paper/1883-n-body-problems-in-statistical-learning", //
+      bibkey = "DBLP:conf/nips/GrayM00")
+  private class DualTreeJoin {
+    /**
+     * Distance to use.
+     */
+    final PrimitiveDistance<? super O> distance;
+
+    /**
+     * Exponent of the norm, infinity for the maximum norm.
+     */
+    final double p;
+
+    /**
+     * Flag for squared Euclidean distance.
+     */
+    final boolean squared;
+
+    /**
+     * Maximum size of the leaves of the join.
+     */
+    final int joinleaf;
+
+    /**
+     * Bounding boxes of the nodes, stored at the position of the splitting
+     * object, or of the first object for leaves. Minima are followed by the
+     * maxima.
+     */
+    double[][] boxes;
+
+    /**
+     * kNN heaps, by position in the tree; {@code null} for range joins.
+     */
+    KNNHeap[] heaps;
+
+    /**
+     * Current kNN distances, by position in the tree.
+     */
+    double[] kdists;
+
+    /**
+     * Pruning bounds of the inner query nodes, by position of the splitting
+     * object.
+     */
+    double[] bounds;
+
+    /**
+     * Range join results, by position in the tree.
+     */
+    ModifiableDoubleDBIDList[] lists;
+
+    /**
+     * Radius of a range join.
+     */
+    double range;
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance to use
+     */
+    DualTreeJoin(PrimitiveDistance<? super O> distance) {
+      this.distance = distance;
+      this.squared = distance instanceof SquaredEuclideanDistance;
+      // For other norms, the maximum norm is a lower bound.
+      this.p = squared ? 2 : distance instanceof LPNormDistance ? ((LPNormDistance) distance).getP() : Double.POSITIVE_INFINITY;
+      this.joinleaf = Math.max(leafsize, JOIN_LEAFSIZE);
+    }
+
+    /**
+     * Compute the k nearest neighbors of all objects.
+     *
+     * @param k Number of neighbors
+     * @param store Output storage
+     */
+    void knnJoin(int k, WritableDataStore<KNNList> store) {
+      final int size = sorted.size();
+      heaps = new KNNHeap[size];
+      kdists = new double[size];
+      bounds = new double[size];
+      for(int i = 0; i < size; i++) {
+        heaps[i] = DBIDUtil.newHeap(k);
+      }
+      Arrays.fill(kdists, Double.POSITIVE_INFINITY);
+      Arrays.fill(bounds, Double.POSITIVE_INFINITY);
+      run();
+      for(DBIDArrayIter it = sorted.iter(); it.valid(); it.advance()) {
+        store.put(it, heaps[it.getOffset()].toKNNList());
+        heaps[it.getOffset()] = null;
+      }
+    }
+
+    /**
+     * Compute the range neighbors of all objects.
+     *
+     * @param range Query radius
+     * @param store Output storage
+     */
+    void rangeJoin(double range, WritableDataStore<DoubleDBIDList> store) {
+      final int size = sorted.size();
+      this.range = range;
+      lists = new ModifiableDoubleDBIDList[size];
+      for(int i = 0; i < size; i++) {
+        lists[i] = DBIDUtil.newDistanceDBIDList();
+      }
+      run();
+      for(DBIDArrayIter it = sorted.iter(); it.valid(); it.advance()) {
+        store.put(it, lists[it.getOffset()]);
+        lists[it.getOffset()] = null;
+      }
+    }
+
+    /**
+     * Join the tree with itself.
+     */
+    private void run() {
+      final int size = sorted.size();
+      if(size == 0) {
+        return;
+      }
+      boxes = new double[size][];
+      buildBox(0, size, sorted.iter());
+      JoinTask root = new JoinTask(this, 0, size, 0, size);
+      if(size >= PARALLEL_MIN) {
+        ParallelCore.getCore().getForkJoinPool().invoke(root);
+      }
+      else {
+        root.compute();
+      }
+      if(objaccess != null) {
+        objaccess.increment(root.accesses + size);
+      }
+      if(distcalc != null) {
+        distcalc.increment(root.distances);
+      }
+    }
+
+    /**
+     * Compute the bounding boxes of a subtree.
+     *
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     * @param iter Iterator
+     * @return Bounding box, {@code null} for single objects
+     */
+    double[] buildBox(int left, int right, DoubleDBIDListIter iter) {
+      if(right - left == 1) {
+        return null; // Do not overwrite the box of the parent.
+      }
+      if(right - left <= joinleaf) {
+        double[] box = new double[dims << 1];
+        Arrays.fill(box, 0, dims, Double.POSITIVE_INFINITY);
+        Arrays.fill(box, dims, dims << 1, Double.NEGATIVE_INFINITY);
+        for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+          extend(box, relation.get(iter));
+        }
+        return boxes[left] = box;
+      }
+      final int middle = (left + right) >>> 1;
+      double[] lbox = left < middle ? buildBox(left, middle, iter) : null;
+      double[] rbox = middle + 1 < right ? buildBox(middle + 1, right, iter) : null;
+      double[] box = new double[dims << 1];
+      Arrays.fill(box, 0, dims, Double.POSITIVE_INFINITY);
+      Arrays.fill(box, dims, dims << 1, Double.NEGATIVE_INFINITY);
+      extend(box, relation.get(iter.seek(middle)));
+      for(int d = 0, e = dims; d < dims; d++, e++) {
+        if(lbox != null) {
+          box[d] = lbox[d] < box[d] ? lbox[d] : box[d];
+          box[e] = lbox[e] > box[e] ? lbox[e] : box[e];
+        }
+        if(rbox != null) {
+          box[d] = rbox[d] < box[d] ? rbox[d] : box[d];
+          box[e] = rbox[e] > box[e] ? rbox[e] : box[e];
+        }
+      }
+      return boxes[middle] = box;
+    }
+
+    /**
+     * Extend a bounding box to contain an object.
+     *
+     * @param box Bounding box
+     * @param obj Object
+     */
+    private void extend(double[] box, O obj) {
+      for(int d = 0, e = dims; d < dims; d++, e++) {
+        final double v = obj.doubleValue(d);
+        box[d] = v < box[d] ? v : box[d];
+        box[e] = v > box[e] ? v : box[e];
+      }
+    }
+
+    /**
+     * Pruning bound of a query node.
+     *
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     * @return Largest distance of a neighbor still of interest
+     */
+    double bound(int left, int right) {
+      if(heaps == null) {
+        return range;
+      }
+      if(right - left > joinleaf) {
+        return bounds[(left + right) >>> 1];
+      }
+      double bound = kdists[left];
+      for(int i = left + 1; i < right; i++) {
+        bound = kdists[i] > bound ? kdists[i] : bound;
+      }
+      return bound;
+    }
+
+    /**
+     * Update the pruning bound of an inner query node from its children.
+     *
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     */
+    void updateBound(int left, int right) {
+      if(heaps == null) {
+        return;
+      }
+      final int middle = (left + right) >>> 1;
+      double bound = kdists[middle];
+      if(left < middle) {
+        final double b = bound(left, middle);
+        bound = b > bound ? b : bound;
+      }
+      if(middle + 1 < right) {
+        final double b = bound(middle + 1, right);
+        bound = b > bound ? b : bound;
+      }
+      bounds[middle] = bound;
+    }
+
+    /**
+     * Minimum distance of two bounding boxes.
+     *
+     * @param a First box
+     * @param b Second box
+     * @return Minimum distance
+     */
+    double boxDistance(double[] a, double[] b) {
+      double agg = 0.;
+      for(int d = 0, e = dims; d < dims; d++, e++) {
+        final double x = b[d] - a[e], y = a[d] - b[e];
+        agg = aggregate(agg, x > y ? x : y);
+      }
+      return finish(agg);
+    }
+
+    /**
+     * Minimum distance of an object to a bounding box.
+     *
+     * @param q Object
+     * @param box Bounding box
+     * @return Minimum distance
+     */
+    double boxDistance(O q, double[] box) {
+      double agg = 0.;
+      for(int d = 0, e = dims; d < dims; d++, e++) {
+        final double v = q.doubleValue(d), x = box[d] - v, y = v - box[e];
+        agg = aggregate(agg, x > y ? x : y);
+      }
+      return finish(agg);
+    }
+
+    /**
+     * Aggregate the coordinate differences of a minimum distance.
+     *
+     * @param agg Previous aggregate
+     * @param delta Coordinate difference, non-positive values are ignored
+     * @return New aggregate
+     */
+    private double aggregate(double agg, double delta) {
+      return delta <= 0 ? agg : p == 2 ? agg + delta * delta : p == 1 ? agg + delta : //
+          p == Double.POSITIVE_INFINITY ? (delta > agg ? delta : agg) : agg + Math.pow(delta, p);
+    }
+
+    /**
+     * Finish the aggregation of a minimum distance.
+     *
+     * @param agg Aggregate
+     * @return Minimum distance
+     */
+    private double finish(double agg) {
+      return squared || p == 1 || p == Double.POSITIVE_INFINITY ? agg : p == 2 ? Math.sqrt(agg) : Math.pow(agg, 1. / p);
+    }
+  }
+
+  /**
+   * Task to join a query subtree with a reference subtree, which may fork
+   * additional tasks for query subtrees.
+   *
+   * @author Erich Schubert
+   */
+  private class JoinTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Join in progress.
+     */
+    private final DualTreeJoin join;
+
+    /**
+     * Query and reference subtrees.
+     */
+    private final int qleft, qright, rleft, rright;
+
+    /**
+     * Iterators for the query and reference objects.
+     */
+    private final DoubleDBIDListIter qiter = sorted.iter(), riter = sorted.iter();
+
+    /**
+     * Objects of the current reference leaf.
+     */
+    private final O[] robjs;
+
+    /**
+     * Bounding boxes of single query and reference objects.
+     */
+    private final double[] qpoint, rpoint;
+
+    /**
+     * Object accesses and distance computations of this task.
+     */
+    long accesses, distances;
+
+    /**
+     * Constructor.
+     *
+     * @param join Join in progress
+     * @param qleft Query subtree begin
+     * @param qright Query subtree end (exclusive)
+     * @param rleft Reference subtree begin
+     * @param rright Reference subtree end (exclusive)
+     */
+    @SuppressWarnings("unchecked")
+    JoinTask(DualTreeJoin join, int qleft, int qright, int rleft, int rright) {
+      this.join = join;
+      this.qleft = qleft;
+      this.qright = qright;
+      this.rleft = rleft;
+      this.rright = rright;
+      this.robjs = (O[]) new NumberVector[join.joinleaf];
+      this.qpoint = new double[dims << 1];
+      this.rpoint = new double[dims << 1];
+    }
+
+    @Override
+    protected void compute() {
+      join(qleft, qright, rleft, rright);
+    }
+
+    /**
+     * Get the bounding box of a node.
+     *
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     * @param iter Iterator
+     * @param point Buffer for single objects
+     * @return Bounding box
+     */
+    private double[] box(int left, int right, DoubleDBIDListIter iter, double[] point) {
+      if(right - left > 1) {
+        return join.boxes[right - left > join.joinleaf ? (left + right) >>> 1 : left];
+      }
+      final O obj = relation.get(iter.seek(left));
+      ++accesses;
+      for(int d = 0, e = dims; d < dims; d++, e++) {
+        point[d] = point[e] = obj.doubleValue(d);
+      }
+      return point;
+    }
+
+    /**
+     * Join a query node with a reference node.
+     *
+     * @param ql Query subtree begin
+     * @param qr Query subtree end (exclusive)
+     * @param rl Reference subtree begin
+     * @param rr Reference subtree end (exclusive)
+     */
+    private void join(int ql, int qr, int rl, int rr) {
+      final double[] qbox = box(ql, qr, qiter, qpoint);
+      if(join.boxDistance(qbox, box(rl, rr, riter, rpoint)) > join.bound(ql, qr)) {
+        return;
+      }
+      final int joinleaf = join.joinleaf;
+      final boolean qleaf = qr - ql <= joinleaf, rleaf = rr - rl <= joinleaf;
+      if(qleaf && rleaf) {
+        baseCase(ql, qr, rl, rr);
+        return;
+      }
+      if(rleaf || (!qleaf && qr - ql >= rr - rl)) { // Split the query node
+        final int middle = (ql + qr) >>> 1;
+        JoinTask task = null;
+        if(ql < middle) {
+          if(middle - ql >= PARALLEL_MIN && ForkJoinTask.inForkJoinPool()) {
+            (task = new JoinTask(join, ql, middle, rl, rr)).fork();
+          }
+          else {
+            join(ql, middle, rl, rr);
+          }
+        }
+        join(middle, middle + 1, rl, rr);
+        if(middle + 1 < qr) {
+          join(middle + 1, qr, rl, rr);
+        }
+        if(task != null) {
+          task.join();
+          accesses += task.accesses;
+          distances += task.distances;
+        }
+        join.updateBound(ql, qr);
+        return;
+      }
+      // Split the reference node, descending into the closer half first:
+      final int middle = (rl + rr) >>> 1;
+      final double ldist = rl < middle ? join.boxDistance(qbox, box(rl, middle, riter, rpoint)) : Double.POSITIVE_INFINITY;
+      final double rdist = middle + 1 < rr ? join.boxDistance(qbox, box(middle + 1, rr, riter, rpoint)) : Double.POSITIVE_INFINITY;
+      if(ldist <= rdist) {
+        if(rl < middle) {
+          join(ql, qr, rl, middle);
+        }
+        join(ql, qr, middle, middle + 1);
+        if(middle + 1 < rr) {
+          join(ql, qr, middle + 1, rr);
+        }
+      }
+      else {
+        join(ql, qr, middle + 1, rr);
+        join(ql, qr, middle, middle + 1);
+        if(rl < middle) {
+          join(ql, qr, rl, middle);
+        }
+      }
+    }
+
+    /**
+     * Compare all objects of a query leaf with a reference leaf.
+     *
+     * @param ql Query leaf begin
+     * @param qr Query leaf end (exclusive)
+     * @param rl Reference leaf begin
+     * @param rr Reference leaf end (exclusive)
+     */
+    private void baseCase(int ql, int qr, int rl, int rr) {
+      final int rsize = rr - rl;
+      final double[] rbox = rsize > 1 ? join.boxes[rl] : null;
+      int i = 0;
+      for(riter.seek(rl); i < rsize; riter.advance(), i++) {
+        robjs[i] = relation.get(riter);
+      }
+      accesses += rsize + qr - ql;
+      final KNNHeap[] heaps = join.heaps;
+      for(qiter.seek(ql); qiter.getOffset() < qr; qiter.advance()) {
+        final O q = relation.get(qiter);
+        final int qoff = qiter.getOffset();
+        if(rbox != null && join.boxDistance(q, rbox) > (heaps != null ? join.kdists[qoff] : join.range)) {
+          continue;
+        }
+        distances += rsize;
+        if(heaps != null) {
+          final KNNHeap heap = heaps[qoff];
+          double kdist = join.kdists[qoff];
+          for(riter.seek(rl), i = 0; i < rsize; riter.advance(), i++) {
+            final double dist = join.distance.distance(q, robjs[i]);
+            if(dist <= kdist) {
+              kdist = heap.insert(dist, riter);
+            }
+          }
+          join.kdists[qoff] = kdist;
+        }
+        else {
+          final ModifiableDoubleDBIDList list = join.lists[qoff];
+          final double range = join.range;
+          for(riter.seek(rl), i = 0; i < rsize; riter.advance(), i++) {
+            final double dist = join.distance.distance(q, robjs[i]);
+            if(dist <= range) {
+              list.add(dist, riter);
+            }
+          }
+        }
+      }
+      Arrays.fill(robjs, 0, rsize, null);
+    }
+  }
+
+  /**
+   * Dual-tree Borůvka algorithm for the minimum spanning tree of all objects in
+   * the tree, optionally for the mutual reachability distance of HDBSCAN*.
+   * <p>
+   * In every round, the tree is joined with itself to find the shortest edge
+   * leaving each component, and these edges are then added to the spanning
+   * tree, at least halving the number of components. Pairs of nodes are pruned
+   * when all their objects are in the same component, or by the minimum
+   * distance of their bounding boxes and the minimum core distances. The
+   * pruning bound of a query node is the largest shortest edge found for the
+   * components of its objects.
+   * <p>
+   * The traversal is sequential, as all query nodes update the shared
+   * shortest edges of the components.
+   * <p>
+   * Reference:
+   * <p>
+   * W. B. March, P. Ram, A. G. Gray<br>
+   * Fast Euclidean minimum spanning tree: algorithm, analysis, and
+   * applications<br>
+   * Proc. 16th ACM SIGKDD Int. Conf. Knowledge Discovery and Data Mining
+   * <p>
+   * L. McInnes, J. Healy<br>
+   * Accelerated Hierarchical Density Based Clustering<br>
+   * IEEE Int. Conf. Data Mining Workshops (ICDMW 2017)
+   *
+   * @author Erich Schubert
+   */
+  @Reference(authors = "W. B. March, P. Ram, A. G. Gray", //
+      title = "Fast Euclidean minimum spanning tree: algorithm, analysis, and applications", //
+      booktitle = "Proc. 16th ACM SIGKDD Int. Conf. Knowledge Discovery and Data Mining", //
+      url = "https://doi.org/10.1145/1835804.1835882", //
+      bibkey = "DBLP:conf/kdd/MarchRG10")
+  @Reference(authors = "L. McInnes, J. Healy", //
+      title = "Accelerated Hierarchical Density Based Clustering", //
+      booktitle = "IEEE Int. Conf. Data Mining Workshops (ICDMW 2017)", //
+      url = "https://doi.org/10.1109/ICDMW.2017.12", //
+      bibkey = "DBLP:conf/icdm/McInnesH17")
+  private class DualTreeBoruvka extends DualTreeJoin {
+    /**
+     * Core distances, by position in the tree.
+     */
+    double[] core;
+
+    /**
+     * Component of each object in the current round, by position in the tree.
+     */
+    int[] comp;
+
+    /**
+     * Minimum core distance of the nodes, stored like the bounding boxes.
+     */
+    double[] mincores;
+
+    /**
+     * Component of all objects of a node, or -1 if they are in different
+     * components, stored like the bounding boxes.
+     */
+    int[] nodecomps;
+
+    /**
+     * Length of the shortest edge leaving each component, by position of the
+     * component root.
+     */
+    double[] best;
+
+    /**
+     * Positions of the shortest edge leaving each component.
+     */
+    int[] besti, bestj;
+
+    /**
+     * Iterators for the query and reference objects.
+     */
+    final DoubleDBIDListIter qiter = sorted.iter(), riter = sorted.iter();
+
+    /**
+     * Objects of the current reference leaf.
+     */
+    final O[] robjs;
+
+    /**
+     * Bounding boxes of single query and reference objects.
+     */
+    final double[] qpoint, rpoint;
+
+    /**
+     * Object accesses and distance computations.
+     */
+    long accesses, distances;
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance to use
+     */
+    @SuppressWarnings("unchecked")
+    DualTreeBoruvka(PrimitiveDistance<? super O> distance) {
+      super(distance);
+      this.robjs = (O[]) new NumberVector[joinleaf];
+      this.qpoint = new double[dims << 1];
+      this.rpoint = new double[dims << 1];
+    }
+
+    /**
+     * Compute the minimum spanning tree.
+     *
+     * @param ids All objects in the tree, to report the edges by offset
+     * @param coredists Core distances, may be {@code null}
+     * @param collector Edge collector
+     */
+    void run(ArrayDBIDs ids, DoubleDataStore coredists, SpanningTreeSearcher.Collector collector) {
+      final int size = sorted.size();
+      if(size < 2) {
+        return;
+      }
+      WritableIntegerDataStore offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT);
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        offsets.putInt(it, it.getOffset());
+      }
+      final int[] offset = new int[size];
+      core = new double[size];
+      for(DoubleDBIDListIter it = sorted.iter(); it.valid(); it.advance()) {
+        offset[it.getOffset()] = offsets.intValue(it);
+        core[it.getOffset()] = coredists != null ? coredists.doubleValue(it) : 0.;
+      }
+      offsets.destroy();
+      boxes = new double[size][];
+      buildBox(0, size, sorted.iter());
+      mincores = new double[size];
+      initCores(0, size);
+      comp = new int[size];
+      nodecomps = new int[size];
+      bounds = new double[size];
+      best = new double[size];
+      besti = new int[size];
+      bestj = new int[size];
+      WeightedQuickUnionInteger uf = new WeightedQuickUnionInteger();
+      for(int i = 0; i < size; i++) {
+        uf.nextIndex(1);
+      }
+      for(int components = size; components > 1;) {
+        for(int i = 0; i < size; i++) {
+          comp[i] = uf.find(i);
+        }
+        Arrays.fill(best, Double.POSITIVE_INFINITY);
+        Arrays.fill(bounds, Double.POSITIVE_INFINITY);
+        initComponents(0, size);
+        join(0, size, 0, size);
+        int added = 0;
+        for(int c = 0; c < size; c++) {
+          if(best[c] < Double.POSITIVE_INFINITY && !uf.isConnected(besti[c], bestj[c])) {
+            uf.union(besti[c], bestj[c]);
+            collector.addEdge(best[c], offset[besti[c]], offset[bestj[c]]);
+            ++added;
+          }
+        }
+        if(added == 0) {
+          // Only infinite distances remain, connect as Prim's algorithm would.
+          for(int i = 1; i < size; i++) {
+            if(!uf.isConnected(0, i)) {
+              uf.union(0, i);
+              collector.addEdge(Double.POSITIVE_INFINITY, offset[0], offset[i]);
+            }
+          }
+          break;
+        }
+        components -= added;
+      }
+      if(objaccess != null) {
+        objaccess.increment(accesses + size);
+      }
+      if(distcalc != null) {
+        distcalc.increment(distances);
+      }
+    }
+
+    /**
+     * Compute the minimum core distances of a subtree.
+     *
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     * @return Minimum core distance
+     */
+    private double initCores(int left, int right) {
+      if(right - left <= joinleaf) {
+        double min = core[left];
+        for(int i = left + 1; i < right; i++) {
+          min = core[i] < min ? core[i] : min;
+        }
+        return right - left > 1 ? (mincores[left] = min) : min;
+      }
+      final int middle = (left + right) >>> 1;
+      double min = core[middle];
+      if(left < middle) {
+        final double m = initCores(left, middle);
+        min = m < min ? m : min;
+      }
+      if(middle + 1 < right) {
+        final double m = initCores(middle + 1, right);
+        min = m < min ? m : min;
+      }
+      return mincores[middle] = min;
+    }
+
+    /**
+     * Compute the components of a subtree for the current round.
+     *
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     * @return Component of all objects, or -1
+     */
+    private int initComponents(int left, int right) {
+      if(right - left <= joinleaf) {
+        int c = comp[left];
+        for(int i = left + 1; i < right && c >= 0; i++) {
+          c = comp[i] == c ? c : -1;
+        }
+        return right - left > 1 ? (nodecomps[left] = c) : c;
+      }
+      final int middle = (left + right) >>> 1;
+      int c = comp[middle];
+      if(left < middle) {
+        final int lc = initComponents(left, middle);
+        c = lc == c ? c : -1;
+      }
+      if(middle + 1 < right) {
+        final int rc = initComponents(middle + 1, right);
+        c = rc == c ? c : -1;
+      }
+      return nodecomps[middle] = c;
+    }
+
+    /**
+     * Get the minimum core distance of a node.
+     *
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     * @return Minimum core distance
+     */
+    private double mincore(int left, int right) {
+      return right - left == 1 ? core[left] : mincores[right - left > joinleaf ? (left + right) >>> 1 : left];
+    }
+
+    /**
+     * Get the component of all objects of a node.
+     *
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     * @return Component, or -1 if different
+     */
+    private int component(int left, int right) {
+      return right - left == 1 ? comp[left] : nodecomps[right - left > joinleaf ? (left + right) >>> 1 : left];
+    }
+
+    @Override
+    double bound(int left, int right) {
+      if(right - left > joinleaf) {
+        return bounds[(left + right) >>> 1];
+      }
+      double bound = best[comp[left]];
+      for(int i = left + 1; i < right; i++) {
+        final double b = best[comp[i]];
+        bound = b > bound ? b : bound;
+      }
+      return bound;
+    }
+
+    @Override
+    void updateBound(int left, int right) {
+      final int middle = (left + right) >>> 1;
+      double bound = best[comp[middle]];
+      if(left < middle) {
+        final double b = bound(left, middle);
+        bound = b > bound ? b : bound;
+      }
+      if(middle + 1 < right) {
+        final double b = bound(middle + 1, right);
+        bound = b > bound ? b : bound;
+      }
+      bounds[middle] = bound;
+    }
+
+    /**
+     * Get the bounding box of a node.
+     *
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     * @param iter Iterator
+     * @param point Buffer for single objects
+     * @return Bounding box
+     */
+    private double[] box(int left, int right, DoubleDBIDListIter iter, double[] point) {
+      if(right - left > 1) {
+        return boxes[right - left > joinleaf ? (left + right) >>> 1 : left];
+      }
+      final O obj = relation.get(iter.seek(left));
+      ++accesses;
+      for(int d = 0, e = dims; d < dims; d++, e++) {
+        point[d] = point[e] = obj.doubleValue(d);
+      }
+      return point;
+    }
+
+    /**
+     * Lower bound of the edges between a query and a reference node.
+     *
+     * @param qbox Query bounding box
+     * @param ql Query subtree begin
+     * @param qr Query subtree end (exclusive)
+     * @param rl Reference subtree begin
+     * @param rr Reference subtree end (exclusive)
+     * @return Lower bound
+     */
+    private double lowerBound(double[] qbox, int ql, int qr, int rl, int rr) {
+      final double d = boxDistance(qbox, box(rl, rr, riter, rpoint));
+      final double qc = mincore(ql, qr), rc = mincore(rl, rr);
+      return d > qc ? (d > rc ? d : rc) : (qc > rc ? qc : rc);
+    }
+
+    /**
+     * Join a query node with a reference node.
+     *
+     * @param ql Query subtree begin
+     * @param qr Query subtree end (exclusive)
+     * @param rl Reference subtree begin
+     * @param rr Reference subtree end (exclusive)
+     */
+    private void join(int ql, int qr, int rl, int rr) {
+      final int qc = component(ql, qr);
+      if(qc >= 0 && qc == component(rl, rr)) {
+        return;
+      }
+      final double[] qbox = box(ql, qr, qiter, qpoint);
+      if(lowerBound(qbox, ql, qr, rl, rr) > bound(ql, qr)) {
+        return;
+      }
+      final boolean qleaf = qr - ql <= joinleaf, rleaf = rr - rl <= joinleaf;
+      if(qleaf && rleaf) {
+        baseCase(ql, qr, rl, rr);
+        return;
+      }
+      if(rleaf || (!qleaf && qr - ql >= rr - rl)) { // Split the query node
+        final int middle = (ql + qr) >>> 1;
+        if(ql < middle) {
+          join(ql, middle, rl, rr);
+        }
+        join(middle, middle + 1, rl, rr);
+        if(middle + 1 < qr) {
+          join(middle + 1, qr, rl, rr);
+        }
+        updateBound(ql, qr);
+        return;
+      }
+      // Split the reference node, descending into the closer half first:
+      final int middle = (rl + rr) >>> 1;
+      final double ldist = rl < middle ? lowerBound(qbox, ql, qr, rl, middle) : Double.POSITIVE_INFINITY;
+      final double rdist = middle + 1 < rr ? lowerBound(qbox, ql, qr, middle + 1, rr) : Double.POSITIVE_INFINITY;
+      if(ldist <= rdist) {
+        if(rl < middle) {
+          join(ql, qr, rl, middle);
+        }
+        join(ql, qr, middle, middle + 1);
+        if(middle + 1 < rr) {
+          join(ql, qr, middle + 1, rr);
+        }
+      }
+      else {
+        join(ql, qr, middle + 1, rr);
+        join(ql, qr, middle, middle + 1);
+        if(rl < middle) {
+          join(ql, qr, rl, middle);
+        }
+      }
+    }
+
+    /**
+     * Compare all objects of a query leaf with a reference leaf. Edges are
+     * shortest edges candidates for the components of both objects.
+     *
+     * @param ql Query leaf begin
+     * @param qr Query leaf end (exclusive)
+     * @param rl Reference leaf begin
+     * @param rr Reference leaf end (exclusive)
+     */
+    private void baseCase(int ql, int qr, int rl, int rr) {
+      final int rsize = rr - rl, rc = component(rl, rr);
+      final double[] rbox = rsize > 1 ? boxes[rl] : null;
+      final double rcore = mincore(rl, rr);
+      int i = 0;
+      for(riter.seek(rl); i < rsize; riter.advance(), i++) {
+        robjs[i] = relation.get(riter);
+      }
+      accesses += rsize + qr - ql;
+      for(qiter.seek(ql); qiter.getOffset() < qr; qiter.advance()) {
+        final int qoff = qiter.getOffset(), qc = comp[qoff];
+        final double qcore = core[qoff];
+        if(qc == rc || (qcore > rcore ? qcore : rcore) > best[qc]) {
+          continue;
+        }
+        final O q = relation.get(qiter);
+        if(rbox != null && boxDistance(q, rbox) > best[qc]) {
+          continue;
+        }
+        for(i = 0; i < rsize; i++) {
+          final int roff = rl + i, c = comp[roff];
+          final double lb = qcore > core[roff] ? qcore : core[roff];
+          if(c == qc || (lb >= best[qc] && lb >= best[c])) {
+            continue;
+          }
+          ++distances;
+          final double d = distance.distance(q, robjs[i]);
+          final double m = d > lb ? d : lb;
+          if(m < best[qc]) {
+            best[qc] = m;
+            besti[qc] = qoff;
+            bestj[qc] = roff;
+          }
+          if(m < best[c]) {
+            best[c] = m;
+            besti[c] = roff;
+            bestj[c] = qoff;
+          }
+        }
+      }
+      Arrays.fill(robjs, 0, rsize, null);
+    }
+  }
+
+  /**
+   * Range query for the k-d-tree.
+   *
+   * @author Erich Schubert
+   */
+  public class KDTreeRangeSearcher implements RangeSearcher<O> {
+    /**
+     * Distance to use.
+     */
+    private PrimitiveDistance<? super O> distance;
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance to use
+     */
+    public KDTreeRangeSearcher(PrimitiveDistance<? super O> distance) {
+      super();
+      this.distance = distance;
+    }
+
+    @Override
+    public ModifiableDoubleDBIDList getRange(O obj, double range, ModifiableDoubleDBIDList result) {
+      final DoubleDBIDListIter iter = sorted.iter();
+      for(int t = 0; t < numtrees; t++) {
+        kdRangeSearch(subtrees[t], subtrees[t + 1], 0, obj, result, iter, range);
+      }
+      return result;
+    }
+
+    /**
+     * Perform a range search on the k-d-tree.
+     *
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     * @param axis Current splitting axis
+     * @param query Query object
+     * @param res kNN heap
+     * @param iter Iterator variable (reduces memory footprint!)
+     * @param radius Query radius
+     */
+    private void kdRangeSearch(int left, int right, int axis, O query, ModifiableDoubleDBIDList res, DoubleDBIDListIter iter, double radius) {
+      if(right - left <= leafsize) {
+        for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+          if(isDeleted(iter)) {
+            continue;
+          }
+          double dist = distance.distance(query, relation.get(iter));
+          countObjectAccess();
+          countDistanceComputation();
+          if(dist <= radius) {
+            res.add(dist, iter);
+          }
+        }
+        return;
+      }
+      // Look at current node:
+      final int middle = (left + right) >>> 1;
+
+      // Distance to axis:
+      final double delta = iter.seek(middle).doubleValue() - query.doubleValue(axis);
+      final boolean onleft = (delta >= 0), onright = (delta <= 0);
+      final double mindist = distance instanceof SquaredEuclideanDistance ? delta * delta : Math.abs(delta);
+      final boolean close = (mindist <= radius);
+
+      // Next axis:
+      final int next = next(axis);
+
+      // Current object:
+      if(close && !isDeleted(iter.seek(middle))) {
+        O split = relation.get(iter);
+        countObjectAccess();
+        double dist = distance.distance(query, split);
+        countDistanceComputation();
+        if(dist <= radius) {
+          assert (iter.getOffset() == middle);
+          res.add(dist, iter /* .seek(middle) */);
+        }
+      }
+      if(left < middle && (onleft || close)) {
+        kdRangeSearch(left, middle, next, query, res, iter, radius);
+      }
+      if(middle + 1 < right && (onright || close)) {
+        kdRangeSearch(middle + 1, right, next, query, res, iter, radius);
+      }
+    }
+  }
+
+  /**
+   * Search position for priority search.
+   *
+   * @author Erich Schubert
+   */
+  private static class PrioritySearchBranch implements Comparable<PrioritySearchBranch> {
+    /**
+     * Minimum distance
      */
     double mindist;
 
@@ -564,36 +2155,50 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
       this.threshold = Double.POSITIVE_INFINITY;
       this.pos = Integer.MIN_VALUE;
       this.heap.clear();
-      this.heap.add(new PrioritySearchBranch(0, 0, sorted.size(), 0));
+      this.cur = null;
+      for(int t = 0; t < numtrees; t++) {
+        this.heap.add(new PrioritySearchBranch(0, subtrees[t], subtrees[t + 1], 0));
+      }
       return advance();
     }
 
     @Override
     public PrioritySearcher<O> advance() {
+      do {
+        step();
+      }
+      while(pos >= 0 && isDeleted(iter.seek(pos)));
+      return this;
+    }
+
+    /**
+     * Advance to the next object, including deleted objects.
+     */
+    private void step() {
       // Iteration within current leaf:
       if(cur != null && cur.right - cur.left <= leafsize) {
         assert pos >= cur.left;
         if(++pos < cur.right) {
-          return this;
+          return;
         }
         assert pos == cur.right;
       }
       if(heap.isEmpty()) {
         cur = null;
         pos = Integer.MIN_VALUE;
-        return this;
+        return;
       }
       // Get next
       cur = heap.poll();
       if(cur.mindist > threshold) {
         cur = null;
         pos = Integer.MIN_VALUE;
-        return this;
+        return;
       }
       // Leaf:
       if(cur.right - cur.left <= leafsize) {
         pos = cur.left;
-        return this;
+        return;
       }
       pos = (cur.left + cur.right) >>> 1; // middle element
       // Distance to axis:
@@ -610,7 +2215,6 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
       if(pos + 1 < cur.right && rdist <= threshold) {
         heap.add(new PrioritySearchBranch(rdist, pos + 1, cur.right, next));
       }
-      return this;
     }
 
     @Override
@@ -0,0 +1,505 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.vafile;
+
+import java.util.Arrays;
+
+import elki.data.NumberVector;
+import elki.data.VectorBlock;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.ids.*;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.distance.Distance;
+import elki.distance.NumberVectorDistance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.LPNormDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.distance.minkowski.WeightedLPNormDistance;
+import elki.index.IndexFactory;
+import elki.index.KNNIndex;
+import elki.index.RangeIndex;
+import elki.logging.Logging;
+import elki.logging.statistics.Counter;
+import elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import elki.utilities.datastructures.heap.DoubleMaxHeap;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.constraints.LessEqualConstraint;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+
+import net.jafama.FastMath;
+
+/**
+ * Vector-approximation file (VAFile) storing compact approximations and a
+ * single precision copy of the data.
+ * <p>
+ * In contrast to {@link VAFile}, the approximations are stored in a single
+ * byte array (hence, at most 256 partitions per dimension), and the vectors are
+ * stored in a contiguous float {@link VectorBlock} in scan order, so that the
+ * refinement step does not need to access the relation. For each query, lookup
+ * tables of the minimum and maximum distance contribution of each cell are
+ * computed once.
+ * <p>
+ * This index is only used for {@link elki.data.FloatVector} data, where the
+ * results are exact. It is not added to double precision relations, as the
+ * distances on the rounded values would not be exact.
+ * <p>
+ * Reference:
+ * <p>
+ * R. Weber, S. Blott<br>
+ * An approximation based data structure for similarity search<br>
+ * Report TR1997b, ETH Zentrum, Zurich, Switzerland
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - FloatVAFileKNNQuery
+ * @has - - - FloatVAFileRangeQuery
+ *
+ * @param <V> Vector type
+ */
+@Reference(authors = "R. Weber, S. Blott", //
+    title = "An approximation based data structure for similarity search", //
+    booktitle = "Report TR1997b, ETH Zentrum, Zurich, Switzerland", //
+    url = "http://citeseerx.ist.psu.edu/viewdoc/download?doi=10.1.1.40.480&rep=rep1&type=pdf", //
+    bibkey = "tr/ethz/WeberS97")
+public class FloatVAFile<V extends NumberVector> implements KNNIndex<V>, RangeIndex<V> {
+  /**
+   * Logging class.
+   */
+  private static final Logging LOG = Logging.getLogger(FloatVAFile.class);
+
+  /**
+   * The relation indexed.
+   */
+  protected final Relation<V> relation;
+
+  /**
+   * Number of partitions.
+   */
+  private final int partitions;
+
+  /**
+   * Object ids, in scan order.
+   */
+  private ArrayDBIDs ids;
+
+  /**
+   * Vector data, in scan order.
+   */
+  private VectorBlock data;
+
+  /**
+   * Approximations, row-major, as unsigned bytes.
+   */
+  private byte[] approx;
+
+  /**
+   * Quantile grid we use.
+   */
+  private double[][] splitPositions;
+
+  /**
+   * Dimensionality.
+   */
+  private int dims;
+
+  /**
+   * Counter for refinements.
+   */
+  private final Counter refinements;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param partitions Number of partitions for each dimension
+   */
+  public FloatVAFile(Relation<V> relation, int partitions) {
+    super();
+    assert partitions > 1 && partitions <= 256;
+    this.relation = relation;
+    this.partitions = partitions;
+    this.refinements = LOG.isStatistics() ? LOG.newCounter(this.getClass().getName() + ".refinements") : null;
+  }
+
+  @Override
+  public void initialize() {
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    dims = RelationUtil.dimensionality(relation);
+    final int size = ids.size();
+    data = VectorBlock.allocate(size, dims, true);
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      data.set(i, relation.get(it));
+    }
+    // Quantile grid:
+    splitPositions = new double[dims][partitions + 1];
+    float[] tempdata = new float[size];
+    for(int d = 0; d < dims && size > 0; d++) {
+      for(int j = 0; j < size; j++) {
+        tempdata[j] = data.floatValue(j, d);
+      }
+      Arrays.sort(tempdata);
+      for(int b = 0; b < partitions; b++) {
+        splitPositions[d][b] = tempdata[(int) (b * size / (double) partitions)];
+      }
+      // make sure that last object will be included
+      splitPositions[d][partitions] = tempdata[size - 1] + 0.000001;
+    }
+    // Approximations:
+    approx = new byte[size * dims];
+    for(int j = 0, off = 0; j < size; j++) {
+      for(int d = 0; d < dims; d++, off++) {
+        approx[off] = (byte) cell(d, data.doubleValue(j, d));
+      }
+    }
+  }
+
+  /**
+   * Find the grid cell of a value.
+   *
+   * @param d Dimension
+   * @param val Value
+   * @return Cell number
+   */
+  private int cell(int d, double val) {
+    final double[] split = splitPositions[d];
+    if(val < split[0]) {
+      return 0;
+    }
+    if(val >= split[partitions]) {
+      return partitions - 1;
+    }
+    final int pos = Arrays.binarySearch(split, val);
+    return pos >= 0 ? Math.min(pos, partitions - 1) : -pos - 2;
+  }
+
+  @Override
+  public void logStatistics() {
+    if(refinements != null) {
+      LOG.statistics(refinements);
+    }
+  }
+
+  @Override
+  public KNNSearcher<V> kNNByObject(DistanceQuery<V> distanceQuery, int maxk, int flags) {
+    Distance<? super V> df = distanceQuery.getDistance();
+    return isSupported(df) ? new FloatVAFileKNNQuery((NumberVectorDistance<?>) df) : null;
+  }
+
+  @Override
+  public RangeSearcher<V> rangeByObject(DistanceQuery<V> distanceQuery, double maxradius, int flags) {
+    Distance<? super V> df = distanceQuery.getDistance();
+    return isSupported(df) ? new FloatVAFileRangeQuery((NumberVectorDistance<?>) df) : null;
+  }
+
+  /**
+   * Check if the distance function is supported: unweighted Lp norms with
+   * finite p, and squared Euclidean.
+   *
+   * @param df Distance function
+   * @return {@code true} if supported
+   */
+  private static boolean isSupported(Distance<?> df) {
+    return df instanceof SquaredEuclideanDistance || (df instanceof LPNormDistance //
+        && !(df instanceof WeightedLPNormDistance) && ((LPNormDistance) df).getP() < Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Common query state: the lookup tables for one query.
+   *
+   * @author Erich Schubert
+   */
+  private abstract class AbstractVAQuery {
+    /**
+     * Distance function.
+     */
+    protected final NumberVectorDistance<?> distance;
+
+    /**
+     * Exponent p.
+     */
+    protected final double p;
+
+    /**
+     * Use squared Euclidean distances, and the vector block.
+     */
+    protected final boolean squared;
+
+    /**
+     * Take the square root of the squared distances.
+     */
+    protected final boolean sqrt;
+
+    /**
+     * Query vector.
+     */
+    protected NumberVector query;
+
+    /**
+     * Query values.
+     */
+    protected double[] q;
+
+    /**
+     * Minimum and maximum contribution of each cell, dimension-major.
+     */
+    protected double[] mintable, maxtable;
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance function
+     */
+    protected AbstractVAQuery(NumberVectorDistance<?> distance) {
+      this.distance = distance;
+      this.sqrt = distance.getClass() == EuclideanDistance.class;
+      this.squared = sqrt || distance.getClass() == SquaredEuclideanDistance.class;
+      this.p = squared ? 2. : ((LPNormDistance) distance).getP();
+      this.mintable = new double[dims * partitions];
+      this.maxtable = new double[dims * partitions];
+    }
+
+    /**
+     * Prepare the lookup tables for a query.
+     *
+     * @param obj Query object
+     */
+    protected void init(NumberVector obj) {
+      assert obj.getDimensionality() == dims : "Dimensionality mismatch.";
+      query = obj;
+      q = obj.toArray();
+      double[] border = new double[partitions + 1];
+      for(int d = 0, off = 0; d < dims; d++, off += partitions) {
+        final double[] split = splitPositions[d];
+        for(int i = 0; i <= partitions; i++) {
+          final double delta = Math.abs(split[i] - q[d]);
+          border[i] = squared ? delta * delta : FastMath.pow(delta, p);
+        }
+        final int qp = cell(d, q[d]);
+        for(int c = 0; c < partitions; c++) {
+          mintable[off + c] = c < qp ? border[c + 1] : c > qp ? border[c] : 0.;
+          maxtable[off + c] = c < qp ? border[c] : c > qp ? border[c + 1] : Math.max(border[c], border[c + 1]);
+        }
+      }
+    }
+
+    /**
+     * Lower bound of the distance to a row.
+     *
+     * @param row Row
+     * @return Lower bound (squared, for Euclidean)
+     */
+    protected double minDist(int row) {
+      double agg = 0.;
+      for(int d = 0, off = row * dims, toff = 0; d < dims; d++, off++, toff += partitions) {
+        agg += mintable[toff + (approx[off] & 0xFF)];
+      }
+      return squared ? agg : FastMath.pow(agg, 1. / p);
+    }
+
+    /**
+     * Upper bound of the distance to a row.
+     *
+     * @param row Row
+     * @return Upper bound (squared, for Euclidean)
+     */
+    protected double maxDist(int row) {
+      double agg = 0.;
+      for(int d = 0, off = row * dims, toff = 0; d < dims; d++, off++, toff += partitions) {
+        agg += maxtable[toff + (approx[off] & 0xFF)];
+      }
+      return squared ? agg : FastMath.pow(agg, 1. / p);
+    }
+
+    /**
+     * Refine: compute the exact distance to a row.
+     *
+     * @param row Row
+     * @return Distance (squared, for Euclidean)
+     */
+    protected double refine(int row) {
+      if(refinements != null) {
+        refinements.increment();
+      }
+      return squared ? data.squaredEuclidean(row, q) : distance.distance(query, data.get(row));
+    }
+  }
+
+  /**
+   * kNN query for this index.
+   *
+   * @author Erich Schubert
+   */
+  public class FloatVAFileKNNQuery extends AbstractVAQuery implements KNNSearcher<V> {
+    /**
+     * Constructor.
+     *
+     * @param distance Distance function
+     */
+    public FloatVAFileKNNQuery(NumberVectorDistance<?> distance) {
+      super(distance);
+    }
+
+    @Override
+    public KNNList getKNN(V obj, int k) {
+      init(obj);
+      final int size = ids.size();
+      // Heap for the kth smallest maximum distance (yes, we need a max heap!)
+      DoubleMaxHeap minMaxHeap = new DoubleMaxHeap(k + 1);
+      double minMaxDist = Double.POSITIVE_INFINITY;
+      // Candidates with minDist <= kth maxDist
+      double[] cdist = new double[Math.min(size, 16)];
+      int[] crow = new int[cdist.length];
+      int numc = 0;
+      for(int i = 0; i < size; i++) {
+        final double minDist = minDist(i);
+        if(minDist > minMaxDist) {
+          continue;
+        }
+        if(numc == cdist.length) {
+          cdist = Arrays.copyOf(cdist, numc << 1);
+          crow = Arrays.copyOf(crow, numc << 1);
+        }
+        cdist[numc] = minDist;
+        crow[numc++] = i;
+        minMaxHeap.add(maxDist(i), k);
+        minMaxDist = minMaxHeap.size() >= k ? minMaxHeap.peek() : Double.POSITIVE_INFINITY;
+      }
+      // Refine, in the order of the lower bounds:
+      DoubleIntegerArrayQuickSort.sort(cdist, crow, numc);
+      KNNHeap result = DBIDUtil.newHeap(k);
+      DBIDArrayIter iter = ids.iter();
+      double kdist = Double.POSITIVE_INFINITY;
+      for(int i = 0; i < numc && cdist[i] <= kdist; i++) {
+        final double dist = refine(crow[i]);
+        if(dist <= kdist) {
+          kdist = result.insert(dist, iter.seek(crow[i]));
+        }
+      }
+      return sqrt ? result.toKNNListSqrt() : result.toKNNList();
+    }
+  }
+
+  /**
+   * Range query for this index.
+   *
+   * @author Erich Schubert
+   */
+  public class FloatVAFileRangeQuery extends AbstractVAQuery implements RangeSearcher<V> {
+    /**
+     * Constructor.
+     *
+     * @param distance Distance function
+     */
+    public FloatVAFileRangeQuery(NumberVectorDistance<?> distance) {
+      super(distance);
+    }
+
+    @Override
+    public ModifiableDoubleDBIDList getRange(V obj, double range, ModifiableDoubleDBIDList result) {
+      init(obj);
+      // Squared radius, rounded up, for pruning only:
+      final double eps = sqrt ? Math.nextUp(range * range) : range;
+      DBIDArrayIter iter = ids.iter();
+      for(int i = 0, size = ids.size(); i < size; i++) {
+        if(minDist(i) > eps) {
+          continue;
+        }
+        double dist = refine(i);
+        if(dist <= eps && (dist = sqrt ? FastMath.sqrt(dist) : dist) <= range) {
+          result.add(dist, iter.seek(i));
+        }
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Index factory class.
+   *
+   * @author Erich Schubert
+   *
+   * @stereotype factory
+   * @has - - - FloatVAFile
+   *
+   * @param <V> Vector type
+   */
+  public static class Factory<V extends NumberVector> implements IndexFactory<V> {
+    /**
+     * Number of partitions.
+     */
+    int numpart;
+
+    /**
+     * Constructor.
+     *
+     * @param numpart Number of partitions
+     */
+    public Factory(int numpart) {
+      super();
+      this.numpart = numpart;
+    }
+
+    @Override
+    public FloatVAFile<V> instantiate(Relation<V> relation) {
+      return new FloatVAFile<>(relation, numpart);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return TypeUtil.FLOAT_VECTOR_FIELD;
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     */
+    public static class Par implements Parameterizer {
+      /**
+       * Number of partitions.
+       */
+      int numpart;
+
+      @Override
+      public void configure(Parameterization config) {
+        new IntParameter(VAFile.Factory.Par.PARTITIONS_ID) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
+            .addConstraint(new LessEqualConstraint(256)) //
+            .grab(config, x -> numpart = x);
+      }
+
+      @Override
+      public Factory<?> make() {
+        return new Factory<>(numpart);
+      }
+    }
+  }
+}
@@ -23,11 +23,13 @@ package elki.index;
 import org.junit.Test;
 
 import elki.database.query.distance.LinearScanEuclideanPrioritySearcher;
+import elki.database.query.knn.ParallelBatchKNNSearcher;
 import elki.database.query.knn.LinearScanEuclideanKNNByObject;
 import elki.database.query.knn.LinearScanPrimitiveKNNByObject;
 import elki.database.query.knn.WrappedKNNDBIDByLookup;
 import elki.database.query.range.LinearScanEuclideanRangeByObject;
 import elki.database.query.range.LinearScanPrimitiveDistanceRangeByObject;
+import elki.database.query.range.ParallelBatchRangeSearcher;
 import elki.database.query.range.WrappedRangeDBIDByLookup;
 
 /**
@@ -45,6 +47,8 @@ public class LinearScanReferenceTest extends AbstractIndexStructureTest {
     assertExactEuclidean(null, LinearScanEuclideanKNNByObject.class, LinearScanEuclideanRangeByObject.class);
     assertPrioritySearchEuclidean(null, LinearScanEuclideanPrioritySearcher.class);
     assertSinglePoint(null, WrappedKNNDBIDByLookup.Linear.class, WrappedRangeDBIDByLookup.Linear.class);
+    assertBatchKNNEuclidean(null, ParallelBatchKNNSearcher.class);
+    assertBatchRangeEuclidean(null, ParallelBatchRangeSearcher.class);
   }
 
   /**
@@ -0,0 +1,64 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.invertedlist;
+
+import org.junit.Test;
+
+import elki.clustering.kmeans.KMeans;
+import elki.clustering.kmeans.LloydKMeans;
+import elki.database.query.knn.WrappedKNNDBIDByLookup;
+import elki.index.AbstractIndexStructureTest;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the {@link IVFPQ} index.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class IVFPQTest extends AbstractIndexStructureTest {
+  @Test
+  public void testIVFPQ() {
+    IVFPQ.Factory<?> factory = new ELKIBuilder<>(IVFPQ.Factory.class) //
+        .with(IVFPQ.Factory.Par.NLIST_ID, 8) //
+        .with(IVFPQ.Factory.Par.NPROBE_ID, 8) //
+        .with(IVFPQ.Factory.Par.M_ID, 2) //
+        .with(IVFPQ.Factory.Par.KSUB_ID, 16) //
+        .with(IVFPQ.Factory.Par.REFINE_ID, 10) //
+        .with(IVFPQ.Factory.Par.SEED_ID, 0L).build();
+    assertExactEuclidean(factory, IVFPQ.IVFPQKNNQuery.class, null);
+    assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, null);
+  }
+
+  @Test
+  public void testIVFPQLloyd() {
+    IVFPQ.Factory<?> factory = new ELKIBuilder<>(IVFPQ.Factory.class) //
+        .with(IVFPQ.Factory.Par.NLIST_ID, 8) //
+        .with(IVFPQ.Factory.Par.NPROBE_ID, 8) //
+        .with(IVFPQ.Factory.Par.M_ID, 2) //
+        .with(IVFPQ.Factory.Par.KSUB_ID, 16) //
+        .with(IVFPQ.Factory.Par.REFINE_ID, 10) //
+        .with(IVFPQ.Factory.Par.KMEANS_ID, LloydKMeans.class) //
+        .with(KMeans.MAXITER_ID, 20) //
+        .with(IVFPQ.Factory.Par.SEED_ID, 0L).build();
+    assertExactEuclidean(factory, IVFPQ.IVFPQKNNQuery.class, null);
+  }
+}
@@ -40,5 +40,9 @@ public class CoverTreeTest extends AbstractIndexStructureTest {
     assertExactEuclidean(factory, CoverTree.CoverTreePrioritySearcher.class, CoverTree.CoverTreeRangeSearcher.class);
     assertPrioritySearchEuclidean(factory, CoverTree.CoverTreePrioritySearcher.class);
     assertSinglePoint(factory, CoverTree.CoverTreePrioritySearcher.class, CoverTree.CoverTreeRangeSearcher.class);
+    assertBatchKNNEuclidean(factory, CoverTree.CoverTreeBatchKNNSearcher.class);
+    assertBatchRangeEuclidean(factory, CoverTree.CoverTreeBatchRangeSearcher.class);
+    assertSpanningTreeEuclidean(factory, CoverTree.CoverTreeSpanningTreeSearcher.class);
+    assertDynamicEuclidean(factory, CoverTree.CoverTreePrioritySearcher.class, CoverTree.CoverTreeRangeSearcher.class);
   }
 }
@@ -40,5 +40,6 @@ public class SimplifiedCoverTreeTest extends AbstractIndexStructureTest {
     assertExactEuclidean(factory, SimplifiedCoverTree.CoverTreeKNNSearcher.class, SimplifiedCoverTree.CoverTreeRangeSearcher.class);
     assertPrioritySearchEuclidean(factory, SimplifiedCoverTree.CoverTreePrioritySearcher.class);
     assertSinglePoint(factory, SimplifiedCoverTree.CoverTreeKNNSearcher.class, SimplifiedCoverTree.CoverTreeRangeSearcher.class);
+    assertDynamicEuclidean(factory, SimplifiedCoverTree.CoverTreeKNNSearcher.class, SimplifiedCoverTree.CoverTreeRangeSearcher.class);
   }
 }
@@ -20,8 +20,14 @@
  */
 package elki.index.tree.spatial.kd;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import org.junit.Test;
 
+import elki.data.DoubleVector;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDUtil;
 import elki.database.query.knn.WrappedKNNDBIDByLookup;
 import elki.database.query.range.WrappedRangeDBIDByLookup;
 import elki.index.AbstractIndexStructureTest;
@@ -40,5 +46,17 @@ public class MinimalisticMemoryKDTreeTest extends AbstractIndexStructureTest {
     assertExactEuclidean(factory, MinimalisticMemoryKDTree.KDTreeKNNSearcher.class, MinimalisticMemoryKDTree.KDTreeRangeSearcher.class);
     assertPrioritySearchEuclidean(factory, MinimalisticMemoryKDTree.KDTreePrioritySearcher.class);
     assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
+    assertDynamicEuclidean(factory, MinimalisticMemoryKDTree.KDTreeKNNSearcher.class, MinimalisticMemoryKDTree.KDTreeRangeSearcher.class);
+  }
+
+  @Test
+  public void testParallelBuild() {
+    MinimalisticMemoryKDTree.Factory<?> factory = new ELKIBuilder<>(MinimalisticMemoryKDTree.Factory.class).build();
+    AbstractIndexStructureTest.<MinimalisticMemoryKDTree<DoubleVector>> assertParallelBuild(factory, (seq, par) -> {
+      assertEquals("Tree size differs.", seq.sorted.size(), par.sorted.size());
+      for(DBIDArrayIter a = seq.sorted.iter(), b = par.sorted.iter(); a.valid(); a.advance(), b.advance()) {
+        assertTrue("Tree layout differs at " + a.getOffset(), DBIDUtil.equal(a, b));
+      }
+    });
   }
 }
@@ -20,8 +20,14 @@
  */
 package elki.index.tree.spatial.kd;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import org.junit.Test;
 
+import elki.data.DoubleVector;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DoubleDBIDListIter;
 import elki.database.query.knn.WrappedKNNDBIDByLookup;
 import elki.database.query.range.WrappedRangeDBIDByLookup;
 import elki.index.AbstractIndexStructureTest;
@@ -40,5 +46,21 @@ public class SmallMemoryKDTreeTest extends AbstractIndexStructureTest {
     assertExactEuclidean(factory, SmallMemoryKDTree.KDTreeKNNSearcher.class, SmallMemoryKDTree.KDTreeRangeSearcher.class);
     assertPrioritySearchEuclidean(factory, SmallMemoryKDTree.KDTreePrioritySearcher.class);
     assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
+    assertBatchKNNEuclidean(factory, SmallMemoryKDTree.KDTreeBatchKNNSearcher.class);
+    assertBatchRangeEuclidean(factory, SmallMemoryKDTree.KDTreeBatchRangeSearcher.class);
+    assertSpanningTreeEuclidean(factory, SmallMemoryKDTree.KDTreeSpanningTreeSearcher.class);
+    assertDynamicEuclidean(factory, SmallMemoryKDTree.KDTreeKNNSearcher.class, SmallMemoryKDTree.KDTreeRangeSearcher.class);
+  }
+
+  @Test
+  public void testParallelBuild() {
+    SmallMemoryKDTree.Factory<?> factory = new ELKIBuilder<>(SmallMemoryKDTree.Factory.class).build();
+    AbstractIndexStructureTest.<SmallMemoryKDTree<DoubleVector>> assertParallelBuild(factory, (seq, par) -> {
+      assertEquals("Tree size differs.", seq.sorted.size(), par.sorted.size());
+      for(DoubleDBIDListIter a = seq.sorted.iter(), b = par.sorted.iter(); a.valid(); a.advance(), b.advance()) {
+        assertTrue("Tree layout differs at " + a.getOffset(), DBIDUtil.equal(a, b));
+        assertEquals("Split value differs at " + a.getOffset(), a.doubleValue(), b.doubleValue(), 0.);
+      }
+    });
   }
 }
@@ -0,0 +1,41 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.vafile;
+
+import org.junit.Test;
+
+import elki.index.AbstractIndexStructureTest;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the {@link FloatVAFile} index.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class FloatVAFileTest extends AbstractIndexStructureTest {
+  @Test
+  public void testFloatVAFile() {
+    FloatVAFile.Factory<?> factory = new ELKIBuilder<>(FloatVAFile.Factory.class) //
+        .with(VAFile.Factory.Par.PARTITIONS_ID, 16).build();
+    assertFloatVectors(factory, FloatVAFile.FloatVAFileKNNQuery.class, FloatVAFile.FloatVAFileRangeQuery.class);
+  }
+}
@@ -27,6 +27,7 @@ import java.util.List;
 import java.util.regex.Pattern;
 
 import elki.data.DoubleVector;
+import elki.data.FloatVector;
 import elki.data.LabelList;
 import elki.data.NumberVector;
 import elki.data.NumberVector.Factory;
@@ -320,7 +321,17 @@ public class NumberVectorLabelParser<V extends NumberVector> extends AbstractStr
    *
    * @return a vector of type V containing the given attribute values
    */
+  @SuppressWarnings("unchecked")
   protected V createVector() {
+    if(factory instanceof FloatVector.Factory) {
+      // Fast path: fill the float array directly, without the adapter.
+      final float[] values = new float[attributes.size];
+      final double[] data = attributes.data;
+      for(int i = 0; i < values.length; i++) {
+        values[i] = (float) data[i];
+      }
+      return (V) FloatVector.wrap(values);
+    }
     return factory.newNumberVector(attributes, attributes);
   }
 
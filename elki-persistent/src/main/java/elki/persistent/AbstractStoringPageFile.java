@@ -100,7 +100,12 @@ public abstract class AbstractStoringPageFile<P extends Page> extends AbstractPa
    * @return the next empty page id
    */
   private int getNextEmptyPageID() {
-    return emptyPages.isEmpty() ? -1 : emptyPages.get(--emptyPages.size);
+    if(emptyPages.isEmpty()) {
+      return -1;
+    }
+    final int pageID = emptyPages.get(emptyPages.size - 1);
+    --emptyPages.size;
+    return pageID;
   }
 
   /**
@@ -22,26 +22,51 @@ package elki.index;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
 
 import elki.algorithm.AbstractSimpleAlgorithmTest;
 import elki.data.DoubleVector;
+import elki.data.FloatVector;
 import elki.data.type.TypeUtil;
 import elki.database.Database;
+import elki.database.HashmapDatabase;
 import elki.database.StaticArrayDatabase;
 import elki.database.ids.*;
 import elki.database.query.ExactPrioritySearcher;
 import elki.database.query.PrioritySearcher;
+import elki.database.query.SpanningTreeSearcher;
 import elki.database.query.QueryBuilder;
+import elki.database.datastore.DataStore;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.DoubleDataStore;
+import elki.database.datastore.WritableDoubleDataStore;
 import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.BatchKNNSearcher;
 import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.BatchRangeSearcher;
 import elki.database.query.range.RangeSearcher;
+import elki.database.relation.MaterializedRelation;
 import elki.database.relation.Relation;
 import elki.datasource.AbstractDatabaseConnection;
 import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.datasource.FileBasedDatabaseConnection;
+import elki.datasource.bundle.MultipleObjectsBundle;
 import elki.datasource.filter.FixedDBIDsFilter;
+import elki.datasource.parser.NumberVectorLabelParser;
 import elki.distance.CosineDistance;
+import elki.distance.NumberVectorDistance;
 import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.ManhattanDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.math.geometry.PrimsMinimumSpanningTree;
+import elki.result.Metadata;
+import elki.utilities.ClassGenericsUtil;
 import elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
@@ -434,4 +459,368 @@ public abstract class AbstractIndexStructureTest {
       assertEquals("Incomplete results.", relation.size(), c);
     }
   }
+
+  /**
+   * Test helper: compare batch kNN queries for all objects to a linear scan.
+   *
+   * @param factory Index factory
+   * @param expectQuery expected batch knn query class
+   */
+  protected static void assertBatchKNNEuclidean(IndexFactory<?> factory, Class<?> expectQuery) {
+    ListParameterization inputparams = new ListParameterization() //
+        .addParameter(AbstractDatabaseConnection.Par.FILTERS_ID, new FixedDBIDsFilter(0));
+    if(factory != null) {
+      inputparams.addParameter(StaticArrayDatabase.Par.INDEX_ID, factory);
+    }
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, inputparams);
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    BatchKNNSearcher batchq = new QueryBuilder<>(relation, EuclideanDistance.STATIC).cheapOnly().batchKNNByDBID(k);
+    assertClass(expectQuery, batchq, null);
+    DataStore<KNNList> batch = batchq.getKNN(relation.getDBIDs(), k);
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      for(DBIDIter it2 = relation.iterDBIDs(); it2.valid(); it2.advance()) {
+        heap.insert(EuclideanDistance.STATIC.distance(relation.get(it), relation.get(it2)), it2);
+      }
+      KNNList exp = heap.toKNNList(), got = batch.get(it);
+      assertEquals("Result size does not match expectation!", exp.size(), got.size());
+      for(DoubleDBIDListIter e = exp.iter(), g = got.iter(); e.valid(); e.advance(), g.advance()) {
+        assertEquals("Expected distance at offset " + e.getOffset() + " doesn't match.", e.doubleValue(), g.doubleValue(), 1e-12);
+      }
+    }
+  }
+
+  /**
+   * Test helper: compare batch range queries for all objects to a linear scan.
+   *
+   * @param factory Index factory
+   * @param expectQuery expected batch range query class
+   */
+  protected static void assertBatchRangeEuclidean(IndexFactory<?> factory, Class<?> expectQuery) {
+    ListParameterization inputparams = new ListParameterization() //
+        .addParameter(AbstractDatabaseConnection.Par.FILTERS_ID, new FixedDBIDsFilter(0));
+    if(factory != null) {
+      inputparams.addParameter(StaticArrayDatabase.Par.INDEX_ID, factory);
+    }
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, inputparams);
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    BatchRangeSearcher batchq = new QueryBuilder<>(relation, EuclideanDistance.STATIC).cheapOnly().batchRangeByDBID(eps);
+    assertClass(expectQuery, batchq, null);
+    DataStore<DoubleDBIDList> batch = batchq.getRange(relation.getDBIDs(), eps);
+    // Neighborhoods are only precomputed with the join of an index:
+    RangeSearcher<DBIDRef> pre = new QueryBuilder<>(relation, EuclideanDistance.STATIC).precomputedRangeByDBID(eps);
+    assertEquals("Neighborhoods precomputed without a join.", factory != null, pre != null);
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      ModifiableDoubleDBIDList exp = DBIDUtil.newDistanceDBIDList();
+      for(DBIDIter it2 = relation.iterDBIDs(); it2.valid(); it2.advance()) {
+        final double d = EuclideanDistance.STATIC.distance(relation.get(it), relation.get(it2));
+        if(d <= eps) {
+          exp.add(d, it2);
+        }
+      }
+      ModifiableDoubleDBIDList got = DBIDUtil.newDistanceDBIDList();
+      for(DoubleDBIDListIter g = batch.get(it).iter(); g.valid(); g.advance()) {
+        got.add(g.doubleValue(), g);
+      }
+      exp.sort();
+      got.sort();
+      assertEquals("Result size does not match expectation!", exp.size(), got.size());
+      for(DoubleDBIDListIter e = exp.iter(), g = got.iter(); e.valid(); e.advance(), g.advance()) {
+        assertEquals("Expected distance at offset " + e.getOffset() + " doesn't match.", e.doubleValue(), g.doubleValue(), 1e-12);
+      }
+      if(pre != null) {
+        assertEquals("Precomputed result size does not match expectation!", exp.size(), pre.getRange(it, eps).size());
+      }
+    }
+  }
+
+  /**
+   * Test helper: compare the minimum spanning tree, also for the mutual
+   * reachability distance of HDBSCAN*, to Prim's algorithm.
+   *
+   * @param factory Index factory
+   * @param expectQuery expected spanning tree query class
+   */
+  protected static void assertSpanningTreeEuclidean(IndexFactory<?> factory, Class<?> expectQuery) {
+    ListParameterization inputparams = new ListParameterization() //
+        .addParameter(AbstractDatabaseConnection.Par.FILTERS_ID, new FixedDBIDsFilter(0));
+    if(factory != null) {
+      inputparams.addParameter(StaticArrayDatabase.Par.INDEX_ID, factory);
+    }
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, inputparams);
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    SpanningTreeSearcher mstq = new QueryBuilder<>(relation, EuclideanDistance.STATIC).cheapOnly().spanningTree();
+    assertClass(expectQuery, mstq, null);
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    WritableDoubleDataStore coredists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_TEMP);
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      for(DBIDIter it2 = ids.iter(); it2.valid(); it2.advance()) {
+        heap.insert(EuclideanDistance.STATIC.distance(relation.get(it), relation.get(it2)), it2);
+      }
+      coredists.putDouble(it, heap.getKNNDistance());
+    }
+    for(DoubleDataStore cd : Arrays.asList(null, coredists)) {
+      final DBIDArrayIter a = ids.iter(), b = ids.iter();
+      double[] exp = new double[size - 1], got = new double[size - 1];
+      int[] n = new int[2];
+      PrimsMinimumSpanningTree.processDense(ids, new PrimsMinimumSpanningTree.Adapter<ArrayDBIDs>() {
+        @Override
+        public double distance(ArrayDBIDs data, int i, int j) {
+          final double d = EuclideanDistance.STATIC.distance(relation.get(a.seek(i)), relation.get(b.seek(j)));
+          return cd == null ? d : Math.max(d, Math.max(cd.doubleValue(a), cd.doubleValue(b)));
+        }
+
+        @Override
+        public int size(ArrayDBIDs data) {
+          return size;
+        }
+      }, (length, i, j) -> exp[n[0]++] = length);
+      // Check that the edges form a tree, using a simple union-find:
+      int[] parent = new int[size];
+      for(int i = 0; i < size; i++) {
+        parent[i] = i;
+      }
+      mstq.spanningTree(ids, cd, (length, i, j) -> {
+        assertTrue("Too many edges", n[1] < size - 1);
+        got[n[1]++] = length;
+        int pi = i, pj = j;
+        while(parent[pi] != pi) {
+          pi = parent[pi];
+        }
+        while(parent[pj] != pj) {
+          pj = parent[pj];
+        }
+        assertNotEquals("Edge creates a cycle", pi, pj);
+        parent[pi] = pj;
+        final double d = EuclideanDistance.STATIC.distance(relation.get(a.seek(i)), relation.get(b.seek(j)));
+        assertEquals("Edge length incorrect", cd == null ? d : Math.max(d, Math.max(cd.doubleValue(a), cd.doubleValue(b))), length, 1e-15);
+      });
+      assertEquals("Not a spanning tree", size - 1, n[1]);
+      Arrays.sort(exp);
+      Arrays.sort(got);
+      for(int i = 0; i < exp.length; i++) {
+        assertEquals("Edge lengths do not match at " + i, exp[i], got[i], 1e-12);
+      }
+    }
+  }
+
+  /**
+   * Test helper: load the data as single precision vectors, and compare the kNN
+   * and range queries of a sample of objects to a linear scan, for Euclidean,
+   * squared Euclidean, and Manhattan distance. Also checks that the index is
+   * not used for double precision data.
+   *
+   * @param factory Index factory
+   * @param expectKNNQuery expected knn query class
+   * @param expectRangeQuery expected range query class
+   */
+  protected static void assertFloatVectors(IndexFactory<?> factory, Class<?> expectKNNQuery, Class<?> expectRangeQuery) {
+    ListParameterization inputparams = new ListParameterization() //
+        .addParameter(AbstractDatabaseConnection.Par.FILTERS_ID, new FixedDBIDsFilter(0)) //
+        .addParameter(NumberVectorLabelParser.Par.VECTOR_TYPE_ID, FloatVector.Factory.class) //
+        .addParameter(StaticArrayDatabase.Par.INDEX_ID, factory);
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, inputparams);
+    Relation<FloatVector> relation = db.getRelation(TypeUtil.FLOAT_VECTOR_FIELD);
+    for(NumberVectorDistance<? super FloatVector> df : Arrays.asList(EuclideanDistance.STATIC, SquaredEuclideanDistance.STATIC, ManhattanDistance.STATIC)) {
+      QueryBuilder<FloatVector> qb = new QueryBuilder<>(relation, df).cheapOnly();
+      KNNSearcher<FloatVector> knnq = qb.kNNByObject(k);
+      RangeSearcher<FloatVector> rangeq = qb.rangeByObject(eps);
+      assertClass(expectKNNQuery, knnq, null);
+      assertClass(expectRangeQuery, rangeq, null);
+      DBIDIter it = relation.iterDBIDs();
+      for(int i = 0; it.valid(); it.advance(), i++) {
+        if(i % 7 != 0) {
+          continue;
+        }
+        final FloatVector q = relation.get(it);
+        KNNHeap heap = DBIDUtil.newHeap(k);
+        for(DBIDIter it2 = relation.iterDBIDs(); it2.valid(); it2.advance()) {
+          heap.insert(df.distance(q, relation.get(it2)), it2);
+        }
+        KNNList exp = heap.toKNNList(), got = knnq.getKNN(q, k);
+        assertEquals("Result size does not match expectation!", exp.size(), got.size());
+        for(DoubleDBIDListIter e = exp.iter(), g = got.iter(); e.valid(); e.advance(), g.advance()) {
+          assertEquals("Expected distance at offset " + e.getOffset() + " doesn't match.", e.doubleValue(), g.doubleValue(), 1e-12);
+        }
+        // Range query with the kNN distance as radius:
+        final double radius = exp.getKNNDistance();
+        int inrange = 0;
+        for(DBIDIter it2 = relation.iterDBIDs(); it2.valid(); it2.advance()) {
+          inrange += df.distance(q, relation.get(it2)) <= radius ? 1 : 0;
+        }
+        DoubleDBIDList res = rangeq.getRange(q, radius);
+        assertEquals("Range result size does not match expectation!", inrange, res.size());
+        for(DoubleDBIDListIter r = res.iter(); r.valid(); r.advance()) {
+          assertEquals("Distance does not match.", df.distance(q, relation.get(r)), r.doubleValue(), 1e-12);
+        }
+      }
+    }
+    // Double precision data must not be indexed, as results would not be exact
+    assertFalse("Index must not accept double precision data.", factory.getInputTypeRestriction().isAssignableFromType(TypeUtil.DOUBLE_VECTOR_FIELD));
+  }
+
+  /**
+   * Test helper: build the index on a random data set above the parallel build
+   * threshold, once with a single worker and once with four workers, and
+   * compare the index layouts and the kNN results of a sample of objects.
+   *
+   * @param factory Index factory
+   * @param sameLayout Assert that two indexes have the same layout, may be null
+   * @param <I> Index type
+   */
+  protected static <I extends KNNIndex<DoubleVector>> void assertParallelBuild(IndexFactory<?> factory, BiConsumer<I, I> sameLayout) {
+    Random random = new Random(0L);
+    double[][] data = new double[50000][];
+    for(int i = 0; i < data.length; i++) {
+      data[i] = new double[] { random.nextDouble(), random.nextDouble(), random.nextDouble() };
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    I seq = buildIndex(factory, relation, 1), par = buildIndex(factory, relation, 4);
+    if(sameLayout != null) {
+      sameLayout.accept(seq, par);
+    }
+    DistanceQuery<DoubleVector> dq = new QueryBuilder<>(relation, EuclideanDistance.STATIC).distanceQuery();
+    KNNSearcher<DoubleVector> seqq = seq.kNNByObject(dq, k, 0), parq = par.kNNByObject(dq, k, 0);
+    DBIDIter it = relation.iterDBIDs();
+    for(int i = 0; it.valid(); it.advance(), i++) {
+      if(i % 97 != 0) {
+        continue;
+      }
+      final DoubleVector q = relation.get(it);
+      KNNList exp = seqq.getKNN(q, k), got = parq.getKNN(q, k);
+      assertEquals("Result size does not match expectation!", exp.size(), got.size());
+      for(DoubleDBIDListIter e = exp.iter(), g = got.iter(); e.valid(); e.advance(), g.advance()) {
+        assertEquals("Distance at offset " + e.getOffset() + " doesn't match.", e.doubleValue(), g.doubleValue(), 0.);
+        assertTrue("Neighbor at offset " + e.getOffset() + " doesn't match.", DBIDUtil.equal(e, g));
+      }
+    }
+  }
+
+  /**
+   * Build an index in a fork-join pool of the given size.
+   *
+   * @param factory Index factory
+   * @param relation Data relation
+   * @param workers Number of workers
+   * @param <I> Index type
+   * @return Initialized index
+   */
+  @SuppressWarnings("unchecked")
+  private static <I extends Index> I buildIndex(IndexFactory<?> factory, Relation<DoubleVector> relation, int workers) {
+    ForkJoinPool pool = new ForkJoinPool(workers);
+    try {
+      return pool.submit(() -> {
+        I idx = (I) ((IndexFactory<DoubleVector>) factory).instantiate(relation);
+        idx.initialize();
+        return idx;
+      }).join();
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Test helper: insert and delete objects in a dynamic database, and compare
+   * the query results to a linear scan after each step.
+   *
+   * @param factory Index factory
+   * @param expectKNNQuery expected knn query class
+   * @param expectRangeQuery expected range query class
+   */
+  protected static void assertDynamicEuclidean(IndexFactory<?> factory, Class<?> expectKNNQuery, Class<?> expectRangeQuery) {
+    ListParameterization params = new ListParameterization() //
+        .addParameter(FileBasedDatabaseConnection.Par.INPUT_ID, AbstractIndexStructureTest.class.getClassLoader().getResource(dataset)) //
+        .addParameter(HashmapDatabase.Par.INDEX_ID, factory);
+    HashmapDatabase db = ClassGenericsUtil.parameterizeOrAbort(HashmapDatabase.class, params);
+    db.initialize();
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    assertEquals("Database size does not match.", shoulds, relation.size());
+    assertDynamicQueries(relation, expectKNNQuery, expectRangeQuery);
+
+    // Insert random objects:
+    Random random = new Random(0L);
+    List<DoubleVector> insertions = new ArrayList<>();
+    for(int i = 0; i < shoulds >>> 1; i++) {
+      insertions.add(DoubleVector.wrap(new double[] { random.nextDouble(), random.nextDouble(), random.nextDouble() }));
+    }
+    DBIDs inserted = db.insert(MultipleObjectsBundle.makeSimple(relation.getDataTypeInformation(), insertions));
+    assertEquals("Database size does not match.", shoulds + insertions.size(), relation.size());
+    assertDynamicQueries(relation, expectKNNQuery, expectRangeQuery);
+
+    // Delete every third object, including inserted ones:
+    ArrayModifiableDBIDs deletions = DBIDUtil.newArray();
+    DBIDIter it = relation.iterDBIDs();
+    for(int i = 0; it.valid(); it.advance(), i++) {
+      if(i % 3 == 0) {
+        deletions.add(it);
+      }
+    }
+    db.delete(deletions);
+    assertDynamicQueries(relation, expectKNNQuery, expectRangeQuery);
+
+    // Move objects: delete them from the index, and insert new vectors:
+    DynamicIndex idx = Metadata.hierarchyOf(relation).iterChildren().filter(DynamicIndex.class).get();
+    it = relation.iterDBIDs();
+    for(int i = 0; it.valid(); it.advance(), i++) {
+      if(i % 5 == 1) {
+        idx.delete(it);
+        ((MaterializedRelation<DoubleVector>) relation).insert(it, //
+            DoubleVector.wrap(new double[] { random.nextDouble(), random.nextDouble(), random.nextDouble() }));
+      }
+    }
+    assertDynamicQueries(relation, expectKNNQuery, expectRangeQuery);
+
+    // Delete the remaining inserted objects:
+    ArrayModifiableDBIDs remaining = DBIDUtil.newArray(inserted);
+    remaining.removeDBIDs(deletions);
+    db.delete(remaining);
+    assertDynamicQueries(relation, expectKNNQuery, expectRangeQuery);
+  }
+
+  /**
+   * Compare kNN, range, and priority queries of a sample of objects to a linear
+   * scan.
+   *
+   * @param relation Data relation
+   * @param expectKNNQuery expected knn query class
+   * @param expectRangeQuery expected range query class
+   */
+  private static void assertDynamicQueries(Relation<DoubleVector> relation, Class<?> expectKNNQuery, Class<?> expectRangeQuery) {
+    QueryBuilder<DoubleVector> qb = new QueryBuilder<>(relation, EuclideanDistance.STATIC).cheapOnly();
+    KNNSearcher<DBIDRef> knnq = qb.kNNByDBID(k);
+    RangeSearcher<DBIDRef> rangeq = qb.rangeByDBID(eps);
+    PrioritySearcher<DBIDRef> prioq = qb.priorityByDBID();
+    assertClass(expectKNNQuery, qb.kNNByObject(k), knnq);
+    assertClass(expectRangeQuery, qb.rangeByObject(eps), rangeq);
+    DBIDIter it = relation.iterDBIDs();
+    for(int i = 0; it.valid(); it.advance(), i++) {
+      if(i % 7 != 0) {
+        continue;
+      }
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      int inrange = 0;
+      for(DBIDIter it2 = relation.iterDBIDs(); it2.valid(); it2.advance()) {
+        final double d = EuclideanDistance.STATIC.distance(relation.get(it), relation.get(it2));
+        heap.insert(d, it2);
+        inrange += d <= eps ? 1 : 0;
+      }
+      KNNList exp = heap.toKNNList(), got = knnq.getKNN(it, k);
+      assertEquals("Result size does not match expectation!", exp.size(), got.size());
+      for(DoubleDBIDListIter e = exp.iter(), g = got.iter(); e.valid(); e.advance(), g.advance()) {
+        assertEquals("Expected distance at offset " + e.getOffset() + " doesn't match.", e.doubleValue(), g.doubleValue(), 1e-12);
+      }
+      assertEquals("Range result size does not match expectation!", inrange, rangeq.getRange(it, eps).size());
+      int c = 0;
+      for(prioq.search(it); prioq.valid(); prioq.advance()) {
+        assertTrue("Deleted object returned.", relation.getDBIDs().contains(prioq));
+        ++c;
+      }
+      assertEquals("Incomplete results.", relation.size(), c);
+    }
+  }
 }
@@ -0,0 +1,413 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.persistent;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import elki.index.tree.TreeIndexHeader;
+import elki.logging.Logging;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.io.ByteBufferObjectInput;
+import elki.utilities.io.ByteBufferObjectOutput;
+
+/**
+ * A page file that stores pages in a memory-mapped file.
+ * <p>
+ * In contrast to {@link PersistentPageFile}, reading a page does not allocate
+ * a temporary byte array and does not require a system call: pages are
+ * deserialized directly from a slice of the mapped file. The file is mapped
+ * in segments, so files larger than 2 GB are supported.
+ * <p>
+ * The file layout (header, then one page after the other) is the same as for
+ * {@link PersistentPageFile}, but the page contents are serialized in a more
+ * compact way, without the Java serialization stream framing. Hence the
+ * files are not interchangeable.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @composed - - - PageHeader
+ * @composed - - - MappedByteBuffer
+ *
+ * @param <P> Page type
+ */
+public class MappedPageFile<P extends ExternalizablePage> extends AbstractStoringPageFile<P> {
+  /**
+   * Our logger
+   */
+  private static final Logging LOG = Logging.getLogger(MappedPageFile.class);
+
+  /**
+   * Indicates an empty page.
+   */
+  private static final int EMPTY_PAGE = 0;
+
+  /**
+   * Indicates a filled page.
+   */
+  private static final int FILLED_PAGE = 1;
+
+  /**
+   * Size of each mapped segment.
+   */
+  private static final int SEGMENT_BYTES = 1 << 26;
+
+  /**
+   * The file storing the pages.
+   */
+  private final FileChannel file;
+
+  /**
+   * The header of this page file.
+   */
+  protected PageHeader header;
+
+  /**
+   * The type of pages we use.
+   */
+  protected final Class<P> pageclass;
+
+  /**
+   * Whether we are initializing from an existing file.
+   */
+  private boolean existed;
+
+  /**
+   * Number of pages in each segment.
+   */
+  private final int pagesPerSegment;
+
+  /**
+   * Mapped file segments.
+   */
+  private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+  /**
+   * Per-thread views of the mapped segments, to avoid allocating a new buffer
+   * on every page access.
+   */
+  private final ThreadLocal<SegmentViews> views = ThreadLocal.withInitial(SegmentViews::new);
+
+  /**
+   * Constructor.
+   *
+   * @param pageSize the page size
+   * @param filename the file name
+   * @param pageclass the class of pages to be used
+   */
+  public MappedPageFile(int pageSize, Path filename, Class<P> pageclass) {
+    super(pageSize);
+    this.pageclass = pageclass;
+    this.pagesPerSegment = Math.max(1, SEGMENT_BYTES / pageSize);
+    existed = Files.exists(filename);
+    try {
+      file = FileChannel.open(filename, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error in loading memory-mapped page file.", e);
+    }
+  }
+
+  /**
+   * Get the buffer of a page, positioned at the beginning of the page, and
+   * limited to the page size.
+   *
+   * @param pageID Page number
+   * @return Buffer
+   * @throws IOException on mapping errors
+   */
+  private ByteBuffer pageBuffer(int pageID) throws IOException {
+    final long index = header.getReservedPages() + (long) pageID;
+    final int seg = (int) (index / pagesPerSegment);
+    MappedByteBuffer[] segments = this.segments;
+    if(seg >= segments.length || segments[seg] == null) {
+      segments = mapSegment(seg);
+    }
+    final int offset = (int) (index % pagesPerSegment) * pageSize;
+    ByteBuffer buffer = views.get().get(segments, seg);
+    buffer.limit(offset + pageSize);
+    buffer.position(offset);
+    return buffer;
+  }
+
+  /**
+   * Map a segment of the file. The file will be extended as necessary.
+   *
+   * @param seg Segment number
+   * @return Segment array
+   * @throws IOException on mapping errors
+   */
+  private synchronized MappedByteBuffer[] mapSegment(int seg) throws IOException {
+    MappedByteBuffer[] segments = this.segments;
+    if(seg >= segments.length) {
+      segments = Arrays.copyOf(segments, Math.max(seg + 1, segments.length << 1));
+    }
+    if(segments[seg] == null) {
+      final long segsize = pagesPerSegment * (long) pageSize;
+      segments[seg] = file.map(MapMode.READ_WRITE, seg * segsize, segsize);
+    }
+    return this.segments = segments;
+  }
+
+  /**
+   * Reads the page with the given id from this file.
+   *
+   * @param pageID the id of the page to be returned
+   * @return the page with the given pageId
+   */
+  @Override
+  public P readPage(int pageID) {
+    try {
+      countRead();
+      ByteBuffer buffer = pageBuffer(pageID);
+      int type = buffer.getInt();
+      if(type == EMPTY_PAGE) {
+        return null;
+      }
+      if(type != FILLED_PAGE) {
+        throw new IllegalArgumentException("Unknown type: " + type);
+      }
+      P page = pageclass.newInstance();
+      page.readExternal(new ByteBufferObjectInput(buffer));
+      return page;
+    }
+    catch(InstantiationException | IllegalAccessException | ClassNotFoundException e) {
+      throw new AbortException("Error instanciating an index page", e);
+    }
+    catch(IOException e) {
+      throw new RuntimeException("IOException occurred during reading of page " + pageID + "\n", e);
+    }
+  }
+
+  /**
+   * Deletes the node with the specified id from this file.
+   *
+   * @param pageID the id of the node to be deleted
+   */
+  @Override
+  public void deletePage(int pageID) {
+    try {
+      // put id to empty pages list
+      super.deletePage(pageID);
+      countWrite();
+      pageBuffer(pageID).putInt(EMPTY_PAGE);
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void writePage(int pageID, P page) {
+    try {
+      countWrite();
+      ByteBuffer buffer = pageBuffer(pageID);
+      buffer.putInt(FILLED_PAGE);
+      page.writeExternal(new ByteBufferObjectOutput(buffer));
+      page.setDirty(false);
+    }
+    catch(BufferOverflowException e) {
+      throw new IllegalArgumentException("Size of page " + page + " is greater than specified pagesize: " + pageSize, e);
+    }
+    catch(IOException e) {
+      throw new RuntimeException("Error writing to page file.", e);
+    }
+  }
+
+  /**
+   * Closes this file.
+   */
+  @Override
+  public void close() {
+    try {
+      // Do not call super.close(), which would clear the file.
+      // Write back all mapped data, and drop the padding of the last segment.
+      unmapAndTruncate((header.getReservedPages() + (long) nextPageID) * pageSize);
+      if(header instanceof TreeIndexHeader) {
+        TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+        // write the list of empty pages to the end of the file
+        tiHeader.writeEmptyPages(emptyPages, file);
+        tiHeader.setLargestPageID(nextPageID);
+      }
+      header.writeHeader(file);
+      file.force(true);
+      file.close();
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Clears this PageFile.
+   */
+  @Override
+  public void clear() {
+    try {
+      unmapAndTruncate(header.size());
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Drop all mappings and truncate the file.
+   * <p>
+   * Mapping segments may extend the file beyond the last page; truncating
+   * keeps the file size meaningful, as the list of empty pages is stored at
+   * the end of the file.
+   *
+   * @param size New file size
+   * @throws IOException on errors
+   */
+  private synchronized void unmapAndTruncate(long size) throws IOException {
+    for(MappedByteBuffer segment : segments) {
+      if(segment != null) {
+        segment.force();
+      }
+    }
+    segments = new MappedByteBuffer[0];
+    file.truncate(size);
+  }
+
+  /**
+   * Get the header of this page file.
+   *
+   * @return the header used by this page file
+   */
+  public PageHeader getHeader() {
+    return header;
+  }
+
+  /**
+   * Set the next page id to the given value. If this means that any page ids
+   * stored in <code>emptyPages</code> are smaller than
+   * <code>next_page_id</code>, they are removed from this file's observation
+   * stack.
+   *
+   * @param next_page_id the id of the next page to be inserted (if there are no
+   *        more empty pages to be filled)
+   */
+  @Override
+  public void setNextPageID(int next_page_id) {
+    this.nextPageID = next_page_id;
+    while(!emptyPages.isEmpty() && emptyPages.get(emptyPages.size - 1) >= this.nextPageID) {
+      --emptyPages.size;
+    }
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    try {
+      this.header = header;
+      if(existed && file.size() > 0) {
+        LOG.debug("Initializing from an existing page file.");
+        header.readHeader(file);
+
+        // reading empty nodes in Stack
+        if(header instanceof TreeIndexHeader) {
+          TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+          nextPageID = tiHeader.getLargestPageID();
+          try {
+            emptyPages = tiHeader.readEmptyPages(file);
+          }
+          catch(ClassNotFoundException e) {
+            throw new RuntimeException("ClassNotFoundException occurred when reading empty pages.", e);
+          }
+          // Remove the list of empty pages from the end of the file.
+          unmapAndTruncate((header.getReservedPages() + (long) nextPageID) * pageSize);
+        }
+        else { // must scan complete file
+          final long numpages = file.size() / pageSize - header.getReservedPages();
+          for(int i = 0; i < numpages; i++) {
+            int type = pageBuffer(i).getInt();
+            if(type == EMPTY_PAGE) {
+              emptyPages.add(i);
+            }
+            else if(type == FILLED_PAGE) {
+              nextPageID = i + 1;
+            }
+            else {
+              throw new IllegalArgumentException("Unknown type: " + type);
+            }
+          }
+        }
+        return true;
+      }
+      // create new file
+      LOG.debug("Initializing with a new page file.");
+      file.truncate(0);
+      header.writeHeader(file);
+      return false;
+    }
+    catch(IOException e) {
+      throw new RuntimeException("IOException occurred.", e);
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Views of the mapped segments of a single thread.
+   *
+   * @author Erich Schubert
+   */
+  private static class SegmentViews {
+    /**
+     * Segments the views belong to.
+     */
+    private MappedByteBuffer[] source;
+
+    /**
+     * Views of the segments.
+     */
+    private ByteBuffer[] views = new ByteBuffer[0];
+
+    /**
+     * Get the view of a segment.
+     *
+     * @param segments Current segments
+     * @param seg Segment number
+     * @return View of the segment
+     */
+    ByteBuffer get(MappedByteBuffer[] segments, int seg) {
+      if(source != segments) { // Remapped, discard the old views
+        source = segments;
+        views = new ByteBuffer[segments.length];
+      }
+      ByteBuffer view = views[seg];
+      return view != null ? view : (views[seg] = segments[seg].duplicate());
+    }
+  }
+}
@@ -0,0 +1,496 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.persistent;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import elki.index.tree.Node;
+import elki.logging.Logging;
+import elki.logging.statistics.AtomicLongCounter;
+import elki.logging.statistics.Counter;
+import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
+
+/**
+ * Concurrent, scan-resistant page cache using the 2Q replacement policy.
+ * <p>
+ * Pages are distributed over independently locked segments, so that parallel
+ * queries only contend when they access the same segment. Within each
+ * segment, pages seen for the first time enter a small FIFO queue (A1in);
+ * only pages that are referenced again after leaving this queue (as recorded
+ * in the ghost queue A1out) are promoted into the main LRU queue (Am). A
+ * single sequential scan hence only flushes the FIFO queue, but not the hot
+ * pages in the main queue.
+ * <p>
+ * Directory pages of tree indexes are additionally pinned in memory (up to a
+ * quarter of the cache size), as they are accessed by virtually every query.
+ * <p>
+ * All accesses to the backing file are synchronized on the backing file, as
+ * most page files are not safe for concurrent use.
+ * 
+ * @author Erich Schubert
+ * @since 0.8.0
+ * 
+ * @assoc - - - PageFile
+ * 
+ * @param <P> Page type
+ */
+@Reference(authors = "T. Johnson, D. Shasha", //
+    title = "2Q: A Low Overhead High Performance Buffer Management Replacement Algorithm", //
+    booktitle = "Proc. 20th Int. Conf. on Very Large Data Bases (VLDB'94)", //
+    url = "http://www.vldb.org/conf/1994/P439.PDF", //
+    bibkey = "DBLP:conf/vldb/JohnsonS94")
+public class TwoQueueCache<P extends Page> extends AbstractPageFile<P> {
+  /**
+   * Our class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(TwoQueueCache.class);
+
+  /**
+   * Minimum number of pages per segment.
+   */
+  private static final int MIN_SEGMENT_SIZE = 16;
+
+  /**
+   * Cache size in bytes.
+   */
+  protected int cacheSizeBytes;
+
+  /**
+   * Pin directory pages.
+   */
+  protected boolean pinDirectory;
+
+  /**
+   * The underlying file of this cache. If an object is dropped it is written to
+   * the file.
+   */
+  protected PageFile<P> file;
+
+  /**
+   * Cache segments.
+   */
+  private Segment[] segments;
+
+  /**
+   * Bit mask to choose the segment.
+   */
+  private int mask;
+
+  /**
+   * Pinned directory pages.
+   */
+  private ConcurrentHashMap<Integer, P> pinned;
+
+  /**
+   * Maximum number of pinned pages.
+   */
+  private int maxPinned;
+
+  /**
+   * Statistics.
+   */
+  private Counter hits, misses, evictions;
+
+  /**
+   * Constructor.
+   * 
+   * @param cacheSizeBytes the maximum number of bytes for this cache
+   * @param file the underlying file of this cache, if a page is dropped it is
+   *        written to the file
+   * @param pinDirectory pin directory pages in memory
+   */
+  public TwoQueueCache(int cacheSizeBytes, PageFile<P> file, boolean pinDirectory) {
+    super();
+    this.file = file;
+    this.cacheSizeBytes = cacheSizeBytes;
+    this.pinDirectory = pinDirectory;
+    String prefix = this.getClass().getName();
+    this.hits = LOG.isStatistics() ? new AtomicLongCounter(prefix + ".hits") : null;
+    this.misses = LOG.isStatistics() ? new AtomicLongCounter(prefix + ".misses") : null;
+    this.evictions = LOG.isStatistics() ? new AtomicLongCounter(prefix + ".evictions") : null;
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    boolean created = file.initialize(header);
+    int cacheSize = cacheSizeBytes / header.getPageSize();
+    if(cacheSize <= 0) {
+      throw new AbortException("Invalid cache size: " + cacheSizeBytes + " / " + header.getPageSize() + " = " + cacheSize);
+    }
+    maxPinned = pinDirectory ? cacheSize >>> 2 : 0;
+    int evictable = Math.max(1, cacheSize - maxPinned);
+    // Number of segments: power of two, but not too small segments.
+    int nseg = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) << 2);
+    while(nseg > 1 && nseg * MIN_SEGMENT_SIZE > evictable) {
+      nseg >>>= 1;
+    }
+    @SuppressWarnings({ "unchecked", "rawtypes" }) // Generic array creation
+    Segment[] segs = new TwoQueueCache.Segment[nseg];
+    for(int i = 0; i < nseg; i++) {
+      // Distribute the remainder over the first segments.
+      segs[i] = new Segment(evictable / nseg + (i < evictable % nseg ? 1 : 0));
+    }
+    segments = segs;
+    mask = nseg - 1;
+    pinned = new ConcurrentHashMap<>();
+    if(LOG.isDebugging()) {
+      LOG.debug("2Q cache size is " + cacheSize + " pages in " + nseg + " segments, " + maxPinned + " pinned pages.");
+    }
+    return created;
+  }
+
+  /**
+   * Choose the segment of a page.
+   * 
+   * @param pageID Page id
+   * @return Segment
+   */
+  private Segment segment(int pageID) {
+    return segments[(pageID ^ (pageID >>> 16)) & mask];
+  }
+
+  /**
+   * Test whether a page is to be pinned.
+   * 
+   * @param page Page
+   * @return {@code true} for directory pages
+   */
+  private boolean isDirectory(P page) {
+    return pinDirectory && page instanceof Node && !((Node<?>) page).isLeaf();
+  }
+
+  /**
+   * Try to pin a page.
+   * 
+   * @param pageID Page id
+   * @param page Page
+   * @return {@code true} if the page was pinned
+   */
+  private boolean pin(int pageID, P page) {
+    if(!isDirectory(page)) {
+      return false;
+    }
+    // Pages of different segments may be pinned concurrently.
+    synchronized(pinned) {
+      if(pinned.size() >= maxPinned && !pinned.containsKey(pageID)) {
+        return false;
+      }
+      pinned.put(pageID, page);
+    }
+    return true;
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    countRead();
+    P page = pinned.get(pageID);
+    if(page != null) {
+      count(hits);
+      return page;
+    }
+    Segment seg = segment(pageID);
+    synchronized(seg) {
+      page = seg.get(pageID);
+      if(page != null) {
+        count(hits);
+        return page;
+      }
+      count(misses);
+      synchronized(file) {
+        page = file.readPage(pageID);
+      }
+      if(page != null && !pin(pageID, page)) {
+        seg.insert(pageID, page);
+      }
+      return page;
+    }
+  }
+
+  @Override
+  protected void writePage(int pageID, P page) {
+    countWrite();
+    page.setDirty(true);
+    Segment seg = segment(pageID);
+    synchronized(seg) {
+      if(pin(pageID, page)) {
+        seg.remove(pageID);
+        return;
+      }
+      pinned.remove(pageID);
+      seg.put(pageID, page);
+    }
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    countWrite();
+    Segment seg = segment(pageID);
+    synchronized(seg) {
+      pinned.remove(pageID);
+      seg.remove(pageID);
+      seg.ghost.remove(pageID);
+    }
+    synchronized(file) {
+      file.deletePage(pageID);
+    }
+  }
+
+  /**
+   * Write page through to disk.
+   * 
+   * @param page page
+   */
+  protected void expirePage(P page) {
+    if(LOG.isDebuggingFine()) {
+      LOG.debugFine("Write to backing:" + page.getPageID());
+    }
+    if(page.isDirty()) {
+      synchronized(file) {
+        file.writePage(page);
+      }
+    }
+  }
+
+  @Override
+  public int setPageID(P page) {
+    synchronized(file) {
+      return file.setPageID(page);
+    }
+  }
+
+  @Override
+  public int getNextPageID() {
+    synchronized(file) {
+      return file.getNextPageID();
+    }
+  }
+
+  @Override
+  public void setNextPageID(int nextPageID) {
+    synchronized(file) {
+      file.setNextPageID(nextPageID);
+    }
+  }
+
+  @Override
+  public int getPageSize() {
+    return file.getPageSize();
+  }
+
+  @Override
+  public void close() {
+    flush();
+    synchronized(file) {
+      file.close();
+    }
+  }
+
+  /**
+   * Flushes this cache by writing any entry to the underlying file.
+   */
+  public void flush() {
+    for(Segment seg : segments) {
+      synchronized(seg) {
+        for(P page : seg.in.values()) {
+          expirePage(page);
+        }
+        for(P page : seg.main.values()) {
+          expirePage(page);
+        }
+        seg.clear();
+      }
+    }
+    for(P page : pinned.values()) {
+      expirePage(page);
+    }
+    pinned.clear();
+  }
+
+  /**
+   * Clears this cache.
+   */
+  @Override
+  public void clear() {
+    for(Segment seg : segments) {
+      synchronized(seg) {
+        seg.clear();
+      }
+    }
+    pinned.clear();
+  }
+
+  /**
+   * Increment a counter, if statistics are enabled.
+   * 
+   * @param c Counter
+   */
+  private static void count(Counter c) {
+    if(c != null) {
+      c.increment();
+    }
+  }
+
+  @Override
+  public void logStatistics() {
+    super.logStatistics();
+    if(hits != null) {
+      LOG.statistics(hits);
+      LOG.statistics(misses);
+      LOG.statistics(evictions);
+    }
+    file.logStatistics();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * A single cache segment, guarded by its own monitor.
+   * 
+   * @author Erich Schubert
+   */
+  private class Segment {
+    /**
+     * FIFO queue of recently added pages.
+     */
+    LinkedHashMap<Integer, P> in = new LinkedHashMap<>();
+
+    /**
+     * LRU queue of frequently used pages.
+     */
+    LinkedHashMap<Integer, P> main = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Ghost queue of page ids recently evicted from the FIFO queue.
+     */
+    LinkedHashSet<Integer> ghost = new LinkedHashSet<>();
+
+    /**
+     * Capacity of this segment, and of the FIFO and ghost queues.
+     */
+    int capacity, inCapacity, ghostCapacity;
+
+    /**
+     * Constructor.
+     * 
+     * @param capacity Segment capacity
+     */
+    Segment(int capacity) {
+      this.capacity = capacity;
+      this.inCapacity = Math.max(1, capacity >>> 2);
+      this.ghostCapacity = Math.max(1, capacity >>> 1);
+    }
+
+    /**
+     * Get a cached page; this updates the LRU order of the main queue.
+     * 
+     * @param pageID Page id
+     * @return Page, or {@code null}
+     */
+    P get(int pageID) {
+      P page = main.get(pageID);
+      return page != null ? page : in.get(pageID);
+    }
+
+    /**
+     * Insert a page after a cache miss.
+     * 
+     * @param pageID Page id
+     * @param page Page
+     */
+    void insert(int pageID, P page) {
+      if(ghost.remove(pageID)) {
+        main.put(pageID, page);
+      }
+      else {
+        in.put(pageID, page);
+      }
+      reclaim();
+    }
+
+    /**
+     * Store a (modified) page.
+     * 
+     * @param pageID Page id
+     * @param page Page
+     */
+    void put(int pageID, P page) {
+      if(main.containsKey(pageID)) {
+        main.put(pageID, page);
+      }
+      else if(in.containsKey(pageID)) {
+        in.put(pageID, page);
+      }
+      else {
+        insert(pageID, page);
+      }
+    }
+
+    /**
+     * Remove a page from the cache, without writing it.
+     * 
+     * @param pageID Page id
+     */
+    void remove(int pageID) {
+      if(main.remove(pageID) == null) {
+        in.remove(pageID);
+      }
+    }
+
+    /**
+     * Evict pages until the segment fits into its capacity.
+     */
+    void reclaim() {
+      while(in.size() + main.size() > capacity) {
+        final boolean fromIn = in.size() > inCapacity || main.isEmpty();
+        Iterator<Map.Entry<Integer, P>> it = (fromIn ? in : main).entrySet().iterator();
+        Map.Entry<Integer, P> eldest = it.next();
+        it.remove();
+        if(fromIn) {
+          ghost.add(eldest.getKey());
+          if(ghost.size() > ghostCapacity) {
+            Iterator<Integer> git = ghost.iterator();
+            git.next();
+            git.remove();
+          }
+        }
+        count(evictions);
+        expirePage(eldest.getValue());
+      }
+    }
+
+    /**
+     * Clear the segment.
+     */
+    void clear() {
+      in.clear();
+      main.clear();
+      ghost.clear();
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.persistent;
+
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Page file factory for a concurrent, scan-resistant 2Q page cache.
+ * 
+ * @author Erich Schubert
+ * @since 0.8.0
+ * 
+ * @has - - - TwoQueueCache
+ * @composed - - - PageFileFactory
+ * 
+ * @param <P> Page type
+ */
+public class TwoQueueCachePageFileFactory<P extends Page> implements PageFileFactory<P> {
+  /**
+   * Inner page file factory.
+   */
+  private PageFileFactory<P> pageFileFactory;
+
+  /**
+   * Cache size, in bytes.
+   */
+  private int cacheSize;
+
+  /**
+   * Pin directory pages.
+   */
+  private boolean pinDirectory;
+
+  /**
+   * Constructor.
+   * 
+   * @param pageFileFactory Inner page file
+   * @param cacheSize Size of cache, in bytes.
+   * @param pinDirectory Pin directory pages in memory
+   */
+  public TwoQueueCachePageFileFactory(PageFileFactory<P> pageFileFactory, int cacheSize, boolean pinDirectory) {
+    super();
+    this.cacheSize = cacheSize;
+    this.pageFileFactory = pageFileFactory;
+    this.pinDirectory = pinDirectory;
+  }
+
+  @Override
+  public PageFile<P> newPageFile(Class<P> cls) {
+    PageFile<P> inner = pageFileFactory.newPageFile(cls);
+    return new TwoQueueCache<>(cacheSize, inner, pinDirectory);
+  }
+
+  @Override
+  public int getPageSize() {
+    return pageFileFactory.getPageSize();
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author Erich Schubert
+   */
+  public static class Par implements Parameterizer {
+    /**
+     * Flag to disable pinning of directory pages.
+     */
+    public static final OptionID NOPIN_ID = new OptionID("pagefile.nopin", "Do not pin directory pages in the cache.");
+
+    /**
+     * Inner page file factory.
+     */
+    PageFileFactory<Page> pageFileFactory;
+
+    /**
+     * Cache size, in bytes.
+     */
+    protected int cacheSize;
+
+    /**
+     * Pin directory pages.
+     */
+    protected boolean pinDirectory;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<PageFileFactory<Page>>(LRUCachePageFileFactory.Par.PAGEFILE_ID, PageFileFactory.class, PersistentPageFileFactory.class) //
+          .grab(config, x -> pageFileFactory = x);
+      new IntParameter(LRUCachePageFileFactory.Par.CACHE_SIZE_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT) //
+          .grab(config, x -> cacheSize = x);
+      new Flag(NOPIN_ID).grab(config, x -> pinDirectory = !x);
+    }
+
+    @Override
+    public TwoQueueCachePageFileFactory<Page> make() {
+      return new TwoQueueCachePageFileFactory<>(pageFileFactory, cacheSize, pinDirectory);
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import elki.data.NumberVector;
+import elki.index.AbstractIndexStructureTest;
+import elki.index.PagedIndexFactory;
+import elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNSearcher;
+import elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeSearcher;
+import elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Test the memory-mapped page file using an R*-tree.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class MappedPageFileTest extends AbstractIndexStructureTest {
+  /**
+   * File we are using.
+   */
+  Path file;
+
+  /**
+   * Set up the temp file for testing.
+   *
+   * @throws IOException
+   */
+  @Before
+  public void setup() throws IOException {
+    file = Files.createTempFile("ELKIUnitTest", null);
+    file.toFile().deleteOnExit();
+  }
+
+  /**
+   * Delete the file after the test.
+   */
+  @After
+  public void cleanup() {
+    System.gc(); // maybe helps unmap the file
+    try {
+      Files.delete(file); // Note: probably fails on Windows.
+    }
+    catch(IOException e) {
+      // We cannot reliably delete mmaped files on Windows, apparently.
+      elki.logging.LoggingUtil.exception(e);
+    }
+  }
+
+  @Test
+  public void testRStarTree() {
+    RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+        .with(PagedIndexFactory.Par.PAGEFILE_ID, MappedPageFileFactory.class) //
+        .with(AbstractPageFileFactory.Par.PAGE_SIZE_ID, 300) //
+        .with(PersistentPageFileFactory.Par.FILE_ID, file.toString()) //
+        .build();
+    assertExactEuclidean(factory, RStarTreeKNNSearcher.class, RStarTreeRangeSearcher.class);
+  }
+
+  @Test
+  public void testReopen() {
+    MappedPageFile<TestPage> pf = new MappedPageFile<>(100, file, TestPage.class);
+    assertFalse("New file", pf.initialize(new DefaultPageHeader(100)));
+    for(int i = 0; i < 1000; i++) {
+      assertEquals(i, pf.writePage(new TestPage(i * 3L)));
+    }
+    pf.deletePage(17);
+    pf.close();
+
+    pf = new MappedPageFile<>(100, file, TestPage.class);
+    assertTrue("Existing file", pf.initialize(new DefaultPageHeader(100)));
+    assertEquals(1000, pf.getNextPageID());
+    for(int i = 0; i < 1000; i++) {
+      TestPage page = pf.readPage(i);
+      if(i == 17) {
+        assertNull("Deleted page", page);
+        continue;
+      }
+      assertEquals(i, page.getPageID());
+      assertEquals(i * 3L, page.value);
+    }
+    // The deleted page is reused:
+    assertEquals(17, pf.writePage(new TestPage(0)));
+    pf.close();
+  }
+
+  @Test
+  public void testLargeFile() throws IOException {
+    final int pageSize = 4096, last = (int) ((3L << 30) / pageSize);
+    MappedPageFile<TestPage> pf = new MappedPageFile<>(pageSize, file, TestPage.class);
+    pf.initialize(new DefaultPageHeader(pageSize));
+    assertEquals(0, pf.writePage(new TestPage(42)));
+    // Write a page beyond 2 GB, in a different segment:
+    pf.setNextPageID(last);
+    assertEquals(last, pf.writePage(new TestPage(4711)));
+    assertEquals(42, pf.readPage(0).value);
+    assertEquals(4711, pf.readPage(last).value);
+    pf.close();
+    assertTrue("File is not larger than 2 GB", Files.size(file) > (2L << 30));
+
+    pf = new MappedPageFile<>(pageSize, file, TestPage.class);
+    assertTrue("Existing file", pf.initialize(new DefaultPageHeader(pageSize)));
+    assertEquals(last + 1, pf.getNextPageID());
+    assertEquals(42, pf.readPage(0).value);
+    assertEquals(4711, pf.readPage(last).value);
+    assertNull("Unused page", pf.readPage(last >>> 1));
+    pf.close();
+  }
+
+  /**
+   * Trivial page with a payload, for testing.
+   *
+   * @author Erich Schubert
+   */
+  public static class TestPage extends AbstractExternalizablePage {
+    /**
+     * Serial version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Payload.
+     */
+    long value;
+
+    /**
+     * Constructor for deserialization.
+     */
+    public TestPage() {
+      super();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param value Payload
+     */
+    public TestPage(long value) {
+      super();
+      this.value = value;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+      super.writeExternal(out);
+      out.writeLong(value);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+      super.readExternal(in);
+      value = in.readLong();
+    }
+  }
+}
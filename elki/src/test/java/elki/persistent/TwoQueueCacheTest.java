@@ -0,0 +1,164 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import elki.data.NumberVector;
+import elki.index.AbstractIndexStructureTest;
+import elki.index.PagedIndexFactory;
+import elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNSearcher;
+import elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeSearcher;
+import elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Test the concurrent 2Q page cache.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class TwoQueueCacheTest extends AbstractIndexStructureTest {
+  @Test
+  public void testRStarTree() {
+    // Small cache, to force evictions.
+    RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+        .with(PagedIndexFactory.Par.PAGEFILE_ID, TwoQueueCachePageFileFactory.class) //
+        .with(LRUCachePageFileFactory.Par.PAGEFILE_ID, MemoryPageFileFactory.class) //
+        .with(LRUCachePageFileFactory.Par.CACHE_SIZE_ID, 300 * 20) //
+        .with(AbstractPageFileFactory.Par.PAGE_SIZE_ID, 300) //
+        .build();
+    assertExactEuclidean(factory, RStarTreeKNNSearcher.class, RStarTreeRangeSearcher.class);
+  }
+
+  @Test
+  public void testScanResistance() {
+    CountingPageFile backing = new CountingPageFile();
+    TwoQueueCache<TestPage> cache = new TwoQueueCache<>(100 * 64, backing, true);
+    cache.initialize(new DefaultPageHeader(100));
+    for(int i = 0; i < 10000; i++) {
+      backing.writePage(new TestPage());
+    }
+    // Make a small set of pages hot: read twice, with other pages in between.
+    for(int i = 0; i < 10; i++) {
+      cache.readPage(i);
+    }
+    for(int i = 1000; i < 1060; i++) {
+      cache.readPage(i);
+    }
+    for(int i = 0; i < 10; i++) {
+      cache.readPage(i);
+    }
+    // A long sequential scan.
+    for(int i = 2000; i < 10000; i++) {
+      cache.readPage(i);
+    }
+    backing.reads.set(0);
+    for(int i = 0; i < 10; i++) {
+      assertEquals(i, cache.readPage(i).getPageID());
+    }
+    assertEquals("Hot pages were evicted by the scan.", 0, backing.reads.get());
+  }
+
+  @Test
+  public void testConcurrentReads() throws InterruptedException {
+    CountingPageFile backing = new CountingPageFile();
+    TwoQueueCache<TestPage> cache = new TwoQueueCache<>(100 * 100, backing, true);
+    cache.initialize(new DefaultPageHeader(100));
+    final int n = 1000;
+    for(int i = 0; i < n; i++) {
+      backing.writePage(new TestPage());
+    }
+    AtomicInteger errors = new AtomicInteger();
+    Thread[] threads = new Thread[4];
+    for(int t = 0; t < threads.length; t++) {
+      final int off = t * 7;
+      threads[t] = new Thread(() -> {
+        for(int i = 0; i < 20 * n; i++) {
+          int id = (i * 31 + off) % n;
+          TestPage p = cache.readPage(id);
+          if(p == null || p.getPageID() != id) {
+            errors.incrementAndGet();
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for(Thread th : threads) {
+      th.join();
+    }
+    assertEquals(0, errors.get());
+    // Dirty pages must reach the backing file.
+    TestPage p = cache.readPage(5);
+    cache.writePage(p);
+    cache.flush();
+    assertSame(p, backing.readPage(5));
+  }
+
+  /**
+   * Trivial page for testing.
+   *
+   * @author Erich Schubert
+   */
+  public static class TestPage extends AbstractExternalizablePage {
+    /**
+     * Serial version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor.
+     */
+    public TestPage() {
+      super();
+    }
+  }
+
+  /**
+   * In-memory page file counting the reads.
+   *
+   * @author Erich Schubert
+   */
+  private static class CountingPageFile extends MemoryPageFile<TestPage> {
+    /**
+     * Number of reads.
+     */
+    AtomicInteger reads = new AtomicInteger();
+
+    /**
+     * Constructor.
+     */
+    CountingPageFile() {
+      super(100);
+    }
+
+    @Override
+    public synchronized TestPage readPage(int pageID) {
+      reads.incrementAndGet();
+      return super.readPage(pageID);
+    }
+  }
+}